@@ -0,0 +1,435 @@
+/**
+* Hub Miner: a hubness-aware machine learning experimentation library.
+* Copyright (C) 2014  Nenad Tomasev. Email: nenad.tomasev at gmail.com
+*
+* This program is free software: you can redistribute it and/or modify it under
+* the terms of the GNU General Public License as published by the Free Software
+* Foundation, either version 3 of the License, or (at your option) any later
+* version.
+*
+* This program is distributed in the hope that it will be useful, but WITHOUT
+* ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+* FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License along with
+* this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+package data.neighbors;
+
+import java.io.Serializable;
+
+/**
+ * This class is the shared training kernel of the hubness-aware kNN
+ * classifiers. It calculates the class-conditional neighbor occurrence counts
+ * for all neighborhood sizes from 1 to kMax at once, by scattering each kNN
+ * column into its own k-layer and then performing prefix sums over the
+ * k-dimension. The counts are stored in flat float arrays in the point x class
+ * x k layout, so that the values for all k of a single point and class are
+ * contiguous. Once the tables are calculated, the occurrence profiles for any
+ * k <= kMax are a simple lookup, which makes the search for the optimal
+ * neighborhood size cheap. The self-occurrences of points in their own kNN
+ * sets as 0-th neighbors are not included in the tables, they are added on
+ * request, the same way as in NeighborSetFinder.
+ *
+ * @author Nenad Tomasev <nenad.tomasev at gmail.com>
+ */
+public class ClassOccurrenceTables implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+    // The kNN sets that the tables are calculated from.
+    private int[][] kNeighbors;
+    // Labels of the data points.
+    private int[] labels;
+    private int numClasses;
+    // The maximal neighborhood size covered by the tables.
+    private int kMax;
+    private int size;
+    // Class-conditional occurrence counts, the cell
+    // [(point * numClasses + class) * kMax + (k - 1)] holds the number of
+    // occurrences of point in the kNN sets of the given class.
+    private float[] classOccTable;
+    // Total occurrence counts, the cell [point * kMax + (k - 1)] holds the
+    // neighbor occurrence frequency of the point.
+    private float[] occTable;
+    // Reverse neighbor sets in a compact form, the reverse neighbors of point
+    // i are stored in rnIndexes[rnOffsets[i]] to rnIndexes[rnOffsets[i + 1]],
+    // ordered by their kNN position.
+    private int[] rnOffsets;
+    private int[] rnIndexes;
+
+    /**
+     * Initialization.
+     *
+     * @param kNeighbors int[][] representing the kNN sets.
+     * @param labels int[] representing the data labels.
+     * @param numClasses Integer that is the number of classes in the data.
+     * @param kMax Integer that is the maximal neighborhood size to calculate
+     * the occurrence tables for.
+     */
+    public ClassOccurrenceTables(int[][] kNeighbors, int[] labels,
+            int numClasses, int kMax) {
+        this.kNeighbors = kNeighbors;
+        this.labels = labels;
+        this.numClasses = numClasses;
+        this.kMax = kMax;
+        size = labels.length;
+        if (size > 0 && kNeighbors[0].length < kMax) {
+            throw new IllegalArgumentException("The kNN sets of length "
+                    + kNeighbors[0].length + " are too short for kMax "
+                    + kMax);
+        }
+    }
+
+    /**
+     * Initialization.
+     *
+     * @param nsf NeighborSetFinder object holding the calculated kNN sets.
+     * @param numClasses Integer that is the number of classes in the data.
+     * @param kMax Integer that is the maximal neighborhood size to calculate
+     * the occurrence tables for.
+     */
+    public ClassOccurrenceTables(NeighborSetFinder nsf, int numClasses,
+            int kMax) {
+        this(nsf.getKNeighbors(), nsf.getDataSet().obtainLabelArray(),
+                numClasses, kMax);
+    }
+
+    /**
+     * @return Integer that is the maximal neighborhood size covered by the
+     * tables.
+     */
+    public int getKMax() {
+        return kMax;
+    }
+
+    /**
+     * @return Integer that is the number of classes in the data.
+     */
+    public int getNumClasses() {
+        return numClasses;
+    }
+
+    /**
+     * @return Integer that is the number of data points.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return float[] that is the flat class-conditional occurrence table, in
+     * the point x class x k layout.
+     */
+    public float[] getClassOccurrenceTable() {
+        return classOccTable;
+    }
+
+    /**
+     * @return float[] that is the flat total occurrence table, in the point x
+     * k layout.
+     */
+    public float[] getOccurrenceTable() {
+        return occTable;
+    }
+
+    /**
+     * @return Boolean flag indicating whether the tables have been calculated.
+     */
+    public boolean isCalculated() {
+        return classOccTable != null;
+    }
+
+    /**
+     * This method calculates the occurrence tables in a single thread.
+     */
+    public void calculateTables() {
+        calculateTablesMultThr(1);
+    }
+
+    /**
+     * This method calculates the occurrence tables in a multi-threaded way.
+     * The kNN columns are first distributed among the threads, as each column
+     * writes to its own k-layer. The prefix sums over the k-dimension are then
+     * distributed among the threads by blocks of points.
+     *
+     * @param numThreads Integer that is the number of threads to use.
+     */
+    public void calculateTablesMultThr(int numThreads) {
+        classOccTable = new float[size * numClasses * kMax];
+        occTable = new float[size * kMax];
+        if (size == 0 || kMax == 0) {
+            return;
+        }
+        numThreads = Math.max(1, numThreads);
+        // Column scatter phase.
+        int numColThreads = Math.min(numThreads, kMax);
+        Thread[] threads = new Thread[numColThreads];
+        for (int tIndex = 0; tIndex < numColThreads; tIndex++) {
+            threads[tIndex] = new Thread(new ColumnScatterer(tIndex,
+                    numColThreads));
+            threads[tIndex].start();
+        }
+        joinAll(threads);
+        // Prefix sum phase.
+        int numRowThreads = Math.min(numThreads, size);
+        int chunkSize = size / numRowThreads;
+        threads = new Thread[numRowThreads];
+        for (int tIndex = 0; tIndex < numRowThreads - 1; tIndex++) {
+            threads[tIndex] = new Thread(new PrefixSummer(
+                    tIndex * chunkSize, (tIndex + 1) * chunkSize - 1));
+            threads[tIndex].start();
+        }
+        threads[numRowThreads - 1] = new Thread(new PrefixSummer(
+                (numRowThreads - 1) * chunkSize, size - 1));
+        threads[numRowThreads - 1].start();
+        joinAll(threads);
+    }
+
+    /**
+     * Waits for all the threads to finish.
+     *
+     * @param threads Thread[] to join.
+     */
+    private static void joinAll(Thread[] threads) {
+        for (int tIndex = 0; tIndex < threads.length; tIndex++) {
+            if (threads[tIndex] != null) {
+                try {
+                    threads[tIndex].join();
+                } catch (Throwable t) {
+                    System.err.println(t.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * This class scatters a subset of kNN columns into their k-layers.
+     */
+    class ColumnScatterer implements Runnable {
+
+        private int firstColumn;
+        private int columnStep;
+
+        /**
+         * Initialization.
+         *
+         * @param firstColumn Integer that is the first column to process.
+         * @param columnStep Integer that is the step between the processed
+         * columns.
+         */
+        public ColumnScatterer(int firstColumn, int columnStep) {
+            this.firstColumn = firstColumn;
+            this.columnStep = columnStep;
+        }
+
+        @Override
+        public void run() {
+            for (int kIndex = firstColumn; kIndex < kMax;
+                    kIndex += columnStep) {
+                for (int i = 0; i < size; i++) {
+                    classOccTable[(kNeighbors[i][kIndex] * numClasses
+                            + labels[i]) * kMax + kIndex]++;
+                }
+            }
+        }
+    }
+
+    /**
+     * This class performs the prefix sums over the k-dimension for a block of
+     * points and calculates their total occurrence counts.
+     */
+    class PrefixSummer implements Runnable {
+
+        private int startRow;
+        private int endRow;
+
+        /**
+         * Initialization.
+         *
+         * @param startRow Integer that is the index of the start point,
+         * inclusive.
+         * @param endRow Integer that is the index of the end point, inclusive.
+         */
+        public PrefixSummer(int startRow, int endRow) {
+            this.startRow = startRow;
+            this.endRow = endRow;
+        }
+
+        @Override
+        public void run() {
+            int offset;
+            int occOffset;
+            for (int i = startRow; i <= endRow; i++) {
+                occOffset = i * kMax;
+                for (int c = 0; c < numClasses; c++) {
+                    offset = (i * numClasses + c) * kMax;
+                    occTable[occOffset] += classOccTable[offset];
+                    for (int kIndex = 1; kIndex < kMax; kIndex++) {
+                        classOccTable[offset + kIndex] +=
+                                classOccTable[offset + kIndex - 1];
+                        occTable[occOffset + kIndex] +=
+                                classOccTable[offset + kIndex];
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * This method calculates the reverse neighbor sets for kMax in a compact
+     * form. The reverse neighbors of each point are ordered by the position
+     * that the point has in their kNN sets, so the reverse neighbors for any
+     * k <= kMax are a prefix of that list, of length equal to the occurrence
+     * frequency of the point for that k. The tables need to be calculated
+     * first.
+     */
+    public void calculateReverseNeighborIndex() {
+        rnOffsets = new int[size + 1];
+        for (int i = 0; i < size; i++) {
+            rnOffsets[i + 1] = rnOffsets[i] + (int) occTable[i * kMax
+                    + kMax - 1];
+        }
+        rnIndexes = new int[rnOffsets[size]];
+        int[] cursors = new int[size];
+        System.arraycopy(rnOffsets, 0, cursors, 0, size);
+        // Columns are processed in order, which ensures the position ordering.
+        for (int kIndex = 0; kIndex < kMax; kIndex++) {
+            for (int i = 0; i < size; i++) {
+                rnIndexes[cursors[kNeighbors[i][kIndex]]++] = i;
+            }
+        }
+    }
+
+    /**
+     * @return int[] of offsets into the reverse neighbor index array, of
+     * length size + 1.
+     */
+    public int[] getReverseNeighborOffsets() {
+        return rnOffsets;
+    }
+
+    /**
+     * @return int[] of reverse neighbor indexes, ordered by kNN position
+     * within the range of each point.
+     */
+    public int[] getReverseNeighborIndexes() {
+        return rnIndexes;
+    }
+
+    /**
+     * @param point Integer that is the index of the point.
+     * @param cIndex Integer that is the class index.
+     * @param k Integer that is the neighborhood size.
+     * @return Float that is the number of occurrences of the point in the kNN
+     * sets of the specified class.
+     */
+    public float getClassOccurrence(int point, int cIndex, int k) {
+        return classOccTable[(point * numClasses + cIndex) * kMax + k - 1];
+    }
+
+    /**
+     * @param point Integer that is the index of the point.
+     * @param k Integer that is the neighborhood size.
+     * @return Float that is the neighbor occurrence frequency of the point.
+     */
+    public float getOccurrenceFrequency(int point, int k) {
+        return occTable[point * kMax + k - 1];
+    }
+
+    /**
+     * @param k Integer that is the neighborhood size.
+     * @return int[] of neighbor occurrence frequencies for the specified
+     * neighborhood size, the same as would be returned by the
+     * NeighborSetFinder after recalculating the stats for that k.
+     */
+    public int[] getOccurrenceFrequencies(int k) {
+        int[] occFreqs = new int[size];
+        for (int i = 0; i < size; i++) {
+            occFreqs[i] = (int) occTable[i * kMax + k - 1];
+        }
+        return occFreqs;
+    }
+
+    /**
+     * This method extracts the class-conditional neighbor occurrence counts
+     * for the specified neighborhood size. In the results, the cell [i,j]
+     * holds the occurrence count of point j in class i.
+     *
+     * @param k Integer that is the neighborhood size.
+     * @param extendByElement Boolean flag indicating whether to use each point
+     * as its own 0-th nearest neighbor.
+     * @return float[][] representing the class-conditional neighbor occurrence
+     * counts.
+     */
+    public float[][] getClassDataNeighborRelation(int k,
+            boolean extendByElement) {
+        float[][] classDataKNeighborRelation = new float[numClasses][size];
+        for (int i = 0; i < size; i++) {
+            int offset = i * numClasses * kMax + k - 1;
+            for (int c = 0; c < numClasses; c++) {
+                classDataKNeighborRelation[c][i] =
+                        classOccTable[offset + c * kMax];
+            }
+            if (extendByElement) {
+                classDataKNeighborRelation[labels[i]][i]++;
+            }
+        }
+        return classDataKNeighborRelation;
+    }
+
+    /**
+     * This method calculates the class-to-class neighbor occurrence counts for
+     * the specified neighborhood size. In the results, the cell [i,j] holds
+     * the number of occurrences of points from class i in the kNN sets of
+     * points from class j.
+     *
+     * @param k Integer that is the neighborhood size.
+     * @param extendByElement Boolean flag indicating whether to use each point
+     * as its own 0-th nearest neighbor.
+     * @return float[][] representing the class-to-class occurrence counts.
+     */
+    public float[][] getGlobalClassToClassNonNormalized(int k,
+            boolean extendByElement) {
+        float[][] classToClass = new float[numClasses][numClasses];
+        for (int i = 0; i < size; i++) {
+            int offset = i * numClasses * kMax + k - 1;
+            for (int c = 0; c < numClasses; c++) {
+                classToClass[labels[i]][c] += classOccTable[offset + c * kMax];
+            }
+            if (extendByElement) {
+                classToClass[labels[i]][labels[i]]++;
+            }
+        }
+        return classToClass;
+    }
+
+    /**
+     * This method calculates the occurrence tables from the kNN sets in the
+     * provided NeighborSetFinder object.
+     *
+     * @param nsf NeighborSetFinder object holding the calculated kNN sets.
+     * @param numClasses Integer that is the number of classes in the data.
+     * @param kMax Integer that is the maximal neighborhood size.
+     * @param numThreads Integer that is the number of threads to use.
+     * @return ClassOccurrenceTables that were calculated.
+     */
+    public static ClassOccurrenceTables calculateFromNSF(
+            NeighborSetFinder nsf, int numClasses, int kMax, int numThreads) {
+        ClassOccurrenceTables tables = new ClassOccurrenceTables(nsf,
+                numClasses, kMax);
+        tables.calculateTablesMultThr(numThreads);
+        return tables;
+    }
+
+    /**
+     * @param dataSize Integer that is the number of data points.
+     * @return Integer that is a sensible default number of threads for table
+     * calculations on data of the given size.
+     */
+    public static int getDefaultNumThreads(int dataSize) {
+        if (dataSize < 10000) {
+            return 1;
+        }
+        return Math.max(1, Runtime.getRuntime().availableProcessors());
+    }
+}
@@ -0,0 +1,618 @@
+/**
+* Hub Miner: a hubness-aware machine learning experimentation library.
+* Copyright (C) 2014  Nenad Tomasev. Email: nenad.tomasev at gmail.com
+*
+* This program is free software: you can redistribute it and/or modify it under
+* the terms of the GNU General Public License as published by the Free Software
+* Foundation, either version 3 of the License, or (at your option) any later
+* version.
+*
+* This program is distributed in the hope that it will be useful, but WITHOUT
+* ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+* FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License along with
+* this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+package data.neighbors;
+
+import ioformat.FileUtil;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * This class reads and writes kNN graphs in a compact binary format, as an
+ * alternative to the text format of NeighborSetFinder. The file starts with a
+ * header that holds the data size, the neighborhood size, the distance
+ * encoding and a descriptor of the metric that the kNN sets were calculated
+ * with. The kNN sets follow in blocks of rows, and the file ends with the
+ * table of block offsets. Within a row, the neighbor indexes are stored as
+ * variable-length zig-zag encoded deltas, starting from the index of the row
+ * itself, and the distances are stored either as floats or quantized to 16
+ * bits within the range of the stored distances. The blocks are memory-mapped
+ * on first access, so single rows can be read lazily without parsing the whole
+ * file, and the whole graph can be decoded block by block in parallel.
+ *
+ * @author Nenad Tomasev <nenad.tomasev at gmail.com>
+ */
+public class KNNGraphFile implements Closeable {
+
+    // The first four bytes of each file, "KNNG".
+    public static final int MAGIC = 0x4B4E4E47;
+    public static final int VERSION = 1;
+    public static final byte FLOAT_DISTANCES = 0;
+    public static final byte QUANTIZED_DISTANCES = 1;
+    public static final int DEFAULT_BLOCK_SIZE = 1024;
+    private static final int QUANTIZATION_LEVELS = 65535;
+    private RandomAccessFile raf;
+    private FileChannel channel;
+    private int size;
+    private int k;
+    private byte distanceEncoding;
+    private int blockSize;
+    private float minDistance;
+    private float maxDistance;
+    private String metricDescriptor;
+    private long[] blockOffsets;
+    private MappedByteBuffer[] blocks;
+    // The last decoded block, for sequential lazy row access.
+    private int cachedBlockIndex = -1;
+    private int[][] cachedNeighbors;
+    private float[][] cachedDistances;
+
+    /**
+     * Opens a binary kNN graph file for reading.
+     *
+     * @param inFile File that holds the kNN graph.
+     * @throws IOException
+     */
+    public KNNGraphFile(File inFile) throws IOException {
+        raf = new RandomAccessFile(inFile, "r");
+        try {
+            if (raf.readInt() != MAGIC) {
+                throw new IOException("Not a binary kNN graph file: "
+                        + inFile.getPath());
+            }
+            int version = raf.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported kNN graph file version: "
+                        + version);
+            }
+            size = raf.readInt();
+            k = raf.readInt();
+            distanceEncoding = raf.readByte();
+            blockSize = raf.readInt();
+            minDistance = raf.readFloat();
+            maxDistance = raf.readFloat();
+            long indexOffset = raf.readLong();
+            int descriptorLength = raf.readInt();
+            long fileLength = raf.length();
+            if (size < 0 || k < 0 || blockSize <= 0
+                    || (distanceEncoding != FLOAT_DISTANCES
+                    && distanceEncoding != QUANTIZED_DISTANCES)
+                    || descriptorLength < 0 || descriptorLength
+                    > fileLength - raf.getFilePointer()) {
+                throw new IOException("Corrupt kNN graph file header: "
+                        + inFile.getPath());
+            }
+            byte[] descriptorBytes = new byte[descriptorLength];
+            raf.readFully(descriptorBytes);
+            metricDescriptor = new String(descriptorBytes,
+                    StandardCharsets.UTF_8);
+            long dataOffset = raf.getFilePointer();
+            int numBlocks = getNumBlocks(size, blockSize);
+            if (indexOffset < dataOffset
+                    || indexOffset + 8L * (numBlocks + 1) > fileLength) {
+                throw new IOException("The block offset table lies outside "
+                        + "the kNN graph file: " + inFile.getPath());
+            }
+            channel = raf.getChannel();
+            ByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY,
+                    indexOffset, 8L * (numBlocks + 1));
+            blockOffsets = new long[numBlocks + 1];
+            for (int b = 0; b <= numBlocks; b++) {
+                blockOffsets[b] = index.getLong();
+                // The blocks are stored in order between the header and the
+                // offset table.
+                if (blockOffsets[b] < (b == 0 ? dataOffset
+                        : blockOffsets[b - 1])
+                        || blockOffsets[b] > indexOffset) {
+                    throw new IOException("Invalid offset of block " + b
+                            + " in the kNN graph file: " + inFile.getPath());
+                }
+            }
+            blocks = new MappedByteBuffer[numBlocks];
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @param inFile File to check.
+     * @return True if the file starts with the binary kNN graph header, false
+     * otherwise.
+     */
+    public static boolean isBinaryGraphFile(File inFile) {
+        if (inFile == null || !inFile.isFile() || inFile.length() < 4) {
+            return false;
+        }
+        try (DataInputStream dis = new DataInputStream(
+                new FileInputStream(inFile));) {
+            return dis.readInt() == MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Writes the kNN graph to a file, with float distances and the default
+     * block size.
+     *
+     * @param outFile File to write the kNN graph to.
+     * @param kNeighbors int[][] of the kNN sets.
+     * @param kDistances float[][] of the k-distances.
+     * @param kCurrLen int[] of the current kNN set lengths, or null if the kNN
+     * sets are full.
+     * @param metricDescriptor String that describes the metric, or null.
+     * @throws IOException
+     */
+    public static void write(File outFile, int[][] kNeighbors,
+            float[][] kDistances, int[] kCurrLen, String metricDescriptor)
+            throws IOException {
+        write(outFile, kNeighbors, kDistances, kCurrLen, metricDescriptor,
+                false, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Writes the kNN graph to a file.
+     *
+     * @param outFile File to write the kNN graph to.
+     * @param kNeighbors int[][] of the kNN sets.
+     * @param kDistances float[][] of the k-distances.
+     * @param kCurrLen int[] of the current kNN set lengths, or null if the kNN
+     * sets are full.
+     * @param metricDescriptor String that describes the metric, or null.
+     * @param quantize Boolean flag indicating whether to quantize the
+     * distances to 16 bits.
+     * @param blockSize Integer that is the number of rows in a block.
+     * @throws IOException
+     */
+    public static void write(File outFile, int[][] kNeighbors,
+            float[][] kDistances, int[] kCurrLen, String metricDescriptor,
+            boolean quantize, int blockSize) throws IOException {
+        int size = kNeighbors != null ? kNeighbors.length : 0;
+        int k = size > 0 ? kNeighbors[0].length : 0;
+        int[] rowLengths = new int[size];
+        int maxRowLength = 0;
+        float minDist = Float.MAX_VALUE;
+        float maxDist = -Float.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            rowLengths[i] = kCurrLen != null ? Math.min(kCurrLen[i],
+                    kNeighbors[i].length) : kNeighbors[i].length;
+            maxRowLength = Math.max(maxRowLength, rowLengths[i]);
+            for (int kInd = 0; kInd < rowLengths[i]; kInd++) {
+                minDist = Math.min(minDist, kDistances[i][kInd]);
+                maxDist = Math.max(maxDist, kDistances[i][kInd]);
+            }
+        }
+        if (minDist > maxDist) {
+            minDist = 0;
+            maxDist = 0;
+        }
+        // Each row takes at most five bytes per neighbor index, four bytes per
+        // distance and five bytes for the row length. The block size is
+        // limited so that a whole block fits into a single buffer, and there
+        // is no need for blocks larger than the graph.
+        long maxRowBytes = 9L * maxRowLength + 5;
+        long maxBlockSize = Integer.MAX_VALUE / maxRowBytes;
+        if (maxBlockSize < 1) {
+            throw new IllegalArgumentException("The kNN sets are too long to "
+                    + "be encoded: " + maxRowLength);
+        }
+        blockSize = (int) Math.max(1, Math.min(Math.min(blockSize,
+                maxBlockSize), size));
+        byte[] descriptorBytes = (metricDescriptor != null ? metricDescriptor
+                : "").getBytes(StandardCharsets.UTF_8);
+        int numBlocks = getNumBlocks(size, blockSize);
+        long[] blockOffsets = new long[numBlocks + 1];
+        FileUtil.createFile(outFile);
+        try (RandomAccessFile out = new RandomAccessFile(outFile, "rw");) {
+            out.setLength(0);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(size);
+            out.writeInt(k);
+            out.writeByte(quantize ? QUANTIZED_DISTANCES : FLOAT_DISTANCES);
+            out.writeInt(blockSize);
+            out.writeFloat(minDist);
+            out.writeFloat(maxDist);
+            long indexOffsetPosition = out.getFilePointer();
+            // The index offset is filled in once the blocks are written.
+            out.writeLong(0);
+            out.writeInt(descriptorBytes.length);
+            out.write(descriptorBytes);
+            FileChannel outChannel = out.getChannel();
+            ByteBuffer blockBuffer = ByteBuffer.allocate((int) (blockSize
+                    * maxRowBytes));
+            long position = out.getFilePointer();
+            for (int b = 0; b < numBlocks; b++) {
+                blockOffsets[b] = position;
+                blockBuffer.clear();
+                int end = (int) Math.min(size, (b + 1L) * blockSize);
+                for (int i = b * blockSize; i < end; i++) {
+                    encodeRow(blockBuffer, i, kNeighbors[i], kDistances[i],
+                            rowLengths[i], quantize, minDist, maxDist);
+                }
+                blockBuffer.flip();
+                while (blockBuffer.hasRemaining()) {
+                    position += outChannel.write(blockBuffer, position);
+                }
+            }
+            blockOffsets[numBlocks] = position;
+            ByteBuffer index = ByteBuffer.allocate(8 * (numBlocks + 1));
+            for (int b = 0; b <= numBlocks; b++) {
+                index.putLong(blockOffsets[b]);
+            }
+            index.flip();
+            long indexOffset = position;
+            while (index.hasRemaining()) {
+                position += outChannel.write(index, position);
+            }
+            out.seek(indexOffsetPosition);
+            out.writeLong(indexOffset);
+        }
+    }
+
+    /**
+     * @return Integer that is the number of points in the graph.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return Integer that is the neighborhood size.
+     */
+    public int getK() {
+        return k;
+    }
+
+    /**
+     * @return String that describes the metric that the kNN sets were
+     * calculated with, empty if none was provided.
+     */
+    public String getMetricDescriptor() {
+        return metricDescriptor;
+    }
+
+    /**
+     * @return True if the distances are quantized, false otherwise.
+     */
+    public boolean hasQuantizedDistances() {
+        return distanceEncoding == QUANTIZED_DISTANCES;
+    }
+
+    /**
+     * @param index Index of the point.
+     * @return int[] that is the kNN set of the point.
+     * @throws IOException
+     */
+    public synchronized int[] getNeighbors(int index) throws IOException {
+        loadCachedBlock(index / blockSize);
+        return cachedNeighbors[index % blockSize].clone();
+    }
+
+    /**
+     * @param index Index of the point.
+     * @return float[] of the distances to the kNN set of the point.
+     * @throws IOException
+     */
+    public synchronized float[] getDistances(int index) throws IOException {
+        loadCachedBlock(index / blockSize);
+        return cachedDistances[index % blockSize].clone();
+    }
+
+    /**
+     * Decodes the whole kNN graph into the provided arrays, which should be of
+     * the size of the graph. The kNN sets are allocated to length k, with the
+     * current lengths stored in kCurrLen.
+     *
+     * @param kNeighbors int[][] to decode the kNN sets to.
+     * @param kDistances float[][] to decode the k-distances to.
+     * @param kCurrLen int[] to store the kNN set lengths to.
+     * @param numThreads Integer that is the number of threads to use.
+     * @throws IOException
+     */
+    public void readAll(int[][] kNeighbors, float[][] kDistances,
+            int[] kCurrLen, int numThreads) throws IOException {
+        int numBlocks = blocks.length;
+        // Map all blocks upfront, so that the workers only decode.
+        for (int b = 0; b < numBlocks; b++) {
+            getBlock(b);
+        }
+        int threadNum = Math.max(1, Math.min(numThreads, numBlocks));
+        int chunkSize = numBlocks / threadNum;
+        BlockDecoder[] decoders = new BlockDecoder[threadNum];
+        for (int t = 0; t < threadNum; t++) {
+            int start = t * chunkSize;
+            int end = t == threadNum - 1 ? numBlocks : start + chunkSize;
+            decoders[t] = new BlockDecoder(start, end, kNeighbors, kDistances,
+                    kCurrLen);
+        }
+        if (threadNum == 1) {
+            decoders[0].run();
+        } else {
+            Thread[] threads = new Thread[threadNum];
+            for (int t = 0; t < threadNum; t++) {
+                threads[t] = new Thread(decoders[t]);
+                threads[t].start();
+            }
+            for (int t = 0; t < threadNum; t++) {
+                try {
+                    threads[t].join();
+                } catch (Throwable thr) {
+                    System.err.println(thr.getMessage());
+                }
+            }
+        }
+        for (int t = 0; t < threadNum; t++) {
+            if (decoders[t].failure instanceof IOException) {
+                throw (IOException) decoders[t].failure;
+            } else if (decoders[t].failure != null) {
+                throw (RuntimeException) decoders[t].failure;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        blocks = null;
+        cachedNeighbors = null;
+        cachedDistances = null;
+        cachedBlockIndex = -1;
+        raf.close();
+    }
+
+    /**
+     * @param size Integer that is the number of rows.
+     * @param blockSize Integer that is the number of rows in a block.
+     * @return Integer that is the number of blocks.
+     */
+    private static int getNumBlocks(int size, int blockSize) {
+        return (int) (((long) size + blockSize - 1) / blockSize);
+    }
+
+    /**
+     * Maps a block into memory, if it has not been mapped already.
+     *
+     * @param blockIndex Index of the block.
+     * @return ByteBuffer that is a view of the block with its own position.
+     * @throws IOException
+     */
+    private synchronized ByteBuffer getBlock(int blockIndex)
+            throws IOException {
+        if (blocks[blockIndex] == null) {
+            blocks[blockIndex] = channel.map(FileChannel.MapMode.READ_ONLY,
+                    blockOffsets[blockIndex], blockOffsets[blockIndex + 1]
+                    - blockOffsets[blockIndex]);
+        }
+        return blocks[blockIndex].duplicate();
+    }
+
+    /**
+     * Decodes a block into the block cache for lazy row access.
+     *
+     * @param blockIndex Index of the block.
+     * @throws IOException
+     */
+    private void loadCachedBlock(int blockIndex) throws IOException {
+        if (blockIndex == cachedBlockIndex) {
+            return;
+        }
+        int start = blockIndex * blockSize;
+        int numRows = (int) Math.min(size, (long) start + blockSize) - start;
+        cachedNeighbors = new int[numRows][];
+        cachedDistances = new float[numRows][];
+        ByteBuffer block = getBlock(blockIndex);
+        try {
+            for (int r = 0; r < numRows; r++) {
+                int rowLength = readRowLength(block);
+                cachedNeighbors[r] = new int[rowLength];
+                cachedDistances[r] = new float[rowLength];
+                decodeRow(block, start + r, cachedNeighbors[r],
+                        cachedDistances[r], rowLength);
+            }
+        } catch (BufferUnderflowException e) {
+            cachedNeighbors = null;
+            cachedDistances = null;
+            cachedBlockIndex = -1;
+            throw new IOException("Truncated kNN graph block " + blockIndex,
+                    e);
+        }
+        cachedBlockIndex = blockIndex;
+    }
+
+    /**
+     * Encodes a single kNN set.
+     *
+     * @param buffer ByteBuffer to write the row to.
+     * @param index Index of the point.
+     * @param neighbors int[] that is the kNN set of the point.
+     * @param distances float[] of the distances to the kNN set of the point.
+     * @param rowLength Integer that is the length of the kNN set.
+     * @param quantize Boolean flag indicating whether to quantize the
+     * distances.
+     * @param minDist Float that is the minimal distance in the graph.
+     * @param maxDist Float that is the maximal distance in the graph.
+     */
+    private static void encodeRow(ByteBuffer buffer, int index,
+            int[] neighbors, float[] distances, int rowLength,
+            boolean quantize, float minDist, float maxDist) {
+        writeVarInt(buffer, rowLength);
+        int previous = index;
+        for (int kInd = 0; kInd < rowLength; kInd++) {
+            int delta = neighbors[kInd] - previous;
+            writeVarInt(buffer, (delta << 1) ^ (delta >> 31));
+            previous = neighbors[kInd];
+        }
+        if (quantize) {
+            float range = maxDist - minDist;
+            for (int kInd = 0; kInd < rowLength; kInd++) {
+                int level = range > 0 ? Math.round((distances[kInd] - minDist)
+                        / range * QUANTIZATION_LEVELS) : 0;
+                level = Math.max(0, Math.min(QUANTIZATION_LEVELS, level));
+                buffer.putShort((short) level);
+            }
+        } else {
+            for (int kInd = 0; kInd < rowLength; kInd++) {
+                buffer.putFloat(distances[kInd]);
+            }
+        }
+    }
+
+    /**
+     * Reads the length of a kNN set and checks it against the remaining bytes
+     * of the block, as each neighbor takes up at least one byte.
+     *
+     * @param block ByteBuffer to read the row length from.
+     * @return Integer that is the length of the kNN set.
+     * @throws IOException
+     */
+    private static int readRowLength(ByteBuffer block) throws IOException {
+        int rowLength = readVarInt(block);
+        if (rowLength < 0 || rowLength > block.remaining()) {
+            throw new IOException("Invalid kNN set length: " + rowLength);
+        }
+        return rowLength;
+    }
+
+    /**
+     * Decodes a single kNN set, after its length has been read.
+     *
+     * @param buffer ByteBuffer to read the row from.
+     * @param index Index of the point.
+     * @param neighbors int[] to decode the kNN set to.
+     * @param distances float[] to decode the distances to.
+     * @param rowLength Integer that is the length of the kNN set.
+     * @throws IOException
+     */
+    private void decodeRow(ByteBuffer buffer, int index, int[] neighbors,
+            float[] distances, int rowLength) throws IOException {
+        int previous = index;
+        for (int kInd = 0; kInd < rowLength; kInd++) {
+            int zigzag = readVarInt(buffer);
+            previous += (zigzag >>> 1) ^ -(zigzag & 1);
+            if (previous < 0 || previous >= size) {
+                throw new IOException("Invalid neighbor index " + previous
+                        + " in the kNN set of " + index);
+            }
+            neighbors[kInd] = previous;
+        }
+        if (distanceEncoding == QUANTIZED_DISTANCES) {
+            float step = (maxDistance - minDistance) / QUANTIZATION_LEVELS;
+            for (int kInd = 0; kInd < rowLength; kInd++) {
+                distances[kInd] = minDistance + step
+                        * (buffer.getShort() & 0xFFFF);
+            }
+        } else {
+            for (int kInd = 0; kInd < rowLength; kInd++) {
+                distances[kInd] = buffer.getFloat();
+            }
+        }
+    }
+
+    /**
+     * @param buffer ByteBuffer to write to.
+     * @param value Integer to write as an unsigned variable-length integer.
+     */
+    private static void writeVarInt(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * @param buffer ByteBuffer to read from.
+     * @return Integer that was read as an unsigned variable-length integer.
+     */
+    private static int readVarInt(ByteBuffer buffer) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    /**
+     * This worker decodes a range of blocks into the kNN arrays.
+     */
+    class BlockDecoder implements Runnable {
+
+        private int startBlock;
+        private int endBlock;
+        private int[][] kNeighbors;
+        private float[][] kDistances;
+        private int[] kCurrLen;
+        // The failure that stopped the decoding, if any.
+        private Exception failure;
+
+        /**
+         * Initialization.
+         *
+         * @param startBlock Integer that is the first block to decode.
+         * @param endBlock Integer that is the end of the block range.
+         * @param kNeighbors int[][] to decode the kNN sets to.
+         * @param kDistances float[][] to decode the k-distances to.
+         * @param kCurrLen int[] to store the kNN set lengths to.
+         */
+        public BlockDecoder(int startBlock, int endBlock, int[][] kNeighbors,
+                float[][] kDistances, int[] kCurrLen) {
+            this.startBlock = startBlock;
+            this.endBlock = endBlock;
+            this.kNeighbors = kNeighbors;
+            this.kDistances = kDistances;
+            this.kCurrLen = kCurrLen;
+        }
+
+        @Override
+        public void run() {
+            try {
+                for (int b = startBlock; b < endBlock; b++) {
+                    ByteBuffer block = getBlock(b);
+                    int end = (int) Math.min(size, (b + 1L) * blockSize);
+                    for (int i = b * blockSize; i < end; i++) {
+                        int rowLength = readRowLength(block);
+                        kNeighbors[i] = new int[Math.max(k, rowLength)];
+                        kDistances[i] = new float[Math.max(k, rowLength)];
+                        Arrays.fill(kDistances[i], rowLength,
+                                kDistances[i].length, Float.MAX_VALUE);
+                        decodeRow(block, i, kNeighbors[i], kDistances[i],
+                                rowLength);
+                        kCurrLen[i] = rowLength;
+                    }
+                }
+            } catch (BufferUnderflowException e) {
+                failure = new IOException("Truncated kNN graph block.", e);
+            } catch (IOException | RuntimeException e) {
+                failure = e;
+            }
+        }
+    }
+}
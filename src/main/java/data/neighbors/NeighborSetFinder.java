@@ -20,11 +20,13 @@ import data.neighbors.approximate.AppKNNGraphLanczosBisection;
 import data.representation.DataInstance;
 import data.representation.DataSet;
 import distances.primary.CombinedMetric;
+import distances.primary.DTW;
 import ioformat.FileUtil;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileWriter;
+import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.io.Serializable;
@@ -77,8 +79,11 @@ public class NeighborSetFinder implements Serializable {
     private int[] kBadFrequencies = null;
     // The good neighbor occurrence frequencies.
     private int[] kGoodFrequencies = null;
-    // Reverse neighbor sets.
-    private ArrayList<Integer>[] reverseNeighbors = null;
+    // Reverse neighbor sets, in the compressed sparse row form.
+    private ReverseNeighborIndex reverseNeighborIndex = null;
+    // Boxed reverse neighbor lists for the callers of getReverseNeighbors,
+    // built on demand and discarded whenever the reverse neighbors change.
+    private transient ArrayList<Integer>[] reverseNeighborLists = null;
     // Boolean flag indicating whether the distance matrix was provided.
     private boolean distancesCalculated = false;
     // Variance of the distance values.
@@ -114,6 +119,11 @@ public class NeighborSetFinder implements Serializable {
     private float[] kRNNEntropies = null;
     // The currently operating neighborhood size.
     private int currK;
+    // Flags of the points that were removed from the kNN graph by
+    // removeInstance, or null if no points were removed.
+    private boolean[] removedPoints = null;
+    // The number of removed points.
+    private int numRemovedPoints = 0;
     // Small datasets can be extended by synthetic instances from the Gaussian
     // data model.
 
@@ -216,6 +226,23 @@ public class NeighborSetFinder implements Serializable {
         }
     }
 
+    /**
+     * This method persists the calculated kNN sets to a file in the binary
+     * kNN graph format, which is much more compact and faster to load than the
+     * text format.
+     *
+     * @param outFile File to save the kNN sets to.
+     * @param quantize Boolean flag indicating whether to quantize the
+     * k-distances to 16 bits.
+     * @throws Exception
+     */
+    public void saveNeighborSetsBinary(File outFile, boolean quantize)
+            throws Exception {
+        KNNGraphFile.write(outFile, kNeighbors, kDistances, kCurrLen,
+                cmet != null ? cmet.toString() : null, quantize,
+                KNNGraphFile.DEFAULT_BLOCK_SIZE);
+    }
+
     /**
      * This method loads the NeighborSetFinder object from a kNN set file.
      *
@@ -239,6 +266,10 @@ public class NeighborSetFinder implements Serializable {
      * @throws Exception
      */
     public void loadNeighborSets(File inFile, DataSet dset) throws Exception {
+        if (KNNGraphFile.isBinaryGraphFile(inFile)) {
+            loadNeighborSetsBinary(inFile, dset);
+            return;
+        }
         try (BufferedReader br = new BufferedReader(
                 new InputStreamReader(new FileInputStream(inFile)));) {
             this.dset = dset;
@@ -260,11 +291,6 @@ public class NeighborSetFinder implements Serializable {
             kGoodFrequencies = new int[size];
             kEntropies = new float[size];
             kRNNEntropies = new float[size];
-            reverseNeighbors = new ArrayList[size];
-            // Initialize the reverse neighbor lists.
-            for (int i = 0; i < size; i++) {
-                reverseNeighbors[i] = new ArrayList<>(k);
-            }
             int label;
             for (int i = 0; i < size; i++) {
                 label = dset.getLabelOf(i);
@@ -284,8 +310,6 @@ public class NeighborSetFinder implements Serializable {
                     }
                     // Update the total occurrence count.
                     kNeighborFrequencies[kNeighbors[i][kInd]]++;
-                    // Update the reverse neighbor list.
-                    reverseNeighbors[kNeighbors[i][kInd]].add(i);
                 }
                 // The following line holds the distances to the previous kNN
                 // set.
@@ -296,12 +320,72 @@ public class NeighborSetFinder implements Serializable {
                     kDistances[i][kInd] = Float.parseFloat(lineItems[kInd]);
                 }
             }
+            setReverseNeighborIndex(ReverseNeighborIndex.build(kNeighbors,
+                    kCurrLen));
             calculateHubnessStats(false);
         } catch (Exception e) {
             System.out.println(e.getMessage());
         }
     }
 
+    /**
+     * This method loads the kNN sets from a file in the binary kNN graph
+     * format. The blocks of the file are decoded in parallel.
+     *
+     * @param inFile File where the kNN sets were persisted.
+     * @param dset DataSet object that the kNN sets point to.
+     * @throws Exception
+     */
+    public void loadNeighborSetsBinary(File inFile, DataSet dset)
+            throws Exception {
+        try (KNNGraphFile graphFile = new KNNGraphFile(inFile);) {
+            if (dset == null || graphFile.size() != dset.size()) {
+                throw new IOException("The kNN graph in " + inFile.getPath()
+                        + " has " + graphFile.size() + " points, while the "
+                        + "data set has " + (dset != null ? dset.size() : 0)
+                        + ".");
+            }
+            this.dset = dset;
+            int size = graphFile.size();
+            int k = graphFile.getK();
+            currK = k;
+            kNeighbors = new int[size][];
+            kDistances = new float[size][];
+            kCurrLen = new int[size];
+            graphFile.readAll(kNeighbors, kDistances, kCurrLen,
+                    Runtime.getRuntime().availableProcessors());
+            kNeighborFrequencies = new int[size];
+            kBadFrequencies = new int[size];
+            kGoodFrequencies = new int[size];
+            kEntropies = new float[size];
+            kRNNEntropies = new float[size];
+            int label;
+            for (int i = 0; i < size; i++) {
+                label = dset.getLabelOf(i);
+                for (int kInd = 0; kInd < kCurrLen[i]; kInd++) {
+                    if (label == dset.getLabelOf(kNeighbors[i][kInd])) {
+                        kGoodFrequencies[kNeighbors[i][kInd]]++;
+                    } else {
+                        kBadFrequencies[kNeighbors[i][kInd]]++;
+                    }
+                    kNeighborFrequencies[kNeighbors[i][kInd]]++;
+                }
+            }
+            if (cmet == null && !graphFile.getMetricDescriptor().isEmpty()) {
+                try {
+                    cmet = CombinedMetric.fromString(
+                            graphFile.getMetricDescriptor());
+                } catch (Exception e) {
+                    // The metric is only informative for the loaded graph.
+                    cmet = null;
+                }
+            }
+            setReverseNeighborIndex(ReverseNeighborIndex.build(kNeighbors,
+                    kCurrLen));
+            calculateHubnessStats(false);
+        }
+    }
+
     /**
      * @param k Integer that is the queried neighborhood size.
      * @return True if the calculated kNN sets' length exceeds k, false
@@ -425,19 +509,8 @@ public class NeighborSetFinder implements Serializable {
         nsfCopy.stDevGoodMinusBadness = stDevGoodMinusBadness;
         nsfCopy.stDevRelativeGoodMinusBadness = stDevRelativeGoodMinusBadness;
         // Copy the reverse neighbor lists.
-        if (reverseNeighbors != null) {
-            nsfCopy.reverseNeighbors = new ArrayList[reverseNeighbors.length];
-            for (int i = 0; i < reverseNeighbors.length; i++) {
-                if (reverseNeighbors[i] != null) {
-                    nsfCopy.reverseNeighbors[i] =
-                            new ArrayList<>(reverseNeighbors[i].size());
-                    for (int p = 0; p < reverseNeighbors[i].size(); p++) {
-                        nsfCopy.reverseNeighbors[i].add(
-                                reverseNeighbors[i].get(p));
-                    }
-
-                }
-            }
+        if (reverseNeighborIndex != null) {
+            nsfCopy.reverseNeighborIndex = reverseNeighborIndex.copy();
         }
         return nsfCopy;
     }
@@ -472,16 +545,14 @@ public class NeighborSetFinder implements Serializable {
         this.kCurrLen = kcurrLen;
         // Set the operating neighborhood size to the length of the kNN sets.
         currK = k;
-        reverseNeighbors = new ArrayList[dset.size()];
-        for (int i = 0; i < dset.size(); i++) {
-            reverseNeighbors[i] = new ArrayList<>(10 * k);
-        }
+        setReverseNeighborIndex(ReverseNeighborIndex.build(kneighbors, k,
+                kcurrLen, dset.size(), Runtime.getRuntime().
+                availableProcessors()));
         kNeighborFrequencies = new int[kneighbors.length];
         kBadFrequencies = new int[kneighbors.length];
         kGoodFrequencies = new int[kneighbors.length];
         for (int i = 0; i < kneighbors.length; i++) {
             for (int kInd = 0; kInd < kcurrLen[i]; kInd++) {
-                reverseNeighbors[kneighbors[i][kInd]].add(i);
                 kNeighborFrequencies[kneighbors[i][kInd]]++;
                 if (dset.data.get(i).getCategory() != dset.data.get(
                         kneighbors[i][kInd]).getCategory()) {
@@ -570,19 +641,16 @@ public class NeighborSetFinder implements Serializable {
         Arrays.fill(kCurrLen, k);
         // Set the operating neighborhood size.
         currK = k;
-        // Initialize the reverse neighbor lists.
-        reverseNeighbors = new ArrayList[dset.size()];
-        for (int i = 0; i < dset.size(); i++) {
-            reverseNeighbors[i] = new ArrayList<>(10 * k);
-        }
+        // Build the reverse neighbor lists.
+        setReverseNeighborIndex(ReverseNeighborIndex.build(kneighbors, k,
+                null, dset.size(), Runtime.getRuntime().
+                availableProcessors()));
         kNeighborFrequencies = new int[kneighbors.length];
         kBadFrequencies = new int[kneighbors.length];
         kGoodFrequencies = new int[kneighbors.length];
-        // Fill in the reverse neighbor lists and count the occurence
-        // frequencies.
+        // Count the occurence frequencies.
         for (int i = 0; i < kneighbors.length; i++) {
             for (int kInd = 0; kInd < k; kInd++) {
-                reverseNeighbors[kneighbors[i][kInd]].add(i);
                 kNeighborFrequencies[kneighbors[i][kInd]]++;
                 if (dset.data.get(i).getCategory() != dset.data.get(
                         kneighbors[i][kInd]).getCategory()) {
@@ -799,23 +867,20 @@ public class NeighborSetFinder implements Serializable {
             }
         }
         nsf.cmet = cmet;
-        // Initialize the reverse neighbor lists.
-        nsf.reverseNeighbors = new ArrayList[nsf.dset.size()];
-        for (int i = 0; i < nsf.reverseNeighbors.length; i++) {
-            nsf.reverseNeighbors[i] = new ArrayList<>(appNSF.getK() * 4);
-        }
         nsf.distancesCalculated = true;
         // Get the kNN sets and the k-distances.
         nsf.kDistances = appNSF.getKdistances();
         nsf.kNeighbors = appNSF.getKneighbors();
+        // Build the reverse neighbor lists.
+        nsf.setReverseNeighborIndex(ReverseNeighborIndex.build(nsf.kNeighbors,
+                appNSF.getK(), null, nsf.dset.size(), Runtime.getRuntime().
+                availableProcessors()));
         nsf.kNeighborFrequencies = new int[nsf.kNeighbors.length];
         nsf.kBadFrequencies = new int[nsf.kNeighbors.length];
         nsf.kGoodFrequencies = new int[nsf.kNeighbors.length];
-        // Fill in the reverse neighbor lists and the occurrence frequency
-        // counts.
+        // Fill in the occurrence frequency counts.
         for (int i = 0; i < nsf.kNeighbors.length; i++) {
             for (int j = 0; j < appNSF.getK(); j++) {
-                nsf.reverseNeighbors[nsf.kNeighbors[i][j]].add(i);
                 nsf.kNeighborFrequencies[nsf.kNeighbors[i][j]]++;
                 if (nsf.dset.data.get(i).getCategory() != nsf.dset.data.get(
                         nsf.kNeighbors[i][j]).getCategory()) {
@@ -900,10 +965,45 @@ public class NeighborSetFinder implements Serializable {
 
     /**
      * @return ArrayList<Integer>[] that is an array of reverse neighbor lists
-     * for all points in the data.
+     * for all points in the data. The lists are built from the reverse
+     * neighbor index on the first call and reused until the kNN sets change,
+     * so they should not be modified. The methods of the index should be
+     * preferred, as they avoid the boxing.
      */
     public ArrayList<Integer>[] getReverseNeighbors() {
-        return reverseNeighbors;
+        if (reverseNeighborIndex == null) {
+            return null;
+        }
+        if (reverseNeighborLists == null) {
+            reverseNeighborLists = reverseNeighborIndex.toLists();
+        }
+        return reverseNeighborLists;
+    }
+
+    /**
+     * @return ReverseNeighborIndex that holds the reverse neighbor lists for
+     * all points in the data.
+     */
+    public ReverseNeighborIndex getReverseNeighborIndex() {
+        return reverseNeighborIndex;
+    }
+
+    /**
+     * @param index Index of the point.
+     * @return int[] that is the reverse neighbor list of the point.
+     */
+    public int[] getReverseNeighbors(int index) {
+        return reverseNeighborIndex.getReverseNeighbors(index);
+    }
+
+    /**
+     * @param reverseNeighborIndex ReverseNeighborIndex that holds the reverse
+     * neighbor lists for all points in the data.
+     */
+    private void setReverseNeighborIndex(
+            ReverseNeighborIndex reverseNeighborIndex) {
+        this.reverseNeighborIndex = reverseNeighborIndex;
+        reverseNeighborLists = null;
     }
 
     public float getAvgDistToNNposition(int kPos) {
@@ -1080,17 +1180,14 @@ public class NeighborSetFinder implements Serializable {
         // neighbor sets for the calculated restriction.
         int currClass;
         int nClass;
-        nsfRestriction.reverseNeighbors = new ArrayList[protoSize];
-        for (int i = 0; i < protoSize; i++) {
-            nsfRestriction.reverseNeighbors[i] = new ArrayList<>(10 * kSmaller);
-        }
+        nsfRestriction.setReverseNeighborIndex(ReverseNeighborIndex.build(
+                nsfRestriction.kNeighbors, kSmaller, null, protoSize,
+                Runtime.getRuntime().availableProcessors()));
         for (int i = 0; i < protoSize; i++) {
             currClass = protoDSet.getLabelOf(i);
 
             for (int j = 0; j < kSmaller; j++) {
                 nClass = protoDSet.getLabelOf(nsfRestriction.kNeighbors[i][j]);
-                nsfRestriction.reverseNeighbors[
-                        nsfRestriction.kNeighbors[i][j]].add(i);
                 if (nClass == currClass) {
                     nsfRestriction.kGoodFrequencies[
                             nsfRestriction.kNeighbors[i][j]]++;
@@ -1138,15 +1235,9 @@ public class NeighborSetFinder implements Serializable {
         }
         Arrays.fill(kCurrLen, kSmaller);
         nsfRestriction.currK = kSmaller;
-        nsfRestriction.reverseNeighbors = new ArrayList[dset.size()];
-        for (int i = 0; i < dset.size(); i++) {
-            nsfRestriction.reverseNeighbors[i] = new ArrayList<>(10 * kSmaller);
-        }
-        for (int i = 0; i < dset.size(); i++) {
-            for (int j = 0; j < kSmaller; j++) {
-                nsfRestriction.reverseNeighbors[kNeighbors[i][j]].add(i);
-            }
-        }
+        nsfRestriction.setReverseNeighborIndex(ReverseNeighborIndex.build(
+                kNeighbors, kSmaller, null, dset.size(), Runtime.getRuntime().
+                availableProcessors()));
         // Subtract the additional occurrence counts in the k-range between the
         // two k values.
         for (int i = 0; i < dset.size(); i++) {
@@ -1609,7 +1700,8 @@ public class NeighborSetFinder implements Serializable {
         // Check the first half of the points, with the index value below the
         // query index value.
         for (int i = 0; i < instanceIndex; i++) {
-            currDist = cmet.dist(instance, dset.data.get(i));
+            currDist = cmet.dist(instance, dset.data.get(i),
+                    nDists[neighborhoodSize - 1]);
             if (kCurrLen > 0) {
                 if (kCurrLen == neighborhoodSize) {
                     if (currDist < nDists[kCurrLen - 1]) {
@@ -1646,14 +1738,15 @@ public class NeighborSetFinder implements Serializable {
                 }
             } else {
                 nDists[0] = currDist;
-                nDists[0] = i;
+                neighbors[0] = i;
                 kCurrLen = 1;
             }
         }
         // Check the second half of the points, with the index value above the
         // query index value.
         for (int i = instanceIndex + 1; i < dset.size(); i++) {
-            currDist = cmet.dist(instance, dset.data.get(i));
+            currDist = cmet.dist(instance, dset.data.get(i),
+                    nDists[neighborhoodSize - 1]);
             if (kCurrLen > 0) {
                 if (kCurrLen == neighborhoodSize) {
                     if (currDist < nDists[kCurrLen - 1]) {
@@ -1839,7 +1932,8 @@ public class NeighborSetFinder implements Serializable {
         Arrays.fill(nDists, Float.MAX_VALUE);
         int l;
         for (int i = 0; i < dset.size(); i++) {
-            currDist = cmet.dist(instance, dset.data.get(i));
+            currDist = cmet.dist(instance, dset.data.get(i),
+                    nDists[neighborhoodSize - 1]);
             if (kCurrLen > 0) {
                 if (kCurrLen == neighborhoodSize) {
                     if (currDist < nDists[kCurrLen - 1]) {
@@ -1910,7 +2004,8 @@ public class NeighborSetFinder implements Serializable {
             if (tabuMap.containsKey(i)) {
                 continue;
             }
-            tempDist = cmet.dist(instance, dset.data.get(i));
+            tempDist = cmet.dist(instance, dset.data.get(i),
+                    nDists[neighborhoodSize - 1]);
             if (kCurrLen > 0) {
                 if (kCurrLen == neighborhoodSize) {
                     if (tempDist < nDists[kCurrLen - 1]) {
@@ -2416,17 +2511,26 @@ public class NeighborSetFinder implements Serializable {
      */
     public void calculateHubnessStats(boolean recalculateOccurrences) {
         if (recalculateOccurrences) {
-            reverseNeighbors = new ArrayList[dset.size()];
-            for (int i = 0; i < dset.size(); i++) {
-                reverseNeighbors[i] = new ArrayList<>(10 * currK);
+            // The removed points do not contribute any occurrences.
+            int[] rowLengths = null;
+            if (numRemovedPoints > 0) {
+                rowLengths = new int[kNeighbors.length];
+                for (int i = 0; i < kNeighbors.length; i++) {
+                    rowLengths[i] = isRemoved(i) ? 0 : currK;
+                }
             }
+            setReverseNeighborIndex(ReverseNeighborIndex.build(kNeighbors,
+                    currK, rowLengths, dset.size(), Runtime.getRuntime().
+                    availableProcessors()));
             // Count the neighbor occurrence frequencies.
             kNeighborFrequencies = new int[kNeighbors.length];
             kBadFrequencies = new int[kNeighbors.length];
             kGoodFrequencies = new int[kNeighbors.length];
             for (int i = 0; i < kNeighbors.length; i++) {
+                if (isRemoved(i)) {
+                    continue;
+                }
                 for (int kInd = 0; kInd < currK; kInd++) {
-                    reverseNeighbors[kNeighbors[i][kInd]].add(i);
                     kNeighborFrequencies[kNeighbors[i][kInd]]++;
                     if (dset.data.get(i).getCategory() != dset.data.get(
                             kNeighbors[i][kInd]).getCategory()) {
@@ -2447,7 +2551,13 @@ public class NeighborSetFinder implements Serializable {
         stDevGoodMinusBadness = 0;
         meanRelativeGoodMinusBadness = 0;
         stDevRelativeGoodMinusBadness = 0;
+        // The removed points are not included in the stats.
+        float numPoints = Math.max(1,
+                kBadFrequencies.length - numRemovedPoints);
         for (int i = 0; i < kBadFrequencies.length; i++) {
+            if (isRemoved(i)) {
+                continue;
+            }
             meanOccFreq += kNeighborFrequencies[i];
             meanOccBadness += kBadFrequencies[i];
             meanOccGoodness += kGoodFrequencies[i];
@@ -2459,12 +2569,15 @@ public class NeighborSetFinder implements Serializable {
                 meanRelativeGoodMinusBadness += 1;
             }
         }
-        meanOccFreq /= (float) kNeighborFrequencies.length;
-        meanOccBadness /= (float) kBadFrequencies.length;
-        meanOccGoodness /= (float) kGoodFrequencies.length;
-        meanGoodMinusBadness /= (float) kGoodFrequencies.length;
-        meanRelativeGoodMinusBadness /= (float) kGoodFrequencies.length;
+        meanOccFreq /= numPoints;
+        meanOccBadness /= numPoints;
+        meanOccGoodness /= numPoints;
+        meanGoodMinusBadness /= numPoints;
+        meanRelativeGoodMinusBadness /= numPoints;
         for (int i = 0; i < kBadFrequencies.length; i++) {
+            if (isRemoved(i)) {
+                continue;
+            }
             stDevOccFreq += ((meanOccFreq - kNeighborFrequencies[i])
                     * (meanOccFreq - kNeighborFrequencies[i]));
             stDevOccBadness += ((meanOccBadness - kBadFrequencies[i])
@@ -2487,11 +2600,11 @@ public class NeighborSetFinder implements Serializable {
                         * (meanRelativeGoodMinusBadness - 1);
             }
         }
-        stDevOccFreq /= (float) kNeighborFrequencies.length;
-        stDevOccBadness /= (float) kBadFrequencies.length;
-        stDevOccGoodness /= (float) kGoodFrequencies.length;
-        stDevGoodMinusBadness /= (float) kGoodFrequencies.length;
-        stDevRelativeGoodMinusBadness /= (float) kGoodFrequencies.length;
+        stDevOccFreq /= numPoints;
+        stDevOccBadness /= numPoints;
+        stDevOccGoodness /= numPoints;
+        stDevGoodMinusBadness /= numPoints;
+        stDevRelativeGoodMinusBadness /= numPoints;
         stDevOccFreq = Math.sqrt(stDevOccFreq);
         stDevOccBadness = Math.sqrt(stDevOccBadness);
         stDevOccGoodness = Math.sqrt(stDevOccGoodness);
@@ -2534,7 +2647,9 @@ public class NeighborSetFinder implements Serializable {
             return;
         }
 
-        ArrayList<Integer> rnnIndexList = reverseNeighbors[tNeighborIndex];
+        int[] rnnIndexes = reverseNeighborIndex.getReverseNeighbors(
+                tNeighborIndex);
+        reverseNeighborLists = null;
         ArrayList<Integer> neighborIntervals;
         int upperVal, lowerVal;
         int minIndex, maxIndex;
@@ -2546,8 +2661,8 @@ public class NeighborSetFinder implements Serializable {
         kGoodFrequencies[tNeighborIndex] = 0;
         kBadFrequencies[tNeighborIndex] = 0;
         int currClass;
-        for (int tInd = 0; tInd < rnnIndexList.size(); tInd++) {
-            int i = rnnIndexList.get(tInd);
+        for (int tInd = 0; tInd < rnnIndexes.length; tInd++) {
+            int i = rnnIndexes[tInd];
             currClass = dset.getLabelOf(i);
             remNeighborIndex = 0;
             while (remNeighborIndex < kCurrLen[i]
@@ -2656,12 +2771,13 @@ public class NeighborSetFinder implements Serializable {
                         kBadFrequencies[kNeighbors[i][kCurrLen[i] - 1]]++;
                     }
                     kNeighborFrequencies[kNeighbors[i][kCurrLen[i] - 1]]++;
-                    reverseNeighbors[kNeighbors[i][kCurrLen[i] - 1]].add(i);
+                    reverseNeighborIndex.add(kNeighbors[i][kCurrLen[i] - 1],
+                            i);
                 }
             }
         }
         // Empty the RNN set of the tabu neighbor point.
-        reverseNeighbors[tNeighborIndex] = new ArrayList<>(4);
+        reverseNeighborIndex.clear(tNeighborIndex);
         kNeighborFrequencies[tNeighborIndex] = 0;
         kGoodFrequencies[tNeighborIndex] = 0;
         kBadFrequencies[tNeighborIndex] = 0;
@@ -2855,16 +2971,14 @@ public class NeighborSetFinder implements Serializable {
                 }
             }
         }
-        reverseNeighbors = new ArrayList[datasize];
-        for (int i = 0; i < dset.size(); i++) {
-            reverseNeighbors[i] = new ArrayList<>(10 * k);
-        }
+        setReverseNeighborIndex(ReverseNeighborIndex.build(kNeighbors, k,
+                null, dset.size(), Runtime.getRuntime().
+                availableProcessors()));
         kNeighborFrequencies = new int[kNeighbors.length];
         kBadFrequencies = new int[kNeighbors.length];
         kGoodFrequencies = new int[kNeighbors.length];
         for (int i = 0; i < kNeighbors.length; i++) {
             for (int j = 0; j < k; j++) {
-                reverseNeighbors[kNeighbors[i][j]].add(i);
                 kNeighborFrequencies[kNeighbors[i][j]]++;
                 if (dset.data.get(i).getCategory() != dset.data.get(
                         kNeighbors[i][j]).getCategory()) {
@@ -2937,6 +3051,32 @@ public class NeighborSetFinder implements Serializable {
                 Math.sqrt(stDevRelativeGoodMinusBadness);
     }
     
+    /**
+     * This method calculates the k-nearest neighbor sets under the DTW
+     * distance without the distance matrix, by using the lower-bound pruning
+     * cascade of the DTW metric. This makes the kNN graphs of large time
+     * series collections feasible.
+     *
+     * @param k Integer that is the neighborhood size.
+     * @param numThreads Integer that is the number of threads to use.
+     * @throws Exception if the float metric is not DTW.
+     */
+    public void calculateDTWNeighborSets(int k, int numThreads)
+            throws Exception {
+        if (dset == null || dset.isEmpty()) {
+            return;
+        }
+        if (cmet == null || !(cmet.getFloatMetric() instanceof DTW)) {
+            throw new Exception("The float metric is not DTW.");
+        }
+        DTW dtw = (DTW) cmet.getFloatMetric();
+        int[][] kneighbors = new int[dset.size()][k];
+        float[][] kdistances = new float[dset.size()][k];
+        dtw.findKNeighbors(DTW.getSeries(dset), k, numThreads, kneighbors,
+                kdistances);
+        setKNeighbors(kneighbors, kdistances);
+    }
+
     /**
      * This method calculates the k-nearest neighbor sets in a multi-threaded
      * way.
@@ -2955,11 +3095,6 @@ public class NeighborSetFinder implements Serializable {
         kNeighbors = new int[dset.size()][k];
         kDistances = new float[dset.size()][k];
         kCurrLen = new int[dset.size()];
-        reverseNeighbors = new ArrayList[dset.size()];
-        for (int i = 0; i < dset.size(); i++) {
-            reverseNeighbors[i] = new ArrayList<>(10 * k);
-        }
-
         int size = dset.size();
         int chunkSize = size / numThreads;
         Thread[] threads = new Thread[numThreads];
@@ -2981,13 +3116,14 @@ public class NeighborSetFinder implements Serializable {
                 }
             }
         }
+        setReverseNeighborIndex(ReverseNeighborIndex.build(kNeighbors, k,
+                null, dset.size(), numThreads));
         // Calculate the occurrence stats.
         kNeighborFrequencies = new int[kNeighbors.length];
         kBadFrequencies = new int[kNeighbors.length];
         kGoodFrequencies = new int[kNeighbors.length];
         for (int i = 0; i < kNeighbors.length; i++) {
             for (int j = 0; j < k; j++) {
-                reverseNeighbors[kNeighbors[i][j]].add(i);
                 kNeighborFrequencies[kNeighbors[i][j]]++;
                 if (dset.data.get(i).getCategory() != dset.data.get(
                         kNeighbors[i][j]).getCategory()) {
@@ -3075,11 +3211,6 @@ public class NeighborSetFinder implements Serializable {
         kNeighbors = new int[dset.size()][k];
         kDistances = new float[dset.size()][k];
         kCurrLen = new int[dset.size()];
-        reverseNeighbors = new ArrayList[dset.size()];
-        for (int i = 0; i < dset.size(); i++) {
-            reverseNeighbors[i] = new ArrayList<>(10 * k);
-        }
-
         int size = dset.size();
         int chunkSize = size / numThreads;
         Thread[] threads = new Thread[numThreads];
@@ -3100,13 +3231,14 @@ public class NeighborSetFinder implements Serializable {
                 }
             }
         }
+        setReverseNeighborIndex(ReverseNeighborIndex.build(kNeighbors, k,
+                null, dset.size(), numThreads));
         // Calculate the occurrence stats.
         kNeighborFrequencies = new int[kNeighbors.length];
         kBadFrequencies = new int[kNeighbors.length];
         kGoodFrequencies = new int[kNeighbors.length];
         for (int i = 0; i < kNeighbors.length; i++) {
             for (int j = 0; j < k; j++) {
-                reverseNeighbors[kNeighbors[i][j]].add(i);
                 kNeighborFrequencies[kNeighbors[i][j]]++;
                 if (dset.data.get(i).getCategory() != dset.data.get(
                         kNeighbors[i][j]).getCategory()) {
@@ -3294,6 +3426,294 @@ public class NeighborSetFinder implements Serializable {
         }
     }
 
+    /**
+     * @param index Index of the point.
+     * @return True if the point was removed from the kNN graph by
+     * removeInstance, false otherwise.
+     */
+    public boolean isRemoved(int index) {
+        return removedPoints != null && index < removedPoints.length
+                && removedPoints[index];
+    }
+
+    /**
+     * @return Integer that is the number of points that were removed from the
+     * kNN graph by removeInstance.
+     */
+    public int getNumRemovedPoints() {
+        return numRemovedPoints;
+    }
+
+    /**
+     * This method appends a new instance to the data and updates the kNN graph
+     * incrementally, instead of recalculating it. The kNN set of the new point
+     * is calculated by a single pass over the data and the new point is
+     * inserted into the kNN sets of all points that it is closer to than their
+     * current k-th neighbor. The displaced k-th neighbors lose an occurrence
+     * and the reverse neighbor lists, the occurrence frequencies and the
+     * hubness stats are kept consistent. The cost of an insertion is linear in
+     * the data size. If the kNN sets were calculated for a larger k than the
+     * current operating k, the stored kNN sets are kept at their full length,
+     * while the occurrences are only counted within the first currK
+     * neighbors. The distance matrix can not be extended without copying all
+     * of its rows, so it is released on the first insertion and the distances
+     * are then calculated by the CombinedMetric object. The kNN entropies are
+     * not updated and need to be recalculated if used.
+     *
+     * @param instance DataInstance to insert.
+     * @return Integer that is the index of the inserted instance.
+     * @throws Exception
+     */
+    public int insertInstance(DataInstance instance) throws Exception {
+        if (kNeighbors == null) {
+            throw new Exception("The kNN sets need to be calculated before the "
+                    + "incremental updates.");
+        }
+        if (cmet == null) {
+            throw new Exception("A CombinedMetric object is required for the "
+                    + "incremental updates.");
+        }
+        int k = currK;
+        int newIndex = dset.size();
+        // The length of the stored kNN sets, which may exceed currK.
+        int storedK = newIndex > 0 ? Math.max(k, kNeighbors[0].length) : k;
+        // Calculate the distances to the existing points.
+        float[] newDistances = new float[newIndex];
+        for (int i = 0; i < newIndex; i++) {
+            if (!isRemoved(i)) {
+                newDistances[i] = cmet.dist(instance, dset.data.get(i));
+            }
+        }
+        dset.addDataInstance(instance);
+        if (distMatrix != null) {
+            distMatrix = null;
+            distancesCalculated = false;
+        }
+        int size = newIndex + 1;
+        kNeighbors = Arrays.copyOf(kNeighbors, size);
+        kDistances = Arrays.copyOf(kDistances, size);
+        kCurrLen = Arrays.copyOf(kCurrLen, size);
+        kNeighborFrequencies = Arrays.copyOf(kNeighborFrequencies, size);
+        kBadFrequencies = Arrays.copyOf(kBadFrequencies, size);
+        kGoodFrequencies = Arrays.copyOf(kGoodFrequencies, size);
+        reverseNeighborIndex.grow(size);
+        reverseNeighborLists = null;
+        if (removedPoints != null) {
+            removedPoints = Arrays.copyOf(removedPoints, size);
+        }
+        kNeighbors[newIndex] = new int[storedK];
+        kDistances[newIndex] = new float[storedK];
+        kCurrLen[newIndex] = 0;
+        for (int i = 0; i < newIndex; i++) {
+            if (isRemoved(i)) {
+                continue;
+            }
+            // Extend the kNN set of the new point.
+            insertIntoKNNSet(newIndex, i, newDistances[i]);
+            // If the new point enters the first k neighbors of the existing
+            // point, the current k-th neighbor drops out of them.
+            if (kCurrLen[i] < k || newDistances[i] < kDistances[i][k - 1]) {
+                if (Math.min(kCurrLen[i], k) == k) {
+                    removeOccurrence(kNeighbors[i][k - 1], i);
+                }
+                addOccurrence(newIndex, i);
+            }
+            // Insert the new point into the stored kNN set of the existing
+            // point, if it is close enough.
+            insertIntoKNNSet(i, newIndex, newDistances[i]);
+        }
+        for (int kInd = 0; kInd < Math.min(kCurrLen[newIndex], k); kInd++) {
+            addOccurrence(kNeighbors[newIndex][kInd], newIndex);
+        }
+        calculateHubnessStats(false);
+        return newIndex;
+    }
+
+    /**
+     * This method removes a point from the kNN graph incrementally. The point
+     * is removed from the stored kNN sets of all the points that contain it,
+     * which are then completed by their next nearest neighbor, and its own
+     * neighbor occurrences are withdrawn. The occurrences are only counted
+     * within the first currK neighbors, even if the stored kNN sets are
+     * longer. The instance is kept in the data, so that the indexes of the
+     * other points do not change, and it is flagged as removed. The cost of a
+     * removal is linear in the data size for each point whose kNN set
+     * contained the removed point. The kNN entropies are not updated and need
+     * to be recalculated if used.
+     *
+     * @param index Index of the point to remove.
+     * @throws Exception
+     */
+    public void removeInstance(int index) throws Exception {
+        if (kNeighbors == null) {
+            throw new Exception("The kNN sets need to be calculated before the "
+                    + "incremental updates.");
+        }
+        if (distMatrix == null && cmet == null) {
+            throw new Exception("Either the distance matrix or a "
+                    + "CombinedMetric object is required for the incremental "
+                    + "updates.");
+        }
+        if (isRemoved(index)) {
+            return;
+        }
+        int k = currK;
+        if (removedPoints == null) {
+            removedPoints = new boolean[dset.size()];
+        }
+        removedPoints[index] = true;
+        numRemovedPoints++;
+        // Withdraw the occurrences of the neighbors of the removed point.
+        for (int kInd = 0; kInd < Math.min(kCurrLen[index], k); kInd++) {
+            removeOccurrence(kNeighbors[index][kInd], index);
+        }
+        kCurrLen[index] = 0;
+        // Complete the kNN sets that contained the removed point. The point
+        // can also be stored beyond the first k neighbors, where it is not
+        // among the reverse neighbors, so all the kNN sets are checked.
+        for (int other = 0; other < dset.size(); other++) {
+            if (other == index || isRemoved(other)) {
+                continue;
+            }
+            int position = 0;
+            while (position < kCurrLen[other]
+                    && kNeighbors[other][position] != index) {
+                position++;
+            }
+            if (position == kCurrLen[other]) {
+                continue;
+            }
+            for (int kInd = position; kInd < kCurrLen[other] - 1; kInd++) {
+                kNeighbors[other][kInd] = kNeighbors[other][kInd + 1];
+                kDistances[other][kInd] = kDistances[other][kInd + 1];
+            }
+            kCurrLen[other]--;
+            if (position < k) {
+                removeOccurrence(index, other);
+                // The neighbor that moved up into the first k neighbors.
+                if (kCurrLen[other] >= k) {
+                    addOccurrence(kNeighbors[other][k - 1], other);
+                }
+            }
+            int replacement = -1;
+            float replacementDist = Float.MAX_VALUE;
+            searchReplacement:
+            for (int i = 0; i < dset.size(); i++) {
+                if (i == other || isRemoved(i)) {
+                    continue;
+                }
+                for (int kInd = 0; kInd < kCurrLen[other]; kInd++) {
+                    if (kNeighbors[other][kInd] == i) {
+                        continue searchReplacement;
+                    }
+                }
+                float dist = getDistance(other, i);
+                if (dist < replacementDist) {
+                    replacementDist = dist;
+                    replacement = i;
+                }
+            }
+            if (replacement >= 0) {
+                if (kCurrLen[other] < k || replacementDist
+                        < kDistances[other][k - 1]) {
+                    if (kCurrLen[other] >= k) {
+                        removeOccurrence(kNeighbors[other][k - 1], other);
+                    }
+                    addOccurrence(replacement, other);
+                }
+                insertIntoKNNSet(other, replacement, replacementDist);
+            }
+        }
+        reverseNeighborIndex.clear(index);
+        reverseNeighborLists = null;
+        kNeighborFrequencies[index] = 0;
+        kBadFrequencies[index] = 0;
+        kGoodFrequencies[index] = 0;
+        calculateHubnessStats(false);
+    }
+
+    /**
+     * @param first Index of the first point.
+     * @param second Index of the second point.
+     * @return Float that is the distance between the two points, from the
+     * distance matrix if available.
+     * @throws Exception
+     */
+    private float getDistance(int first, int second) throws Exception {
+        if (distMatrix != null) {
+            int minIndex = Math.min(first, second);
+            int maxIndex = Math.max(first, second);
+            return distMatrix[minIndex][maxIndex - minIndex - 1];
+        } else {
+            return cmet.dist(dset.data.get(first), dset.data.get(second));
+        }
+    }
+
+    /**
+     * Inserts a neighbor into a sorted kNN set, dropping the current k-th
+     * neighbor if the set is full and the new neighbor is closer.
+     *
+     * @param index Index of the point whose kNN set is to be updated.
+     * @param neighborIndex Index of the neighbor point.
+     * @param dist Float that is the distance between the points.
+     */
+    private void insertIntoKNNSet(int index, int neighborIndex, float dist) {
+        int k = kNeighbors[index].length;
+        int l;
+        if (kCurrLen[index] == k) {
+            if (dist >= kDistances[index][k - 1]) {
+                return;
+            }
+            l = k - 1;
+        } else {
+            l = kCurrLen[index];
+            kCurrLen[index]++;
+        }
+        while (l >= 1 && dist < kDistances[index][l - 1]) {
+            kDistances[index][l] = kDistances[index][l - 1];
+            kNeighbors[index][l] = kNeighbors[index][l - 1];
+            l--;
+        }
+        kDistances[index][l] = dist;
+        kNeighbors[index][l] = neighborIndex;
+    }
+
+    /**
+     * Registers an occurrence of a point in a kNN set.
+     *
+     * @param neighborIndex Index of the occurring neighbor point.
+     * @param index Index of the point whose kNN set it occurs in.
+     */
+    private void addOccurrence(int neighborIndex, int index) {
+        reverseNeighborIndex.add(neighborIndex, index);
+        reverseNeighborLists = null;
+        kNeighborFrequencies[neighborIndex]++;
+        if (dset.data.get(index).getCategory() != dset.data.get(
+                neighborIndex).getCategory()) {
+            kBadFrequencies[neighborIndex]++;
+        } else {
+            kGoodFrequencies[neighborIndex]++;
+        }
+    }
+
+    /**
+     * Withdraws an occurrence of a point from a kNN set.
+     *
+     * @param neighborIndex Index of the occurring neighbor point.
+     * @param index Index of the point whose kNN set it occurred in.
+     */
+    private void removeOccurrence(int neighborIndex, int index) {
+        reverseNeighborIndex.remove(neighborIndex, index);
+        reverseNeighborLists = null;
+        kNeighborFrequencies[neighborIndex]--;
+        if (dset.data.get(index).getCategory() != dset.data.get(
+                neighborIndex).getCategory()) {
+            kBadFrequencies[neighborIndex]--;
+        } else {
+            kGoodFrequencies[neighborIndex]--;
+        }
+    }
+
     /**
      * This method calculates the k-nearest neighbor sets.
      *
@@ -3309,10 +3729,6 @@ public class NeighborSetFinder implements Serializable {
         kNeighbors = new int[dset.size()][k];
         kDistances = new float[dset.size()][k];
         kCurrLen = new int[dset.size()];
-        reverseNeighbors = new ArrayList[dset.size()];
-        for (int i = 0; i < dset.size(); i++) {
-            reverseNeighbors[i] = new ArrayList<>(10 * k);
-        }
         int l;
         // Calculate the kNN sets.
         for (int i = 0; i < dset.size(); i++) {
@@ -3407,13 +3823,15 @@ public class NeighborSetFinder implements Serializable {
                 }
             }
         }
+        setReverseNeighborIndex(ReverseNeighborIndex.build(kNeighbors, k,
+                null, dset.size(), Runtime.getRuntime().
+                availableProcessors()));
         // Count the neighbor occurrence frequencies.
         kNeighborFrequencies = new int[kNeighbors.length];
         kBadFrequencies = new int[kNeighbors.length];
         kGoodFrequencies = new int[kNeighbors.length];
         for (int i = 0; i < kNeighbors.length; i++) {
             for (int kInd = 0; kInd < k; kInd++) {
-                reverseNeighbors[kNeighbors[i][kInd]].add(i);
                 kNeighborFrequencies[kNeighbors[i][kInd]]++;
                 if (dset.data.get(i).getCategory() != dset.data.get(
                         kNeighbors[i][kInd]).getCategory()) {
@@ -3509,11 +3927,6 @@ public class NeighborSetFinder implements Serializable {
         kNeighbors = new int[dset.size()][k];
         kDistances = new float[dset.size()][k];
         kCurrLen = new int[dset.size()];
-        reverseNeighbors = new ArrayList[dset.size()];
-        // Initialize the reverse neighbor lists.
-        for (int i = 0; i < dset.size(); i++) {
-            reverseNeighbors[i] = new ArrayList<>(10 * k);
-        }
         int l;
         float distModified = 0;
         for (int i = 0; i < dset.size(); i++) {
@@ -3609,13 +4022,15 @@ public class NeighborSetFinder implements Serializable {
                 }
             }
         }
+        setReverseNeighborIndex(ReverseNeighborIndex.build(kNeighbors, k,
+                null, dset.size(), Runtime.getRuntime().
+                availableProcessors()));
         // Count the neighbor occurrence frequencies.
         kNeighborFrequencies = new int[kNeighbors.length];
         kBadFrequencies = new int[kNeighbors.length];
         kGoodFrequencies = new int[kNeighbors.length];
         for (int i = 0; i < kNeighbors.length; i++) {
             for (int kInd = 0; kInd < k; kInd++) {
-                reverseNeighbors[kNeighbors[i][kInd]].add(i);
                 kNeighborFrequencies[kNeighbors[i][kInd]]++;
                 if (dset.data.get(i).getCategory() != dset.data.get(
                         kNeighbors[i][kInd]).getCategory()) {
@@ -3934,19 +4349,19 @@ public class NeighborSetFinder implements Serializable {
         int currCat;
         float factor;
         for (int i = 0; i < kRNNEntropies.length; i++) {
-            if (reverseNeighbors[i] == null ||
-                    reverseNeighbors[i].size() <= 1) {
+            int numReverseNeighbors = i < reverseNeighborIndex.size()
+                    ? reverseNeighborIndex.getNumReverseNeighbors(i) : 0;
+            if (numReverseNeighbors <= 1) {
                 for (int cInd = 0; cInd < numCategories; cInd++) {
                     categoryFrequencies[cInd] = 0;
                 }
                 kRNNEntropies[i] = 0;
                 continue;
-            } else if (reverseNeighbors[i] != null) {
+            } else {
                 try {
-                    for (int rInd = 0; rInd < reverseNeighbors[i].size();
-                            rInd++) {
-                        currCat = dset.data.get(
-                                reverseNeighbors[i].get(rInd)).getCategory();
+                    for (int rInd = 0; rInd < numReverseNeighbors; rInd++) {
+                        currCat = dset.data.get(reverseNeighborIndex.
+                                getReverseNeighbor(i, rInd)).getCategory();
                         if (currCat >= 0) {
                             categoryFrequencies[currCat]++;
                         }
@@ -3955,7 +4370,7 @@ public class NeighborSetFinder implements Serializable {
                     for (int cInd = 0; cInd < numCategories; cInd++) {
                         denominator += Math.max(categoryWeights[cInd],
                                 0.0000001f) * categoryFrequencies[cInd] /
-                                (float) reverseNeighbors[i].size();
+                                (float) numReverseNeighbors;
                     }
                     // Calculate eh entropy.
                     for (int cInd = 0; cInd < categoryFrequencies.length;
@@ -3963,7 +4378,7 @@ public class NeighborSetFinder implements Serializable {
                         if (categoryFrequencies[cInd] > 0) {
                             factor = (Math.max(categoryWeights[cInd],
                                     0.0000001f) * categoryFrequencies[cInd] /
-                                    (float) reverseNeighbors[i].size()) /
+                                    (float) numReverseNeighbors) /
                                     denominator;
                             kRNNEntropies[i] -=
                                     factor * BasicMathUtil.log2(factor);
@@ -3991,19 +4406,19 @@ public class NeighborSetFinder implements Serializable {
         int currCat;
         float factor;
         for (int i = 0; i < kRNNEntropies.length; i++) {
-            if (reverseNeighbors[i] == null ||
-                    reverseNeighbors[i].size() <= 1) {
+            int numReverseNeighbors = i < reverseNeighborIndex.size()
+                    ? reverseNeighborIndex.getNumReverseNeighbors(i) : 0;
+            if (numReverseNeighbors <= 1) {
                 for (int cInd = 0; cInd < numCategories; cInd++) {
                     categoryFrequencies[cInd] = 0;
                 }
                 kRNNEntropies[i] = 0;
                 continue;
-            } else if (reverseNeighbors[i] != null) {
+            } else {
                 try {
-                    for (int rInd = 0; rInd < reverseNeighbors[i].size();
-                            rInd++) {
-                        currCat = dset.data.get(
-                                reverseNeighbors[i].get(rInd)).getCategory();
+                    for (int rInd = 0; rInd < numReverseNeighbors; rInd++) {
+                        currCat = dset.data.get(reverseNeighborIndex.
+                                getReverseNeighbor(i, rInd)).getCategory();
                         if (currCat >= 0) {
                             categoryFrequencies[currCat]++;
                         }
@@ -4013,7 +4428,7 @@ public class NeighborSetFinder implements Serializable {
                             cInd++) {
                         if (categoryFrequencies[cInd] > 0) {
                             factor = categoryFrequencies[cInd] /
-                                    (float) reverseNeighbors[i].size();
+                                    (float) numReverseNeighbors;
                             kRNNEntropies[i] -=
                                     factor * BasicMathUtil.log2(factor);
                         }
@@ -4111,22 +4526,13 @@ public class NeighborSetFinder implements Serializable {
         kNeighborFrequencies = new int[kNeighbors.length];
         kBadFrequencies = new int[kNeighbors.length];
         kGoodFrequencies = new int[kNeighbors.length];
-        reverseNeighbors = new ArrayList[kNeighbors.length];
-        for (int i = 0; i < reverseNeighbors.length; i++) {
-            reverseNeighbors[i] = new ArrayList<>(10 * kSmall);
-        }
-        // Populate the reverse neighbor lists and count the occurrences.
+        setReverseNeighborIndex(ReverseNeighborIndex.build(kNeighbors, kSmall,
+                null, kNeighbors.length, Runtime.getRuntime().
+                availableProcessors()));
+        // Count the occurrences.
         for (int i = 0; i < kNeighbors.length; i++) {
-            if (reverseNeighbors[i] == null) {
-                reverseNeighbors[i] = new ArrayList<>(10 * kSmall);
-            }
             for (int kInd = 0; kInd < kSmall; kInd++) {
                 kNeighborFrequencies[kNeighbors[i][kInd]]++;
-                if (reverseNeighbors[kNeighbors[i][kInd]] == null) {
-                    reverseNeighbors[kNeighbors[i][kInd]] =
-                            new ArrayList<>(10 * kSmall);
-                }
-                reverseNeighbors[kNeighbors[i][kInd]].add(i);
                 if (dset.data.get(i).getCategory() !=
                         dset.data.get(kNeighbors[i][kInd]).getCategory()) {
                     kBadFrequencies[kNeighbors[i][kInd]]++;
@@ -0,0 +1,444 @@
+/**
+* Hub Miner: a hubness-aware machine learning experimentation library.
+* Copyright (C) 2014  Nenad Tomasev. Email: nenad.tomasev at gmail.com
+*
+* This program is free software: you can redistribute it and/or modify it under
+* the terms of the GNU General Public License as published by the Free Software
+* Foundation, either version 3 of the License, or (at your option) any later
+* version.
+*
+* This program is distributed in the hope that it will be useful, but WITHOUT
+* ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+* FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License along with
+* this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+package data.neighbors;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * This class holds the reverse neighbor sets of a kNN graph in the compressed
+ * sparse row form, as a pair of int arrays: the offsets of the reverse
+ * neighbor lists and the concatenated reverse neighbor indexes. This avoids
+ * creating a boxed Integer for each of the n * k kNN graph edges. The index is
+ * built from the kNN sets by a counting sort, which is performed in parallel
+ * over chunks of the kNN sets for large graphs, so that the reverse neighbors
+ * within each list are initially in ascending order. The lists can also be
+ * modified incrementally - a modified list is moved out of the packed arrays
+ * into its own growable array, until the next call to compact. The added
+ * reverse neighbors are appended to the end of the list, so the lists are no
+ * longer guaranteed to be sorted once they have been modified.
+ *
+ * @author Nenad Tomasev <nenad.tomasev at gmail.com>
+ */
+public class ReverseNeighborIndex implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+    // The graphs with fewer edges are indexed in a single thread.
+    private static final int MIN_PARALLEL_EDGES = 1 << 20;
+    // The number of points.
+    private int size;
+    // The offsets of the reverse neighbor lists in the index array, of length
+    // size + 1.
+    private int[] offsets;
+    // The concatenated reverse neighbor lists.
+    private int[] indexes;
+    // The lists that were modified after the index was built, or null if
+    // there are none. A null entry means that the packed list is current.
+    private int[][] modifiedLists;
+    private int[] modifiedLengths;
+
+    /**
+     * Initialization.
+     *
+     * @param size Integer that is the number of points.
+     * @param offsets int[] of the reverse neighbor list offsets.
+     * @param indexes int[] of the concatenated reverse neighbor lists.
+     */
+    public ReverseNeighborIndex(int size, int[] offsets, int[] indexes) {
+        this.size = size;
+        this.offsets = offsets;
+        this.indexes = indexes;
+    }
+
+    /**
+     * Builds the reverse neighbor index from the kNN sets.
+     *
+     * @param kNeighbors int[][] of the kNN sets.
+     * @param k Integer that is the neighborhood size. Only the first k
+     * neighbors in each kNN set are indexed.
+     * @return ReverseNeighborIndex of the kNN sets.
+     */
+    public static ReverseNeighborIndex build(int[][] kNeighbors, int k) {
+        return build(kNeighbors, k, null, kNeighbors.length,
+                Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Builds the reverse neighbor index from the kNN sets.
+     *
+     * @param kNeighbors int[][] of the kNN sets.
+     * @param kCurrLen int[] of the current kNN set lengths.
+     * @return ReverseNeighborIndex of the kNN sets.
+     */
+    public static ReverseNeighborIndex build(int[][] kNeighbors,
+            int[] kCurrLen) {
+        return build(kNeighbors, Integer.MAX_VALUE, kCurrLen,
+                kNeighbors.length, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Builds the reverse neighbor index from the kNN sets.
+     *
+     * @param kNeighbors int[][] of the kNN sets.
+     * @param k Integer that is the maximal number of neighbors to index in each
+     * kNN set.
+     * @param kCurrLen int[] of the current kNN set lengths, or null if the kNN
+     * sets are full.
+     * @param size Integer that is the number of points.
+     * @param numThreads Integer that is the number of threads to use.
+     * @return ReverseNeighborIndex of the kNN sets.
+     */
+    public static ReverseNeighborIndex build(int[][] kNeighbors, int k,
+            int[] kCurrLen, int size, int numThreads) {
+        int numRows = kNeighbors.length;
+        int[] rowLengths = new int[numRows];
+        long numEdges = 0;
+        for (int i = 0; i < numRows; i++) {
+            if (kNeighbors[i] != null) {
+                rowLengths[i] = Math.min(k, kNeighbors[i].length);
+                if (kCurrLen != null) {
+                    rowLengths[i] = Math.min(rowLengths[i], kCurrLen[i]);
+                }
+            }
+            numEdges += rowLengths[i];
+        }
+        int threadNum = (int) Math.max(1, Math.min(numThreads,
+                numEdges / MIN_PARALLEL_EDGES));
+        threadNum = Math.max(1, Math.min(threadNum, numRows));
+        int chunkSize = numRows / threadNum;
+        int[][] counts = new int[threadNum][size];
+        // Count the occurrences within each chunk.
+        Thread[] threads = new Thread[threadNum];
+        CountingWorker[] workers = new CountingWorker[threadNum];
+        for (int t = 0; t < threadNum; t++) {
+            int start = t * chunkSize;
+            int end = t == threadNum - 1 ? numRows : start + chunkSize;
+            workers[t] = new CountingWorker(kNeighbors, rowLengths, start, end,
+                    counts[t]);
+        }
+        runWorkers(workers, threads);
+        // The offsets of the lists, and the starting position of each chunk
+        // within each list.
+        int[] offsets = new int[size + 1];
+        for (int j = 0; j < size; j++) {
+            int position = offsets[j];
+            for (int t = 0; t < threadNum; t++) {
+                int chunkCount = counts[t][j];
+                counts[t][j] = position;
+                position += chunkCount;
+            }
+            offsets[j + 1] = position;
+        }
+        int[] indexes = new int[offsets[size]];
+        for (int t = 0; t < threadNum; t++) {
+            workers[t].fillIndexes(indexes);
+        }
+        runWorkers(workers, threads);
+        return new ReverseNeighborIndex(size, offsets, indexes);
+    }
+
+    /**
+     * Runs the workers, in separate threads if there is more than one.
+     *
+     * @param workers CountingWorker[] of the workers to run.
+     * @param threads Thread[] to run the workers in.
+     */
+    private static void runWorkers(CountingWorker[] workers,
+            Thread[] threads) {
+        if (workers.length == 1) {
+            workers[0].run();
+            return;
+        }
+        for (int t = 0; t < workers.length; t++) {
+            threads[t] = new Thread(workers[t]);
+            threads[t].start();
+        }
+        for (int t = 0; t < workers.length; t++) {
+            try {
+                threads[t].join();
+            } catch (Throwable thr) {
+                System.err.println(thr.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return Integer that is the number of points.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param index Index of the point.
+     * @return Integer that is the number of reverse neighbors of the point.
+     */
+    public int getNumReverseNeighbors(int index) {
+        if (modifiedLists != null && modifiedLists[index] != null) {
+            return modifiedLengths[index];
+        }
+        return offsets[index + 1] - offsets[index];
+    }
+
+    /**
+     * @param index Index of the point.
+     * @param position Position in the reverse neighbor list.
+     * @return Integer that is the index of the reverse neighbor at the
+     * specified position.
+     */
+    public int getReverseNeighbor(int index, int position) {
+        if (modifiedLists != null && modifiedLists[index] != null) {
+            return modifiedLists[index][position];
+        }
+        return indexes[offsets[index] + position];
+    }
+
+    /**
+     * @param index Index of the point.
+     * @return int[] that is a copy of the reverse neighbor list of the point.
+     */
+    public int[] getReverseNeighbors(int index) {
+        if (modifiedLists != null && modifiedLists[index] != null) {
+            return Arrays.copyOf(modifiedLists[index], modifiedLengths[index]);
+        }
+        return Arrays.copyOfRange(indexes, offsets[index],
+                offsets[index + 1]);
+    }
+
+    /**
+     * Appends a reverse neighbor to the list of a point.
+     *
+     * @param index Index of the point.
+     * @param reverseNeighbor Index of the reverse neighbor to add.
+     */
+    public void add(int index, int reverseNeighbor) {
+        int[] list = getModifiableList(index, 1);
+        list[modifiedLengths[index]++] = reverseNeighbor;
+    }
+
+    /**
+     * Removes a reverse neighbor from the list of a point.
+     *
+     * @param index Index of the point.
+     * @param reverseNeighbor Index of the reverse neighbor to remove.
+     * @return True if the reverse neighbor was found and removed, false
+     * otherwise.
+     */
+    public boolean remove(int index, int reverseNeighbor) {
+        int[] list = getModifiableList(index, 0);
+        int length = modifiedLengths[index];
+        for (int p = 0; p < length; p++) {
+            if (list[p] == reverseNeighbor) {
+                System.arraycopy(list, p + 1, list, p, length - p - 1);
+                modifiedLengths[index]--;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Empties the reverse neighbor list of a point.
+     *
+     * @param index Index of the point.
+     */
+    public void clear(int index) {
+        getModifiableList(index, 0);
+        modifiedLists[index] = new int[4];
+        modifiedLengths[index] = 0;
+    }
+
+    /**
+     * Extends the index by empty reverse neighbor lists for new points.
+     *
+     * @param newSize Integer that is the new number of points.
+     */
+    public void grow(int newSize) {
+        if (newSize <= size) {
+            return;
+        }
+        int[] newOffsets = Arrays.copyOf(offsets, newSize + 1);
+        Arrays.fill(newOffsets, size + 1, newSize + 1, offsets[size]);
+        offsets = newOffsets;
+        if (modifiedLists != null) {
+            modifiedLists = Arrays.copyOf(modifiedLists, newSize);
+            modifiedLengths = Arrays.copyOf(modifiedLengths, newSize);
+        }
+        size = newSize;
+    }
+
+    /**
+     * Packs the modified lists back into the compressed arrays.
+     */
+    public void compact() {
+        if (modifiedLists == null) {
+            return;
+        }
+        int[] newOffsets = new int[size + 1];
+        for (int i = 0; i < size; i++) {
+            newOffsets[i + 1] = newOffsets[i] + getNumReverseNeighbors(i);
+        }
+        int[] newIndexes = new int[newOffsets[size]];
+        for (int i = 0; i < size; i++) {
+            if (modifiedLists[i] != null) {
+                System.arraycopy(modifiedLists[i], 0, newIndexes,
+                        newOffsets[i], modifiedLengths[i]);
+            } else {
+                System.arraycopy(indexes, offsets[i], newIndexes,
+                        newOffsets[i], offsets[i + 1] - offsets[i]);
+            }
+        }
+        offsets = newOffsets;
+        indexes = newIndexes;
+        modifiedLists = null;
+        modifiedLengths = null;
+    }
+
+    /**
+     * @return int[] of the reverse neighbor list offsets, of length size + 1.
+     * The arrays are packed first if any lists were modified.
+     */
+    public int[] getOffsets() {
+        compact();
+        return offsets;
+    }
+
+    /**
+     * @return int[] of the concatenated reverse neighbor lists. The arrays are
+     * packed first if any lists were modified.
+     */
+    public int[] getIndexes() {
+        compact();
+        return indexes;
+    }
+
+    /**
+     * @return ArrayList<Integer>[] of the reverse neighbor lists, for the
+     * methods that require boxed lists.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public ArrayList<Integer>[] toLists() {
+        ArrayList<Integer>[] lists = new ArrayList[size];
+        for (int i = 0; i < size; i++) {
+            int length = getNumReverseNeighbors(i);
+            lists[i] = new ArrayList<>(length);
+            for (int p = 0; p < length; p++) {
+                lists[i].add(getReverseNeighbor(i, p));
+            }
+        }
+        return lists;
+    }
+
+    /**
+     * @return ReverseNeighborIndex that is a deep copy of this index.
+     */
+    public ReverseNeighborIndex copy() {
+        compact();
+        return new ReverseNeighborIndex(size, Arrays.copyOf(offsets,
+                offsets.length), Arrays.copyOf(indexes, indexes.length));
+    }
+
+    /**
+     * Moves the list of a point out of the packed arrays, if it is not
+     * already, and ensures the capacity for additional elements.
+     *
+     * @param index Index of the point.
+     * @param numAdditional Integer that is the number of elements to add.
+     * @return int[] that is the modifiable list of the point.
+     */
+    private int[] getModifiableList(int index, int numAdditional) {
+        if (modifiedLists == null) {
+            modifiedLists = new int[size][];
+            modifiedLengths = new int[size];
+        }
+        int[] list = modifiedLists[index];
+        if (list == null) {
+            int length = offsets[index + 1] - offsets[index];
+            list = new int[Math.max(4, 2 * (length + numAdditional))];
+            System.arraycopy(indexes, offsets[index], list, 0, length);
+            modifiedLists[index] = list;
+            modifiedLengths[index] = length;
+        } else if (modifiedLengths[index] + numAdditional > list.length) {
+            list = Arrays.copyOf(list, 2 * (modifiedLengths[index]
+                    + numAdditional));
+            modifiedLists[index] = list;
+        }
+        return list;
+    }
+
+    /**
+     * This worker counts the occurrences in a chunk of the kNN sets and then
+     * writes the chunk into the reverse neighbor lists.
+     */
+    static class CountingWorker implements Runnable {
+
+        private int[][] kNeighbors;
+        private int[] rowLengths;
+        private int start;
+        private int end;
+        // The occurrence counts in the first pass, the write positions in the
+        // second pass.
+        private int[] positions;
+        private int[] indexes = null;
+
+        /**
+         * Initialization.
+         *
+         * @param kNeighbors int[][] of the kNN sets.
+         * @param rowLengths int[] of the number of neighbors to index in each
+         * kNN set.
+         * @param start Integer that is the first kNN set in the chunk.
+         * @param end Integer that is the end of the chunk.
+         * @param positions int[] of the occurrence counts for the chunk.
+         */
+        CountingWorker(int[][] kNeighbors, int[] rowLengths, int start,
+                int end, int[] positions) {
+            this.kNeighbors = kNeighbors;
+            this.rowLengths = rowLengths;
+            this.start = start;
+            this.end = end;
+            this.positions = positions;
+        }
+
+        /**
+         * Switches the worker to the second pass.
+         *
+         * @param indexes int[] to write the reverse neighbor lists to.
+         */
+        void fillIndexes(int[] indexes) {
+            this.indexes = indexes;
+        }
+
+        @Override
+        public void run() {
+            if (indexes == null) {
+                for (int i = start; i < end; i++) {
+                    for (int kInd = 0; kInd < rowLengths[i]; kInd++) {
+                        positions[kNeighbors[i][kInd]]++;
+                    }
+                }
+            } else {
+                for (int i = start; i < end; i++) {
+                    for (int kInd = 0; kInd < rowLengths[i]; kInd++) {
+                        indexes[positions[kNeighbors[i][kInd]]++] = i;
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,258 @@
+/**
+* Hub Miner: a hubness-aware machine learning experimentation library.
+* Copyright (C) 2014  Nenad Tomasev. Email: nenad.tomasev at gmail.com
+* 
+* This program is free software: you can redistribute it and/or modify it under
+* the terms of the GNU General Public License as published by the Free Software
+* Foundation, either version 3 of the License, or (at your option) any later
+* version.
+* 
+* This program is distributed in the hope that it will be useful, but WITHOUT
+* ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+* FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License along with
+* this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+package data.neighbors.test;
+
+import data.neighbors.KNNGraphFile;
+import data.neighbors.NeighborSetFinder;
+import data.representation.DataInstance;
+import data.representation.DataSet;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+import junit.framework.TestCase;
+import org.junit.Test;
+
+/**
+ * This class tests writing the kNN graphs to the binary format and reading
+ * them back, both lazily and as a whole, for different block sizes and
+ * distance encodings.
+ *
+ * @author Nenad Tomasev <nenad.tomasev at gmail.com>
+ */
+public class KNNGraphFileTest extends TestCase {
+
+    private static final int[] BLOCK_SIZES = {1, 7, 64, 1024, 100000};
+
+    /**
+     * This method tests the round trip with float distances, which are
+     * restored exactly.
+     */
+    @Test
+    public static void testFloatRoundTrip() {
+        testRoundTrip(false, new Random(1234));
+    }
+
+    /**
+     * This method tests the round trip with quantized distances, which are
+     * restored within a quantization step.
+     */
+    @Test
+    public static void testQuantizedRoundTrip() {
+        testRoundTrip(true, new Random(5678));
+    }
+
+    /**
+     * This method tests the round trip of a graph without any points.
+     */
+    @Test
+    public static void testEmptyGraph() {
+        for (int blockSize : BLOCK_SIZES) {
+            File graphFile = null;
+            try {
+                graphFile = File.createTempFile("knn_graph", ".bin");
+                KNNGraphFile.write(graphFile, new int[0][], new float[0][],
+                        null, null, false, blockSize);
+                assertTrue(KNNGraphFile.isBinaryGraphFile(graphFile));
+                try (KNNGraphFile reader = new KNNGraphFile(graphFile);) {
+                    assertEquals(0, reader.size());
+                    assertEquals(0, reader.getK());
+                    assertEquals("", reader.getMetricDescriptor());
+                    reader.readAll(new int[0][], new float[0][], new int[0],
+                            4);
+                }
+            } catch (Exception e) {
+                fail(e.getMessage());
+            } finally {
+                if (graphFile != null) {
+                    graphFile.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * This method tests that a kNN graph is not loaded for a data set of a
+     * different size.
+     */
+    @Test
+    public static void testSizeMismatch() {
+        Random randa = new Random(91011);
+        int size = 30;
+        int k = 4;
+        int[][] kNeighbors = new int[size][];
+        float[][] kDistances = new float[size][];
+        generateGraph(kNeighbors, kDistances, k, randa);
+        DataSet dset = new DataSet(null, new String[]{"x"}, null, size - 1);
+        for (int i = 0; i < size - 1; i++) {
+            DataInstance instance = new DataInstance(dset);
+            instance.fAttr[0] = randa.nextFloat();
+            dset.addDataInstance(instance);
+        }
+        File graphFile = null;
+        try {
+            graphFile = File.createTempFile("knn_graph", ".bin");
+            KNNGraphFile.write(graphFile, kNeighbors, kDistances, null, null);
+            NeighborSetFinder nsf = new NeighborSetFinder();
+            boolean rejected = false;
+            try {
+                nsf.loadNeighborSetsBinary(graphFile, dset);
+            } catch (IOException e) {
+                rejected = true;
+            }
+            assertTrue(rejected);
+        } catch (Exception e) {
+            fail(e.getMessage());
+        } finally {
+            if (graphFile != null) {
+                graphFile.delete();
+            }
+        }
+    }
+
+    /**
+     * Writes a random kNN graph with partial kNN sets in all the block sizes
+     * and compares the lazily read rows and the fully decoded graph to it.
+     *
+     * @param quantize Boolean flag indicating whether to quantize the
+     * distances.
+     * @param randa Random number generator.
+     */
+    private static void testRoundTrip(boolean quantize, Random randa) {
+        int size = 500;
+        int k = 10;
+        int[][] kNeighbors = new int[size][];
+        float[][] kDistances = new float[size][];
+        generateGraph(kNeighbors, kDistances, k, randa);
+        int[] kCurrLen = new int[size];
+        float minDist = Float.MAX_VALUE;
+        float maxDist = 0;
+        for (int i = 0; i < size; i++) {
+            kCurrLen[i] = randa.nextInt(5) == 0 ? randa.nextInt(k + 1) : k;
+            for (int kInd = 0; kInd < kCurrLen[i]; kInd++) {
+                minDist = Math.min(minDist, kDistances[i][kInd]);
+                maxDist = Math.max(maxDist, kDistances[i][kInd]);
+            }
+        }
+        float tolerance = quantize ? (maxDist - minDist) / 65535 : 0;
+        for (int blockSize : BLOCK_SIZES) {
+            File graphFile = null;
+            try {
+                graphFile = File.createTempFile("knn_graph", ".bin");
+                KNNGraphFile.write(graphFile, kNeighbors, kDistances,
+                        kCurrLen, "metric", quantize, blockSize);
+                try (KNNGraphFile reader = new KNNGraphFile(graphFile);) {
+                    assertEquals(size, reader.size());
+                    assertEquals(k, reader.getK());
+                    assertEquals(quantize, reader.hasQuantizedDistances());
+                    assertEquals("metric", reader.getMetricDescriptor());
+                    // Lazy access, in a non-sequential order.
+                    for (int step = 0; step < size; step++) {
+                        int i = (step * 37) % size;
+                        int[] neighbors = reader.getNeighbors(i);
+                        float[] distances = reader.getDistances(i);
+                        assertEquals(kCurrLen[i], neighbors.length);
+                        assertEquals(kCurrLen[i], distances.length);
+                        assertRowMatches(kNeighbors[i], kDistances[i],
+                                neighbors, distances, kCurrLen[i], tolerance);
+                    }
+                    for (int numThreads : new int[]{1, 4}) {
+                        int[][] readNeighbors = new int[size][];
+                        float[][] readDistances = new float[size][];
+                        int[] readLengths = new int[size];
+                        reader.readAll(readNeighbors, readDistances,
+                                readLengths, numThreads);
+                        assertTrue(Arrays.equals(kCurrLen, readLengths));
+                        for (int i = 0; i < size; i++) {
+                            assertEquals(k, readNeighbors[i].length);
+                            assertRowMatches(kNeighbors[i], kDistances[i],
+                                    readNeighbors[i], readDistances[i],
+                                    kCurrLen[i], tolerance);
+                        }
+                    }
+                }
+            } catch (Exception e) {
+                fail(e.getMessage());
+            } finally {
+                if (graphFile != null) {
+                    graphFile.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * Compares a decoded kNN set to the original one.
+     *
+     * @param neighbors int[] that is the original kNN set.
+     * @param distances float[] of the original distances.
+     * @param readNeighbors int[] that is the decoded kNN set.
+     * @param readDistances float[] of the decoded distances.
+     * @param rowLength Integer that is the length of the kNN set.
+     * @param tolerance Float that is the allowed distance error.
+     */
+    private static void assertRowMatches(int[] neighbors, float[] distances,
+            int[] readNeighbors, float[] readDistances, int rowLength,
+            float tolerance) {
+        for (int kInd = 0; kInd < rowLength; kInd++) {
+            assertEquals(neighbors[kInd], readNeighbors[kInd]);
+            if (tolerance == 0) {
+                assertEquals(distances[kInd], readDistances[kInd]);
+            } else {
+                assertFalse(Math.abs(distances[kInd] - readDistances[kInd])
+                        > tolerance);
+            }
+        }
+    }
+
+    /**
+     * Fills in a random kNN graph, with the neighbors in random order
+     * relative to their indexes and the distances in ascending order.
+     *
+     * @param kNeighbors int[][] to fill in the kNN sets to.
+     * @param kDistances float[][] to fill in the k-distances to.
+     * @param k Integer that is the neighborhood size.
+     * @param randa Random number generator.
+     */
+    private static void generateGraph(int[][] kNeighbors,
+            float[][] kDistances, int k, Random randa) {
+        int size = kNeighbors.length;
+        for (int i = 0; i < size; i++) {
+            kNeighbors[i] = new int[k];
+            kDistances[i] = new float[k];
+            float distance = randa.nextFloat();
+            for (int kInd = 0; kInd < k; kInd++) {
+                int neighbor;
+                boolean repeated;
+                do {
+                    neighbor = randa.nextInt(size);
+                    repeated = neighbor == i;
+                    for (int p = 0; p < kInd && !repeated; p++) {
+                        repeated = kNeighbors[i][p] == neighbor;
+                    }
+                } while (repeated);
+                kNeighbors[i][kInd] = neighbor;
+                distance += randa.nextFloat() * 10;
+                kDistances[i][kInd] = distance;
+            }
+        }
+    }
+}
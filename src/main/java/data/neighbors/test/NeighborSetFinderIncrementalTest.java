@@ -0,0 +1,181 @@
+/**
+* Hub Miner: a hubness-aware machine learning experimentation library.
+* Copyright (C) 2014  Nenad Tomasev. Email: nenad.tomasev at gmail.com
+* 
+* This program is free software: you can redistribute it and/or modify it under
+* the terms of the GNU General Public License as published by the Free Software
+* Foundation, either version 3 of the License, or (at your option) any later
+* version.
+* 
+* This program is distributed in the hope that it will be useful, but WITHOUT
+* ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+* FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License along with
+* this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+package data.neighbors.test;
+
+import data.neighbors.NeighborSetFinder;
+import data.representation.DataInstance;
+import data.representation.DataSet;
+import distances.primary.CombinedMetric;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+import junit.framework.TestCase;
+import org.junit.Test;
+
+/**
+ * This class tests the incremental insertions and removals in the kNN graph
+ * against the kNN graph that is rebuilt from scratch, when the kNN sets were
+ * calculated for a larger k than the operating k.
+ *
+ * @author Nenad Tomasev <nenad.tomasev at gmail.com>
+ */
+public class NeighborSetFinderIncrementalTest extends TestCase {
+
+    private static final int K_STORED = 6;
+    private static final int K_OPERATING = 3;
+
+    /**
+     * This method tests the incremental insertions.
+     */
+    @Test
+    public static void testInsertWithSmallerK() {
+        Random randa = new Random(1234);
+        DataSet dset = generateData(60, randa);
+        CombinedMetric cmet = CombinedMetric.FLOAT_EUCLIDEAN;
+        try {
+            NeighborSetFinder nsf = buildNSF(dset, cmet);
+            for (int insertion = 0; insertion < 20; insertion++) {
+                nsf.insertInstance(generateInstance(dset, randa));
+                assertConsistent(nsf, dset, cmet);
+            }
+        } catch (Exception e) {
+            fail(e.getMessage());
+        }
+    }
+
+    /**
+     * This method tests the incremental removals, interleaved with
+     * insertions.
+     */
+    @Test
+    public static void testRemoveWithSmallerK() {
+        Random randa = new Random(5678);
+        DataSet dset = generateData(60, randa);
+        CombinedMetric cmet = CombinedMetric.FLOAT_EUCLIDEAN;
+        try {
+            NeighborSetFinder nsf = buildNSF(dset, cmet);
+            for (int step = 0; step < 20; step++) {
+                int index = randa.nextInt(dset.size());
+                while (nsf.isRemoved(index)) {
+                    index = randa.nextInt(dset.size());
+                }
+                nsf.removeInstance(index);
+                assertConsistent(nsf, dset, cmet);
+                if (step % 4 == 0) {
+                    nsf.insertInstance(generateInstance(dset, randa));
+                    assertConsistent(nsf, dset, cmet);
+                }
+            }
+        } catch (Exception e) {
+            fail(e.getMessage());
+        }
+    }
+
+    /**
+     * Compares the occurrence frequencies and the reverse neighbor sets of
+     * the incrementally updated kNN graph to those of the kNN graph that is
+     * rebuilt on the points that were not removed.
+     *
+     * @param nsf NeighborSetFinder object that was updated incrementally.
+     * @param dset DataSet that holds all the inserted points.
+     * @param cmet CombinedMetric object.
+     * @throws Exception
+     */
+    private static void assertConsistent(NeighborSetFinder nsf, DataSet dset,
+            CombinedMetric cmet) throws Exception {
+        DataSet remaining = dset.cloneDefinition();
+        ArrayList<Integer> originalIndexes = new ArrayList<>();
+        for (int i = 0; i < dset.size(); i++) {
+            if (!nsf.isRemoved(i)) {
+                remaining.addDataInstance(dset.getInstance(i));
+                originalIndexes.add(i);
+            }
+        }
+        NeighborSetFinder rebuilt = buildNSF(remaining, cmet);
+        int[] occFreqs = nsf.getNeighborFrequencies();
+        int[] goodFreqs = nsf.getGoodFrequencies();
+        int[] badFreqs = nsf.getBadFrequencies();
+        for (int i = 0; i < dset.size(); i++) {
+            if (nsf.isRemoved(i)) {
+                assertEquals(0, occFreqs[i]);
+                assertEquals(0, nsf.getReverseNeighbors(i).length);
+            }
+        }
+        for (int j = 0; j < remaining.size(); j++) {
+            int i = originalIndexes.get(j);
+            assertEquals(rebuilt.getNeighborFrequencies()[j], occFreqs[i]);
+            assertEquals(rebuilt.getGoodFrequencies()[j], goodFreqs[i]);
+            assertEquals(rebuilt.getBadFrequencies()[j], badFreqs[i]);
+            int[] expected = rebuilt.getReverseNeighbors(j);
+            for (int p = 0; p < expected.length; p++) {
+                expected[p] = originalIndexes.get(expected[p]);
+            }
+            int[] actual = nsf.getReverseNeighbors(i);
+            Arrays.sort(expected);
+            Arrays.sort(actual);
+            assertTrue(Arrays.equals(expected, actual));
+        }
+    }
+
+    /**
+     * @param dset DataSet to build the kNN graph for.
+     * @param cmet CombinedMetric object.
+     * @return NeighborSetFinder with the kNN sets of length K_STORED and the
+     * occurrence stats for K_OPERATING.
+     * @throws Exception
+     */
+    private static NeighborSetFinder buildNSF(DataSet dset,
+            CombinedMetric cmet) throws Exception {
+        NeighborSetFinder nsf = new NeighborSetFinder(dset,
+                dset.calculateDistMatrix(cmet), cmet);
+        nsf.calculateNeighborSets(K_STORED);
+        nsf.recalculateStatsForSmallerK(K_OPERATING);
+        return nsf;
+    }
+
+    /**
+     * @param size Integer that is the number of points.
+     * @param randa Random number generator.
+     * @return DataSet of labeled random points.
+     */
+    private static DataSet generateData(int size, Random randa) {
+        DataSet dset = new DataSet(null, new String[]{"x", "y", "z"}, null,
+                size);
+        for (int i = 0; i < size; i++) {
+            dset.addDataInstance(generateInstance(dset, randa));
+        }
+        return dset;
+    }
+
+    /**
+     * @param dset DataSet that defines the features.
+     * @param randa Random number generator.
+     * @return DataInstance that is a labeled random point.
+     */
+    private static DataInstance generateInstance(DataSet dset,
+            Random randa) {
+        DataInstance instance = new DataInstance(dset);
+        for (int d = 0; d < instance.fAttr.length; d++) {
+            instance.fAttr[d] = randa.nextFloat();
+        }
+        instance.setCategory(randa.nextInt(2));
+        return instance;
+    }
+}
@@ -0,0 +1,303 @@
+/**
+* Hub Miner: a hubness-aware machine learning experimentation library.
+* Copyright (C) 2014  Nenad Tomasev. Email: nenad.tomasev at gmail.com
+* 
+* This program is free software: you can redistribute it and/or modify it under
+* the terms of the GNU General Public License as published by the Free Software
+* Foundation, either version 3 of the License, or (at your option) any later
+* version.
+* 
+* This program is distributed in the hope that it will be useful, but WITHOUT
+* ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+* FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License along with
+* this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+package data.neighbors.test;
+
+import data.neighbors.ReverseNeighborIndex;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import junit.framework.TestCase;
+import org.junit.Test;
+
+/**
+ * This class tests the packed reverse neighbor index against the boxed
+ * reverse neighbor lists, both when it is built in a single thread and in
+ * chunks, as well as its incremental modifications against an index that is
+ * rebuilt from the modified kNN graph.
+ *
+ * @author Nenad Tomasev <nenad.tomasev at gmail.com>
+ */
+public class ReverseNeighborIndexTest extends TestCase {
+
+    /**
+     * This method tests the single-threaded build on a graph with partial
+     * and missing kNN sets.
+     */
+    @Test
+    public static void testBuildSingleThread() {
+        Random randa = new Random(1234);
+        int size = 500;
+        int[][] kNeighbors = generateGraph(size, size, 10, randa);
+        int[] kCurrLen = new int[size];
+        for (int i = 0; i < size; i++) {
+            kCurrLen[i] = kNeighbors[i] != null
+                    ? randa.nextInt(kNeighbors[i].length + 1) : 0;
+        }
+        ReverseNeighborIndex index = ReverseNeighborIndex.build(kNeighbors, 7,
+                kCurrLen, size, 1);
+        assertMatches(getBoxedLists(kNeighbors, 7, kCurrLen, size), index);
+        index = ReverseNeighborIndex.build(kNeighbors, 10);
+        assertMatches(getBoxedLists(kNeighbors, 10, null, size), index);
+    }
+
+    /**
+     * This method tests the build that splits the kNN sets into chunks that
+     * are counted in separate threads, which happens only on large graphs.
+     */
+    @Test
+    public static void testBuildChunked() {
+        Random randa = new Random(5678);
+        int size = 1 << 18;
+        int k = 14;
+        int numThreads = 3;
+        int[][] kNeighbors = generateGraph(size, size, k, randa);
+        long numEdges = 0;
+        for (int i = 0; i < size; i++) {
+            numEdges += kNeighbors[i] != null ? kNeighbors[i].length : 0;
+        }
+        // The build uses one thread per 2^20 edges.
+        assertTrue(numEdges >= numThreads * (1L << 20));
+        ReverseNeighborIndex chunked = ReverseNeighborIndex.build(kNeighbors,
+                k, null, size, numThreads);
+        ReverseNeighborIndex single = ReverseNeighborIndex.build(kNeighbors,
+                k, null, size, 1);
+        assertTrue(Arrays.equals(single.getOffsets(), chunked.getOffsets()));
+        assertTrue(Arrays.equals(single.getIndexes(), chunked.getIndexes()));
+        assertMatches(getBoxedLists(kNeighbors, k, null, size), chunked);
+    }
+
+    /**
+     * This method tests the additions, removals, clearing and growth of the
+     * index, before and after compaction, against the index that is rebuilt
+     * from the modified kNN graph.
+     */
+    @Test
+    public static void testModifications() {
+        Random randa = new Random(91011);
+        int size = 300;
+        int k = 5;
+        int[][] kNeighbors = generateGraph(size, size, k, randa);
+        ReverseNeighborIndex index = ReverseNeighborIndex.build(kNeighbors,
+                k);
+        ArrayList<Integer>[] expected = getBoxedLists(kNeighbors, k, null,
+                size);
+        for (int step = 0; step < 2000; step++) {
+            int i = randa.nextInt(size);
+            if (kNeighbors[i] == null || kNeighbors[i].length == 0) {
+                continue;
+            }
+            // Replace a neighbor of the point by a point that is not in its
+            // kNN set.
+            int position = randa.nextInt(kNeighbors[i].length);
+            int oldNeighbor = kNeighbors[i][position];
+            int newNeighbor = randa.nextInt(size);
+            if (contains(kNeighbors[i], newNeighbor)) {
+                continue;
+            }
+            kNeighbors[i][position] = newNeighbor;
+            assertTrue(index.remove(oldNeighbor, i));
+            expected[oldNeighbor].remove(Integer.valueOf(i));
+            index.add(newNeighbor, i);
+            expected[newNeighbor].add(i);
+            if (step % 500 == 0) {
+                assertMatches(expected, index);
+                index.compact();
+                assertMatches(expected, index);
+            }
+        }
+        assertMatchesSorted(ReverseNeighborIndex.build(kNeighbors, k), index);
+        index.compact();
+        assertMatches(expected, index);
+        assertMatchesSorted(ReverseNeighborIndex.build(kNeighbors, k), index);
+        // Clear the lists of a point and remove it from all the kNN sets.
+        int cleared = 0;
+        index.clear(cleared);
+        for (int i = 0; i < size; i++) {
+            if (kNeighbors[i] != null && contains(kNeighbors[i], cleared)) {
+                kNeighbors[i] = removeFrom(kNeighbors[i], cleared);
+            }
+        }
+        assertEquals(0, index.getNumReverseNeighbors(cleared));
+        assertMatchesSorted(ReverseNeighborIndex.build(kNeighbors, k), index);
+        // Add new points that occur in the existing kNN sets.
+        int newSize = size + 20;
+        index.grow(newSize);
+        kNeighbors = Arrays.copyOf(kNeighbors, newSize);
+        for (int i = size; i < newSize; i++) {
+            kNeighbors[i] = new int[]{randa.nextInt(size)};
+            index.add(kNeighbors[i][0], i);
+            int j = randa.nextInt(size);
+            if (kNeighbors[j] != null && kNeighbors[j].length < k) {
+                kNeighbors[j] = Arrays.copyOf(kNeighbors[j],
+                        kNeighbors[j].length + 1);
+                kNeighbors[j][kNeighbors[j].length - 1] = i;
+                index.add(i, j);
+            }
+        }
+        assertEquals(newSize, index.size());
+        assertMatchesSorted(ReverseNeighborIndex.build(kNeighbors, k), index);
+        index.compact();
+        assertMatchesSorted(ReverseNeighborIndex.build(kNeighbors, k), index);
+    }
+
+    /**
+     * Compares the reverse neighbor lists of the index to the boxed lists,
+     * including the order of the reverse neighbors.
+     *
+     * @param expected ArrayList<Integer>[] of the expected reverse neighbors.
+     * @param index ReverseNeighborIndex to check.
+     */
+    private static void assertMatches(ArrayList<Integer>[] expected,
+            ReverseNeighborIndex index) {
+        assertEquals(expected.length, index.size());
+        ArrayList<Integer>[] actual = index.toLists();
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], actual[i]);
+            assertEquals(expected[i].size(), index.getNumReverseNeighbors(i));
+            int[] list = index.getReverseNeighbors(i);
+            for (int p = 0; p < list.length; p++) {
+                assertEquals(expected[i].get(p).intValue(), list[p]);
+                assertEquals(list[p], index.getReverseNeighbor(i, p));
+            }
+        }
+    }
+
+    /**
+     * Compares the reverse neighbor lists of two indexes, regardless of the
+     * order within the lists.
+     *
+     * @param expected ReverseNeighborIndex that holds the expected lists.
+     * @param index ReverseNeighborIndex to check.
+     */
+    private static void assertMatchesSorted(ReverseNeighborIndex expected,
+            ReverseNeighborIndex index) {
+        assertEquals(expected.size(), index.size());
+        for (int i = 0; i < expected.size(); i++) {
+            int[] expectedList = expected.getReverseNeighbors(i);
+            int[] actualList = index.getReverseNeighbors(i);
+            Arrays.sort(expectedList);
+            Arrays.sort(actualList);
+            assertTrue(Arrays.equals(expectedList, actualList));
+        }
+    }
+
+    /**
+     * Calculates the reverse neighbor lists in the boxed form.
+     *
+     * @param kNeighbors int[][] of the kNN sets.
+     * @param k Integer that is the maximal number of neighbors to index in each
+     * kNN set.
+     * @param kCurrLen int[] of the current kNN set lengths, or null.
+     * @param size Integer that is the number of points.
+     * @return ArrayList<Integer>[] of the reverse neighbor lists.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static ArrayList<Integer>[] getBoxedLists(int[][] kNeighbors,
+            int k, int[] kCurrLen, int size) {
+        ArrayList<Integer>[] lists = new ArrayList[size];
+        for (int i = 0; i < size; i++) {
+            lists[i] = new ArrayList<>();
+        }
+        for (int i = 0; i < kNeighbors.length; i++) {
+            if (kNeighbors[i] == null) {
+                continue;
+            }
+            int length = Math.min(k, kNeighbors[i].length);
+            if (kCurrLen != null) {
+                length = Math.min(length, kCurrLen[i]);
+            }
+            for (int kIndex = 0; kIndex < length; kIndex++) {
+                lists[kNeighbors[i][kIndex]].add(i);
+            }
+        }
+        return lists;
+    }
+
+    /**
+     * Generates a random kNN graph without self-loops or repeated neighbors.
+     * Some kNN sets are missing and some are shorter than k.
+     *
+     * @param numRows Integer that is the number of kNN sets.
+     * @param size Integer that is the number of points.
+     * @param k Integer that is the maximal kNN set length.
+     * @param randa Random number generator.
+     * @return int[][] of the kNN sets.
+     */
+    private static int[][] generateGraph(int numRows, int size, int k,
+            Random randa) {
+        int[][] kNeighbors = new int[numRows][];
+        for (int i = 0; i < numRows; i++) {
+            int choice = randa.nextInt(20);
+            if (choice == 0) {
+                continue;
+            }
+            int length = choice == 1 ? randa.nextInt(k) : k;
+            kNeighbors[i] = new int[length];
+            for (int kIndex = 0; kIndex < length; kIndex++) {
+                int neighbor;
+                do {
+                    neighbor = randa.nextInt(size);
+                } while (neighbor == i
+                        || contains(kNeighbors[i], neighbor, kIndex));
+                kNeighbors[i][kIndex] = neighbor;
+            }
+        }
+        return kNeighbors;
+    }
+
+    /**
+     * @param list int[] to search.
+     * @param value Integer that is the value to look for.
+     * @return True if the value is in the array, false otherwise.
+     */
+    private static boolean contains(int[] list, int value) {
+        return contains(list, value, list.length);
+    }
+
+    /**
+     * @param list int[] to search.
+     * @param value Integer that is the value to look for.
+     * @param length Integer that is the length of the prefix to search.
+     * @return True if the value is in the prefix, false otherwise.
+     */
+    private static boolean contains(int[] list, int value, int length) {
+        for (int p = 0; p < length; p++) {
+            if (list[p] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param list int[] to remove the value from.
+     * @param value Integer that is the value to remove.
+     * @return int[] without the value.
+     */
+    private static int[] removeFrom(int[] list, int value) {
+        int[] result = new int[list.length - 1];
+        int length = 0;
+        for (int p = 0; p < list.length; p++) {
+            if (list[p] != value) {
+                result[length++] = list[p];
+            }
+        }
+        return result;
+    }
+}
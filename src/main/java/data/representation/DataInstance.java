@@ -30,6 +30,9 @@ import java.util.Arrays;
  * some care should be taken when working in a multi-threaded setting. In case
  * of applications where continuous data integrity can not be guaranteed, one
  * should wrap the data in a different container that would hide its fields.
+ * When the float features of a DataSet are compacted into a FloatFeatureStore,
+ * fAttr is released and the instance acts as a view on its store row, so the
+ * float features should then be accessed via getFloatValue or getFloatArray.
  *
  * @author Nenad Tomasev <nenad.tomasev at gmail.com>
  */
@@ -50,6 +53,10 @@ public class DataInstance implements Serializable {
     // Identifier, which can be composed of multiple values and is thus also
     // represented as a data instance.
     private DataInstance identifier = null;
+    // When the float features are held in a compacted FloatFeatureStore, the
+    // fAttr array is released and the instance is a view on a store row.
+    private FloatFeatureStore featureStore = null;
+    private int storeRow = -1;
 
     /**
      * Noise is marked by having -1 label.
@@ -89,8 +96,9 @@ public class DataInstance implements Serializable {
      */
     public boolean isZeroFloatVector() {
         if (hasFloatAtt()) {
-            for (int i = 0; i < fAttr.length; i++) {
-                if (fAttr[i] > 0) {
+            int numFloats = getNumFAtt();
+            for (int i = 0; i < numFloats; i++) {
+                if (getFloatValue(i) > 0) {
                     return false;
                 }
             }
@@ -104,6 +112,9 @@ public class DataInstance implements Serializable {
      * @return True if the instance has float features, false otherwise.
      */
     public boolean hasFloatAtt() {
+        if (featureStore != null) {
+            return featureStore.getNumCols() > 0;
+        }
         if (fAttr == null || fAttr.length == 0) {
             return false;
         } else {
@@ -137,6 +148,9 @@ public class DataInstance implements Serializable {
      * @return The number of float features of this instance.
      */
     public int getNumFAtt() {
+        if (featureStore != null) {
+            return featureStore.getNumCols();
+        }
         if (fAttr == null) {
             return 0;
         } else {
@@ -144,6 +158,90 @@ public class DataInstance implements Serializable {
         }
     }
 
+    /**
+     * Makes this instance a view on a row of a compacted feature store. The
+     * fAttr array is released.
+     *
+     * @param featureStore FloatFeatureStore that holds the float features.
+     * @param storeRow Integer that is the row of this instance in the store.
+     */
+    void attachToFeatureStore(FloatFeatureStore featureStore, int storeRow) {
+        this.featureStore = featureStore;
+        this.storeRow = storeRow;
+        fAttr = null;
+    }
+
+    /**
+     * Restores the fAttr array from the feature store and detaches this
+     * instance from the store.
+     */
+    void detachFromFeatureStore() {
+        if (featureStore != null) {
+            fAttr = getFloatArray();
+            featureStore = null;
+            storeRow = -1;
+        }
+    }
+
+    /**
+     * @return FloatFeatureStore that this instance is a view on, or null if
+     * the instance holds its own fAttr array.
+     */
+    public FloatFeatureStore getFeatureStore() {
+        return featureStore;
+    }
+
+    /**
+     * @return Integer that is the row of this instance in the feature store,
+     * or -1 if the instance is not a view.
+     */
+    public int getStoreRow() {
+        return storeRow;
+    }
+
+    /**
+     * Reads a float feature value, regardless of whether the instance holds
+     * its own fAttr array or is a view on a feature store.
+     *
+     * @param index Integer that is the float feature index.
+     * @return Float that is the feature value.
+     */
+    public float getFloatValue(int index) {
+        if (featureStore != null) {
+            return featureStore.get(storeRow, index);
+        }
+        return fAttr[index];
+    }
+
+    /**
+     * Sets a float feature value, regardless of whether the instance holds
+     * its own fAttr array or is a view on a feature store.
+     *
+     * @param index Integer that is the float feature index.
+     * @param value Float that is the feature value to set.
+     */
+    public void setFloatValue(int index, float value) {
+        if (featureStore != null) {
+            featureStore.set(storeRow, index, value);
+        } else {
+            fAttr[index] = value;
+        }
+    }
+
+    /**
+     * @return float[] of the float feature values. For instances that hold
+     * their own array, this is the fAttr array itself. For views on a feature
+     * store, this is a copy of the store row.
+     */
+    public float[] getFloatArray() {
+        if (featureStore != null) {
+            float[] values = new float[featureStore.getNumCols()];
+            featureStore.getRow(storeRow, values);
+            return values;
+        }
+        return fAttr;
+    }
+
     /**
      * @return The number of integer features of this instance.
      */
@@ -176,11 +274,12 @@ public class DataInstance implements Serializable {
         if (!hasFloatAtt()) {
             return "";
         }
+        float[] floats = getFloatArray();
         StringBuffer sb = new StringBuffer(160);
-        sb.append(fAttr[0]);
-        for (int i = 1; i < fAttr.length; i++) {
+        sb.append(floats[0]);
+        for (int i = 1; i < floats.length; i++) {
             sb.append(",");
-            sb.append(fAttr[i]);
+            sb.append(floats[i]);
         }
         return sb.toString();
     }
@@ -196,6 +295,8 @@ public class DataInstance implements Serializable {
         result.setCategory(category);
         result.iAttr = iAttr;
         result.fAttr = fAttr;
+        result.featureStore = featureStore;
+        result.storeRow = storeRow;
         result.sAttr = sAttr;
         result.fuzzyLabels = fuzzyLabels;
         if (identifier != null) {
@@ -316,7 +417,9 @@ public class DataInstance implements Serializable {
         if (hasIntAtt()) {
             instanceCopy.iAttr = Arrays.copyOf(iAttr, iAttr.length);
         }
-        if (hasFloatAtt()) {
+        if (featureStore != null) {
+            instanceCopy.fAttr = getFloatArray();
+        } else if (hasFloatAtt()) {
             instanceCopy.fAttr = Arrays.copyOf(fAttr, fAttr.length);
         }
         if (hasNomAtt()) {
@@ -393,8 +496,10 @@ public class DataInstance implements Serializable {
                 return false;
             }
         }
+        float[] ownFloats = getFloatArray();
+        float[] otherFloats = instance.getFloatArray();
         for (int i = 0; i < getNumFAtt(); i++) {
-            if (instance.fAttr[i] != fAttr[i]) {
+            if (otherFloats[i] != ownFloats[i]) {
                 return false;
             }
         }
@@ -442,8 +547,8 @@ public class DataInstance implements Serializable {
                     s.append(i);
                 }
                 s.append(":");
-                if (DataMineConstants.isAcceptableFloat(fAttr[i])) {
-                    s.append(new Float(fAttr[i]).toString());
+                if (DataMineConstants.isAcceptableFloat(getFloatValue(i))) {
+                    s.append(new Float(getFloatValue(i)).toString());
                 } else {
                     s.append("Unknown.");
                 }
@@ -478,7 +583,7 @@ public class DataInstance implements Serializable {
             }
         }
         for (int i = 0; i < getNumFAtt(); i++) {
-            if (!DataMineConstants.isAcceptableFloat(fAttr[i])) {
+            if (!DataMineConstants.isAcceptableFloat(getFloatValue(i))) {
                 return true;
             }
         }
@@ -515,11 +620,13 @@ public class DataInstance implements Serializable {
                         instance.iAttr[i] * alpha);
             }
         }
+        // The copy always holds its own fAttr array.
+        float[] instanceFloats = instance.getFloatArray();
         for (int i = 0; i < instance.getNumFAtt(); i++) {
-            if (!DataMineConstants.isAcceptableFloat(instance.fAttr[i])) {
+            if (!DataMineConstants.isAcceptableFloat(instanceFloats[i])) {
                 multipliedInstance.fAttr[i] = Float.MAX_VALUE;
             } else {
-                multipliedInstance.fAttr[i] = instance.fAttr[i] * alpha;
+                multipliedInstance.fAttr[i] = instanceFloats[i] * alpha;
             }
         }
         return multipliedInstance;
@@ -586,11 +693,12 @@ public class DataInstance implements Serializable {
                 iAttr[i] += instance.iAttr[i];
             }
         }
+        float[] instanceFloats = instance.getFloatArray();
         for (int i = 0; i < getNumFAtt(); i++) {
-            if (!DataMineConstants.isAcceptableFloat(instance.fAttr[i])) {
+            if (!DataMineConstants.isAcceptableFloat(instanceFloats[i])) {
                 continue;
             } else {
-                fAttr[i] += instance.fAttr[i];
+                setFloatValue(i, getFloatValue(i) + instanceFloats[i]);
             }
         }
     }
@@ -636,18 +744,20 @@ public class DataInstance implements Serializable {
      * @return
      */
     public boolean equalsByFloatValue(DataInstance instance) {
-        if (fAttr == null && instance.fAttr == null) {
+        float[] ownFloats = getFloatArray();
+        float[] otherFloats = instance.getFloatArray();
+        if (ownFloats == null && otherFloats == null) {
             return true;
         }
-        if (fAttr.length == 0 && instance.fAttr.length == 0) {
+        if (ownFloats.length == 0 && otherFloats.length == 0) {
             return true;
         }
-        if (fAttr.length != instance.fAttr.length) {
+        if (ownFloats.length != otherFloats.length) {
             return false;
         }
         int i = -1;
-        while (++i < fAttr.length) {
-            if ((fAttr[i] - instance.fAttr[i]) > DataMineConstants.EPSILON) {
+        while (++i < ownFloats.length) {
+            if ((ownFloats[i] - otherFloats[i]) > DataMineConstants.EPSILON) {
                 return false;
             }
         }
@@ -58,6 +58,8 @@ public class DataSet implements Serializable {
     public ArrayList<DataInstance> data;
     private static final int DEFAULT_INIT_CAPACITY = 1000;
     private int initCapacity;
+    // Contiguous store of the float features, if the data has been compacted.
+    private FloatFeatureStore floatStore = null;
     
     /**
      * This method filters the features in the data and produces a filtered
@@ -131,8 +133,8 @@ public class DataSet implements Serializable {
             DataInstance filteredInstance = new DataInstance(filteredDataSet);
             DataInstance instance = dsetAllFeatures.getInstance(i);
             for (int attIndex = 0; attIndex < numFilteredFloats; attIndex++) {
-                filteredInstance.fAttr[attIndex] = instance.fAttr[
-                        admissibleFloatFeatureIndexes.get(attIndex)];
+                filteredInstance.fAttr[attIndex] = instance.getFloatValue(
+                        admissibleFloatFeatureIndexes.get(attIndex));
             }
             for (int attIndex = 0; attIndex < numFilteredInts; attIndex++) {
                 filteredInstance.iAttr[attIndex] = instance.iAttr[
@@ -382,12 +384,12 @@ public class DataSet implements Serializable {
                 int index = 0;
                 if (dsetA.hasFloatAttr()) {
                     for (int j = 0; j < dsetA.fAttrNames.length; j++) {
-                        instance.fAttr[index++] = instanceA.fAttr[j];
+                        instance.fAttr[index++] = instanceA.getFloatValue(j);
                     }
                 }
                 if (dsetB.hasFloatAttr()) {
                     for (int j = 0; j < dsetB.fAttrNames.length; j++) {
-                        instance.fAttr[index++] = instanceB.fAttr[j];
+                        instance.fAttr[index++] = instanceB.getFloatValue(j);
                     }
                 }
             }
@@ -534,13 +536,13 @@ public class DataSet implements Serializable {
         } else {
             float max = -Float.MAX_VALUE;
             for (DataInstance instance : data) {
-                for (int i = 0; i < instance.fAttr.length; i++) {
-                    if (!DataMineConstants.isAcceptableFloat(
-                            instance.fAttr[i])) {
+                float[] floats = instance.getFloatArray();
+                for (int i = 0; i < floats.length; i++) {
+                    if (!DataMineConstants.isAcceptableFloat(floats[i])) {
                         continue;
                     }
-                    if (Math.abs(instance.fAttr[i]) > max) {
-                        max = Math.abs(instance.fAttr[i]);
+                    if (Math.abs(floats[i]) > max) {
+                        max = Math.abs(floats[i]);
                     }
                 }
             }
@@ -618,6 +620,8 @@ public class DataSet implements Serializable {
      * @param attIndex index of the attribute within the float array.
      */
     public void standardizeFloatAtt(int attIndex) {
+        // The values are modified in place.
+        expandFloatFeatures();
         double mean = 0;
         double variance = 0;
         int numAcceptableFAttValues = 0;
@@ -1062,11 +1066,17 @@ public class DataSet implements Serializable {
             return null;
         } else {
             float[][] distances = new float[size()][];
+            int[] storeRows = getFloatStoreRows(cmet);
+            if (storeRows == null && cmet != null) {
+                // The value checks can be skipped on clean data.
+                cmet = cmet.adjustedToData(this);
+            }
             for (int i = 0; i < size(); i++) {
                 distances[i] = new float[size() - i - 1];
                 for (int j = i + 1; j < size(); j++) {
-                    distances[i][j - i - 1] = cmet.dist(data.get(i),
-                            data.get(j));
+                    distances[i][j - i - 1] = storeRows != null
+                            ? floatStore.distance(storeRows[i], storeRows[j],
+                            cmet) : cmet.dist(data.get(i), data.get(j));
                 }
             }
             return distances;
@@ -1166,6 +1176,10 @@ public class DataSet implements Serializable {
         } else {
             float[][] distances = new float[size()][];
             int size = size();
+            if (cmet != null) {
+                // The value checks can be skipped on clean data.
+                cmet = cmet.adjustedToData(this);
+            }
             int chunkSize = size / numThreads;
             Thread[] threads = new Thread[numThreads];
             for (int i = 0; i < numThreads - 1; i++) {
@@ -1216,11 +1230,14 @@ public class DataSet implements Serializable {
         @Override
         public void run() {
             try {
+                int[] storeRows = getFloatStoreRows(cmet);
                 for (int i = startRow; i <= endRow; i++) {
                     distances[i] = new float[size() - i - 1];
                     for (int j = i + 1; j < size(); j++) {
-                        distances[i][j - i - 1] =
-                                cmet.dist(data.get(i), data.get(j));
+                        distances[i][j - i - 1] = storeRows != null
+                                ? floatStore.distance(storeRows[i],
+                                storeRows[j], cmet)
+                                : cmet.dist(data.get(i), data.get(j));
                     }
                 }
             } catch (Exception e) {
@@ -1256,6 +1273,8 @@ public class DataSet implements Serializable {
      */
     public void addGaussianNoiseToNormalizedCollection(
             float pMutate, float stDev) {
+        // The values are modified in place.
+        expandFloatFeatures();
         DataInstance instance;
         Random randa = new Random();
         float choice;
@@ -1382,16 +1401,16 @@ public class DataSet implements Serializable {
             DataInstance instance;
             for (int i = 0; i < indexes.length; i++) {
                 instance = data.get(indexes[i]);
+                float[] floats = instance.getFloatArray();
                 for (int j = 0; j < nF; j++) {
-                    if (!DataMineConstants.isAcceptableFloat(
-                            instance.fAttr[j])) {
+                    if (!DataMineConstants.isAcceptableFloat(floats[j])) {
                         continue;
                     }
-                    if (instance.fAttr[j] > uBounds[j]) {
-                        uBounds[j] = instance.fAttr[j];
+                    if (floats[j] > uBounds[j]) {
+                        uBounds[j] = floats[j];
                     }
-                    if (instance.fAttr[j] < lBounds[j]) {
-                        lBounds[j] = instance.fAttr[j];
+                    if (floats[j] < lBounds[j]) {
+                        lBounds[j] = floats[j];
                     }
                 }
             }
@@ -1449,6 +1468,8 @@ public class DataSet implements Serializable {
      * Normalize all float values to the [0, 1] range.
      */
     public void normalizeFloats() {
+        // The values are modified in place.
+        expandFloatFeatures();
         if (hasFloatAttr()) {
             float[] maxVal = new float[getNumFloatAttr()];
             for (int i = 0; i < maxVal.length; i++) {
@@ -1802,9 +1823,96 @@ public class DataSet implements Serializable {
         if (data == null) {
             data = new ArrayList<>(DEFAULT_INIT_CAPACITY);
         }
+        if (floatStore != null) {
+            // The store has a fixed number of rows.
+            expandFloatFeatures();
+        }
         data.add(instance);
     }
 
+    /**
+     * Moves the float features of all instances into a single contiguous
+     * FloatFeatureStore. The instances release their fAttr arrays and become
+     * views on the store rows. The distance matrix calculations work on the
+     * store directly. The instance-level metrics and kernels, and the
+     * DataInstance and DataSet utility methods, read the features through
+     * getFloatArray and getFloatValue. The DataSet methods that modify the
+     * features in place expand the store first. Other code that accesses fAttr
+     * directly needs to call expandFloatFeatures first.
+     *
+     * @param offHeap Boolean flag indicating whether to hold the values
+     * off-heap.
+     * @return FloatFeatureStore that holds the float features.
+     */
+    public FloatFeatureStore compactFloatFeatures(boolean offHeap) {
+        if (floatStore != null) {
+            if (floatStore.isOffHeap() == offHeap) {
+                return floatStore;
+            }
+            expandFloatFeatures();
+        }
+        if (isEmpty() || !hasFloatAttr()) {
+            return null;
+        }
+        floatStore = FloatFeatureStore.fromDataSet(this, offHeap);
+        for (int i = 0; i < size(); i++) {
+            data.get(i).attachToFeatureStore(floatStore, i);
+        }
+        return floatStore;
+    }
+
+    /**
+     * Restores the fAttr arrays of all instances from the FloatFeatureStore
+     * and releases the store. This is the compatibility path for the code that
+     * accesses fAttr directly.
+     */
+    public void expandFloatFeatures() {
+        if (floatStore == null) {
+            return;
+        }
+        for (int i = 0; i < size(); i++) {
+            if (data.get(i).getFeatureStore() == floatStore) {
+                data.get(i).detachFromFeatureStore();
+            }
+        }
+        floatStore = null;
+    }
+
+    /**
+     * @return FloatFeatureStore that holds the float features if the data has
+     * been compacted, null otherwise.
+     */
+    public FloatFeatureStore getFloatFeatureStore() {
+        return floatStore;
+    }
+
+    /**
+     * Finds the store rows of the instances, if the distances can be
+     * calculated directly on the compacted float features. The instances
+     * record their own rows, so the rows remain correct if the data list is
+     * reordered or modified after compaction.
+     *
+     * @param cmet CombinedMetric object for distance calculations.
+     * @return int[] of the store rows of the instances, or null if some
+     * instance is not a view on the current store or the metric is not
+     * supported by the store kernels.
+     */
+    private int[] getFloatStoreRows(CombinedMetric cmet) {
+        if (floatStore == null
+                || !FloatFeatureStore.supportsMetric(cmet, hasIntAttr())) {
+            return null;
+        }
+        int[] storeRows = new int[size()];
+        for (int i = 0; i < size(); i++) {
+            DataInstance instance = data.get(i);
+            if (instance == null || instance.getFeatureStore() != floatStore) {
+                return null;
+            }
+            storeRows[i] = instance.getStoreRow();
+        }
+        return storeRows;
+    }
+
     /**
      * @return Size of the dataset.
      */
@@ -0,0 +1,407 @@
+/**
+* Hub Miner: a hubness-aware machine learning experimentation library.
+* Copyright (C) 2014  Nenad Tomasev. Email: nenad.tomasev at gmail.com
+* 
+* This program is free software: you can redistribute it and/or modify it under
+* the terms of the GNU General Public License as published by the Free Software
+* Foundation, either version 3 of the License, or (at your option) any later
+* version.
+* 
+* This program is distributed in the hope that it will be useful, but WITHOUT
+* ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+* FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License along with
+* this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+package data.representation;
+
+import data.representation.util.DataMineConstants;
+import distances.primary.CombinedMetric;
+import distances.primary.DistanceMeasure;
+import distances.primary.Manhattan;
+import distances.primary.MinkowskiMetric;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+/**
+ * This class holds the float features of all the instances in a DataSet in a
+ * single contiguous row-major block of n x d values, either in a heap array or
+ * off-heap in a direct buffer. When a DataSet is compacted, its instances
+ * release their own fAttr arrays and act as lightweight views on their rows,
+ * which removes the per-instance array overhead and lets the metric kernels
+ * here address the flat block directly. Missing (non-finite) values are
+ * skipped in the distance kernels, as in the corresponding metric classes.
+ *
+ * @author Nenad Tomasev <nenad.tomasev at gmail.com>
+ */
+public class FloatFeatureStore implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+    private int numRows;
+    private int numCols;
+    private boolean offHeap;
+    // Heap values, null in the off-heap mode.
+    private float[] values;
+    // Off-heap values, null in the heap mode.
+    private transient FloatBuffer offHeapValues;
+
+    /**
+     * Initialization.
+     *
+     * @param numRows Integer that is the number of rows (instances).
+     * @param numCols Integer that is the number of columns (float features).
+     * @param offHeap Boolean flag indicating whether to allocate the values
+     * off-heap.
+     */
+    public FloatFeatureStore(int numRows, int numCols, boolean offHeap) {
+        this.numRows = numRows;
+        this.numCols = numCols;
+        this.offHeap = offHeap;
+        allocate();
+    }
+
+    /**
+     * Allocates the value block. A direct buffer is addressed by bytes, so
+     * the off-heap mode holds at most a quarter as many values as the heap
+     * mode.
+     */
+    private void allocate() {
+        if (numRows < 0 || numCols < 0) {
+            throw new IllegalArgumentException("Negative feature store size: "
+                    + numRows + " x " + numCols);
+        }
+        long numValues = (long) numRows * numCols;
+        long maxValues = offHeap ? Integer.MAX_VALUE / 4 : Integer.MAX_VALUE;
+        if (numValues > maxValues) {
+            throw new IllegalArgumentException("Too many values for a single "
+                    + "feature store: " + numValues);
+        }
+        if (offHeap) {
+            long numBytes = 4L * numValues;
+            offHeapValues = ByteBuffer.allocateDirect((int) numBytes).
+                    order(ByteOrder.nativeOrder()).asFloatBuffer();
+        } else {
+            values = new float[(int) numValues];
+        }
+    }
+
+    /**
+     * Calculates the offset of a row in the value block. The row index is
+     * checked first, so the product can not overflow, as the whole block size
+     * fits in an integer.
+     *
+     * @param row Integer that is the row index.
+     * @return Integer that is the position of the first value of the row.
+     */
+    private int rowOffset(int row) {
+        if (row < 0 || row >= numRows) {
+            throw new IndexOutOfBoundsException("Row " + row
+                    + " is out of range for " + numRows + " rows.");
+        }
+        return row * numCols;
+    }
+
+    /**
+     * Packs the float features of a DataSet into a new store. The instances
+     * are not modified.
+     *
+     * @param dset DataSet to pack the float features of.
+     * @param offHeap Boolean flag indicating whether to allocate the values
+     * off-heap.
+     * @return FloatFeatureStore that holds the float features of the data.
+     */
+    public static FloatFeatureStore fromDataSet(DataSet dset,
+            boolean offHeap) {
+        FloatFeatureStore store = new FloatFeatureStore(dset.size(),
+                dset.getNumFloatAttr(), offHeap);
+        for (int i = 0; i < dset.size(); i++) {
+            DataInstance instance = dset.getInstance(i);
+            if (instance.fAttr != null) {
+                store.setRow(i, instance.fAttr);
+            } else if (instance.getFeatureStore() != null) {
+                store.setRow(i, instance.getFloatArray());
+            }
+        }
+        return store;
+    }
+
+    /**
+     * @return Integer that is the number of rows.
+     */
+    public int getNumRows() {
+        return numRows;
+    }
+
+    /**
+     * @return Integer that is the number of columns.
+     */
+    public int getNumCols() {
+        return numCols;
+    }
+
+    /**
+     * @return True if the values are held off-heap, false otherwise.
+     */
+    public boolean isOffHeap() {
+        return offHeap;
+    }
+
+    /**
+     * @return float[] that is the row-major value block, or null if the values
+     * are held off-heap.
+     */
+    public float[] getValues() {
+        return values;
+    }
+
+    /**
+     * @return FloatBuffer that holds the values off-heap, or null if the
+     * values are held in a heap array.
+     */
+    public FloatBuffer getOffHeapValues() {
+        return offHeapValues;
+    }
+
+    /**
+     * @param row Integer that is the row index.
+     * @param col Integer that is the column index.
+     * @return Float that is the value.
+     */
+    public float get(int row, int col) {
+        if (col < 0 || col >= numCols) {
+            throw new IndexOutOfBoundsException("Column " + col
+                    + " is out of range for " + numCols + " columns.");
+        }
+        int position = rowOffset(row) + col;
+        return offHeap ? offHeapValues.get(position) : values[position];
+    }
+
+    /**
+     * @param row Integer that is the row index.
+     * @param col Integer that is the column index.
+     * @param value Float that is the value to set.
+     */
+    public void set(int row, int col, float value) {
+        if (col < 0 || col >= numCols) {
+            throw new IndexOutOfBoundsException("Column " + col
+                    + " is out of range for " + numCols + " columns.");
+        }
+        int position = rowOffset(row) + col;
+        if (offHeap) {
+            offHeapValues.put(position, value);
+        } else {
+            values[position] = value;
+        }
+    }
+
+    /**
+     * Copies a row into an array.
+     *
+     * @param row Integer that is the row index.
+     * @param dest float[] to copy the row to, of length at least numCols.
+     */
+    public void getRow(int row, float[] dest) {
+        int offset = rowOffset(row);
+        if (offHeap) {
+            for (int j = 0; j < numCols; j++) {
+                dest[j] = offHeapValues.get(offset + j);
+            }
+        } else {
+            System.arraycopy(values, offset, dest, 0, numCols);
+        }
+    }
+
+    /**
+     * Copies an array into a row.
+     *
+     * @param row Integer that is the row index.
+     * @param src float[] to copy the values from.
+     */
+    public void setRow(int row, float[] src) {
+        int offset = rowOffset(row);
+        int length = Math.min(numCols, src.length);
+        if (offHeap) {
+            for (int j = 0; j < length; j++) {
+                offHeapValues.put(offset + j, src[j]);
+            }
+        } else {
+            System.arraycopy(src, 0, values, offset, length);
+        }
+    }
+
+    /**
+     * Checks whether the distances under the given metric can be calculated
+     * on the float block alone, giving the same results as the metric itself.
+     *
+     * @param cmet CombinedMetric object for distance calculations.
+     * @param hasIntFeatures Boolean flag indicating whether the data has
+     * integer features.
+     * @return True if the metric is supported by the kernels.
+     */
+    public static boolean supportsMetric(CombinedMetric cmet,
+            boolean hasIntFeatures) {
+        if (cmet == null || cmet.getCombinationMethod()
+                != CombinedMetric.Mixer.SUM) {
+            return false;
+        }
+        if (cmet.getIntegerMetric() != null && hasIntFeatures) {
+            return false;
+        }
+        DistanceMeasure floatMetric = cmet.getFloatMetric();
+        return floatMetric != null && (floatMetric.getClass()
+                == Manhattan.class || floatMetric.getClass()
+                == MinkowskiMetric.class);
+    }
+
+    /**
+     * Calculates the distance between two rows under a supported metric.
+     *
+     * @param first Integer that is the first row index.
+     * @param second Integer that is the second row index.
+     * @param cmet CombinedMetric object, supported as per supportsMetric.
+     * @return Float that is the distance between the rows.
+     */
+    public float distance(int first, int second, CombinedMetric cmet) {
+        DistanceMeasure floatMetric = cmet.getFloatMetric();
+        if (floatMetric instanceof MinkowskiMetric) {
+            float p = ((MinkowskiMetric) floatMetric).getExponent();
+            if (p == 2) {
+                return (float) Math.sqrt(squaredEuclidean(first, second));
+            } else {
+                return minkowski(first, second, p);
+            }
+        } else {
+            return manhattan(first, second);
+        }
+    }
+
+    /**
+     * @param first Integer that is the first row index.
+     * @param second Integer that is the second row index.
+     * @return Float that is the squared Euclidean distance between the rows.
+     */
+    public float squaredEuclidean(int first, int second) {
+        int firstOffset = rowOffset(first);
+        int secondOffset = rowOffset(second);
+        float sum = 0;
+        if (offHeap) {
+            for (int j = 0; j < numCols; j++) {
+                float diff = offHeapValues.get(firstOffset + j)
+                        - offHeapValues.get(secondOffset + j);
+                if (DataMineConstants.isAcceptableFloat(diff)) {
+                    sum += diff * diff;
+                }
+            }
+        } else {
+            for (int j = 0; j < numCols; j++) {
+                float diff = values[firstOffset + j]
+                        - values[secondOffset + j];
+                if (DataMineConstants.isAcceptableFloat(diff)) {
+                    sum += diff * diff;
+                }
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * @param first Integer that is the first row index.
+     * @param second Integer that is the second row index.
+     * @return Float that is the Manhattan distance between the rows.
+     */
+    public float manhattan(int first, int second) {
+        int firstOffset = rowOffset(first);
+        int secondOffset = rowOffset(second);
+        float sum = 0;
+        for (int j = 0; j < numCols; j++) {
+            float diff = offHeap ? offHeapValues.get(firstOffset + j)
+                    - offHeapValues.get(secondOffset + j)
+                    : values[firstOffset + j] - values[secondOffset + j];
+            if (DataMineConstants.isAcceptableFloat(diff)) {
+                sum += Math.abs(diff);
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * @param first Integer that is the first row index.
+     * @param second Integer that is the second row index.
+     * @param p Float that is the Minkowski exponent.
+     * @return Float that is the Minkowski distance between the rows.
+     */
+    public float minkowski(int first, int second, float p) {
+        int firstOffset = rowOffset(first);
+        int secondOffset = rowOffset(second);
+        float sum = 0;
+        for (int j = 0; j < numCols; j++) {
+            float diff = offHeap ? offHeapValues.get(firstOffset + j)
+                    - offHeapValues.get(secondOffset + j)
+                    : values[firstOffset + j] - values[secondOffset + j];
+            if (DataMineConstants.isAcceptableFloat(diff)) {
+                sum += Math.pow(Math.abs(diff), p);
+            }
+        }
+        return (float) Math.pow(sum, 1. / p);
+    }
+
+    /**
+     * @param first Integer that is the first row index.
+     * @param second Integer that is the second row index.
+     * @return Double that is the dot product of the rows.
+     */
+    public double dot(int first, int second) {
+        int firstOffset = rowOffset(first);
+        int secondOffset = rowOffset(second);
+        double sum = 0;
+        for (int j = 0; j < numCols; j++) {
+            sum += offHeap ? offHeapValues.get(firstOffset + j)
+                    * offHeapValues.get(secondOffset + j)
+                    : values[firstOffset + j] * values[secondOffset + j];
+        }
+        return sum;
+    }
+
+    /**
+     * Writes the store, converting the off-heap values to a stream of floats.
+     *
+     * @param out ObjectOutputStream to write to.
+     * @throws IOException
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        if (offHeap) {
+            // The capacity equals the number of values, which was checked
+            // to fit in an integer on allocation.
+            int numValues = offHeapValues.capacity();
+            for (int i = 0; i < numValues; i++) {
+                out.writeFloat(offHeapValues.get(i));
+            }
+        }
+    }
+
+    /**
+     * Reads the store, restoring the off-heap values.
+     *
+     * @param in ObjectInputStream to read from.
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    private void readObject(ObjectInputStream in) throws IOException,
+            ClassNotFoundException {
+        in.defaultReadObject();
+        if (offHeap) {
+            allocate();
+            int numValues = offHeapValues.capacity();
+            for (int i = 0; i < numValues; i++) {
+                offHeapValues.put(i, in.readFloat());
+            }
+        }
+    }
+}
@@ -18,41 +18,61 @@ package dimensionality_reduction;
 
 import data.representation.DataInstance;
 import data.representation.DataSet;
-import data.representation.util.DataMineConstants;
 import ioformat.IOARFF;
 import ioformat.SupervisedLoader;
+import linear.matrix.DenseLinearAlgebra;
+import linear.matrix.SymmetricEigenDecomposition;
 import transformation.TransformationInterface;
 import util.CommandLineParser;
 
 import java.io.File;
+import java.util.Arrays;
 import java.util.Random;
 
 /**
- * Implements the PCA algorithm for dimensionality reduction.
+ * Implements the PCA algorithm for dimensionality reduction. There are three
+ * modes of operation. In the exact mode, the covariance matrix is calculated
+ * by the blocked Gram matrix kernel and the principal components are obtained
+ * from its symmetric eigendecomposition. The streaming mode accumulates the
+ * covariance matrix in a single parallel pass over the data without forming
+ * the centered data matrix. The randomized mode never forms the covariance
+ * matrix and finds the top components by a randomized range finder with power
+ * iterations, which only requires passes over the data that multiply it with
+ * a thin matrix. In all modes, the data is projected by blocked matrix
+ * multiplication.
  *
  * @author Nenad Tomasev <nenad.tomasev at gmail.com>
  */
 public class PrincipalComponentAnalysis implements TransformationInterface {
 
+    public static final int EXACT = 0;
+    public static final int STREAMING = 1;
+    public static final int RANDOMIZED = 2;
+    // The number of rows that are processed at once when passing over the
+    // data in blocks.
+    private static final int ROW_BLOCK_SIZE = 1024;
     // Number of principal components.
     private int numPrincipalComponents;
     // Original dataset to reduce the dimensionality of.
     private DataSet ds;
     // Transformed DataSet of reduced dimensionality.
     private DataSet transformedData;
-    // Differences between feature values in data instances and the average
-    // feature values.
-    private double[][] diffs;
     // Average feature values.
     private double[] featureAverages;
     // Principal components that span the space the data should be projected on.
     private double[][] principalComponents;
     // Covariance matrix of the original data.
     private double[][] covMat;
-    // Current temporary eigenvector.
-    private double[] eigenTemp;
-    // Error of the current iteration used to check for convergence progress.
-    private double error;
+    // Covariance matrix of the original data in row-major order.
+    private double[] covValues;
+    private int mode = EXACT;
+    private int numThreads = Runtime.getRuntime().availableProcessors();
+    // The number of additional random directions in the randomized mode.
+    private int oversampling = 10;
+    // The number of power iterations in the randomized mode.
+    private int numPowerIterations = 2;
+    // The seed of the random starting basis in the randomized mode.
+    private long seed = System.nanoTime();
 
     /**
      * @constructor @param ds DataSet - the original data set.
@@ -63,6 +83,19 @@ public class PrincipalComponentAnalysis implements TransformationInterface {
         this.ds = ds;
     }
 
+    /**
+     * @constructor @param ds DataSet - the original data set.
+     * @param numPrincipalComponents Number of desired principal components.
+     * @param mode Integer that is the mode of operation, EXACT, STREAMING or
+     * RANDOMIZED.
+     */
+    public PrincipalComponentAnalysis(DataSet ds, int numPrincipalComponents,
+            int mode) {
+        this.numPrincipalComponents = numPrincipalComponents;
+        this.ds = ds;
+        this.mode = mode;
+    }
+
     /**
      * Set the original data to reduce dimensionality of.
      *
@@ -73,13 +106,57 @@ public class PrincipalComponentAnalysis implements TransformationInterface {
         this.ds = ds;
     }
 
+    /**
+     * @param mode Integer that is the mode of operation, EXACT, STREAMING or
+     * RANDOMIZED.
+     */
+    public void setMode(int mode) {
+        this.mode = mode;
+    }
+
+    /**
+     * @param numThreads Integer that is the number of threads to use.
+     */
+    public void setNumThreads(int numThreads) {
+        this.numThreads = Math.max(1, numThreads);
+    }
+
+    /**
+     * @param oversampling Integer that is the number of additional random
+     * directions used in the randomized mode.
+     */
+    public void setOversampling(int oversampling) {
+        this.oversampling = Math.max(0, oversampling);
+    }
+
+    /**
+     * @param numPowerIterations Integer that is the number of power
+     * iterations in the randomized mode.
+     */
+    public void setNumPowerIterations(int numPowerIterations) {
+        this.numPowerIterations = Math.max(0, numPowerIterations);
+    }
+
+    /**
+     * @param seed Long that is the seed of the random starting basis in the
+     * randomized mode. The same seed always produces the same components.
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
     /**
      * @return String containing a link to the paper and the algorithm details.
      */
     public static String citing() {
-        return "Transformation based on the fixed-point algorithm described "
-                + "here: http://maxwell.me.gu.edu.au/spl/publications/papers/"
-                + "prl07_alok_pca.pdf";
+        return "Principal component analysis, with the principal components "
+                + "obtained by the symmetric eigendecomposition of the "
+                + "covariance matrix via Householder tridiagonalization and "
+                + "the implicit QL method. The randomized mode follows: "
+                + "Halko, N., Martinsson, P. G., Tropp, J. A. Finding "
+                + "structure with randomness: Probabilistic algorithms for "
+                + "constructing approximate matrix decompositions. SIAM "
+                + "Review 53(2), 217-288, 2011.";
     }
 
     /**
@@ -91,23 +168,73 @@ public class PrincipalComponentAnalysis implements TransformationInterface {
 
     /**
      * @return Covariance matrix of the original data calculated during the
-     * initial phase of PCA.
+     * initial phase of PCA, or null in the randomized mode.
      */
     public double[][] getCovarianceMatrix() {
+        if (covMat == null && covValues != null) {
+            int numFloats = featureAverages.length;
+            covMat = new double[numFloats][numFloats];
+            for (int i = 0; i < numFloats; i++) {
+                System.arraycopy(covValues, i * numFloats, covMat[i], 0,
+                        numFloats);
+            }
+        }
         return covMat;
     }
 
+    /**
+     * @return Two-dimensional double array where each row is a principal
+     * component.
+     */
+    public double[][] getPrincipalComponents() {
+        return principalComponents;
+    }
+
     @Override
     public DataSet transformData() {
-        findInitialStats();
-        findPrincipalComponents();
+        covMat = null;
+        covValues = null;
+        if (mode == STREAMING) {
+            StreamingCovariance covEstimate =
+                    StreamingCovariance.calculateMultThr(ds, numThreads);
+            featureAverages = covEstimate.getMean();
+            covValues = covEstimate.getCovariance();
+            findPrincipalComponents();
+        } else if (mode == RANDOMIZED) {
+            findFeatureAverages();
+            findRandomizedPrincipalComponents();
+        } else {
+            findInitialStats();
+            findPrincipalComponents();
+        }
         projectData();
         return transformedData;
     }
 
+    /**
+     * Copies a block of rows into a row-major array, centered by the feature
+     * averages.
+     *
+     * @param blockStart Integer that is the first row, inclusive.
+     * @param blockEnd Integer that is the last row, exclusive.
+     * @param blockValues Double array to copy the centered rows into.
+     */
+    private void packCenteredBlock(int blockStart, int blockEnd,
+            double[] blockValues) {
+        int numFloats = featureAverages.length;
+        for (int i = blockStart; i < blockEnd; i++) {
+            float[] values = ds.getInstance(i).fAttr;
+            int offset = (i - blockStart) * numFloats;
+            for (int d = 0; d < numFloats; d++) {
+                blockValues[offset + d] = values[d] - featureAverages[d];
+            }
+        }
+    }
+
     /**
      * Projects the data onto the calculated lower-dimensional subspace. The
      * results are kept within the transformedData internal DataSet variable.
+     * The projection is done in blocks of rows by matrix multiplication.
      */
     private void projectData() {
         transformedData = new DataSet();
@@ -122,30 +249,52 @@ public class PrincipalComponentAnalysis implements TransformationInterface {
             transformedData.addDataInstance(instance);
             instance.setCategory(ds.getLabelOf(i));
         }
-        double total;
-        for (int i = 0; i < ds.size(); i++) {
-            DataInstance instance = transformedData.getInstance(i);
-            for (int d = 0; d < numPrincipalComponents; d++) {
-                total = 0;
-                for (int dorig = 0; dorig < ds.getNumFloatAttr(); dorig++) {
-                    total += principalComponents[d][dorig] * diffs[i][dorig];
+        int numFloats = featureAverages.length;
+        // The transposed component matrix, numFloats x numPrincipalComponents.
+        double[] componentColumns = new double[numFloats
+                * numPrincipalComponents];
+        for (int c = 0; c < numPrincipalComponents; c++) {
+            for (int d = 0; d < numFloats; d++) {
+                componentColumns[d * numPrincipalComponents + c] =
+                        principalComponents[c][d];
+            }
+        }
+        double[] blockValues = new double[ROW_BLOCK_SIZE * numFloats];
+        double[] projections = new double[ROW_BLOCK_SIZE
+                * numPrincipalComponents];
+        for (int blockStart = 0; blockStart < ds.size();
+                blockStart += ROW_BLOCK_SIZE) {
+            int blockEnd = Math.min(blockStart + ROW_BLOCK_SIZE, ds.size());
+            int numRows = blockEnd - blockStart;
+            packCenteredBlock(blockStart, blockEnd, blockValues);
+            Arrays.fill(projections, 0);
+            DenseLinearAlgebra.gemm(blockValues, componentColumns, projections,
+                    numRows, numFloats, numPrincipalComponents, numThreads);
+            for (int i = blockStart; i < blockEnd; i++) {
+                DataInstance instance = transformedData.getInstance(i);
+                int offset = (i - blockStart) * numPrincipalComponents;
+                for (int c = 0; c < numPrincipalComponents; c++) {
+                    instance.fAttr[c] = (float) projections[offset + c];
                 }
-                instance.fAttr[d] = (float) total;
             }
         }
     }
 
     /**
-     * Calculate the error of the current iteration.
-     *
-     * @param d Index of the eigenvector that is currently being calculated.
+     * Calculate feature averages.
      */
-    private void updateError(int d) {
-        double total = 0;
-        for (int index = 0; index < eigenTemp.length; index++) {
-            total += eigenTemp[index] * principalComponents[d][index];
+    private void findFeatureAverages() {
+        int numFloats = ds.getNumFloatAttr();
+        featureAverages = new double[numFloats];
+        for (int i = 0; i < ds.size(); i++) {
+            float[] values = ds.getInstance(i).fAttr;
+            for (int d = 0; d < numFloats; d++) {
+                featureAverages[d] += values[d];
+            }
+        }
+        for (int d = 0; d < numFloats; d++) {
+            featureAverages[d] /= ds.size();
         }
-        error = Math.abs(Math.abs(total) - 1);
     }
 
     /**
@@ -154,33 +303,17 @@ public class PrincipalComponentAnalysis implements TransformationInterface {
      */
     private void findInitialStats() {
         int numFloats = ds.getNumFloatAttr();
-        featureAverages = new double[numFloats];
-        double average;
-        for (int d = 0; d < ds.getNumFloatAttr(); d++) {
-            // Average feature value in the given dimension.
-            average = 0;
-            for (int j = 0; j < ds.size(); j++) {
-                average += ds.getInstance(j).fAttr[d];
-            }
-            average = average / ds.size();
-            featureAverages[d] = average;
-        }
-        diffs = new double[ds.size()][numFloats];
-        for (int i = 0; i < ds.size(); i++) {
-            for (int j = 0; j < featureAverages.length; j++) {
-                diffs[i][j] = ds.getInstance(i).fAttr[j] - featureAverages[j];
-            }
-        }
-        covMat = new double[numFloats][numFloats];
-        for (int i = 0; i < covMat.length; i++) {
-            for (int j = 0; j < covMat[i].length; j++) {
-                double total = 0;
-                for (int index = 0; index < ds.size(); index++) {
-                    total += diffs[index][i] * diffs[index][j];
-                }
-                total = total / ds.size();
-                covMat[i][j] = total;
-            }
+        findFeatureAverages();
+        // The deviations are packed into a contiguous array for the Gram
+        // matrix kernel.
+        int size = ds.size();
+        double[] diffValues = new double[size * numFloats];
+        packCenteredBlock(0, size, diffValues);
+        covValues = DenseLinearAlgebra.syrk(diffValues, size, numFloats,
+                DenseLinearAlgebra.getDefaultNumThreads(
+                (long) size * numFloats * numFloats / 2));
+        for (int i = 0; i < covValues.length; i++) {
+            covValues[i] /= size;
         }
     }
 
@@ -189,58 +322,162 @@ public class PrincipalComponentAnalysis implements TransformationInterface {
      * data.
      */
     private void findPrincipalComponents() {
-        Random randa = new Random();
         int numFloats = ds.getNumFloatAttr();
-        double total;
-        principalComponents = new double[numPrincipalComponents][numFloats];
-        for (int i = 0; i < principalComponents.length; i++) {
-            for (int j = 0; j < principalComponents[i].length; j++) {
-                principalComponents[i][j] = randa.nextDouble();
+        SymmetricEigenDecomposition eigenDecomposition =
+                new SymmetricEigenDecomposition(covValues, numFloats);
+        eigenDecomposition.decomposeMatrix();
+        double[][] eigenVectors = eigenDecomposition.getEigenVectors();
+        principalComponents = new double[numPrincipalComponents][];
+        for (int d = 0; d < numPrincipalComponents; d++) {
+            principalComponents[d] = eigenVectors[d];
+        }
+    }
+
+    /**
+     * Calculates the principal components by the randomized range finder. A
+     * random basis is multiplied by the covariance matrix and orthonormalized,
+     * which is repeated in the power iterations. The covariance matrix is then
+     * projected onto the found subspace and the small projected matrix is
+     * diagonalized.
+     */
+    private void findRandomizedPrincipalComponents() {
+        int numFloats = featureAverages.length;
+        int basisSize = Math.min(numPrincipalComponents + oversampling,
+                numFloats);
+        Random randa = new Random(seed);
+        // The basis vectors are the columns of a numFloats x basisSize matrix.
+        double[] basis = new double[numFloats * basisSize];
+        for (int i = 0; i < basis.length; i++) {
+            basis[i] = randa.nextGaussian();
+        }
+        basis = multiplyByCovariance(basis, basisSize);
+        orthonormalizeColumns(basis, numFloats, basisSize);
+        for (int iter = 0; iter < numPowerIterations; iter++) {
+            basis = multiplyByCovariance(basis, basisSize);
+            orthonormalizeColumns(basis, numFloats, basisSize);
+        }
+        double[] covTimesBasis = multiplyByCovariance(basis, basisSize);
+        // The projected covariance matrix, basisSize x basisSize.
+        double[] projectedCov = new double[basisSize * basisSize];
+        for (int d = 0; d < numFloats; d++) {
+            int offset = d * basisSize;
+            for (int i = 0; i < basisSize; i++) {
+                double basisValue = basis[offset + i];
+                for (int j = 0; j < basisSize; j++) {
+                    projectedCov[i * basisSize + j] += basisValue
+                            * covTimesBasis[offset + j];
+                }
             }
         }
-        eigenTemp = new double[numFloats];
-        double[] vectTotal = new double[numFloats];
-        for (int d = 0; d < numPrincipalComponents; d++) {
-            error = 1;
-            while (error > DataMineConstants.EPSILON_CONVERGENCE) {
-                for (int i = 0; i < eigenTemp.length; i++) {
-                    total = 0;
-                    for (int j = 0; j < principalComponents[d].length; j++) {
-                        total += principalComponents[d][j] * covMat[i][j];
-                    }
-                    eigenTemp[i] = total;
+        // Symmetrize to remove the rounding errors.
+        for (int i = 0; i < basisSize; i++) {
+            for (int j = i + 1; j < basisSize; j++) {
+                double value = (projectedCov[i * basisSize + j]
+                        + projectedCov[j * basisSize + i]) / 2;
+                projectedCov[i * basisSize + j] = value;
+                projectedCov[j * basisSize + i] = value;
+            }
+        }
+        SymmetricEigenDecomposition eigenDecomposition =
+                new SymmetricEigenDecomposition(projectedCov, basisSize);
+        eigenDecomposition.decomposeMatrix();
+        double[][] eigenVectors = eigenDecomposition.getEigenVectors();
+        int numComponents = Math.min(numPrincipalComponents, basisSize);
+        principalComponents = new double[numPrincipalComponents][numFloats];
+        for (int c = 0; c < numComponents; c++) {
+            for (int d = 0; d < numFloats; d++) {
+                double value = 0;
+                for (int i = 0; i < basisSize; i++) {
+                    value += basis[d * basisSize + i] * eigenVectors[c][i];
                 }
-                // Gram-Schmidt orthogonalization.
-                for (int i = 0; i < vectTotal.length; i++) {
-                    vectTotal[i] = 0;
+                principalComponents[c][d] = value;
+            }
+        }
+    }
+
+    /**
+     * Multiplies a thin matrix by the covariance matrix, without forming the
+     * covariance matrix, in a blocked pass over the data. For each block of
+     * centered rows X, X^T * (X * B) is accumulated.
+     *
+     * @param basis Double array that is the numFloats x width matrix B in
+     * row-major order.
+     * @param width Integer that is the number of columns of B.
+     * @return Double array that is the numFloats x width product of the
+     * covariance matrix and B, in row-major order.
+     */
+    private double[] multiplyByCovariance(double[] basis, int width) {
+        int numFloats = featureAverages.length;
+        double[] result = new double[numFloats * width];
+        double[] blockValues = new double[ROW_BLOCK_SIZE * numFloats];
+        double[] transposedBlock = new double[numFloats * ROW_BLOCK_SIZE];
+        double[] blockProducts = new double[ROW_BLOCK_SIZE * width];
+        for (int blockStart = 0; blockStart < ds.size();
+                blockStart += ROW_BLOCK_SIZE) {
+            int blockEnd = Math.min(blockStart + ROW_BLOCK_SIZE, ds.size());
+            int numRows = blockEnd - blockStart;
+            packCenteredBlock(blockStart, blockEnd, blockValues);
+            for (int r = 0; r < numRows; r++) {
+                for (int d = 0; d < numFloats; d++) {
+                    transposedBlock[d * numRows + r] =
+                            blockValues[r * numFloats + d];
                 }
-                for (int i = 0; i < d; i++) {
-                    total = 0;
-                    for (int j = 0; j < numFloats; j++) {
-                        total += eigenTemp[j] * principalComponents[i][j];
+            }
+            Arrays.fill(blockProducts, 0);
+            DenseLinearAlgebra.gemm(blockValues, basis, blockProducts,
+                    numRows, numFloats, width, numThreads);
+            DenseLinearAlgebra.gemm(transposedBlock, blockProducts, result,
+                    numFloats, numRows, width, numThreads);
+        }
+        for (int i = 0; i < result.length; i++) {
+            result[i] /= ds.size();
+        }
+        return result;
+    }
+
+    /**
+     * Orthonormalizes the columns of a matrix in place by the modified
+     * Gram-Schmidt procedure, which is applied twice for numerical stability.
+     * Columns that become numerically zero are replaced by zero vectors.
+     *
+     * @param matrix Double array that is the matrix in row-major order.
+     * @param numRows Integer that is the number of rows.
+     * @param numColumns Integer that is the number of columns.
+     */
+    private static void orthonormalizeColumns(double[] matrix, int numRows,
+            int numColumns) {
+        double[][] columns = new double[numColumns][numRows];
+        for (int r = 0; r < numRows; r++) {
+            for (int c = 0; c < numColumns; c++) {
+                columns[c][r] = matrix[r * numColumns + c];
+            }
+        }
+        for (int pass = 0; pass < 2; pass++) {
+            for (int c = 0; c < numColumns; c++) {
+                for (int prev = 0; prev < c; prev++) {
+                    double dot = 0;
+                    for (int r = 0; r < numRows; r++) {
+                        dot += columns[c][r] * columns[prev][r];
                     }
-                    for (int j = 0; j < numFloats; j++) {
-                        vectTotal[j] += total * principalComponents[i][j];
+                    for (int r = 0; r < numRows; r++) {
+                        columns[c][r] -= dot * columns[prev][r];
                     }
                 }
-                for (int i = 0; i < numFloats; i++) {
-                    eigenTemp[i] -= vectTotal[i];
-                }
-                total = 0;
-                // Normalization.
-                for (int i = 0; i < numFloats; i++) {
-                    total += Math.pow(eigenTemp[i], 2);
-                }
-                total = Math.sqrt(total);
-                for (int i = 0; i < eigenTemp.length; i++) {
-                    eigenTemp[i] /= total;
+                double norm = 0;
+                for (int r = 0; r < numRows; r++) {
+                    norm += columns[c][r] * columns[c][r];
                 }
-                updateError(d);
-                for (int i = 0; i < numFloats; i++) {
-                    principalComponents[d][i] = eigenTemp[i];
+                norm = Math.sqrt(norm);
+                for (int r = 0; r < numRows; r++) {
+                    columns[c][r] = norm > 1e-12 ? columns[c][r] / norm : 0;
                 }
             }
         }
+        for (int r = 0; r < numRows; r++) {
+            for (int c = 0; c < numColumns; c++) {
+                matrix[r * numColumns + c] = columns[c][r];
+            }
+        }
     }
 
     /**
@@ -18,11 +18,17 @@ package dimensionality_reduction;
 
 import data.representation.DataInstance;
 import data.representation.DataSet;
+import data.representation.sparse.BOWDataSet;
+import data.representation.sparse.BOWInstance;
 import data.representation.util.DataMineConstants;
 import ioformat.IOARFF;
 import ioformat.SupervisedLoader;
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
 import java.util.Random;
 import transformation.TransformationInterface;
 import util.CommandLineParser;
@@ -30,15 +36,51 @@ import util.CommandLineParser;
 /**
  * This class implements the random projections method where the data is
  * projected onto a lower-dimensional subspace through the origin via a random
- * matrix whose columns sum up to 1.
+ * matrix. The default mode uses a stored dense matrix whose columns are scaled
+ * to the maximum of 1. The Achlioptas and the very sparse modes use sparse
+ * Johnson-Lindenstrauss matrices with entries in {-sqrt(s), 0, sqrt(s)}, where
+ * s is 3 or the square root of the data dimensionality, respectively. The
+ * SRHT mode uses the subsampled randomized Hadamard transform. In the sparse
+ * and the SRHT modes the projection matrix is never stored, as it is
+ * generated on the fly from the seed, and the sparse word vectors of
+ * BOWInstance objects are projected directly, by touching only the non-zero
+ * entries. The float features and the words are treated as a single
+ * concatenated feature vector, with the words coming after the float
+ * features. The instances are projected in parallel batches.
  *
  * @author Nenad Tomasev <nenad.tomasev at gmail.com>
  */
 public class RandomProjection implements TransformationInterface {
 
+    public static final int DENSE_UNIFORM = 0;
+    public static final int ACHLIOPTAS = 1;
+    public static final int VERY_SPARSE = 2;
+    public static final int SRHT = 3;
+    // Constant used for advancing the pseudo-random streams.
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+    // Constant that decorrelates the SRHT signs from the other streams.
+    private static final long SIGN_SALT = 0x2545F4914F6CDD1DL;
+    // The number of dense instances that share the generated matrix columns.
+    private static final int BATCH_SIZE = 64;
     private DataSet dset;
     // The number of dimensions to reduce the data to.
     private int targetDimensionality = 2;
+    private int mode = DENSE_UNIFORM;
+    private long seed = System.nanoTime();
+    private int numThreads = Runtime.getRuntime().availableProcessors();
+    // The number of float features in the data.
+    private int numFAtt;
+    // The total number of input dimensions, float features and words.
+    private int inputDimensionality;
+    // The probability of a non-zero entry in the sparse projection modes.
+    private double density;
+    // The absolute value of the non-zero entries in the sparse modes.
+    private float sparseScale;
+    // The smallest power of two not lower than the input dimensionality.
+    private int paddedDimensionality;
+    // The Hadamard rows that are sampled in the SRHT mode, sorted.
+    private int[] sampledRows;
+    private float srhtScale;
 
     /**
      * The default constructor.
@@ -67,6 +109,47 @@ public class RandomProjection implements TransformationInterface {
         this.targetDimensionality = targetDimensionality;
     }
 
+    /**
+     * Initialization.
+     *
+     * @param dset DataSet to reduce the dimensionality of.
+     * @param targetDimensionality Integer that is the number of dimensions to
+     * reduce the data to.
+     * @param mode Integer that is the projection mode, DENSE_UNIFORM,
+     * ACHLIOPTAS, VERY_SPARSE or SRHT.
+     * @param seed Long that is the seed that the projection is generated from.
+     */
+    public RandomProjection(DataSet dset, int targetDimensionality, int mode,
+            long seed) {
+        this.dset = dset;
+        this.targetDimensionality = targetDimensionality;
+        this.mode = mode;
+        this.seed = seed;
+    }
+
+    /**
+     * @param mode Integer that is the projection mode, DENSE_UNIFORM,
+     * ACHLIOPTAS, VERY_SPARSE or SRHT.
+     */
+    public void setMode(int mode) {
+        this.mode = mode;
+    }
+
+    /**
+     * @param seed Long that is the seed that the projection is generated from.
+     * The same seed always produces the same projection.
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * @param numThreads Integer that is the number of threads to use.
+     */
+    public void setNumThreads(int numThreads) {
+        this.numThreads = Math.max(1, numThreads);
+    }
+
     /**
      * Set the original data to reduce dimensionality of.
      *
@@ -123,7 +206,58 @@ public class RandomProjection implements TransformationInterface {
         if (dset == null || dset.isEmpty()) {
             return null;
         }
-        int numFAtt = dset.getNumFloatAttr();
+        numFAtt = dset.getNumFloatAttr();
+        if (mode == DENSE_UNIFORM) {
+            return transformDenseUniform();
+        }
+        inputDimensionality = numFAtt;
+        if (dset instanceof BOWDataSet) {
+            int numWords = ((BOWDataSet) dset).getNumDifferentWords();
+            for (int i = 0; i < dset.size(); i++) {
+                for (int index : ((BOWInstance) dset.getInstance(
+                        i)).getWordIndexesHash().keySet()) {
+                    numWords = Math.max(numWords, index + 1);
+                }
+            }
+            inputDimensionality += numWords;
+        }
+        if (inputDimensionality <= targetDimensionality
+                && !(dset instanceof BOWDataSet)) {
+            try {
+                return dset.copy();
+            } catch (Exception e) {
+                return dset;
+            }
+        }
+        initializeProjection();
+        DataSet projectedDSet = initializeProjectedData();
+        int size = dset.size();
+        int threadNum = Math.max(1, Math.min(numThreads, size / 64));
+        Thread[] threads = new Thread[threadNum];
+        int chunkSize = (size + threadNum - 1) / threadNum;
+        for (int t = 0; t < threadNum; t++) {
+            int startIndex = Math.min(t * chunkSize, size);
+            int endIndex = Math.min(startIndex + chunkSize, size);
+            threads[t] = new Thread(new ProjectionWorker(projectedDSet,
+                    startIndex, endIndex));
+            threads[t].start();
+        }
+        for (int t = 0; t < threadNum; t++) {
+            try {
+                threads[t].join();
+            } catch (Throwable thr) {
+                System.err.println(thr.getMessage());
+            }
+        }
+        return projectedDSet;
+    }
+
+    /**
+     * Projects the data by the stored dense uniform projection matrix.
+     *
+     * @return DataSet that is the projected data.
+     */
+    private DataSet transformDenseUniform() {
         if (numFAtt <= targetDimensionality) {
             DataSet trivialResult;
             try {
@@ -136,6 +270,29 @@ public class RandomProjection implements TransformationInterface {
         // Generate a random projection matrix.
         float[][] projectionMatrix = generateRandomProjectionMatrix(numFAtt,
                 targetDimensionality);
+        DataSet projectedDSet = initializeProjectedData();
+        // Now finally perform the random projection.
+        for (int i = 0; i < targetDimensionality; i++) {
+            for (int j = 0; j < dset.size(); j++) {
+                for (int k = 0; k < numFAtt; k++) {
+                    // Handling possible missing values or incorrect entries.
+                    float fVal = dset.getInstance(j).fAttr[k];
+                    if (DataMineConstants.isAcceptableFloat(fVal)) {
+                        projectedDSet.getInstance(j).fAttr[i] +=
+                                projectionMatrix[i][k] * fVal;
+                    }
+                }
+            }
+        }
+        return projectedDSet;
+    }
+
+    /**
+     * Initializes the zeroed projected data instances.
+     *
+     * @return DataSet that holds the zeroed projected data instances.
+     */
+    private DataSet initializeProjectedData() {
         DataSet projectedDSet = new DataSet();
         // Generate dummy attribute names for the resulting projection.
         String[] fAttNames = new String[targetDimensionality];
@@ -155,22 +312,314 @@ public class RandomProjection implements TransformationInterface {
             instance.setCategory(dset.getLabelOf(i));
             instance.setIdentifier(dset.getInstance(i).copyIdentifier());
         }
-        // Now finally perform the random projection.
-        for (int i = 0; i < targetDimensionality; i++) {
-            for (int j = 0; j < dset.size(); j++) {
+        return projectedDSet;
+    }
+
+    /**
+     * Initializes the parameters of the implicit projection matrix.
+     */
+    private void initializeProjection() {
+        if (mode == SRHT) {
+            paddedDimensionality = 1;
+            while (paddedDimensionality < inputDimensionality) {
+                paddedDimensionality <<= 1;
+            }
+            // Sample the Hadamard rows uniformly without replacement. There
+            // can be no more distinct rows than the padded dimensionality,
+            // which small vocabularies may not reach. In that case all rows
+            // are used and the remaining target dimensions are left at zero.
+            int numRows = Math.min(targetDimensionality,
+                    paddedDimensionality);
+            sampledRows = new int[numRows];
+            if (numRows == paddedDimensionality) {
+                for (int row = 0; row < numRows; row++) {
+                    sampledRows[row] = row;
+                }
+            } else {
+                Random randa = new Random(seed);
+                HashSet<Integer> sampled = new HashSet<>(2 * numRows);
+                int numSampled = 0;
+                while (numSampled < numRows) {
+                    int row = randa.nextInt(paddedDimensionality);
+                    if (sampled.add(row)) {
+                        sampledRows[numSampled++] = row;
+                    }
+                }
+                Arrays.sort(sampledRows);
+            }
+            // The sqrt(padded / rows) rescaling of the sampled rows and the
+            // 1 / sqrt(padded) normalization of the Hadamard matrix combine
+            // into a single factor.
+            srhtScale = (float) (1 / Math.sqrt(numRows));
+        } else {
+            double sparsity = mode == VERY_SPARSE
+                    ? Math.max(1, Math.sqrt(inputDimensionality)) : 3;
+            density = 1 / sparsity;
+            sparseScale = (float) Math.sqrt(sparsity / targetDimensionality);
+        }
+    }
+
+    /**
+     * The finalizer of the SplitMix64 generator, which turns a counter into a
+     * well-distributed pseudo-random value.
+     *
+     * @param z Long that is the counter value.
+     * @return Long that is the mixed pseudo-random value.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * @param featureIndex Integer that is the input feature index.
+     * @return Float that is the random sign of the feature in the SRHT mode.
+     */
+    private float srhtSign(int featureIndex) {
+        return mix((seed ^ SIGN_SALT) + featureIndex * GOLDEN_GAMMA) < 0
+                ? -1 : 1;
+    }
+
+    /**
+     * Generates the non-zero entries of a projection matrix column in the
+     * sparse modes from the seed. For very sparse matrices, the zero entries
+     * are skipped over with geometrically distributed gaps.
+     *
+     * @param featureIndex Integer that is the input feature index.
+     * @param positions Integer array of length targetDimensionality to place
+     * the positions of the non-zero entries in.
+     * @param entries Float array of length targetDimensionality to place the
+     * values of the non-zero entries in.
+     * @return Integer that is the number of non-zero entries.
+     */
+    private int generateSparseColumn(int featureIndex, int[] positions,
+            float[] entries) {
+        long state = seed + (featureIndex + 1) * GOLDEN_GAMMA;
+        state = mix(state);
+        int numEntries = 0;
+        if (density > 0.1) {
+            // For denser matrices, each entry is drawn from a single value,
+            // where the upper bits decide whether it is non-zero and the
+            // lowest bit decides its sign.
+            long threshold = (long) (density * (1L << 53));
+            for (int j = 0; j < targetDimensionality; j++) {
+                state += GOLDEN_GAMMA;
+                long bits = mix(state);
+                if ((bits >>> 11) < threshold) {
+                    positions[numEntries] = j;
+                    entries[numEntries++] = (bits & 1) == 0 ? sparseScale
+                            : -sparseScale;
+                }
+            }
+            return numEntries;
+        }
+        double logZero = Math.log1p(-density);
+        double position = -1;
+        while (true) {
+            state += GOLDEN_GAMMA;
+            // Uniform value in (0, 1].
+            double u = ((mix(state) >>> 11) + 1) * 0x1.0p-53;
+            position += 1 + Math.floor(Math.log(u) / logZero);
+            if (position >= targetDimensionality) {
+                break;
+            }
+            state += GOLDEN_GAMMA;
+            positions[numEntries] = (int) position;
+            entries[numEntries++] = mix(state) < 0 ? -sparseScale
+                    : sparseScale;
+        }
+        return numEntries;
+    }
+
+    /**
+     * Performs the in-place unnormalized fast Walsh-Hadamard transform.
+     *
+     * @param values Float array of length that is a power of two.
+     */
+    private static void fastWalshHadamard(float[] values) {
+        int length = values.length;
+        for (int half = 1; half < length; half <<= 1) {
+            for (int i = 0; i < length; i += half << 1) {
+                for (int j = i; j < i + half; j++) {
+                    float first = values[j];
+                    float second = values[j + half];
+                    values[j] = first + second;
+                    values[j + half] = first - second;
+                }
+            }
+        }
+    }
+
+    /**
+     * This worker projects a range of instances in the sparse or the SRHT
+     * mode.
+     */
+    class ProjectionWorker implements Runnable {
+
+        private DataSet projectedDSet;
+        private int startIndex;
+        private int endIndex;
+        // The non-zero feature indexes and values of the current instance.
+        private int[] nzIndexes = new int[16];
+        private float[] nzValues = new float[16];
+        private int numNonZero;
+        // Buffer for the full-length Hadamard transform.
+        private float[] hadamardBuffer;
+        // Buffers for the generated sparse projection matrix columns.
+        private int[] columnPositions = new int[targetDimensionality];
+        private float[] columnEntries = new float[targetDimensionality];
+
+        /**
+         * Initialization.
+         *
+         * @param projectedDSet DataSet holding the projected instances.
+         * @param startIndex Integer that is the start index, inclusive.
+         * @param endIndex Integer that is the end index, exclusive.
+         */
+        public ProjectionWorker(DataSet projectedDSet, int startIndex,
+                int endIndex) {
+            this.projectedDSet = projectedDSet;
+            this.startIndex = startIndex;
+            this.endIndex = endIndex;
+        }
+
+        /**
+         * Appends a non-zero feature value of the current instance.
+         *
+         * @param index Integer that is the feature index.
+         * @param value Float that is the feature value.
+         */
+        private void addNonZero(int index, float value) {
+            if (numNonZero == nzIndexes.length) {
+                nzIndexes = Arrays.copyOf(nzIndexes, 2 * numNonZero);
+                nzValues = Arrays.copyOf(nzValues, 2 * numNonZero);
+            }
+            nzIndexes[numNonZero] = index;
+            nzValues[numNonZero++] = value;
+        }
+
+        /**
+         * Projects the non-zero features of the current instance by SRHT.
+         *
+         * @param result Float array that is the projection.
+         */
+        private void projectSRHT(float[] result) {
+            int logPadded = Integer.numberOfTrailingZeros(paddedDimensionality);
+            int numRows = sampledRows.length;
+            if ((long) numNonZero * numRows
+                    < (long) paddedDimensionality * (logPadded + 1)) {
+                // Evaluate the sampled Hadamard rows directly, as the entry in
+                // row r and column c is the parity of the bits of r & c.
+                for (int i = 0; i < numNonZero; i++) {
+                    float value = srhtSign(nzIndexes[i]) * nzValues[i];
+                    for (int j = 0; j < numRows; j++) {
+                        if ((Integer.bitCount(sampledRows[j] & nzIndexes[i])
+                                & 1) == 0) {
+                            result[j] += value;
+                        } else {
+                            result[j] -= value;
+                        }
+                    }
+                }
+            } else {
+                if (hadamardBuffer == null) {
+                    hadamardBuffer = new float[paddedDimensionality];
+                } else {
+                    Arrays.fill(hadamardBuffer, 0);
+                }
+                for (int i = 0; i < numNonZero; i++) {
+                    hadamardBuffer[nzIndexes[i]] = srhtSign(nzIndexes[i])
+                            * nzValues[i];
+                }
+                fastWalshHadamard(hadamardBuffer);
+                for (int j = 0; j < numRows; j++) {
+                    result[j] = hadamardBuffer[sampledRows[j]];
+                }
+            }
+            for (int j = 0; j < numRows; j++) {
+                result[j] *= srhtScale;
+            }
+        }
+
+        /**
+         * Projects the dense float features of a batch of instances in the
+         * sparse modes. Each projection matrix column is generated once for
+         * the whole batch.
+         *
+         * @param batchStart Integer that is the first index, inclusive.
+         * @param batchEnd Integer that is the last index, exclusive.
+         */
+        private void projectDenseBatch(int batchStart, int batchEnd) {
+            for (int k = 0; k < numFAtt; k++) {
+                int numEntries = generateSparseColumn(k, columnPositions,
+                        columnEntries);
+                for (int i = batchStart; i < batchEnd; i++) {
+                    // Handling possible missing values or incorrect entries.
+                    float fVal = dset.getInstance(i).fAttr[k];
+                    if (fVal == 0
+                            || !DataMineConstants.isAcceptableFloat(fVal)) {
+                        continue;
+                    }
+                    float[] result = projectedDSet.getInstance(i).fAttr;
+                    for (int j = 0; j < numEntries; j++) {
+                        result[columnPositions[j]] += columnEntries[j] * fVal;
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            boolean sparseData = dset instanceof BOWDataSet;
+            if (mode != SRHT && !sparseData) {
+                for (int batchStart = startIndex; batchStart < endIndex;
+                        batchStart += BATCH_SIZE) {
+                    projectDenseBatch(batchStart, Math.min(batchStart
+                            + BATCH_SIZE, endIndex));
+                }
+                return;
+            }
+            for (int i = startIndex; i < endIndex; i++) {
+                DataInstance instance = dset.getInstance(i);
+                numNonZero = 0;
                 for (int k = 0; k < numFAtt; k++) {
                     // Handling possible missing values or incorrect entries.
-                    float fVal = dset.getInstance(j).fAttr[k];
-                    if (DataMineConstants.isAcceptableFloat(fVal)) {
-                        projectedDSet.getInstance(j).fAttr[i] +=
-                                projectionMatrix[i][k] * fVal;
+                    float fVal = instance.fAttr[k];
+                    if (fVal != 0
+                            && DataMineConstants.isAcceptableFloat(fVal)) {
+                        addNonZero(k, fVal);
+                    }
+                }
+                if (instance instanceof BOWInstance) {
+                    HashMap<Integer, Float> wordIndexHash =
+                            ((BOWInstance) instance).getWordIndexesHash();
+                    for (Map.Entry<Integer, Float> entry :
+                            wordIndexHash.entrySet()) {
+                        float fVal = entry.getValue();
+                        if (fVal != 0
+                                && DataMineConstants.isAcceptableFloat(fVal)) {
+                            addNonZero(numFAtt + entry.getKey(), fVal);
+                        }
+                    }
+                }
+                float[] result = projectedDSet.getInstance(i).fAttr;
+                if (mode == SRHT) {
+                    projectSRHT(result);
+                } else {
+                    for (int nz = 0; nz < numNonZero; nz++) {
+                        int numEntries = generateSparseColumn(nzIndexes[nz],
+                                columnPositions, columnEntries);
+                        for (int j = 0; j < numEntries; j++) {
+                            result[columnPositions[j]] += columnEntries[j]
+                                    * nzValues[nz];
+                        }
                     }
                 }
             }
         }
-        return projectedDSet;
     }
-    
+
     /**
      * Performs the random projection from the file specified by the user,
      * reducing it to a specified number of dimensions and persisting the
@@ -187,6 +636,9 @@ public class RandomProjection implements TransformationInterface {
                 true, false);
         clp.addParam("-dim", "Dimensionality of data projection",
                 CommandLineParser.INTEGER, true, false);
+        clp.addParam("-mode", "Projection mode: 0 - dense uniform, 1 - "
+                + "Achlioptas, 2 - very sparse, 3 - SRHT",
+                CommandLineParser.INTEGER, false, false);
         clp.parseLine(args);
         File inFile = new File((String) (clp.getParamValues("-inFile").get(0)));
         File outFile = new File((String) (clp.getParamValues(
@@ -194,6 +646,9 @@ public class RandomProjection implements TransformationInterface {
         int targetDim = (Integer) (clp.getParamValues("-dim").get(0));
         DataSet inputSet = SupervisedLoader.loadData(inFile.getPath(), false);
         RandomProjection rp = new RandomProjection(inputSet, targetDim);
+        if (clp.hasParamValue("-mode")) {
+            rp.setMode((Integer) (clp.getParamValues("-mode").get(0)));
+        }
         DataSet output = rp.transformData();
         IOARFF saver = new IOARFF();
         saver.saveLabeled(output, outFile.getPath());
@@ -0,0 +1,252 @@
+/**
+* Hub Miner: a hubness-aware machine learning experimentation library.
+* Copyright (C) 2014  Nenad Tomasev. Email: nenad.tomasev at gmail.com
+* 
+* This program is free software: you can redistribute it and/or modify it under
+* the terms of the GNU General Public License as published by the Free Software
+* Foundation, either version 3 of the License, or (at your option) any later
+* version.
+* 
+* This program is distributed in the hope that it will be useful, but WITHOUT
+* ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+* FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License along with
+* this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+package dimensionality_reduction;
+
+import data.representation.DataSet;
+import linear.matrix.DenseLinearAlgebra;
+
+/**
+ * This class accumulates the mean and the covariance matrix of the float
+ * features in a single streaming pass. The sums of the values and of their
+ * outer products are accumulated after subtracting a shift vector, which is
+ * taken to be the mean of the first block of rows, so that the sums stay
+ * numerically stable. The rows are processed in blocks and the outer products
+ * are added by the blocked Gram matrix kernel. Estimates obtained on different
+ * parts of the data can be merged, which is used to accumulate the covariance
+ * in parallel.
+ *
+ * @author Nenad Tomasev <nenad.tomasev at gmail.com>
+ */
+public class StreamingCovariance {
+
+    // The number of rows that are processed at once.
+    public static final int DEFAULT_BLOCK_SIZE = 256;
+    private int dim;
+    private long count = 0;
+    // The shift vector, or null before any data has been processed.
+    private double[] shift;
+    // The sum of the shifted values.
+    private double[] shiftedSums;
+    // The upper triangle of the sum of the outer products of the shifted
+    // values, dim x dim in row-major order.
+    private double[] shiftedProducts;
+    private double[] blockValues;
+    private int blockSize = DEFAULT_BLOCK_SIZE;
+
+    /**
+     * Initialization.
+     *
+     * @param dim Integer that is the number of features.
+     */
+    public StreamingCovariance(int dim) {
+        this.dim = dim;
+        shiftedSums = new double[dim];
+        shiftedProducts = new double[dim * dim];
+    }
+
+    /**
+     * @param blockSize Integer that is the number of rows to process at once.
+     */
+    public void setBlockSize(int blockSize) {
+        this.blockSize = Math.max(1, blockSize);
+        blockValues = null;
+    }
+
+    /**
+     * @return Long that is the number of processed rows.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return Double array that is the feature mean.
+     */
+    public double[] getMean() {
+        double[] mean = new double[dim];
+        if (count == 0) {
+            return mean;
+        }
+        for (int d = 0; d < dim; d++) {
+            mean[d] = shift[d] + shiftedSums[d] / count;
+        }
+        return mean;
+    }
+
+    /**
+     * @return Double array that is the covariance matrix in row-major order.
+     */
+    public double[] getCovariance() {
+        double[] covariance = new double[dim * dim];
+        if (count == 0) {
+            return covariance;
+        }
+        for (int i = 0; i < dim; i++) {
+            for (int j = i; j < dim; j++) {
+                double value = (shiftedProducts[i * dim + j]
+                        - shiftedSums[i] * shiftedSums[j] / count) / count;
+                covariance[i * dim + j] = value;
+                covariance[j * dim + i] = value;
+            }
+        }
+        return covariance;
+    }
+
+    /**
+     * Updates the estimate with a range of instances of a dataset.
+     *
+     * @param dset DataSet to take the float features from.
+     * @param startIndex Integer that is the first index, inclusive.
+     * @param endIndex Integer that is the last index, exclusive.
+     */
+    public void add(DataSet dset, int startIndex, int endIndex) {
+        if (blockValues == null) {
+            blockValues = new double[blockSize * dim];
+        }
+        for (int blockStart = startIndex; blockStart < endIndex;
+                blockStart += blockSize) {
+            int blockEnd = Math.min(blockStart + blockSize, endIndex);
+            int numRows = blockEnd - blockStart;
+            if (shift == null) {
+                shift = new double[dim];
+                for (int i = blockStart; i < blockEnd; i++) {
+                    float[] values = dset.data.get(i).fAttr;
+                    for (int d = 0; d < dim; d++) {
+                        shift[d] += values[d];
+                    }
+                }
+                for (int d = 0; d < dim; d++) {
+                    shift[d] /= numRows;
+                }
+            }
+            for (int i = blockStart; i < blockEnd; i++) {
+                float[] values = dset.data.get(i).fAttr;
+                int offset = (i - blockStart) * dim;
+                for (int d = 0; d < dim; d++) {
+                    blockValues[offset + d] = values[d] - shift[d];
+                    shiftedSums[d] += blockValues[offset + d];
+                }
+            }
+            DenseLinearAlgebra.syrkUpper(blockValues, shiftedProducts,
+                    numRows, dim, 1);
+            count += numRows;
+        }
+    }
+
+    /**
+     * Merges another estimate into this estimate. The sums of the other
+     * estimate are re-expressed with respect to the shift of this estimate.
+     *
+     * @param other StreamingCovariance estimate to merge.
+     */
+    public void merge(StreamingCovariance other) {
+        if (other == null || other.count == 0) {
+            return;
+        }
+        if (shift == null) {
+            shift = new double[dim];
+            System.arraycopy(other.shift, 0, shift, 0, dim);
+        }
+        // The difference between the shifts.
+        double[] delta = new double[dim];
+        for (int d = 0; d < dim; d++) {
+            delta[d] = other.shift[d] - shift[d];
+        }
+        for (int i = 0; i < dim; i++) {
+            int offset = i * dim;
+            for (int j = i; j < dim; j++) {
+                shiftedProducts[offset + j] += other.shiftedProducts[offset + j]
+                        + other.shiftedSums[i] * delta[j]
+                        + delta[i] * other.shiftedSums[j]
+                        + other.count * delta[i] * delta[j];
+            }
+        }
+        for (int d = 0; d < dim; d++) {
+            shiftedSums[d] += other.shiftedSums[d] + other.count * delta[d];
+        }
+        count += other.count;
+    }
+
+    /**
+     * Calculates the covariance of the float features of a dataset by
+     * accumulating the estimates on data chunks in parallel and merging them.
+     *
+     * @param dset DataSet to analyze.
+     * @param numThreads Integer that is the number of threads to use.
+     * @return StreamingCovariance estimate on the whole data.
+     */
+    public static StreamingCovariance calculateMultThr(DataSet dset,
+            int numThreads) {
+        int dim = dset.getNumFloatAttr();
+        int size = dset.size();
+        numThreads = Math.max(1, Math.min(numThreads,
+                size / DEFAULT_BLOCK_SIZE + 1));
+        StreamingCovariance[] estimates = new StreamingCovariance[numThreads];
+        Thread[] threads = new Thread[numThreads];
+        int chunkSize = size / numThreads;
+        for (int tIndex = 0; tIndex < numThreads; tIndex++) {
+            estimates[tIndex] = new StreamingCovariance(dim);
+            int endIndex = tIndex == numThreads - 1 ? size
+                    : (tIndex + 1) * chunkSize;
+            threads[tIndex] = new Thread(new ChunkAccumulator(dset,
+                    estimates[tIndex], tIndex * chunkSize, endIndex));
+            threads[tIndex].start();
+        }
+        StreamingCovariance result = new StreamingCovariance(dim);
+        for (int tIndex = 0; tIndex < numThreads; tIndex++) {
+            try {
+                threads[tIndex].join();
+            } catch (Throwable t) {
+                System.err.println(t.getMessage());
+            }
+            result.merge(estimates[tIndex]);
+        }
+        return result;
+    }
+
+    /**
+     * This class accumulates the estimate on a chunk of the data.
+     */
+    static class ChunkAccumulator implements Runnable {
+
+        private DataSet dset;
+        private StreamingCovariance estimate;
+        private int startIndex;
+        private int endIndex;
+
+        /**
+         * Initialization.
+         *
+         * @param dset DataSet to analyze.
+         * @param estimate StreamingCovariance to accumulate into.
+         * @param startIndex Integer that is the first index, inclusive.
+         * @param endIndex Integer that is the last index, exclusive.
+         */
+        ChunkAccumulator(DataSet dset, StreamingCovariance estimate,
+                int startIndex, int endIndex) {
+            this.dset = dset;
+            this.estimate = estimate;
+            this.startIndex = startIndex;
+            this.endIndex = endIndex;
+        }
+
+        @Override
+        public void run() {
+            estimate.add(dset, startIndex, endIndex);
+        }
+    }
+}
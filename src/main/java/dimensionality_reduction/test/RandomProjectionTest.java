@@ -0,0 +1,131 @@
+/**
+* Hub Miner: a hubness-aware machine learning experimentation library.
+* Copyright (C) 2014  Nenad Tomasev. Email: nenad.tomasev at gmail.com
+* 
+* This program is free software: you can redistribute it and/or modify it under
+* the terms of the GNU General Public License as published by the Free Software
+* Foundation, either version 3 of the License, or (at your option) any later
+* version.
+* 
+* This program is distributed in the hope that it will be useful, but WITHOUT
+* ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+* FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License along with
+* this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+package dimensionality_reduction.test;
+
+import data.representation.DataSet;
+import data.representation.sparse.BOWDataSet;
+import data.representation.sparse.BOWInstance;
+import dimensionality_reduction.RandomProjection;
+import java.util.Random;
+import static junit.framework.Assert.fail;
+import junit.framework.TestCase;
+import org.junit.Test;
+
+/**
+ * This class tests the subsampled randomized Hadamard transform projections of
+ * sparse bag-of-words data.
+ *
+ * @author Nenad Tomasev <nenad.tomasev at gmail.com>
+ */
+public class RandomProjectionTest extends TestCase {
+
+    /**
+     * This method tests the SRHT projection of a bag-of-words collection whose
+     * vocabulary is smaller than the target dimensionality. All the Hadamard
+     * rows are used, so the projection preserves the norms and the target
+     * dimensions beyond the padded vocabulary size are zero.
+     */
+    @Test
+    public static void testSRHTSmallVocabulary() {
+        final BOWDataSet bowDSet = generateToyCorpus(5, 20);
+        final DataSet[] result = new DataSet[1];
+        Thread projectionThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                RandomProjection projection = new RandomProjection(bowDSet,
+                        10, RandomProjection.SRHT, 1234);
+                projection.setNumThreads(1);
+                result[0] = projection.transformData();
+            }
+        });
+        projectionThread.start();
+        try {
+            projectionThread.join(10000);
+        } catch (InterruptedException e) {
+            fail(e.getMessage());
+        }
+        if (projectionThread.isAlive()) {
+            fail("The SRHT projection did not terminate.");
+        }
+        assertNotNull(result[0]);
+        assertEquals(bowDSet.size(), result[0].size());
+        for (int i = 0; i < bowDSet.size(); i++) {
+            float[] projected = result[0].getInstance(i).fAttr;
+            assertEquals(10, projected.length);
+            double originalNorm = 0;
+            for (float count : ((BOWInstance) bowDSet.getInstance(i)).
+                    getWordIndexesHash().values()) {
+                originalNorm += count * count;
+            }
+            double projectedNorm = 0;
+            for (float value : projected) {
+                projectedNorm += value * value;
+            }
+            assertEquals(originalNorm, projectedNorm,
+                    1e-4 * Math.max(1, originalNorm));
+            // The vocabulary is padded to 8 Hadamard rows.
+            assertEquals(0f, projected[8]);
+            assertEquals(0f, projected[9]);
+        }
+    }
+
+    /**
+     * This method tests that the SRHT projection of a larger vocabulary has
+     * the target dimensionality and is reproducible from the seed.
+     */
+    @Test
+    public static void testSRHTReproducibility() {
+        BOWDataSet bowDSet = generateToyCorpus(100, 20);
+        DataSet first = new RandomProjection(bowDSet, 10,
+                RandomProjection.SRHT, 42).transformData();
+        DataSet second = new RandomProjection(bowDSet, 10,
+                RandomProjection.SRHT, 42).transformData();
+        for (int i = 0; i < bowDSet.size(); i++) {
+            assertEquals(10, first.getInstance(i).fAttr.length);
+            for (int d = 0; d < 10; d++) {
+                assertEquals(first.getInstance(i).fAttr[d],
+                        second.getInstance(i).fAttr[d]);
+            }
+        }
+    }
+
+    /**
+     * This method generates a toy bag-of-words corpus.
+     *
+     * @param numWords Integer that is the vocabulary size.
+     * @param size Integer that is the number of documents.
+     * @return BOWDataSet that is a random toy corpus.
+     */
+    private static BOWDataSet generateToyCorpus(int numWords, int size) {
+        BOWDataSet bowDSet = new BOWDataSet(numWords);
+        for (int w = 0; w < numWords; w++) {
+            bowDSet.insertWord("word" + w);
+        }
+        Random randa = new Random(size);
+        for (int i = 0; i < size; i++) {
+            BOWInstance instance = new BOWInstance(bowDSet);
+            for (int w = 0; w < numWords; w++) {
+                if (randa.nextFloat() < 0.5) {
+                    instance.addWord(w, 1 + randa.nextInt(3));
+                }
+            }
+            instance.setCategory(0);
+            bowDSet.addDataInstance(instance);
+        }
+        return bowDSet;
+    }
+}
@@ -0,0 +1,699 @@
+/**
+* Hub Miner: a hubness-aware machine learning experimentation library.
+* Copyright (C) 2014  Nenad Tomasev. Email: nenad.tomasev at gmail.com
+* 
+* This program is free software: you can redistribute it and/or modify it under
+* the terms of the GNU General Public License as published by the Free Software
+* Foundation, either version 3 of the License, or (at your option) any later
+* version.
+* 
+* This program is distributed in the hope that it will be useful, but WITHOUT
+* ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+* FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License along with
+* this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+package distances.concentration;
+
+import data.neighbors.NeighborSetFinder;
+import data.representation.DataInstance;
+import data.representation.DataSet;
+import distances.primary.CombinedMetric;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Examines the concentration of distances on large datasets, where the full
+ * distance matrix can not be calculated. The statistics are estimated either
+ * from a sample of random point pairs or from the distances of a sample of
+ * query points to all the other points. The moments are accumulated in a
+ * streaming way by the Welford updates, the quantiles are estimated from a
+ * reservoir sample of the distances and the calculations are distributed
+ * among several threads. The estimates of the mean distance, the relative
+ * contrast and the intrinsic dimensionality come with the 95% confidence
+ * bounds. The class also implements the maximum likelihood estimate of the
+ * intrinsic dimensionality from the kNN distances, as proposed by Levina and
+ * Bickel in "Maximum Likelihood Estimation of Intrinsic Dimension", NIPS
+ * 2004, with the averaging correction by MacKay and Ghahramani.
+ *
+ * @author Nenad Tomasev <nenad.tomasev at gmail.com>
+ */
+public class SampledConcentrationCalculator {
+
+    public static final int DEFAULT_NUM_THREADS = 4;
+    public static final int DEFAULT_RESERVOIR_SIZE = 100000;
+    // The normal quantile for the 95% confidence bounds.
+    private static final double CONFIDENCE_Z = 1.96;
+    private DataSet dataset;
+    private CombinedMetric cmet;
+    private int numThreads = DEFAULT_NUM_THREADS;
+    private int reservoirSize = DEFAULT_RESERVOIR_SIZE;
+    private Random randa = new Random();
+    // Streaming statistics of the distances.
+    private long numDistances = 0;
+    private double mean = 0;
+    private double variance = 0;
+    private double min = Float.MAX_VALUE;
+    private double max = -Float.MAX_VALUE;
+    private double contrast = 0;
+    private double relativeContrast = 0;
+    private double relativeContrastError = 0;
+    private double relativeVariance = 0;
+    // According to Chavez, Navaro, "Searching in Metric Spaces", 2001
+    private double intrinsicDim = 0;
+    // The maximum likelihood estimate from the query kNN distances.
+    private double mleIntrinsicDim = 0;
+    private double mleIntrinsicDimError = 0;
+    // Sorted reservoir sample of the distances.
+    private float[] reservoir;
+
+    /**
+     * Initialization.
+     *
+     * @param dataset DataSet to analyze.
+     * @param cmet CombinedMetric object for distance calculations.
+     */
+    public SampledConcentrationCalculator(DataSet dataset,
+            CombinedMetric cmet) {
+        if (dataset == null || dataset.size() < 2) {
+            throw new IllegalArgumentException("At least two points are "
+                    + "required.");
+        }
+        this.dataset = dataset;
+        this.cmet = cmet;
+    }
+
+    /**
+     * @param numThreads Integer that is the number of threads to use.
+     */
+    public void setNumThreads(int numThreads) {
+        this.numThreads = Math.max(1, numThreads);
+    }
+
+    /**
+     * @param reservoirSize Integer that is the number of distances to keep
+     * for the quantile estimates.
+     */
+    public void setReservoirSize(int reservoirSize) {
+        this.reservoirSize = Math.max(1, reservoirSize);
+    }
+
+    /**
+     * @param seed Long that is the seed for the random sampling.
+     */
+    public void setSeed(long seed) {
+        randa = new Random(seed);
+    }
+
+    /**
+     * Estimates the statistics from a sample of uniformly drawn pairs of
+     * distinct points. The relative contrast is calculated from the sample
+     * extremes and has no confidence bounds in this mode. The sampled pairs of
+     * duplicate points are excluded from the minimum in the relative contrast,
+     * which is NaN if all the sampled distances are zero.
+     *
+     * @param numPairs Long that is the number of pairs to sample.
+     * @throws Exception
+     */
+    public void calculateFromPairSamples(long numPairs) throws Exception {
+        int threadNum = (int) Math.max(1, Math.min(numThreads, numPairs));
+        long chunkSize = numPairs / threadNum;
+        PairSampleWorker[] workers = new PairSampleWorker[threadNum];
+        Thread[] threads = new Thread[threadNum];
+        for (int t = 0; t < threadNum; t++) {
+            long numThreadPairs = t == threadNum - 1
+                    ? numPairs - t * chunkSize : chunkSize;
+            workers[t] = new PairSampleWorker(numThreadPairs,
+                    new Random(randa.nextLong()),
+                    Math.max(1, reservoirSize / threadNum));
+            threads[t] = new Thread(workers[t]);
+            threads[t].start();
+        }
+        joinAll(threads, workers);
+        mergeStatistics(workers);
+        contrast = max - min;
+        double minPositive = Double.MAX_VALUE;
+        for (StreamingStatistics worker : workers) {
+            minPositive = Math.min(minPositive, worker.minPositive);
+        }
+        relativeContrast = minPositive < Double.MAX_VALUE
+                ? (max - minPositive) / minPositive : Double.NaN;
+        relativeContrastError = 0;
+        mleIntrinsicDim = 0;
+        mleIntrinsicDimError = 0;
+    }
+
+    /**
+     * Estimates the statistics from the distances between a sample of query
+     * points and all the other points. The relative contrast is the average
+     * of the relative contrasts of the queries, and the kNN distances of the
+     * queries are also used for the maximum likelihood estimate of the
+     * intrinsic dimensionality.
+     *
+     * @param numQueries Integer that is the number of queries to sample.
+     * @param k Integer that is the neighborhood size for the maximum
+     * likelihood estimate of the intrinsic dimensionality.
+     * @throws Exception
+     */
+    public void calculateFromQuerySamples(int numQueries, int k)
+            throws Exception {
+        int size = dataset.size();
+        numQueries = Math.min(numQueries, size);
+        k = Math.max(2, Math.min(k, size - 1));
+        // Sample the queries without replacement.
+        int[] permutation = new int[size];
+        for (int i = 0; i < size; i++) {
+            permutation[i] = i;
+        }
+        int[] queries = new int[numQueries];
+        for (int i = 0; i < numQueries; i++) {
+            int j = i + randa.nextInt(size - i);
+            queries[i] = permutation[j];
+            permutation[j] = permutation[i];
+        }
+        double[] queryContrasts = new double[numQueries];
+        double[] localDims = new double[numQueries];
+        int threadNum = Math.max(1, Math.min(numThreads, numQueries));
+        int chunkSize = numQueries / threadNum;
+        QuerySampleWorker[] workers = new QuerySampleWorker[threadNum];
+        Thread[] threads = new Thread[threadNum];
+        for (int t = 0; t < threadNum; t++) {
+            int start = t * chunkSize;
+            int end = t == threadNum - 1 ? numQueries : start + chunkSize;
+            workers[t] = new QuerySampleWorker(queries, start, end, k,
+                    queryContrasts, localDims, new Random(randa.nextLong()),
+                    Math.max(1, reservoirSize / threadNum));
+            threads[t] = new Thread(workers[t]);
+            threads[t].start();
+        }
+        joinAll(threads, workers);
+        mergeStatistics(workers);
+        contrast = max - min;
+        // The queries with duplicates have an infinite relative contrast and
+        // are excluded.
+        double[] contrastMoments = getMeanAndStandardError(queryContrasts);
+        relativeContrast = contrastMoments[0];
+        relativeContrastError = contrastMoments[1];
+        double[] dimEstimate = getAveragedDimensionality(localDims);
+        mleIntrinsicDim = dimEstimate[0];
+        mleIntrinsicDimError = dimEstimate[1];
+    }
+
+    /**
+     * Joins the worker threads and re-throws the first worker failure, so that
+     * no statistics are reported from a partial sample.
+     *
+     * @param threads Thread[] to join.
+     * @param workers StreamingStatistics[] of the workers.
+     * @throws Exception
+     */
+    private static void joinAll(Thread[] threads,
+            StreamingStatistics[] workers) throws Exception {
+        for (int t = 0; t < threads.length; t++) {
+            try {
+                threads[t].join();
+            } catch (Throwable thr) {
+                System.err.println(thr.getMessage());
+            }
+        }
+        for (StreamingStatistics worker : workers) {
+            if (worker.failure != null) {
+                throw worker.failure;
+            }
+        }
+    }
+
+    /**
+     * Merges the streaming statistics of the workers and calculates the
+     * derived measures.
+     *
+     * @param workers StreamingStatistics[] of the finished workers.
+     */
+    private void mergeStatistics(StreamingStatistics[] workers) {
+        numDistances = 0;
+        mean = 0;
+        double m2 = 0;
+        min = Float.MAX_VALUE;
+        max = -Float.MAX_VALUE;
+        for (StreamingStatistics worker : workers) {
+            if (worker.count == 0) {
+                continue;
+            }
+            // The parallel variant of the Welford update, by Chan et al.
+            long merged = numDistances + worker.count;
+            double delta = worker.mean - mean;
+            mean += delta * worker.count / merged;
+            m2 += worker.m2 + delta * delta * numDistances * worker.count
+                    / merged;
+            numDistances = merged;
+            min = Math.min(min, worker.min);
+            max = Math.max(max, worker.max);
+        }
+        variance = numDistances > 0 ? m2 / numDistances : 0;
+        // The workers may have seen different numbers of distances, so their
+        // reservoirs are subsampled to the same inclusion rate before they
+        // are pooled, which keeps the pooled reservoir a uniform sample.
+        double inclusionRate = 1;
+        for (StreamingStatistics worker : workers) {
+            if (worker.count > 0) {
+                inclusionRate = Math.min(inclusionRate,
+                        (double) worker.reservoirLength / worker.count);
+            }
+        }
+        int[] numKept = new int[workers.length];
+        int totalReservoir = 0;
+        for (int t = 0; t < workers.length; t++) {
+            numKept[t] = (int) Math.min(workers[t].reservoirLength,
+                    Math.round(inclusionRate * workers[t].count));
+            totalReservoir += numKept[t];
+        }
+        reservoir = new float[totalReservoir];
+        int offset = 0;
+        for (int t = 0; t < workers.length; t++) {
+            float[] workerReservoir = workers[t].reservoir;
+            int length = workers[t].reservoirLength;
+            // Partial Fisher-Yates shuffle to select the kept distances.
+            for (int i = 0; i < numKept[t]; i++) {
+                int j = i + randa.nextInt(length - i);
+                float tmp = workerReservoir[i];
+                workerReservoir[i] = workerReservoir[j];
+                workerReservoir[j] = tmp;
+            }
+            System.arraycopy(workerReservoir, 0, reservoir, offset,
+                    numKept[t]);
+            offset += numKept[t];
+        }
+        Arrays.sort(reservoir);
+        relativeVariance = mean > 0 ? Math.sqrt(variance) / mean : 0;
+        intrinsicDim = relativeVariance > 0
+                ? 1f / Math.pow(relativeVariance, 2) : 0;
+    }
+
+    /**
+     * @return Long that is the number of distances that the statistics are
+     * based on.
+     */
+    public long getNumDistances() {
+        return numDistances;
+    }
+
+    /**
+     * @return Average distance.
+     */
+    public double getMeanDist() {
+        return mean;
+    }
+
+    /**
+     * @return double[] with the lower and the upper 95% confidence bound of
+     * the average distance.
+     */
+    public double[] getMeanDistConfidenceBounds() {
+        double halfWidth = numDistances > 0 ? CONFIDENCE_Z
+                * Math.sqrt(variance / numDistances) : 0;
+        return new double[]{mean - halfWidth, mean + halfWidth};
+    }
+
+    /**
+     * @return Variance of the distances.
+     */
+    public double getDistVariance() {
+        return variance;
+    }
+
+    /**
+     * @return The smallest observed distance.
+     */
+    public double getMinDist() {
+        return min;
+    }
+
+    /**
+     * @return The largest observed distance.
+     */
+    public double getMaxDist() {
+        return max;
+    }
+
+    /**
+     * @return Absolute contrast between the observed distances.
+     */
+    public double getContrast() {
+        return contrast;
+    }
+
+    /**
+     * @return Relative contrast between the distances.
+     */
+    public double getRelativeContrast() {
+        return relativeContrast;
+    }
+
+    /**
+     * @return double[] with the lower and the upper 95% confidence bound of
+     * the relative contrast, only available in the query sampling mode.
+     */
+    public double[] getRelativeContrastConfidenceBounds() {
+        return new double[]{
+            relativeContrast - CONFIDENCE_Z * relativeContrastError,
+            relativeContrast + CONFIDENCE_Z * relativeContrastError};
+    }
+
+    /**
+     * @return Relative variance.
+     */
+    public double getRelativeVariance() {
+        return relativeVariance;
+    }
+
+    /**
+     * @return An estimate of the intrinsic dimensionality of the data, based
+     * on the relative variance of the distances.
+     */
+    public double getIntrinsicDimensionality() {
+        return intrinsicDim;
+    }
+
+    /**
+     * @return The maximum likelihood estimate of the intrinsic dimensionality
+     * from the query kNN distances, only available in the query sampling mode.
+     */
+    public double getMLEIntrinsicDimensionality() {
+        return mleIntrinsicDim;
+    }
+
+    /**
+     * @return double[] with the lower and the upper 95% confidence bound of
+     * the maximum likelihood estimate of the intrinsic dimensionality.
+     */
+    public double[] getMLEIntrinsicDimensionalityConfidenceBounds() {
+        return new double[]{
+            mleIntrinsicDim - CONFIDENCE_Z * mleIntrinsicDimError,
+            mleIntrinsicDim + CONFIDENCE_Z * mleIntrinsicDimError};
+    }
+
+    /**
+     * @param quantile Double value in [0, 1] that is the quantile.
+     * @return Float that is the estimate of the distance quantile from the
+     * reservoir sample.
+     */
+    public float getDistanceQuantile(double quantile) {
+        if (reservoir == null || reservoir.length == 0) {
+            return 0;
+        }
+        int index = (int) Math.round(quantile * (reservoir.length - 1));
+        index = Math.max(0, Math.min(reservoir.length - 1, index));
+        return reservoir[index];
+    }
+
+    /**
+     * Calculates the local maximum likelihood estimates of the intrinsic
+     * dimensionality from the kNN distances.
+     *
+     * @param kDistances float[][] of the sorted kNN distances.
+     * @param k Integer that is the neighborhood size to use, at least 2.
+     * @return double[] of the local estimates, with NaN for the points where
+     * the estimate is not defined due to duplicates.
+     */
+    public static double[] getLocalMLEDimensionalities(float[][] kDistances,
+            int k) {
+        double[] localDims = new double[kDistances.length];
+        for (int i = 0; i < kDistances.length; i++) {
+            localDims[i] = getLocalMLEDimensionality(kDistances[i], k);
+        }
+        return localDims;
+    }
+
+    /**
+     * Calculates the maximum likelihood estimate of the intrinsic
+     * dimensionality from the kNN distances that are already held by a
+     * NeighborSetFinder object.
+     *
+     * @param nsf NeighborSetFinder object with the calculated kNN sets.
+     * @param k Integer that is the neighborhood size to use, at least 2.
+     * @return double[] with the estimate and its lower and upper 95%
+     * confidence bound.
+     */
+    public static double[] estimateMLEDimensionality(NeighborSetFinder nsf,
+            int k) {
+        float[][] kDistances = nsf.getKDistances();
+        if (kDistances == null || kDistances.length == 0) {
+            return new double[]{0, 0, 0};
+        }
+        k = Math.min(k, nsf.getCurrK());
+        double[] estimate = getAveragedDimensionality(
+                getLocalMLEDimensionalities(kDistances, k));
+        return new double[]{estimate[0],
+            estimate[0] - CONFIDENCE_Z * estimate[1],
+            estimate[0] + CONFIDENCE_Z * estimate[1]};
+    }
+
+    /**
+     * @param sortedDistances float[] of the sorted kNN distances of a point.
+     * @param k Integer that is the neighborhood size to use.
+     * @return Double that is the local maximum likelihood estimate of the
+     * intrinsic dimensionality, or NaN if it is not defined.
+     */
+    private static double getLocalMLEDimensionality(float[] sortedDistances,
+            int k) {
+        k = Math.min(k, sortedDistances.length);
+        if (k < 2 || !(sortedDistances[0] > 0)
+                || sortedDistances[k - 1] == Float.MAX_VALUE) {
+            return Double.NaN;
+        }
+        double logMax = Math.log(sortedDistances[k - 1]);
+        double sum = 0;
+        for (int j = 0; j < k - 1; j++) {
+            sum += logMax - Math.log(sortedDistances[j]);
+        }
+        if (sum <= 0) {
+            return Double.NaN;
+        }
+        return (k - 1) / sum;
+    }
+
+    /**
+     * Averages the local dimensionality estimates via the inverses, as
+     * suggested by MacKay and Ghahramani, and estimates the standard error by
+     * the delta method.
+     *
+     * @param localDims double[] of the local estimates, NaN ones are ignored.
+     * @return double[] with the averaged estimate and its standard error.
+     */
+    private static double[] getAveragedDimensionality(double[] localDims) {
+        double[] inverses = new double[localDims.length];
+        for (int i = 0; i < localDims.length; i++) {
+            inverses[i] = localDims[i] > 0 ? 1 / localDims[i] : Double.NaN;
+        }
+        double[] inverseMoments = getMeanAndStandardError(inverses);
+        if (!(inverseMoments[0] > 0)) {
+            return new double[]{0, 0};
+        }
+        double estimate = 1 / inverseMoments[0];
+        return new double[]{estimate,
+            inverseMoments[1] * estimate * estimate};
+    }
+
+    /**
+     * @param values double[] of values, where the NaN and infinite ones are
+     * ignored.
+     * @return double[] with the mean and its standard error.
+     */
+    private static double[] getMeanAndStandardError(double[] values) {
+        long count = 0;
+        double valMean = 0;
+        double m2 = 0;
+        for (double value : values) {
+            if (Double.isNaN(value) || Double.isInfinite(value)) {
+                continue;
+            }
+            count++;
+            double delta = value - valMean;
+            valMean += delta / count;
+            m2 += delta * (value - valMean);
+        }
+        if (count < 2) {
+            return new double[]{valMean, 0};
+        }
+        return new double[]{valMean,
+            Math.sqrt(m2 / (count - 1) / count)};
+    }
+
+    /**
+     * Streaming statistics of a stream of distances, with a reservoir sample.
+     */
+    static class StreamingStatistics {
+
+        long count = 0;
+        double mean = 0;
+        double m2 = 0;
+        double min = Float.MAX_VALUE;
+        double max = -Float.MAX_VALUE;
+        // The smallest non-zero distance.
+        double minPositive = Double.MAX_VALUE;
+        float[] reservoir;
+        int reservoirLength = 0;
+        Random randa;
+        // The exception that stopped the worker, if any.
+        Exception failure;
+
+        /**
+         * Initialization.
+         *
+         * @param randa Random number generator for the reservoir sampling.
+         * @param reservoirSize Integer that is the reservoir size.
+         */
+        StreamingStatistics(Random randa, int reservoirSize) {
+            this.randa = randa;
+            reservoir = new float[reservoirSize];
+        }
+
+        /**
+         * Updates the statistics with a new distance.
+         *
+         * @param distance Float that is the new distance.
+         */
+        void update(float distance) {
+            count++;
+            double delta = distance - mean;
+            mean += delta / count;
+            m2 += delta * (distance - mean);
+            if (distance < min) {
+                min = distance;
+            }
+            if (distance > max) {
+                max = distance;
+            }
+            if (distance > 0 && distance < minPositive) {
+                minPositive = distance;
+            }
+            if (reservoirLength < reservoir.length) {
+                reservoir[reservoirLength++] = distance;
+            } else {
+                long index = (long) (randa.nextDouble() * count);
+                if (index < reservoir.length) {
+                    reservoir[(int) index] = distance;
+                }
+            }
+        }
+    }
+
+    /**
+     * This worker samples random pairs of points and accumulates the
+     * statistics of their distances.
+     */
+    class PairSampleWorker extends StreamingStatistics implements Runnable {
+
+        private long numPairs;
+
+        /**
+         * Initialization.
+         *
+         * @param numPairs Long that is the number of pairs to sample.
+         * @param randa Random number generator.
+         * @param reservoirSize Integer that is the reservoir size.
+         */
+        PairSampleWorker(long numPairs, Random randa, int reservoirSize) {
+            super(randa, reservoirSize);
+            this.numPairs = numPairs;
+        }
+
+        @Override
+        public void run() {
+            int size = dataset.size();
+            try {
+                for (long p = 0; p < numPairs; p++) {
+                    int first = randa.nextInt(size);
+                    int second = randa.nextInt(size - 1);
+                    if (second >= first) {
+                        second++;
+                    }
+                    update(cmet.dist(dataset.getInstance(first),
+                            dataset.getInstance(second)));
+                }
+            } catch (Exception e) {
+                failure = e;
+            }
+        }
+    }
+
+    /**
+     * This worker calculates the distances from a range of query points to
+     * all the other points, accumulating the statistics of the distances and
+     * the relative contrast and the local intrinsic dimensionality of each
+     * query.
+     */
+    class QuerySampleWorker extends StreamingStatistics implements Runnable {
+
+        private int[] queries;
+        private int start;
+        private int end;
+        private int k;
+        private double[] queryContrasts;
+        private double[] localDims;
+
+        /**
+         * Initialization.
+         *
+         * @param queries int[] of the query point indexes.
+         * @param start Integer that is the first query position.
+         * @param end Integer that is the end of the query range.
+         * @param k Integer that is the neighborhood size.
+         * @param queryContrasts double[] to write the relative contrasts of
+         * the queries to.
+         * @param localDims double[] to write the local dimensionality
+         * estimates of the queries to.
+         * @param randa Random number generator.
+         * @param reservoirSize Integer that is the reservoir size.
+         */
+        QuerySampleWorker(int[] queries, int start, int end, int k,
+                double[] queryContrasts, double[] localDims, Random randa,
+                int reservoirSize) {
+            super(randa, reservoirSize);
+            this.queries = queries;
+            this.start = start;
+            this.end = end;
+            this.k = k;
+            this.queryContrasts = queryContrasts;
+            this.localDims = localDims;
+        }
+
+        @Override
+        public void run() {
+            int size = dataset.size();
+            float[] kDistances = new float[k];
+            try {
+                for (int q = start; q < end; q++) {
+                    DataInstance query = dataset.getInstance(queries[q]);
+                    Arrays.fill(kDistances, Float.MAX_VALUE);
+                    float queryMin = Float.MAX_VALUE;
+                    float queryMax = -Float.MAX_VALUE;
+                    for (int i = 0; i < size; i++) {
+                        if (i == queries[q]) {
+                            continue;
+                        }
+                        float distance = cmet.dist(query,
+                                dataset.getInstance(i));
+                        update(distance);
+                        queryMin = Math.min(queryMin, distance);
+                        queryMax = Math.max(queryMax, distance);
+                        if (distance < kDistances[k - 1]) {
+                            int l = k - 1;
+                            while (l > 0 && distance < kDistances[l - 1]) {
+                                kDistances[l] = kDistances[l - 1];
+                                l--;
+                            }
+                            kDistances[l] = distance;
+                        }
+                    }
+                    queryContrasts[q] = queryMin > 0
+                            ? (queryMax - queryMin) / queryMin : Double.NaN;
+                    localDims[q] = getLocalMLEDimensionality(kDistances, k);
+                }
+            } catch (Exception e) {
+                failure = e;
+            }
+        }
+    }
+}
@@ -43,6 +43,13 @@ public class CauchyKernel extends Kernel {
         this.sigma = sigma;
     }
 
+    /**
+     * @return Float that is the kernel width.
+     */
+    public float getSigma() {
+        return sigma;
+    }
+
     /**
      * @param x Feature value array.
      * @param y Feature value array.
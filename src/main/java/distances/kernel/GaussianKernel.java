@@ -48,6 +48,13 @@ public class GaussianKernel extends Kernel {
         this.sigma = Math.max((int) (dataset.getNumFloatAttr() / 5f), 2);
     }
 
+    /**
+     * @return Float that is the kernel width.
+     */
+    public float getSigma() {
+        return sigma;
+    }
+
     /**
      * @param x Feature value array.
      * @param y Feature value array.
@@ -60,7 +60,8 @@ public abstract class Kernel {
             return dot(((BOWInstance) firstInstance).getWordIndexesHash(),
                     ((BOWInstance) secondInstance).getWordIndexesHash());
         } else {
-            return dot(firstInstance.fAttr, secondInstance.fAttr);
+            return dot(firstInstance.getFloatArray(),
+                    secondInstance.getFloatArray());
         }
     }
     
@@ -0,0 +1,136 @@
+/**
+* Hub Miner: a hubness-aware machine learning experimentation library.
+* Copyright (C) 2014  Nenad Tomasev. Email: nenad.tomasev at gmail.com
+* 
+* This program is free software: you can redistribute it and/or modify it under
+* the terms of the GNU General Public License as published by the Free Software
+* Foundation, either version 3 of the License, or (at your option) any later
+* version.
+* 
+* This program is distributed in the hope that it will be useful, but WITHOUT
+* ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+* FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License along with
+* this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+package distances.kernel;
+
+import data.representation.DataSet;
+
+/**
+ * The class that low-rank kernel approximations should extend. An
+ * approximation is an explicit finite-dimensional feature map z, such that
+ * the dot products z(x)z(y) approximate the kernel values k(x, y). The kernel
+ * methods can then work on the n x r factor matrix of the mapped data instead
+ * of the n x n kernel matrix.
+ *
+ * @author Nenad Tomasev <nenad.tomasev at gmail.com>
+ */
+public abstract class KernelApproximation {
+
+    /**
+     * Fits the approximation to the data.
+     *
+     * @param dset DataSet to fit the approximation to.
+     * @throws Exception
+     */
+    public abstract void fit(DataSet dset) throws Exception;
+
+    /**
+     * @return True if the approximation has been fit, false otherwise.
+     */
+    public abstract boolean isFitted();
+
+    /**
+     * @return Integer that is the dimensionality of the feature map.
+     */
+    public abstract int getRank();
+
+    /**
+     * @param x float[] that is the feature value array.
+     * @return float[] that is the approximate feature map of x.
+     */
+    public abstract float[] map(float[] x);
+
+    /**
+     * Maps all the instances of a DataSet in parallel.
+     *
+     * @param dset DataSet to map.
+     * @param numThreads Integer that is the number of threads to use.
+     * @return float[][] that is the n x r matrix of the kernel factors.
+     * @throws Exception
+     */
+    public float[][] mapDataSet(DataSet dset, int numThreads)
+            throws Exception {
+        if (!isFitted()) {
+            fit(dset);
+        }
+        int size = dset.size();
+        float[][] factors = new float[size][];
+        int threadNum = Math.max(1, Math.min(numThreads, size));
+        int chunkSize = size / threadNum;
+        Thread[] threads = new Thread[threadNum];
+        for (int t = 0; t < threadNum; t++) {
+            int start = t * chunkSize;
+            int end = t == threadNum - 1 ? size : start + chunkSize;
+            threads[t] = new Thread(new MapWorker(dset, factors, start, end));
+            threads[t].start();
+        }
+        for (int t = 0; t < threadNum; t++) {
+            try {
+                threads[t].join();
+            } catch (Throwable thr) {
+                System.err.println(thr.getMessage());
+            }
+        }
+        return factors;
+    }
+
+    /**
+     * @param first float[] that is the first factor vector.
+     * @param second float[] that is the second factor vector.
+     * @return Double that is the dot product of the vectors, the approximate
+     * kernel value.
+     */
+    public static double dot(float[] first, float[] second) {
+        double result = 0;
+        for (int i = 0; i < first.length; i++) {
+            result += first[i] * second[i];
+        }
+        return result;
+    }
+
+    /**
+     * This worker maps a range of instances.
+     */
+    class MapWorker implements Runnable {
+
+        private DataSet dset;
+        private float[][] factors;
+        private int start;
+        private int end;
+
+        /**
+         * Initialization.
+         *
+         * @param dset DataSet to map.
+         * @param factors float[][] to write the mapped instances to.
+         * @param start Integer that is the first instance index.
+         * @param end Integer that is the end of the instance index range.
+         */
+        public MapWorker(DataSet dset, float[][] factors, int start, int end) {
+            this.dset = dset;
+            this.factors = factors;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public void run() {
+            for (int i = start; i < end; i++) {
+                factors[i] = map(dset.getInstance(i).getFloatArray());
+            }
+        }
+    }
+}
@@ -0,0 +1,338 @@
+/**
+* Hub Miner: a hubness-aware machine learning experimentation library.
+* Copyright (C) 2014  Nenad Tomasev. Email: nenad.tomasev at gmail.com
+*
+* This program is free software: you can redistribute it and/or modify it under
+* the terms of the GNU General Public License as published by the Free Software
+* Foundation, either version 3 of the License, or (at your option) any later
+* version.
+*
+* This program is distributed in the hope that it will be useful, but WITHOUT
+* ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+* FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License along with
+* this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+package distances.kernel;
+
+import data.representation.DataInstance;
+import data.representation.DataSet;
+import data.representation.sparse.BOWInstance;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A kernel row cache in the spirit of the one in LIBSVM. Full kernel rows are
+ * computed on demand, the columns of a row being split into blocks that are
+ * calculated in parallel, and the rows are kept in a least-recently-used
+ * cache within a fixed memory budget. Repeated sequential scans over all the
+ * rows, as in kernel k-means, would evict every row before it is used again
+ * under the LRU policy, so the scans use a separate method that does not evict
+ * rows once the cache is full. The self-kernels are computed once and
+ * always kept. The float feature arrays of the instances are extracted once
+ * upon initialization, so that the row calculations work on plain arrays.
+ * Methods that only touch a working set of rows never need the full n x n
+ * kernel matrix.
+ *
+ * @author Nenad Tomasev <nenad.tomasev at gmail.com>
+ */
+public class KernelRowCache {
+
+    public static final long DEFAULT_MEMORY_BUDGET = 256L * 1024L * 1024L;
+    // Rows shorter than this are calculated in a single thread.
+    private static final int MIN_PARALLEL_ROW_LENGTH = 2048;
+    private Kernel ker;
+    private int size;
+    // Dense feature arrays, or null for sparse data.
+    private float[][] features;
+    // Sparse feature maps, or null for dense data.
+    private ArrayList<HashMap<Integer, Float>> sparseFeatures;
+    private float[] selfKernels;
+    private int maxRows;
+    private int numThreads = 4;
+    private LinkedHashMap<Integer, float[]> rows;
+    private long numHits = 0;
+    private long numMisses = 0;
+
+    /**
+     * Initialization.
+     *
+     * @param dset DataSet to calculate the kernel rows for.
+     * @param ker Kernel object.
+     */
+    public KernelRowCache(DataSet dset, Kernel ker) {
+        this(dset, ker, DEFAULT_MEMORY_BUDGET);
+    }
+
+    /**
+     * Initialization.
+     *
+     * @param dset DataSet to calculate the kernel rows for.
+     * @param ker Kernel object.
+     * @param memoryBudget Long that is the number of bytes that the cached
+     * rows are allowed to take.
+     */
+    public KernelRowCache(DataSet dset, Kernel ker, long memoryBudget) {
+        this.ker = ker;
+        size = dset.size();
+        boolean sparse = size > 0;
+        for (int i = 0; i < size; i++) {
+            if (!(dset.getInstance(i) instanceof BOWInstance)) {
+                sparse = false;
+                break;
+            }
+        }
+        if (sparse) {
+            sparseFeatures = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                sparseFeatures.add(((BOWInstance) dset.getInstance(i)).
+                        getWordIndexesHash());
+            }
+        } else {
+            features = new float[size][];
+            for (int i = 0; i < size; i++) {
+                DataInstance instance = dset.getInstance(i);
+                features[i] = instance.getFloatArray();
+            }
+        }
+        selfKernels = new float[size];
+        for (int i = 0; i < size; i++) {
+            selfKernels[i] = calculate(i, i);
+        }
+        long rowBytes = 4L * Math.max(1, size) + 16;
+        maxRows = (int) Math.max(2, Math.min(size,
+                memoryBudget / rowBytes));
+        final int capacity = maxRows;
+        rows = new LinkedHashMap<Integer, float[]>(
+                Math.min(capacity, 1024), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<Integer, float[]> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * @param numThreads Integer that is the number of threads to use for
+     * calculating the kernel rows.
+     */
+    public void setNumThreads(int numThreads) {
+        this.numThreads = Math.max(1, numThreads);
+    }
+
+    /**
+     * @return Integer that is the number of instances.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return Integer that is the maximal number of rows kept in the cache.
+     */
+    public int getMaxRows() {
+        return maxRows;
+    }
+
+    /**
+     * @return Long that is the number of row requests served from the cache.
+     */
+    public long getNumHits() {
+        return numHits;
+    }
+
+    /**
+     * @return Long that is the number of row requests that required
+     * calculations.
+     */
+    public long getNumMisses() {
+        return numMisses;
+    }
+
+    /**
+     * @param index Index of the instance.
+     * @return Float that is the kernel value of the instance with itself.
+     */
+    public float getSelfKernel(int index) {
+        return selfKernels[index];
+    }
+
+    /**
+     * @return float[] of the self-kernels of all instances.
+     */
+    public float[] getSelfKernels() {
+        return selfKernels;
+    }
+
+    /**
+     * Gets the full kernel row of an instance, calculating it if it is not
+     * currently in the cache. The returned array should not be modified.
+     *
+     * @param index Index of the instance.
+     * @return float[] that is the kernel row of the instance.
+     */
+    public float[] getRow(int index) {
+        synchronized (rows) {
+            float[] row = rows.get(index);
+            if (row != null) {
+                numHits++;
+                return row;
+            }
+            numMisses++;
+        }
+        float[] row = calculateRow(index);
+        synchronized (rows) {
+            rows.put(index, row);
+        }
+        return row;
+    }
+
+    /**
+     * Gets the full kernel row of an instance within a sequential scan over
+     * the rows that is repeated several times. A row that is not in the cache
+     * is calculated and cached only if the cache is not full, so that the
+     * rows cached in the first scan are re-used in all the later scans,
+     * instead of each scan evicting the rows that the next one needs first.
+     * The returned array should not be modified.
+     *
+     * @param index Index of the instance.
+     * @return float[] that is the kernel row of the instance.
+     */
+    public float[] getScanRow(int index) {
+        synchronized (rows) {
+            float[] row = rows.get(index);
+            if (row != null) {
+                numHits++;
+                return row;
+            }
+            numMisses++;
+        }
+        float[] row = calculateRow(index);
+        synchronized (rows) {
+            if (rows.size() < maxRows) {
+                rows.put(index, row);
+            }
+        }
+        return row;
+    }
+
+    /**
+     * Gets a kernel value. The cached rows of either instance are used if
+     * available, otherwise the value is calculated without caching the rows.
+     *
+     * @param first Index of the first instance.
+     * @param second Index of the second instance.
+     * @return Float that is the kernel value between the two instances.
+     */
+    public float getValue(int first, int second) {
+        if (first == second) {
+            return selfKernels[first];
+        }
+        float[] row;
+        synchronized (rows) {
+            row = rows.get(first);
+            if (row != null) {
+                return row[second];
+            }
+            row = rows.get(second);
+            if (row != null) {
+                return row[first];
+            }
+        }
+        return calculate(first, second);
+    }
+
+    /**
+     * Removes all rows from the cache.
+     */
+    public void clear() {
+        synchronized (rows) {
+            rows.clear();
+        }
+    }
+
+    /**
+     * @param first Index of the first instance.
+     * @param second Index of the second instance.
+     * @return Float that is the kernel value between the two instances.
+     */
+    private float calculate(int first, int second) {
+        if (features != null) {
+            return ker.dot(features[first], features[second]);
+        } else {
+            return ker.dot(sparseFeatures.get(first),
+                    sparseFeatures.get(second));
+        }
+    }
+
+    /**
+     * Calculates a kernel row, in parallel column blocks for long rows.
+     *
+     * @param index Index of the instance.
+     * @return float[] that is the kernel row of the instance.
+     */
+    private float[] calculateRow(int index) {
+        float[] row = new float[size];
+        int threadNum = Math.min(numThreads,
+                Math.max(1, size / MIN_PARALLEL_ROW_LENGTH));
+        if (threadNum <= 1) {
+            new RowBlockCalculator(index, row, 0, size).run();
+            return row;
+        }
+        int chunkSize = size / threadNum;
+        Thread[] threads = new Thread[threadNum];
+        for (int t = 0; t < threadNum; t++) {
+            int start = t * chunkSize;
+            int end = t == threadNum - 1 ? size : start + chunkSize;
+            threads[t] = new Thread(new RowBlockCalculator(index, row, start,
+                    end));
+            threads[t].start();
+        }
+        for (int t = 0; t < threadNum; t++) {
+            try {
+                threads[t].join();
+            } catch (Throwable thr) {
+                System.err.println(thr.getMessage());
+            }
+        }
+        return row;
+    }
+
+    /**
+     * This worker calculates a block of columns of a kernel row.
+     */
+    class RowBlockCalculator implements Runnable {
+
+        private int index;
+        private float[] row;
+        private int start;
+        private int end;
+
+        /**
+         * Initialization.
+         *
+         * @param index Index of the instance.
+         * @param row float[] to write the kernel values to.
+         * @param start Integer that is the first column index.
+         * @param end Integer that is the end of the column index range.
+         */
+        public RowBlockCalculator(int index, float[] row, int start,
+                int end) {
+            this.index = index;
+            this.row = row;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public void run() {
+            for (int j = start; j < end; j++) {
+                row[j] = j == index ? selfKernels[index] : calculate(index, j);
+            }
+        }
+    }
+}
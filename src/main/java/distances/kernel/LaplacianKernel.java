@@ -39,6 +39,13 @@ public class LaplacianKernel extends Kernel {
         this.sigma = sigma;
     }
 
+    /**
+     * @return Float that is the kernel width.
+     */
+    public float getSigma() {
+        return sigma;
+    }
+
     /**
      * @param x Feature value array.
      * @param y Feature value array.
@@ -0,0 +1,225 @@
+/**
+* Hub Miner: a hubness-aware machine learning experimentation library.
+* Copyright (C) 2014  Nenad Tomasev. Email: nenad.tomasev at gmail.com
+* 
+* This program is free software: you can redistribute it and/or modify it under
+* the terms of the GNU General Public License as published by the Free Software
+* Foundation, either version 3 of the License, or (at your option) any later
+* version.
+* 
+* This program is distributed in the hope that it will be useful, but WITHOUT
+* ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+* FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License along with
+* this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+package distances.kernel;
+
+import data.representation.DataSet;
+import java.util.ArrayList;
+import java.util.Random;
+import learning.unsupervised.Cluster;
+import learning.unsupervised.methods.KMeans;
+import linear.matrix.SymmetricEigenDecomposition;
+
+/**
+ * The Nystrom approximation of the kernel matrix, K ~ C W^+ C^T, where C
+ * contains the kernel values between all the points and m landmark points and
+ * W is the kernel matrix of the landmarks. The corresponding feature map is
+ * z(x) = L^(-1/2) U^T c(x), where U and L come from the eigendecomposition of
+ * W and c(x) are the kernel values between x and the landmarks. The landmarks
+ * are either sampled uniformly or taken to be the K-means centroids of a data
+ * sample, as proposed by Zhang, Tsang and Kwok in "Improved Nystrom Low-Rank
+ * Approximation and Error Analysis", ICML 2008.
+ *
+ * @author Nenad Tomasev <nenad.tomasev at gmail.com>
+ */
+public class NystromApproximation extends KernelApproximation {
+
+    // Landmark selection methods.
+    public static final int UNIFORM_LANDMARKS = 0;
+    public static final int KMEANS_LANDMARKS = 1;
+    public static final int DEFAULT_NUM_LANDMARKS = 500;
+    // The K-means landmarks are learned on a sample of this many points per
+    // landmark.
+    private static final int KMEANS_SAMPLE_FACTOR = 20;
+    // Relative threshold for discarding the negligible eigenvalues.
+    private static final double EIGENVALUE_THRESHOLD = 1e-8;
+    private Kernel ker;
+    private int numLandmarks = DEFAULT_NUM_LANDMARKS;
+    private int landmarkSelection = UNIFORM_LANDMARKS;
+    private Random randa = new Random();
+    private float[][] landmarks;
+    // The r x m projection matrix L^(-1/2) U^T.
+    private float[][] projection;
+
+    /**
+     * Initialization.
+     *
+     * @param ker Kernel to approximate.
+     * @param numLandmarks Integer that is the number of landmarks.
+     */
+    public NystromApproximation(Kernel ker, int numLandmarks) {
+        this.ker = ker;
+        this.numLandmarks = numLandmarks;
+    }
+
+    /**
+     * @param landmarkSelection Integer that is the landmark selection method,
+     * UNIFORM_LANDMARKS or KMEANS_LANDMARKS.
+     */
+    public void setLandmarkSelection(int landmarkSelection) {
+        this.landmarkSelection = landmarkSelection;
+    }
+
+    /**
+     * @param seed Long that is the seed for sampling the landmarks.
+     */
+    public void setSeed(long seed) {
+        randa = new Random(seed);
+    }
+
+    /**
+     * @return float[][] of the landmark points.
+     */
+    public float[][] getLandmarks() {
+        return landmarks;
+    }
+
+    @Override
+    public void fit(DataSet dset) throws Exception {
+        int size = dset.size();
+        int numSampled = landmarkSelection == KMEANS_LANDMARKS
+                ? Math.min(size, KMEANS_SAMPLE_FACTOR * numLandmarks)
+                : Math.min(size, numLandmarks);
+        int[] sample = samplePoints(size, numSampled);
+        if (landmarkSelection == KMEANS_LANDMARKS
+                && numSampled > numLandmarks) {
+            landmarks = getKMeansLandmarks(dset, sample);
+        } else {
+            landmarks = new float[Math.min(numSampled, numLandmarks)][];
+            for (int l = 0; l < landmarks.length; l++) {
+                landmarks[l] = dset.getInstance(sample[l]).getFloatArray();
+            }
+        }
+        calculateProjection();
+    }
+
+    /**
+     * Fits the approximation to the specified landmarks.
+     *
+     * @param landmarks float[][] of the landmark points.
+     */
+    public void fit(float[][] landmarks) {
+        this.landmarks = landmarks;
+        calculateProjection();
+    }
+
+    /**
+     * @param size Integer that is the number of points.
+     * @param numSampled Integer that is the number of points to sample.
+     * @return int[] of distinct uniformly sampled point indexes.
+     */
+    private int[] samplePoints(int size, int numSampled) {
+        int[] permutation = new int[size];
+        for (int i = 0; i < size; i++) {
+            permutation[i] = i;
+        }
+        int[] sample = new int[numSampled];
+        for (int i = 0; i < numSampled; i++) {
+            int j = i + randa.nextInt(size - i);
+            sample[i] = permutation[j];
+            permutation[j] = permutation[i];
+        }
+        return sample;
+    }
+
+    /**
+     * Clusters a data sample by K-means and returns the centroids.
+     *
+     * @param dset DataSet to fit the approximation to.
+     * @param sample int[] of the sampled point indexes.
+     * @return float[][] of the landmark points.
+     * @throws Exception
+     */
+    private float[][] getKMeansLandmarks(DataSet dset, int[] sample)
+            throws Exception {
+        DataSet sampleSet = dset.cloneDefinition();
+        sampleSet.data = new ArrayList<>(sample.length);
+        for (int index : sample) {
+            sampleSet.data.add(dset.getInstance(index));
+        }
+        KMeans clusterer = new KMeans(sampleSet, numLandmarks);
+        clusterer.cluster();
+        Cluster[] clusters = clusterer.getClusters();
+        ArrayList<float[]> centroids = new ArrayList<>(numLandmarks);
+        for (Cluster cluster : clusters) {
+            if (cluster != null && !cluster.isEmpty()) {
+                centroids.add(cluster.getCentroid().getFloatArray());
+            }
+        }
+        return centroids.toArray(new float[centroids.size()][]);
+    }
+
+    /**
+     * Calculates the projection matrix from the kernel matrix of the
+     * landmarks.
+     */
+    private void calculateProjection() {
+        int m = landmarks.length;
+        double[][] landmarkKernel = new double[m][m];
+        for (int i = 0; i < m; i++) {
+            for (int j = i; j < m; j++) {
+                landmarkKernel[i][j] = ker.dot(landmarks[i], landmarks[j]);
+                landmarkKernel[j][i] = landmarkKernel[i][j];
+            }
+        }
+        SymmetricEigenDecomposition eigen =
+                new SymmetricEigenDecomposition(landmarkKernel);
+        eigen.decomposeMatrix();
+        double[] eigenValues = eigen.getEigenValues();
+        double[][] eigenVectors = eigen.getEigenVectors();
+        int rank = 0;
+        while (rank < m && eigenValues[rank]
+                > EIGENVALUE_THRESHOLD * Math.max(eigenValues[0], 0)) {
+            rank++;
+        }
+        projection = new float[rank][m];
+        for (int r = 0; r < rank; r++) {
+            double scale = 1 / Math.sqrt(eigenValues[r]);
+            for (int l = 0; l < m; l++) {
+                projection[r][l] = (float) (scale * eigenVectors[r][l]);
+            }
+        }
+    }
+
+    @Override
+    public boolean isFitted() {
+        return projection != null;
+    }
+
+    @Override
+    public int getRank() {
+        return projection != null ? projection.length : 0;
+    }
+
+    @Override
+    public float[] map(float[] x) {
+        int m = landmarks.length;
+        double[] landmarkSims = new double[m];
+        for (int l = 0; l < m; l++) {
+            landmarkSims[l] = ker.dot(x, landmarks[l]);
+        }
+        float[] z = new float[projection.length];
+        for (int r = 0; r < projection.length; r++) {
+            double value = 0;
+            float[] row = projection[r];
+            for (int l = 0; l < m; l++) {
+                value += row[l] * landmarkSims[l];
+            }
+            z[r] = (float) value;
+        }
+        return z;
+    }
+}
@@ -39,6 +39,13 @@ public class RBF extends Kernel {
         this.gamma = gamma;
     }
 
+    /**
+     * @return Float that is the kernel width parameter gamma.
+     */
+    public float getGamma() {
+        return gamma;
+    }
+
     /**
      * @param x Feature value array.
      * @param y Feature value array.
@@ -0,0 +1,142 @@
+/**
+* Hub Miner: a hubness-aware machine learning experimentation library.
+* Copyright (C) 2014  Nenad Tomasev. Email: nenad.tomasev at gmail.com
+* 
+* This program is free software: you can redistribute it and/or modify it under
+* the terms of the GNU General Public License as published by the Free Software
+* Foundation, either version 3 of the License, or (at your option) any later
+* version.
+* 
+* This program is distributed in the hope that it will be useful, but WITHOUT
+* ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+* FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License along with
+* this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+package distances.kernel;
+
+import data.representation.DataSet;
+import data.representation.util.DataMineConstants;
+import java.util.Random;
+
+/**
+ * The random Fourier features of Rahimi and Recht, "Random Features for
+ * Large-Scale Kernel Machines", NIPS 2007. A shift-invariant kernel is the
+ * Fourier transform of a probability distribution, so it is approximated by
+ * z(x) = sqrt(2 / D) cos(Wx + b), where the rows of W are sampled from that
+ * distribution and b is uniform in [0, 2pi]. The supported kernels are RBF,
+ * GaussianKernel, LaplacianKernel, for which the frequencies follow the
+ * multivariate Cauchy distribution, and CauchyKernel, which is a mixture of
+ * Gaussian kernels with exponentially distributed widths.
+ *
+ * @author Nenad Tomasev <nenad.tomasev at gmail.com>
+ */
+public class RandomFourierFeatures extends KernelApproximation {
+
+    public static final int DEFAULT_NUM_FEATURES = 500;
+    private Kernel ker;
+    private int numFeatures = DEFAULT_NUM_FEATURES;
+    private Random randa = new Random();
+    // Sampled frequencies and phases.
+    private float[][] frequencies;
+    private float[] phases;
+
+    /**
+     * Initialization.
+     *
+     * @param ker Kernel to approximate, one of the supported shift-invariant
+     * kernels.
+     * @param numFeatures Integer that is the number of random features.
+     */
+    public RandomFourierFeatures(Kernel ker, int numFeatures) {
+        if (!isSupported(ker)) {
+            throw new IllegalArgumentException("Random Fourier features are "
+                    + "not supported for this kernel.");
+        }
+        this.ker = ker;
+        this.numFeatures = numFeatures;
+    }
+
+    /**
+     * @param ker Kernel object.
+     * @return True if the kernel can be approximated by the random Fourier
+     * features, false otherwise.
+     */
+    public static boolean isSupported(Kernel ker) {
+        return ker instanceof RBF || ker instanceof GaussianKernel
+                || ker instanceof LaplacianKernel
+                || ker instanceof CauchyKernel;
+    }
+
+    /**
+     * @param seed Long that is the seed for sampling the features.
+     */
+    public void setSeed(long seed) {
+        randa = new Random(seed);
+    }
+
+    @Override
+    public void fit(DataSet dset) throws Exception {
+        fit(dset.getNumFloatAttr());
+    }
+
+    /**
+     * Samples the random features for the specified input dimensionality.
+     *
+     * @param dim Integer that is the number of float features.
+     */
+    public void fit(int dim) {
+        frequencies = new float[numFeatures][dim];
+        phases = new float[numFeatures];
+        for (int f = 0; f < numFeatures; f++) {
+            // The scale of the Gaussian sample for this frequency.
+            double scale;
+            if (ker instanceof RBF) {
+                scale = Math.sqrt(2 * ((RBF) ker).getGamma());
+            } else if (ker instanceof GaussianKernel) {
+                scale = 1 / ((GaussianKernel) ker).getSigma();
+            } else if (ker instanceof LaplacianKernel) {
+                double u = 0;
+                while (u == 0) {
+                    u = Math.abs(randa.nextGaussian());
+                }
+                scale = 1 / (((LaplacianKernel) ker).getSigma() * u);
+            } else {
+                double t = -Math.log(1 - randa.nextDouble());
+                scale = Math.sqrt(2 * t / ((CauchyKernel) ker).getSigma());
+            }
+            for (int d = 0; d < dim; d++) {
+                frequencies[f][d] = (float) (scale * randa.nextGaussian());
+            }
+            phases[f] = (float) (2 * Math.PI * randa.nextDouble());
+        }
+    }
+
+    @Override
+    public boolean isFitted() {
+        return frequencies != null;
+    }
+
+    @Override
+    public int getRank() {
+        return numFeatures;
+    }
+
+    @Override
+    public float[] map(float[] x) {
+        float[] z = new float[numFeatures];
+        double norm = Math.sqrt(2. / numFeatures);
+        for (int f = 0; f < numFeatures; f++) {
+            float[] w = frequencies[f];
+            double projection = phases[f];
+            for (int d = 0; d < x.length; d++) {
+                if (DataMineConstants.isAcceptableFloat(x[d])) {
+                    projection += w[d] * x[d];
+                }
+            }
+            z[f] = (float) (norm * Math.cos(projection));
+        }
+        return z;
+    }
+}
@@ -0,0 +1,114 @@
+/**
+* Hub Miner: a hubness-aware machine learning experimentation library.
+* Copyright (C) 2014  Nenad Tomasev. Email: nenad.tomasev at gmail.com
+* 
+* This program is free software: you can redistribute it and/or modify it under
+* the terms of the GNU General Public License as published by the Free Software
+* Foundation, either version 3 of the License, or (at your option) any later
+* version.
+* 
+* This program is distributed in the hope that it will be useful, but WITHOUT
+* ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+* FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License along with
+* this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+package distances.kernel.test;
+
+import data.representation.DataInstance;
+import data.representation.DataSet;
+import distances.kernel.KernelRowCache;
+import distances.kernel.RBF;
+import java.util.Random;
+import learning.unsupervised.methods.KernelKMeans;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+import junit.framework.TestCase;
+import org.junit.Test;
+
+/**
+ * This class tests the hit rate of the kernel row cache under the repeated
+ * sequential scans over the rows, when the cache holds only half of the rows.
+ *
+ * @author Nenad Tomasev <nenad.tomasev at gmail.com>
+ */
+public class KernelRowCacheTest extends TestCase {
+
+    private static final int NUM_POINTS = 600;
+    private static final int MAX_ROWS = 300;
+
+    /**
+     * This method tests that the rows cached in the first scan are re-used in
+     * all the later scans and that the scanned rows are correct.
+     */
+    @Test
+    public static void testRepeatedScans() {
+        DataSet dset = generateBlobs(NUM_POINTS, 3, 1234);
+        KernelRowCache cache = getHalfCache(dset);
+        assertEquals(MAX_ROWS, cache.getMaxRows());
+        int numScans = 5;
+        for (int scan = 0; scan < numScans; scan++) {
+            for (int i = 0; i < NUM_POINTS; i++) {
+                float[] row = cache.getScanRow(i);
+                assertEquals(cache.getSelfKernel(i), row[i], 0.00001f);
+            }
+        }
+        assertEquals((numScans - 1) * MAX_ROWS, cache.getNumHits());
+        assertEquals(NUM_POINTS + (numScans - 1) * (NUM_POINTS - MAX_ROWS),
+                cache.getNumMisses());
+    }
+
+    /**
+     * This method tests the cache hit rate of the kernel k-means clustering,
+     * where each iteration after the first scans all the kernel rows once.
+     */
+    @Test
+    public static void testKernelKMeansHitRate() {
+        DataSet dset = generateBlobs(NUM_POINTS, 3, 5678);
+        KernelRowCache cache = getHalfCache(dset);
+        KernelKMeans clusterer = new KernelKMeans(dset, new RBF(0.5f), 3);
+        clusterer.setKernelRowCache(cache);
+        try {
+            clusterer.cluster();
+        } catch (Exception e) {
+            fail(e.getMessage());
+        }
+        int numScans = clusterer.getIterationIndex() - 1;
+        assertTrue(numScans >= 1);
+        assertEquals((long) numScans * NUM_POINTS,
+                cache.getNumHits() + cache.getNumMisses());
+        assertEquals((long) (numScans - 1) * MAX_ROWS, cache.getNumHits());
+    }
+
+    /**
+     * @param dset DataSet to cache the kernel rows for.
+     * @return KernelRowCache with the memory budget for MAX_ROWS rows.
+     */
+    private static KernelRowCache getHalfCache(DataSet dset) {
+        long rowBytes = 4L * dset.size() + 16;
+        return new KernelRowCache(dset, new RBF(0.5f), MAX_ROWS * rowBytes);
+    }
+
+    /**
+     * @param numPoints Integer that is the number of points to generate.
+     * @param numBlobs Integer that is the number of Gaussian blobs.
+     * @param seed Long that is the random seed.
+     * @return DataSet of two-dimensional points drawn from Gaussian blobs.
+     */
+    private static DataSet generateBlobs(int numPoints, int numBlobs,
+            long seed) {
+        Random randa = new Random(seed);
+        DataSet dset = new DataSet(null, new String[]{"x", "y"}, null,
+                numPoints);
+        for (int i = 0; i < numPoints; i++) {
+            DataInstance instance = new DataInstance(dset);
+            int blob = i % numBlobs;
+            instance.fAttr[0] = 3 * blob + (float) randa.nextGaussian();
+            instance.fAttr[1] = 3 * blob + (float) randa.nextGaussian();
+            dset.addDataInstance(instance);
+        }
+        return dset;
+    }
+}
@@ -17,13 +17,13 @@
  */
 package distances.meta;
 
-import data.neighbors.NeighborSetFinder;
 import data.representation.DataSet;
 import data.representation.util.DataMineConstants;
 import distances.primary.CombinedMetric;
 import distances.primary.MinkowskiMetric;
 import ioformat.SupervisedLoader;
 import java.util.ArrayList;
+import java.util.Arrays;
 import util.CommandLineParser;
 import util.SOPLUtil;
 
@@ -54,6 +54,9 @@ public class MinkowskiDegreeAutoFinder {
     }
     private static final int DEFAULT_NUM_THREADS = 8;
     private static final int DEFAULT_NEIGHBORHOOD_SIZE = 1;
+    // Limits for obtaining the powers without Math.pow in the sweep.
+    private static final int MAX_SQRT_STEPS = 6;
+    private static final int MAX_START_MULTIPLE = 64;
     // Data to learn the best exponent for.
     private DataSet dset;
     // The range where to search for the best exponent.
@@ -207,9 +210,15 @@ public class MinkowskiDegreeAutoFinder {
 
     /**
      * @return float[][] representing the upper triangular distance matrix that
-     * corresponds to the best calculated Minkowski exponent value.
+     * corresponds to the best calculated Minkowski exponent value. It is
+     * calculated on the first request after the parameter range examination.
+     * @throws Exception
      */
-    public float[][] getBestDistanceMatrix() {
+    public float[][] getBestDistanceMatrix() throws Exception {
+        if (bestMatrix == null && testedExponents != null) {
+            bestMatrix = dset.calculateDistMatrixMultThr(getBestMetricObject(),
+                    numThreads);
+        }
         return bestMatrix;
     }
 
@@ -245,13 +254,14 @@ public class MinkowskiDegreeAutoFinder {
 
     /**
      * This method calculates the hub and anti-hub rates for the specified
-     * Minkowski exponent range.
+     * Minkowski exponent range. All the exponents are evaluated in a single
+     * pass over the pairs of points, as the powers of each coordinate
+     * difference for the whole exponent grid are obtained from two powers and
+     * a running product. The kNN sets are maintained for each exponent
+     * separately and the hub and anti-hub rates are calculated from them
+     * afterwards.
      */
     public void examineParameterRange() throws Exception {
-        CombinedMetric cmet;
-        MinkowskiMetric met;
-        NeighborSetFinder nsf;
-        float[][] dMat;
         float minimalAntiHubRate = Float.MAX_VALUE;
         float minimalHubRate = Float.MAX_VALUE;
         // Initialize the result lists.
@@ -259,29 +269,70 @@ public class MinkowskiDegreeAutoFinder {
         testedExponents = new ArrayList<>(rangeNum);
         antiHubRates = new ArrayList<>(rangeNum);
         hubRates = new ArrayList<>(rangeNum);
-        // Iterate.
         for (float expVal = minExp; DataMineConstants.isPositive(
                 (maxExp - expVal)); expVal += stepExp) {
-            if (verbose) {
-                System.out.println("Testing for exponent value: " + expVal);
+            testedExponents.add(expVal);
+        }
+        int numExponents = testedExponents.size();
+        float[] exponents = new float[numExponents];
+        for (int e = 0; e < numExponents; e++) {
+            exponents[e] = testedExponents.get(e);
+        }
+        if (verbose) {
+            System.out.println("Testing " + numExponents
+                    + " exponent values in a single pass.");
+        }
+        int size = dset.size();
+        int kSize = Math.min(k, size - 1);
+        // Cache the feature arrays.
+        float[][] floatValues = null;
+        int[][] intValues = null;
+        if (dset.hasFloatAttr()) {
+            floatValues = new float[size][];
+            for (int i = 0; i < size; i++) {
+                floatValues[i] = dset.getInstance(i).getFloatArray();
+            }
+        }
+        if (dset.hasIntAttr()) {
+            intValues = new int[size][];
+            for (int i = 0; i < size; i++) {
+                intValues[i] = dset.getInstance(i).iAttr;
+            }
+        }
+        // The kNN sets for all the exponents.
+        int[][][] kNeighbors = new int[numExponents][size][kSize];
+        int threadNum = Math.max(1, Math.min(numThreads, size));
+        int chunkSize = size / threadNum;
+        Thread[] threads = new Thread[threadNum];
+        for (int t = 0; t < threadNum; t++) {
+            int start = t * chunkSize;
+            int end = t == threadNum - 1 ? size : start + chunkSize;
+            threads[t] = new Thread(new ExponentSweepWorker(floatValues,
+                    intValues, exponents, kSize, kNeighbors, start, end));
+            threads[t].start();
+        }
+        for (int t = 0; t < threadNum; t++) {
+            try {
+                threads[t].join();
+            } catch (Throwable thr) {
+                System.err.println(thr.getMessage());
             }
-            // Initialize the metric objects.
-            met = new MinkowskiMetric(expVal);
-            cmet = new CombinedMetric(met, met, CombinedMetric.Mixer.SUM);
-            // Calculate the distance matrix.
-            dMat = dset.calculateDistMatrixMultThr(cmet, numThreads);
-            // Calculate the neighbor sets.
-            nsf = new NeighborSetFinder(dset, dMat, cmet);
-            nsf.calculateNeighborSetsMultiThr(k, numThreads);
+        }
+        // As proposed in the paper, so we follow the same convention.
+        int hubThreshold = 2 * k;
+        // Again, following what was proposed in the paper.
+        int antiHubThreshold = 0;
+        for (int e = 0; e < numExponents; e++) {
             // Get the neighbor occurrence frequencies.
-            int[] occFreqs = nsf.getNeighborFrequencies();
-            // As proposed in the paper, so we follow the same convention.
-            int hubThreshold = 2 * k;
-            // Again, following what was proposed in the paper.
-            int antiHubThreshold = 0;
+            int[] occFreqs = new int[size];
+            for (int i = 0; i < size; i++) {
+                for (int kIndex = 0; kIndex < kSize; kIndex++) {
+                    occFreqs[kNeighbors[e][i][kIndex]]++;
+                }
+            }
             float numAntiHubs = 0;
             float sumHubOccurrences = 0;
-            for (int i = 0; i < dset.size(); i++) {
+            for (int i = 0; i < size; i++) {
                 if (occFreqs[i] >= hubThreshold) {
                     sumHubOccurrences += occFreqs[i];
                 }
@@ -290,28 +341,232 @@ public class MinkowskiDegreeAutoFinder {
                 }
             }
             // Calculate the hub rate and anti-hub rate.
-            float antiHubRate = numAntiHubs / dset.size();
-            float hubRate = sumHubOccurrences / (dset.size() * k);
+            float antiHubRate = numAntiHubs / size;
+            float hubRate = sumHubOccurrences / (size * k);
+            if (verbose) {
+                System.out.println("Exponent " + exponents[e] + ": hub rate "
+                        + hubRate + ", anti-hub rate " + antiHubRate);
+            }
             // Log the results.
-            testedExponents.add(expVal);
             antiHubRates.add(antiHubRate);
             hubRates.add(hubRate);
             // Update the minimal hub and anti-hub rates.
             if (antiHubRate < minimalAntiHubRate) {
                 minimalAntiHubRate = antiHubRate;
                 if (selectionCriterion == DegreeSelectionCriterion.ANTIHUB) {
-                    bestExponent = expVal;
-                    bestMatrix = dMat;
+                    bestExponent = exponents[e];
                 }
             }
             if (hubRate < minimalHubRate) {
                 minimalHubRate = hubRate;
                 if (selectionCriterion == DegreeSelectionCriterion.HUB) {
-                    bestExponent = expVal;
-                    bestMatrix = dMat;
+                    bestExponent = exponents[e];
                 }
             }
-            System.gc();
+        }
+        // The distance matrix is calculated on request.
+        bestMatrix = null;
+    }
+
+    /**
+     * This worker calculates the kNN sets for all the tested exponents for a
+     * range of points.
+     */
+    class ExponentSweepWorker implements Runnable {
+
+        private float[][] floatValues;
+        private int[][] intValues;
+        private float[] exponents;
+        private int kSize;
+        private int[][][] kNeighbors;
+        private int start;
+        private int end;
+        // If the exponent step is 2^-q, the step power is obtained by taking
+        // the square root q times, otherwise this is -1.
+        private int sqrtSteps = -1;
+        // If the first exponent is a small multiple of the step, the first
+        // power is obtained by multiplication, otherwise this is -1.
+        private int startMultiple = -1;
+
+        /**
+         * Initialization.
+         *
+         * @param floatValues float[][] of the float feature values, or null.
+         * @param intValues int[][] of the integer feature values, or null.
+         * @param exponents float[] of the exponents to test.
+         * @param kSize Integer that is the neighborhood size.
+         * @param kNeighbors int[][][] to write the kNN sets to, for each
+         * exponent.
+         * @param start Integer that is the first point index.
+         * @param end Integer that is the end of the point index range.
+         */
+        public ExponentSweepWorker(float[][] floatValues, int[][] intValues,
+                float[] exponents, int kSize, int[][][] kNeighbors, int start,
+                int end) {
+            this.floatValues = floatValues;
+            this.intValues = intValues;
+            this.exponents = exponents;
+            this.kSize = kSize;
+            this.kNeighbors = kNeighbors;
+            this.start = start;
+            this.end = end;
+            for (int q = 0; q <= MAX_SQRT_STEPS; q++) {
+                if (stepExp == 1f / (1 << q)) {
+                    sqrtSteps = q;
+                    break;
+                }
+            }
+            float multiple = Math.round(exponents[0] / stepExp);
+            if (multiple >= 1 && multiple <= MAX_START_MULTIPLE
+                    && Math.abs(multiple * stepExp - exponents[0])
+                    < DataMineConstants.EPSILON) {
+                startMultiple = (int) multiple;
+            }
+        }
+
+        @Override
+        public void run() {
+            int numExponents = exponents.length;
+            int size = kNeighbors[0].length;
+            float[] floatSums = new float[numExponents];
+            float[] intSums = new float[numExponents];
+            float[] distances = new float[numExponents];
+            float[][] kDistances = new float[numExponents][kSize];
+            int[] kCurrLen = new int[numExponents];
+            for (int i = start; i < end; i++) {
+                Arrays.fill(kCurrLen, 0);
+                for (int j = 0; j < size; j++) {
+                    if (j == i) {
+                        continue;
+                    }
+                    Arrays.fill(floatSums, 0);
+                    Arrays.fill(intSums, 0);
+                    if (floatValues != null) {
+                        float[] first = floatValues[i];
+                        float[] second = floatValues[j];
+                        for (int d = 0; d < first.length; d++) {
+                            if (!DataMineConstants.isAcceptableFloat(first[d])
+                                    || !DataMineConstants.isAcceptableFloat(
+                                    second[d])) {
+                                continue;
+                            }
+                            addPowers(Math.abs(first[d] - second[d]),
+                                    floatSums);
+                        }
+                    }
+                    if (intValues != null) {
+                        int[] first = intValues[i];
+                        int[] second = intValues[j];
+                        for (int d = 0; d < first.length; d++) {
+                            if (!DataMineConstants.isAcceptableFloat(first[d])
+                                    || !DataMineConstants.isAcceptableFloat(
+                                    second[d])) {
+                                continue;
+                            }
+                            addPowers(Math.abs((float) (first[d]
+                                    - second[d])), intSums);
+                        }
+                    }
+                    if (floatValues != null && intValues != null) {
+                        for (int e = 0; e < numExponents; e++) {
+                            float floatDistance = (float) Math.pow(
+                                    floatSums[e], 1. / exponents[e]);
+                            float intDistance = (float) Math.pow(
+                                    intSums[e], 1. / exponents[e]);
+                            // Combined in the same way as in the
+                            // CombinedMetric sum.
+                            distances[e] = (DataMineConstants.
+                                    isAcceptableFloat(intDistance)
+                                    ? intDistance : 0)
+                                    + (DataMineConstants.isAcceptableFloat(
+                                    floatDistance) ? floatDistance : 0);
+                        }
+                    } else {
+                        // The root is monotonic, so the sums of powers
+                        // induce the same kNN sets as the distances.
+                        float[] sums = floatValues != null ? floatSums
+                                : intSums;
+                        for (int e = 0; e < numExponents; e++) {
+                            distances[e] = DataMineConstants.
+                                    isAcceptableFloat(sums[e]) ? sums[e] : 0;
+                        }
+                    }
+                    for (int e = 0; e < numExponents; e++) {
+                        insertNeighbor(kNeighbors[e][i], kDistances[e],
+                                kCurrLen, e, j, distances[e]);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Adds the powers of the absolute coordinate difference for all the
+         * exponents to the sums. As the exponents form an arithmetic
+         * progression, consecutive powers differ by a constant factor.
+         *
+         * @param absDiff Float that is the absolute coordinate difference.
+         * @param sums float[] of the sums for all the exponents.
+         */
+        private void addPowers(float absDiff, float[] sums) {
+            if (absDiff == 0) {
+                return;
+            }
+            double factor;
+            if (sqrtSteps >= 0) {
+                factor = absDiff;
+                for (int q = 0; q < sqrtSteps; q++) {
+                    factor = Math.sqrt(factor);
+                }
+            } else {
+                factor = Math.pow(absDiff, stepExp);
+            }
+            double power;
+            if (startMultiple > 0) {
+                power = factor;
+                for (int m = 1; m < startMultiple; m++) {
+                    power *= factor;
+                }
+            } else {
+                power = Math.pow(absDiff, exponents[0]);
+            }
+            sums[0] += power;
+            for (int e = 1; e < sums.length; e++) {
+                power *= factor;
+                sums[e] += power;
+            }
+        }
+
+        /**
+         * Inserts a point into a kNN set that is sorted by the distance, where
+         * the earlier points take precedence on ties.
+         *
+         * @param neighbors int[] that is the kNN set.
+         * @param neighborDistances float[] that are the kNN distances.
+         * @param kCurrLen int[] of the current kNN set lengths.
+         * @param e Integer that is the exponent index.
+         * @param index Integer that is the index of the point to insert.
+         * @param distance Float that is the distance to the point.
+         */
+        private void insertNeighbor(int[] neighbors,
+                float[] neighborDistances, int[] kCurrLen, int e, int index,
+                float distance) {
+            int len = kCurrLen[e];
+            if (len == kSize) {
+                if (kSize == 0 || distance >= neighborDistances[len - 1]) {
+                    return;
+                }
+                len--;
+            } else {
+                kCurrLen[e]++;
+            }
+            int l = len;
+            while (l > 0 && distance < neighborDistances[l - 1]) {
+                neighborDistances[l] = neighborDistances[l - 1];
+                neighbors[l] = neighbors[l - 1];
+                l--;
+            }
+            neighborDistances[l] = distance;
+            neighbors[l] = index;
         }
     }
 
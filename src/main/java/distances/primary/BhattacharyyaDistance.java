@@ -109,7 +109,7 @@ implements Serializable {
         DistanceMeasure.assertInstances(first, second);
         float sum = 0f;
         if (first.getNumFAtt() == second.getNumFAtt()) {
-            sum += this.dist(first.fAttr, second.fAttr);
+            sum += this.dist(first.getFloatArray(), second.getFloatArray());
         }
         if (first.getNumIAtt() == second.getNumIAtt()) {
             sum += this.dist(first.iAttr, second.iAttr);
@@ -79,17 +79,19 @@ public class BrayCurtis extends DistanceMeasure implements Serializable {
     public float dist(DataInstance first, DataInstance second)
             throws MetricException {
         DistanceMeasure.assertInstances(first, second);
+        float[] firstFloats = first.getFloatArray();
+        float[] secondFloats = second.getFloatArray();
         float sum = 0;
         float denom = 0;
-        if ((first.fAttr != null) && (second.fAttr != null)) {
+        if ((firstFloats != null) && (secondFloats != null)) {
             for (int i = 0; i < first.getNumFAtt(); i++) {
-                if (!DataMineConstants.isAcceptableFloat(first.fAttr[i])
+                if (!DataMineConstants.isAcceptableFloat(firstFloats[i])
                         || !DataMineConstants.isAcceptableFloat(
-                        second.fAttr[i])) {
+                        secondFloats[i])) {
                     continue;
                 }
-                sum += Math.abs((float) (first.fAttr[i] - second.fAttr[i]));
-                denom += Math.abs(first.fAttr[i]) + Math.abs(second.fAttr[i]);
+                sum += Math.abs((float) (firstFloats[i] - secondFloats[i]));
+                denom += Math.abs(firstFloats[i]) + Math.abs(secondFloats[i]);
             }
         }
         if ((first.iAttr != null) && (second.iAttr != null)) {
@@ -73,16 +73,18 @@ public class Canberra extends DistanceMeasure implements Serializable {
     public float dist(DataInstance first, DataInstance second)
             throws MetricException {
         DistanceMeasure.assertInstances(first, second);
+        float[] firstFloats = first.getFloatArray();
+        float[] secondFloats = second.getFloatArray();
         float sum = 0;
         for (int i = 0; i < first.getNumFAtt(); i++) {
-            if (!DataMineConstants.isAcceptableFloat(first.fAttr[i])
-                    || !DataMineConstants.isAcceptableFloat(second.fAttr[i])) {
+            if (!DataMineConstants.isAcceptableFloat(firstFloats[i])
+                    || !DataMineConstants.isAcceptableFloat(secondFloats[i])) {
                 continue;
             }
-            if (first.fAttr[i] != 0 || second.fAttr[i] != 0) {
-                sum += (Math.abs((float) (first.fAttr[i] - second.fAttr[i]))
-                        / (Math.abs(first.fAttr[i]) + Math.abs(
-                        second.fAttr[i])));
+            if (firstFloats[i] != 0 || secondFloats[i] != 0) {
+                sum += (Math.abs((float) (firstFloats[i] - secondFloats[i]))
+                        / (Math.abs(firstFloats[i]) + Math.abs(
+                        secondFloats[i])));
             }
         }
         for (int i = 0; i < first.getNumIAtt(); i++) {
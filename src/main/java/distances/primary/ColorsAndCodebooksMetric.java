@@ -78,6 +78,6 @@ implements Serializable {
 
     public float dist(DataInstance first, DataInstance second)
             throws MetricException {
-        return dist(first.fAttr, second.fAttr);
+        return dist(first.getFloatArray(), second.getFloatArray());
     }
 }
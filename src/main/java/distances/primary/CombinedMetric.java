@@ -18,6 +18,8 @@ package distances.primary;
 
 import com.google.gson.Gson;
 import data.representation.DataInstance;
+import data.representation.DataSet;
+import data.representation.FloatFeatureStore;
 import data.representation.util.DataMineConstants;
 import java.io.Serializable;
 
@@ -225,6 +227,64 @@ public class CombinedMetric implements Serializable {
         this.floatMetric = floatMetric;
     }
 
+    /**
+     * Generates a version of the metric for calculating many distances on a
+     * data set. If the data contains no missing or infinite values, the
+     * primary metrics are replaced by their copies that skip the per-element
+     * value checks. This object is not modified, so the shared metric objects
+     * can be used on different data.
+     *
+     * @param dset DataSet that the distances are to be calculated on.
+     * @return CombinedMetric for the data, which is this object if the data
+     * is not clean.
+     * @throws Exception
+     */
+    public CombinedMetric adjustedToData(DataSet dset) throws Exception {
+        if (getClass() != CombinedMetric.class || dset == null
+                || dset.hasMissingValues()) {
+            return this;
+        }
+        return new CombinedMetric(
+                integerMetric != null ? integerMetric.cleanCopy() : null,
+                floatMetric != null ? floatMetric.cleanCopy() : null,
+                combineBy);
+    }
+
+    /**
+     * Calculates the distance with early abandoning, for the kNN searches
+     * that are only interested in the distances below the current k-th best.
+     * The early abandoning is used when only the float metric contributes to
+     * the distance and the distances are summed, since the other mixers
+     * rescale the float distance. Otherwise the full distance is calculated.
+     *
+     * @param first Data instance.
+     * @param second Data Instance.
+     * @param bestSoFar Float that is the distance above which the exact value
+     * is not needed.
+     * @return The distance between data instances, or Float.MAX_VALUE if it
+     * exceeds bestSoFar.
+     * @throws Exception
+     */
+    public float dist(DataInstance first, DataInstance second,
+            float bestSoFar) throws Exception {
+        boolean hasIntAtt = first.hasIntAtt() && second.hasIntAtt();
+        boolean hasFloatAtt = first.hasFloatAtt() && second.hasFloatAtt();
+        FloatFeatureStore store = first.getFeatureStore();
+        if (bestSoFar == Float.MAX_VALUE || floatMetric == null
+                || !hasFloatAtt || (integerMetric != null && hasIntAtt)
+                || combineBy != Mixer.SUM
+                || (store != null && store == second.getFeatureStore())) {
+            return dist(first, second);
+        }
+        float floatDistance = floatMetric.dist(first.getFloatArray(),
+                second.getFloatArray(), bestSoFar);
+        if (floatDistance == Float.MAX_VALUE) {
+            return Float.MAX_VALUE;
+        }
+        return DataMineConstants.isAcceptableFloat(floatDistance)
+                ? floatDistance : 0;
+    }
+
     /**
      * @param first Data instance.
      * @param second Data Instance.
@@ -234,12 +294,19 @@ public class CombinedMetric implements Serializable {
             throws Exception {
         boolean hasIntAtt = first.hasIntAtt() && second.hasIntAtt();
         boolean hasFloatAtt = first.hasFloatAtt() && second.hasFloatAtt();
+        FloatFeatureStore store = first.getFeatureStore();
+        if (store != null && store == second.getFeatureStore()
+                && FloatFeatureStore.supportsMetric(this, hasIntAtt)) {
+            // Both instances are views on the same compacted store.
+            return store.distance(first.getStoreRow(), second.getStoreRow(),
+                    this);
+        }
         float intDistance = integerMetric != null && hasIntAtt ?
                 integerMetric.dist(first.iAttr, second.iAttr) :
                 combineBy == Mixer.PRODUCT ? 1f : 0f;
         float floatDistance = floatMetric != null && hasFloatAtt ?
-                floatMetric.dist(first.fAttr, second.fAttr) :
-                combineBy == Mixer.PRODUCT ? 1f : 0f;
+                floatMetric.dist(first.getFloatArray(),
+                second.getFloatArray()) : combineBy == Mixer.PRODUCT ? 1f : 0f;
         float totalDistance = combineBy == Mixer.PRODUCT ? 1f : 0f;
         switch (combineBy) {
             case SUM: {
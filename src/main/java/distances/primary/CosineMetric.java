@@ -38,21 +38,46 @@ public class CosineMetric extends DistanceMeasure implements Serializable {
         return new CosineMetric();
     }
 
+    @Override
+    public DistanceMeasure cleanCopy() {
+        CosineMetric copy = new CosineMetric();
+        copy.cleanData = true;
+        return copy;
+    }
+
     @Override
     public float dist(float[] arrFirst, float[] arrSecond)
             throws MetricException {
         DistanceMeasure.assertArrays(arrFirst, arrSecond);
+        // The dot product and both norms are calculated in a single pass.
         float sum = 0;
-        for (int i = 0; i < arrFirst.length; i++) {
-            if (!DataMineConstants.isAcceptableFloat(arrFirst[i])
-                    || !DataMineConstants.isAcceptableFloat(arrSecond[i])) {
-                continue;
+        float sqFirst = 0;
+        float sqSecond = 0;
+        if (cleanData) {
+            for (int i = 0; i < arrFirst.length; i++) {
+                sum += arrFirst[i] * arrSecond[i];
+                sqFirst += (double) arrFirst[i] * arrFirst[i];
+                sqSecond += (double) arrSecond[i] * arrSecond[i];
+            }
+        } else {
+            for (int i = 0; i < arrFirst.length; i++) {
+                boolean firstAcceptable =
+                        DataMineConstants.isAcceptableFloat(arrFirst[i]);
+                boolean secondAcceptable =
+                        DataMineConstants.isAcceptableFloat(arrSecond[i]);
+                if (firstAcceptable) {
+                    sqFirst += (double) arrFirst[i] * arrFirst[i];
+                }
+                if (secondAcceptable) {
+                    sqSecond += (double) arrSecond[i] * arrSecond[i];
+                }
+                if (firstAcceptable && secondAcceptable) {
+                    sum += arrFirst[i] * arrSecond[i];
+                }
             }
-            sum += arrFirst[i] * arrSecond[i];
         }
-        MinkowskiMetric mm = new MinkowskiMetric(2);
-        float normFirst = mm.norm(arrFirst);
-        float normSecond = mm.norm(arrSecond);
+        float normFirst = (float) Math.sqrt(sqFirst);
+        float normSecond = (float) Math.sqrt(sqSecond);
         if (DataMineConstants.isNonZero(normFirst)
                 && DataMineConstants.isNonZero(normSecond)) {
             sum = sum / (normFirst * normSecond);
@@ -16,14 +16,561 @@
 */
 package distances.primary;
 
+import data.representation.DataSet;
 import java.io.Serializable;
+import java.util.Arrays;
 
 /**
- * A dummy class for now, for a project where the distances were already
- * provided.
+ * This class implements the dynamic time warping distance between time
+ * series. The warping path is restricted either to a Sakoe-Chiba band around
+ * the diagonal or to an Itakura parallelogram, and the dynamic programming
+ * runs over two rolling rows that are reused within each thread. The
+ * point-wise cost is the squared difference and the distance is the square
+ * root of the cost of the optimal warping path. For kNN search, the class
+ * offers the LB_Kim and LB_Keogh lower bounds and an early abandoning version
+ * of the distance, which are combined into a cascade that prunes most of the
+ * candidates without running the full dynamic programming.
  *
  * @author Nenad Tomasev <nenad.tomasev at gmail.com>
  */
 public class DTW extends DistanceMeasure implements Serializable {
+
     private static final long serialVersionUID = 1L;
+    // Band types.
+    public static final int NO_BAND = 0;
+    public static final int SAKOE_CHIBA = 1;
+    public static final int ITAKURA = 2;
+    // The default Sakoe-Chiba band width as a fraction of the series length.
+    public static final float DEFAULT_WINDOW_FRACTION = 0.1f;
+    private int bandType = SAKOE_CHIBA;
+    // The absolute band half-width. If negative, the width is determined from
+    // the window fraction and the series length.
+    private int bandWidth = -1;
+    private float windowFraction = DEFAULT_WINDOW_FRACTION;
+    // Rolling dynamic programming rows, one pair per thread.
+    private transient ThreadLocal<double[][]> rowBuffers;
+
+    /**
+     * The default constructor, using the Sakoe-Chiba band of the default
+     * relative width.
+     */
+    public DTW() {
+    }
+
+    /**
+     * Initialization.
+     *
+     * @param bandWidth Integer that is the absolute Sakoe-Chiba band
+     * half-width.
+     */
+    public DTW(int bandWidth) {
+        this.bandWidth = bandWidth;
+    }
+
+    /**
+     * Initialization.
+     *
+     * @param bandType Integer that is the band type, NO_BAND, SAKOE_CHIBA or
+     * ITAKURA.
+     * @param windowFraction Float that is the Sakoe-Chiba band half-width as
+     * a fraction of the series length.
+     */
+    public DTW(int bandType, float windowFraction) {
+        this.bandType = bandType;
+        this.windowFraction = windowFraction;
+    }
+
+    /**
+     * @param bandType Integer that is the band type, NO_BAND, SAKOE_CHIBA or
+     * ITAKURA.
+     */
+    public void setBandType(int bandType) {
+        this.bandType = bandType;
+    }
+
+    /**
+     * @param bandWidth Integer that is the absolute Sakoe-Chiba band
+     * half-width, negative to use the window fraction instead.
+     */
+    public void setBandWidth(int bandWidth) {
+        this.bandWidth = bandWidth;
+    }
+
+    /**
+     * @param windowFraction Float that is the Sakoe-Chiba band half-width as
+     * a fraction of the series length.
+     */
+    public void setWindowFraction(float windowFraction) {
+        this.windowFraction = windowFraction;
+    }
+
+    /**
+     * @param length Integer that is the series length.
+     * @return Integer that is the envelope radius that covers the warping
+     * region for series of this length.
+     */
+    public int getWarpingRadius(int length) {
+        switch (bandType) {
+            case SAKOE_CHIBA:
+                return bandWidth >= 0 ? bandWidth : Math.max(1,
+                        (int) Math.ceil(windowFraction * length));
+            case ITAKURA:
+                // The parallelogram is widest in the middle.
+                return (length + 2) / 3;
+            default:
+                return length;
+        }
+    }
+
+    @Override
+    public float dist(float[] arrFirst, float[] arrSecond)
+            throws MetricException {
+        if (arrFirst == null || arrSecond == null) {
+            throw new MetricException("Null time series.");
+        }
+        return dist(arrFirst, arrSecond, Float.MAX_VALUE);
+    }
+
+    @Override
+    public float dist(int[] arrFirst, int[] arrSecond) throws MetricException {
+        if (arrFirst == null || arrSecond == null) {
+            throw new MetricException("Null time series.");
+        }
+        float[] first = new float[arrFirst.length];
+        for (int i = 0; i < first.length; i++) {
+            first[i] = arrFirst[i];
+        }
+        float[] second = new float[arrSecond.length];
+        for (int i = 0; i < second.length; i++) {
+            second[i] = arrSecond[i];
+        }
+        return dist(first, second, Float.MAX_VALUE);
+    }
+
+    /**
+     * Calculates the DTW distance with early abandoning.
+     *
+     * @param arrFirst Float array that is the first series.
+     * @param arrSecond Float array that is the second series.
+     * @param cutoff Float that is the distance above which the calculations
+     * are abandoned.
+     * @return Float that is the DTW distance, or Float.MAX_VALUE if it exceeds
+     * the cutoff.
+     */
+    @Override
+    public float dist(float[] arrFirst, float[] arrSecond, float cutoff) {
+        int n = arrFirst.length;
+        int m = arrSecond.length;
+        if (n == 0 || m == 0) {
+            return n == m ? 0 : Float.MAX_VALUE;
+        }
+        double cutoffSq = cutoff == Float.MAX_VALUE ? Double.MAX_VALUE
+                : (double) cutoff * cutoff;
+        double[][] rows = getRowBuffers(m);
+        double[] prev = rows[0];
+        double[] curr = rows[1];
+        // Column ranges of the previous two rows, so that the buffers can be
+        // reset to infinity without clearing whole rows.
+        int prevLo = 0;
+        int prevHi = -1;
+        int currLo = 0;
+        int currHi = -1;
+        double result = Double.MAX_VALUE;
+        boolean abandoned = false;
+        for (int i = 0; i < n; i++) {
+            // The current buffer still holds the row i - 2.
+            for (int j = currLo; j <= currHi; j++) {
+                curr[j] = Double.MAX_VALUE;
+            }
+            int lo = getLowerColumn(i, n, m);
+            int hi = getUpperColumn(i, n, m);
+            double rowMin = Double.MAX_VALUE;
+            for (int j = lo; j <= hi; j++) {
+                double diff = arrFirst[i] - arrSecond[j];
+                double best;
+                if (i == 0 && j == 0) {
+                    best = 0;
+                } else {
+                    best = prev[j];
+                    if (j > 0) {
+                        best = Math.min(best, Math.min(prev[j - 1],
+                                curr[j - 1]));
+                    }
+                }
+                double value = best == Double.MAX_VALUE ? Double.MAX_VALUE
+                        : best + diff * diff;
+                curr[j] = value;
+                if (value < rowMin) {
+                    rowMin = value;
+                }
+            }
+            currLo = lo;
+            currHi = hi;
+            double[] tmp = prev;
+            prev = curr;
+            curr = tmp;
+            int tmpLo = prevLo;
+            int tmpHi = prevHi;
+            prevLo = currLo;
+            prevHi = currHi;
+            currLo = tmpLo;
+            currHi = tmpHi;
+            if (rowMin > cutoffSq) {
+                abandoned = true;
+                break;
+            }
+        }
+        if (!abandoned && prevHi == m - 1) {
+            result = prev[m - 1];
+        }
+        // Restore the buffers to infinity for the next call.
+        for (int j = prevLo; j <= prevHi; j++) {
+            prev[j] = Double.MAX_VALUE;
+        }
+        for (int j = currLo; j <= currHi; j++) {
+            curr[j] = Double.MAX_VALUE;
+        }
+        if (result == Double.MAX_VALUE || result > cutoffSq) {
+            return Float.MAX_VALUE;
+        }
+        return (float) Math.sqrt(result);
+    }
+
+    /**
+     * @param i Integer that is the row index.
+     * @param n Integer that is the number of rows.
+     * @param m Integer that is the number of columns.
+     * @return Integer that is the first column of the warping region in the
+     * row.
+     */
+    private int getLowerColumn(int i, int n, int m) {
+        if (n == 1) {
+            return 0;
+        }
+        double x = (double) i / (n - 1);
+        double lower;
+        switch (bandType) {
+            case SAKOE_CHIBA: {
+                int center = (int) Math.round(x * (m - 1));
+                return Math.max(0, center - getWarpingRadius(m));
+            }
+            case ITAKURA: {
+                lower = Math.max(x / 2, 2 * x - 1);
+                break;
+            }
+            default:
+                return 0;
+        }
+        return Math.max(0, Math.min(m - 1, (int) Math.ceil(lower * (m - 1)
+                - 1e-9)));
+    }
+
+    /**
+     * @param i Integer that is the row index.
+     * @param n Integer that is the number of rows.
+     * @param m Integer that is the number of columns.
+     * @return Integer that is the last column of the warping region in the
+     * row.
+     */
+    private int getUpperColumn(int i, int n, int m) {
+        if (n == 1) {
+            return m - 1;
+        }
+        double x = (double) i / (n - 1);
+        double upper;
+        switch (bandType) {
+            case SAKOE_CHIBA: {
+                int center = (int) Math.round(x * (m - 1));
+                return Math.min(m - 1, center + getWarpingRadius(m));
+            }
+            case ITAKURA: {
+                upper = Math.min(2 * x, (x + 1) / 2);
+                break;
+            }
+            default:
+                return m - 1;
+        }
+        int hi = (int) Math.floor(upper * (m - 1) + 1e-9);
+        // Consecutive rows need to overlap for a path to exist.
+        int previousLo = getLowerColumn(i - 1 < 0 ? 0 : i - 1, n, m);
+        return Math.max(Math.min(m - 1, hi), previousLo);
+    }
+
+    /**
+     * @param m Integer that is the required row length.
+     * @return double[][] with two row buffers of length at least m, filled
+     * with infinity.
+     */
+    private double[][] getRowBuffers(int m) {
+        if (rowBuffers == null) {
+            synchronized (this) {
+                if (rowBuffers == null) {
+                    rowBuffers = new ThreadLocal<>();
+                }
+            }
+        }
+        double[][] rows = rowBuffers.get();
+        if (rows == null || rows[0].length < m) {
+            rows = new double[2][m];
+            Arrays.fill(rows[0], Double.MAX_VALUE);
+            Arrays.fill(rows[1], Double.MAX_VALUE);
+            rowBuffers.set(rows);
+        }
+        return rows;
+    }
+
+    /**
+     * Calculates the LB_Kim lower bound from the first and the last points,
+     * which every warping path has to align.
+     *
+     * @param arrFirst Float array that is the first series.
+     * @param arrSecond Float array that is the second series.
+     * @return Double that is the lower bound on the squared DTW distance.
+     */
+    public static double lowerBoundKim(float[] arrFirst, float[] arrSecond) {
+        double diffStart = arrFirst[0] - arrSecond[0];
+        double bound = diffStart * diffStart;
+        if (arrFirst.length > 1 || arrSecond.length > 1) {
+            double diffEnd = arrFirst[arrFirst.length - 1]
+                    - arrSecond[arrSecond.length - 1];
+            bound += diffEnd * diffEnd;
+        }
+        return bound;
+    }
+
+    /**
+     * Calculates the upper and the lower envelope of a series within the
+     * specified radius, in linear time with monotonic deques.
+     *
+     * @param series Float array that is the series.
+     * @param radius Integer that is the envelope radius.
+     * @param upper Float array to write the upper envelope to.
+     * @param lower Float array to write the lower envelope to.
+     */
+    public static void computeEnvelope(float[] series, int radius,
+            float[] upper, float[] lower) {
+        int n = series.length;
+        int[] maxDeque = new int[n];
+        int[] minDeque = new int[n];
+        int maxHead = 0;
+        int maxTail = 0;
+        int minHead = 0;
+        int minTail = 0;
+        int nextIn = 0;
+        for (int i = 0; i < n; i++) {
+            // Add the points up to i + radius.
+            int windowEnd = Math.min(n - 1, i + radius);
+            while (nextIn <= windowEnd) {
+                while (maxTail > maxHead
+                        && series[maxDeque[maxTail - 1]] <= series[nextIn]) {
+                    maxTail--;
+                }
+                maxDeque[maxTail++] = nextIn;
+                while (minTail > minHead
+                        && series[minDeque[minTail - 1]] >= series[nextIn]) {
+                    minTail--;
+                }
+                minDeque[minTail++] = nextIn;
+                nextIn++;
+            }
+            // Remove the points before i - radius.
+            while (maxDeque[maxHead] < i - radius) {
+                maxHead++;
+            }
+            while (minDeque[minHead] < i - radius) {
+                minHead++;
+            }
+            upper[i] = series[maxDeque[maxHead]];
+            lower[i] = series[minDeque[minHead]];
+        }
+    }
+
+    /**
+     * Calculates the LB_Keogh lower bound of a candidate series against the
+     * envelope of a query series of the same length, with early abandoning.
+     *
+     * @param candidate Float array that is the candidate series.
+     * @param upper Float array that is the upper envelope of the query.
+     * @param lower Float array that is the lower envelope of the query.
+     * @param cutoffSq Double that is the squared distance above which the
+     * calculations are abandoned.
+     * @return Double that is the lower bound on the squared DTW distance, or
+     * a partial sum exceeding the cutoff.
+     */
+    public static double lowerBoundKeogh(float[] candidate, float[] upper,
+            float[] lower, double cutoffSq) {
+        double bound = 0;
+        for (int i = 0; i < candidate.length; i++) {
+            double diff;
+            if (candidate[i] > upper[i]) {
+                diff = candidate[i] - upper[i];
+            } else if (candidate[i] < lower[i]) {
+                diff = lower[i] - candidate[i];
+            } else {
+                continue;
+            }
+            bound += diff * diff;
+            if (bound > cutoffSq) {
+                return bound;
+            }
+        }
+        return bound;
+    }
+
+    /**
+     * @param dset DataSet where each instance holds a time series in its float
+     * features.
+     * @return float[][] of the time series.
+     */
+    public static float[][] getSeries(DataSet dset) {
+        float[][] series = new float[dset.size()][];
+        for (int i = 0; i < dset.size(); i++) {
+            series[i] = dset.getInstance(i).getFloatArray();
+        }
+        return series;
+    }
+
+    /**
+     * Finds the k-nearest neighbors of all the series among the series
+     * themselves, using the LB_Kim / LB_Keogh / early abandoning cascade to
+     * avoid the full DTW calculations for most of the candidates. The queries
+     * are processed in parallel.
+     *
+     * @param series float[][] of the time series.
+     * @param k Integer that is the neighborhood size.
+     * @param numThreads Integer that is the number of threads to use.
+     * @param kneighbors int[][] of size [series.length][k] to write the kNN
+     * sets to, sorted by the distance.
+     * @param kDistances float[][] of size [series.length][k] to write the kNN
+     * distances to.
+     */
+    public void findKNeighbors(float[][] series, int k, int numThreads,
+            int[][] kneighbors, float[][] kDistances) {
+        int numSeries = series.length;
+        int threadNum = Math.max(1, Math.min(numThreads, numSeries));
+        int chunkSize = numSeries / threadNum;
+        Thread[] threads = new Thread[threadNum];
+        for (int t = 0; t < threadNum; t++) {
+            int start = t * chunkSize;
+            int end = t == threadNum - 1 ? numSeries : start + chunkSize;
+            threads[t] = new Thread(new KNNWorker(series, k, kneighbors,
+                    kDistances, start, end));
+            threads[t].start();
+        }
+        for (int t = 0; t < threadNum; t++) {
+            try {
+                threads[t].join();
+            } catch (Throwable thr) {
+                System.err.println(thr.getMessage());
+            }
+        }
+    }
+
+    /**
+     * This worker finds the kNN sets for a range of query series.
+     */
+    class KNNWorker implements Runnable {
+
+        private float[][] series;
+        private int k;
+        private int[][] kneighbors;
+        private float[][] kDistances;
+        private int start;
+        private int end;
+
+        /**
+         * Initialization.
+         *
+         * @param series float[][] of the time series.
+         * @param k Integer that is the neighborhood size.
+         * @param kneighbors int[][] to write the kNN sets to.
+         * @param kDistances float[][] to write the kNN distances to.
+         * @param start Integer that is the first query index.
+         * @param end Integer that is the end of the query range.
+         */
+        public KNNWorker(float[][] series, int k, int[][] kneighbors,
+                float[][] kDistances, int start, int end) {
+            this.series = series;
+            this.k = k;
+            this.kneighbors = kneighbors;
+            this.kDistances = kDistances;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public void run() {
+            int numSeries = series.length;
+            // The current kNN set is kept sorted by the squared distance.
+            double[] bestSq = new double[k];
+            int[] bestIndexes = new int[k];
+            float[] upper = new float[0];
+            float[] lower = new float[0];
+            for (int q = start; q < end; q++) {
+                float[] query = series[q];
+                int length = query.length;
+                if (upper.length != length) {
+                    upper = new float[length];
+                    lower = new float[length];
+                }
+                computeEnvelope(query, getWarpingRadius(length), upper,
+                        lower);
+                int numFound = 0;
+                Arrays.fill(bestSq, Double.MAX_VALUE);
+                for (int c = 0; c < numSeries; c++) {
+                    if (c == q) {
+                        continue;
+                    }
+                    float[] candidate = series[c];
+                    double cutoffSq = numFound < k ? Double.MAX_VALUE
+                            : bestSq[k - 1];
+                    if (lowerBoundKim(query, candidate) >= cutoffSq) {
+                        continue;
+                    }
+                    if (candidate.length == length && lowerBoundKeogh(
+                            candidate, upper, lower, cutoffSq)
+                            >= cutoffSq) {
+                        continue;
+                    }
+                    float distance = dist(query, candidate,
+                            cutoffSq == Double.MAX_VALUE ? Float.MAX_VALUE
+                            : (float) Math.sqrt(cutoffSq));
+                    if (distance == Float.MAX_VALUE) {
+                        if (numFound < k) {
+                            // Unreachable under the band, kept only if
+                            // there is nothing better.
+                            bestSq[numFound] = Double.MAX_VALUE;
+                            bestIndexes[numFound++] = c;
+                        }
+                        continue;
+                    }
+                    double distanceSq = (double) distance * distance;
+                    if (distanceSq >= cutoffSq) {
+                        continue;
+                    }
+                    // Insert into the sorted kNN set.
+                    int position = Math.min(numFound, k - 1);
+                    while (position > 0 && bestSq[position - 1]
+                            > distanceSq) {
+                        bestSq[position] = bestSq[position - 1];
+                        bestIndexes[position] = bestIndexes[position - 1];
+                        position--;
+                    }
+                    bestSq[position] = distanceSq;
+                    bestIndexes[position] = c;
+                    if (numFound < k) {
+                        numFound++;
+                    }
+                }
+                for (int kIndex = 0; kIndex < k; kIndex++) {
+                    kneighbors[q][kIndex] = kIndex < numFound
+                            ? bestIndexes[kIndex] : -1;
+                    kDistances[q][kIndex] = kIndex < numFound
+                            && bestSq[kIndex] != Double.MAX_VALUE
+                            ? (float) Math.sqrt(bestSq[kIndex])
+                            : Float.MAX_VALUE;
+                }
+            }
+        }
+    }
 }
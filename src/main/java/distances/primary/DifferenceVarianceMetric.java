@@ -94,17 +94,19 @@ implements Serializable {
     public float dist(DataInstance first, DataInstance second)
             throws MetricException {
         DistanceMeasure.assertInstances(first, second);
+        float[] firstFloats = first.getFloatArray();
+        float[] secondFloats = second.getFloatArray();
         float sumFloats = 0;
         float sumInts = 0;
         int countValidFloats = 0;
         int countValidInts = 0;
         for (int i = 0; i < first.getNumFAtt(); i++) {
-            if (!DataMineConstants.isAcceptableFloat(first.fAttr[i])
-                    || !DataMineConstants.isAcceptableFloat(second.fAttr[i])) {
+            if (!DataMineConstants.isAcceptableFloat(firstFloats[i])
+                    || !DataMineConstants.isAcceptableFloat(secondFloats[i])) {
                 continue;
             }
             countValidFloats++;
-            sumFloats += (first.fAttr[i] - second.fAttr[i]);
+            sumFloats += (firstFloats[i] - secondFloats[i]);
         }
         for (int i = 0; i < first.getNumIAtt(); i++) {
             if (!DataMineConstants.isAcceptableInt(first.iAttr[i])
@@ -124,13 +126,13 @@ implements Serializable {
                 ? sumInts / countValidInts : 0;
         float sum = 0;
         for (int i = 0; i < first.getNumFAtt(); i++) {
-            if (!DataMineConstants.isAcceptableFloat(first.fAttr[i])
-                    || !DataMineConstants.isAcceptableFloat(second.fAttr[i])) {
+            if (!DataMineConstants.isAcceptableFloat(firstFloats[i])
+                    || !DataMineConstants.isAcceptableFloat(secondFloats[i])) {
                 continue;
             }
             countValidFloats++;
-            sum += Math.pow((avgDifferenceFloats - (first.fAttr[i]
-                    - second.fAttr[i])), 2);
+            sum += Math.pow((avgDifferenceFloats - (firstFloats[i]
+                    - secondFloats[i])), 2);
         }
         for (int i = 0; i < first.getNumIAtt(); i++) {
             if (!DataMineConstants.isAcceptableInt(first.iAttr[i])
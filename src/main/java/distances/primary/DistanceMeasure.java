@@ -27,6 +27,30 @@ import java.io.Serializable;
 public class DistanceMeasure implements Serializable {
     
     private static final long serialVersionUID = 1L;
+    // Whether the features are known to contain no missing or infinite
+    // values, in which case the per-element checks can be skipped. It is only
+    // set on the copies made by cleanCopy, so the shared metric objects
+    // always check the values.
+    protected transient boolean cleanData = false;
+
+    /**
+     * Generates a copy of the metric that skips the per-element checks for
+     * missing and infinite values, for data that is known to contain none.
+     * The metrics without such a path return themselves.
+     *
+     * @return DistanceMeasure for clean data.
+     */
+    public DistanceMeasure cleanCopy() {
+        return this;
+    }
+
+    /**
+     * @return Boolean flag indicating whether the per-element value checks
+     * are skipped.
+     */
+    public boolean isCleanData() {
+        return cleanData;
+    }
 
     /**
      * @param arrFirst Integer array.
@@ -49,6 +73,25 @@ public class DistanceMeasure implements Serializable {
         return 0f;
     }
 
+    /**
+     * Calculates the distance with early abandoning, for the searches that
+     * are only interested in the distances below the current best. The
+     * metrics that accumulate the distance element by element stop as soon as
+     * the partial distance exceeds the bound, while the others simply
+     * calculate the full distance.
+     *
+     * @param arrFirst Float array.
+     * @param arrSecond Float array.
+     * @param bestSoFar Float that is the distance above which the exact value
+     * is not needed.
+     * @return Distance, or Float.MAX_VALUE if it exceeds bestSoFar.
+     * @throws Exception
+     */
+    public float dist(float[] arrFirst, float[] arrSecond, float bestSoFar)
+            throws MetricException {
+        return dist(arrFirst, arrSecond);
+    }
+
     /**
      * Throws a MetricException if some of the arrays are null or not equal in
      * length.
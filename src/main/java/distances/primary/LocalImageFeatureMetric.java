@@ -41,10 +41,12 @@ public class LocalImageFeatureMetric extends DistanceMeasure
      */
     public float dist(DataInstance first, DataInstance second)
             throws MetricException {
+        float[] firstFloats = first.getFloatArray();
+        float[] secondFloats = second.getFloatArray();
         float sum = 0;
         float factor;
-        for (int i = 4; i < first.fAttr.length; i++) {
-            factor = (first.fAttr[i] - second.fAttr[i]);
+        for (int i = 4; i < firstFloats.length; i++) {
+            factor = (firstFloats[i] - secondFloats[i]);
             sum += factor * factor;
         }
         sum = (float) Math.sqrt(sum);
@@ -29,17 +29,39 @@ public class Manhattan extends DistanceMeasure implements Serializable {
     
     private static final long serialVersionUID = 1L;
 
+    @Override
+    public DistanceMeasure cleanCopy() {
+        if (getClass() != Manhattan.class) {
+            // The subclasses define their own distances.
+            return this;
+        }
+        Manhattan copy = new Manhattan();
+        copy.cleanData = true;
+        return copy;
+    }
+
     @Override
     public float dist(float[] arrFirst, float[] arrSecond)
             throws MetricException {
+        return dist(arrFirst, arrSecond, Float.MAX_VALUE);
+    }
+
+    @Override
+    public float dist(float[] arrFirst, float[] arrSecond, float bestSoFar)
+            throws MetricException {
         DistanceMeasure.assertArrays(arrFirst, arrSecond);
+        boolean checkValues = !cleanData;
         float sum = 0;
         for (int i = 0; i < arrFirst.length; i++) {
-            if (!DataMineConstants.isAcceptableFloat(arrFirst[i])
-                    || !DataMineConstants.isAcceptableFloat(arrSecond[i])) {
+            if (checkValues && (!DataMineConstants.isAcceptableFloat(
+                    arrFirst[i]) || !DataMineConstants.isAcceptableFloat(
+                    arrSecond[i]))) {
                 continue;
             }
             sum += Math.abs(arrFirst[i] - arrSecond[i]);
+            if (sum > bestSoFar) {
+                return Float.MAX_VALUE;
+            }
         }
         return sum;
     }
@@ -48,10 +70,12 @@ public class Manhattan extends DistanceMeasure implements Serializable {
     public float dist(int[] arrFirst, int[] arrSecond)
             throws MetricException {
         DistanceMeasure.assertArrays(arrFirst, arrSecond);
+        boolean checkValues = !cleanData;
         float sum = 0;
         for (int i = 0; i < arrFirst.length; i++) {
-            if (!DataMineConstants.isAcceptableFloat(arrFirst[i])
-                    || !DataMineConstants.isAcceptableFloat(arrSecond[i])) {
+            if (checkValues && (!DataMineConstants.isAcceptableFloat(
+                    arrFirst[i]) || !DataMineConstants.isAcceptableFloat(
+                    arrSecond[i]))) {
                 continue;
             }
             sum += Math.abs(arrFirst[i] - arrSecond[i]);
@@ -64,7 +88,7 @@ public class Manhattan extends DistanceMeasure implements Serializable {
         DistanceMeasure.assertInstances(first, second);
         float sum = 0;
         if (first.hasFloatAtt() && second.hasFloatAtt()) {
-            sum += dist(first.fAttr, second.fAttr);
+            sum += dist(first.getFloatArray(), second.getFloatArray());
         }
         if (first.hasIntAtt() && second.hasIntAtt()) {
             sum += dist(first.iAttr, second.iAttr);
@@ -80,7 +80,7 @@ public class ManhattanWeighted extends DistanceMeasure implements Serializable {
         DistanceMeasure.assertInstances(first, second);
         float sum = 0;
         if (first.hasFloatAtt() && second.hasFloatAtt()) {
-            sum += dist(first.fAttr, second.fAttr);
+            sum += dist(first.getFloatArray(), second.getFloatArray());
         }
         if (first.hasIntAtt() && second.hasIntAtt()) {
             sum += dist(first.iAttr, second.iAttr);
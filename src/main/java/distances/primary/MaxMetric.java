@@ -29,17 +29,35 @@ public class MaxMetric extends DistanceMeasure implements Serializable {
     
     private static final long serialVersionUID = 1L;
 
+    @Override
+    public DistanceMeasure cleanCopy() {
+        MaxMetric copy = new MaxMetric();
+        copy.cleanData = true;
+        return copy;
+    }
+
     @Override
     public float dist(float[] arrFirst, float[] arrSecond)
             throws MetricException {
+        return dist(arrFirst, arrSecond, Float.MAX_VALUE);
+    }
+
+    @Override
+    public float dist(float[] arrFirst, float[] arrSecond, float bestSoFar)
+            throws MetricException {
         DistanceMeasure.assertArrays(arrFirst, arrSecond);
+        boolean checkValues = !cleanData;
         float max = 0;
         for (int i = 0; i < arrFirst.length; i++) {
-            if (!DataMineConstants.isAcceptableFloat(arrFirst[i])
-                    || !DataMineConstants.isAcceptableFloat(arrSecond[i])) {
+            if (checkValues && (!DataMineConstants.isAcceptableFloat(
+                    arrFirst[i]) || !DataMineConstants.isAcceptableFloat(
+                    arrSecond[i]))) {
                 continue;
             }
             max = (float) Math.max(max, Math.abs(arrFirst[i] - arrSecond[i]));
+            if (max > bestSoFar) {
+                return Float.MAX_VALUE;
+            }
         }
         return max;
     }
@@ -48,10 +66,12 @@ public class MaxMetric extends DistanceMeasure implements Serializable {
     public float dist(int[] arrFirst, int[] arrSecond)
             throws MetricException {
         DistanceMeasure.assertArrays(arrFirst, arrSecond);
+        boolean checkValues = !cleanData;
         float max = 0;
         for (int i = 0; i < arrFirst.length; i++) {
-            if (!DataMineConstants.isAcceptableFloat(arrFirst[i])
-                    || !DataMineConstants.isAcceptableFloat(arrSecond[i])) {
+            if (checkValues && (!DataMineConstants.isAcceptableFloat(
+                    arrFirst[i]) || !DataMineConstants.isAcceptableFloat(
+                    arrSecond[i]))) {
                 continue;
             }
             max = (float) Math.max(max, Math.abs(arrFirst[i] - arrSecond[i]));
@@ -64,7 +84,8 @@ public class MaxMetric extends DistanceMeasure implements Serializable {
         DistanceMeasure.assertInstances(first, second);
         float max = 0;
         if (first.hasFloatAtt() && second.hasFloatAtt()) {
-            max = (float) Math.max(max, dist(first.fAttr, second.fAttr));
+            max = (float) Math.max(max, dist(first.getFloatArray(),
+                    second.getFloatArray()));
         }
         if (first.hasIntAtt() && second.hasIntAtt()) {
             max = (float) Math.max(max, dist(first.iAttr, second.iAttr));
@@ -128,15 +128,17 @@ public class Minkowski3D extends DistanceMeasure implements Serializable {
     public float dist(DataInstance first, DataInstance second)
             throws MetricException {
         DistanceMeasure.assertInstances(first, second);
+        float[] firstFloats = first.getFloatArray();
+        float[] secondFloats = second.getFloatArray();
         float sum = 0f;
         DistanceMeasure.assertInstances(first, second);
         for (int i = 0; i < Math.min(3, first.getNumFAtt()); i++) {
-            if (!DataMineConstants.isAcceptableFloat(first.fAttr[i])
-                    || !DataMineConstants.isAcceptableFloat(second.fAttr[i])) {
+            if (!DataMineConstants.isAcceptableFloat(firstFloats[i])
+                    || !DataMineConstants.isAcceptableFloat(secondFloats[i])) {
                 continue;
             }
             sum += (float) Math.pow(Math.abs(
-                    (float) (first.fAttr[i] - second.fAttr[i])), p);
+                    (float) (firstFloats[i] - secondFloats[i])), p);
         }
         for (int i = 0; i < Math.min(3, first.getNumIAtt()); i++) {
             if (!DataMineConstants.isAcceptableInt(first.iAttr[i])
@@ -158,12 +160,13 @@ public class Minkowski3D extends DistanceMeasure implements Serializable {
         if (instance == null) {
             return 0;
         }
+        float[] instanceFloats = instance.getFloatArray();
         float sum = 0;
         for (int i = 0; i < Math.min(3, instance.getNumFAtt()); i++) {
-            if (!DataMineConstants.isAcceptableFloat(instance.fAttr[i])) {
+            if (!DataMineConstants.isAcceptableFloat(instanceFloats[i])) {
                 continue;
             }
-            sum += Math.pow(Math.abs((float) instance.fAttr[i]), p);
+            sum += Math.pow(Math.abs((float) instanceFloats[i]), p);
         }
         for (int i = 0; i < Math.min(3, instance.getNumIAtt()); i++) {
             if (!DataMineConstants.isAcceptableInt(instance.iAttr[i])) {
@@ -21,21 +21,33 @@ import data.representation.util.DataMineConstants;
 import java.io.Serializable;
 
 /**
- * Euclidean/Minkowski distance family.
+ * Euclidean/Minkowski distance family. The loop that accumulates the
+ * coordinate differences is selected from the exponent at construction, with
+ * specialized loops for p = 1, p = 2 and small integer exponents, so that
+ * Math.pow is only called for the general exponents.
  *
  * @author Nenad Tomasev <nenad.tomasev at gmail.com>
  */
 public class MinkowskiMetric extends DistanceMeasure implements Serializable {
     
     private static final long serialVersionUID = 1L;
+    // Kernel types.
+    static final int KERNEL_GENERAL = 0;
+    static final int KERNEL_L1 = 1;
+    static final int KERNEL_L2 = 2;
+    static final int KERNEL_INTEGER = 3;
+    // The largest exponent that is handled by repeated multiplication.
+    static final int MAX_INTEGER_EXPONENT = 16;
 
     private float p = 2;
+    private int kernel = KERNEL_L2;
 
     /**
      * @param p Defines the L_p Minkowski distance.
      */
     public MinkowskiMetric(float p) {
         this.p = p;
+        kernel = selectKernel(p);
     }
 
     /**
@@ -43,22 +55,152 @@ public class MinkowskiMetric extends DistanceMeasure implements Serializable {
      */
     public MinkowskiMetric() {
         this.p = 2;
+        kernel = KERNEL_L2;
+    }
+
+    /**
+     * @param p Float that is the exponent.
+     * @return Integer that is the kernel type to use for the exponent.
+     */
+    static int selectKernel(float p) {
+        if (p == 1) {
+            return KERNEL_L1;
+        } else if (p == 2) {
+            return KERNEL_L2;
+        } else if (p > 0 && p <= MAX_INTEGER_EXPONENT && p == Math.rint(p)) {
+            return KERNEL_INTEGER;
+        } else {
+            return KERNEL_GENERAL;
+        }
+    }
+
+    /**
+     * @param absDiff Double that is the absolute coordinate difference.
+     * @param p Float that is the exponent.
+     * @param kernel Integer that is the kernel type for the exponent.
+     * @return Double that is the difference raised to the power of p.
+     */
+    static double power(double absDiff, float p, int kernel) {
+        switch (kernel) {
+            case KERNEL_L1:
+                return absDiff;
+            case KERNEL_L2:
+                return absDiff * absDiff;
+            case KERNEL_INTEGER: {
+                double result = absDiff;
+                for (int e = 1; e < p; e++) {
+                    result *= absDiff;
+                }
+                return result;
+            }
+            default:
+                return Math.pow(absDiff, p);
+        }
+    }
+
+    /**
+     * @param sum Float that is the sum of the powered differences.
+     * @param p Float that is the exponent.
+     * @param kernel Integer that is the kernel type for the exponent.
+     * @return Float that is the p-th root of the sum.
+     */
+    static float root(float sum, float p, int kernel) {
+        switch (kernel) {
+            case KERNEL_L1:
+                return sum;
+            case KERNEL_L2:
+                return (float) Math.sqrt(sum);
+            default:
+                return (float) Math.pow(sum, 1. / p);
+        }
+    }
+
+    /**
+     * @param bestSoFar Float that is the distance bound.
+     * @param p Float that is the exponent.
+     * @param kernel Integer that is the kernel type for the exponent.
+     * @return Float that is the bound on the sum of the powered differences.
+     */
+    static float sumLimit(float bestSoFar, float p, int kernel) {
+        if (bestSoFar == Float.MAX_VALUE) {
+            return Float.POSITIVE_INFINITY;
+        }
+        return (float) power(bestSoFar, p, kernel);
+    }
+
+    /**
+     * @return Float that is the exponent p of the L_p Minkowski distance.
+     */
+    public float getExponent() {
+        return p;
+    }
+
+    @Override
+    public DistanceMeasure cleanCopy() {
+        MinkowskiMetric copy = new MinkowskiMetric(p);
+        copy.cleanData = true;
+        return copy;
     }
 
     @Override
     public float dist(float[] arrFirst, float[] arrSecond)
             throws MetricException {
+        return dist(arrFirst, arrSecond, Float.MAX_VALUE);
+    }
+
+    @Override
+    public float dist(float[] arrFirst, float[] arrSecond, float bestSoFar)
+            throws MetricException {
         DistanceMeasure.assertArrays(arrFirst, arrSecond);
+        float limit = sumLimit(bestSoFar, p, kernel);
+        boolean checkValues = !cleanData;
         float sum = 0;
-        for (int i = 0; i < arrFirst.length; i++) {
-            if (!DataMineConstants.isAcceptableFloat(arrFirst[i])
-                    || !DataMineConstants.isAcceptableFloat(arrSecond[i])) {
-                continue;
+        switch (kernel) {
+            case KERNEL_L1: {
+                for (int i = 0; i < arrFirst.length; i++) {
+                    if (checkValues && (!DataMineConstants.isAcceptableFloat(
+                            arrFirst[i]) || !DataMineConstants.
+                            isAcceptableFloat(arrSecond[i]))) {
+                        continue;
+                    }
+                    sum += Math.abs(arrFirst[i] - arrSecond[i]);
+                    if (sum > limit) {
+                        return Float.MAX_VALUE;
+                    }
+                }
+                return sum;
+            }
+            case KERNEL_L2: {
+                for (int i = 0; i < arrFirst.length; i++) {
+                    if (checkValues && (!DataMineConstants.isAcceptableFloat(
+                            arrFirst[i]) || !DataMineConstants.
+                            isAcceptableFloat(arrSecond[i]))) {
+                        continue;
+                    }
+                    float diff = arrFirst[i] - arrSecond[i];
+                    sum += (double) diff * diff;
+                    if (sum > limit) {
+                        return Float.MAX_VALUE;
+                    }
+                }
+                return (float) Math.sqrt(sum);
+            }
+            default: {
+                for (int i = 0; i < arrFirst.length; i++) {
+                    if (checkValues && (!DataMineConstants.isAcceptableFloat(
+                            arrFirst[i]) || !DataMineConstants.
+                            isAcceptableFloat(arrSecond[i]))) {
+                        continue;
+                    }
+                    sum += power(Math.abs(arrFirst[i] - arrSecond[i]), p,
+                            kernel);
+                    if (sum > limit) {
+                        return Float.MAX_VALUE;
+                    }
+                }
+                return root(sum, p, kernel);
             }
-            sum += Math.pow(Math.abs(arrFirst[i] - arrSecond[i]), p);
         }
-        sum = (float) Math.pow(sum, 1. / p);
-        return sum;
     }
 
     /**
@@ -74,7 +216,7 @@ public class MinkowskiMetric extends DistanceMeasure implements Serializable {
             if (!DataMineConstants.isAcceptableFloat(fVector[i])) {
                 continue;
             }
-            sum += Math.pow(Math.abs(fVector[i]), p);
+            sum += power(Math.abs(fVector[i]), p, kernel);
         }
         sum = (float) Math.pow(sum, 1. / p);
         return sum;
@@ -93,7 +235,7 @@ public class MinkowskiMetric extends DistanceMeasure implements Serializable {
             if (!DataMineConstants.isAcceptableFloat(iVector[i])) {
                 continue;
             }
-            sum += Math.pow(Math.abs(iVector[i]), p);
+            sum += power(Math.abs(iVector[i]), p, kernel);
         }
         sum = (float) Math.pow(sum, 1. / p);
         return sum;
@@ -102,16 +244,18 @@ public class MinkowskiMetric extends DistanceMeasure implements Serializable {
     @Override
     public float dist(int[] arrFirst, int[] arrSecond) throws MetricException {
         DistanceMeasure.assertArrays(arrFirst, arrSecond);
+        boolean checkValues = !cleanData;
         float sum = 0;
         for (int i = 0; i < arrFirst.length; i++) {
-            if (!DataMineConstants.isAcceptableFloat(arrFirst[i])
-                    || !DataMineConstants.isAcceptableFloat(arrSecond[i])) {
+            if (checkValues && (!DataMineConstants.isAcceptableFloat(
+                    arrFirst[i]) || !DataMineConstants.isAcceptableFloat(
+                    arrSecond[i]))) {
                 continue;
             }
-            sum += Math.pow(Math.abs((float) (arrFirst[i] - arrSecond[i])), p);
+            sum += power(Math.abs((float) (arrFirst[i] - arrSecond[i])), p,
+                    kernel);
         }
-        sum = (float) Math.pow(sum, 1. / p);
-        return sum;
+        return root(sum, p, kernel);
     }
 
     /**
@@ -123,15 +267,17 @@ public class MinkowskiMetric extends DistanceMeasure implements Serializable {
     public float dist(DataInstance first, DataInstance second)
             throws MetricException {
         DistanceMeasure.assertInstances(first, second);
+        float[] firstFloats = first.getFloatArray();
+        float[] secondFloats = second.getFloatArray();
         float sum = 0f;
         DistanceMeasure.assertInstances(first, second);
         for (int i = 0; i < first.getNumFAtt(); i++) {
-            if (!DataMineConstants.isAcceptableFloat(first.fAttr[i])
-                    || !DataMineConstants.isAcceptableFloat(second.fAttr[i])) {
+            if (!DataMineConstants.isAcceptableFloat(firstFloats[i])
+                    || !DataMineConstants.isAcceptableFloat(secondFloats[i])) {
                 continue;
             }
             sum += (float) Math.pow(Math.abs(
-                    (float) (first.fAttr[i] - second.fAttr[i])), p);
+                    (float) (firstFloats[i] - secondFloats[i])), p);
         }
         for (int i = 0; i < first.getNumIAtt(); i++) {
             if (!DataMineConstants.isAcceptableInt(first.iAttr[i])
@@ -153,12 +299,13 @@ public class MinkowskiMetric extends DistanceMeasure implements Serializable {
         if (instance == null) {
             return 0;
         }
+        float[] instanceFloats = instance.getFloatArray();
         float sum = 0;
         for (int i = 0; i < instance.getNumFAtt(); i++) {
-            if (!DataMineConstants.isAcceptableFloat(instance.fAttr[i])) {
+            if (!DataMineConstants.isAcceptableFloat(instanceFloats[i])) {
                 continue;
             }
-            sum += Math.pow(Math.abs((float) instance.fAttr[i]), p);
+            sum += Math.pow(Math.abs((float) instanceFloats[i]), p);
         }
         for (int i = 0; i < instance.getNumIAtt(); i++) {
             if (!DataMineConstants.isAcceptableInt(instance.iAttr[i])) {
@@ -33,6 +33,7 @@ implements Serializable {
     private float[] intWeights = null;
     private float[] floatWeights = null;
     private float p = 2;
+    private int kernel = MinkowskiMetric.KERNEL_L2;
 
     /**
      * @param intWeights Weights for ints.
@@ -56,23 +57,45 @@ implements Serializable {
         this.intWeights = intWeights;
         this.floatWeights = floatWeights;
         this.p = p;
+        kernel = MinkowskiMetric.selectKernel(p);
+    }
+
+    @Override
+    public DistanceMeasure cleanCopy() {
+        MinkowskiMetricWeighted copy = new MinkowskiMetricWeighted(
+                intWeights, floatWeights);
+        copy.p = p;
+        copy.kernel = kernel;
+        copy.cleanData = true;
+        return copy;
     }
 
     @Override
     public float dist(float[] arrFirst, float[] arrSecond)
             throws MetricException {
+        return dist(arrFirst, arrSecond, Float.MAX_VALUE);
+    }
+
+    @Override
+    public float dist(float[] arrFirst, float[] arrSecond, float bestSoFar)
+            throws MetricException {
         DistanceMeasure.assertArrays(arrFirst, arrSecond);
+        float limit = MinkowskiMetric.sumLimit(bestSoFar, p, kernel);
+        boolean checkValues = !cleanData;
         float sum = 0;
         for (int i = 0; i < arrFirst.length; i++) {
-            if (!DataMineConstants.isAcceptableFloat(arrFirst[i])
-                    || !DataMineConstants.isAcceptableFloat(arrSecond[i])) {
+            if (checkValues && (!DataMineConstants.isAcceptableFloat(
+                    arrFirst[i]) || !DataMineConstants.isAcceptableFloat(
+                    arrSecond[i]))) {
                 continue;
             }
-            sum += floatWeights[i]
-                    * Math.pow(Math.abs(arrFirst[i] - arrSecond[i]), p);
+            sum += floatWeights[i] * MinkowskiMetric.power(
+                    Math.abs(arrFirst[i] - arrSecond[i]), p, kernel);
+            if (sum > limit) {
+                return Float.MAX_VALUE;
+            }
         }
-        sum = (float) Math.pow(sum, 1. / p);
-        return sum;
+        return MinkowskiMetric.root(sum, p, kernel);
     }
 
     /**
@@ -118,15 +141,15 @@ implements Serializable {
         DistanceMeasure.assertArrays(arrFirst, arrSecond);
         float sum = 0;
         for (int i = 0; i < arrFirst.length; i++) {
-            if (!DataMineConstants.isAcceptableFloat(arrFirst[i])
-                    || !DataMineConstants.isAcceptableFloat(arrSecond[i])) {
+            if (!cleanData && (!DataMineConstants.isAcceptableFloat(
+                    arrFirst[i]) || !DataMineConstants.isAcceptableFloat(
+                    arrSecond[i]))) {
                 continue;
             }
-            sum += intWeights[i]
-                    * Math.pow(Math.abs(arrFirst[i] - arrSecond[i]), p);
+            sum += intWeights[i] * MinkowskiMetric.power(
+                    Math.abs(arrFirst[i] - arrSecond[i]), p, kernel);
         }
-        sum = (float) Math.pow(sum, 1. / p);
-        return sum;
+        return MinkowskiMetric.root(sum, p, kernel);
     }
 
     /**
@@ -138,15 +161,17 @@ implements Serializable {
     public float dist(DataInstance first, DataInstance second)
             throws MetricException {
         DistanceMeasure.assertInstances(first, second);
+        float[] firstFloats = first.getFloatArray();
+        float[] secondFloats = second.getFloatArray();
         float sum = 0f;
         DistanceMeasure.assertInstances(first, second);
         for (int i = 0; i < first.getNumFAtt(); i++) {
-            if (!DataMineConstants.isAcceptableFloat(first.fAttr[i])
-                    || !DataMineConstants.isAcceptableFloat(second.fAttr[i])) {
+            if (!DataMineConstants.isAcceptableFloat(firstFloats[i])
+                    || !DataMineConstants.isAcceptableFloat(secondFloats[i])) {
                 continue;
             }
             sum += floatWeights[i] * (float) Math.pow(Math.abs(
-                    (float) (first.fAttr[i] - second.fAttr[i])), p);
+                    (float) (firstFloats[i] - secondFloats[i])), p);
         }
         for (int i = 0; i < first.getNumIAtt(); i++) {
             if (!DataMineConstants.isAcceptableInt(first.iAttr[i])
@@ -168,12 +193,13 @@ implements Serializable {
         if (instance == null) {
             return 0;
         }
+        float[] instanceFloats = instance.getFloatArray();
         float sum = 0;
         for (int i = 0; i < instance.getNumFAtt(); i++) {
-            if (!DataMineConstants.isAcceptableFloat(instance.fAttr[i])) {
+            if (!DataMineConstants.isAcceptableFloat(instanceFloats[i])) {
                 continue;
             }
-            sum += Math.pow(Math.abs((float) instance.fAttr[i]), p);
+            sum += Math.pow(Math.abs((float) instanceFloats[i]), p);
         }
         for (int i = 0; i < instance.getNumIAtt(); i++) {
             if (!DataMineConstants.isAcceptableInt(instance.iAttr[i])) {
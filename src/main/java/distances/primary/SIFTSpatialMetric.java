@@ -49,6 +49,6 @@ public class SIFTSpatialMetric extends DistanceMeasure implements Serializable {
      */
     public float dist(DataInstance first, DataInstance second)
             throws MetricException {
-        return dist(first.fAttr, second.fAttr);
+        return dist(first.getFloatArray(), second.getFloatArray());
     }
 }
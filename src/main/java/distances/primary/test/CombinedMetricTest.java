@@ -0,0 +1,111 @@
+/**
+* Hub Miner: a hubness-aware machine learning experimentation library.
+* Copyright (C) 2014  Nenad Tomasev. Email: nenad.tomasev at gmail.com
+* 
+* This program is free software: you can redistribute it and/or modify it under
+* the terms of the GNU General Public License as published by the Free Software
+* Foundation, either version 3 of the License, or (at your option) any later
+* version.
+* 
+* This program is distributed in the hope that it will be useful, but WITHOUT
+* ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+* FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License along with
+* this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+package distances.primary.test;
+
+import data.representation.DataInstance;
+import data.representation.DataSet;
+import distances.primary.CombinedMetric;
+import distances.primary.MinkowskiMetric;
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+import junit.framework.TestCase;
+import org.junit.Test;
+
+/**
+ * This class tests the consistency of the full and the early-abandoning
+ * distance calculations in the combined metric.
+ *
+ * @author Nenad Tomasev <nenad.tomasev at gmail.com>
+ */
+public class CombinedMetricTest extends TestCase {
+
+    /**
+     * This method tests that the distance with a loose bound equals the full
+     * distance and that the bounded distance is abandoned only when the full
+     * distance exceeds the bound, for all the mixers.
+     */
+    @Test
+    public static void testEarlyAbandonConsistency() {
+        DataSet dset = new DataSet(null, new String[]{"x", "y"}, null, 2);
+        DataInstance first = new DataInstance(dset);
+        first.fAttr[0] = 0;
+        first.fAttr[1] = 0;
+        DataInstance second = new DataInstance(dset);
+        second.fAttr[0] = 3;
+        second.fAttr[1] = 4;
+        dset.addDataInstance(first);
+        dset.addDataInstance(second);
+        CombinedMetric.Mixer[] mixers = {CombinedMetric.Mixer.SUM,
+            CombinedMetric.Mixer.AVERAGE, CombinedMetric.Mixer.PRODUCT,
+            CombinedMetric.Mixer.MIN, CombinedMetric.Mixer.MAX,
+            CombinedMetric.Mixer.EUCLIDEAN};
+        try {
+            for (CombinedMetric.Mixer mixer : mixers) {
+                CombinedMetric cmet = new CombinedMetric(null,
+                        new MinkowskiMetric(), mixer);
+                float fullDist = cmet.dist(first, second);
+                assertEquals(fullDist, cmet.dist(first, second, 100f),
+                        0.0001f);
+                float boundedDist = cmet.dist(first, second,
+                        fullDist * 0.5f);
+                if (boundedDist != Float.MAX_VALUE) {
+                    assertEquals(fullDist, boundedDist, 0.0001f);
+                }
+            }
+        } catch (Exception e) {
+            fail(e.getMessage());
+        }
+    }
+
+    /**
+     * This method tests that the metrics adjusted to clean data skip the
+     * value checks without modifying the shared metric objects, and that the
+     * data with missing values keeps the checked metrics.
+     */
+    @Test
+    public static void testCleanDataCopies() {
+        DataSet dset = new DataSet(null, new String[]{"x", "y", "z"}, null,
+                2);
+        DataInstance first = new DataInstance(dset);
+        DataInstance second = new DataInstance(dset);
+        for (int d = 0; d < 3; d++) {
+            first.fAttr[d] = d;
+            second.fAttr[d] = 2 * d + 1;
+        }
+        dset.addDataInstance(first);
+        dset.addDataInstance(second);
+        CombinedMetric[] metrics = {CombinedMetric.FLOAT_EUCLIDEAN,
+            CombinedMetric.FLOAT_MANHATTAN, CombinedMetric.FLOAT_COSINE};
+        try {
+            for (CombinedMetric cmet : metrics) {
+                CombinedMetric cleanMetric = cmet.adjustedToData(dset);
+                assertTrue(cleanMetric.getFloatMetric().isCleanData());
+                assertFalse(cmet.getFloatMetric().isCleanData());
+                assertEquals(cmet.dist(first, second),
+                        cleanMetric.dist(first, second), 0.0001f);
+            }
+            second.fAttr[1] = Float.POSITIVE_INFINITY;
+            assertSame(CombinedMetric.FLOAT_EUCLIDEAN,
+                    CombinedMetric.FLOAT_EUCLIDEAN.adjustedToData(dset));
+        } catch (Exception e) {
+            fail(e.getMessage());
+        }
+    }
+}
@@ -210,8 +210,8 @@ public class SparseCombinedMetric extends CombinedMetric
                 first.iAttr, second.iAttr) : combineBy == Mixer.PRODUCT
                 ? 1f : 0f;
         float floatDistance = floatMetric != null ? floatMetric.dist(
-                first.fAttr, second.fAttr) : combineBy == Mixer.PRODUCT
-                ? 1f : 0f;
+                first.getFloatArray(), second.getFloatArray())
+                : combineBy == Mixer.PRODUCT ? 1f : 0f;
         float sparseDistance = sparseMetric != null ? sparseMetric.dist(
                 ((BOWInstance) first).getWordIndexesHash(),
                 ((BOWInstance) second).getWordIndexesHash())
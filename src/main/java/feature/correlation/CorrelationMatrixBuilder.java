@@ -0,0 +1,346 @@
+/**
+* Hub Miner: a hubness-aware machine learning experimentation library.
+* Copyright (C) 2014  Nenad Tomasev. Email: nenad.tomasev at gmail.com
+* 
+* This program is free software: you can redistribute it and/or modify it under
+* the terms of the GNU General Public License as published by the Free Software
+* Foundation, either version 3 of the License, or (at your option) any later
+* version.
+* 
+* This program is distributed in the hope that it will be useful, but WITHOUT
+* ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+* FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License along with
+* this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+package feature.correlation;
+
+import data.representation.DataInstance;
+import data.representation.DataSet;
+import data.representation.util.DataMineConstants;
+import java.util.Arrays;
+import linear.matrix.SymmetricFloatMatrix;
+import util.AuxSort;
+
+/**
+ * This class calculates the feature-feature correlation matrix of a dataset.
+ * The features are first standardized in a feature-major layout, so that each
+ * correlation becomes a dot product of two contiguous columns. The column
+ * pairs are then processed in square blocks of features and row chunks, so
+ * that the columns of a block stay in cache while their products are being
+ * accumulated, and the blocks are distributed among the threads. Pearson
+ * correlation and Spearman rank correlation are supported. Unacceptable
+ * values are replaced by the feature mean.
+ *
+ * @author Nenad Tomasev <nenad.tomasev at gmail.com>
+ */
+public class CorrelationMatrixBuilder {
+
+    public static final int PEARSON = 0;
+    public static final int SPEARMAN = 1;
+    // Number of features in one block of the correlation matrix.
+    public static final int DEFAULT_BLOCK_SIZE = 32;
+    // Number of rows that are processed at once within a block.
+    private static final int ROW_CHUNK_SIZE = 2048;
+    // Feature-major data, where each array is one feature.
+    private float[][] columns;
+    private int correlationType = PEARSON;
+    private int blockSize = DEFAULT_BLOCK_SIZE;
+    private int numThreads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * Initialization.
+     *
+     * @param columns Two-dimensional float array where each row contains the
+     * values of a single feature over all the instances.
+     */
+    public CorrelationMatrixBuilder(float[][] columns) {
+        this.columns = columns;
+    }
+
+    /**
+     * Initialization.
+     *
+     * @param dset DataSet to analyze.
+     * @param type Feature type, as in DataMineConstants, either FLOAT or
+     * INTEGER.
+     */
+    public CorrelationMatrixBuilder(DataSet dset, int type) {
+        int numFeatures = type == DataMineConstants.FLOAT
+                ? dset.getNumFloatAttr() : dset.getNumIntAttr();
+        columns = new float[numFeatures][dset.size()];
+        DataInstance instance;
+        for (int i = 0; i < dset.size(); i++) {
+            instance = dset.data.get(i);
+            for (int d = 0; d < numFeatures; d++) {
+                columns[d][i] = type == DataMineConstants.FLOAT
+                        ? instance.fAttr[d] : instance.iAttr[d];
+            }
+        }
+    }
+
+    /**
+     * @param correlationType Integer code of the correlation measure, PEARSON
+     * or SPEARMAN.
+     */
+    public void setCorrelationType(int correlationType) {
+        this.correlationType = correlationType;
+    }
+
+    /**
+     * @param blockSize Integer that is the number of features in one block.
+     */
+    public void setBlockSize(int blockSize) {
+        this.blockSize = Math.max(1, blockSize);
+    }
+
+    /**
+     * @param numThreads Integer that is the number of threads to use.
+     */
+    public void setNumThreads(int numThreads) {
+        this.numThreads = Math.max(1, numThreads);
+    }
+
+    /**
+     * Calculates the correlation matrix.
+     *
+     * @return SymmetricFloatMatrix of correlations between the features.
+     * @throws Exception
+     */
+    public SymmetricFloatMatrix calculateCorrelationMatrix() throws Exception {
+        int numFeatures = columns.length;
+        SymmetricFloatMatrix corrMat = new SymmetricFloatMatrix(numFeatures);
+        if (numFeatures == 0) {
+            return corrMat;
+        }
+        float[][] normalized = new float[numFeatures][];
+        int threadCount = Math.min(numThreads, numFeatures);
+        Thread[] threads = new Thread[threadCount];
+        for (int tIndex = 0; tIndex < threadCount; tIndex++) {
+            threads[tIndex] = new Thread(new ColumnNormalizer(normalized,
+                    tIndex, threadCount));
+            threads[tIndex].start();
+        }
+        joinAll(threads);
+        int numBlocks = (numFeatures - 1) / blockSize + 1;
+        int numBlockPairs = numBlocks * (numBlocks + 1) / 2;
+        int[] firstBlocks = new int[numBlockPairs];
+        int[] secondBlocks = new int[numBlockPairs];
+        int pairIndex = 0;
+        for (int bFirst = 0; bFirst < numBlocks; bFirst++) {
+            for (int bSecond = bFirst; bSecond < numBlocks; bSecond++) {
+                firstBlocks[pairIndex] = bFirst;
+                secondBlocks[pairIndex] = bSecond;
+                pairIndex++;
+            }
+        }
+        threadCount = Math.min(numThreads, numBlockPairs);
+        threads = new Thread[threadCount];
+        for (int tIndex = 0; tIndex < threadCount; tIndex++) {
+            threads[tIndex] = new Thread(new BlockCorrelator(normalized,
+                    corrMat, firstBlocks, secondBlocks, tIndex, threadCount));
+            threads[tIndex].start();
+        }
+        joinAll(threads);
+        return corrMat;
+    }
+
+    /**
+     * @param threads Thread array to wait for.
+     */
+    private static void joinAll(Thread[] threads) {
+        for (int tIndex = 0; tIndex < threads.length; tIndex++) {
+            if (threads[tIndex] != null) {
+                try {
+                    threads[tIndex].join();
+                } catch (Throwable t) {
+                    System.err.println(t.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Transforms the values into ranks, where tied values get their average
+     * rank.
+     *
+     * @param values Float value array.
+     * @return Float array of ranks.
+     * @throws Exception
+     */
+    private static float[] getRanks(float[] values) throws Exception {
+        float[] sortedValues = Arrays.copyOf(values, values.length);
+        int[] order = AuxSort.sortIndexedValue(sortedValues, false);
+        float[] ranks = new float[values.length];
+        int index = 0;
+        while (index < values.length) {
+            int startingPoint = index;
+            while (index + 1 < values.length
+                    && sortedValues[index + 1] == sortedValues[index]) {
+                index++;
+            }
+            float rank = (startingPoint + index + 2) / 2f;
+            for (int i = startingPoint; i <= index; i++) {
+                ranks[order[i]] = rank;
+            }
+            index++;
+        }
+        return ranks;
+    }
+
+    /**
+     * This class centers the features and normalizes them to unit length, so
+     * that the correlations are given by the dot products.
+     */
+    class ColumnNormalizer implements Runnable {
+
+        private float[][] normalized;
+        private int offset;
+        private int step;
+
+        /**
+         * Initialization.
+         *
+         * @param normalized Two-dimensional float array for the normalized
+         * features.
+         * @param offset Integer that is the first feature to process.
+         * @param step Integer that is the step between the processed features.
+         */
+        public ColumnNormalizer(float[][] normalized, int offset, int step) {
+            this.normalized = normalized;
+            this.offset = offset;
+            this.step = step;
+        }
+
+        @Override
+        public void run() {
+            try {
+                for (int d = offset; d < columns.length; d += step) {
+                    float[] values = columns[d];
+                    double mean = 0;
+                    int numAcceptable = 0;
+                    for (int i = 0; i < values.length; i++) {
+                        if (DataMineConstants.isAcceptableFloat(values[i])) {
+                            mean += values[i];
+                            numAcceptable++;
+                        }
+                    }
+                    mean = numAcceptable > 0 ? mean / numAcceptable : 0;
+                    float[] column = new float[values.length];
+                    for (int i = 0; i < values.length; i++) {
+                        column[i] = DataMineConstants.isAcceptableFloat(
+                                values[i]) ? values[i] : (float) mean;
+                    }
+                    if (correlationType == SPEARMAN) {
+                        column = getRanks(column);
+                        mean = (column.length + 1) / 2d;
+                    }
+                    double norm = 0;
+                    double dif;
+                    for (int i = 0; i < column.length; i++) {
+                        dif = column[i] - mean;
+                        norm += dif * dif;
+                    }
+                    norm = Math.sqrt(norm);
+                    for (int i = 0; i < column.length; i++) {
+                        column[i] = norm > 0
+                                ? (float) ((column[i] - mean) / norm) : 0;
+                    }
+                    normalized[d] = column;
+                }
+            } catch (Exception e) {
+                System.err.println(e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * This class calculates the correlations within the assigned blocks of
+     * feature pairs.
+     */
+    class BlockCorrelator implements Runnable {
+
+        private float[][] normalized;
+        private SymmetricFloatMatrix corrMat;
+        private int[] firstBlocks;
+        private int[] secondBlocks;
+        private int offset;
+        private int step;
+
+        /**
+         * Initialization.
+         *
+         * @param normalized Two-dimensional float array of the normalized
+         * features.
+         * @param corrMat SymmetricFloatMatrix for the correlations.
+         * @param firstBlocks Integer array of the first blocks in block pairs.
+         * @param secondBlocks Integer array of the second blocks in block
+         * pairs.
+         * @param offset Integer that is the first block pair to process.
+         * @param step Integer that is the step between the processed block
+         * pairs.
+         */
+        public BlockCorrelator(float[][] normalized,
+                SymmetricFloatMatrix corrMat, int[] firstBlocks,
+                int[] secondBlocks, int offset, int step) {
+            this.normalized = normalized;
+            this.corrMat = corrMat;
+            this.firstBlocks = firstBlocks;
+            this.secondBlocks = secondBlocks;
+            this.offset = offset;
+            this.step = step;
+        }
+
+        @Override
+        public void run() {
+            int numFeatures = normalized.length;
+            int numRows = normalized[0].length;
+            double[][] products = new double[blockSize][blockSize];
+            for (int p = offset; p < firstBlocks.length; p += step) {
+                int firstStart = firstBlocks[p] * blockSize;
+                int firstEnd = Math.min(firstStart + blockSize, numFeatures);
+                int secondStart = secondBlocks[p] * blockSize;
+                int secondEnd = Math.min(secondStart + blockSize,
+                        numFeatures);
+                for (int i = 0; i < blockSize; i++) {
+                    Arrays.fill(products[i], 0);
+                }
+                for (int rowStart = 0; rowStart < numRows;
+                        rowStart += ROW_CHUNK_SIZE) {
+                    int rowEnd = Math.min(rowStart + ROW_CHUNK_SIZE, numRows);
+                    for (int f = firstStart; f < firstEnd; f++) {
+                        float[] firstCol = normalized[f];
+                        double[] productRow = products[f - firstStart];
+                        // Only the upper triangle of diagonal blocks.
+                        int sStart = firstBlocks[p] == secondBlocks[p]
+                                ? f : secondStart;
+                        for (int s = sStart; s < secondEnd; s++) {
+                            float[] secondCol = normalized[s];
+                            double dot = 0;
+                            for (int r = rowStart; r < rowEnd; r++) {
+                                dot += firstCol[r] * secondCol[r];
+                            }
+                            productRow[s - secondStart] += dot;
+                        }
+                    }
+                }
+                for (int f = firstStart; f < firstEnd; f++) {
+                    int sStart = firstBlocks[p] == secondBlocks[p]
+                            ? f : secondStart;
+                    for (int s = sStart; s < secondEnd; s++) {
+                        corrMat.setElementAt(f, s, (float) Math.max(-1,
+                                Math.min(1, products[f - firstStart][
+                                s - secondStart])));
+                    }
+                }
+                if (firstBlocks[p] == secondBlocks[p]) {
+                    for (int f = firstStart; f < firstEnd; f++) {
+                        // Each feature is fully correlated with itself.
+                        corrMat.setElementAt(f, f, 1);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -18,13 +18,17 @@ package feature.correlation;
 
 import data.representation.DataSet;
 import data.representation.util.DataMineConstants;
-import linear.matrix.SymmetricFloatMatrix;
+import java.util.Arrays;
+import util.AuxSort;
 
 /**
  * Distance correlation is a correlation measure that is able to detect more
  * than Pearson coefficient due to the fact that it is non-linear. It returns
  * values from 0 to 1 and it equals 0 if and only if there is no statistical
- * dependence between the variable arrays.
+ * dependence between the variable arrays. The implementation uses the
+ * O(n log n) algorithm for univariate samples, which avoids forming the
+ * pairwise distance matrices by using sorting and a binary indexed tree over
+ * the ranks.
  *
  * @author Nenad Tomasev <nenad.tomasev at gmail.com>
  */
@@ -43,85 +47,7 @@ public class DistanceCorrelation extends CorrelationCoefficient {
         if (first == null || second == null || first.length != second.length) {
             return 0;
         }
-        int length = first.length;
-        SymmetricFloatMatrix dMatFirst = new SymmetricFloatMatrix(length);
-        SymmetricFloatMatrix dMatSecond = new SymmetricFloatMatrix(length);
-        double[] avgFirst = new double[length];
-        double[] avgSecond = new double[length];
-        double firstTotalAvg = 0;
-        double secondTotalAvg = 0;
-        double distanceStdevFirst = 0;
-        double distanceStdevSecond = 0;
-        double distanceCorr = 0;
-        double currDist;
-        for (int i = 0; i < length; i++) {
-            for (int j = i + 1; j < length; j++) {
-                currDist = Math.abs(first[i] - first[j]);
-                dMatFirst.setElementAt(i, j, (float) currDist);
-                if (DataMineConstants.isAcceptableDouble(currDist)) {
-                    avgFirst[i] += currDist;
-                    avgFirst[j] += currDist;
-                    firstTotalAvg += currDist;
-                }
-                currDist = Math.abs(second[i] - second[j]);
-                dMatSecond.setElementAt(i, j, (float) currDist);
-                if (DataMineConstants.isAcceptableDouble(currDist)) {
-                    avgSecond[i] += currDist;
-                    avgSecond[j] += currDist;
-                    secondTotalAvg += currDist;
-                }
-            }
-        }
-        // Correct the averages.
-        float divisor = length * length;
-        firstTotalAvg *= 2;
-        secondTotalAvg *= 2;
-        firstTotalAvg /= divisor;
-        secondTotalAvg /= divisor;
-        for (int i = 0; i < length; i++) {
-            avgFirst[i] /= (double) (length);
-            avgSecond[i] /= (double) (length);
-        }
-        double factFirst, factSecond;
-        for (int i = 0; i < length; i++) {
-            for (int j = i + 1; j < length; j++) {
-                factFirst = dMatFirst.getElementAt(i, j) - avgFirst[i]
-                        - avgFirst[j] + firstTotalAvg;
-                factSecond = dMatSecond.getElementAt(i, j) - avgSecond[i]
-                        - avgSecond[j] + secondTotalAvg;
-                distanceCorr += factFirst * factSecond;
-                if (DataMineConstants.isAcceptableDouble(factFirst)) {
-                    distanceStdevFirst += factFirst * factFirst;
-                }
-                if (DataMineConstants.isAcceptableDouble(factSecond)) {
-                    distanceStdevSecond += factSecond * factSecond;
-                }
-            }
-        }
-        distanceCorr *= 2;
-        distanceStdevFirst *= 2;
-        distanceStdevSecond *= 2;
-        for (int i = 0; i < length; i++) {
-            factFirst = dMatFirst.getElementAt(i, i) - avgFirst[i]
-                    - avgFirst[i] + firstTotalAvg;
-            factSecond = dMatSecond.getElementAt(i, i) - avgSecond[i]
-                    - avgSecond[i] + secondTotalAvg;
-            distanceCorr += factFirst * factSecond;
-            if (DataMineConstants.isAcceptableDouble(factFirst)) {
-                distanceStdevFirst += factFirst * factFirst;
-            }
-            if (DataMineConstants.isAcceptableDouble(factSecond)) {
-                distanceStdevSecond += factSecond * factSecond;
-            }
-        }
-        distanceCorr /= divisor;
-        distanceCorr = Math.sqrt(distanceCorr);
-        distanceStdevFirst /= divisor;
-        distanceStdevSecond /= divisor;
-        distanceStdevFirst = Math.sqrt(distanceStdevFirst);
-        distanceStdevSecond = Math.sqrt(distanceStdevSecond);
-        distanceCorr /= Math.sqrt(distanceStdevFirst * distanceStdevSecond);
-        return (float) distanceCorr;
+        return fastCorrelation(first, second);
     }
 
     /**
@@ -137,85 +63,13 @@ public class DistanceCorrelation extends CorrelationCoefficient {
         if (first == null || second == null || first.length != second.length) {
             return 0;
         }
-        int length = first.length;
-        SymmetricFloatMatrix dMatFirst = new SymmetricFloatMatrix(length);
-        SymmetricFloatMatrix dMatSecond = new SymmetricFloatMatrix(length);
-        double[] avgFirst = new double[length];
-        double[] avgSecond = new double[length];
-        double firstTotalAvg = 0;
-        double secondTotalAvg = 0;
-        double distanceStdevFirst = 0;
-        double distanceStdevSecond = 0;
-        double distanceCorr = 0;
-        double currDist;
-        for (int i = 0; i < length; i++) {
-            for (int j = i + 1; j < length; j++) {
-                currDist = Math.abs(first[i] - first[j]);
-                dMatFirst.setElementAt(i, j, (float) currDist);
-                if (DataMineConstants.isAcceptableDouble(currDist)) {
-                    avgFirst[i] += currDist;
-                    avgFirst[j] += currDist;
-                    firstTotalAvg += currDist;
-                }
-                currDist = Math.abs(second[i] - second[j]);
-                dMatSecond.setElementAt(i, j, (float) currDist);
-                if (DataMineConstants.isAcceptableDouble(currDist)) {
-                    avgSecond[i] += currDist;
-                    avgSecond[j] += currDist;
-                    secondTotalAvg += currDist;
-                }
-            }
-        }
-        // Correct the averages.
-        float divisor = length * length;
-        firstTotalAvg *= 2;
-        secondTotalAvg *= 2;
-        firstTotalAvg /= divisor;
-        secondTotalAvg /= divisor;
-        for (int i = 0; i < length; i++) {
-            avgFirst[i] /= (float) (length);
-            avgSecond[i] /= (float) (length);
+        double[] firstD = new double[first.length];
+        double[] secondD = new double[second.length];
+        for (int i = 0; i < first.length; i++) {
+            firstD[i] = first[i];
+            secondD[i] = second[i];
         }
-        double factFirst, factSecond;
-        for (int i = 0; i < length; i++) {
-            for (int j = i + 1; j < length; j++) {
-                factFirst = dMatFirst.getElementAt(i, j) - avgFirst[i]
-                        - avgFirst[j] + firstTotalAvg;
-                factSecond = dMatSecond.getElementAt(i, j) - avgSecond[i]
-                        - avgSecond[j] + secondTotalAvg;
-                distanceCorr += factFirst * factSecond;
-                if (DataMineConstants.isAcceptableDouble(factFirst)) {
-                    distanceStdevFirst += factFirst * factFirst;
-                }
-                if (DataMineConstants.isAcceptableDouble(factSecond)) {
-                    distanceStdevSecond += factSecond * factSecond;
-                }
-            }
-        }
-        distanceCorr *= 2;
-        distanceStdevFirst *= 2;
-        distanceStdevSecond *= 2;
-        for (int i = 0; i < length; i++) {
-            factFirst = dMatFirst.getElementAt(i, i) - avgFirst[i]
-                    - avgFirst[i] + firstTotalAvg;
-            factSecond = dMatSecond.getElementAt(i, i) - avgSecond[i]
-                    - avgSecond[i] + secondTotalAvg;
-            distanceCorr += factFirst * factSecond;
-            if (DataMineConstants.isAcceptableDouble(factFirst)) {
-                distanceStdevFirst += factFirst * factFirst;
-            }
-            if (DataMineConstants.isAcceptableDouble(factSecond)) {
-                distanceStdevSecond += factSecond * factSecond;
-            }
-        }
-        distanceCorr /= divisor;
-        distanceStdevFirst /= divisor;
-        distanceStdevSecond /= divisor;
-        distanceStdevFirst = Math.sqrt(distanceStdevFirst);
-        distanceStdevSecond = Math.sqrt(distanceStdevSecond);
-        distanceCorr = Math.sqrt(distanceCorr);
-        distanceCorr /= Math.sqrt(distanceStdevFirst * distanceStdevSecond);
-        return (float) distanceCorr;
+        return (float) fastCorrelation(firstD, secondD);
     }
 
     /**
@@ -231,85 +85,189 @@ public class DistanceCorrelation extends CorrelationCoefficient {
         if (first == null || second == null || first.length != second.length) {
             return 0;
         }
-        int length = first.length;
-        SymmetricFloatMatrix dMatFirst = new SymmetricFloatMatrix(length);
-        SymmetricFloatMatrix dMatSecond = new SymmetricFloatMatrix(length);
-        double[] avgFirst = new double[length];
-        double[] avgSecond = new double[length];
-        double firstTotalAvg = 0;
-        double secondTotalAvg = 0;
-        double distanceStdevFirst = 0;
-        double distanceStdevSecond = 0;
-        double distanceCorr = 0;
-        double currDist;
-        for (int i = 0; i < length; i++) {
-            for (int j = i + 1; j < length; j++) {
-                currDist = Math.abs(first[i] - first[j]);
-                dMatFirst.setElementAt(i, j, (float) currDist);
-                if (DataMineConstants.isAcceptableDouble(currDist)) {
-                    avgFirst[i] += currDist;
-                    avgFirst[j] += currDist;
-                    firstTotalAvg += currDist;
-                }
-                currDist = Math.abs(second[i] - second[j]);
-                dMatSecond.setElementAt(i, j, (float) currDist);
-                if (DataMineConstants.isAcceptableDouble(currDist)) {
-                    avgSecond[i] += currDist;
-                    avgSecond[j] += currDist;
-                    secondTotalAvg += currDist;
-                }
+        double[] firstD = new double[first.length];
+        for (int i = 0; i < first.length; i++) {
+            firstD[i] = first[i];
+        }
+        return (float) fastCorrelation(firstD, second);
+    }
+
+    /**
+     * Calculates the distance correlation of two univariate samples in
+     * O(n log n) time and O(n) memory. The double-centered distance sums are
+     * expanded into the sum of distance products, the row sums and the total
+     * sums. The row sums are obtained from prefix sums over sorted values and
+     * the sum of products of distances is accumulated over the points sorted
+     * by the first variable, with a binary indexed tree over the ranks in the
+     * second variable. Pairs that contain unacceptable values are skipped.
+     *
+     * @param first Double array of values.
+     * @param second Double array of values.
+     * @return Distance correlation between the two arrays.
+     * @throws Exception
+     */
+    private static double fastCorrelation(double[] first, double[] second)
+            throws Exception {
+        int length = 0;
+        for (int i = 0; i < first.length; i++) {
+            if (DataMineConstants.isAcceptableDouble(first[i])
+                    && DataMineConstants.isAcceptableDouble(second[i])) {
+                length++;
             }
         }
-        // Correct the averages.
-        float divisor = length * length;
-        firstTotalAvg *= 2;
-        secondTotalAvg *= 2;
-        firstTotalAvg /= divisor;
-        secondTotalAvg /= divisor;
-        for (int i = 0; i < length; i++) {
-            avgFirst[i] /= (float) (length);
-            avgSecond[i] /= (float) (length);
+        if (length < 2) {
+            return 0;
         }
-        double factFirst, factSecond;
-        for (int i = 0; i < length; i++) {
-            for (int j = i + 1; j < length; j++) {
-                factFirst = dMatFirst.getElementAt(i, j) - avgFirst[i]
-                        - avgFirst[j] + firstTotalAvg;
-                factSecond = dMatSecond.getElementAt(i, j) - avgSecond[i]
-                        - avgSecond[j] + secondTotalAvg;
-                distanceCorr += factFirst * factSecond;
-                if (DataMineConstants.isAcceptableDouble(factFirst)) {
-                    distanceStdevFirst += factFirst * factFirst;
-                }
-                if (DataMineConstants.isAcceptableDouble(factSecond)) {
-                    distanceStdevSecond += factSecond * factSecond;
-                }
+        double[] x = new double[length];
+        double[] y = new double[length];
+        int index = 0;
+        double meanFirst = 0;
+        double meanSecond = 0;
+        for (int i = 0; i < first.length; i++) {
+            if (DataMineConstants.isAcceptableDouble(first[i])
+                    && DataMineConstants.isAcceptableDouble(second[i])) {
+                x[index] = first[i];
+                y[index] = second[i];
+                meanFirst += first[i];
+                meanSecond += second[i];
+                index++;
             }
         }
-        distanceCorr *= 2;
-        distanceStdevFirst *= 2;
-        distanceStdevSecond *= 2;
+        meanFirst /= length;
+        meanSecond /= length;
+        // Distances are translation-invariant, so the values are centered to
+        // reduce the cancellation errors in the sums below.
         for (int i = 0; i < length; i++) {
-            factFirst = dMatFirst.getElementAt(i, i) - avgFirst[i]
-                    - avgFirst[i] + firstTotalAvg;
-            factSecond = dMatSecond.getElementAt(i, i) - avgSecond[i]
-                    - avgSecond[i] + secondTotalAvg;
-            distanceCorr += factFirst * factSecond;
-            if (DataMineConstants.isAcceptableDouble(factFirst)) {
-                distanceStdevFirst += factFirst * factFirst;
+            x[i] -= meanFirst;
+            y[i] -= meanSecond;
+        }
+        double[] xSorted = Arrays.copyOf(x, length);
+        double[] ySorted = Arrays.copyOf(y, length);
+        int[] xOrder = AuxSort.sortIndexedValue(xSorted, false);
+        int[] yOrder = AuxSort.sortIndexedValue(ySorted, false);
+        double[] rowSumsFirst = calculateRowDistanceSums(xSorted, xOrder);
+        double[] rowSumsSecond = calculateRowDistanceSums(ySorted, yOrder);
+        int[] yRanks = new int[length];
+        for (int r = 0; r < length; r++) {
+            yRanks[yOrder[r]] = r;
+        }
+        // Binary indexed trees of counts, sums of x, sums of y and sums of
+        // x * y of the already processed points, indexed by the y-ranks.
+        double[] treeCounts = new double[length + 1];
+        double[] treeX = new double[length + 1];
+        double[] treeY = new double[length + 1];
+        double[] treeXY = new double[length + 1];
+        double totalCount = 0;
+        double totalX = 0;
+        double totalY = 0;
+        double totalXY = 0;
+        double lowCount, lowX, lowY, lowXY;
+        double xi, yi;
+        // Sum of |x_i - x_j| * |y_i - y_j| over all pairs with x_j <= x_i.
+        double productSum = 0;
+        for (int r = 0; r < length; r++) {
+            int i = xOrder[r];
+            xi = x[i];
+            yi = y[i];
+            lowCount = 0;
+            lowX = 0;
+            lowY = 0;
+            lowXY = 0;
+            // Prefix query over the points with smaller y-ranks.
+            for (int pos = yRanks[i]; pos > 0; pos -= pos & (-pos)) {
+                lowCount += treeCounts[pos];
+                lowX += treeX[pos];
+                lowY += treeY[pos];
+                lowXY += treeXY[pos];
             }
-            if (DataMineConstants.isAcceptableDouble(factSecond)) {
-                distanceStdevSecond += factSecond * factSecond;
+            // For the points below in y, the product of absolute differences
+            // is (x_i - x_j)(y_i - y_j), and its negation for those above.
+            productSum += (xi * yi * lowCount - xi * lowY - yi * lowX + lowXY)
+                    - (xi * yi * (totalCount - lowCount) - xi
+                    * (totalY - lowY) - yi * (totalX - lowX)
+                    + (totalXY - lowXY));
+            for (int pos = yRanks[i] + 1; pos <= length;
+                    pos += pos & (-pos)) {
+                treeCounts[pos]++;
+                treeX[pos] += xi;
+                treeY[pos] += yi;
+                treeXY[pos] += xi * yi;
             }
+            totalCount++;
+            totalX += xi;
+            totalY += yi;
+            totalXY += xi * yi;
+        }
+        productSum *= 2;
+        double squareSumFirst = 0;
+        double squareSumSecond = 0;
+        double sumFirst = 0;
+        double sumSecond = 0;
+        double rowProductSum = 0;
+        double rowSquareSumFirst = 0;
+        double rowSquareSumSecond = 0;
+        double totalFirst = 0;
+        double totalSecond = 0;
+        for (int i = 0; i < length; i++) {
+            squareSumFirst += x[i] * x[i];
+            squareSumSecond += y[i] * y[i];
+            sumFirst += x[i];
+            sumSecond += y[i];
+            rowProductSum += rowSumsFirst[i] * rowSumsSecond[i];
+            rowSquareSumFirst += rowSumsFirst[i] * rowSumsFirst[i];
+            rowSquareSumSecond += rowSumsSecond[i] * rowSumsSecond[i];
+            totalFirst += rowSumsFirst[i];
+            totalSecond += rowSumsSecond[i];
+        }
+        double n = length;
+        // The sums of squared distances have a closed form.
+        double distSquareSumFirst = 2 * n * squareSumFirst
+                - 2 * sumFirst * sumFirst;
+        double distSquareSumSecond = 2 * n * squareSumSecond
+                - 2 * sumSecond * sumSecond;
+        double distanceCovSq = productSum / (n * n) - 2 * rowProductSum
+                / (n * n * n) + totalFirst * totalSecond / (n * n * n * n);
+        double distanceVarSqFirst = distSquareSumFirst / (n * n) - 2
+                * rowSquareSumFirst / (n * n * n) + totalFirst * totalFirst
+                / (n * n * n * n);
+        double distanceVarSqSecond = distSquareSumSecond / (n * n) - 2
+                * rowSquareSumSecond / (n * n * n) + totalSecond * totalSecond
+                / (n * n * n * n);
+        if (distanceVarSqFirst <= 0 || distanceVarSqSecond <= 0) {
+            return 0;
+        }
+        double distanceCorr = Math.sqrt(Math.max(distanceCovSq, 0));
+        distanceCorr /= Math.sqrt(Math.sqrt(distanceVarSqFirst)
+                * Math.sqrt(distanceVarSqSecond));
+        return distanceCorr;
+    }
+
+    /**
+     * Calculates the sums of absolute differences between each value and all
+     * the values in the array, from the prefix sums of the sorted values.
+     *
+     * @param sortedValues Double array of values sorted in ascending order.
+     * @param order Integer array that is the sorting permutation, so that
+     * sortedValues[r] is the value of the point order[r].
+     * @return Double array of distance sums, indexed by the original point
+     * indexes.
+     */
+    private static double[] calculateRowDistanceSums(double[] sortedValues,
+            int[] order) {
+        int length = sortedValues.length;
+        double total = 0;
+        for (int r = 0; r < length; r++) {
+            total += sortedValues[r];
+        }
+        double[] rowSums = new double[length];
+        double prefix = 0;
+        for (int r = 0; r < length; r++) {
+            rowSums[order[r]] = sortedValues[r] * r - prefix
+                    + (total - prefix - sortedValues[r])
+                    - sortedValues[r] * (length - r - 1);
+            prefix += sortedValues[r];
         }
-        distanceCorr /= divisor;
-        distanceCorr = Math.sqrt(distanceCorr);
-        distanceStdevFirst /= divisor;
-        distanceStdevSecond /= divisor;
-        distanceStdevFirst = Math.sqrt(distanceStdevFirst);
-        distanceStdevSecond = Math.sqrt(distanceStdevSecond);
-        distanceCorr /= Math.sqrt(distanceStdevFirst * distanceStdevSecond);
-        return (float) distanceCorr;
+        return rowSums;
     }
 
     public static float correlation(DataSet dset, float[] first, float[] second)
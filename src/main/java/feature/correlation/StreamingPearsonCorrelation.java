@@ -0,0 +1,245 @@
+/**
+* Hub Miner: a hubness-aware machine learning experimentation library.
+* Copyright (C) 2014  Nenad Tomasev. Email: nenad.tomasev at gmail.com
+* 
+* This program is free software: you can redistribute it and/or modify it under
+* the terms of the GNU General Public License as published by the Free Software
+* Foundation, either version 3 of the License, or (at your option) any later
+* version.
+* 
+* This program is distributed in the hope that it will be useful, but WITHOUT
+* ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+* FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License along with
+* this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+package feature.correlation;
+
+import data.representation.util.DataMineConstants;
+
+/**
+ * This class implements a streaming estimator of the Pearson correlation that
+ * keeps the running means and the centered second-order moments of the two
+ * variables. The estimators built on different chunks of the data can be
+ * merged, which allows for the correlation to be calculated in a single pass
+ * over the data and in parallel over data chunks. Pairs that contain
+ * unacceptable values are skipped.
+ *
+ * @author Nenad Tomasev <nenad.tomasev at gmail.com>
+ */
+public class StreamingPearsonCorrelation {
+
+    // The number of processed value pairs.
+    private long count = 0;
+    private double meanFirst = 0;
+    private double meanSecond = 0;
+    // Sums of squared deviations from the mean.
+    private double squareDevFirst = 0;
+    private double squareDevSecond = 0;
+    // Sum of products of deviations from the means.
+    private double coDeviation = 0;
+
+    /**
+     * @return Long that is the number of processed value pairs.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return Double that is the mean of the first variable.
+     */
+    public double getMeanFirst() {
+        return meanFirst;
+    }
+
+    /**
+     * @return Double that is the mean of the second variable.
+     */
+    public double getMeanSecond() {
+        return meanSecond;
+    }
+
+    /**
+     * @return Double that is the covariance between the two variables.
+     */
+    public double getCovariance() {
+        if (count == 0) {
+            return 0;
+        }
+        return coDeviation / count;
+    }
+
+    /**
+     * Updates the estimate with a new value pair.
+     *
+     * @param first Double that is the value of the first variable.
+     * @param second Double that is the value of the second variable.
+     */
+    public void add(double first, double second) {
+        if (!DataMineConstants.isAcceptableDouble(first)
+                || !DataMineConstants.isAcceptableDouble(second)) {
+            return;
+        }
+        count++;
+        double difFirst = first - meanFirst;
+        double difSecond = second - meanSecond;
+        meanFirst += difFirst / count;
+        meanSecond += difSecond / count;
+        // The updates use the deviation from the old mean for one variable
+        // and from the new mean for the other, as in Welford's method.
+        squareDevFirst += difFirst * (first - meanFirst);
+        squareDevSecond += difSecond * (second - meanSecond);
+        coDeviation += difFirst * (second - meanSecond);
+    }
+
+    /**
+     * Updates the estimate with a range of value pairs.
+     *
+     * @param first Float value array.
+     * @param second Float value array.
+     * @param startIndex Integer that is the first index, inclusive.
+     * @param endIndex Integer that is the last index, exclusive.
+     */
+    public void add(float[] first, float[] second, int startIndex,
+            int endIndex) {
+        for (int i = startIndex; i < endIndex; i++) {
+            add(first[i], second[i]);
+        }
+    }
+
+    /**
+     * Updates the estimate with a range of value pairs.
+     *
+     * @param first Double value array.
+     * @param second Double value array.
+     * @param startIndex Integer that is the first index, inclusive.
+     * @param endIndex Integer that is the last index, exclusive.
+     */
+    public void add(double[] first, double[] second, int startIndex,
+            int endIndex) {
+        for (int i = startIndex; i < endIndex; i++) {
+            add(first[i], second[i]);
+        }
+    }
+
+    /**
+     * Merges the estimate obtained on another chunk of the data into this
+     * estimate.
+     *
+     * @param other StreamingPearsonCorrelation estimate to merge.
+     */
+    public void merge(StreamingPearsonCorrelation other) {
+        if (other == null || other.count == 0) {
+            return;
+        }
+        if (count == 0) {
+            count = other.count;
+            meanFirst = other.meanFirst;
+            meanSecond = other.meanSecond;
+            squareDevFirst = other.squareDevFirst;
+            squareDevSecond = other.squareDevSecond;
+            coDeviation = other.coDeviation;
+            return;
+        }
+        double total = count + other.count;
+        double difFirst = other.meanFirst - meanFirst;
+        double difSecond = other.meanSecond - meanSecond;
+        double factor = (double) count * (double) other.count / total;
+        squareDevFirst += other.squareDevFirst + difFirst * difFirst * factor;
+        squareDevSecond += other.squareDevSecond
+                + difSecond * difSecond * factor;
+        coDeviation += other.coDeviation + difFirst * difSecond * factor;
+        meanFirst += difFirst * other.count / total;
+        meanSecond += difSecond * other.count / total;
+        count += other.count;
+    }
+
+    /**
+     * @return Float that is the Pearson correlation between the processed
+     * value arrays. It ranges from -1 to +1.
+     */
+    public float getCorrelation() {
+        if (squareDevFirst <= 0 || squareDevSecond <= 0) {
+            return 0;
+        }
+        return (float) (coDeviation / Math.sqrt(squareDevFirst
+                * squareDevSecond));
+    }
+
+    /**
+     * Calculates the Pearson correlation between the two value arrays by
+     * processing the data chunks in parallel and merging the estimates.
+     *
+     * @param first Float value array.
+     * @param second Float value array.
+     * @param numThreads Integer that is the number of threads to use.
+     * @return Float that is the Pearson correlation between the two value
+     * arrays. It ranges from -1 to +1.
+     */
+    public static float correlationMultThr(float[] first, float[] second,
+            int numThreads) {
+        if (first == null || second == null || first.length != second.length
+                || first.length == 0) {
+            return 0;
+        }
+        numThreads = Math.max(1, Math.min(numThreads, first.length));
+        int chunkSize = first.length / numThreads;
+        Thread[] threads = new Thread[numThreads];
+        ChunkEstimator[] estimators = new ChunkEstimator[numThreads];
+        for (int tIndex = 0; tIndex < numThreads; tIndex++) {
+            int endIndex = tIndex == numThreads - 1 ? first.length
+                    : (tIndex + 1) * chunkSize;
+            estimators[tIndex] = new ChunkEstimator(first, second,
+                    tIndex * chunkSize, endIndex);
+            threads[tIndex] = new Thread(estimators[tIndex]);
+            threads[tIndex].start();
+        }
+        StreamingPearsonCorrelation result =
+                new StreamingPearsonCorrelation();
+        for (int tIndex = 0; tIndex < numThreads; tIndex++) {
+            try {
+                threads[tIndex].join();
+            } catch (Throwable t) {
+                System.err.println(t.getMessage());
+            }
+            result.merge(estimators[tIndex].estimate);
+        }
+        return result.getCorrelation();
+    }
+
+    /**
+     * This class estimates the moments on a chunk of the data.
+     */
+    static class ChunkEstimator implements Runnable {
+
+        private float[] first;
+        private float[] second;
+        private int startIndex;
+        private int endIndex;
+        private StreamingPearsonCorrelation estimate =
+                new StreamingPearsonCorrelation();
+
+        /**
+         * Initialization.
+         *
+         * @param first Float value array.
+         * @param second Float value array.
+         * @param startIndex Integer that is the first index, inclusive.
+         * @param endIndex Integer that is the last index, exclusive.
+         */
+        public ChunkEstimator(float[] first, float[] second, int startIndex,
+                int endIndex) {
+            this.first = first;
+            this.second = second;
+            this.startIndex = startIndex;
+            this.endIndex = endIndex;
+        }
+
+        @Override
+        public void run() {
+            estimate.add(first, second, startIndex, endIndex);
+        }
+    }
+}
@@ -691,6 +691,21 @@ public abstract class DiscreteAttributeEvaluator {
         return nominalEvaluations;
     }
 
+    /**
+     * @param attType Feature type, as in DataMineConstants.
+     * @param evaluations Float array of feature evaluations to set for the
+     * specified feature type.
+     */
+    protected void setEvaluations(int attType, float[] evaluations) {
+        if (attType == DataMineConstants.INTEGER) {
+            intEvaluations = evaluations;
+        } else if (attType == DataMineConstants.FLOAT) {
+            floatEvaluations = evaluations;
+        } else {
+            nominalEvaluations = evaluations;
+        }
+    }
+
     /**
      * Evaluate all features of all feature types.
      */
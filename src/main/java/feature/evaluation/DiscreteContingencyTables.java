@@ -0,0 +1,718 @@
+/**
+* Hub Miner: a hubness-aware machine learning experimentation library.
+* Copyright (C) 2014  Nenad Tomasev. Email: nenad.tomasev at gmail.com
+* 
+* This program is free software: you can redistribute it and/or modify it under
+* the terms of the GNU General Public License as published by the Free Software
+* Foundation, either version 3 of the License, or (at your option) any later
+* version.
+* 
+* This program is distributed in the hope that it will be useful, but WITHOUT
+* ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+* FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License along with
+* this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+package feature.evaluation;
+
+import data.representation.discrete.DiscretizedDataInstance;
+import data.representation.discrete.DiscretizedDataSet;
+import data.representation.util.DataMineConstants;
+import java.util.ArrayList;
+import java.util.Arrays;
+import util.BasicMathUtil;
+
+/**
+ * This class builds the attribute-value-class contingency tables for all the
+ * features of a discretized data set in a single pass over the data, so that
+ * the information-theoretic feature evaluation measures do not need to
+ * generate value splits and re-scan the data for each feature separately. The
+ * features are split into blocks that are counted in parallel. In the sparse
+ * mode, the most frequent value of each feature is estimated on a sample and
+ * the other entries of each instance are extracted once into a compact index.
+ * The tables are then counted from the index entries only and the counts of
+ * the most frequent values are obtained from the class totals, which speeds up
+ * the counting for sparse features like word counts, especially when the
+ * tables are calculated repeatedly on data subsets. Info,
+ * information gain, gain ratio and chi-square are calculated from the tables.
+ *
+ * @author Nenad Tomasev <nenad.tomasev at gmail.com>
+ */
+public class DiscreteContingencyTables {
+
+    // The sample size for estimating the most frequent feature values in the
+    // sparse mode.
+    private static final int SPARSE_SAMPLE_SIZE = 1000;
+    private DiscretizedDataSet discDSet;
+    private int numClasses;
+    private boolean sparse = false;
+    private int numThreads = Runtime.getRuntime().availableProcessors();
+    // The analyzed instance indexes, or null if the whole data is analyzed.
+    private int[] subset;
+    // Number of analyzed instances, including the unlabeled ones.
+    private int totalSize;
+    // Number of analyzed instances with non-negative labels.
+    private int labeledSize;
+    private int[] classCounts;
+    // Number of values of each feature, for each feature type.
+    private int[][] numValues;
+    // Class-conditional value counts, for each feature type and feature. The
+    // table of a feature is given as [value * numClasses + class].
+    private int[][][] classValueCounts;
+    // The total value counts, including the unlabeled instances.
+    private int[][][] valueCounts;
+    // The most frequent values of the features in the sparse mode.
+    private int[][] baseValues;
+    // The entries that differ from the most frequent values in the sparse
+    // mode, for each feature type and instance, given as sorted feature
+    // indexes and the corresponding values. The index is built on the whole
+    // data and re-used for all later table calculations.
+    private int[][][] sparseFeatures;
+    private int[][][] sparseValues;
+    // The data size that the sparse index was built for.
+    private int indexedSize = -1;
+
+    /**
+     * Initialization.
+     *
+     * @param discDSet DiscretizedDataSet to analyze.
+     * @param numClasses Integer that is the number of classes in the data.
+     */
+    public DiscreteContingencyTables(DiscretizedDataSet discDSet,
+            int numClasses) {
+        this.discDSet = discDSet;
+        this.numClasses = numClasses;
+    }
+
+    /**
+     * @param sparse Boolean flag indicating whether to use the sparse mode.
+     */
+    public void setSparse(boolean sparse) {
+        this.sparse = sparse;
+    }
+
+    /**
+     * @param numThreads Integer that is the number of threads to use.
+     */
+    public void setNumThreads(int numThreads) {
+        this.numThreads = Math.max(1, numThreads);
+    }
+
+    /**
+     * @return Integer that is the number of analyzed instances.
+     */
+    public int getTotalSize() {
+        return totalSize;
+    }
+
+    /**
+     * @return int[] of class counts among the analyzed instances.
+     */
+    public int[] getClassCounts() {
+        return classCounts;
+    }
+
+    /**
+     * @param attType Integer that is the feature type, as in DataMineConstants.
+     * @return Integer that is the number of features of the given type.
+     */
+    public int getNumFeatures(int attType) {
+        if (numValues == null || numValues[attType] == null) {
+            return 0;
+        }
+        return numValues[attType].length;
+    }
+
+    /**
+     * @param attType Integer that is the feature type, as in DataMineConstants.
+     * @param attIndex Index of the feature in its feature group.
+     * @return int[] that is the class-conditional value count table of the
+     * feature, given as [value * numClasses + class].
+     */
+    public int[] getClassValueCounts(int attType, int attIndex) {
+        return classValueCounts[attType][attIndex];
+    }
+
+    /**
+     * @param attType Integer that is the feature type, as in DataMineConstants.
+     * @param attIndex Index of the feature in its feature group.
+     * @return int[] of the value counts of the feature, including the
+     * unlabeled instances.
+     */
+    public int[] getValueCounts(int attType, int attIndex) {
+        return valueCounts[attType][attIndex];
+    }
+
+    /**
+     * Builds the contingency tables on the whole data.
+     */
+    public void calculateTables() {
+        subset = null;
+        buildTables();
+    }
+
+    /**
+     * Builds the contingency tables on a subset of the data.
+     *
+     * @param subsetList ArrayList<Integer> of indexes of the instances to
+     * analyze.
+     */
+    public void calculateTables(ArrayList<Integer> subsetList) {
+        subset = new int[subsetList.size()];
+        for (int i = 0; i < subset.length; i++) {
+            subset[i] = subsetList.get(i);
+        }
+        buildTables();
+    }
+
+    /**
+     * @param i Integer that is the index in the analyzed instance list.
+     * @return DiscretizedDataInstance that is the analyzed instance.
+     */
+    private DiscretizedDataInstance getAnalyzedInstance(int i) {
+        return subset == null ? discDSet.data.get(i)
+                : discDSet.data.get(subset[i]);
+    }
+
+    /**
+     * Builds the contingency tables for all the features.
+     */
+    private void buildTables() {
+        totalSize = subset == null ? discDSet.size() : subset.length;
+        numValues = new int[3][];
+        int[][] intDivisions = discDSet.getIntIntervalDivisions();
+        float[][] floatDivisions = discDSet.getFloatIntervalDivisions();
+        ArrayList<String>[] vocabularies = discDSet.getNominalVocabularies();
+        if (intDivisions != null) {
+            numValues[DataMineConstants.INTEGER] =
+                    new int[intDivisions.length];
+            for (int d = 0; d < intDivisions.length; d++) {
+                // The last bucket delimiter is the maximum value.
+                numValues[DataMineConstants.INTEGER][d] =
+                        Math.max(intDivisions[d].length - 1, 1);
+            }
+        }
+        if (floatDivisions != null) {
+            numValues[DataMineConstants.FLOAT] =
+                    new int[floatDivisions.length];
+            for (int d = 0; d < floatDivisions.length; d++) {
+                numValues[DataMineConstants.FLOAT][d] =
+                        Math.max(floatDivisions[d].length - 1, 1);
+            }
+        }
+        if (vocabularies != null) {
+            numValues[DataMineConstants.NOMINAL] =
+                    new int[vocabularies.length];
+            for (int d = 0; d < vocabularies.length; d++) {
+                numValues[DataMineConstants.NOMINAL][d] =
+                        Math.max(vocabularies[d].size(), 1);
+            }
+        }
+        // Class totals.
+        classCounts = new int[numClasses];
+        labeledSize = 0;
+        int[] labels = new int[totalSize];
+        for (int i = 0; i < totalSize; i++) {
+            labels[i] = getAnalyzedInstance(i).getCategory();
+            if (labels[i] >= 0) {
+                classCounts[labels[i]]++;
+                labeledSize++;
+            }
+        }
+        classValueCounts = new int[3][][];
+        valueCounts = new int[3][][];
+        if (sparse && indexedSize != discDSet.size()) {
+            buildSparseIndex();
+        }
+        for (int attType = 0; attType < 3; attType++) {
+            if (numValues[attType] == null) {
+                continue;
+            }
+            int numFeatures = numValues[attType].length;
+            classValueCounts[attType] = new int[numFeatures][];
+            valueCounts[attType] = new int[numFeatures][];
+            for (int d = 0; d < numFeatures; d++) {
+                classValueCounts[attType][d] =
+                        new int[numValues[attType][d] * numClasses];
+                valueCounts[attType][d] = new int[numValues[attType][d]];
+            }
+            if (numFeatures == 0 || totalSize == 0) {
+                continue;
+            }
+            // The features are split into blocks that are counted in
+            // parallel, so that each table is only written by one thread.
+            int threadCount = Math.min(numThreads, numFeatures);
+            int blockSize = numFeatures / threadCount;
+            Thread[] threads = new Thread[threadCount];
+            for (int tIndex = 0; tIndex < threadCount - 1; tIndex++) {
+                threads[tIndex] = new Thread(new FeatureBlockCounter(attType,
+                        tIndex * blockSize, (tIndex + 1) * blockSize - 1,
+                        labels));
+                threads[tIndex].start();
+            }
+            threads[threadCount - 1] = new Thread(new FeatureBlockCounter(
+                    attType, (threadCount - 1) * blockSize, numFeatures - 1,
+                    labels));
+            threads[threadCount - 1].start();
+            for (int tIndex = 0; tIndex < threadCount; tIndex++) {
+                if (threads[tIndex] != null) {
+                    try {
+                        threads[tIndex].join();
+                    } catch (Throwable t) {
+                        System.err.println(t.getMessage());
+                    }
+                }
+            }
+            if (sparse) {
+                // Obtain the counts of the skipped most frequent values.
+                for (int d = 0; d < numFeatures; d++) {
+                    restoreBaseCounts(attType, d, labels);
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds the sparse index of the entries that differ from the most frequent
+     * feature values, in a single pass over the whole data. The instances are
+     * split into blocks that are indexed in parallel.
+     */
+    private void buildSparseIndex() {
+        int dataSize = discDSet.size();
+        baseValues = new int[3][];
+        sparseFeatures = new int[3][][];
+        sparseValues = new int[3][][];
+        for (int attType = 0; attType < 3; attType++) {
+            if (numValues[attType] == null
+                    || numValues[attType].length == 0) {
+                continue;
+            }
+            baseValues[attType] = estimateBaseValues(attType);
+            sparseFeatures[attType] = new int[dataSize][];
+            sparseValues[attType] = new int[dataSize][];
+        }
+        if (dataSize > 0) {
+            int threadCount = Math.min(numThreads, dataSize);
+            int blockSize = dataSize / threadCount;
+            Thread[] threads = new Thread[threadCount];
+            for (int tIndex = 0; tIndex < threadCount - 1; tIndex++) {
+                threads[tIndex] = new Thread(new SparseIndexBuilder(
+                        tIndex * blockSize, (tIndex + 1) * blockSize - 1));
+                threads[tIndex].start();
+            }
+            threads[threadCount - 1] = new Thread(new SparseIndexBuilder(
+                    (threadCount - 1) * blockSize, dataSize - 1));
+            threads[threadCount - 1].start();
+            for (int tIndex = 0; tIndex < threadCount; tIndex++) {
+                if (threads[tIndex] != null) {
+                    try {
+                        threads[tIndex].join();
+                    } catch (Throwable t) {
+                        System.err.println(t.getMessage());
+                    }
+                }
+            }
+        }
+        indexedSize = dataSize;
+    }
+
+    /**
+     * This class extracts the entries that differ from the most frequent
+     * feature values for a block of instances.
+     */
+    class SparseIndexBuilder implements Runnable {
+
+        private int startIndex;
+        private int endIndex;
+
+        /**
+         * Initialization.
+         *
+         * @param startIndex Integer that is the first instance index,
+         * inclusive.
+         * @param endIndex Integer that is the last instance index, inclusive.
+         */
+        public SparseIndexBuilder(int startIndex, int endIndex) {
+            this.startIndex = startIndex;
+            this.endIndex = endIndex;
+        }
+
+        @Override
+        public void run() {
+            for (int attType = 0; attType < 3; attType++) {
+                int[] bases = baseValues[attType];
+                if (bases == null) {
+                    continue;
+                }
+                for (int i = startIndex; i <= endIndex; i++) {
+                    int[] values = getValues(discDSet.data.get(i), attType);
+                    int numEntries = 0;
+                    for (int d = 0; d < bases.length; d++) {
+                        if (values[d] != bases[d]) {
+                            numEntries++;
+                        }
+                    }
+                    int[] features = new int[numEntries];
+                    int[] entryValues = new int[numEntries];
+                    numEntries = 0;
+                    for (int d = 0; d < bases.length; d++) {
+                        if (values[d] != bases[d]) {
+                            features[numEntries] = d;
+                            entryValues[numEntries++] = values[d];
+                        }
+                    }
+                    sparseFeatures[attType][i] = features;
+                    sparseValues[attType][i] = entryValues;
+                }
+            }
+        }
+    }
+
+    /**
+     * Estimates the most frequent value of each feature on a data sample.
+     *
+     * @param attType Integer that is the feature type, as in DataMineConstants.
+     * @return int[] of the most frequent values of the features.
+     */
+    private int[] estimateBaseValues(int attType) {
+        int numFeatures = numValues[attType].length;
+        int[] bases = new int[numFeatures];
+        int sampleSize = Math.min(discDSet.size(), SPARSE_SAMPLE_SIZE);
+        for (int d = 0; d < numFeatures; d++) {
+            int[] sampleCounts = new int[numValues[attType][d]];
+            for (int i = 0; i < sampleSize; i++) {
+                sampleCounts[getValue(discDSet.data.get(i), attType, d)]++;
+            }
+            for (int v = 1; v < sampleCounts.length; v++) {
+                if (sampleCounts[v] > sampleCounts[bases[d]]) {
+                    bases[d] = v;
+                }
+            }
+        }
+        return bases;
+    }
+
+    /**
+     * Calculates the counts of the most frequent value of a feature as the
+     * difference between the class totals and the counts of other values.
+     *
+     * @param attType Integer that is the feature type, as in DataMineConstants.
+     * @param attIndex Index of the feature in its feature group.
+     * @param labels int[] of the labels of the analyzed instances.
+     */
+    private void restoreBaseCounts(int attType, int attIndex, int[] labels) {
+        int base = baseValues[attType][attIndex];
+        int[] table = classValueCounts[attType][attIndex];
+        int[] sizes = valueCounts[attType][attIndex];
+        int otherSize = 0;
+        for (int v = 0; v < sizes.length; v++) {
+            if (v != base) {
+                otherSize += sizes[v];
+            }
+        }
+        sizes[base] = totalSize - otherSize;
+        for (int c = 0; c < numClasses; c++) {
+            int otherCount = 0;
+            for (int v = 0; v < sizes.length; v++) {
+                if (v != base) {
+                    otherCount += table[v * numClasses + c];
+                }
+            }
+            table[base * numClasses + c] = classCounts[c] - otherCount;
+        }
+    }
+
+    /**
+     * @param instance DiscretizedDataInstance object.
+     * @param attType Integer that is the feature type, as in DataMineConstants.
+     * @param attIndex Index of the feature in its feature group.
+     * @return Integer that is the discretized feature value.
+     */
+    private static int getValue(DiscretizedDataInstance instance, int attType,
+            int attIndex) {
+        return getValues(instance, attType)[attIndex];
+    }
+
+    /**
+     * @param instance DiscretizedDataInstance object.
+     * @param attType Integer that is the feature type, as in DataMineConstants.
+     * @return int[] of the discretized feature values of the given type.
+     */
+    private static int[] getValues(DiscretizedDataInstance instance,
+            int attType) {
+        if (attType == DataMineConstants.INTEGER) {
+            return instance.integerIndexes;
+        } else if (attType == DataMineConstants.FLOAT) {
+            return instance.floatIndexes;
+        } else {
+            return instance.nominalIndexes;
+        }
+    }
+
+    /**
+     * This class counts the feature values for a block of features.
+     */
+    class FeatureBlockCounter implements Runnable {
+
+        private int attType;
+        private int startFeature;
+        private int endFeature;
+        private int[] labels;
+
+        /**
+         * Initialization.
+         *
+         * @param attType Integer that is the feature type, as in
+         * DataMineConstants.
+         * @param startFeature Integer that is the first feature index,
+         * inclusive.
+         * @param endFeature Integer that is the last feature index, inclusive.
+         * @param labels int[] of the labels of the analyzed instances.
+         */
+        public FeatureBlockCounter(int attType, int startFeature,
+                int endFeature, int[] labels) {
+            this.attType = attType;
+            this.startFeature = startFeature;
+            this.endFeature = endFeature;
+            this.labels = labels;
+        }
+
+        @Override
+        public void run() {
+            if (sparse) {
+                countSparse();
+                return;
+            }
+            int[][] tables = classValueCounts[attType];
+            int[][] sizes = valueCounts[attType];
+            for (int i = 0; i < totalSize; i++) {
+                int[] values = getValues(getAnalyzedInstance(i), attType);
+                int label = labels[i];
+                for (int d = startFeature; d <= endFeature; d++) {
+                    int value = values[d];
+                    sizes[d][value]++;
+                    if (label >= 0) {
+                        tables[d][value * numClasses + label]++;
+                    }
+                }
+            }
+        }
+
+        /**
+         * Counts only the indexed entries that differ from the most frequent
+         * feature values.
+         */
+        private void countSparse() {
+            int[][] tables = classValueCounts[attType];
+            int[][] sizes = valueCounts[attType];
+            int[][] instanceFeatures = sparseFeatures[attType];
+            int[][] instanceValues = sparseValues[attType];
+            for (int i = 0; i < totalSize; i++) {
+                int dataIndex = subset == null ? i : subset[i];
+                int[] features = instanceFeatures[dataIndex];
+                int[] values = instanceValues[dataIndex];
+                int label = labels[i];
+                int pos = Arrays.binarySearch(features, startFeature);
+                if (pos < 0) {
+                    pos = -pos - 1;
+                }
+                for (; pos < features.length && features[pos] <= endFeature;
+                        pos++) {
+                    int d = features[pos];
+                    sizes[d][values[pos]]++;
+                    if (label >= 0) {
+                        tables[d][values[pos] * numClasses + label]++;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Float value that is the class entropy of the analyzed data.
+     */
+    public float getPriorEntropy() {
+        float priorEntropy = 0;
+        float factor;
+        for (int c = 0; c < numClasses; c++) {
+            factor = (float) classCounts[c] / (float) labeledSize;
+            if (classCounts[c] > 0) {
+                priorEntropy -= factor * BasicMathUtil.log2(factor);
+            }
+        }
+        return priorEntropy;
+    }
+
+    /**
+     * Calculates the information content of the value split of a feature.
+     *
+     * @param attType Integer that is the feature type, as in DataMineConstants.
+     * @param attIndex Index of the feature in its feature group.
+     * @return Float value that is the information content of the split.
+     */
+    public float getInfo(int attType, int attIndex) {
+        int[] table = classValueCounts[attType][attIndex];
+        int[] sizes = valueCounts[attType][attIndex];
+        float info = 0;
+        float currSize;
+        float currEntropy;
+        float factor;
+        for (int v = 0; v < sizes.length; v++) {
+            if (sizes[v] == 0) {
+                continue;
+            }
+            currSize = 0;
+            for (int c = 0; c < numClasses; c++) {
+                currSize += table[v * numClasses + c];
+            }
+            currSize = Math.max(currSize, 1);
+            currEntropy = 0;
+            for (int c = 0; c < numClasses; c++) {
+                factor = (float) table[v * numClasses + c] / currSize;
+                if (factor > 0) {
+                    currEntropy -= factor * BasicMathUtil.log2(factor);
+                }
+            }
+            info += ((float) sizes[v] / (float) totalSize) * currEntropy;
+        }
+        return info;
+    }
+
+    /**
+     * @param attType Integer that is the feature type, as in DataMineConstants.
+     * @param attIndex Index of the feature in its feature group.
+     * @return Float value that is the information gain of the feature.
+     */
+    public float getInfoGain(int attType, int attIndex) {
+        return getPriorEntropy() - getInfo(attType, attIndex);
+    }
+
+    /**
+     * @param attType Integer that is the feature type, as in DataMineConstants.
+     * @param attIndex Index of the feature in its feature group.
+     * @return Float value that is the gain ratio of the feature.
+     */
+    public float getGainRatio(int attType, int attIndex) {
+        return getGainRatio(attType, attIndex, getPriorEntropy());
+    }
+
+    /**
+     * @param attType Integer that is the feature type, as in DataMineConstants.
+     * @param attIndex Index of the feature in its feature group.
+     * @param priorEntropy Float value that is the class entropy of the data.
+     * @return Float value that is the gain ratio of the feature.
+     */
+    private float getGainRatio(int attType, int attIndex,
+            float priorEntropy) {
+        return (priorEntropy - getInfo(attType, attIndex))
+                / getSplitEntropy(attType, attIndex);
+    }
+
+    /**
+     * Calculates the entropy of the raw value split of a feature, by looking
+     * at the value group sizes.
+     *
+     * @param attType Integer that is the feature type, as in DataMineConstants.
+     * @param attIndex Index of the feature in its feature group.
+     * @return Float value that is the raw entropy of the split.
+     */
+    public float getSplitEntropy(int attType, int attIndex) {
+        int[] sizes = valueCounts[attType][attIndex];
+        float splitEntropy = 0;
+        float factor;
+        for (int v = 0; v < sizes.length; v++) {
+            if (sizes[v] > 0) {
+                factor = (float) sizes[v] / (float) totalSize;
+                splitEntropy -= factor * BasicMathUtil.log2(factor);
+            }
+        }
+        return splitEntropy;
+    }
+
+    /**
+     * @param attType Integer that is the feature type, as in DataMineConstants.
+     * @param attIndex Index of the feature in its feature group.
+     * @return Float value that is the chi-square statistic of the dependency
+     * between the feature and the class.
+     */
+    public float getChiSquare(int attType, int attIndex) {
+        int[] table = classValueCounts[attType][attIndex];
+        int numFeatureValues = numValues[attType][attIndex];
+        double chiSquare = 0;
+        double expected;
+        double diff;
+        for (int v = 0; v < numFeatureValues; v++) {
+            int valueLabeled = 0;
+            for (int c = 0; c < numClasses; c++) {
+                valueLabeled += table[v * numClasses + c];
+            }
+            if (valueLabeled == 0) {
+                continue;
+            }
+            for (int c = 0; c < numClasses; c++) {
+                if (classCounts[c] == 0) {
+                    continue;
+                }
+                expected = (double) valueLabeled * (double) classCounts[c]
+                        / (double) labeledSize;
+                diff = table[v * numClasses + c] - expected;
+                chiSquare += diff * diff / expected;
+            }
+        }
+        return (float) chiSquare;
+    }
+
+    /**
+     * @param attType Integer that is the feature type, as in DataMineConstants.
+     * @return float[] of information content values for all the features of
+     * the given type.
+     */
+    public float[] getInfoAll(int attType) {
+        float[] evaluations = new float[getNumFeatures(attType)];
+        for (int d = 0; d < evaluations.length; d++) {
+            evaluations[d] = getInfo(attType, d);
+        }
+        return evaluations;
+    }
+
+    /**
+     * @param attType Integer that is the feature type, as in DataMineConstants.
+     * @return float[] of information gains for all the features of the given
+     * type.
+     */
+    public float[] getInfoGainAll(int attType) {
+        float priorEntropy = getPriorEntropy();
+        float[] evaluations = new float[getNumFeatures(attType)];
+        for (int d = 0; d < evaluations.length; d++) {
+            evaluations[d] = priorEntropy - getInfo(attType, d);
+        }
+        return evaluations;
+    }
+
+    /**
+     * @param attType Integer that is the feature type, as in DataMineConstants.
+     * @return float[] of gain ratios for all the features of the given type.
+     */
+    public float[] getGainRatioAll(int attType) {
+        float priorEntropy = getPriorEntropy();
+        float[] evaluations = new float[getNumFeatures(attType)];
+        for (int d = 0; d < evaluations.length; d++) {
+            evaluations[d] = getGainRatio(attType, d, priorEntropy);
+        }
+        return evaluations;
+    }
+
+    /**
+     * @param attType Integer that is the feature type, as in DataMineConstants.
+     * @return float[] of chi-square statistics for all the features of the
+     * given type.
+     */
+    public float[] getChiSquareAll(int attType) {
+        float[] evaluations = new float[getNumFeatures(attType)];
+        for (int d = 0; d < evaluations.length; d++) {
+            evaluations[d] = getChiSquare(attType, d);
+        }
+        return evaluations;
+    }
+}
@@ -28,6 +28,7 @@ import util.BasicMathUtil;
 public class GainRatio extends SplitAssesment {
 
     private InfoGain infoGainCalculator = null;
+    private int numClasses = 2;
 
     /**
      * @param infoGainCalculator InformationGainCalculator object that
@@ -44,6 +45,7 @@ public class GainRatio extends SplitAssesment {
      */
     public GainRatio(DiscretizedDataSet discDSet, int numClasses) {
         super(discDSet);
+        this.numClasses = numClasses;
         infoGainCalculator = new InfoGain(discDSet, numClasses);
     }
 
@@ -75,6 +77,26 @@ public class GainRatio extends SplitAssesment {
         return splitEntropy;
     }
 
+    /**
+     * Calculates the gain ratio of all features of the specified type on the
+     * whole data, from the attribute-value-class contingency tables.
+     *
+     * @param attType Feature type, as in DataMineConstants.
+     * @return Float array of gain ratios of the features.
+     */
+    public float[] assesAllFeaturesOnWhole(int attType) {
+        DiscreteContingencyTables tables = new DiscreteContingencyTables(
+                getDataContext(), numClasses);
+        tables.calculateTables();
+        float[] gainRatios = infoGainCalculator.assesAllFeaturesOnWhole(
+                tables, attType);
+        for (int i = 0; i < gainRatios.length; i++) {
+            // Normalize by the raw entropy of the value split.
+            gainRatios[i] /= tables.getSplitEntropy(attType, i);
+        }
+        return gainRatios;
+    }
+
     @Override
     public float assesSplitOnWhole(ArrayList<Integer>[] split) {
         float infoGainValue = infoGainCalculator.assesSplitOnWhole(split);
@@ -18,6 +18,7 @@ package feature.evaluation;
 
 import data.representation.DataInstance;
 import data.representation.discrete.DiscretizedDataSet;
+import data.representation.util.DataMineConstants;
 import java.util.ArrayList;
 import util.BasicMathUtil;
 
@@ -32,6 +33,9 @@ public class Info extends DiscreteAttributeEvaluator {
     private DiscreteAttributeValueSplitter valueSplitter = null;
     // Defaults to the binary case, can be specified in the constructor.
     private int numClasses = 2;
+    // Whether to use the sparse mode when building the contingency tables.
+    private boolean sparse = false;
+    private int numThreads = Runtime.getRuntime().availableProcessors();
 
     /**
      * @param valueSplitter DiscreteAttributeValueSplitter object for value
@@ -77,6 +81,72 @@ public class Info extends DiscreteAttributeEvaluator {
         return numClasses;
     }
 
+    /**
+     * @param sparse Boolean flag indicating whether the features are sparse,
+     * in which case the most frequent feature values are not explicitly
+     * counted when evaluating all features at once.
+     */
+    public void setSparse(boolean sparse) {
+        this.sparse = sparse;
+    }
+
+    /**
+     * @param numThreads Integer that is the number of threads to use when
+     * evaluating all features at once.
+     */
+    public void setNumThreads(int numThreads) {
+        this.numThreads = numThreads;
+    }
+
+    /**
+     * Builds the contingency tables for all features on the whole data.
+     *
+     * @return DiscreteContingencyTables object for the current data context.
+     */
+    private DiscreteContingencyTables buildContingencyTables() {
+        DiscreteContingencyTables tables = new DiscreteContingencyTables(
+                valueSplitter.getDataContext(), numClasses);
+        tables.setSparse(sparse);
+        tables.setNumThreads(numThreads);
+        tables.calculateTables();
+        return tables;
+    }
+
+    @Override
+    public void evaluateAll() {
+        DiscretizedDataSet discDSet = valueSplitter.getDataContext();
+        setDiscretizedDataSet(discDSet);
+        if (discDSet == null || discDSet.size() == 0) {
+            return;
+        }
+        // All feature types are evaluated from a single set of tables.
+        DiscreteContingencyTables tables = buildContingencyTables();
+        for (int attType = DataMineConstants.INTEGER;
+                attType <= DataMineConstants.NOMINAL; attType++) {
+            if (tables.getNumFeatures(attType) > 0) {
+                setEvaluations(attType, tables.getInfoAll(attType));
+            } else {
+                setEvaluations(attType, null);
+            }
+        }
+    }
+
+    @Override
+    public float[] evaluateAll(int attType) {
+        DiscretizedDataSet discDSet = valueSplitter.getDataContext();
+        setDiscretizedDataSet(discDSet);
+        if (discDSet == null || discDSet.size() == 0) {
+            return null;
+        }
+        DiscreteContingencyTables tables = buildContingencyTables();
+        if (tables.getNumFeatures(attType) == 0) {
+            return null;
+        }
+        float[] evaluations = tables.getInfoAll(attType);
+        setEvaluations(attType, evaluations);
+        return evaluations;
+    }
+
     @Override
     public float evaluate(int attType, int index) {
         ArrayList<Integer>[] split = valueSplitter.
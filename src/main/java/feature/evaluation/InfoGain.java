@@ -62,6 +62,40 @@ public class InfoGain extends SplitAssesment {
         this.currSubsetEntropy = currSubsetEntropy;
     }
 
+    /**
+     * Calculates the information gain of all features of the specified type
+     * on the whole data, from the attribute-value-class contingency tables.
+     *
+     * @param attType Feature type, as in DataMineConstants.
+     * @return Float array of information gains of the features.
+     */
+    public float[] assesAllFeaturesOnWhole(int attType) {
+        DiscreteContingencyTables tables = new DiscreteContingencyTables(
+                getDataContext(), numClasses);
+        tables.calculateTables();
+        return assesAllFeaturesOnWhole(tables, attType);
+    }
+
+    /**
+     * Calculates the information gain of all features of the specified type
+     * on the whole data, from the attribute-value-class contingency tables.
+     *
+     * @param tables DiscreteContingencyTables built on the whole data.
+     * @param attType Feature type, as in DataMineConstants.
+     * @return Float array of information gains of the features.
+     */
+    public float[] assesAllFeaturesOnWhole(DiscreteContingencyTables tables,
+            int attType) {
+        if (priorEntropy == -1) {
+            priorEntropy = tables.getPriorEntropy();
+        }
+        float[] infoValues = tables.getInfoAll(attType);
+        for (int i = 0; i < infoValues.length; i++) {
+            infoValues[i] = priorEntropy - infoValues[i];
+        }
+        return infoValues;
+    }
+
     @Override
     public float assesSplitOnWhole(ArrayList<Integer>[] split) {
         if (split == null || split.length == 0) {
@@ -0,0 +1,319 @@
+/**
+* Hub Miner: a hubness-aware machine learning experimentation library.
+* Copyright (C) 2014  Nenad Tomasev. Email: nenad.tomasev at gmail.com
+* 
+* This program is free software: you can redistribute it and/or modify it under
+* the terms of the GNU General Public License as published by the Free Software
+* Foundation, either version 3 of the License, or (at your option) any later
+* version.
+* 
+* This program is distributed in the hope that it will be useful, but WITHOUT
+* ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+* FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License along with
+* this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+package graph.basic;
+
+import data.neighbors.NeighborSetFinder;
+import java.util.Arrays;
+
+/**
+ * This class represents a weighted graph in the compressed sparse row format.
+ * The arcs of vertex v are stored at positions offsets[v] to offsets[v + 1] in
+ * the target and the weight arrays, sorted by the target index. Undirected
+ * graphs are represented by storing both directions of each edge. Unlike the
+ * linked DMGraphEdge lists in DMGraph, this representation is compact and
+ * cache-friendly, so it is used for analyzing large kNN graphs.
+ *
+ * @author Nenad Tomasev <nenad.tomasev at gmail.com>
+ */
+public class CSRGraph {
+
+    private int numVertices;
+    private int[] offsets;
+    private int[] targets;
+    private float[] weights;
+
+    /**
+     * Initialization.
+     *
+     * @param numVertices Integer that is the number of vertices.
+     * @param offsets int[] of length numVertices + 1 that contains the row
+     * offsets.
+     * @param targets int[] of arc targets, sorted within each row.
+     * @param weights float[] of arc weights.
+     */
+    public CSRGraph(int numVertices, int[] offsets, int[] targets,
+            float[] weights) {
+        this.numVertices = numVertices;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.weights = weights;
+    }
+
+    /**
+     * Builds the graph from a list of arcs. Self-loops are removed and the
+     * duplicate arcs are merged, keeping the minimal weight.
+     *
+     * @param numVertices Integer that is the number of vertices.
+     * @param arcSources int[] of arc sources.
+     * @param arcTargets int[] of arc targets.
+     * @param arcWeights float[] of arc weights. If null, all weights are set
+     * to one.
+     * @param numArcs Integer that is the number of arcs in the arrays.
+     * @param symmetrize Boolean flag indicating whether to also insert the
+     * reverse arcs, which makes the graph undirected.
+     * @return CSRGraph that corresponds to the arcs.
+     */
+    public static CSRGraph fromArcs(int numVertices, int[] arcSources,
+            int[] arcTargets, float[] arcWeights, int numArcs,
+            boolean symmetrize) {
+        int totalArcs = symmetrize ? 2 * numArcs : numArcs;
+        // The arc list is sorted by a two-pass counting sort, first by the
+        // target and then stably by the source.
+        int[] counts = new int[numVertices + 1];
+        for (int a = 0; a < numArcs; a++) {
+            counts[arcTargets[a] + 1]++;
+            if (symmetrize) {
+                counts[arcSources[a] + 1]++;
+            }
+        }
+        for (int v = 0; v < numVertices; v++) {
+            counts[v + 1] += counts[v];
+        }
+        // Arc indexes above numArcs denote the reverse arcs.
+        int[] order = new int[totalArcs];
+        for (int a = 0; a < numArcs; a++) {
+            order[counts[arcTargets[a]]++] = a;
+            if (symmetrize) {
+                order[counts[arcSources[a]]++] = numArcs + a;
+            }
+        }
+        int[] offsets = new int[numVertices + 1];
+        for (int a = 0; a < numArcs; a++) {
+            offsets[arcSources[a] + 1]++;
+            if (symmetrize) {
+                offsets[arcTargets[a] + 1]++;
+            }
+        }
+        for (int v = 0; v < numVertices; v++) {
+            offsets[v + 1] += offsets[v];
+        }
+        int[] fillPositions = Arrays.copyOf(offsets, numVertices);
+        int[] targets = new int[totalArcs];
+        float[] weights = new float[totalArcs];
+        for (int i = 0; i < totalArcs; i++) {
+            int a = order[i];
+            int source;
+            int target;
+            if (a < numArcs) {
+                source = arcSources[a];
+                target = arcTargets[a];
+            } else {
+                a -= numArcs;
+                source = arcTargets[a];
+                target = arcSources[a];
+            }
+            int position = fillPositions[source]++;
+            targets[position] = target;
+            weights[position] = arcWeights != null ? arcWeights[a] : 1f;
+        }
+        // Remove the self-loops and merge the duplicates in place.
+        int writePosition = 0;
+        for (int v = 0; v < numVertices; v++) {
+            int start = offsets[v];
+            int end = offsets[v + 1];
+            offsets[v] = writePosition;
+            for (int p = start; p < end; p++) {
+                if (targets[p] == v) {
+                    continue;
+                }
+                if (writePosition > offsets[v]
+                        && targets[writePosition - 1] == targets[p]) {
+                    weights[writePosition - 1] = Math.min(
+                            weights[writePosition - 1], weights[p]);
+                } else {
+                    targets[writePosition] = targets[p];
+                    weights[writePosition] = weights[p];
+                    writePosition++;
+                }
+            }
+        }
+        offsets[numVertices] = writePosition;
+        if (writePosition < totalArcs) {
+            targets = Arrays.copyOf(targets, writePosition);
+            weights = Arrays.copyOf(weights, writePosition);
+        }
+        return new CSRGraph(numVertices, offsets, targets, weights);
+    }
+
+    /**
+     * Builds the kNN graph from the kNN sets.
+     *
+     * @param kneighbors int[][] that contains the kNN sets.
+     * @param kDistances float[][] that contains the kNN distances, used as arc
+     * weights. If null, all weights are set to one.
+     * @param k Integer that is the neighborhood size to use.
+     * @param symmetrize Boolean flag indicating whether to make the graph
+     * undirected.
+     * @return CSRGraph that is the kNN graph.
+     */
+    public static CSRGraph fromKNeighbors(int[][] kneighbors,
+            float[][] kDistances, int k, boolean symmetrize) {
+        int numVertices = kneighbors.length;
+        int numArcs = 0;
+        for (int i = 0; i < numVertices; i++) {
+            numArcs += Math.min(k, kneighbors[i].length);
+        }
+        int[] arcSources = new int[numArcs];
+        int[] arcTargets = new int[numArcs];
+        float[] arcWeights = kDistances != null ? new float[numArcs] : null;
+        int a = 0;
+        for (int i = 0; i < numVertices; i++) {
+            int kCurr = Math.min(k, kneighbors[i].length);
+            for (int kIndex = 0; kIndex < kCurr; kIndex++) {
+                arcSources[a] = i;
+                arcTargets[a] = kneighbors[i][kIndex];
+                if (arcWeights != null) {
+                    arcWeights[a] = kDistances[i][kIndex];
+                }
+                a++;
+            }
+        }
+        return fromArcs(numVertices, arcSources, arcTargets, arcWeights,
+                numArcs, symmetrize);
+    }
+
+    /**
+     * Builds the kNN graph from the calculated kNN sets.
+     *
+     * @param nsf NeighborSetFinder object with the calculated kNN sets.
+     * @param k Integer that is the neighborhood size to use.
+     * @param symmetrize Boolean flag indicating whether to make the graph
+     * undirected.
+     * @return CSRGraph that is the kNN graph, with the kNN distances as arc
+     * weights.
+     */
+    public static CSRGraph fromNeighborSetFinder(NeighborSetFinder nsf, int k,
+            boolean symmetrize) {
+        return fromKNeighbors(nsf.getKNeighbors(), nsf.getKDistances(), k,
+                symmetrize);
+    }
+
+    /**
+     * Builds the undirected CSR graph from the linked incidence lists of a
+     * DMGraph.
+     *
+     * @param g DMGraph to convert.
+     * @return CSRGraph that corresponds to the DMGraph.
+     */
+    public static CSRGraph fromDMGraph(DMGraph g) {
+        int numVertices = g.edges == null ? 0 : g.edges.length;
+        int numArcs = 0;
+        DMGraphEdge edge;
+        for (int i = 0; i < numVertices; i++) {
+            edge = g.edges[i];
+            while (edge != null) {
+                numArcs++;
+                edge = edge.next;
+            }
+        }
+        int[] arcSources = new int[numArcs];
+        int[] arcTargets = new int[numArcs];
+        float[] arcWeights = new float[numArcs];
+        int a = 0;
+        for (int i = 0; i < numVertices; i++) {
+            edge = g.edges[i];
+            while (edge != null) {
+                arcSources[a] = edge.first;
+                arcTargets[a] = edge.second;
+                arcWeights[a] = (float) edge.weight;
+                a++;
+                edge = edge.next;
+            }
+        }
+        return fromArcs(numVertices, arcSources, arcTargets, arcWeights,
+                numArcs, true);
+    }
+
+    /**
+     * @return Integer that is the number of vertices.
+     */
+    public int getNumVertices() {
+        return numVertices;
+    }
+
+    /**
+     * @return Integer that is the number of stored arcs. For undirected
+     * graphs, this is twice the number of edges.
+     */
+    public int getNumArcs() {
+        return offsets[numVertices];
+    }
+
+    /**
+     * @return int[] of row offsets.
+     */
+    public int[] getOffsets() {
+        return offsets;
+    }
+
+    /**
+     * @return int[] of arc targets.
+     */
+    public int[] getTargets() {
+        return targets;
+    }
+
+    /**
+     * @return float[] of arc weights.
+     */
+    public float[] getWeights() {
+        return weights;
+    }
+
+    /**
+     * @param vertexIndex Integer that is the vertex index.
+     * @return Integer that is the out-degree of the vertex.
+     */
+    public int getDegree(int vertexIndex) {
+        return offsets[vertexIndex + 1] - offsets[vertexIndex];
+    }
+
+    /**
+     * @param vertexIndex Integer that is the vertex index.
+     * @return Double that is the sum of the weights of the outgoing arcs.
+     */
+    public double getWeightedDegree(int vertexIndex) {
+        double degree = 0;
+        for (int p = offsets[vertexIndex]; p < offsets[vertexIndex + 1];
+                p++) {
+            degree += weights[p];
+        }
+        return degree;
+    }
+
+    /**
+     * @return Integer that is the maximal out-degree in the graph.
+     */
+    public int getMaxDegree() {
+        int maxDegree = 0;
+        for (int v = 0; v < numVertices; v++) {
+            maxDegree = Math.max(maxDegree, getDegree(v));
+        }
+        return maxDegree;
+    }
+
+    /**
+     * @param firstIndex Integer that is the arc source.
+     * @param secondIndex Integer that is the arc target.
+     * @return Float that is the arc weight, or zero if there is no such arc.
+     */
+    public float getArcWeight(int firstIndex, int secondIndex) {
+        int position = Arrays.binarySearch(targets, offsets[firstIndex],
+                offsets[firstIndex + 1], secondIndex);
+        return position >= 0 ? weights[position] : 0f;
+    }
+}
@@ -376,6 +376,14 @@ public class DMGraph {
         return maxNodeDegree;
     }
 
+    /**
+     * @return CSRGraph that is the compressed sparse row representation of
+     * this graph, which is better suited for analyzing large graphs.
+     */
+    public CSRGraph toCSRGraph() {
+        return CSRGraph.fromDMGraph(this);
+    }
+
     /**
      * This method inserts an edge into the graph incidence matrix.
      *
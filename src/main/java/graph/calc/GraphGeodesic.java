@@ -17,11 +17,16 @@
 package graph.calc;
 
 import data.representation.util.DataMineConstants;
+import graph.basic.CSRGraph;
 import graph.basic.DMGraphEdge;
+import java.util.Random;
 
 /**
  * This class implements the methods for calculating the geodesic graph distance
- * between two vertices.
+ * between two vertices. The Floyd-Warshall implementation on the DMGraph
+ * incidence lists is only suitable for small graphs, while the searches on the
+ * CSRGraph run single-source searches from all or from a sample of the source
+ * vertices in parallel.
  *
  * @author Nenad Tomasev <nenad.tomasev at gmail.com>
  */
@@ -72,4 +77,127 @@ public class GraphGeodesic {
         }
         return geodesicDistances;
     }
-}
\ No newline at end of file
+
+    /**
+     * Calculates the shortest distances from the specified source vertices in
+     * parallel.
+     *
+     * @param g CSRGraph to analyze.
+     * @param sources int[] of source vertex indexes.
+     * @param weighted Boolean flag indicating whether to use the arc weights,
+     * or to count the hops.
+     * @param numThreads Integer that is the number of threads to use.
+     * @return float[][] where each row contains the distances from the
+     * corresponding source to all vertices, with
+     * ShortestPathSearch.UNREACHABLE for the unreachable vertices.
+     */
+    public float[][] calculateShortestDistances(CSRGraph g, int[] sources,
+            boolean weighted, int numThreads) {
+        float[][] distances = new float[sources.length][];
+        int threadNum = Math.max(1, Math.min(numThreads, sources.length));
+        int chunkSize = sources.length / threadNum;
+        Thread[] threads = new Thread[threadNum];
+        for (int t = 0; t < threadNum; t++) {
+            int start = t * chunkSize;
+            int end = t == threadNum - 1 ? sources.length : start + chunkSize;
+            threads[t] = new Thread(new GeodesicWorker(g, sources, weighted,
+                    distances, start, end));
+            threads[t].start();
+        }
+        for (int t = 0; t < threadNum; t++) {
+            try {
+                threads[t].join();
+            } catch (Throwable thr) {
+                System.err.println(thr.getMessage());
+            }
+        }
+        return distances;
+    }
+
+    /**
+     * Calculates all the shortest distances between pairs of vertices by
+     * running the single-source searches in parallel. The result takes
+     * quadratic memory, so the sampled variant should be used on large
+     * graphs.
+     *
+     * @param g CSRGraph to analyze.
+     * @param weighted Boolean flag indicating whether to use the arc weights,
+     * or to count the hops.
+     * @param numThreads Integer that is the number of threads to use.
+     * @return float[][] that is the geodesic distance matrix.
+     */
+    public float[][] calculateAllShortestDistances(CSRGraph g,
+            boolean weighted, int numThreads) {
+        int[] sources = new int[g.getNumVertices()];
+        for (int i = 0; i < sources.length; i++) {
+            sources[i] = i;
+        }
+        return calculateShortestDistances(g, sources, weighted, numThreads);
+    }
+
+    /**
+     * Samples the source vertices for estimating the geodesic statistics.
+     *
+     * @param numVertices Integer that is the number of vertices.
+     * @param numSamples Integer that is the number of sources to sample.
+     * @param randa Random number generator.
+     * @return int[] of distinct sampled source vertex indexes.
+     */
+    public static int[] getSampledSources(int numVertices, int numSamples,
+            Random randa) {
+        numSamples = Math.min(numSamples, numVertices);
+        int[] permutation = new int[numVertices];
+        for (int i = 0; i < numVertices; i++) {
+            permutation[i] = i;
+        }
+        int[] sources = new int[numSamples];
+        for (int i = 0; i < numSamples; i++) {
+            int j = i + randa.nextInt(numVertices - i);
+            sources[i] = permutation[j];
+            permutation[j] = permutation[i];
+        }
+        return sources;
+    }
+
+    /**
+     * This worker runs the single-source searches for a range of sources.
+     */
+    class GeodesicWorker implements Runnable {
+
+        private CSRGraph g;
+        private int[] sources;
+        private boolean weighted;
+        private float[][] distances;
+        private int start;
+        private int end;
+
+        /**
+         * Initialization.
+         *
+         * @param g CSRGraph to analyze.
+         * @param sources int[] of source vertex indexes.
+         * @param weighted Boolean flag indicating whether to use the weights.
+         * @param distances float[][] to write the distance rows to.
+         * @param start Integer that is the first source position.
+         * @param end Integer that is the end of the source range.
+         */
+        public GeodesicWorker(CSRGraph g, int[] sources, boolean weighted,
+                float[][] distances, int start, int end) {
+            this.g = g;
+            this.sources = sources;
+            this.weighted = weighted;
+            this.distances = distances;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public void run() {
+            ShortestPathSearch search = new ShortestPathSearch(g, weighted);
+            for (int i = start; i < end; i++) {
+                distances[i] = new float[g.getNumVertices()];
+                search.search(sources[i], distances[i]);
+            }
+        }
+    }
+}
@@ -18,9 +18,11 @@ package graph.calc;
 
 import data.representation.util.DataSortableInfo;
 import data.representation.util.DataSortableInfoComparator;
+import graph.basic.CSRGraph;
 import graph.basic.DMGraph;
 import graph.basic.VertexInstance;
 import java.util.Arrays;
+import java.util.Random;
 
 /**
  * This class implements the methods for calculating some basic network
@@ -181,4 +183,219 @@ public class GraphStatistics {
                 (double) ((g.edges.length - 1) * (g.edges.length - 2));
         return centralization;
     }
-}
\ No newline at end of file
+
+    /**
+     * Calculates the degree centrality for all the vertices of a CSR graph.
+     *
+     * @param g CSRGraph that is to be analyzed.
+     * @return double[] of degree centrality scores for all the nodes in the
+     * graph.
+     */
+    public static double[] degreeCentralityList(CSRGraph g) {
+        int numVertices = g.getNumVertices();
+        if (numVertices < 2) {
+            return null;
+        }
+        double[] degreeCentrality = new double[numVertices];
+        for (int i = 0; i < numVertices; i++) {
+            degreeCentrality[i] = (double) g.getDegree(i)
+                    / (double) (numVertices - 1);
+        }
+        return degreeCentrality;
+    }
+
+    /**
+     * This method calculates the network degree centralization measure on a
+     * CSR graph.
+     *
+     * @param g CSRGraph g that is to be analyzed.
+     * @return Double that is the network degree centralization.
+     */
+    public static double networkDegreeCentralization(CSRGraph g) {
+        int numVertices = g.getNumVertices();
+        long deltaToMaxSum = (long) numVertices * g.getMaxDegree()
+                - g.getNumArcs();
+        return (double) deltaToMaxSum
+                / ((double) (numVertices - 1) * (numVertices - 2));
+    }
+
+    /**
+     * Calculates the closeness centrality for all the vertices of a CSR graph,
+     * by the definition that allows for disconnected graphs: sum_(t in V\v)
+     * 2^(-d(v,t)). The single-source searches are run in parallel, so the
+     * geodesic distance matrix is never stored.
+     *
+     * @param g CSRGraph that is to be analyzed.
+     * @param weighted Boolean flag indicating whether to use the arc weights,
+     * or to count the hops.
+     * @param numThreads Integer that is the number of threads to use.
+     * @return double[] of closeness centrality scores for all the nodes in the
+     * graph.
+     */
+    public static double[] closenessCentralityList(CSRGraph g,
+            boolean weighted, int numThreads) {
+        int[] sources = new int[g.getNumVertices()];
+        for (int i = 0; i < sources.length; i++) {
+            sources[i] = i;
+        }
+        return calculateCloseness(g, weighted, sources, false, numThreads);
+    }
+
+    /**
+     * Estimates the closeness centrality for all the vertices of an undirected
+     * CSR graph from a sample of the source vertices. The contributions of the
+     * sampled sources are rescaled to the full vertex set.
+     *
+     * @param g CSRGraph that is to be analyzed, it needs to be symmetric.
+     * @param weighted Boolean flag indicating whether to use the arc weights,
+     * or to count the hops.
+     * @param numSamples Integer that is the number of sampled sources.
+     * @param randa Random number generator.
+     * @param numThreads Integer that is the number of threads to use.
+     * @return double[] of estimated closeness centrality scores.
+     */
+    public static double[] closenessCentralityList(CSRGraph g,
+            boolean weighted, int numSamples, Random randa, int numThreads) {
+        int[] sources = GraphGeodesic.getSampledSources(g.getNumVertices(),
+                numSamples, randa);
+        return calculateCloseness(g, weighted, sources, true, numThreads);
+    }
+
+    /**
+     * Calculates the closeness scores from the single-source searches.
+     *
+     * @param g CSRGraph that is to be analyzed.
+     * @param weighted Boolean flag indicating whether to use the arc weights.
+     * @param sources int[] of source vertex indexes.
+     * @param sampled Boolean flag indicating whether the sources are a sample,
+     * in which case their contributions are spread to the reached vertices.
+     * @param numThreads Integer that is the number of threads to use.
+     * @return double[] of closeness centrality scores.
+     */
+    private static double[] calculateCloseness(CSRGraph g, boolean weighted,
+            int[] sources, boolean sampled, int numThreads) {
+        int numVertices = g.getNumVertices();
+        double[] closeness = new double[numVertices];
+        if (sources.length == 0) {
+            return closeness;
+        }
+        int threadNum = Math.max(1, Math.min(numThreads, sources.length));
+        int chunkSize = sources.length / threadNum;
+        Thread[] threads = new Thread[threadNum];
+        ClosenessWorker[] workers = new ClosenessWorker[threadNum];
+        for (int t = 0; t < threadNum; t++) {
+            int start = t * chunkSize;
+            int end = t == threadNum - 1 ? sources.length : start + chunkSize;
+            workers[t] = new ClosenessWorker(g, weighted, sources, sampled,
+                    closeness, start, end);
+            threads[t] = new Thread(workers[t]);
+            threads[t].start();
+        }
+        for (int t = 0; t < threadNum; t++) {
+            try {
+                threads[t].join();
+            } catch (Throwable thr) {
+                System.err.println(thr.getMessage());
+            }
+        }
+        if (sampled) {
+            // Merge the per-thread contributions and rescale them.
+            for (int t = 0; t < threadNum; t++) {
+                double[] partial = workers[t].getPartialCloseness();
+                for (int i = 0; i < numVertices; i++) {
+                    closeness[i] += partial[i];
+                }
+            }
+            boolean[] isSource = new boolean[numVertices];
+            for (int i = 0; i < sources.length; i++) {
+                isSource[sources[i]] = true;
+            }
+            for (int i = 0; i < numVertices; i++) {
+                // The vertex itself is excluded from its own sum.
+                int numOthers = isSource[i] ? sources.length - 1
+                        : sources.length;
+                if (numOthers > 0) {
+                    closeness[i] *= (double) (numVertices - 1) / numOthers;
+                }
+            }
+        }
+        return closeness;
+    }
+
+    /**
+     * This worker calculates the closeness contributions of a range of
+     * sources.
+     */
+    static class ClosenessWorker implements Runnable {
+
+        private CSRGraph g;
+        private boolean weighted;
+        private int[] sources;
+        private boolean sampled;
+        private double[] closeness;
+        private double[] partialCloseness;
+        private int start;
+        private int end;
+
+        /**
+         * Initialization.
+         *
+         * @param g CSRGraph that is to be analyzed.
+         * @param weighted Boolean flag indicating whether to use the weights.
+         * @param sources int[] of source vertex indexes.
+         * @param sampled Boolean flag indicating whether the sources are a
+         * sample.
+         * @param closeness double[] to write the closeness of the sources to.
+         * @param start Integer that is the first source position.
+         * @param end Integer that is the end of the source range.
+         */
+        public ClosenessWorker(CSRGraph g, boolean weighted, int[] sources,
+                boolean sampled, double[] closeness, int start, int end) {
+            this.g = g;
+            this.weighted = weighted;
+            this.sources = sources;
+            this.sampled = sampled;
+            this.closeness = closeness;
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * @return double[] of closeness contributions of the sampled sources
+         * handled by this worker.
+         */
+        public double[] getPartialCloseness() {
+            return partialCloseness;
+        }
+
+        @Override
+        public void run() {
+            int numVertices = g.getNumVertices();
+            ShortestPathSearch search = new ShortestPathSearch(g, weighted);
+            float[] distances = new float[numVertices];
+            if (sampled) {
+                partialCloseness = new double[numVertices];
+            }
+            for (int i = start; i < end; i++) {
+                int source = sources[i];
+                search.search(source, distances);
+                double sum = 0;
+                for (int v = 0; v < numVertices; v++) {
+                    if (v == source
+                            || distances[v] == ShortestPathSearch.UNREACHABLE) {
+                        continue;
+                    }
+                    double contribution = Math.pow(2, -distances[v]);
+                    if (sampled) {
+                        partialCloseness[v] += contribution;
+                    } else {
+                        sum += contribution;
+                    }
+                }
+                if (!sampled) {
+                    closeness[source] = sum;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,199 @@
+/**
+* Hub Miner: a hubness-aware machine learning experimentation library.
+* Copyright (C) 2014  Nenad Tomasev. Email: nenad.tomasev at gmail.com
+* 
+* This program is free software: you can redistribute it and/or modify it under
+* the terms of the GNU General Public License as published by the Free Software
+* Foundation, either version 3 of the License, or (at your option) any later
+* version.
+* 
+* This program is distributed in the hope that it will be useful, but WITHOUT
+* ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+* FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License along with
+* this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+package graph.calc;
+
+import graph.basic.CSRGraph;
+import java.util.Arrays;
+
+/**
+ * This class performs single-source shortest path searches on a CSRGraph. It
+ * uses breadth-first search for hop distances and Dijkstra's algorithm with an
+ * indexed binary heap for weighted distances. The search buffers are
+ * allocated once and reused between the searches, so each thread should use
+ * its own instance.
+ *
+ * @author Nenad Tomasev <nenad.tomasev at gmail.com>
+ */
+public class ShortestPathSearch {
+
+    // Distance value for the vertices that can not be reached.
+    public static final float UNREACHABLE = Float.MAX_VALUE;
+    private CSRGraph g;
+    private boolean weighted;
+    // BFS queue, also reused as the heap in Dijkstra's algorithm.
+    private int[] queue;
+    // Heap positions of the vertices, -1 if not in the heap.
+    private int[] heapPositions;
+
+    /**
+     * Initialization.
+     *
+     * @param g CSRGraph to search.
+     * @param weighted Boolean flag indicating whether to use the arc weights,
+     * or to count the hops.
+     */
+    public ShortestPathSearch(CSRGraph g, boolean weighted) {
+        this.g = g;
+        this.weighted = weighted;
+        queue = new int[g.getNumVertices()];
+        if (weighted) {
+            heapPositions = new int[g.getNumVertices()];
+        }
+    }
+
+    /**
+     * Calculates the shortest distances from a source vertex.
+     *
+     * @param source Integer that is the source vertex index.
+     * @param distances float[] to write the distances to, with UNREACHABLE
+     * for the vertices that can not be reached from the source.
+     * @return Integer that is the number of vertices reached, including the
+     * source.
+     */
+    public int search(int source, float[] distances) {
+        Arrays.fill(distances, UNREACHABLE);
+        if (weighted) {
+            return dijkstra(source, distances);
+        } else {
+            return breadthFirst(source, distances);
+        }
+    }
+
+    /**
+     * Breadth-first search for the hop distances.
+     *
+     * @param source Integer that is the source vertex index.
+     * @param distances float[] to write the distances to.
+     * @return Integer that is the number of vertices reached.
+     */
+    private int breadthFirst(int source, float[] distances) {
+        int[] offsets = g.getOffsets();
+        int[] targets = g.getTargets();
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = source;
+        distances[source] = 0;
+        while (head < tail) {
+            int v = queue[head++];
+            float nextDist = distances[v] + 1;
+            for (int p = offsets[v]; p < offsets[v + 1]; p++) {
+                int u = targets[p];
+                if (distances[u] == UNREACHABLE) {
+                    distances[u] = nextDist;
+                    queue[tail++] = u;
+                }
+            }
+        }
+        return tail;
+    }
+
+    /**
+     * Dijkstra's algorithm for the weighted distances. The weights must not be
+     * negative.
+     *
+     * @param source Integer that is the source vertex index.
+     * @param distances float[] to write the distances to.
+     * @return Integer that is the number of vertices reached.
+     */
+    private int dijkstra(int source, float[] distances) {
+        int[] offsets = g.getOffsets();
+        int[] targets = g.getTargets();
+        float[] weights = g.getWeights();
+        Arrays.fill(heapPositions, -1);
+        int heapSize = 0;
+        int numReached = 0;
+        distances[source] = 0;
+        queue[heapSize] = source;
+        heapPositions[source] = heapSize++;
+        while (heapSize > 0) {
+            int v = queue[0];
+            heapPositions[v] = -1;
+            heapSize--;
+            if (heapSize > 0) {
+                queue[0] = queue[heapSize];
+                heapPositions[queue[0]] = 0;
+                siftDown(0, heapSize, distances);
+            }
+            numReached++;
+            for (int p = offsets[v]; p < offsets[v + 1]; p++) {
+                int u = targets[p];
+                float newDist = distances[v] + weights[p];
+                if (newDist < distances[u]) {
+                    if (distances[u] == UNREACHABLE) {
+                        queue[heapSize] = u;
+                        heapPositions[u] = heapSize++;
+                    }
+                    distances[u] = newDist;
+                    siftUp(heapPositions[u], distances);
+                }
+            }
+        }
+        return numReached;
+    }
+
+    /**
+     * Moves a heap element up to restore the heap order.
+     *
+     * @param position Integer that is the heap position.
+     * @param distances float[] of the current distances.
+     */
+    private void siftUp(int position, float[] distances) {
+        int v = queue[position];
+        float vDist = distances[v];
+        while (position > 0) {
+            int parent = (position - 1) >> 1;
+            if (distances[queue[parent]] <= vDist) {
+                break;
+            }
+            queue[position] = queue[parent];
+            heapPositions[queue[position]] = position;
+            position = parent;
+        }
+        queue[position] = v;
+        heapPositions[v] = position;
+    }
+
+    /**
+     * Moves a heap element down to restore the heap order.
+     *
+     * @param position Integer that is the heap position.
+     * @param heapSize Integer that is the current heap size.
+     * @param distances float[] of the current distances.
+     */
+    private void siftDown(int position, int heapSize, float[] distances) {
+        int v = queue[position];
+        float vDist = distances[v];
+        while (true) {
+            int child = 2 * position + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && distances[queue[child + 1]]
+                    < distances[queue[child]]) {
+                child++;
+            }
+            if (distances[queue[child]] >= vDist) {
+                break;
+            }
+            queue[position] = queue[child];
+            heapPositions[queue[position]] = position;
+            position = child;
+        }
+        queue[position] = v;
+        heapPositions[v] = position;
+    }
+}
@@ -0,0 +1,570 @@
+/**
+* Hub Miner: a hubness-aware machine learning experimentation library.
+* Copyright (C) 2014  Nenad Tomasev. Email: nenad.tomasev at gmail.com
+* 
+* This program is free software: you can redistribute it and/or modify it under
+* the terms of the GNU General Public License as published by the Free Software
+* Foundation, either version 3 of the License, or (at your option) any later
+* version.
+* 
+* This program is distributed in the hope that it will be useful, but WITHOUT
+* ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+* FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License along with
+* this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+package graph.drawing;
+
+import graph.basic.CSRGraph;
+import graph.basic.DMGraph;
+import graph.basic.VertexInstance;
+import graph.io.JGraphConverter;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * This class implements the Fruchterman-Reingold force-directed layout with
+ * the Barnes-Hut approximation of the repulsive forces. A quadtree over the
+ * current vertex positions is built in each iteration and distant groups of
+ * vertices are treated as single bodies at their center of mass, which reduces
+ * the cost of an iteration from quadratic to O(n log n). The forces acting on
+ * different vertices are accumulated in parallel. After the initial layout,
+ * the layout can be updated incrementally when only a few vertices or edges
+ * change, by moving only the changed vertices and their neighbors.
+ *
+ * @author Nenad Tomasev <nenad.tomasev at gmail.com>
+ */
+public class BarnesHutCoordinateFinder implements CoordinateFinderInterface {
+
+    public static final int DEFAULT_ITERATIONS = 100;
+    public static final int DEFAULT_RELAYOUT_ITERATIONS = 30;
+    public static final double DEFAULT_THETA = 0.8;
+    public static final double FINAL_TEMPERATURE = 1.;
+    // Maximal quadtree depth, vertices at the same position beyond this depth
+    // are merged into a single body.
+    private static final int MAX_DEPTH = 40;
+    // Minimal distance used in the force calculations.
+    private static final double MIN_DISTANCE = 0.01;
+    private int numIterations = DEFAULT_ITERATIONS;
+    private int numThreads = Runtime.getRuntime().availableProcessors();
+    // The opening criterion: a quadtree cell is approximated by its center of
+    // mass if its width divided by the distance is below theta.
+    private double theta = DEFAULT_THETA;
+    private DMGraph g;
+    private CSRGraph adjacency;
+    private int width; // Frame width.
+    private int height; // Frame height.
+    // The square root of the average area per vertex.
+    private double areaRoot;
+    private double temperature;
+    // Current vertex coordinates and dispositions.
+    private double[] xCoords;
+    private double[] yCoords;
+    private double[] xDisp;
+    private double[] yDisp;
+    // The quadtree, stored in flat arrays. Children of a node are stored in
+    // four consecutive nodes.
+    private int numNodes;
+    private double[] nodeMass;
+    private double[] nodeXSum;
+    private double[] nodeYSum;
+    private double[] nodeXCenter;
+    private double[] nodeYCenter;
+    private double[] nodeHalfSize;
+    private int[] nodeFirstChild;
+    private int[] nodeBody;
+    // Boolean flag indicating whether the coordinate finder is currently
+    // running.
+    private volatile boolean isRunning = true;
+    // Estimated current progress of coordinate calculations.
+    private volatile double progress = 0.;
+    // Boolean flag indicating whether to auto-update the associated JGraph.
+    private boolean updateJG = false;
+
+    /**
+     * Initialization.
+     *
+     * @param g DMGraph to calculate the coordinates for.
+     * @param width Integer that is the frame width.
+     * @param height Integer that is the frame height.
+     */
+    public BarnesHutCoordinateFinder(DMGraph g, int width, int height) {
+        this.g = g;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Initialization.
+     *
+     * @param g DMGraph to calculate the coordinates for.
+     * @param width Integer that is the frame width.
+     * @param height Integer that is the frame height.
+     * @param numIterations Integer that is the number of iterations to run.
+     */
+    public BarnesHutCoordinateFinder(DMGraph g, int width, int height,
+            int numIterations) {
+        this(g, width, height);
+        this.numIterations = Math.max(numIterations, 10);
+    }
+
+    /**
+     * @param numThreads Integer that is the number of threads to use.
+     */
+    public void setNumThreads(int numThreads) {
+        this.numThreads = Math.max(1, numThreads);
+    }
+
+    /**
+     * @param theta Double that is the Barnes-Hut opening criterion. Lower
+     * values are more accurate and slower, zero gives the exact forces.
+     */
+    public void setTheta(double theta) {
+        this.theta = theta;
+    }
+
+    @Override
+    public void setAutoJGUpdate(boolean updateJG) {
+        this.updateJG = updateJG;
+    }
+
+    @Override
+    public double getProgress() {
+        return progress;
+    }
+
+    @Override
+    public void stop() {
+        isRunning = false;
+    }
+
+    @Override
+    public void run() {
+        try {
+            findCoordinates();
+        } catch (Exception e) {
+        }
+    }
+
+    /**
+     * If the algorithm has been stopped, interrupt the execution.
+     *
+     * @throws Exception
+     */
+    private void check() throws Exception {
+        if (!isRunning) {
+            throw new InterruptedException();
+        }
+    }
+
+    @Override
+    public void findCoordinates() throws Exception {
+        isRunning = true;
+        progress = 0;
+        int numVertices = g.getNumberOfVertices();
+        adjacency = CSRGraph.fromDMGraph(g);
+        allocate(numVertices);
+        Random randa = new Random();
+        for (int i = 0; i < numVertices; i++) {
+            xCoords[i] = randa.nextDouble() * width;
+            yCoords[i] = randa.nextDouble() * height;
+        }
+        int[] movable = new int[numVertices];
+        for (int i = 0; i < numVertices; i++) {
+            movable[i] = i;
+        }
+        layout(movable, numIterations, Math.max(width, height) / 2.);
+    }
+
+    /**
+     * Updates the layout after a few vertices or edges have changed. The
+     * current coordinates of the vertices are kept and only the changed
+     * vertices and their neighbors are moved. Vertices that have been added to
+     * the graph are first placed at the barycenter of their neighbors.
+     *
+     * @param changedVertices int[] of indexes of the changed vertices.
+     * @param numRelayoutIterations Integer that is the number of iterations.
+     * @throws Exception
+     */
+    public void relayout(int[] changedVertices, int numRelayoutIterations)
+            throws Exception {
+        isRunning = true;
+        progress = 0;
+        int numVertices = g.getNumberOfVertices();
+        adjacency = CSRGraph.fromDMGraph(g);
+        int numPlaced = xCoords == null ? 0 : xCoords.length;
+        allocate(numVertices);
+        for (int i = 0; i < numVertices; i++) {
+            VertexInstance vertex = (VertexInstance) (g.vertices.data.get(i));
+            xCoords[i] = vertex.x;
+            yCoords[i] = vertex.y;
+        }
+        boolean[] isMovable = new boolean[numVertices];
+        int[] offsets = adjacency.getOffsets();
+        int[] targets = adjacency.getTargets();
+        Random randa = new Random();
+        for (int v : changedVertices) {
+            isMovable[v] = true;
+            if (v >= numPlaced) {
+                // Place the new vertex at the barycenter of its neighbors.
+                int degree = offsets[v + 1] - offsets[v];
+                if (degree > 0) {
+                    xCoords[v] = 0;
+                    yCoords[v] = 0;
+                    for (int p = offsets[v]; p < offsets[v + 1]; p++) {
+                        xCoords[v] += xCoords[targets[p]] / degree;
+                        yCoords[v] += yCoords[targets[p]] / degree;
+                    }
+                    // A small perturbation separates it from the neighbors.
+                    xCoords[v] += randa.nextDouble() - 0.5;
+                    yCoords[v] += randa.nextDouble() - 0.5;
+                } else {
+                    xCoords[v] = randa.nextDouble() * width;
+                    yCoords[v] = randa.nextDouble() * height;
+                }
+            }
+            for (int p = offsets[v]; p < offsets[v + 1]; p++) {
+                isMovable[targets[p]] = true;
+            }
+        }
+        int numMovable = 0;
+        for (int i = 0; i < numVertices; i++) {
+            if (isMovable[i]) {
+                numMovable++;
+            }
+        }
+        int[] movable = new int[numMovable];
+        numMovable = 0;
+        for (int i = 0; i < numVertices; i++) {
+            if (isMovable[i]) {
+                movable[numMovable++] = i;
+            }
+        }
+        layout(movable, Math.max(1, numRelayoutIterations), 2 * areaRoot);
+    }
+
+    /**
+     * Allocates the coordinate and the quadtree arrays.
+     *
+     * @param numVertices Integer that is the number of vertices.
+     */
+    private void allocate(int numVertices) {
+        areaRoot = Math.sqrt((double) width * height
+                / Math.max(1, numVertices));
+        xCoords = new double[numVertices];
+        yCoords = new double[numVertices];
+        xDisp = new double[numVertices];
+        yDisp = new double[numVertices];
+        int capacity = 4 * numVertices + 5;
+        nodeMass = new double[capacity];
+        nodeXSum = new double[capacity];
+        nodeYSum = new double[capacity];
+        nodeXCenter = new double[capacity];
+        nodeYCenter = new double[capacity];
+        nodeHalfSize = new double[capacity];
+        nodeFirstChild = new int[capacity];
+        nodeBody = new int[capacity];
+    }
+
+    /**
+     * Runs the force-directed iterations.
+     *
+     * @param movable int[] of indexes of the vertices that are allowed to move.
+     * @param iterations Integer that is the number of iterations.
+     * @param startTemperature Double that is the initial temperature.
+     * @throws Exception
+     */
+    private void layout(int[] movable, int iterations, double startTemperature)
+            throws Exception {
+        temperature = startTemperature;
+        double coolingFactor = iterations > 1 ? Math.pow(Math.min(1.,
+                FINAL_TEMPERATURE / startTemperature), 1. / (iterations - 1))
+                : 1.;
+        int threadNum = Math.max(1, Math.min(numThreads,
+                movable.length / 256 + 1));
+        int chunkSize = movable.length / threadNum;
+        for (int iterationIndex = 0; iterationIndex < iterations;
+                iterationIndex++) {
+            check();
+            buildQuadtree();
+            check();
+            Thread[] threads = new Thread[threadNum];
+            for (int t = 0; t < threadNum; t++) {
+                int start = t * chunkSize;
+                int end = t == threadNum - 1 ? movable.length
+                        : start + chunkSize;
+                threads[t] = new Thread(new ForceWorker(movable, start, end));
+                threads[t].start();
+            }
+            for (int t = 0; t < threadNum; t++) {
+                try {
+                    threads[t].join();
+                } catch (Throwable thr) {
+                    System.err.println(thr.getMessage());
+                }
+            }
+            check();
+            // Limit the dispositions according to the temperature and make
+            // sure that nothing gets outside of the frame.
+            for (int v : movable) {
+                double modulo = Math.sqrt(xDisp[v] * xDisp[v]
+                        + yDisp[v] * yDisp[v]);
+                if (modulo > MIN_DISTANCE) {
+                    double step = Math.min(modulo, temperature) / modulo;
+                    xCoords[v] += xDisp[v] * step;
+                    yCoords[v] += yDisp[v] * step;
+                }
+                double scale = ((VertexInstance) (g.vertices.data.get(v))).
+                        scale;
+                xCoords[v] = Math.min(width - 1. - scale,
+                        Math.max(xCoords[v], 1. + scale));
+                yCoords[v] = Math.min(height - 1. - scale,
+                        Math.max(yCoords[v], 1. + scale));
+            }
+            if (updateJG) {
+                writeCoordinates(movable, true);
+            }
+            temperature *= coolingFactor;
+            progress = ((double) (iterationIndex + 1)) / (double) iterations;
+        }
+        writeCoordinates(movable, false);
+        if (!updateJG) {
+            progress = 0.99;
+            JGraphConverter.updateJGCoordinates(g);
+            progress = 1.;
+        }
+    }
+
+    /**
+     * Writes the coordinates of the vertices back to the graph.
+     *
+     * @param vertices int[] of the vertex indexes to write.
+     * @param updateCells Boolean flag indicating whether to also update the
+     * associated JGraph cells.
+     * @throws Exception
+     */
+    private void writeCoordinates(int[] vertices, boolean updateCells)
+            throws Exception {
+        for (int v : vertices) {
+            VertexInstance vertex = (VertexInstance) (g.vertices.data.get(v));
+            vertex.x = xCoords[v];
+            vertex.y = yCoords[v];
+            if (updateCells && vertex.jgVertex != null) {
+                JGraphConverter.setCellCoordinates(g.visGraph,
+                        vertex.jgVertex, vertex.x, vertex.y, vertex.scale);
+            }
+        }
+    }
+
+    /**
+     * Builds the quadtree over the current vertex positions.
+     */
+    private void buildQuadtree() {
+        numNodes = 0;
+        double halfSize = Math.max(width, height) / 2. + 1.;
+        initNode(newNodes(1), width / 2., height / 2., halfSize);
+        for (int i = 0; i < xCoords.length; i++) {
+            insertBody(i);
+        }
+    }
+
+    /**
+     * Reserves the space for the new quadtree nodes.
+     *
+     * @param count Integer that is the number of nodes to reserve.
+     * @return Integer that is the index of the first reserved node.
+     */
+    private int newNodes(int count) {
+        if (numNodes + count > nodeMass.length) {
+            int capacity = 2 * nodeMass.length + count;
+            nodeMass = Arrays.copyOf(nodeMass, capacity);
+            nodeXSum = Arrays.copyOf(nodeXSum, capacity);
+            nodeYSum = Arrays.copyOf(nodeYSum, capacity);
+            nodeXCenter = Arrays.copyOf(nodeXCenter, capacity);
+            nodeYCenter = Arrays.copyOf(nodeYCenter, capacity);
+            nodeHalfSize = Arrays.copyOf(nodeHalfSize, capacity);
+            nodeFirstChild = Arrays.copyOf(nodeFirstChild, capacity);
+            nodeBody = Arrays.copyOf(nodeBody, capacity);
+        }
+        int first = numNodes;
+        numNodes += count;
+        return first;
+    }
+
+    /**
+     * Initializes an empty quadtree node.
+     *
+     * @param node Integer that is the node index.
+     * @param xCenter Double that is the x coordinate of the cell center.
+     * @param yCenter Double that is the y coordinate of the cell center.
+     * @param halfSize Double that is the half of the cell width.
+     */
+    private void initNode(int node, double xCenter, double yCenter,
+            double halfSize) {
+        nodeMass[node] = 0;
+        nodeXSum[node] = 0;
+        nodeYSum[node] = 0;
+        nodeXCenter[node] = xCenter;
+        nodeYCenter[node] = yCenter;
+        nodeHalfSize[node] = halfSize;
+        nodeFirstChild[node] = -1;
+        nodeBody[node] = -1;
+    }
+
+    /**
+     * @param node Integer that is the node index.
+     * @param x Double that is the x coordinate.
+     * @param y Double that is the y coordinate.
+     * @return Integer that is the index of the child cell containing the
+     * point.
+     */
+    private int childFor(int node, double x, double y) {
+        int quadrant = (x >= nodeXCenter[node] ? 1 : 0)
+                + (y >= nodeYCenter[node] ? 2 : 0);
+        return nodeFirstChild[node] + quadrant;
+    }
+
+    /**
+     * Inserts a vertex into the quadtree.
+     *
+     * @param body Integer that is the vertex index.
+     */
+    private void insertBody(int body) {
+        double x = xCoords[body];
+        double y = yCoords[body];
+        int node = 0;
+        int depth = 0;
+        while (true) {
+            if (nodeFirstChild[node] < 0) {
+                if (nodeMass[node] == 0) {
+                    nodeBody[node] = body;
+                    nodeMass[node] = 1;
+                    nodeXSum[node] = x;
+                    nodeYSum[node] = y;
+                    return;
+                }
+                if (depth >= MAX_DEPTH) {
+                    nodeMass[node]++;
+                    nodeXSum[node] += x;
+                    nodeYSum[node] += y;
+                    return;
+                }
+                // Split the leaf and move its body to the child cell.
+                int first = newNodes(4);
+                double quarter = nodeHalfSize[node] / 2.;
+                for (int c = 0; c < 4; c++) {
+                    initNode(first + c, nodeXCenter[node]
+                            + ((c & 1) == 0 ? -quarter : quarter),
+                            nodeYCenter[node]
+                            + ((c & 2) == 0 ? -quarter : quarter), quarter);
+                }
+                nodeFirstChild[node] = first;
+                int previous = nodeBody[node];
+                nodeBody[node] = -1;
+                int child = childFor(node, xCoords[previous],
+                        yCoords[previous]);
+                nodeBody[child] = previous;
+                nodeMass[child] = 1;
+                nodeXSum[child] = xCoords[previous];
+                nodeYSum[child] = yCoords[previous];
+            }
+            nodeMass[node]++;
+            nodeXSum[node] += x;
+            nodeYSum[node] += y;
+            node = childFor(node, x, y);
+            depth++;
+        }
+    }
+
+    /**
+     * This worker accumulates the repulsive and the attractive forces for a
+     * range of the movable vertices.
+     */
+    class ForceWorker implements Runnable {
+
+        private int[] movable;
+        private int start;
+        private int end;
+
+        /**
+         * Initialization.
+         *
+         * @param movable int[] of indexes of the movable vertices.
+         * @param start Integer that is the first position in the range.
+         * @param end Integer that is the end of the range.
+         */
+        public ForceWorker(int[] movable, int start, int end) {
+            this.movable = movable;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public void run() {
+            int[] stack = new int[4 * MAX_DEPTH + 8];
+            double repulsionConstant = areaRoot * areaRoot;
+            int[] offsets = adjacency.getOffsets();
+            int[] targets = adjacency.getTargets();
+            for (int i = start; i < end; i++) {
+                int v = movable[i];
+                double x = xCoords[v];
+                double y = yCoords[v];
+                double dispX = 0;
+                double dispY = 0;
+                // Repulsive forces from the quadtree.
+                int stackSize = 0;
+                stack[stackSize++] = 0;
+                while (stackSize > 0) {
+                    int node = stack[--stackSize];
+                    double mass = nodeMass[node];
+                    if (mass == 0) {
+                        continue;
+                    }
+                    double xSum = nodeXSum[node];
+                    double ySum = nodeYSum[node];
+                    boolean isLeaf = nodeFirstChild[node] < 0;
+                    if (isLeaf && (nodeBody[node] == v || (mass > 1
+                            && xSum == x * mass && ySum == y * mass))) {
+                        // Exclude the vertex itself from its own cell.
+                        mass--;
+                        xSum -= x;
+                        ySum -= y;
+                        if (mass <= 0) {
+                            continue;
+                        }
+                    }
+                    double dx = x - xSum / mass;
+                    double dy = y - ySum / mass;
+                    double distSq = dx * dx + dy * dy;
+                    if (!isLeaf && 4 * nodeHalfSize[node]
+                            * nodeHalfSize[node] >= theta * theta * distSq) {
+                        int first = nodeFirstChild[node];
+                        for (int c = 0; c < 4; c++) {
+                            stack[stackSize++] = first + c;
+                        }
+                        continue;
+                    }
+                    if (distSq < MIN_DISTANCE * MIN_DISTANCE) {
+                        distSq = MIN_DISTANCE * MIN_DISTANCE;
+                    }
+                    double factor = mass * repulsionConstant / distSq;
+                    dispX += dx * factor;
+                    dispY += dy * factor;
+                }
+                // Attractive forces from the neighbors.
+                for (int p = offsets[v]; p < offsets[v + 1]; p++) {
+                    int u = targets[p];
+                    double dx = x - xCoords[u];
+                    double dy = y - yCoords[u];
+                    double dist = Math.sqrt(dx * dx + dy * dy);
+                    double factor = dist / areaRoot;
+                    dispX -= dx * factor;
+                    dispY -= dy * factor;
+                }
+                xDisp[v] = dispX;
+                yDisp[v] = dispY;
+            }
+        }
+    }
+}
@@ -20,6 +20,7 @@ import data.representation.DataSet;
 import graph.basic.DMGraph;
 import graph.basic.DMGraphEdge;
 import graph.basic.VertexInstance;
+import graph.drawing.BarnesHutCoordinateFinder;
 import graph.drawing.BarycentricCoordinateFinder;
 import graph.drawing.FRCoordinateFinder;
 import graph.drawing.RandomCoordinateFinder;
@@ -124,6 +125,37 @@ public class CoordinateFinderTest extends TestCase {
         }
     }
 
+    /**
+     * This method tests the Barnes-Hut approximation of the
+     * Fruchterman-Reingold method for calculating graph vertex coordinates,
+     * along with the incremental re-layout.
+     *
+     * @throws Exception
+     */
+    @Test
+    public static void testBarnesHut() throws Exception {
+        DMGraph g = generateToyTestData();
+        DataSet vertexSet = g.vertices;
+        int frameWidth = 500;
+        int frameHeight = 300;
+        BarnesHutCoordinateFinder bhf = new BarnesHutCoordinateFinder(g,
+                frameWidth, frameHeight);
+        bhf.findCoordinates();
+        DMGraph.insertEdge(g.edges, new DMGraphEdge(4, 5, 1));
+        bhf.relayout(new int[]{4, 5},
+                BarnesHutCoordinateFinder.DEFAULT_RELAYOUT_ITERATIONS);
+        // The method tests whether all the coordinates are set within the
+        // specified frame.
+        for (int i = 0; i < g.size(); i++) {
+            assertTrue(((VertexInstance) vertexSet.data.get(i)).x >= 0);
+            assertTrue(((VertexInstance) vertexSet.data.get(i)).x <=
+                    frameWidth);
+            assertTrue(((VertexInstance) vertexSet.data.get(i)).y >= 0);
+            assertTrue(((VertexInstance) vertexSet.data.get(i)).y
+                    <= frameHeight);
+        }
+    }
+
     /**
      * This method tests the Barycentric method for calculating graph vertex
      * coordinates.
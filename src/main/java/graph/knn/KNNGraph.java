@@ -19,6 +19,7 @@ package graph.knn;
 import data.neighbors.NeighborSetFinder;
 import data.representation.DataSet;
 import distances.primary.CombinedMetric;
+import graph.basic.CSRGraph;
 import graph.basic.DMGraph;
 import graph.basic.DMGraphEdge;
 
@@ -201,6 +202,25 @@ public class KNNGraph extends DMGraph {
      * @throws Exception
      */
     public void calculateEdges() throws Exception {
+        ensureNeighborSets();
+        edges = new DMGraphEdge[size()];
+        DMGraphEdge edge;
+        for (int i = 0; i < size(); i++) {
+            for (int j = 0; j < k; j++) {
+                edge = new DMGraphEdge();
+                edge.first = Math.min(i, kneighbors[i][j]);
+                edge.second = Math.max(i, kneighbors[i][j]);
+                DMGraph.insertEdge(edges, edge);
+            }
+        }
+    }
+
+    /**
+     * Calculates the kNN sets, unless they have already been set.
+     *
+     * @throws Exception
+     */
+    private void ensureNeighborSets() throws Exception {
         if (kneighbors == null) {
             // If the neighbors have not been directly set.
             if (nsf == null) {
@@ -212,16 +232,25 @@ public class KNNGraph extends DMGraph {
             }
             kneighbors = nsf.getKNeighbors();
         }
-        edges = new DMGraphEdge[size()];
-        DMGraphEdge edge;
-        for (int i = 0; i < size(); i++) {
-            for (int j = 0; j < k; j++) {
-                edge = new DMGraphEdge();
-                edge.first = Math.min(i, kneighbors[i][j]);
-                edge.second = Math.max(i, kneighbors[i][j]);
-                DMGraph.insertEdge(edges, edge);
-            }
+    }
+
+    /**
+     * Generates the compressed sparse row representation of the kNN graph,
+     * without going through the linked incidence lists.
+     *
+     * @param symmetrize Boolean flag indicating whether to make the graph
+     * undirected, as in calculateEdges.
+     * @return CSRGraph that is the kNN graph. The arcs are weighted by the kNN
+     * distances when they are available, otherwise all weights are one.
+     * @throws Exception
+     */
+    public CSRGraph getCSRGraph(boolean symmetrize) throws Exception {
+        ensureNeighborSets();
+        float[][] kDistances = null;
+        if (nsf != null && nsf.getKNeighbors() == kneighbors) {
+            kDistances = nsf.getKDistances();
         }
+        return CSRGraph.fromKNeighbors(kneighbors, kDistances, k, symmetrize);
     }
 
     /**
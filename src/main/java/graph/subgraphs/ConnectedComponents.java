@@ -16,18 +16,23 @@
 */
 package graph.subgraphs;
 
+import graph.basic.CSRGraph;
 import graph.basic.DMGraph;
 import graph.basic.DMGraphEdge;
 import java.util.ArrayList;
 
 /**
- * This class calculates the connected components of a graph.
+ * This class calculates the connected components of a graph. The components
+ * are found by union-find with path halving and union by size, which works
+ * both on the linked DMGraph incidence lists and on the CSRGraph arcs and does
+ * not recurse along the paths in the graph.
  *
  * @author Nenad Tomasev <nenad.tomasev at gmail.com>
  */
 public class ConnectedComponents {
 
     private DMGraph g;
+    private CSRGraph csrGraph;
     private int numComponents;
     // Association of each vertex with a specific component.
     private int[] componentAssociationsArray;
@@ -35,8 +40,9 @@ public class ConnectedComponents {
     private ArrayList<ArrayList<Integer>> componentAssociationsVector;
     // An array of components as subgraphs.
     private DMGraph[] components;
-    private boolean[] visitedVertices;
-    private int currComponentCount = -1;
+    // Union-find structures.
+    private int[] parents;
+    private int[] treeSizes;
 
     /**
      * Initialization.
@@ -47,6 +53,15 @@ public class ConnectedComponents {
         this.g = g;
     }
 
+    /**
+     * Initialization.
+     *
+     * @param csrGraph CSRGraph that is to be analyzed.
+     */
+    public ConnectedComponents(CSRGraph csrGraph) {
+        this.csrGraph = csrGraph;
+    }
+
     /**
      * @return Integer that is the number of connected components in the graph.
      */
@@ -76,50 +91,101 @@ public class ConnectedComponents {
         return components;
     }
 
+    /**
+     * Calculates the connected components.
+     *
+     * @throws Exception
+     */
     public void findComponents() throws Exception {
-        if ((g == null) || g.isEmpty()) {
+        int numVertices;
+        if (csrGraph != null) {
+            numVertices = csrGraph.getNumVertices();
+        } else if ((g == null) || g.isEmpty()) {
             return;
+        } else {
+            numVertices = g.vertices.data.size();
+        }
+        parents = new int[numVertices];
+        treeSizes = new int[numVertices];
+        for (int i = 0; i < numVertices; i++) {
+            parents[i] = i;
+            treeSizes[i] = 1;
+        }
+        // Merge the endpoints of all the edges.
+        if (csrGraph != null) {
+            int[] offsets = csrGraph.getOffsets();
+            int[] targets = csrGraph.getTargets();
+            for (int v = 0; v < numVertices; v++) {
+                for (int p = offsets[v]; p < offsets[v + 1]; p++) {
+                    union(v, targets[p]);
+                }
+            }
+        } else {
+            for (int v = 0; v < numVertices; v++) {
+                DMGraphEdge edge = g.edges[v];
+                while (edge != null) {
+                    union(edge.first, edge.second);
+                    edge = edge.next;
+                }
+            }
         }
-        int numVertices = g.vertices.data.size();
-        // Initialize all the structures.
-        visitedVertices = new boolean[numVertices];
+        // Number the components in the order of their first vertex.
         componentAssociationsArray = new int[numVertices];
-        componentAssociationsVector = new ArrayList(10);
-        // Go through all the nodes.
+        componentAssociationsVector = new ArrayList<>(10);
+        int[] rootComponents = new int[numVertices];
+        for (int i = 0; i < numVertices; i++) {
+            rootComponents[i] = -1;
+        }
+        numComponents = 0;
         for (int vertexIndex = 0; vertexIndex < numVertices; vertexIndex++) {
-            if (!visitedVertices[vertexIndex]) {
-                componentAssociationsVector.add(new ArrayList<Integer>(50));
-                componentAssociationsArray[vertexIndex] = ++currComponentCount;
-                visitedVertices[vertexIndex] = true;
-                componentAssociationsVector.get(currComponentCount).add(
-                        vertexIndex);
-                // Here we traverse all that is reachable from the current node.
-                visitComponent(currComponentCount, vertexIndex);
+            int root = find(vertexIndex);
+            if (rootComponents[root] == -1) {
+                rootComponents[root] = numComponents++;
+                componentAssociationsVector.add(new ArrayList<Integer>(
+                        treeSizes[root]));
             }
+            componentAssociationsArray[vertexIndex] = rootComponents[root];
+            componentAssociationsVector.get(rootComponents[root]).add(
+                    vertexIndex);
         }
-        numComponents = currComponentCount;
+        parents = null;
+        treeSizes = null;
     }
 
     /**
-     * Traverses the component from a node.
+     * Finds the root of the tree containing the vertex, halving the path on
+     * the way.
      *
-     * @param componentIndex Integer that is the component index.
      * @param vertexIndex Integer that is the vertex index.
-     * @throws Exception
+     * @return Integer that is the root vertex index.
      */
-    private void visitComponent(int componentIndex, int vertexIndex)
-            throws Exception {
-        DMGraphEdge edge = g.edges[vertexIndex];
-        while (edge != null) {
-            if (!visitedVertices[edge.second]) {
-                visitedVertices[edge.second] = true;
-                componentAssociationsVector.get(componentIndex).add(
-                        edge.second);
-                componentAssociationsArray[edge.second] = componentIndex;
-                visitComponent(componentIndex, edge.second);
-            }
-            edge = edge.next;
+    private int find(int vertexIndex) {
+        while (parents[vertexIndex] != vertexIndex) {
+            parents[vertexIndex] = parents[parents[vertexIndex]];
+            vertexIndex = parents[vertexIndex];
         }
+        return vertexIndex;
+    }
+
+    /**
+     * Merges the trees containing the two vertices.
+     *
+     * @param first Integer that is the first vertex index.
+     * @param second Integer that is the second vertex index.
+     */
+    private void union(int first, int second) {
+        int firstRoot = find(first);
+        int secondRoot = find(second);
+        if (firstRoot == secondRoot) {
+            return;
+        }
+        if (treeSizes[firstRoot] < treeSizes[secondRoot]) {
+            int tmp = firstRoot;
+            firstRoot = secondRoot;
+            secondRoot = tmp;
+        }
+        parents[secondRoot] = firstRoot;
+        treeSizes[firstRoot] += treeSizes[secondRoot];
     }
 
     /**
@@ -128,6 +194,9 @@ public class ConnectedComponents {
      * @throws Exception
      */
     public void generateGraphsForComponents() throws Exception {
+        if (g == null) {
+            throw new Exception("Component subgraphs require a DMGraph.");
+        }
         components = new DMGraph[numComponents];
         for (int componentIndex = 0; componentIndex < numComponents;
                 componentIndex++) {
@@ -32,8 +32,8 @@ import images.mining.codebook.SIFTCodebookMaker;
 import ioformat.FileUtil;
 import ioformat.IOARFF;
 import ioformat.images.ConvertJPGToPGM;
+import ioformat.images.ImageCollectionIngestor;
 import ioformat.images.SiftUtil;
-import ioformat.images.ThumbnailMaker;
 import java.awt.Color;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
@@ -858,7 +858,8 @@ public class ImageCollectionHandler extends javax.swing.JFrame {
                 // Set all the corresponding files and file paths.
                 clustersFile = new File(workspace, "clusteredImages.arff");
                 siftDirectory = new File(workspace, "SIFT_representation");
-                thumbnailsDirectory = new File(workspace, "thumbs");
+                thumbnailsDirectory = new File(workspace,
+                        ImageCollectionIngestor.THUMBNAILS_DIRECTORY_NAME);
                 siftHistogramDirectory = new File(workspace, "SIFT_histograms");
                 siftHistogramFile = new File(siftHistogramDirectory,
                         "SIFTCodebookDistributions.arff");
@@ -2262,41 +2263,38 @@ public class ImageCollectionHandler extends javax.swing.JFrame {
         @Override
         public void run() {
             try {
-                File inFile;
-                BufferedImage currImage = null;
-                File thumbFile = null;
-                ThumbnailMaker tm = new ThumbnailMaker();
                 if (imageRelativePaths != null) {
-                    // Go through all the images.
-                    for (int i = 0; i < imageRelativePaths.size(); i++) {
-                        statusValueLabel.setText("Converting file "
-                                + imageRelativePaths.get(i));
-                        inFile = new File(imagesDirectory,
-                                imageRelativePaths.get(i));
-                        thumbFile = new File(thumbnailsDirectory,
-                                imageRelativePaths.get(i));
-                        try {
-                            // Load the current image.
-                            currImage = ImageIO.read(inFile);
-                        } catch (Exception e) {
-                            statusValueLabel.setText(e.getMessage());
-                            System.err.println(e.getMessage());
-                        }
-                        try {
-                            // Create and save the thumbnail.
-                            ImageIO.write(tm.createThumbnail(currImage), "JPG",
-                                    thumbFile);
-                        } catch (Exception e) {
-                            statusValueLabel.setText(e.getMessage());
-                            System.err.println(e.getMessage());
+                    // The thumbnails are made in parallel and also packed into
+                    // a single atlas file that the explorer can attach to.
+                    final ImageCollectionIngestor ingestor =
+                            new ImageCollectionIngestor();
+                    final int numImages = imageRelativePaths.size();
+                    statusValueLabel.setText("Making thumbnails...");
+                    Thread ingestionThread = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                ingestor.makeThumbnails(imagesDirectory,
+                                        imageRelativePaths,
+                                        ImageCollectionIngestor.getAtlasFile(
+                                        workspace), thumbnailsDirectory);
+                            } catch (Exception e) {
+                                statusValueLabel.setText(e.getMessage());
+                                System.err.println(e.getMessage());
+                            }
                         }
-                        currProgressPercentage = (int) ((float) i
-                                / (float) (imageRelativePaths.size()) * 100);
+                    });
+                    ingestionThread.start();
+                    // Report the progress while the thumbnails are made.
+                    while (ingestionThread.isAlive()) {
+                        currProgressPercentage = (int) ((float) ingestor.
+                                getNumProcessed() / (float) numImages * 100);
                         progressBar.setValue(currProgressPercentage);
-                        if (i % 10 == 0) {
-                            System.gc();
-                        }
+                        ingestionThread.join(200);
                     }
+                    currProgressPercentage = 100;
+                    progressBar.setValue(currProgressPercentage);
+                    statusValueLabel.setText("Thumbnails created.");
                 }
             } catch (Exception e) {
                 statusValueLabel.setText(e.getMessage());
@@ -51,7 +51,9 @@ import edu.uci.ics.jung.visualization.picking.PickedState;
 import ioformat.FileUtil;
 import ioformat.IOARFF;
 import ioformat.images.ConvertJPGToPGM;
+import ioformat.images.ImageCollectionIngestor;
 import ioformat.images.SiftUtil;
+import ioformat.images.ThumbnailAtlas;
 import java.awt.Color;
 import java.awt.Component;
 import java.awt.ComponentOrientation;
@@ -74,7 +76,10 @@ import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Vector;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import javax.imageio.ImageIO;
 import javax.swing.*;
 import javax.swing.event.ChangeEvent;
@@ -153,8 +158,10 @@ public class ImageHubExplorer extends javax.swing.JFrame {
     private volatile boolean busyCalculating = false;
     // Image data that is being analyzed.
     private BufferedImage[] images;
-    // Thumbnails of the images for visualization.
-    private ArrayList<BufferedImage> thumbnails;
+    // Thumbnails of the images for visualization. When a thumbnail atlas is
+    // available, they are decoded lazily from the open atlas.
+    private List<BufferedImage> thumbnails;
+    private ThumbnailAtlas thumbnailAtlas;
     // Reverse neighbor sets for all the images for all the neighborhood sizes.
     private ArrayList<Integer>[][] rnnSetsAllK;
     // Neighbor occurrence profiles for all neighborhood sizes.
@@ -5474,7 +5481,6 @@ private void mdsVisualizeItemActionPerformed(java.awt.event.ActionEvent evt) {//
                 File imageFile;
                 // Load the thumbnails, a list of image paths, make a path map.
                 images = new BufferedImage[quantizedRepresentation.size()];
-                thumbnails = new ArrayList<>(quantizedRepresentation.size());
                 imgPaths = new ArrayList<>(quantizedRepresentation.size());
                 imgThumbPaths = new ArrayList<>(quantizedRepresentation.size());
                 pathIndexMap =
@@ -5482,23 +5488,20 @@ private void mdsVisualizeItemActionPerformed(java.awt.event.ActionEvent evt) {//
                 pathIndexMapThumbnail =
                         new HashMap<>(4 * quantizedRepresentation.size());
                 for (int i = 0; i < quantizedRepresentation.size(); i++) {
-                    imageFile = new File(workspace, "photos"
+                    imageFile = new File(workspace,
+                            ImageCollectionIngestor.PHOTOS_DIRECTORY_NAME
                             + quantizedRepresentation.getInstance(i).sAttr[
                             pathFeatureIndex]);
                     imgPaths.add(imageFile.getPath());
                     pathIndexMap.put(imageFile.getPath(), i);
-                    imageFile = new File(workspace, "thumbnails"
+                    imageFile = new File(workspace,
+                            ImageCollectionIngestor.THUMBNAILS_DIRECTORY_NAME
                             + quantizedRepresentation.getInstance(i).sAttr[
                             pathFeatureIndex]);
                     imgThumbPaths.add(imageFile.getPath());
                     pathIndexMapThumbnail.put(imageFile.getPath(), i);
-                    try {
-                        thumbnails.add(ImageIO.read(imageFile));
-                    } catch (Exception e) {
-                        System.err.println(e.getMessage());
-                        System.out.println(imageFile.getPath());
-                    }
                 }
+                thumbnails = loadThumbnails(pathFeatureIndex);
                 JOptionPane.showMessageDialog(frameReference,
                         "Import completed");
             } catch (IOException | HeadlessException eSecond) {
@@ -5509,6 +5512,79 @@ private void mdsVisualizeItemActionPerformed(java.awt.event.ActionEvent evt) {//
         }
     }
 
+    /**
+     * Loads the thumbnails of the images in the quantized representation. If
+     * the workspace contains a thumbnail atlas that covers all the images, the
+     * atlas is kept open and the thumbnails are decoded from it on demand.
+     * Otherwise, the individual thumbnail files are read in parallel.
+     *
+     * @param pathFeatureIndex Integer that is the index of the relative path
+     * feature.
+     * @return List<BufferedImage> of the thumbnails, in the representation
+     * order.
+     */
+    private List<BufferedImage> loadThumbnails(int pathFeatureIndex) {
+        closeThumbnailAtlas();
+        int size = quantizedRepresentation.size();
+        File atlasFile = ImageCollectionIngestor.getAtlasFile(workspace);
+        if (atlasFile.exists()) {
+            ThumbnailAtlas atlas = null;
+            try {
+                atlas = new ThumbnailAtlas(atlasFile);
+                int[] entries = new int[size];
+                for (int i = 0; i < size; i++) {
+                    entries[i] = atlas.getIndex(quantizedRepresentation.
+                            getInstance(i).sAttr[pathFeatureIndex]);
+                    if (entries[i] < 0) {
+                        Logger.getLogger(ImageHubExplorer.class.getName()).
+                                log(Level.WARNING, "The thumbnail atlas {0} "
+                                + "does not match the representation, loading "
+                                + "individual thumbnails.", atlasFile);
+                        entries = null;
+                        break;
+                    }
+                }
+                if (entries != null) {
+                    thumbnailAtlas = atlas;
+                    atlas = null;
+                    return thumbnailAtlas.getLazyThumbnails(entries);
+                }
+            } catch (IOException e) {
+                Logger.getLogger(ImageHubExplorer.class.getName()).log(
+                        Level.WARNING, null, e);
+            } finally {
+                if (atlas != null) {
+                    try {
+                        atlas.close();
+                    } catch (IOException e) {
+                        System.err.println(e.getMessage());
+                    }
+                }
+            }
+        }
+        File[] thumbFiles = new File[size];
+        for (int i = 0; i < size; i++) {
+            thumbFiles[i] = new File(imgThumbPaths.get(i));
+        }
+        return new ArrayList<>(Arrays.asList(ImageCollectionIngestor.
+                loadImages(thumbFiles,
+                Runtime.getRuntime().availableProcessors())));
+    }
+
+    /**
+     * Closes the currently open thumbnail atlas, if any.
+     */
+    private void closeThumbnailAtlas() {
+        if (thumbnailAtlas != null) {
+            try {
+                thumbnailAtlas.close();
+            } catch (IOException e) {
+                System.err.println(e.getMessage());
+            }
+            thumbnailAtlas = null;
+        }
+    }
+
     /**
      * Load distances and neighbor sets.
      *
@@ -5525,6 +5601,50 @@ private void mdsVisualizeItemActionPerformed(java.awt.event.ActionEvent evt) {//
         t.start();
     }
 
+    /**
+     * This class loads a distance matrix from a file, so that it can be done
+     * concurrently with loading the kNN sets.
+     */
+    private class DMatLoader implements Runnable {
+
+        private File matFile;
+        private float[][] dMat = null;
+        private Exception failure = null;
+
+        /**
+         * Initialization.
+         *
+         * @param matFile File that is the distance matrix file.
+         */
+        public DMatLoader(File matFile) {
+            this.matFile = matFile;
+        }
+
+        /**
+         * @return float[][] that is the loaded distance matrix, or null if
+         * there was no matrix to load.
+         * @throws Exception if the matrix file could not be loaded.
+         */
+        public float[][] getDMat() throws Exception {
+            if (failure != null) {
+                throw failure;
+            }
+            return dMat;
+        }
+
+        @Override
+        public void run() {
+            if (!matFile.exists()) {
+                return;
+            }
+            try {
+                dMat = loadDMatFromFile(matFile);
+            } catch (Exception e) {
+                failure = e;
+            }
+        }
+    }
+
     /**
      * This class loads the distances and neighbor sets from the files on the
      * disk.
@@ -5564,15 +5684,27 @@ private void mdsVisualizeItemActionPerformed(java.awt.event.ActionEvent evt) {//
                 trainedModels = false;
                 if (distanceModeIndicator % 2 == PRIMARY_METRIC) {
                     // Primary matrix load.
-                    if (matFile.exists()) {
-                        distMatrixPrimary = loadDMatFromFile(matFile);
-                    }
-                    // Load or calculate the neighbors.
                     if (neighborsFile.exists()) {
-                        nsfPrimary = NeighborSetFinder.loadNSF(
+                        // The distance matrix and the kNN sets are loaded
+                        // concurrently.
+                        DMatLoader matLoader = new DMatLoader(matFile);
+                        Thread matThread = new Thread(matLoader);
+                        matThread.start();
+                        NeighborSetFinder loadedNSF = NeighborSetFinder.loadNSF(
                                 neighborsFile, quantizedRepresentation);
+                        matThread.join();
+                        // A failed matrix load is reported before any of the
+                        // current distances and neighbor sets are replaced.
+                        float[][] loadedDMat = matLoader.getDMat();
+                        nsfPrimary = loadedNSF;
+                        if (loadedDMat != null) {
+                            distMatrixPrimary = loadedDMat;
+                        }
                         nsfPrimary.setDistances(distMatrixPrimary);
                     } else {
+                        if (matFile.exists()) {
+                            distMatrixPrimary = loadDMatFromFile(matFile);
+                        }
                         nsfPrimary = new NeighborSetFinder(
                                 quantizedRepresentation, distMatrixPrimary,
                                 primaryCMet);
@@ -5580,15 +5712,27 @@ private void mdsVisualizeItemActionPerformed(java.awt.event.ActionEvent evt) {//
                     }
                 } else {
                     // Secondary distance load.
-                    if (matFile.exists()) {
-                        distMatrixSecondary = loadDMatFromFile(matFile);
-                    }
-                    // Load or calculate the neighbors.
                     if (neighborsFile.exists()) {
-                        nsfSecondary = NeighborSetFinder.loadNSF(
+                        // The distance matrix and the kNN sets are loaded
+                        // concurrently.
+                        DMatLoader matLoader = new DMatLoader(matFile);
+                        Thread matThread = new Thread(matLoader);
+                        matThread.start();
+                        NeighborSetFinder loadedNSF = NeighborSetFinder.loadNSF(
                                 neighborsFile, quantizedRepresentation);
+                        matThread.join();
+                        // A failed matrix load is reported before any of the
+                        // current distances and neighbor sets are replaced.
+                        float[][] loadedDMat = matLoader.getDMat();
+                        nsfSecondary = loadedNSF;
+                        if (loadedDMat != null) {
+                            distMatrixSecondary = loadedDMat;
+                        }
                         nsfSecondary.setDistances(distMatrixSecondary);
                     } else {
+                        if (matFile.exists()) {
+                            distMatrixSecondary = loadDMatFromFile(matFile);
+                        }
                         if (secondaryCMet == null) {
                             secondaryCMet = new MutualProximityCalculator(
                                     distMatrixPrimary, quantizedRepresentation,
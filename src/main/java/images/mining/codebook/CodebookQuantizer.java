@@ -0,0 +1,687 @@
+/**
+* Hub Miner: a hubness-aware machine learning experimentation library.
+* Copyright (C) 2014  Nenad Tomasev. Email: nenad.tomasev at gmail.com
+* 
+* This program is free software: you can redistribute it and/or modify it under
+* the terms of the GNU General Public License as published by the Free Software
+* Foundation, either version 3 of the License, or (at your option) any later
+* version.
+* 
+* This program is distributed in the hope that it will be useful, but WITHOUT
+* ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+* FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License along with
+* this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+package images.mining.codebook;
+
+import data.representation.DataSet;
+import data.representation.images.quantized.QuantizedImageHistogram;
+import data.representation.images.quantized.QuantizedImageHistogramDataSet;
+import ioformat.images.LocalFeatureStore;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * This class implements fast Euclidean nearest codeword assignment for
+ * feature quantization. The codebook is packed into a contiguous float array.
+ * The assignment can either be exact, by a scan with partial distance
+ * elimination, or approximate, by a priority search in a hierarchical k-means
+ * tree built over the codewords. In the tree search, the unexplored branches
+ * are kept in a priority queue ordered by the distance to the branch centers
+ * and the search stops after a fixed number of distance calculations, to the
+ * codewords and the branch centers.
+ * Per-image histograms are calculated in parallel. The descriptors are read
+ * from the trailing part of the feature arrays, which allows for skipping the
+ * keypoint information in local image features.
+ *
+ * @author Nenad Tomasev <nenad.tomasev at gmail.com>
+ */
+public class CodebookQuantizer {
+
+    public static final int EXACT = 0;
+    public static final int KMEANS_TREE = 1;
+    public static final int DEFAULT_BRANCHING = 16;
+    public static final int DEFAULT_MAX_CHECKS = 256;
+    // The number of k-means iterations when splitting the tree nodes.
+    private static final int NUM_SPLIT_ITERATIONS = 8;
+    // Packed codewords, in row-major order.
+    private float[] codewords;
+    private int size;
+    private int dim;
+    private int mode = EXACT;
+    private int branching = DEFAULT_BRANCHING;
+    private int maxChecks = DEFAULT_MAX_CHECKS;
+    private int numThreads = Runtime.getRuntime().availableProcessors();
+    // The tree nodes. Each node has a center, and either a range of child
+    // nodes or a range of codeword indexes in the leaf item array.
+    private float[] nodeCenters;
+    private int[] nodeChildStart;
+    private int[] nodeChildCount;
+    private int[] nodeItemStart;
+    private int[] nodeItemCount;
+    private int[] leafItems;
+    private int numNodes;
+
+    /**
+     * Initialization.
+     *
+     * @param codebookVectors Float 2D array of codewords.
+     * @param offset Integer that is the index of the first descriptor value
+     * in the codewords.
+     */
+    public CodebookQuantizer(float[][] codebookVectors, int offset) {
+        size = codebookVectors.length;
+        dim = size > 0 ? codebookVectors[0].length - offset : 0;
+        codewords = new float[size * dim];
+        for (int i = 0; i < size; i++) {
+            System.arraycopy(codebookVectors[i], offset, codewords, i * dim,
+                    dim);
+        }
+    }
+
+    /**
+     * @return Integer that is the codebook size.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * @return Integer that is the descriptor length.
+     */
+    public int getDescriptorLength() {
+        return dim;
+    }
+
+    /**
+     * @param numThreads Integer that is the number of threads to use.
+     */
+    public void setNumThreads(int numThreads) {
+        this.numThreads = Math.max(1, numThreads);
+    }
+
+    /**
+     * @param maxChecks Integer that is the maximal number of distance
+     * calculations in the approximate search.
+     */
+    public void setMaxChecks(int maxChecks) {
+        this.maxChecks = Math.max(1, maxChecks);
+    }
+
+    /**
+     * Switches to exact assignment.
+     */
+    public void useExactSearch() {
+        mode = EXACT;
+    }
+
+    /**
+     * Builds the hierarchical k-means tree over the codewords and switches to
+     * approximate assignment.
+     *
+     * @param branching Integer that is the branching factor of the tree.
+     * @param maxChecks Integer that is the maximal number of distance
+     * calculations in the search.
+     */
+    public void buildKMeansTree(int branching, int maxChecks) {
+        this.branching = Math.max(2, branching);
+        this.maxChecks = Math.max(1, maxChecks);
+        int maxNodes = 2 * size + 1;
+        nodeCenters = new float[maxNodes * dim];
+        nodeChildStart = new int[maxNodes];
+        nodeChildCount = new int[maxNodes];
+        nodeItemStart = new int[maxNodes];
+        nodeItemCount = new int[maxNodes];
+        leafItems = new int[size];
+        int[] items = new int[size];
+        for (int i = 0; i < size; i++) {
+            items[i] = i;
+        }
+        numNodes = 1;
+        Random randa = new Random(size);
+        int[] leafPosition = new int[1];
+        buildNode(0, items, randa, leafPosition);
+        mode = KMEANS_TREE;
+    }
+
+    /**
+     * Recursively builds a tree node.
+     *
+     * @param node Integer that is the node index.
+     * @param items Integer array of codeword indexes within the node.
+     * @param randa Random number generator.
+     * @param leafPosition Integer array holding the current position in the
+     * leaf item array.
+     */
+    private void buildNode(int node, int[] items, Random randa,
+            int[] leafPosition) {
+        int nodeOffset = node * dim;
+        for (int item : items) {
+            for (int d = 0; d < dim; d++) {
+                nodeCenters[nodeOffset + d] += codewords[item * dim + d];
+            }
+        }
+        for (int d = 0; d < dim; d++) {
+            nodeCenters[nodeOffset + d] /= items.length;
+        }
+        // Nodes are only split when the children are expected to hold more
+        // than a couple of codewords each.
+        int[] assignments = items.length > 4 * branching
+                ? splitItems(items, randa) : null;
+        if (assignments == null) {
+            // Leaf node.
+            nodeItemStart[node] = leafPosition[0];
+            nodeItemCount[node] = items.length;
+            System.arraycopy(items, 0, leafItems, leafPosition[0],
+                    items.length);
+            leafPosition[0] += items.length;
+            return;
+        }
+        int[] clusterSizes = new int[branching];
+        for (int assignment : assignments) {
+            clusterSizes[assignment]++;
+        }
+        int numChildren = 0;
+        for (int c = 0; c < branching; c++) {
+            if (clusterSizes[c] > 0) {
+                numChildren++;
+            }
+        }
+        nodeChildStart[node] = numNodes;
+        nodeChildCount[node] = numChildren;
+        int firstChild = numNodes;
+        numNodes += numChildren;
+        int child = firstChild;
+        for (int c = 0; c < branching; c++) {
+            if (clusterSizes[c] == 0) {
+                continue;
+            }
+            int[] childItems = new int[clusterSizes[c]];
+            int index = 0;
+            for (int i = 0; i < items.length; i++) {
+                if (assignments[i] == c) {
+                    childItems[index++] = items[i];
+                }
+            }
+            buildNode(child++, childItems, randa, leafPosition);
+        }
+    }
+
+    /**
+     * Splits the codewords by k-means.
+     *
+     * @param items Integer array of codeword indexes.
+     * @param randa Random number generator.
+     * @return Integer array of cluster assignments, or null if the codewords
+     * can not be split.
+     */
+    private int[] splitItems(int[] items, Random randa) {
+        float[] centers = new float[branching * dim];
+        // Random distinct initial centers.
+        int[] permutation = Arrays.copyOf(items, items.length);
+        for (int c = 0; c < branching; c++) {
+            int j = c + randa.nextInt(permutation.length - c);
+            int tmp = permutation[c];
+            permutation[c] = permutation[j];
+            permutation[j] = tmp;
+            System.arraycopy(codewords, permutation[c] * dim, centers,
+                    c * dim, dim);
+        }
+        int[] assignments = new int[items.length];
+        int[] counts = new int[branching];
+        for (int iteration = 0; iteration < NUM_SPLIT_ITERATIONS;
+                iteration++) {
+            for (int i = 0; i < items.length; i++) {
+                assignments[i] = closestCenter(codewords, items[i] * dim,
+                        centers, branching);
+            }
+            Arrays.fill(centers, 0);
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < items.length; i++) {
+                int centerOffset = assignments[i] * dim;
+                int itemOffset = items[i] * dim;
+                for (int d = 0; d < dim; d++) {
+                    centers[centerOffset + d] += codewords[itemOffset + d];
+                }
+                counts[assignments[i]]++;
+            }
+            for (int c = 0; c < branching; c++) {
+                if (counts[c] == 0) {
+                    // Re-seed empty clusters.
+                    System.arraycopy(codewords,
+                            items[randa.nextInt(items.length)] * dim,
+                            centers, c * dim, dim);
+                    continue;
+                }
+                for (int d = 0; d < dim; d++) {
+                    centers[c * dim + d] /= counts[c];
+                }
+            }
+        }
+        for (int i = 0; i < items.length; i++) {
+            assignments[i] = closestCenter(codewords, items[i] * dim,
+                    centers, branching);
+        }
+        int firstCluster = assignments[0];
+        for (int i = 1; i < items.length; i++) {
+            if (assignments[i] != firstCluster) {
+                return assignments;
+            }
+        }
+        // All codewords ended up in the same cluster, so they are likely to
+        // be duplicates.
+        return null;
+    }
+
+    /**
+     * @param values Float array holding the vector.
+     * @param offset Integer that is the offset of the vector.
+     * @param centers Float array of packed centers.
+     * @param numCenters Integer that is the number of centers.
+     * @return Integer that is the index of the closest center.
+     */
+    private int closestCenter(float[] values, int offset, float[] centers,
+            int numCenters) {
+        int closest = 0;
+        float minDist = Float.MAX_VALUE;
+        for (int c = 0; c < numCenters; c++) {
+            float sqDist = squaredDistance(values, offset, centers, c * dim,
+                    minDist);
+            if (sqDist < minDist) {
+                minDist = sqDist;
+                closest = c;
+            }
+        }
+        return closest;
+    }
+
+    /**
+     * Calculates the squared Euclidean distance between two vectors, with
+     * early termination once the distance exceeds a bound.
+     *
+     * @param first Float array holding the first vector.
+     * @param firstOffset Integer that is the offset of the first vector.
+     * @param second Float array holding the second vector.
+     * @param secondOffset Integer that is the offset of the second vector.
+     * @param bound Float that is the bound. Once it is exceeded, the partial
+     * sum is returned.
+     * @return Float that is the squared distance, or a partial sum that is
+     * greater than the bound.
+     */
+    private float squaredDistance(float[] first, int firstOffset,
+            float[] second, int secondOffset, float bound) {
+        float sum = 0;
+        int d = 0;
+        while (d < dim) {
+            // Check the bound once per block of dimensions.
+            int blockEnd = Math.min(d + 16, dim);
+            for (; d < blockEnd; d++) {
+                float diff = first[firstOffset + d] - second[secondOffset + d];
+                sum += diff * diff;
+            }
+            if (sum > bound) {
+                return sum;
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Finds the closest codeword.
+     *
+     * @param vector Float array that is the feature vector. The descriptor is
+     * taken to be its trailing part of the codeword length.
+     * @return Integer that is the index of the closest codeword.
+     */
+    public int assign(float[] vector) {
+        return assign(vector, vector.length - dim, null);
+    }
+
+    /**
+     * Finds the closest codeword.
+     *
+     * @param vector Float array holding the descriptor.
+     * @param offset Integer that is the index of the first descriptor value.
+     * @return Integer that is the index of the closest codeword.
+     */
+    public int assign(float[] vector, int offset) {
+        return assign(vector, offset, null);
+    }
+
+    /**
+     * Finds the closest codeword.
+     *
+     * @param vector Float array holding the descriptor.
+     * @param offset Integer that is the index of the first descriptor value.
+     * @param queue BranchQueue to use in the tree search, or null.
+     * @return Integer that is the index of the closest codeword.
+     */
+    private int assign(float[] vector, int offset, BranchQueue queue) {
+        if (mode == EXACT || maxChecks >= size) {
+            return closestCenter(vector, offset, codewords, size);
+        }
+        if (queue == null) {
+            queue = new BranchQueue();
+        }
+        queue.clear();
+        int closest = -1;
+        float minDist = Float.MAX_VALUE;
+        int numChecks = 0;
+        int node = 0;
+        while (true) {
+            // Descend to a leaf, queueing the other branches.
+            while (nodeChildCount[node] > 0) {
+                int bestChild = -1;
+                float bestChildDist = Float.MAX_VALUE;
+                int childEnd = nodeChildStart[node] + nodeChildCount[node];
+                for (int child = nodeChildStart[node]; child < childEnd;
+                        child++) {
+                    float sqDist = squaredDistance(vector, offset,
+                            nodeCenters, child * dim, Float.MAX_VALUE);
+                    if (sqDist < bestChildDist) {
+                        if (bestChild >= 0) {
+                            queue.push(bestChildDist, bestChild);
+                        }
+                        bestChildDist = sqDist;
+                        bestChild = child;
+                    } else {
+                        queue.push(sqDist, child);
+                    }
+                }
+                numChecks += nodeChildCount[node];
+                node = bestChild;
+            }
+            int itemEnd = nodeItemStart[node] + nodeItemCount[node];
+            for (int i = nodeItemStart[node]; i < itemEnd; i++) {
+                int item = leafItems[i];
+                float sqDist = squaredDistance(vector, offset, codewords,
+                        item * dim, minDist);
+                if (sqDist < minDist) {
+                    minDist = sqDist;
+                    closest = item;
+                }
+            }
+            numChecks += nodeItemCount[node];
+            if (numChecks >= maxChecks || queue.isEmpty()) {
+                break;
+            }
+            node = queue.pop();
+        }
+        return closest;
+    }
+
+    /**
+     * Calculates the codeword histogram of a set of features.
+     *
+     * @param features DataSet of features.
+     * @param histogram Integer array to increment the codeword counts in.
+     * @param queue BranchQueue to use in the tree search.
+     */
+    private void fillHistogram(DataSet features, int[] histogram,
+            BranchQueue queue) {
+        for (int i = 0; i < features.size(); i++) {
+            float[] vector = features.getInstance(i).fAttr;
+            histogram[assign(vector, vector.length - dim, queue)]++;
+        }
+    }
+
+    /**
+     * @param features DataSet of features, where the descriptors are the
+     * trailing parts of the float feature arrays.
+     * @return Integer array that is the codeword histogram.
+     */
+    public int[] getHistogram(DataSet features) {
+        int[] histogram = new int[size];
+        if (features != null) {
+            fillHistogram(features, histogram, new BranchQueue());
+        }
+        return histogram;
+    }
+
+    /**
+     * Quantizes a collection of images in parallel and adds the histograms to
+     * the histogram data context, in the order of the image representations.
+     *
+     * @param imageReps ArrayList of image feature representations, where the
+     * descriptors are the trailing parts of the float feature arrays.
+     * @param paths String array of image paths.
+     * @param qihDSet QuantizedImageHistogramDataSet to add the histograms to.
+     * @return QuantizedImageHistogram array of the calculated histograms.
+     */
+    public QuantizedImageHistogram[] quantizeCollection(
+            ArrayList<? extends DataSet> imageReps, String[] paths,
+            QuantizedImageHistogramDataSet qihDSet) {
+        int numImages = imageReps.size();
+        QuantizedImageHistogram[] histograms =
+                new QuantizedImageHistogram[numImages];
+        for (int i = 0; i < numImages; i++) {
+            histograms[i] = new QuantizedImageHistogram(qihDSet);
+            if (paths != null) {
+                histograms[i].setPath(paths[i]);
+            }
+        }
+        int threadNum = Math.max(1, Math.min(numThreads, numImages));
+        Thread[] threads = new Thread[threadNum];
+        int chunkSize = (numImages + threadNum - 1) / threadNum;
+        for (int t = 0; t < threadNum; t++) {
+            int startIndex = Math.min(t * chunkSize, numImages);
+            int endIndex = Math.min(startIndex + chunkSize, numImages);
+            threads[t] = new Thread(new HistogramWorker(imageReps, histograms,
+                    startIndex, endIndex));
+            threads[t].start();
+        }
+        for (int t = 0; t < threadNum; t++) {
+            try {
+                threads[t].join();
+            } catch (Throwable thr) {
+                System.err.println(thr.getMessage());
+            }
+        }
+        for (int i = 0; i < numImages; i++) {
+            qihDSet.addDataInstance(histograms[i]);
+        }
+        return histograms;
+    }
+
+    /**
+     * Quantizes all images in a binary feature store in parallel and adds the
+     * histograms to the histogram data context, in the order of the images
+     * in the store. The descriptors are read directly from the mapped store.
+     *
+     * @param store LocalFeatureStore holding the image features.
+     * @param qihDSet QuantizedImageHistogramDataSet to add the histograms to.
+     * @return QuantizedImageHistogram array of the calculated histograms.
+     */
+    public QuantizedImageHistogram[] quantizeCollection(
+            LocalFeatureStore store, QuantizedImageHistogramDataSet qihDSet) {
+        if (store.getDescriptorLength() != dim) {
+            throw new IllegalArgumentException("Descriptor length "
+                    + store.getDescriptorLength() + " does not match the "
+                    + "codeword length " + dim);
+        }
+        int numImages = store.getNumImages();
+        QuantizedImageHistogram[] histograms =
+                new QuantizedImageHistogram[numImages];
+        for (int i = 0; i < numImages; i++) {
+            histograms[i] = new QuantizedImageHistogram(qihDSet);
+            histograms[i].setPath(store.getImageName(i));
+        }
+        int threadNum = Math.max(1, Math.min(numThreads, numImages));
+        Thread[] threads = new Thread[threadNum];
+        int chunkSize = (numImages + threadNum - 1) / threadNum;
+        for (int t = 0; t < threadNum; t++) {
+            int startIndex = Math.min(t * chunkSize, numImages);
+            int endIndex = Math.min(startIndex + chunkSize, numImages);
+            threads[t] = new Thread(new StoreHistogramWorker(store,
+                    histograms, startIndex, endIndex));
+            threads[t].start();
+        }
+        for (int t = 0; t < threadNum; t++) {
+            try {
+                threads[t].join();
+            } catch (Throwable thr) {
+                System.err.println(thr.getMessage());
+            }
+        }
+        for (int i = 0; i < numImages; i++) {
+            qihDSet.addDataInstance(histograms[i]);
+        }
+        return histograms;
+    }
+
+    /**
+     * This worker quantizes a range of images from a feature store.
+     */
+    class StoreHistogramWorker implements Runnable {
+
+        private LocalFeatureStore store;
+        private QuantizedImageHistogram[] histograms;
+        private int startIndex;
+        private int endIndex;
+
+        /**
+         * Initialization.
+         *
+         * @param store LocalFeatureStore holding the image features.
+         * @param histograms QuantizedImageHistogram array to fill in.
+         * @param startIndex Integer that is the start image, inclusive.
+         * @param endIndex Integer that is the end image, exclusive.
+         */
+        public StoreHistogramWorker(LocalFeatureStore store,
+                QuantizedImageHistogram[] histograms, int startIndex,
+                int endIndex) {
+            this.store = store;
+            this.histograms = histograms;
+            this.startIndex = startIndex;
+            this.endIndex = endIndex;
+        }
+
+        @Override
+        public void run() {
+            BranchQueue queue = new BranchQueue();
+            float[] descriptor = new float[dim];
+            for (int i = startIndex; i < endIndex; i++) {
+                int[] histogram = histograms[i].iAttr;
+                long start = store.getFeatureStart(i);
+                long end = start + store.getNumFeatures(i);
+                for (long feature = start; feature < end; feature++) {
+                    store.getDescriptor(feature, descriptor, 0);
+                    histogram[assign(descriptor, 0, queue)]++;
+                }
+            }
+        }
+    }
+
+    /**
+     * This worker quantizes a range of images.
+     */
+    class HistogramWorker implements Runnable {
+
+        private ArrayList<? extends DataSet> imageReps;
+        private QuantizedImageHistogram[] histograms;
+        private int startIndex;
+        private int endIndex;
+
+        /**
+         * Initialization.
+         *
+         * @param imageReps ArrayList of image feature representations.
+         * @param histograms QuantizedImageHistogram array to fill in.
+         * @param startIndex Integer that is the start index, inclusive.
+         * @param endIndex Integer that is the end index, exclusive.
+         */
+        public HistogramWorker(ArrayList<? extends DataSet> imageReps,
+                QuantizedImageHistogram[] histograms, int startIndex,
+                int endIndex) {
+            this.imageReps = imageReps;
+            this.histograms = histograms;
+            this.startIndex = startIndex;
+            this.endIndex = endIndex;
+        }
+
+        @Override
+        public void run() {
+            BranchQueue queue = new BranchQueue();
+            for (int i = startIndex; i < endIndex; i++) {
+                if (imageReps.get(i) != null) {
+                    fillHistogram(imageReps.get(i), histograms[i].iAttr,
+                            queue);
+                }
+            }
+        }
+    }
+
+    /**
+     * A binary min-heap of tree branches keyed by the distance to the branch
+     * center.
+     */
+    static class BranchQueue {
+
+        private float[] keys = new float[64];
+        private int[] nodes = new int[64];
+        private int count = 0;
+
+        void clear() {
+            count = 0;
+        }
+
+        boolean isEmpty() {
+            return count == 0;
+        }
+
+        /**
+         * @param key Float that is the distance to the branch center.
+         * @param node Integer that is the branch node.
+         */
+        void push(float key, int node) {
+            if (count == keys.length) {
+                keys = Arrays.copyOf(keys, 2 * count);
+                nodes = Arrays.copyOf(nodes, 2 * count);
+            }
+            int position = count++;
+            while (position > 0) {
+                int parent = (position - 1) >> 1;
+                if (keys[parent] <= key) {
+                    break;
+                }
+                keys[position] = keys[parent];
+                nodes[position] = nodes[parent];
+                position = parent;
+            }
+            keys[position] = key;
+            nodes[position] = node;
+        }
+
+        /**
+         * @return Integer that is the closest queued branch node.
+         */
+        int pop() {
+            int result = nodes[0];
+            count--;
+            float key = keys[count];
+            int node = nodes[count];
+            int position = 0;
+            while (true) {
+                int child = 2 * position + 1;
+                if (child >= count) {
+                    break;
+                }
+                if (child + 1 < count && keys[child + 1] < keys[child]) {
+                    child++;
+                }
+                if (keys[child] >= key) {
+                    break;
+                }
+                keys[position] = keys[child];
+                nodes[position] = nodes[child];
+                position = child;
+            }
+            keys[position] = key;
+            nodes[position] = node;
+            return result;
+        }
+    }
+}
@@ -23,6 +23,7 @@ import data.representation.images.quantized.QuantizedImageDistributionDataSet;
 import data.representation.images.quantized.QuantizedImageHistogram;
 import data.representation.images.quantized.QuantizedImageHistogramDataSet;
 import distances.primary.CombinedMetric;
+import distances.primary.MinkowskiMetric;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
@@ -42,12 +43,19 @@ public class GenericCodeBook {
     // Feature vectors that define the codeboook.
     private ArrayList<DataInstance> codebook = new ArrayList<>();
     private CombinedMetric cmet = CombinedMetric.FLOAT_EUCLIDEAN;
+    // Packed codebook used for fast codeword assignment under the Euclidean
+    // distance.
+    private CodebookQuantizer quantizer = null;
+    // The number of codewords to check in the approximate search, where zero
+    // denotes exact search.
+    private int maxChecks = 0;
 
     /**
      * @param cmet CombinedMetric object for distance calculations.
      */
     public void setCombinedMetirc(CombinedMetric cmet) {
         this.cmet = cmet;
+        quantizer = null;
     }
 
     /**
@@ -71,6 +79,7 @@ public class GenericCodeBook {
      */
     public void addVectorToCodeBook(DataInstance instance) {
         codebook.add(instance);
+        quantizer = null;
     }
 
     /**
@@ -81,6 +90,89 @@ public class GenericCodeBook {
      */
     public void setCodeBookSet(ArrayList<DataInstance> codebook) {
         this.codebook = codebook;
+        quantizer = null;
+    }
+
+    /**
+     * Switches to approximate codeword assignment by priority search in a
+     * hierarchical k-means tree over the codewords. This only applies to the
+     * Euclidean distance.
+     *
+     * @param maxChecks Integer that is the maximal number of distance
+     * calculations per descriptor.
+     */
+    public synchronized void setApproximateSearch(int maxChecks) {
+        this.maxChecks = Math.max(1, maxChecks);
+        quantizer = null;
+    }
+
+    /**
+     * Switches to exact codeword assignment.
+     */
+    public synchronized void setExactSearch() {
+        maxChecks = 0;
+        quantizer = null;
+    }
+
+    /**
+     * @return True if the codeword assignment is done under the Euclidean
+     * distance on the float features, false otherwise.
+     */
+    private boolean isFloatEuclidean() {
+        return cmet != null && cmet.getFloatMetric() instanceof MinkowskiMetric
+                && ((MinkowskiMetric) cmet.getFloatMetric()).getExponent() == 2
+                && (cmet.getIntegerMetric() == null || !codebook.get(
+                0).hasIntAtt());
+    }
+
+    /**
+     * @return CodebookQuantizer that holds the packed codebook, or null if the
+     * metric is not the Euclidean distance.
+     */
+    public synchronized CodebookQuantizer getQuantizer() {
+        if (quantizer == null && codebook != null && !codebook.isEmpty()
+                && isFloatEuclidean()) {
+            float[][] codebookVectors = new float[codebook.size()][];
+            for (int i = 0; i < codebookVectors.length; i++) {
+                codebookVectors[i] = codebook.get(i).fAttr;
+            }
+            quantizer = new CodebookQuantizer(codebookVectors, 0);
+            if (maxChecks > 0) {
+                quantizer.buildKMeansTree(CodebookQuantizer.DEFAULT_BRANCHING,
+                        maxChecks);
+            }
+        }
+        return quantizer;
+    }
+
+    /**
+     * Generates the quantized representations of a collection of images and
+     * adds them to the histogram data context. The quantization is done in
+     * parallel under the Euclidean distance.
+     *
+     * @param reps ArrayList of DataSet representations of the images.
+     * @param imagePaths String array of image paths.
+     * @param qihDSet QuantizedImageHistogramDataSet data context to add the
+     * quantized representations to.
+     * @return QuantizedImageHistogram array of the quantized representations.
+     * @throws Exception
+     */
+    public QuantizedImageHistogram[] getHistogramsForImageRepresentations(
+            ArrayList<DataSet> reps, String[] imagePaths,
+            QuantizedImageHistogramDataSet qihDSet) throws Exception {
+        CodebookQuantizer codebookQuantizer = getQuantizer();
+        if (codebookQuantizer != null) {
+            return codebookQuantizer.quantizeCollection(reps, imagePaths,
+                    qihDSet);
+        }
+        QuantizedImageHistogram[] histograms =
+                new QuantizedImageHistogram[reps.size()];
+        for (int i = 0; i < histograms.length; i++) {
+            histograms[i] = getHistogramForImageRepresentation(reps.get(i),
+                    qihDSet, imagePaths[i]);
+            qihDSet.addDataInstance(histograms[i]);
+        }
+        return histograms;
     }
 
     /**
@@ -238,6 +330,11 @@ public class GenericCodeBook {
         if (codebook == null || codebook.isEmpty()) {
             throw new Exception("Can not compare to empty codebook.");
         }
+        CodebookQuantizer codebookQuantizer = getQuantizer();
+        if (codebookQuantizer != null && instance.getNumFAtt()
+                >= codebookQuantizer.getDescriptorLength()) {
+            return codebookQuantizer.assign(instance.fAttr);
+        }
         int closest = -1;
         float currMinDist = Float.MAX_VALUE;
         float tempDist;
@@ -354,6 +451,7 @@ public class GenericCodeBook {
                 codebook.add(instance);
                 s = br.readLine();
             }
+            quantizer = null;
         } catch (Exception e) {
             throw e;
         }
@@ -22,7 +22,7 @@ import data.representation.images.quantized.QuantizedImageHistogram;
 import data.representation.images.quantized.QuantizedImageHistogramDataSet;
 import data.representation.images.sift.LFeatRepresentation;
 import data.representation.images.sift.LFeatVector;
-import distances.primary.LocalImageFeatureMetric;
+import ioformat.images.LocalFeatureStore;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
@@ -41,6 +41,11 @@ public class SIFTCodeBook {
     public static final int DEFAULT_SIZE = 400;
     // Feature vectors that define the codeboook.
     private ArrayList<LFeatVector> codebook = new ArrayList<>();
+    // Packed codebook used for fast codeword assignment.
+    private CodebookQuantizer quantizer = null;
+    // The number of codewords to check in the approximate search, where zero
+    // denotes exact search.
+    private int maxChecks = 0;
 
     /**
      * @return Integer that is the codebook size.
@@ -56,6 +61,7 @@ public class SIFTCodeBook {
      */
     public void addVectorToCodeBook(LFeatVector v) {
         codebook.add(v);
+        quantizer = null;
     }
 
     /**
@@ -66,6 +72,68 @@ public class SIFTCodeBook {
      */
     public void setCodeBookSet(ArrayList<LFeatVector> codebook) {
         this.codebook = codebook;
+        quantizer = null;
+    }
+
+    /**
+     * Switches to approximate codeword assignment by priority search in a
+     * hierarchical k-means tree over the codewords.
+     *
+     * @param maxChecks Integer that is the maximal number of distance
+     * calculations per descriptor.
+     */
+    public synchronized void setApproximateSearch(int maxChecks) {
+        this.maxChecks = Math.max(1, maxChecks);
+        quantizer = null;
+    }
+
+    /**
+     * Switches to exact codeword assignment.
+     */
+    public synchronized void setExactSearch() {
+        maxChecks = 0;
+        quantizer = null;
+    }
+
+    /**
+     * @return CodebookQuantizer that holds the packed codebook descriptors.
+     */
+    public synchronized CodebookQuantizer getQuantizer() {
+        if (quantizer == null) {
+            float[][] codebookVectors = new float[codebook.size()][];
+            for (int i = 0; i < codebookVectors.length; i++) {
+                codebookVectors[i] = codebook.get(i).fAttr;
+            }
+            // Only the descriptors are taken into account, without the
+            // keypoint information.
+            quantizer = new CodebookQuantizer(codebookVectors, 4);
+            if (maxChecks > 0) {
+                quantizer.buildKMeansTree(CodebookQuantizer.DEFAULT_BRANCHING,
+                        maxChecks);
+            }
+        }
+        return quantizer;
+    }
+
+    /**
+     * Generates the quantized representations of a collection of images in
+     * parallel and adds them to the histogram data context.
+     *
+     * @param reps ArrayList of SIFTRepresentation objects of the images.
+     * @param qihDSet QuantizedImageHistogramDataSet data context to add the
+     * quantized representations to.
+     * @return QuantizedImageHistogram array of the quantized representations.
+     */
+    public QuantizedImageHistogram[] getHistogramsForImageRepresentations(
+            ArrayList<LFeatRepresentation> reps,
+            QuantizedImageHistogramDataSet qihDSet) {
+        String[] paths = new String[reps.size()];
+        for (int i = 0; i < paths.length; i++) {
+            if (reps.get(i) != null) {
+                paths[i] = reps.get(i).getPath();
+            }
+        }
+        return getQuantizer().quantizeCollection(reps, paths, qihDSet);
     }
 
     /**
@@ -210,6 +278,20 @@ public class SIFTCodeBook {
 
     }
 
+    /**
+     * Generates the quantized representations of all images in a binary
+     * feature store in parallel and adds them to the histogram data context.
+     *
+     * @param store LocalFeatureStore holding the image features.
+     * @param qihDSet QuantizedImageHistogramDataSet data context to add the
+     * quantized representations to.
+     * @return QuantizedImageHistogram array of the quantized representations.
+     */
+    public QuantizedImageHistogram[] getHistogramsForFeatureStore(
+            LocalFeatureStore store, QuantizedImageHistogramDataSet qihDSet) {
+        return getQuantizer().quantizeCollection(store, qihDSet);
+    }
+
     /**
      * Returns the index of the closest codebook vector.
      *
@@ -219,18 +301,10 @@ public class SIFTCodeBook {
      */
     public int getIndexOfClosestCodebook(LFeatVector vect) throws Exception {
         // Only the desciptors are taken into account in distance calculations.
-        int closest = -1;
-        LocalImageFeatureMetric smet = new LocalImageFeatureMetric();
-        float currMinDist = Float.MAX_VALUE;
-        float tempDist;
-        for (int i = 0; i < codebook.size(); i++) {
-            tempDist = smet.dist(vect, codebook.get(i));
-            if (tempDist < currMinDist) {
-                currMinDist = tempDist;
-                closest = i;
-            }
+        if (codebook.isEmpty()) {
+            return -1;
         }
-        return closest;
+        return getQuantizer().assign(vect.fAttr, 4);
     }
 
     /**
@@ -284,6 +358,7 @@ public class SIFTCodeBook {
                 codebook.add(tempVector);
                 s = br.readLine();
             }
+            quantizer = null;
         } catch (Exception e) {
             throw e;
         } finally {
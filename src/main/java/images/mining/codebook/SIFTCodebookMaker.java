@@ -20,6 +20,7 @@ import java.io.File;
 import java.util.ArrayList;
 import data.representation.images.sift.LFeatRepresentation;
 import data.representation.images.sift.LFeatVector;
+import ioformat.images.LocalFeatureStore;
 import ioformat.images.SiftUtil;
 import util.fileFilters.ARFFFileNameFilter;
 import util.fileFilters.KeyFileNameFilter;
@@ -32,6 +33,7 @@ import distances.primary.CombinedMetric;
 import learning.unsupervised.methods.FastKMeans;
 import learning.unsupervised.ClusteringAlg;
 import java.util.Random;
+import probability.GaussianMixtureEM;
 
 /**
  * This class implements the logic for calculating codebook vectors for SIFT
@@ -42,6 +44,11 @@ import java.util.Random;
 public class SIFTCodebookMaker {
 
     public static final int DEFAULT_SIZE = 400;
+    // Samples larger than this are fit by online EM when fitting Gaussian
+    // mixtures.
+    private static final int GMM_BATCH_THRESHOLD = 500000;
+    private static final int GMM_BATCH_SIZE = 50000;
+    private static final int GMM_NUM_EPOCHS = 3;
     private File target = null;
     private boolean recursive = true;
     private LFeatRepresentation siftSample = null;
@@ -117,6 +124,35 @@ public class SIFTCodebookMaker {
         resultingConfiguration = clusterer.getClusters();
     }
 
+    /**
+     * Fits a Gaussian mixture model to the descriptors in the SIFT sample.
+     * Large samples are fit by online EM on mini-batches.
+     *
+     * @param numComponents Integer that is the number of mixture components.
+     * @param covarianceType Integer that is the covariance type, as defined
+     * in GaussianMixtureEM.
+     * @return GaussianMixtureEM that is the fitted mixture model.
+     */
+    public GaussianMixtureEM fitGaussianMixture(int numComponents,
+            int covarianceType) {
+        if ((siftSample == null) || (siftSample.isEmpty())) {
+            return null;
+        }
+        // The first four features are the spatial coordinates, the scale and
+        // the angle, which are not modeled.
+        int descLength = siftSample.getNumFloatAttr() - 4;
+        GaussianMixtureEM gmm = new GaussianMixtureEM(numComponents,
+                descLength, covarianceType);
+        gmm.setFeatureOffset(4);
+        float[][] descriptors = GaussianMixtureEM.getFeatureRows(siftSample);
+        if (descriptors.length > GMM_BATCH_THRESHOLD) {
+            gmm.fitMiniBatch(descriptors, GMM_BATCH_SIZE, GMM_NUM_EPOCHS);
+        } else {
+            gmm.fit(descriptors);
+        }
+        return gmm;
+    }
+
     /**
      * Get the generated cluster configuration.
      *
@@ -164,6 +200,25 @@ public class SIFTCodebookMaker {
         return result;
     }
 
+    /**
+     * Samples the features from a binary feature store into the SIFT sample.
+     *
+     * @param store LocalFeatureStore holding the image features.
+     * @param perc Float value that is the percentage of features to take.
+     */
+    public void getSIFTFromFeatureStore(LocalFeatureStore store, float perc) {
+        Random randa = new Random();
+        long numFeatures = store.getNumFeatures();
+        for (long feature = 0; feature < numFeatures; feature++) {
+            if (perc >= 1 || randa.nextFloat() < perc) {
+                LFeatVector vect = new LFeatVector(siftSample);
+                store.getGeometry(feature, vect.fAttr, 0);
+                store.getDescriptor(feature, vect.fAttr, 4);
+                siftSample.addDataInstance(vect);
+            }
+        }
+    }
+
     /**
      * Loads the features from a file in arff format.
      *
@@ -0,0 +1,365 @@
+/**
+* Hub Miner: a hubness-aware machine learning experimentation library.
+* Copyright (C) 2014  Nenad Tomasev. Email: nenad.tomasev at gmail.com
+* 
+* This program is free software: you can redistribute it and/or modify it under
+* the terms of the GNU General Public License as published by the Free Software
+* Foundation, either version 3 of the License, or (at your option) any later
+* version.
+* 
+* This program is distributed in the hope that it will be useful, but WITHOUT
+* ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+* FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License along with
+* this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+package ioformat.images;
+
+import data.representation.DataSet;
+import ioformat.FileUtil;
+import ioformat.IOARFF;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.imageio.ImageIO;
+
+/**
+ * This class ingests an image collection without the GUI. The images are
+ * decoded and turned into thumbnails by a fixed number of worker threads,
+ * while the encoded thumbnails are written into a single ThumbnailAtlas file
+ * that the image hub explorer can later attach to. The images are processed
+ * in windows of a bounded size, so that only a limited number of encoded
+ * thumbnails is kept in memory at any time and the atlas preserves the order
+ * of the image list.
+ *
+ * @author Nenad Tomasev <nenad.tomasev at gmail.com>
+ */
+public class ImageCollectionIngestor {
+
+    public static final String ATLAS_FILE_NAME = "thumbnails.atlas";
+    // The workspace directories of the images and their thumbnails.
+    public static final String PHOTOS_DIRECTORY_NAME = "photos";
+    public static final String THUMBNAILS_DIRECTORY_NAME = "thumbnails";
+    public static final int DEFAULT_WINDOW_SIZE = 256;
+    private int numThreads = Runtime.getRuntime().availableProcessors();
+    private int thumbnailArea = ThumbnailMaker.DEFAULT_AREA;
+    private int windowSize = DEFAULT_WINDOW_SIZE;
+    // The number of images processed so far, for progress reporting.
+    private AtomicInteger numProcessed = new AtomicInteger(0);
+
+    /**
+     * The default constructor.
+     */
+    public ImageCollectionIngestor() {
+    }
+
+    /**
+     * Initialization.
+     *
+     * @param numThreads Integer that is the number of threads to use.
+     */
+    public ImageCollectionIngestor(int numThreads) {
+        setNumThreads(numThreads);
+    }
+
+    /**
+     * @param numThreads Integer that is the number of threads to use.
+     */
+    public void setNumThreads(int numThreads) {
+        this.numThreads = Math.max(1, numThreads);
+    }
+
+    /**
+     * @param thumbnailArea Integer that is the desired thumbnail area.
+     */
+    public void setThumbnailArea(int thumbnailArea) {
+        this.thumbnailArea = thumbnailArea;
+    }
+
+    /**
+     * @param windowSize Integer that is the maximum number of images that are
+     * processed before the thumbnails are flushed to the atlas.
+     */
+    public void setWindowSize(int windowSize) {
+        this.windowSize = Math.max(1, windowSize);
+    }
+
+    /**
+     * @return Integer that is the number of images processed so far.
+     */
+    public int getNumProcessed() {
+        return numProcessed.get();
+    }
+
+    /**
+     * @param workspace File that is the image collection workspace.
+     * @return File that is the thumbnail atlas of the workspace, which is
+     * where both the ingestion writes it and the image hub explorer looks for
+     * it.
+     */
+    public static File getAtlasFile(File workspace) {
+        return new File(workspace, ATLAS_FILE_NAME);
+    }
+
+    /**
+     * Makes the thumbnails of all the images in parallel and writes them to a
+     * thumbnail atlas.
+     *
+     * @param imagesDirectory File that is the image directory.
+     * @param relativePaths ArrayList<String> of image paths relative to the
+     * image directory.
+     * @param atlasFile File to write the thumbnail atlas to, can be null.
+     * @param thumbnailsDirectory File that is the directory to also write the
+     * individual thumbnails to, under the relative image paths. Can be null.
+     * @throws IOException
+     */
+    public void makeThumbnails(File imagesDirectory,
+            ArrayList<String> relativePaths, File atlasFile,
+            File thumbnailsDirectory) throws IOException {
+        numProcessed.set(0);
+        int numImages = relativePaths.size();
+        ThumbnailAtlasWriter writer = null;
+        if (atlasFile != null) {
+            writer = new ThumbnailAtlasWriter(atlasFile, numImages);
+        }
+        try {
+            byte[][] encodedWindow = new byte[Math.min(windowSize,
+                    numImages)][];
+            for (int windowStart = 0; windowStart < numImages;
+                    windowStart += windowSize) {
+                int windowEnd = Math.min(windowStart + windowSize, numImages);
+                AtomicInteger nextImage = new AtomicInteger(windowStart);
+                int threadNum = Math.min(numThreads, windowEnd - windowStart);
+                Thread[] threads = new Thread[threadNum];
+                for (int t = 0; t < threadNum; t++) {
+                    threads[t] = new Thread(new ThumbnailWorker(
+                            imagesDirectory, relativePaths, thumbnailsDirectory,
+                            encodedWindow, windowStart, windowEnd, nextImage));
+                    threads[t].start();
+                }
+                for (int t = 0; t < threadNum; t++) {
+                    try {
+                        threads[t].join();
+                    } catch (Throwable thr) {
+                        System.err.println(thr.getMessage());
+                    }
+                }
+                if (writer != null) {
+                    for (int i = windowStart; i < windowEnd; i++) {
+                        writer.addEntry(relativePaths.get(i),
+                                encodedWindow[i - windowStart]);
+                        encodedWindow[i - windowStart] = null;
+                    }
+                }
+            }
+        } finally {
+            if (writer != null) {
+                writer.close();
+            }
+        }
+    }
+
+    /**
+     * Loads the images from the specified files in parallel.
+     *
+     * @param imageFiles File array of the image files.
+     * @param numThreads Integer that is the number of threads to use.
+     * @return BufferedImage array of the loaded images, with nulls for the
+     * images that could not be read.
+     */
+    public static BufferedImage[] loadImages(File[] imageFiles,
+            int numThreads) {
+        BufferedImage[] images = new BufferedImage[imageFiles.length];
+        AtomicInteger nextImage = new AtomicInteger(0);
+        int threadNum = Math.max(1, Math.min(numThreads, imageFiles.length));
+        Thread[] threads = new Thread[threadNum];
+        for (int t = 0; t < threadNum; t++) {
+            threads[t] = new Thread(new LoadWorker(imageFiles, images,
+                    nextImage));
+            threads[t].start();
+        }
+        for (int t = 0; t < threadNum; t++) {
+            try {
+                threads[t].join();
+            } catch (Throwable thr) {
+                System.err.println(thr.getMessage());
+            }
+        }
+        return images;
+    }
+
+    /**
+     * @param imageRepresentation DataSet that contains the relative_path
+     * string feature.
+     * @return ArrayList<String> of relative image paths.
+     */
+    public static ArrayList<String> getRelativePaths(
+            DataSet imageRepresentation) {
+        int pathFeatureIndex = imageRepresentation.getIndexForAttributeName(
+                "relative_path");
+        ArrayList<String> relativePaths =
+                new ArrayList<>(imageRepresentation.size());
+        for (int i = 0; i < imageRepresentation.size(); i++) {
+            relativePaths.add(imageRepresentation.getInstance(i).sAttr[
+                    pathFeatureIndex]);
+        }
+        return relativePaths;
+    }
+
+    /**
+     * This worker decodes the images and makes the encoded thumbnails for one
+     * window of the image list.
+     */
+    class ThumbnailWorker implements Runnable {
+
+        private File imagesDirectory;
+        private ArrayList<String> relativePaths;
+        private File thumbnailsDirectory;
+        private byte[][] encodedWindow;
+        private int windowStart;
+        private int windowEnd;
+        private AtomicInteger nextImage;
+
+        /**
+         * Initialization.
+         *
+         * @param imagesDirectory File that is the image directory.
+         * @param relativePaths ArrayList<String> of relative image paths.
+         * @param thumbnailsDirectory File that is the thumbnail directory, can
+         * be null.
+         * @param encodedWindow Byte array of encoded thumbnails for the window.
+         * @param windowStart Integer that is the first image in the window.
+         * @param windowEnd Integer that is the end of the window.
+         * @param nextImage AtomicInteger that is the shared image counter.
+         */
+        public ThumbnailWorker(File imagesDirectory,
+                ArrayList<String> relativePaths, File thumbnailsDirectory,
+                byte[][] encodedWindow, int windowStart, int windowEnd,
+                AtomicInteger nextImage) {
+            this.imagesDirectory = imagesDirectory;
+            this.relativePaths = relativePaths;
+            this.thumbnailsDirectory = thumbnailsDirectory;
+            this.encodedWindow = encodedWindow;
+            this.windowStart = windowStart;
+            this.windowEnd = windowEnd;
+            this.nextImage = nextImage;
+        }
+
+        @Override
+        public void run() {
+            ThumbnailMaker tm = new ThumbnailMaker(thumbnailArea);
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            int index;
+            while ((index = nextImage.getAndIncrement()) < windowEnd) {
+                try {
+                    BufferedImage thumbnail = tm.createThumbnail(ImageIO.read(
+                            new File(imagesDirectory,
+                            relativePaths.get(index))));
+                    if (thumbnail != null) {
+                        bos.reset();
+                        ImageIO.write(thumbnail, "JPG", bos);
+                        byte[] encoded = bos.toByteArray();
+                        encodedWindow[index - windowStart] = encoded;
+                        if (thumbnailsDirectory != null) {
+                            File thumbFile = new File(thumbnailsDirectory,
+                                    relativePaths.get(index));
+                            FileUtil.createFile(thumbFile);
+                            Files.write(thumbFile.toPath(), encoded);
+                        }
+                    }
+                } catch (Exception e) {
+                    System.err.println(relativePaths.get(index) + ": "
+                            + e.getMessage());
+                }
+                numProcessed.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * This worker loads the images, taking the next index from the shared
+     * counter.
+     */
+    static class LoadWorker implements Runnable {
+
+        private File[] imageFiles;
+        private BufferedImage[] images;
+        private AtomicInteger nextImage;
+
+        /**
+         * Initialization.
+         *
+         * @param imageFiles File array of the image files.
+         * @param images BufferedImage array to place the images in.
+         * @param nextImage AtomicInteger that is the shared image counter.
+         */
+        public LoadWorker(File[] imageFiles, BufferedImage[] images,
+                AtomicInteger nextImage) {
+            this.imageFiles = imageFiles;
+            this.images = images;
+            this.nextImage = nextImage;
+        }
+
+        @Override
+        public void run() {
+            int index;
+            while ((index = nextImage.getAndIncrement()) < imageFiles.length) {
+                try {
+                    images[index] = ImageIO.read(imageFiles[index]);
+                } catch (Exception e) {
+                    System.err.println(imageFiles[index].getPath() + ": "
+                            + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds the thumbnail atlas for an image hub explorer workspace. The
+     * images are expected in the photos subdirectory and the image paths are
+     * read from the quantized representation, as in the explorer.
+     *
+     * @param args Command line parameters, as specified.
+     * @throws Exception
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("arg0: Workspace directory.");
+            System.out.println("arg1: (optional) Number of threads.");
+            System.out.println("arg2: (optional) 'true' to also write the "
+                    + "individual thumbnails into the thumbnails directory.");
+            return;
+        }
+        File workspace = new File(args[0]);
+        File qRepDir = new File(workspace, "representation" + File.separator
+                + "quantized");
+        File[] reps = qRepDir.listFiles(
+                new util.fileFilters.ARFFFileNameFilter());
+        if (reps == null || reps.length == 0) {
+            System.out.println("No quantized representation detected.");
+            return;
+        }
+        IOARFF pers = new IOARFF();
+        DataSet quantizedRepresentation = pers.load(reps[0].getPath());
+        ImageCollectionIngestor ingestor = new ImageCollectionIngestor();
+        if (args.length > 1) {
+            ingestor.setNumThreads(Integer.parseInt(args[1]));
+        }
+        File thumbnailsDirectory = null;
+        if (args.length > 2 && Boolean.parseBoolean(args[2])) {
+            thumbnailsDirectory = new File(workspace,
+                    THUMBNAILS_DIRECTORY_NAME);
+        }
+        long startTime = System.currentTimeMillis();
+        ingestor.makeThumbnails(new File(workspace, PHOTOS_DIRECTORY_NAME),
+                getRelativePaths(quantizedRepresentation),
+                getAtlasFile(workspace), thumbnailsDirectory);
+        System.out.println(ingestor.getNumProcessed() + " images ingested in "
+                + (System.currentTimeMillis() - startTime) + "ms.");
+    }
+}
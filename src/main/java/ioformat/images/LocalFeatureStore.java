@@ -0,0 +1,249 @@
+/**
+* Hub Miner: a hubness-aware machine learning experimentation library.
+* Copyright (C) 2014  Nenad Tomasev. Email: nenad.tomasev at gmail.com
+* 
+* This program is free software: you can redistribute it and/or modify it under
+* the terms of the GNU General Public License as published by the Free Software
+* Foundation, either version 3 of the License, or (at your option) any later
+* version.
+* 
+* This program is distributed in the hope that it will be useful, but WITHOUT
+* ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+* FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License along with
+* this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+package ioformat.images;
+
+import data.representation.images.sift.LFeatRepresentation;
+import data.representation.images.sift.LFeatVector;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+
+/**
+ * This class gives read access to a binary columnar container of local image
+ * features for an image collection, as written by LocalFeatureStoreWriter.
+ * The file consists of a header, a per-image index of feature offsets, the
+ * keypoint geometry column with four floats per feature (y, x, scale and
+ * angle, in the LFeatVector order), the descriptor column with one unsigned
+ * byte per descriptor value and finally the image names. The geometry and
+ * the descriptor columns are memory-mapped in segments, so that the features
+ * can be read without materializing LFeatRepresentation objects. The read
+ * methods do not change any state and can be called from multiple threads.
+ *
+ * @author Nenad Tomasev <nenad.tomasev at gmail.com>
+ */
+public class LocalFeatureStore {
+
+    public static final int MAGIC = 0x484D4C46;
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 32;
+    // The maximal size of a mapped segment in bytes.
+    private static final long MAX_SEGMENT_BYTES = 1L << 30;
+    private int descriptorLength;
+    private int numImages;
+    private long numFeatures;
+    private long[] featureOffsets;
+    private String[] imageNames;
+    private int featuresPerSegment;
+    private MappedByteBuffer[] geometrySegments;
+    private MappedByteBuffer[] descriptorSegments;
+
+    /**
+     * Opens and maps a feature store file.
+     *
+     * @param storeFile File that holds the feature store.
+     * @throws IOException
+     */
+    public LocalFeatureStore(File storeFile) throws IOException {
+        if (!storeFile.exists()) {
+            throw new IOException("Feature store " + storeFile.getPath()
+                    + " does not exist.");
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(storeFile, "r")) {
+            FileChannel channel = raf.getChannel();
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                    HEADER_SIZE);
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a feature store: "
+                        + storeFile.getPath());
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported feature store version "
+                        + version);
+            }
+            descriptorLength = header.getInt();
+            numImages = header.getInt();
+            numFeatures = header.getLong();
+            long namesOffset = header.getLong();
+            ByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY,
+                    HEADER_SIZE, 8L * (numImages + 1));
+            featureOffsets = new long[numImages + 1];
+            index.asLongBuffer().get(featureOffsets);
+            featuresPerSegment = (int) Math.max(1, MAX_SEGMENT_BYTES
+                    / Math.max(16, descriptorLength));
+            int numSegments = (int) ((numFeatures + featuresPerSegment - 1)
+                    / featuresPerSegment);
+            geometrySegments = new MappedByteBuffer[numSegments];
+            descriptorSegments = new MappedByteBuffer[numSegments];
+            long geometryStart = HEADER_SIZE + 8L * (numImages + 1);
+            long descriptorStart = geometryStart + 16L * numFeatures;
+            for (int s = 0; s < numSegments; s++) {
+                long first = (long) s * featuresPerSegment;
+                long count = Math.min(featuresPerSegment, numFeatures - first);
+                geometrySegments[s] = channel.map(
+                        FileChannel.MapMode.READ_ONLY,
+                        geometryStart + 16L * first, 16L * count);
+                descriptorSegments[s] = channel.map(
+                        FileChannel.MapMode.READ_ONLY,
+                        descriptorStart + descriptorLength * first,
+                        descriptorLength * count);
+            }
+            channel.position(namesOffset);
+            DataInputStream dis = new DataInputStream(new BufferedInputStream(
+                    Channels.newInputStream(channel)));
+            imageNames = new String[numImages];
+            for (int i = 0; i < numImages; i++) {
+                imageNames[i] = dis.readUTF();
+            }
+        }
+    }
+
+    /**
+     * @return Integer that is the descriptor length.
+     */
+    public int getDescriptorLength() {
+        return descriptorLength;
+    }
+
+    /**
+     * @return Integer that is the number of images.
+     */
+    public int getNumImages() {
+        return numImages;
+    }
+
+    /**
+     * @return Long that is the total number of features.
+     */
+    public long getNumFeatures() {
+        return numFeatures;
+    }
+
+    /**
+     * @param image Integer that is the image index.
+     * @return String that is the image name or path.
+     */
+    public String getImageName(int image) {
+        return imageNames[image];
+    }
+
+    /**
+     * @param image Integer that is the image index.
+     * @return Long that is the index of the first feature of the image.
+     */
+    public long getFeatureStart(int image) {
+        return featureOffsets[image];
+    }
+
+    /**
+     * @param image Integer that is the image index.
+     * @return Integer that is the number of features of the image.
+     */
+    public int getNumFeatures(int image) {
+        return (int) (featureOffsets[image + 1] - featureOffsets[image]);
+    }
+
+    /**
+     * Reads a descriptor as float values.
+     *
+     * @param feature Long that is the feature index.
+     * @param result Float array to write the descriptor values to.
+     * @param offset Integer that is the position to write the first value to.
+     */
+    public void getDescriptor(long feature, float[] result, int offset) {
+        ByteBuffer segment = descriptorSegments[(int) (feature
+                / featuresPerSegment)];
+        int position = (int) (feature % featuresPerSegment)
+                * descriptorLength;
+        for (int d = 0; d < descriptorLength; d++) {
+            result[offset + d] = segment.get(position + d) & 0xFF;
+        }
+    }
+
+    /**
+     * Reads the raw unsigned byte descriptor values.
+     *
+     * @param feature Long that is the feature index.
+     * @param result Byte array to write the descriptor values to.
+     * @param offset Integer that is the position to write the first value to.
+     */
+    public void getDescriptorBytes(long feature, byte[] result, int offset) {
+        ByteBuffer segment = descriptorSegments[(int) (feature
+                / featuresPerSegment)];
+        int position = (int) (feature % featuresPerSegment)
+                * descriptorLength;
+        for (int d = 0; d < descriptorLength; d++) {
+            result[offset + d] = segment.get(position + d);
+        }
+    }
+
+    /**
+     * Reads the keypoint geometry.
+     *
+     * @param feature Long that is the feature index.
+     * @param result Float array to write the y, x, scale and angle values to.
+     * @param offset Integer that is the position to write the first value to.
+     */
+    public void getGeometry(long feature, float[] result, int offset) {
+        ByteBuffer segment = geometrySegments[(int) (feature
+                / featuresPerSegment)];
+        int position = (int) (feature % featuresPerSegment) * 16;
+        for (int j = 0; j < 4; j++) {
+            result[offset + j] = segment.getFloat(position + 4 * j);
+        }
+    }
+
+    /**
+     * Reads the descriptors of consecutive features into a packed array.
+     *
+     * @param firstFeature Long that is the index of the first feature.
+     * @param count Integer that is the number of features to read.
+     * @param result Float array of at least count * descriptorLength values.
+     */
+    public void getDescriptors(long firstFeature, int count, float[] result) {
+        for (int i = 0; i < count; i++) {
+            getDescriptor(firstFeature + i, result, i * descriptorLength);
+        }
+    }
+
+    /**
+     * Materializes the features of an image as a LFeatRepresentation, for
+     * the code that works with the object representation.
+     *
+     * @param image Integer that is the image index.
+     * @return LFeatRepresentation of the image features.
+     */
+    public LFeatRepresentation getImageRepresentation(int image) {
+        LFeatRepresentation rep = new LFeatRepresentation(descriptorLength);
+        rep.setPath(imageNames[image]);
+        long start = featureOffsets[image];
+        long end = featureOffsets[image + 1];
+        for (long feature = start; feature < end; feature++) {
+            LFeatVector vect = new LFeatVector(rep);
+            getGeometry(feature, vect.fAttr, 0);
+            getDescriptor(feature, vect.fAttr, 4);
+            rep.addDataInstance(vect);
+        }
+        return rep;
+    }
+}
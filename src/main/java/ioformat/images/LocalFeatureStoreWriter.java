@@ -0,0 +1,211 @@
+/**
+* Hub Miner: a hubness-aware machine learning experimentation library.
+* Copyright (C) 2014  Nenad Tomasev. Email: nenad.tomasev at gmail.com
+* 
+* This program is free software: you can redistribute it and/or modify it under
+* the terms of the GNU General Public License as published by the Free Software
+* Foundation, either version 3 of the License, or (at your option) any later
+* version.
+* 
+* This program is distributed in the hope that it will be useful, but WITHOUT
+* ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+* FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License along with
+* this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+package ioformat.images;
+
+import data.representation.images.sift.LFeatRepresentation;
+import ioformat.FileUtil;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * This class writes local image features of an image collection into the
+ * binary columnar format that is read by LocalFeatureStore. The images are
+ * appended one by one, while the keypoint geometry and the descriptor columns
+ * are streamed into temporary files. The final file is assembled when the
+ * writer is closed, once the total number of features is known. The
+ * descriptor values are stored as unsigned bytes, which fits the SIFT
+ * descriptors, so values outside the [0, 255] range are clamped.
+ *
+ * @author Nenad Tomasev <nenad.tomasev at gmail.com>
+ */
+public class LocalFeatureStoreWriter {
+
+    private File outFile;
+    private int descriptorLength;
+    private File geometryTmp;
+    private File descriptorTmp;
+    private DataOutputStream geometryStream;
+    private BufferedOutputStream descriptorStream;
+    private ArrayList<String> imageNames = new ArrayList<>();
+    // The index of the first feature of each image, with the total number of
+    // features at the end.
+    private long[] featureOffsets = new long[1024];
+    private long numFeatures = 0;
+    private byte[] descriptorBuffer;
+
+    /**
+     * Initialization.
+     *
+     * @param outFile File to write the feature store to.
+     * @param descriptorLength Integer that is the descriptor length.
+     * @throws IOException
+     */
+    public LocalFeatureStoreWriter(File outFile, int descriptorLength)
+            throws IOException {
+        this.outFile = outFile;
+        this.descriptorLength = descriptorLength;
+        FileUtil.createFile(outFile);
+        File tmpDir = outFile.getAbsoluteFile().getParentFile();
+        geometryTmp = File.createTempFile("geometry", ".tmp", tmpDir);
+        descriptorTmp = File.createTempFile("descriptors", ".tmp", tmpDir);
+        geometryStream = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(geometryTmp), 1 << 16));
+        descriptorStream = new BufferedOutputStream(
+                new FileOutputStream(descriptorTmp), 1 << 16);
+        descriptorBuffer = new byte[descriptorLength];
+    }
+
+    /**
+     * @param value Float descriptor value.
+     * @return Byte that is the value rounded and clamped to the unsigned byte
+     * range.
+     */
+    public static byte toUnsignedByte(float value) {
+        int rounded = Math.round(value);
+        if (rounded < 0 || value != value) {
+            rounded = 0;
+        } else if (rounded > 255) {
+            rounded = 255;
+        }
+        return (byte) rounded;
+    }
+
+    /**
+     * Appends an image.
+     *
+     * @param imageName String that is the image name or path.
+     * @param geometry Float array of the y, x, scale and angle values of each
+     * feature.
+     * @param descriptors Byte array of the unsigned descriptor values of each
+     * feature.
+     * @param numImageFeatures Integer that is the number of features.
+     * @throws IOException
+     */
+    public void addImage(String imageName, float[] geometry,
+            byte[] descriptors, int numImageFeatures) throws IOException {
+        for (int i = 0; i < 4 * numImageFeatures; i++) {
+            geometryStream.writeFloat(geometry[i]);
+        }
+        descriptorStream.write(descriptors, 0,
+                numImageFeatures * descriptorLength);
+        finishImage(imageName, numImageFeatures);
+    }
+
+    /**
+     * Appends an image.
+     *
+     * @param imageName String that is the image name or path.
+     * @param rep LFeatRepresentation of the image.
+     * @throws IOException
+     */
+    public void addImage(String imageName, LFeatRepresentation rep)
+            throws IOException {
+        int numImageFeatures = rep == null ? 0 : rep.size();
+        for (int i = 0; i < numImageFeatures; i++) {
+            float[] values = rep.getInstance(i).fAttr;
+            for (int j = 0; j < 4; j++) {
+                geometryStream.writeFloat(values[j]);
+            }
+            Arrays.fill(descriptorBuffer, (byte) 0);
+            int length = Math.min(descriptorLength, values.length - 4);
+            for (int j = 0; j < length; j++) {
+                descriptorBuffer[j] = toUnsignedByte(values[4 + j]);
+            }
+            descriptorStream.write(descriptorBuffer);
+        }
+        finishImage(imageName, numImageFeatures);
+    }
+
+    /**
+     * Records the image in the index.
+     *
+     * @param imageName String that is the image name or path.
+     * @param numImageFeatures Integer that is the number of features.
+     */
+    private void finishImage(String imageName, int numImageFeatures) {
+        int numImages = imageNames.size();
+        if (numImages + 1 >= featureOffsets.length) {
+            featureOffsets = Arrays.copyOf(featureOffsets,
+                    2 * featureOffsets.length);
+        }
+        featureOffsets[numImages] = numFeatures;
+        numFeatures += numImageFeatures;
+        featureOffsets[numImages + 1] = numFeatures;
+        imageNames.add(imageName == null ? "" : imageName);
+    }
+
+    /**
+     * @return Integer that is the number of images written so far.
+     */
+    public int getNumImages() {
+        return imageNames.size();
+    }
+
+    /**
+     * Assembles the final file and removes the temporary files.
+     *
+     * @throws IOException
+     */
+    public void close() throws IOException {
+        geometryStream.close();
+        descriptorStream.close();
+        int numImages = imageNames.size();
+        long namesOffset = LocalFeatureStore.HEADER_SIZE
+                + 8L * (numImages + 1) + 16L * numFeatures
+                + (long) descriptorLength * numFeatures;
+        try (FileOutputStream fos = new FileOutputStream(outFile)) {
+            DataOutputStream dos = new DataOutputStream(
+                    new BufferedOutputStream(fos, 1 << 16));
+            dos.writeInt(LocalFeatureStore.MAGIC);
+            dos.writeInt(LocalFeatureStore.VERSION);
+            dos.writeInt(descriptorLength);
+            dos.writeInt(numImages);
+            dos.writeLong(numFeatures);
+            dos.writeLong(namesOffset);
+            for (int i = 0; i <= numImages; i++) {
+                dos.writeLong(featureOffsets[i]);
+            }
+            dos.flush();
+            FileChannel outChannel = fos.getChannel();
+            for (File tmp : new File[]{geometryTmp, descriptorTmp}) {
+                try (FileInputStream fis = new FileInputStream(tmp)) {
+                    FileChannel inChannel = fis.getChannel();
+                    long position = 0;
+                    long size = inChannel.size();
+                    while (position < size) {
+                        position += inChannel.transferTo(position,
+                                size - position, outChannel);
+                    }
+                }
+            }
+            for (String name : imageNames) {
+                dos.writeUTF(name);
+            }
+            dos.flush();
+        } finally {
+            geometryTmp.delete();
+            descriptorTmp.delete();
+        }
+    }
+}
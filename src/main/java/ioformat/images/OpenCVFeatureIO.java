@@ -171,5 +171,22 @@ public class OpenCVFeatureIO {
             }
         }
     }
-    
+
+    /**
+     * Appends the local feature representation from the keypoint and
+     * descriptor files in the OpenCV format to a binary feature store.
+     *
+     * @param keypointFile File that holds the keypoint specification for the
+     * image.
+     * @param descriptorFile File that holds the descriptor value for the image.
+     * @param writer LocalFeatureStoreWriter to append the features to.
+     * @throws IOException
+     */
+    public static void appendToFeatureStore(File keypointFile,
+            File descriptorFile, LocalFeatureStoreWriter writer)
+            throws IOException {
+        LFeatRepresentation imageRepresentation = loadImageRepresentation(
+                keypointFile, descriptorFile);
+        writer.addImage(descriptorFile.getPath(), imageRepresentation);
+    }
 }
@@ -274,6 +274,107 @@ public class SiftUtil {
         }
     }
 
+    /**
+     * This method takes the features from a directory of SiftWin keyfiles and
+     * writes them into a single binary feature store, without going through
+     * the intermediate ARFF text or the LFeatVector objects.
+     *
+     * @param inPath String that is the input path for the SiftWin keyfile
+     * directory.
+     * @param outPath String that is the output path for the feature store.
+     * @throws Exception
+     */
+    public static void siftFolderToFeatureStore(String inPath,
+            String outPath) throws Exception {
+        File inDirectory = new File(inPath);
+        if (!(inDirectory.exists() && inDirectory.isDirectory())) {
+            throw new Exception("Bad input directory " + inPath);
+        }
+        LocalFeatureStoreWriter writer = new LocalFeatureStoreWriter(
+                new File(outPath),
+                LFeatRepresentation.DEFAULT_DESCRIPTOR_LENGTH);
+        try {
+            siftDirectoryToFeatureStore(inDirectory, writer);
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Recursively appends the features from a directory of SiftWin keyfiles
+     * to a feature store.
+     *
+     * @param inDir File that is the input directory.
+     * @param writer LocalFeatureStoreWriter to append the features to.
+     * @throws Exception
+     */
+    private static void siftDirectoryToFeatureStore(File inDir,
+            LocalFeatureStoreWriter writer) throws Exception {
+        File[] children = inDir.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (int i = 0; i < children.length; i++) {
+            if (children[i].isFile()) {
+                if (children[i].getName().toLowerCase().endsWith(".key")) {
+                    siftFileToFeatureStore(children[i], writer);
+                }
+            } else {
+                siftDirectoryToFeatureStore(children[i], writer);
+            }
+        }
+    }
+
+    /**
+     * Appends the features from a SiftWin keyfile to a feature store.
+     *
+     * @param keyFile File that contains the SIFT features in the SiftWin
+     * format.
+     * @param writer LocalFeatureStoreWriter to append the features to.
+     * @throws Exception
+     */
+    public static void siftFileToFeatureStore(File keyFile,
+            LocalFeatureStoreWriter writer) throws Exception {
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(
+                new FileInputStream(keyFile)))) {
+            String line = br.readLine();
+            if (line == null) {
+                writer.addImage(keyFile.getPath(), new float[0], new byte[0],
+                        0);
+                return;
+            }
+            String[] header = line.trim().split("\\s+");
+            int numFeatures = Integer.parseInt(header[0]);
+            int descSize = header.length > 1 ? Integer.parseInt(header[1])
+                    : LFeatRepresentation.DEFAULT_DESCRIPTOR_LENGTH;
+            int storeDescSize = LFeatRepresentation.DEFAULT_DESCRIPTOR_LENGTH;
+            float[] geometry = new float[4 * numFeatures];
+            byte[] descriptors = new byte[storeDescSize * numFeatures];
+            for (int i = 0; i < numFeatures; i++) {
+                // Contains y, x, scale and angle.
+                String[] siftHeader = br.readLine().trim().split("\\s+");
+                for (int j = 0; j < 4; j++) {
+                    geometry[4 * i + j] = Float.parseFloat(siftHeader[j]);
+                }
+                int index = 0;
+                while (index < descSize) {
+                    String[] siftComponents = br.readLine().trim().split(
+                            "\\s+");
+                    for (int k = 0; k < siftComponents.length
+                            && index < descSize; k++, index++) {
+                        if (index < storeDescSize) {
+                            descriptors[i * storeDescSize + index] =
+                                    LocalFeatureStoreWriter.toUnsignedByte(
+                                    Float.parseFloat(siftComponents[k]));
+                        }
+                    }
+                }
+            }
+            writer.addImage(keyFile.getPath(), geometry, descriptors,
+                    numFeatures);
+        }
+    }
+
     /**
      * Generates an ARFF header for a SIFT feature DataSet.
      *
@@ -0,0 +1,288 @@
+/**
+* Hub Miner: a hubness-aware machine learning experimentation library.
+* Copyright (C) 2014  Nenad Tomasev. Email: nenad.tomasev at gmail.com
+* 
+* This program is free software: you can redistribute it and/or modify it under
+* the terms of the GNU General Public License as published by the Free Software
+* Foundation, either version 3 of the License, or (at your option) any later
+* version.
+* 
+* This program is distributed in the hope that it will be useful, but WITHOUT
+* ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+* FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License along with
+* this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+package ioformat.images;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.AbstractList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import javax.imageio.ImageIO;
+
+/**
+ * This class gives access to the image thumbnails in a single atlas file, as
+ * written by ThumbnailAtlasWriter. The index and the names are loaded when
+ * the atlas is opened, while the encoded thumbnails are read on demand by
+ * positional reads, which can be done from multiple threads at once. The
+ * thumbnails can either be decoded all at once or lazily, through a list view
+ * that decodes each thumbnail on its first access.
+ *
+ * @author Nenad Tomasev <nenad.tomasev at gmail.com>
+ */
+public class ThumbnailAtlas {
+
+    public static final int MAGIC = 0x484D5441;
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 20;
+    public static final int INDEX_ENTRY_SIZE = 12;
+    private RandomAccessFile raf;
+    private FileChannel channel;
+    private int numEntries;
+    private long[] entryOffsets;
+    private int[] entryLengths;
+    private String[] entryNames;
+    private HashMap<String, Integer> nameIndexMap;
+
+    /**
+     * Opens an atlas file.
+     *
+     * @param atlasFile File that holds the atlas.
+     * @throws IOException
+     */
+    public ThumbnailAtlas(File atlasFile) throws IOException {
+        if (!atlasFile.exists()) {
+            throw new IOException("Thumbnail atlas " + atlasFile.getPath()
+                    + " does not exist.");
+        }
+        raf = new RandomAccessFile(atlasFile, "r");
+        channel = raf.getChannel();
+        ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                HEADER_SIZE);
+        if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+            raf.close();
+            throw new IOException("Not a supported thumbnail atlas: "
+                    + atlasFile.getPath());
+        }
+        numEntries = header.getInt();
+        long namesOffset = header.getLong();
+        ByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY,
+                HEADER_SIZE, (long) INDEX_ENTRY_SIZE * numEntries);
+        entryOffsets = new long[numEntries];
+        entryLengths = new int[numEntries];
+        for (int i = 0; i < numEntries; i++) {
+            entryOffsets[i] = index.getLong();
+            entryLengths[i] = index.getInt();
+        }
+        channel.position(namesOffset);
+        DataInputStream dis = new DataInputStream(new BufferedInputStream(
+                Channels.newInputStream(channel)));
+        entryNames = new String[numEntries];
+        nameIndexMap = new HashMap<>(2 * numEntries);
+        for (int i = 0; i < numEntries; i++) {
+            entryNames[i] = dis.readUTF();
+            nameIndexMap.put(entryNames[i], i);
+        }
+    }
+
+    /**
+     * @return Integer that is the number of thumbnails in the atlas.
+     */
+    public int getNumEntries() {
+        return numEntries;
+    }
+
+    /**
+     * @param entry Integer that is the entry index.
+     * @return String that is the thumbnail name.
+     */
+    public String getName(int entry) {
+        return entryNames[entry];
+    }
+
+    /**
+     * @param name String that is the thumbnail name.
+     * @return Integer that is the entry index, or -1 if there is no such
+     * thumbnail.
+     */
+    public int getIndex(String name) {
+        Integer entry = nameIndexMap.get(name);
+        return entry == null ? -1 : entry;
+    }
+
+    /**
+     * @param entry Integer that is the entry index.
+     * @return Byte array that is the encoded thumbnail, or null if the
+     * thumbnail is missing.
+     * @throws IOException
+     */
+    public byte[] getThumbnailBytes(int entry) throws IOException {
+        if (entryLengths[entry] == 0) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(entryLengths[entry]);
+        long position = entryOffsets[entry];
+        while (buffer.hasRemaining()) {
+            int numRead = channel.read(buffer, position);
+            if (numRead < 0) {
+                throw new IOException("Truncated thumbnail atlas.");
+            }
+            position += numRead;
+        }
+        return buffer.array();
+    }
+
+    /**
+     * @param entry Integer that is the entry index.
+     * @return BufferedImage that is the decoded thumbnail, or null if the
+     * thumbnail is missing.
+     * @throws IOException
+     */
+    public BufferedImage getThumbnail(int entry) throws IOException {
+        byte[] encoded = getThumbnailBytes(entry);
+        if (encoded == null) {
+            return null;
+        }
+        return ImageIO.read(new ByteArrayInputStream(encoded));
+    }
+
+    /**
+     * Decodes all thumbnails in parallel.
+     *
+     * @param numThreads Integer that is the number of threads to use.
+     * @return BufferedImage array of the decoded thumbnails, in the atlas
+     * order.
+     */
+    public BufferedImage[] getAllThumbnails(int numThreads) {
+        BufferedImage[] thumbnails = new BufferedImage[numEntries];
+        AtomicInteger nextEntry = new AtomicInteger(0);
+        int threadNum = Math.max(1, Math.min(numThreads, numEntries));
+        Thread[] threads = new Thread[threadNum];
+        for (int t = 0; t < threadNum; t++) {
+            threads[t] = new Thread(new DecodeWorker(thumbnails, nextEntry));
+            threads[t].start();
+        }
+        for (int t = 0; t < threadNum; t++) {
+            try {
+                threads[t].join();
+            } catch (Throwable thr) {
+                System.err.println(thr.getMessage());
+            }
+        }
+        return thumbnails;
+    }
+
+    /**
+     * Gives lazy access to the thumbnails of the given entries. Each thumbnail
+     * is only read and decoded when it is first requested and it is kept in
+     * the list afterwards. The atlas needs to stay open while the list is in
+     * use.
+     *
+     * @param entries Integer array of the atlas entry indexes, in the order in
+     * which the thumbnails are to be listed.
+     * @return List<BufferedImage> that is the lazy view of the thumbnails.
+     */
+    public List<BufferedImage> getLazyThumbnails(int[] entries) {
+        return new LazyThumbnailList(entries);
+    }
+
+    /**
+     * Closes the atlas file.
+     *
+     * @throws IOException
+     */
+    public void close() throws IOException {
+        raf.close();
+    }
+
+    /**
+     * This list decodes the thumbnails from the atlas on their first access.
+     * Concurrent first accesses may decode the same thumbnail more than once,
+     * but all of them return the same image afterwards.
+     */
+    class LazyThumbnailList extends AbstractList<BufferedImage> {
+
+        private int[] entries;
+        private AtomicReferenceArray<BufferedImage> decoded;
+
+        /**
+         * Initialization.
+         *
+         * @param entries Integer array of the atlas entry indexes.
+         */
+        public LazyThumbnailList(int[] entries) {
+            this.entries = entries;
+            decoded = new AtomicReferenceArray<>(entries.length);
+        }
+
+        @Override
+        public BufferedImage get(int index) {
+            BufferedImage thumbnail = decoded.get(index);
+            if (thumbnail == null) {
+                try {
+                    thumbnail = getThumbnail(entries[index]);
+                } catch (IOException e) {
+                    System.err.println(e.getMessage());
+                    return null;
+                }
+                if (thumbnail != null && !decoded.compareAndSet(index, null,
+                        thumbnail)) {
+                    thumbnail = decoded.get(index);
+                }
+            }
+            return thumbnail;
+        }
+
+        @Override
+        public int size() {
+            return entries.length;
+        }
+    }
+
+    /**
+     * This worker decodes the thumbnails, taking the next entry from the
+     * shared counter.
+     */
+    class DecodeWorker implements Runnable {
+
+        private BufferedImage[] thumbnails;
+        private AtomicInteger nextEntry;
+
+        /**
+         * Initialization.
+         *
+         * @param thumbnails BufferedImage array to place the thumbnails in.
+         * @param nextEntry AtomicInteger that is the shared entry counter.
+         */
+        public DecodeWorker(BufferedImage[] thumbnails,
+                AtomicInteger nextEntry) {
+            this.thumbnails = thumbnails;
+            this.nextEntry = nextEntry;
+        }
+
+        @Override
+        public void run() {
+            int entry;
+            while ((entry = nextEntry.getAndIncrement()) < numEntries) {
+                try {
+                    thumbnails[entry] = getThumbnail(entry);
+                } catch (Exception e) {
+                    System.err.println(e.getMessage());
+                }
+            }
+        }
+    }
+}
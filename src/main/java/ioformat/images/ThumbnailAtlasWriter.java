@@ -0,0 +1,124 @@
+/**
+* Hub Miner: a hubness-aware machine learning experimentation library.
+* Copyright (C) 2014  Nenad Tomasev. Email: nenad.tomasev at gmail.com
+* 
+* This program is free software: you can redistribute it and/or modify it under
+* the terms of the GNU General Public License as published by the Free Software
+* Foundation, either version 3 of the License, or (at your option) any later
+* version.
+* 
+* This program is distributed in the hope that it will be useful, but WITHOUT
+* ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+* FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License along with
+* this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+package ioformat.images;
+
+import ioformat.FileUtil;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * This class writes image thumbnails into a single atlas file that is read by
+ * ThumbnailAtlas. The atlas holds a header, an index with the offset and the
+ * length of each encoded thumbnail, the concatenated encoded thumbnails and
+ * finally the thumbnail names. The number of entries is fixed in advance, so
+ * that the index can be reserved and filled in once the writer is closed.
+ *
+ * @author Nenad Tomasev <nenad.tomasev at gmail.com>
+ */
+public class ThumbnailAtlasWriter {
+
+    private RandomAccessFile raf;
+    private int numEntries;
+    private int numWritten = 0;
+    private long[] entryOffsets;
+    private int[] entryLengths;
+    private String[] entryNames;
+    // The position of the next encoded thumbnail.
+    private long dataPosition;
+
+    /**
+     * Initialization.
+     *
+     * @param atlasFile File to write the atlas to.
+     * @param numEntries Integer that is the number of thumbnails.
+     * @throws IOException
+     */
+    public ThumbnailAtlasWriter(File atlasFile, int numEntries)
+            throws IOException {
+        FileUtil.createFile(atlasFile);
+        this.numEntries = numEntries;
+        entryOffsets = new long[numEntries];
+        entryLengths = new int[numEntries];
+        entryNames = new String[numEntries];
+        raf = new RandomAccessFile(atlasFile, "rw");
+        raf.setLength(0);
+        dataPosition = ThumbnailAtlas.HEADER_SIZE
+                + (long) ThumbnailAtlas.INDEX_ENTRY_SIZE * numEntries;
+    }
+
+    /**
+     * Appends a thumbnail.
+     *
+     * @param name String that is the thumbnail name, usually the relative
+     * image path.
+     * @param encoded Byte array that is the encoded thumbnail image, or null
+     * if the thumbnail could not be made.
+     * @throws IOException
+     */
+    public void addEntry(String name, byte[] encoded) throws IOException {
+        if (numWritten >= numEntries) {
+            throw new IOException("The atlas is limited to " + numEntries
+                    + " entries.");
+        }
+        entryNames[numWritten] = name == null ? "" : name;
+        entryOffsets[numWritten] = dataPosition;
+        if (encoded != null) {
+            raf.seek(dataPosition);
+            raf.write(encoded);
+            entryLengths[numWritten] = encoded.length;
+            dataPosition += encoded.length;
+        }
+        numWritten++;
+    }
+
+    /**
+     * Writes the index and the names and closes the file.
+     *
+     * @throws IOException
+     */
+    public void close() throws IOException {
+        try {
+            raf.seek(dataPosition);
+            for (int i = 0; i < numEntries; i++) {
+                raf.writeUTF(entryNames[i] == null ? "" : entryNames[i]);
+            }
+            raf.seek(0);
+            raf.writeInt(ThumbnailAtlas.MAGIC);
+            raf.writeInt(ThumbnailAtlas.VERSION);
+            raf.writeInt(numWritten);
+            raf.writeLong(dataPosition);
+            // The index is written in one go.
+            byte[] index = new byte[ThumbnailAtlas.INDEX_ENTRY_SIZE
+                    * numEntries];
+            int position = 0;
+            for (int i = 0; i < numEntries; i++) {
+                long offset = entryOffsets[i];
+                for (int b = 7; b >= 0; b--) {
+                    index[position++] = (byte) (offset >>> (8 * b));
+                }
+                int length = entryLengths[i];
+                for (int b = 3; b >= 0; b--) {
+                    index[position++] = (byte) (length >>> (8 * b));
+                }
+            }
+            raf.write(index);
+        } finally {
+            raf.close();
+        }
+    }
+}
@@ -0,0 +1,48 @@
+/**
+* Hub Miner: a hubness-aware machine learning experimentation library.
+* Copyright (C) 2014  Nenad Tomasev. Email: nenad.tomasev at gmail.com
+* 
+* This program is free software: you can redistribute it and/or modify it under
+* the terms of the GNU General Public License as published by the Free Software
+* Foundation, either version 3 of the License, or (at your option) any later
+* version.
+* 
+* This program is distributed in the hope that it will be useful, but WITHOUT
+* ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+* FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License along with
+* this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+package learning.supervised.interfaces;
+
+import data.representation.DataInstance;
+
+/**
+ * This interface declares the methods for classification that only require the
+ * kNN set of the query point and the distances to those k neighbors. Unlike
+ * in NeighborPointsQueryUserInterface, the distances to all training points
+ * are not needed, so the callers that have a pre-computed kNN graph do not need
+ * to keep the full distance matrix in memory.
+ *
+ * @author Nenad Tomasev <nenad.tomasev at gmail.com>
+ */
+public interface KDistNeighborsQueryUserInterface {
+
+    /**
+     * This method performs classification of the target data point, based on
+     * its nearest neighbors and the distances to them.
+     *
+     * @param instance DataInstance object that is to be classified.
+     * @param kDistances float[] representing distances to the k-nearest
+     * neighbors among the training data.
+     * @param trNeighbors int[] representing the indexes of the k-nearest
+     * neighbors among the training data.
+     * @return float[] that is the probabilistic classification of the target
+     * DataInstance object.
+     * @throws Exception
+     */
+    public float[] classifyProbabilisticallyWithKDistAndNeighbors(
+            DataInstance instance, float[] kDistances, int[] trNeighbors)
+            throws Exception;
+}
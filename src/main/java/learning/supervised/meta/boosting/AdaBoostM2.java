@@ -34,6 +34,7 @@ import learning.supervised.Classifier;
 import learning.supervised.evaluation.ValidateableInterface;
 import learning.supervised.interfaces.DistMatrixUserInterface;
 import learning.supervised.interfaces.DistToPointsQueryUserInterface;
+import learning.supervised.interfaces.KDistNeighborsQueryUserInterface;
 import learning.supervised.interfaces.NeighborPointsQueryUserInterface;
 import util.ArrayUtil;
 import util.BasicMathUtil;
@@ -78,6 +79,13 @@ public class AdaBoostM2 extends Classifier implements
     private ArrayList<Double> lossRatios;
     // Learner predictions over the iterations.
     private ArrayList<double[][]> predictions;
+    // Weights of the trained models in the ensemble vote.
+    private float[] learnerFactors;
+    // Whether the weak learners are queried only by the kNN sets and the
+    // distances to the k-nearest neighbors.
+    private boolean useKDistQueries = false;
+    // Number of threads to use for the data-parallel parts of training.
+    private int numThreads = Runtime.getRuntime().availableProcessors();
     // For corrections when the weights approach the minimal double value too
     // much.
     private static final double SAFE_FACTOR = Math.pow(2, 50);
@@ -159,6 +167,22 @@ public class AdaBoostM2 extends Classifier implements
         }
     }
 
+    /**
+     * @param numThreads Integer that is the number of threads to use for the
+     * data-parallel parts of training.
+     */
+    public void setNumThreads(int numThreads) {
+        this.numThreads = Math.max(1, numThreads);
+    }
+
+    /**
+     * @return Integer that is the number of threads to use for the
+     * data-parallel parts of training.
+     */
+    public int getNumThreads() {
+        return numThreads;
+    }
+
     @Override
     public void train() throws Exception {
         NeighborSetFinder nsf = getNSF();
@@ -176,17 +200,28 @@ public class AdaBoostM2 extends Classifier implements
         }
         int numInstances = trainingData.size();
         classPriors = trainingData.getClassPriors();
+        // The kNN graph is calculated once and shared by all the boosting
+        // iterations. If the weak learner only needs the distances to the
+        // k-nearest neighbors, there is no need to duplicate the full distance
+        // matrix.
+        useKDistQueries = nsf != null && weakLearner instanceof
+                KDistNeighborsQueryUserInterface;
         // Because of the interfaces it pays off to duplicate the matrix in a
         // different format.
-        float[][] distToTrain = new float[numInstances][numInstances];
-        if (dMat != null) {
-            for (int i = 0; i < numInstances; i++) {
-                for (int j = i + 1; j < numInstances; j++) {
-                    distToTrain[i][j] = dMat[i][j - i - 1];
-                    distToTrain[j][i] = dMat[i][j - i - 1];
+        float[][] distToTrain = null;
+        if (!useKDistQueries && weakLearner instanceof
+                DistToPointsQueryUserInterface) {
+            distToTrain = new float[numInstances][numInstances];
+            if (dMat != null) {
+                for (int i = 0; i < numInstances; i++) {
+                    for (int j = i + 1; j < numInstances; j++) {
+                        distToTrain[i][j] = dMat[i][j - i - 1];
+                        distToTrain[j][i] = dMat[i][j - i - 1];
+                    }
                 }
             }
         }
+        int[] labels = trainingData.obtainLabelArray();
         numClasses = trainingData.countCategories();
         distributions = new ArrayList<>(numIterationsTrain);
         weightsPerLabel = new ArrayList<>(numIterationsTrain);
@@ -199,7 +234,7 @@ public class AdaBoostM2 extends Classifier implements
         Arrays.fill(distribution, 1f / numInstances);
         double[][] weightsPerLabelArray = new double[numInstances][numClasses];
         for (int i = 0; i < numInstances; i++) {
-            int label = trainingData.getLabelOf(i);
+            int label = labels[i];
             for (int cIndex = 0; cIndex < numClasses; cIndex++) {
                 if (cIndex != label) {
                     weightsPerLabelArray[i][cIndex] = distribution[i]
@@ -210,6 +245,10 @@ public class AdaBoostM2 extends Classifier implements
         weightsPerLabel.add(weightsPerLabelArray);
         trainedModels = new ArrayList<>(numIterationsTrain);
         predictions = new ArrayList<>(numIterationsTrain);
+        // The training data is split into chunks for the data-parallel
+        // evaluation and weight updates.
+        int threadCount = Math.max(1, Math.min(numThreads, numInstances));
+        int chunkSize = numInstances / threadCount;
         for (int iterationIndex = 0; iterationIndex < numIterationsTrain;
                 iterationIndex++) {
             double iterationPseudoLoss = 0;
@@ -220,7 +259,7 @@ public class AdaBoostM2 extends Classifier implements
             double totalWeightSum = 0;
             distribution = new double[numInstances];
             for (int i = 0; i < numInstances; i++) {
-                int label = trainingData.getLabelOf(i);
+                int label = labels[i];
                 for (int cIndex = 0; cIndex < numClasses; cIndex++) {
                     if (cIndex != label) {
                         totalWeightsArray[i] +=
@@ -267,44 +306,31 @@ public class AdaBoostM2 extends Classifier implements
             // Train the learner.
             iterationLearner.train();
             trainedModels.add(iterationLearner);
-            for (int i = 0; i < numInstances; i++) {
-                int label = trainingData.getLabelOf(i);
-                float[] classProbs;
-                if (weakLearner instanceof DistToPointsQueryUserInterface
-                        && weakLearner instanceof
-                        NeighborPointsQueryUserInterface && nsf != null) {
-                    classProbs = ((NeighborPointsQueryUserInterface)
-                            iterationLearner).classifyProbabilistically(
-                            trainingData.getInstance(i),
-                            distToTrain[i], nsf.getKNeighbors()[i]);
-                } else if (weakLearner instanceof
-                        DistToPointsQueryUserInterface) {
-                    classProbs = ((DistToPointsQueryUserInterface)
-                            iterationLearner).classifyProbabilistically(
-                            trainingData.getInstance(i),
-                            distToTrain[i]);
-                } else {
-                    classProbs = iterationLearner.classifyProbabilistically(
-                            trainingData.getInstance(i));
-                }
-                predictionArray[i] = new double[numClasses];
-                double correctProb = classProbs[label];
-                double penaltySum = 0;
-                for (int cIndex = 0; cIndex < numClasses; cIndex++) {
-                    predictionArray[i][cIndex] = classProbs[cIndex];
-                    if (cIndex != label) {
-                        penaltySum += classProbs[cIndex]
-                                * labelWeightingFunctionArray[i][cIndex];
-                    }
-                }
-                if (!DataMineConstants.isAcceptableDouble(penaltySum)
-                        || !DataMineConstants.isAcceptableDouble(
-                        distribution[i])
-                        || !DataMineConstants.isAcceptableDouble(correctProb)) {
-                    continue;
+            // Evaluate the learner on the training data in parallel, each
+            // thread accumulating its own part of the pseudo-loss.
+            double[] partialLosses = new double[threadCount];
+            Exception[] workerExceptions = new Exception[threadCount];
+            Thread[] threads = new Thread[threadCount];
+            for (int tIndex = 0; tIndex < threadCount; tIndex++) {
+                int endIndex = tIndex == threadCount - 1 ? numInstances - 1
+                        : (tIndex + 1) * chunkSize - 1;
+                threads[tIndex] = new Thread(new TrainingPointsEvaluator(
+                        tIndex * chunkSize, endIndex, tIndex,
+                        iterationLearner, nsf, distToTrain, labels,
+                        distribution, labelWeightingFunctionArray,
+                        predictionArray, partialLosses, workerExceptions));
+                threads[tIndex].start();
+            }
+            joinAll(threads);
+            // The classification errors in the workers are propagated, so
+            // that the weights are never updated from a partial evaluation.
+            for (int tIndex = 0; tIndex < threadCount; tIndex++) {
+                if (workerExceptions[tIndex] != null) {
+                    throw workerExceptions[tIndex];
                 }
-                iterationPseudoLoss += (distribution[i] / 2) * (1 - correctProb
-                        + penaltySum);
+            }
+            for (int tIndex = 0; tIndex < threadCount; tIndex++) {
+                iterationPseudoLoss += partialLosses[tIndex];
             }
             predictions.add(predictionArray);
             pseudoLoss.add(iterationPseudoLoss);
@@ -319,7 +345,7 @@ public class AdaBoostM2 extends Classifier implements
             }
             if (maxWeight < Double.MIN_VALUE * SAFE_FACTOR) {
                 for (int i = 0; i < numInstances; i++) {
-                    int label = trainingData.getLabelOf(i);
+                    int label = labels[i];
                     for (int cIndex = 0; cIndex < numClasses; cIndex++) {
                         if (cIndex != label) {
                             weightsPerLabelArray[i][cIndex] *= SAFE_FACTOR;
@@ -328,72 +354,48 @@ public class AdaBoostM2 extends Classifier implements
                 }
             }
             weightsPerLabelArray = new double[numInstances][numClasses];
-            // Now update the weights based on the pseudo-loss.
+            // Now update the weights based on the pseudo-loss. The updates
+            // are independent for different instances.
             lossRatios.add(lossRatio);
-            for (int i = 0; i < numInstances; i++) {
-                int label = trainingData.getLabelOf(i);
-                for (int cIndex = 0; cIndex < numClasses; cIndex++) {
-                    double updateExponent = 0.5 * (1
-                            + predictionArray[i][label]
-                            - predictionArray[i][cIndex]);
-                    double updateFactor = Math.pow(lossRatio,
-                            updateExponent);
-                    if (cIndex != label) {
-                        if (DataMineConstants.isAcceptableDouble(
-                                updateFactor)) {
-                            weightsPerLabelArray[i][cIndex] =
-                                    weightsPerLabel.get(iterationIndex)[i][
-                                    cIndex] * updateFactor;
-                        } else {
-                            // If something went wrong, keep the previous
-                            // weight.
-                            weightsPerLabelArray[i][cIndex] =
-                                    weightsPerLabel.get(iterationIndex)[i][
-                                    cIndex];
-                        }
-                    }
-                }
+            for (int tIndex = 0; tIndex < threadCount; tIndex++) {
+                int endIndex = tIndex == threadCount - 1 ? numInstances - 1
+                        : (tIndex + 1) * chunkSize - 1;
+                threads[tIndex] = new Thread(new LabelWeightUpdater(
+                        tIndex * chunkSize, endIndex, lossRatio, labels,
+                        predictionArray, weightsPerLabel.get(iterationIndex),
+                        weightsPerLabelArray));
+                threads[tIndex].start();
             }
+            joinAll(threads);
+        }
+        // The learner weights in the final ensemble vote.
+        learnerFactors = new float[numIterationsTrain];
+        for (int iterIndex = 0; iterIndex < numIterationsTrain; iterIndex++) {
+            learnerFactors[iterIndex] = (float) BasicMathUtil.log2(
+                    1. / lossRatios.get(iterIndex));
         }
+        // Determine the optimal number of iterations to use for testing. The
+        // predictions of the learners on the training data have already been
+        // obtained in the boosting iterations, so they are re-used here.
         numIterationsTest = numIterationsTrain;
         float[] totalAccuracyCount = new float[numIterationsTrain];
         float[][] currPrediction = new float[numInstances][numClasses];
         float bestAccuracyCount = 0;
         for (int iterIndex = 0; iterIndex < numIterationsTrain; iterIndex++) {
-            BoostableClassifier iterationLearner = trainedModels.get(
-                    iterIndex);
-            double lossRatio = lossRatios.get(iterIndex);
-            float factor = (float) BasicMathUtil.log2(1. / lossRatio);
+            double[][] predictionArray = predictions.get(iterIndex);
+            float factor = learnerFactors[iterIndex];
             for (int i = 0; i < numInstances; i++) {
-                DataInstance instance = trainingData.getInstance(i);
-                float[] classProbsIteration;
-                if (weakLearner instanceof DistToPointsQueryUserInterface
-                        && weakLearner instanceof
-                        NeighborPointsQueryUserInterface && nsf != null) {
-                    classProbsIteration = ((NeighborPointsQueryUserInterface)
-                            iterationLearner).classifyProbabilistically(
-                            instance, distToTrain[i], nsf.getKNeighbors()[i]);
-                } else if (weakLearner instanceof
-                        DistToPointsQueryUserInterface) {
-                    classProbsIteration = ((DistToPointsQueryUserInterface)
-                            iterationLearner).classifyProbabilistically(
-                            instance, distToTrain[i]);
-                } else {
-                    classProbsIteration =
-                            iterationLearner.
-                            classifyProbabilistically(instance);
-                }
                 float maxClassIndex = 0;
                 float maxClassVote = -Float.MAX_VALUE;
                 for (int cIndex = 0; cIndex < numClasses; cIndex++) {
                     currPrediction[i][cIndex] += factor
-                            * classProbsIteration[cIndex];
+                            * (float) predictionArray[i][cIndex];
                     if (currPrediction[i][cIndex] > maxClassVote) {
                         maxClassVote = currPrediction[i][cIndex];
                         maxClassIndex = cIndex;
                     }
                 }
-                if (maxClassIndex == instance.getCategory()) {
+                if (maxClassIndex == labels[i]) {
                     totalAccuracyCount[iterIndex]++;
                 }
             }
@@ -404,17 +406,266 @@ public class AdaBoostM2 extends Classifier implements
         }
     }
 
+    /**
+     * Joins all the provided threads.
+     *
+     * @param threads Thread[] of threads to join.
+     */
+    private static void joinAll(Thread[] threads) {
+        for (int tIndex = 0; tIndex < threads.length; tIndex++) {
+            if (threads[tIndex] != null) {
+                try {
+                    threads[tIndex].join();
+                } catch (Throwable t) {
+                    System.err.println(t.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * This class evaluates a trained weak learner on a range of training
+     * points, stores its predictions and calculates the pseudo-loss over the
+     * range.
+     */
+    class TrainingPointsEvaluator implements Runnable {
+
+        private int startIndex;
+        private int endIndex;
+        private int threadIndex;
+        private BoostableClassifier iterationLearner;
+        private NeighborSetFinder nsf;
+        private float[][] distToTrain;
+        private int[] labels;
+        private double[] distribution;
+        private double[][] labelWeightingFunctionArray;
+        private double[][] predictionArray;
+        private double[] partialLosses;
+        private Exception[] workerExceptions;
+
+        /**
+         * Initialization.
+         *
+         * @param startIndex Integer that is the start index, inclusive.
+         * @param endIndex Integer that is the end index, inclusive.
+         * @param threadIndex Integer that is the index of the thread, used for
+         * storing the partial pseudo-loss.
+         * @param iterationLearner BoostableClassifier that was trained in the
+         * current iteration.
+         * @param nsf NeighborSetFinder object holding the kNN graph on the
+         * training data.
+         * @param distToTrain float[][] that is the full distance matrix, if
+         * needed by the learner.
+         * @param labels int[] of training data labels.
+         * @param distribution double[] that is the current distribution over
+         * the training data.
+         * @param labelWeightingFunctionArray double[][] that is the current
+         * label weighting function.
+         * @param predictionArray double[][] where the predictions are stored.
+         * @param partialLosses double[] where the partial pseudo-losses are
+         * stored.
+         * @param workerExceptions Exception[] where the exceptions thrown
+         * during the evaluation are stored, to be re-thrown after the join.
+         */
+        public TrainingPointsEvaluator(int startIndex, int endIndex,
+                int threadIndex, BoostableClassifier iterationLearner,
+                NeighborSetFinder nsf, float[][] distToTrain, int[] labels,
+                double[] distribution, double[][] labelWeightingFunctionArray,
+                double[][] predictionArray, double[] partialLosses,
+                Exception[] workerExceptions) {
+            this.startIndex = startIndex;
+            this.endIndex = endIndex;
+            this.threadIndex = threadIndex;
+            this.iterationLearner = iterationLearner;
+            this.nsf = nsf;
+            this.distToTrain = distToTrain;
+            this.labels = labels;
+            this.distribution = distribution;
+            this.labelWeightingFunctionArray = labelWeightingFunctionArray;
+            this.predictionArray = predictionArray;
+            this.partialLosses = partialLosses;
+            this.workerExceptions = workerExceptions;
+        }
+
+        @Override
+        public void run() {
+            try {
+                double rangePseudoLoss = 0;
+                for (int i = startIndex; i <= endIndex; i++) {
+                    int label = labels[i];
+                    float[] classProbs = classifyTrainingPoint(
+                            iterationLearner, i, nsf, distToTrain);
+                    predictionArray[i] = new double[numClasses];
+                    double correctProb = classProbs[label];
+                    double penaltySum = 0;
+                    for (int cIndex = 0; cIndex < numClasses; cIndex++) {
+                        predictionArray[i][cIndex] = classProbs[cIndex];
+                        if (cIndex != label) {
+                            penaltySum += classProbs[cIndex]
+                                    * labelWeightingFunctionArray[i][cIndex];
+                        }
+                    }
+                    if (!DataMineConstants.isAcceptableDouble(penaltySum)
+                            || !DataMineConstants.isAcceptableDouble(
+                            distribution[i])
+                            || !DataMineConstants.isAcceptableDouble(
+                            correctProb)) {
+                        continue;
+                    }
+                    rangePseudoLoss += (distribution[i] / 2) * (1
+                            - correctProb + penaltySum);
+                }
+                partialLosses[threadIndex] = rangePseudoLoss;
+            } catch (Exception e) {
+                workerExceptions[threadIndex] = e;
+            }
+        }
+    }
+
+    /**
+     * This class updates the class-conditional difficulty weights on a range
+     * of training points, based on the pseudo-loss of the current iteration.
+     */
+    class LabelWeightUpdater implements Runnable {
+
+        private int startIndex;
+        private int endIndex;
+        private double lossRatio;
+        private int[] labels;
+        private double[][] predictionArray;
+        private double[][] previousWeights;
+        private double[][] updatedWeights;
+
+        /**
+         * Initialization.
+         *
+         * @param startIndex Integer that is the start index, inclusive.
+         * @param endIndex Integer that is the end index, inclusive.
+         * @param lossRatio Double that is the loss ratio in the current
+         * iteration.
+         * @param labels int[] of training data labels.
+         * @param predictionArray double[][] of the predictions of the current
+         * weak learner.
+         * @param previousWeights double[][] of the weights in the current
+         * iteration.
+         * @param updatedWeights double[][] of the weights for the next
+         * iteration.
+         */
+        public LabelWeightUpdater(int startIndex, int endIndex,
+                double lossRatio, int[] labels, double[][] predictionArray,
+                double[][] previousWeights, double[][] updatedWeights) {
+            this.startIndex = startIndex;
+            this.endIndex = endIndex;
+            this.lossRatio = lossRatio;
+            this.labels = labels;
+            this.predictionArray = predictionArray;
+            this.previousWeights = previousWeights;
+            this.updatedWeights = updatedWeights;
+        }
+
+        @Override
+        public void run() {
+            for (int i = startIndex; i <= endIndex; i++) {
+                int label = labels[i];
+                for (int cIndex = 0; cIndex < numClasses; cIndex++) {
+                    if (cIndex == label) {
+                        continue;
+                    }
+                    double updateExponent = 0.5 * (1
+                            + predictionArray[i][label]
+                            - predictionArray[i][cIndex]);
+                    double updateFactor = Math.pow(lossRatio,
+                            updateExponent);
+                    if (DataMineConstants.isAcceptableDouble(updateFactor)) {
+                        updatedWeights[i][cIndex] =
+                                previousWeights[i][cIndex] * updateFactor;
+                    } else {
+                        // If something went wrong, keep the previous weight.
+                        updatedWeights[i][cIndex] = previousWeights[i][cIndex];
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Classifies a training point by a weak learner, using the shared kNN
+     * graph whenever possible.
+     *
+     * @param learner BoostableClassifier to use.
+     * @param index Integer that is the index of the training point.
+     * @param nsf NeighborSetFinder object holding the kNN graph on the
+     * training data.
+     * @param distToTrain float[][] that is the full distance matrix, if
+     * needed by the learner.
+     * @return float[] of class affiliation probabilities.
+     * @throws Exception
+     */
+    private float[] classifyTrainingPoint(BoostableClassifier learner,
+            int index, NeighborSetFinder nsf, float[][] distToTrain)
+            throws Exception {
+        DataInstance instance = trainingData.getInstance(index);
+        if (useKDistQueries) {
+            return ((KDistNeighborsQueryUserInterface) learner).
+                    classifyProbabilisticallyWithKDistAndNeighbors(instance,
+                    nsf.getKDistances()[index], nsf.getKNeighbors()[index]);
+        } else if (weakLearner instanceof DistToPointsQueryUserInterface
+                && weakLearner instanceof NeighborPointsQueryUserInterface
+                && nsf != null) {
+            return ((NeighborPointsQueryUserInterface) learner).
+                    classifyProbabilistically(instance, distToTrain[index],
+                    nsf.getKNeighbors()[index]);
+        } else if (weakLearner instanceof DistToPointsQueryUserInterface) {
+            return ((DistToPointsQueryUserInterface) learner).
+                    classifyProbabilistically(instance, distToTrain[index]);
+        } else {
+            return learner.classifyProbabilistically(instance);
+        }
+    }
+
+    /**
+     * Gets the weight of a trained model in the ensemble vote.
+     *
+     * @param iterationIndex Integer that is the index of the model.
+     * @return Float that is the weight of the model in the vote.
+     */
+    private float getLearnerFactor(int iterationIndex) {
+        if (learnerFactors != null) {
+            return learnerFactors[iterationIndex];
+        } else {
+            return (float) BasicMathUtil.log2(
+                    1. / lossRatios.get(iterationIndex));
+        }
+    }
+
     @Override
     public float[] classifyProbabilistically(DataInstance instance,
             float[] distToTraining, int[] trNeighbors) throws Exception {
         float[] classProbEstimates = new float[numClasses];
+        // The distances to the neighbors are extracted only once and shared
+        // by all the models, which all use the same kNN set.
+        float[] kDistances = null;
+        if (weakLearner instanceof KDistNeighborsQueryUserInterface) {
+            kDistances = new float[trNeighbors.length];
+            for (int kIndex = 0; kIndex < trNeighbors.length; kIndex++) {
+                kDistances[kIndex] = distToTraining[trNeighbors[kIndex]];
+            }
+        }
         for (int iterationIndex = 0; iterationIndex < numIterationsTest;
                 iterationIndex++) {
+            float factor = getLearnerFactor(iterationIndex);
+            if (!DataMineConstants.isAcceptableFloat(factor)) {
+                continue;
+            }
             BoostableClassifier iterationLearner = trainedModels.get(
                     iterationIndex);
-            double lossRatio = lossRatios.get(iterationIndex);
             float[] classProbsIteration;
-            if (weakLearner instanceof DistToPointsQueryUserInterface
+            if (kDistances != null) {
+                classProbsIteration = ((KDistNeighborsQueryUserInterface)
+                        iterationLearner).
+                        classifyProbabilisticallyWithKDistAndNeighbors(
+                        instance, kDistances, trNeighbors);
+            } else if (weakLearner instanceof DistToPointsQueryUserInterface
                     && weakLearner instanceof
                     NeighborPointsQueryUserInterface) {
                 classProbsIteration = ((NeighborPointsQueryUserInterface)
@@ -428,10 +679,6 @@ public class AdaBoostM2 extends Classifier implements
                 classProbsIteration =
                         iterationLearner.classifyProbabilistically(instance);
             }
-            float factor = (float) BasicMathUtil.log2(1. / lossRatio);
-            if (!DataMineConstants.isAcceptableFloat(factor)) {
-                continue;
-            }
             for (int cIndex = 0; cIndex < numClasses; cIndex++) {
                 if (DataMineConstants.isAcceptableFloat(
                         classProbsIteration[cIndex])) {
@@ -460,9 +707,12 @@ public class AdaBoostM2 extends Classifier implements
         float[] classProbEstimates = new float[numClasses];
         for (int iterationIndex = 0; iterationIndex < numIterationsTest;
                 iterationIndex++) {
+            float factor = getLearnerFactor(iterationIndex);
+            if (!DataMineConstants.isAcceptableFloat(factor)) {
+                continue;
+            }
             BoostableClassifier iterationLearner = trainedModels.get(
                     iterationIndex);
-            double lossRatio = lossRatios.get(iterationIndex);
             float[] classProbsIteration;
             if (weakLearner instanceof DistToPointsQueryUserInterface) {
                 classProbsIteration = ((DistToPointsQueryUserInterface)
@@ -472,10 +722,6 @@ public class AdaBoostM2 extends Classifier implements
                 classProbsIteration =
                         iterationLearner.classifyProbabilistically(instance);
             }
-            float factor = (float) BasicMathUtil.log2(1. / lossRatio);
-            if (!DataMineConstants.isAcceptableFloat(factor)) {
-                continue;
-            }
             for (int cIndex = 0; cIndex < numClasses; cIndex++) {
                 if (DataMineConstants.isAcceptableFloat(
                         classProbsIteration[cIndex])) {
@@ -504,15 +750,14 @@ public class AdaBoostM2 extends Classifier implements
         float[] classProbEstimates = new float[numClasses];
         for (int iterationIndex = 0; iterationIndex < numIterationsTest;
                 iterationIndex++) {
+            float factor = getLearnerFactor(iterationIndex);
+            if (!DataMineConstants.isAcceptableFloat(factor)) {
+                continue;
+            }
             BoostableClassifier iterationLearner = trainedModels.get(
                     iterationIndex);
-            double lossRatio = lossRatios.get(iterationIndex);
             float[] classProbsIteration =
                     iterationLearner.classifyProbabilistically(instance);
-            float factor = (float) BasicMathUtil.log2(1. / lossRatio);
-            if (!DataMineConstants.isAcceptableFloat(factor)) {
-                continue;
-            }
             for (int cIndex = 0; cIndex < numClasses; cIndex++) {
                 if (DataMineConstants.isAcceptableFloat(
                         classProbsIteration[cIndex])) {
@@ -616,6 +861,7 @@ public class AdaBoostM2 extends Classifier implements
     public ValidateableInterface copyConfiguration() {
         AdaBoostM2 classifierCopy = new AdaBoostM2(weakLearner,
                 numIterationsTrain);
+        classifierCopy.numThreads = numThreads;
         return classifierCopy;
     }
 
@@ -34,6 +34,7 @@ import learning.supervised.Category;
 import learning.supervised.evaluation.ValidateableInterface;
 import learning.supervised.interfaces.DistMatrixUserInterface;
 import learning.supervised.interfaces.DistToPointsQueryUserInterface;
+import learning.supervised.interfaces.KDistNeighborsQueryUserInterface;
 import learning.supervised.interfaces.NeighborPointsQueryUserInterface;
 import learning.supervised.meta.boosting.BoostableClassifier;
 import util.ArrayUtil;
@@ -50,7 +51,7 @@ import util.ArrayUtil;
 public class DWHFNNBoostable extends BoostableClassifier implements
         DistMatrixUserInterface, NSFUserInterface,
         DistToPointsQueryUserInterface, NeighborPointsQueryUserInterface,
-        Serializable {
+        KDistNeighborsQueryUserInterface, Serializable {
     
     private static final long serialVersionUID = 1L;
 
@@ -803,12 +804,37 @@ public class DWHFNNBoostable extends BoostableClassifier implements
     @Override
     public float[] classifyProbabilistically(DataInstance instance,
             float[] distToTraining, int[] trNeighbors) throws Exception {
+        float[] kDistances = new float[k];
+        for (int kIndex = 0; kIndex < k; kIndex++) {
+            kDistances[kIndex] = distToTraining[trNeighbors[kIndex]];
+        }
+        return voteWithKDistances(kDistances, trNeighbors);
+    }
+
+    @Override
+    public float[] classifyProbabilisticallyWithKDistAndNeighbors(
+            DataInstance instance, float[] kDistances, int[] trNeighbors)
+            throws Exception {
+        return voteWithKDistances(kDistances, trNeighbors);
+    }
+
+    /**
+     * Performs the distance-weighted hubness-aware fuzzy vote of the
+     * k-nearest neighbors.
+     *
+     * @param kDistances float[] of distances to the k-nearest neighbors.
+     * @param trNeighbors int[] of indexes of the k-nearest neighbors in the
+     * training data.
+     * @return float[] that is the class affiliation distribution.
+     */
+    private float[] voteWithKDistances(float[] kDistances,
+            int[] trNeighbors) {
         float[] distance_weights = new float[k];
         float dwSum = 0;
         for (int kIndex = 0; kIndex < k; kIndex++) {
-            if (distToTraining[trNeighbors[kIndex]] != 0) {
+            if (kDistances[kIndex] != 0) {
                 distance_weights[kIndex] = 1f /
-                        ((float) Math.pow(distToTraining[trNeighbors[kIndex]],
+                        ((float) Math.pow(kDistances[kIndex],
                         (2f / (mValue - 1f))));
             } else {
                 distance_weights[kIndex] = 10000f;
@@ -837,7 +863,6 @@ public class DWHFNNBoostable extends BoostableClassifier implements
             }
         }
         // Normalization.
-        // Normalization.
         float minVal = ArrayUtil.min(classProbEstimates);
         for (int cIndex = 0; cIndex < numClasses; cIndex++) {
             if (minVal < 0) {
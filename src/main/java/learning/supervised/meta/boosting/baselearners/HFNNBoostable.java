@@ -34,6 +34,7 @@ import learning.supervised.Category;
 import learning.supervised.evaluation.ValidateableInterface;
 import learning.supervised.interfaces.DistMatrixUserInterface;
 import learning.supervised.interfaces.DistToPointsQueryUserInterface;
+import learning.supervised.interfaces.KDistNeighborsQueryUserInterface;
 import learning.supervised.interfaces.NeighborPointsQueryUserInterface;
 import learning.supervised.meta.boosting.BoostableClassifier;
 import util.ArrayUtil;
@@ -50,7 +51,7 @@ import util.ArrayUtil;
 public class HFNNBoostable extends BoostableClassifier implements
         DistMatrixUserInterface, NSFUserInterface,
         DistToPointsQueryUserInterface, NeighborPointsQueryUserInterface,
-        Serializable {
+        KDistNeighborsQueryUserInterface, Serializable {
     
     private static final long serialVersionUID = 1L;
 
@@ -791,6 +792,14 @@ public class HFNNBoostable extends BoostableClassifier implements
         return classProbEstimates;
     }
     
+    @Override
+    public float[] classifyProbabilisticallyWithKDistAndNeighbors(
+            DataInstance instance, float[] kDistances, int[] trNeighbors)
+            throws Exception {
+        // The vote does not depend on the neighbor distances.
+        return classifyProbabilistically(instance, kDistances, trNeighbors);
+    }
+    
     @Override
     public int getNeighborhoodSize() {
         return k;
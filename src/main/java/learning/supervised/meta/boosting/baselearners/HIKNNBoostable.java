@@ -34,6 +34,7 @@ import learning.supervised.Category;
 import learning.supervised.evaluation.ValidateableInterface;
 import learning.supervised.interfaces.DistMatrixUserInterface;
 import learning.supervised.interfaces.DistToPointsQueryUserInterface;
+import learning.supervised.interfaces.KDistNeighborsQueryUserInterface;
 import learning.supervised.interfaces.NeighborPointsQueryUserInterface;
 import learning.supervised.meta.boosting.BoostableClassifier;
 import util.ArrayUtil;
@@ -52,7 +53,7 @@ import util.BasicMathUtil;
 public class HIKNNBoostable extends BoostableClassifier implements
         DistMatrixUserInterface, NSFUserInterface,
         DistToPointsQueryUserInterface, NeighborPointsQueryUserInterface,
-        Serializable {
+        KDistNeighborsQueryUserInterface, Serializable {
     
     private static final long serialVersionUID = 1L;
 
@@ -839,6 +840,7 @@ public class HIKNNBoostable extends BoostableClassifier implements
      * @return float[] of class affiliation probabilities.
      * @throws Exception
      */
+    @Override
     public float[] classifyProbabilisticallyWithKDistAndNeighbors(
             DataInstance instance, float[] kDists, int[] trNeighbors)
             throws Exception {
@@ -32,6 +32,7 @@ import learning.supervised.Category;
 import learning.supervised.evaluation.ValidateableInterface;
 import learning.supervised.interfaces.DistMatrixUserInterface;
 import learning.supervised.interfaces.DistToPointsQueryUserInterface;
+import learning.supervised.interfaces.KDistNeighborsQueryUserInterface;
 import learning.supervised.interfaces.NeighborPointsQueryUserInterface;
 import learning.supervised.meta.boosting.BoostableClassifier;
 import util.ArrayUtil;
@@ -47,7 +48,7 @@ import util.ArrayUtil;
 public class HwKNNBoostable extends BoostableClassifier implements
         DistMatrixUserInterface, NSFUserInterface,
         DistToPointsQueryUserInterface, NeighborPointsQueryUserInterface,
-        Serializable {
+        KDistNeighborsQueryUserInterface, Serializable {
 
     private static final long serialVersionUID = 1L;
     private DataSet trainingData = null;
@@ -694,6 +695,14 @@ public class HwKNNBoostable extends BoostableClassifier implements
         return classProbabilities;
     }
     
+    @Override
+    public float[] classifyProbabilisticallyWithKDistAndNeighbors(
+            DataInstance instance, float[] kDistances, int[] trNeighbors)
+            throws Exception {
+        // The vote does not depend on the neighbor distances.
+        return classifyProbabilistically(instance, kDistances, trNeighbors);
+    }
+    
     @Override
     public int getNeighborhoodSize() {
         return k;
@@ -20,6 +20,7 @@ import algref.Author;
 import algref.ConferencePublication;
 import algref.Publication;
 import algref.Publisher;
+import data.neighbors.ClassOccurrenceTables;
 import data.neighbors.NSFUserInterface;
 import data.neighbors.NeighborSetFinder;
 import data.representation.DataInstance;
@@ -564,7 +565,6 @@ public class ANHBNN extends Classifier implements DistMatrixUserInterface,
         // Calculate class priors.
         classPriors = trainingData.getClassPriors();
         classFreqs = trainingData.getClassFrequenciesAsFloatArray();
-        classToClassPriors = new float[numClasses][numClasses];
         // Get the neighbor occurrence frequencies.
         neighbOccFreqs = nsf.getNeighborFrequencies();
         // Calculate the entropies of the reverse neighbor sets.
@@ -591,19 +591,19 @@ public class ANHBNN extends Classifier implements DistMatrixUserInterface,
         long upperIndex;
         int queryClass;
         int currFreq;
-        classDataKNeighborRelation = new float[numClasses][trainingData.size()];
+        // Each point is considered as its own 0th nearest neighbor, which
+        // avoids many zero-division issues.
+        ClassOccurrenceTables occTables = ClassOccurrenceTables.
+                calculateFromNSF(nsf, numClasses, k, ClassOccurrenceTables.
+                getDefaultNumThreads(dataSize));
+        classDataKNeighborRelation = occTables.getClassDataNeighborRelation(k,
+                true);
+        classToClassPriors = occTables.getGlobalClassToClassNonNormalized(k,
+                true);
         for (int i = 0; i < neighbOccFreqs.length; i++) {
             // Get the class context of the query.
             queryClass = trainingData.getLabelOf(i);
-            // Each point is considered as its own 0th nearest neighbor, which
-            // avoids many zero-division issues.
-            classDataKNeighborRelation[queryClass][i]++;
-            classToClassPriors[queryClass][queryClass]++;
             for (int kIndFirst = 0; kIndFirst < k; kIndFirst++) {
-                classDataKNeighborRelation[queryClass][kneighbors[i][
-                        kIndFirst]]++;
-                classToClassPriors[trainingData.getLabelOf(
-                        kneighbors[i][kIndFirst])][queryClass]++;
                 // Encode the pair. Here each neighbor co-occurs with the query
                 // point, as the point is considered to be its own neighbor.
                 lowerIndex = Math.min(kneighbors[i][kIndFirst], i);
@@ -787,7 +787,6 @@ public class ANHBNN extends Classifier implements DistMatrixUserInterface,
         // First find the class priors.
         classPriors = trainingData.getClassPriors();
         classFreqs = trainingData.getClassFrequenciesAsFloatArray();
-        classToClassPriors = new float[numClasses][numClasses];
         // Get the neighbor occurrence frequencies.
         int[] protoOccFreqs = reducer.getPrototypeHubness();
         neighbOccFreqs = new int[protoOccFreqs.length];
@@ -21,6 +21,7 @@ import algref.ConferencePublication;
 import algref.Publication;
 import algref.Publisher;
 import learning.supervised.interfaces.AutomaticKFinderInterface;
+import data.neighbors.ClassOccurrenceTables;
 import data.neighbors.NSFUserInterface;
 import data.neighbors.NeighborSetFinder;
 import data.representation.DataInstance;
@@ -169,6 +170,11 @@ public class DWHFNN extends Classifier implements AutomaticKFinderInterface,
             nsfLOU = new NeighborSetFinder(dset, distMat, getCombinedMetric());
         }
         nsfLOU.calculateNeighborSets(kMax);
+        // The class-conditional occurrence tables for all the neighborhood
+        // sizes in the range.
+        ClassOccurrenceTables occTables = ClassOccurrenceTables.
+                calculateFromNSF(nsfLOU, numClasses, kMax,
+                ClassOccurrenceTables.getDefaultNumThreads(dset.size()));
         // Here we will log the accuracy for each k value.
         float[] accuracyArray = new float[kMax - kMin + 1];
         float currMaxAcc = -1f;
@@ -206,7 +212,6 @@ public class DWHFNN extends Classifier implements AutomaticKFinderInterface,
         localClassDistribution = new float[trainingData.size()][];
         localFClassDistribution = new float[trainingData.size()][];
         localCrispClassDistribution = new float[trainingData.size()][];
-        int currClass = 0;
         float laplaceTotal = numClasses * laplaceEstimator;
         // Calculate all the anti-hub handling structures for all supported
         // vote estimation methods.
@@ -243,36 +248,30 @@ public class DWHFNN extends Classifier implements AutomaticKFinderInterface,
         // This will hold the class-conditional neighbor occurrence frequencies
         // for all the k-values.
         float[][][] classDataKNeighborRelationAllK =
-                new float[accuracyArray.length][numClasses][
-                        trainingData.size()];
+                new float[accuracyArray.length][][];
         // Neighbor occurrence frequencies for all the k-values.
         int[][] neighborOccFreqsAllK = new int[kMax][];
         // Class-to-class occurrences for all the k-values.
         float[][][] classToClassPriorsAllK =
-                new float[accuracyArray.length][numClasses][numClasses];
+                new float[accuracyArray.length][][];
         // Normalization factors for the class to class priors.
         float[][] classHubnessSumsAllK =
                 new float[accuracyArray.length][numClasses];
         // Iterate over the neighborhood range.
         for (int kCurr = kMin; kCurr <= kMax; kCurr++) {
-            nsfLOU.recalculateStatsForSmallerK(kCurr);
-            neighborOccFreqsAllK[kCurr - 1] = Arrays.copyOf(
-                    nsfLOU.getNeighborFrequencies(),
-                    nsfLOU.getNeighborFrequencies().length);
-            // Calculate the class-conditional and class-to-class occurrence
-            // frequencies.
-            for (int i = 0; i < trainingData.size(); i++) {
-                currClass = trainingData.data.get(i).getCategory();
-                classDataKNeighborRelationAllK[kCurr - kMin][currClass][i]++;
-                for (int j = 0; j < kCurr; j++) {
-                    classDataKNeighborRelationAllK[kCurr - kMin][currClass][
-                            kneighbors[i][j]]++;
-                    classToClassPriorsAllK[kCurr - kMin][
-                            trainingData.data.get(
-                            kneighbors[i][j]).getCategory()][currClass]++;
-                    classHubnessSumsAllK[kCurr - kMin][
-                            trainingData.data.get(
-                            kneighbors[i][j]).getCategory()]++;
+            neighborOccFreqsAllK[kCurr - 1] =
+                    occTables.getOccurrenceFrequencies(kCurr);
+            // Read the class-conditional and class-to-class occurrence
+            // frequencies from the tables.
+            classDataKNeighborRelationAllK[kCurr - kMin] =
+                    occTables.getClassDataNeighborRelation(kCurr, true);
+            classToClassPriorsAllK[kCurr - kMin] = occTables.
+                    getGlobalClassToClassNonNormalized(kCurr, false);
+            for (int cFirst = 0; cFirst < numClasses; cFirst++) {
+                for (int cSecond = 0; cSecond < numClasses; cSecond++) {
+                    classHubnessSumsAllK[kCurr - kMin][cFirst] +=
+                            classToClassPriorsAllK[kCurr - kMin][cFirst][
+                            cSecond];
                 }
             }
             // Perform smoothing with the Laplace estimator.
@@ -801,27 +800,28 @@ public class DWHFNN extends Classifier implements AutomaticKFinderInterface,
         neighborOccurrenceFreqs = nsf.getNeighborFrequencies();
         // Get the kNN sets.
         int[][] kneighbors = nsf.getKNeighbors();
-        classDataKNeighborRelation = new float[numClasses][trainingData.size()];
-        int currClass;
         // The smoothing total.
         float laplaceTotal;
         // Get the distance matrix on the training data.
         float[][] distMatrix = nsf.getDistances();
-        classToClassPriors = new float[numClasses][numClasses];
-        // Normalization factors.
+        // Get the class-conditional and class-to-class neighbor occurrence
+        // counts from the shared occurrence tables. Each element is placed in
+        // its own kNN set as 0-th neighbor by default.
+        ClassOccurrenceTables occTables = ClassOccurrenceTables.
+                calculateFromNSF(nsf, numClasses, k, ClassOccurrenceTables.
+                getDefaultNumThreads(trainingData.size()));
+        classDataKNeighborRelation = occTables.getClassDataNeighborRelation(k,
+                true);
+        classToClassPriors = occTables.getGlobalClassToClassNonNormalized(k,
+                false);
         float[] classHubnessSums = new float[numClasses];
+        for (int cFirst = 0; cFirst < numClasses; cFirst++) {
+            for (int cSecond = 0; cSecond < numClasses; cSecond++) {
+                classHubnessSums[cFirst] += classToClassPriors[cFirst][cSecond];
+            }
+        }
         // Iterate over the training data.
         for (int i = 0; i < trainingData.size(); i++) {
-            currClass = trainingData.data.get(i).getCategory();
-            classDataKNeighborRelation[currClass][i]++;
-            // Calculate the class-conditional neighbor occurrence frequencies.
-            for (int kIndex = 0; kIndex < k; kIndex++) {
-                classDataKNeighborRelation[currClass][kneighbors[i][kIndex]]++;
-                classToClassPriors[trainingData.data.get(kneighbors[i][kIndex]).
-                        getCategory()][currClass]++;
-                classHubnessSums[trainingData.data.get(kneighbors[i][kIndex]).
-                        getCategory()]++;
-            }
             if (neighborOccurrenceFreqs[i] <= thetaCutoff) {
                 // The special anti-hub handling case.
                 laplaceTotal = 10 * laplaceEstimator;
@@ -21,6 +21,7 @@ import algref.ConferencePublication;
 import algref.Publication;
 import algref.Publisher;
 import learning.supervised.interfaces.AutomaticKFinderInterface;
+import data.neighbors.ClassOccurrenceTables;
 import data.neighbors.NSFUserInterface;
 import data.neighbors.NeighborSetFinder;
 import data.representation.DataInstance;
@@ -156,6 +157,11 @@ public class HFNN extends Classifier implements AutomaticKFinderInterface,
         }
         // Calculate the kNN sets.
         nsfLOU.calculateNeighborSets(kMax);
+        // The class-conditional occurrence tables for all the neighborhood
+        // sizes in the range.
+        ClassOccurrenceTables occTables = ClassOccurrenceTables.
+                calculateFromNSF(nsfLOU, numClasses, kMax,
+                ClassOccurrenceTables.getDefaultNumThreads(dset.size()));
         // This array stores the accuracies for different k-values.
         float[] accuracyArray = new float[kMax - kMin + 1];
         float currMaxAcc = -1f;
@@ -211,32 +217,27 @@ public class HFNN extends Classifier implements AutomaticKFinderInterface,
         }
         // Initialize the class-conditional neighbor occurrence frequencies.
         float[][][] classDataKNeighborRelationAllK =
-                new float[accuracyArray.length][numClasses][
-                        trainingData.size()];
+                new float[accuracyArray.length][][];
         int[][] neighbOccFreqsAllK = new int[kMax][];
         float[][][] classToClassPriorsAllK =
-                new float[accuracyArray.length][numClasses][numClasses];
+                new float[accuracyArray.length][][];
         float[][] classHubnessSumsAllK =
                 new float[accuracyArray.length][numClasses];
         // Iterate over the k-range.
         for (int kCurrent = kMin; kCurrent <= kMax; kCurrent++) {
-            nsfLOU.recalculateStatsForSmallerK(kCurrent);
-            neighbOccFreqsAllK[kCurrent - 1] = Arrays.copyOf(
-                    nsfLOU.getNeighborFrequencies(),
-                    nsfLOU.getNeighborFrequencies().length);
-            // Calculate the class-conditional neighbor occurrence frequencies.
-            for (int i = 0; i < trainingData.size(); i++) {
-                int currClass = trainingData.data.get(i).getCategory();
-                classDataKNeighborRelationAllK[kCurrent - kMin][currClass][i]++;
-                for (int kIndex = 0; kIndex < kCurrent; kIndex++) {
-                    classDataKNeighborRelationAllK[kCurrent - kMin][currClass][
-                            kneighbors[i][kIndex]]++;
-                    classToClassPriorsAllK[kCurrent - kMin][
-                            trainingData.data.get(kneighbors[i][kIndex]).
-                            getCategory()][currClass]++;
-                    classHubnessSumsAllK[kCurrent - kMin][
-                            trainingData.data.get(kneighbors[i][kIndex]).
-                            getCategory()]++;
+            neighbOccFreqsAllK[kCurrent - 1] =
+                    occTables.getOccurrenceFrequencies(kCurrent);
+            // Read the class-conditional and class-to-class occurrence
+            // frequencies from the tables.
+            classDataKNeighborRelationAllK[kCurrent - kMin] =
+                    occTables.getClassDataNeighborRelation(kCurrent, true);
+            classToClassPriorsAllK[kCurrent - kMin] = occTables.
+                    getGlobalClassToClassNonNormalized(kCurrent, false);
+            for (int cFirst = 0; cFirst < numClasses; cFirst++) {
+                for (int cSecond = 0; cSecond < numClasses; cSecond++) {
+                    classHubnessSumsAllK[kCurrent - kMin][cFirst] +=
+                            classToClassPriorsAllK[kCurrent - kMin][cFirst][
+                            cSecond];
                 }
             }
             // Normalize and perform smoothing.
@@ -757,30 +758,28 @@ public class HFNN extends Classifier implements AutomaticKFinderInterface,
         neighborOccurrenceFreqs = nsf.getNeighborFrequencies();
         // Fetch the kNN sets.
         int[][] kneighbors = nsf.getKNeighbors();
-        // Initialize the class-conditional occurrence counts.
-        classDataKNeighborRelation = new float[numClasses][trainingData.size()];
-        int currClass;
         // For smoothing.
         float laplaceTotal;
         // Fetch the distance matrix.
         float[][] distMatrix = nsf.getDistances();
-        // Initialize class to class priors and hubness.
-        classToClassPriors = new float[numClasses][numClasses];
+        // Get the class-conditional and class-to-class neighbor occurrence
+        // counts from the shared occurrence tables. Each element is placed in
+        // its own kNN set as 0-th neighbor by default.
+        ClassOccurrenceTables occTables = ClassOccurrenceTables.
+                calculateFromNSF(nsf, numClasses, k, ClassOccurrenceTables.
+                getDefaultNumThreads(trainingData.size()));
+        classDataKNeighborRelation = occTables.getClassDataNeighborRelation(k,
+                true);
+        classToClassPriors = occTables.getGlobalClassToClassNonNormalized(k,
+                false);
         float[] classHubnessSums = new float[numClasses];
+        for (int cFirst = 0; cFirst < numClasses; cFirst++) {
+            for (int cSecond = 0; cSecond < numClasses; cSecond++) {
+                classHubnessSums[cFirst] += classToClassPriors[cFirst][cSecond];
+            }
+        }
         // Iterate over all data points.
         for (int i = 0; i < trainingData.size(); i++) {
-            currClass = trainingData.data.get(i).getCategory();
-            // Each element is placed in its own kNN set as 0-th neighbor by
-            // default.
-            classDataKNeighborRelation[currClass][i]++;
-            // Increment the occurrence counts.
-            for (int kIndex = 0; kIndex < k; kIndex++) {
-                classDataKNeighborRelation[currClass][kneighbors[i][kIndex]]++;
-                classToClassPriors[trainingData.data.get(kneighbors[i][kIndex]).
-                        getCategory()][currClass]++;
-                classHubnessSums[trainingData.data.get(kneighbors[i][kIndex]).
-                        getCategory()]++;
-            }
             if (neighborOccurrenceFreqs[i] < thetaCutoff) {
                 // The anti-hub handling case.
                 laplaceTotal = 10 * laplaceEstimator;
@@ -22,6 +22,7 @@ import algref.JournalPublication;
 import algref.Publication;
 import algref.Publisher;
 import learning.supervised.interfaces.AutomaticKFinderInterface;
+import data.neighbors.ClassOccurrenceTables;
 import data.neighbors.NSFUserInterface;
 import data.neighbors.NeighborSetFinder;
 import data.representation.DataInstance;
@@ -40,7 +41,6 @@ import learning.supervised.interfaces.DistMatrixUserInterface;
 import learning.supervised.interfaces.DistToPointsQueryUserInterface;
 import learning.supervised.interfaces.NeighborPointsQueryUserInterface;
 import preprocessing.instance_selection.InstanceSelector;
-import util.AuxSort;
 import util.BasicMathUtil;
 
 /**
@@ -149,8 +149,9 @@ public class HIKNN extends Classifier implements AutomaticKFinderInterface,
             nsfLOU = new NeighborSetFinder(dset, distMat,
                     getCombinedMetric());
         }
+        // One additional neighbor is needed for the leave-one-out
+        // replacements.
         nsfLOU.calculateNeighborSets(kMax + 1);
-        nsfLOU.recalculateStatsForSmallerK(kMax);
         // This will hold the accuracy of each k-choice.
         float[] accuracyArray = new float[kMax - kMin + 1];
         float currMaxAcc = -1f;
@@ -161,10 +162,8 @@ public class HIKNN extends Classifier implements AutomaticKFinderInterface,
         float currMaxVote;
         // The kNN sets.
         int[][] kneighbors = nsfLOU.getKNeighbors();
-        float currAccuracy;
-
         float[][] kDistances = nsfLOU.getKDistances();
-        // Trying 10 different M values, from 1 to 2 by 0.2.
+        // Trying 11 different M values, from 1 to 3 by 0.2.
         float[][][] distance_weightsAll = new float[numElements][kMax][11];
         float[][] dwSumAll = new float[numElements][11];
         // First generate the distance weights.
@@ -186,183 +185,146 @@ public class HIKNN extends Classifier implements AutomaticKFinderInterface,
             }
         }
         classPriors = dset.getClassPriors();
-        int currClass;
-        // Get the class-conditional neighbor occurrence frequencies.
-        float[][][] classDataKNeighborRelationAllK =
-                new float[accuracyArray.length][numClasses][
-                        trainingData.size()];
-        int[][] neighbOccFreqsAllK = new int[kMax][];
-        float[][] labelInformationAllK =
-                new float[accuracyArray.length][trainingData.size()];
-        ArrayList<Integer>[][] reverseNeighborsAllK =
-                new ArrayList[accuracyArray.length][trainingData.size()];
+        int[] labels = dset.obtainLabelArray();
+        // Get the class-conditional neighbor occurrence frequencies for all
+        // the neighborhood sizes at once, as well as the reverse neighbor sets
+        // that are used for a quick leave-one-out.
+        ClassOccurrenceTables occTables = new ClassOccurrenceTables(kneighbors,
+                labels, numClasses, kMax);
+        occTables.calculateTablesMultThr(
+                ClassOccurrenceTables.getDefaultNumThreads(numElements));
+        occTables.calculateReverseNeighborIndex();
+        int[] rnOffsets = occTables.getReverseNeighborOffsets();
+        int[] rnIndexes = occTables.getReverseNeighborIndexes();
+        // The leave-one-out corrections of the occurrence counts, which are
+        // applied and then reverted for each point.
+        float[] classOccCorrections = new float[numElements * numClasses];
+        float[] occCorrections = new float[numElements];
+        // Number of correct votes for each M-value and k-value.
+        float[][] correctCounts = new float[11][accuracyArray.length];
+        float[][] currVoteCounts = new float[11][numClasses];
+        float[] labelInformation = new float[numElements];
         // The informativeness of the occurrence.
         float eventInfo;
         float minEventInfo;
         float maxEventInfo;
+        float occFreq;
+        float occInfo;
+        float classRelation;
+        float vote;
+        int neighbor;
+        int replacement;
+        int rnEnd;
+        // We do random flips for equal vote sums.
+        Random randa = new Random();
         // For all the neighborhood sizes.
-        for (int kCurr = kMin; kCurr <= kMax; kCurr++) {
-            nsfLOU.recalculateStatsForSmallerK(kCurr);
-            neighbOccFreqsAllK[kCurr - 1] =
-                    Arrays.copyOf(nsfLOU.getNeighborFrequencies(),
-                    nsfLOU.getNeighborFrequencies().length);
-            for (int i = 0; i < trainingData.size(); i++) {
-                // Reverse neighbor lists are used for a quick leave-one-out.
-                reverseNeighborsAllK[kCurr - kMin][i] =
-                        (ArrayList<Integer>) (
-                        nsfLOU.getReverseNeighbors()[i].clone());
-                // Ascending sort.
-                AuxSort.sortIntArrayList(
-                        reverseNeighborsAllK[kCurr - kMin][i], false);
-            }
+        for (int kInc = 0; kInc < accuracyArray.length; kInc++) {
+            int kCurr = kMin + kInc;
             float maxHubness = 0;
-            float minHubness = Float.MAX_VALUE;
-            // Get the maximum and minimum neighbor occurrence frquency.
-            for (int i = 0; i < trainingData.size(); i++) {
-                if (neighbOccFreqsAllK[kCurr - 1][i] > maxHubness) {
-                    maxHubness = neighbOccFreqsAllK[kCurr - 1][i];
-                }
-                if (neighbOccFreqsAllK[kCurr - 1][i] < minHubness) {
-                    minHubness = neighbOccFreqsAllK[kCurr - 1][i];
+            // Get the maximum neighbor occurrence frquency.
+            for (int i = 0; i < numElements; i++) {
+                if (occTables.getOccurrenceFrequency(i, kCurr) > maxHubness) {
+                    maxHubness = occTables.getOccurrenceFrequency(i, kCurr);
                 }
             }
             minEventInfo = (float) BasicMathUtil.log2(
-                    ((float) trainingData.size()) / (maxHubness + 1f));
+                    ((float) numElements) / (maxHubness + 1f));
             maxEventInfo = (float) BasicMathUtil.log2(
-                    ((float) trainingData.size()) / (0 + 1f));
-            for (int i = 0; i < trainingData.size(); i++) {
-                // Calculate the occurrence informativeness and the label
-                // contribution factor.
+                    ((float) numElements) / (0 + 1f));
+            for (int i = 0; i < numElements; i++) {
+                // Calculate the label contribution factor.
                 eventInfo = (float) BasicMathUtil.log2(
-                        ((float) trainingData.size())
-                        / ((float) neighbOccFreqsAllK[kCurr - 1][i] + 1f));
-                labelInformationAllK[kCurr - kMin][i] =
-                        (eventInfo - minEventInfo)
+                        ((float) numElements)
+                        / (occTables.getOccurrenceFrequency(i, kCurr) + 1f));
+                labelInformation[i] = (eventInfo - minEventInfo)
                         / (maxEventInfo - minEventInfo + 0.0001f);
-                currClass = trainingData.data.get(i).getCategory();
-                classDataKNeighborRelationAllK[kCurr - kMin][currClass][i]++;
-                for (int j = 0; j < kCurr; j++) {
-                    classDataKNeighborRelationAllK[kCurr - kMin][currClass][
-                            kneighbors[i][j]]++;
-                }
             }
-        }
-        // We do random flips for equal vote sums.
-        Random randa = new Random();
-        for (int mIndex = 0; mIndex < 11; mIndex++) {
-            // For all the k-values.
-            for (int i = 0; i < accuracyArray.length; i++) {
-                float[][] currVoteCounts = new float[numElements][numClasses];
-                int[] currVoteLabels = new int[numElements];
-                // Find the accuracy for all the parameter options.
-                currAccuracy = 0;
-                for (int index = 0; index < numElements; index++) {
-                    // Remove and replace, do a leave-one-out.
-                    ArrayList<Integer>[] replacements =
-                            new ArrayList[accuracyArray.length];
-                    for (int i1 = 0; i1 < accuracyArray.length; i1++) {
-                        replacements[i1] =
-                                new ArrayList<>(neighbOccFreqsAllK[i1][index]);
-                        for (int j = 0; j
-                                < reverseNeighborsAllK[i1][index].size(); j++) {
-                            replacements[i1].add(kneighbors[
-                                    reverseNeighborsAllK[i1][index].get(j)][
-                                    kMin + i1]);
-                            classDataKNeighborRelationAllK[i1][
-                                    trainingData.data.get(
-                                    reverseNeighborsAllK[i1][index].get(j)).
-                                    getCategory()][kneighbors[
-                                    reverseNeighborsAllK[i1][index].get(j)][
-                                    kMin + i1]]++;
-                            neighbOccFreqsAllK[kMin + i1 - 1][
-                                    kneighbors[reverseNeighborsAllK[i1][
-                                    index].get(j)][kMin + i1]]++;
+            for (int index = 0; index < numElements; index++) {
+                // Remove and replace, do a leave-one-out. The reverse
+                // neighbors of the current point move on to their next
+                // nearest neighbor.
+                rnEnd = rnOffsets[index]
+                        + (int) occTables.getOccurrenceFrequency(index, kCurr);
+                for (int j = rnOffsets[index]; j < rnEnd; j++) {
+                    replacement = kneighbors[rnIndexes[j]][kCurr];
+                    classOccCorrections[replacement * numClasses
+                            + labels[rnIndexes[j]]]++;
+                    occCorrections[replacement]++;
+                }
+                for (int mIndex = 0; mIndex < 11; mIndex++) {
+                    Arrays.fill(currVoteCounts[mIndex], 0);
+                }
+                // Perform the HIKNN vote for all the M-values at once.
+                for (int kIndex = 0; kIndex < kCurr; kIndex++) {
+                    neighbor = kneighbors[index][kIndex];
+                    occFreq = occTables.getOccurrenceFrequency(neighbor, kCurr)
+                            + occCorrections[neighbor];
+                    occInfo = (float) BasicMathUtil.log2(
+                            ((float) numElements) / (1f + occFreq));
+                    for (int classIndex = 0; classIndex < numClasses;
+                            classIndex++) {
+                        classRelation = occTables.getClassOccurrence(neighbor,
+                                classIndex, kCurr) + classOccCorrections[
+                                neighbor * numClasses + classIndex];
+                        if (labels[neighbor] == classIndex) {
+                            // Each point is its own 0-th nearest neighbor.
+                            classRelation++;
+                        }
+                        classRelation /= (occFreq + 1f);
+                        vote = (1 - labelInformation[neighbor])
+                                * classRelation;
+                        if (labels[neighbor] == classIndex) {
+                            vote += labelInformation[neighbor];
+                        }
+                        vote *= occInfo;
+                        for (int mIndex = 0; mIndex < 11; mIndex++) {
+                            currVoteCounts[mIndex][classIndex] += vote
+                                    * distance_weightsAll[index][kIndex][
+                                    mIndex] / dwSumAll[index][mIndex];
                         }
                     }
+                }
+                for (int mIndex = 0; mIndex < 11; mIndex++) {
                     // Tracks the current maximum vote.
                     currMaxVote = 0;
+                    int currVoteLabel = 0;
                     for (int classIndex = 0; classIndex < numClasses;
                             classIndex++) {
-                        for (int kCurr = 0; kCurr <= kMin + i - 1; kCurr++) {
-                            if (trainingData.data.get(kneighbors[index][kCurr]).
-                                    getCategory() == classIndex) {
-                                // Perform the HIKNN vote.
-                                currVoteCounts[index][classIndex] +=
-                                        ((labelInformationAllK[i][kneighbors[
-                                        index][kCurr]] + (1
-                                        - labelInformationAllK[i][
-                                        kneighbors[index][kCurr]]) *
-                                        ((classDataKNeighborRelationAllK[i][
-                                        classIndex][kneighbors[index][kCurr]])
-                                        / (float) (neighbOccFreqsAllK[
-                                        kMin + i - 1][
-                                        kneighbors[index][kCurr]] + 1f)))
-                                        * (float) BasicMathUtil.log2(
-                                        ((float) trainingData.size()) / (1f
-                                        + neighbOccFreqsAllK[kMin + i - 1][
-                                        kneighbors[index][kCurr]])))
-                                        * distance_weightsAll[index][
-                                        kMin + i - 1][mIndex] / dwSumAll[
-                                        index][mIndex];
-                            } else {
-                                // Perform the HIKNN vote.
-                                currVoteCounts[index][classIndex] += (
-                                        (1 - labelInformationAllK[i][
-                                        kneighbors[index][kCurr]]) * (
-                                        (classDataKNeighborRelationAllK[i][
-                                        classIndex][kneighbors[index][kCurr]])
-                                        / (float) (neighbOccFreqsAllK[
-                                        kMin + i - 1][
-                                        kneighbors[index][kCurr]] + 1f))
-                                        * (float) BasicMathUtil.log2(
-                                        ((float) trainingData.size()) / (1f
-                                        + neighbOccFreqsAllK[kMin + i - 1][
-                                        kneighbors[index][kCurr]])))
-                                        * distance_weightsAll[index][
-                                        kMin + i - 1][mIndex]
-                                        / dwSumAll[index][mIndex];
-                            }
-                        }
-                        if (currVoteCounts[index][classIndex] > currMaxVote) {
-                            currMaxVote = currVoteCounts[index][classIndex];
-                            currVoteLabels[index] = classIndex;
-                        } else if (currVoteCounts[index][classIndex]
+                        if (currVoteCounts[mIndex][classIndex] > currMaxVote) {
+                            currMaxVote = currVoteCounts[mIndex][classIndex];
+                            currVoteLabel = classIndex;
+                        } else if (currVoteCounts[mIndex][classIndex]
                                 == currMaxVote && randa.nextFloat() < 0.5f) {
                             // In case of a tie, randomly choose one option.
-                            currMaxVote = currVoteCounts[index][classIndex];
-                            currVoteLabels[index] = classIndex;
+                            currVoteLabel = classIndex;
                         }
                     }
-                    if (currVoteLabels[index] == dset.data.get(index).
-                            getCategory()) {
+                    if (currVoteLabel == labels[index]) {
                         // If the vote is correct, increase the current
                         // accuracy.
-                        currAccuracy++;
-                    }
-                    // Fix the kNN stats after the leave-one-out to their
-                    // previous values.
-                    for (int i1 = 0; i1 < accuracyArray.length; i1++) {
-                        for (int j = 0; j < reverseNeighborsAllK[i1][index].
-                                size(); j++) {
-                            classDataKNeighborRelationAllK[i1][
-                                    trainingData.data.get(
-                                    reverseNeighborsAllK[i1][index].get(j)).
-                                    getCategory()][replacements[i1].get(j)]--;
-                            neighbOccFreqsAllK[kMin + i1 - 1][
-                                    replacements[i1].get(j)]--;
-                        }
+                        correctCounts[mIndex][kInc]++;
                     }
-
                 }
+                // Fix the kNN stats after the leave-one-out to their
+                // previous values.
+                for (int j = rnOffsets[index]; j < rnEnd; j++) {
+                    replacement = kneighbors[rnIndexes[j]][kCurr];
+                    classOccCorrections[replacement * numClasses
+                            + labels[rnIndexes[j]]]--;
+                    occCorrections[replacement]--;
+                }
+            }
+        }
+        for (int mIndex = 0; mIndex < 11; mIndex++) {
+            for (int kInc = 0; kInc < accuracyArray.length; kInc++) {
                 // Normalize the accuracy.
-                currAccuracy /= (float) numElements;
-                // Log the crrent accuracy.
-                accuracyArray[i] = currAccuracy;
+                accuracyArray[kInc] = correctCounts[mIndex][kInc]
+                        / (float) numElements;
                 // If it is the best accuracy so far, change the selected
                 // parameter configuration.
-                if (currMaxAcc < currAccuracy) {
-                    currMaxAcc = currAccuracy;
-                    currMaxK = kMin + i;
+                if (currMaxAcc < accuracyArray[kInc]) {
+                    currMaxAcc = accuracyArray[kInc];
+                    currMaxK = kMin + kInc;
                     currMaxM = 1.0f + mIndex * 0.2f;
                 }
             }
@@ -726,11 +688,14 @@ public class HIKNN extends Classifier implements AutomaticKFinderInterface,
         }
         // Get the neighbor hubness.
         neighborOccurrenceFreqs = nsf.getNeighborFrequencies();
-        // Find the class-conditional neighbor occurrence frequencies.
-        int[][] kneighbors = nsf.getKNeighbors();
-        classDataKNeighborRelation = new float[numClasses][trainingData.size()];
+        // Find the class-conditional neighbor occurrence frequencies, with
+        // each point being its own 0-th nearest neighbor.
+        ClassOccurrenceTables occTables = ClassOccurrenceTables.
+                calculateFromNSF(nsf, numClasses, k, ClassOccurrenceTables.
+                getDefaultNumThreads(trainingData.size()));
+        classDataKNeighborRelation = occTables.getClassDataNeighborRelation(k,
+                true);
         labelInformationFactor = new float[trainingData.size()];
-        int currClass;
         float maxHubness = 0;
         float minHubness = Float.MAX_VALUE;
         for (int i = 0; i < trainingData.size(); i++) {
@@ -755,11 +720,6 @@ public class HIKNN extends Classifier implements AutomaticKFinderInterface,
                     / ((float) neighborOccurrenceFreqs[i] + 1f));
             labelInformationFactor[i] = (eventInfo - minEventInfo)
                     / (maxEventInfo - minEventInfo + 0.0001f);
-            currClass = trainingData.data.get(i).getCategory();
-            classDataKNeighborRelation[currClass][i]++;
-            for (int j = 0; j < k; j++) {
-                classDataKNeighborRelation[currClass][kneighbors[i][j]]++;
-            }
         }
         // Normalization.
         for (int cIndex = 0; cIndex < numClasses; cIndex++) {
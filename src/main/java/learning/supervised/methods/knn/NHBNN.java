@@ -21,6 +21,7 @@ import algref.ConferencePublication;
 import algref.Publication;
 import algref.Publisher;
 import learning.supervised.interfaces.AutomaticKFinderInterface;
+import data.neighbors.ClassOccurrenceTables;
 import data.neighbors.NSFUserInterface;
 import data.neighbors.NeighborSetFinder;
 import data.representation.DataInstance;
@@ -107,6 +108,9 @@ public class NHBNN extends Classifier implements AutomaticKFinderInterface,
     public static final int LOCALH = 1;
     private static final int K_LOCAL_APPROXIMATION = 20;
     private boolean noRecalc = false;
+    // Shared class-conditional occurrence tables, used during the parameter
+    // search.
+    private transient ClassOccurrenceTables occTables = null;
     
     @Override
     public HashMap<String, String> getParameterNamesAndDescriptions() {
@@ -253,6 +257,10 @@ public class NHBNN extends Classifier implements AutomaticKFinderInterface,
                     getCombinedMetric());
         }
         nsfAux.calculateNeighborSets(kMax);
+        // The occurrence tables are calculated once for all the k-values.
+        classifier.occTables = ClassOccurrenceTables.calculateFromNSF(nsfAux,
+                numClasses, kMax, ClassOccurrenceTables.getDefaultNumThreads(
+                dsetTrain.size()));
         NeighborSetFinder nsfTIteration;
         // Iterate over different possible k-values.
         for (int kCurr = 1; kCurr <= kMax; kCurr++) {
@@ -584,18 +592,21 @@ public class NHBNN extends Classifier implements AutomaticKFinderInterface,
                 new float[trainingData.size()][numClasses][numClasses];
         // First fetch the kNN sets on the trainingdata.
         int[][] kneighbors = nsf.getKNeighbors();
-        // Calculate the class-conditional occurrences.
-        classDataKNeighborRelation = new float[numClasses][trainingData.size()];
+        // Calculate the class-conditional occurrences. The occurrence tables
+        // can be shared among the classifiers trained for different k-values
+        // on the same kNN sets.
+        ClassOccurrenceTables tables = occTables;
+        if (tables == null || tables.getKMax() < k) {
+            tables = ClassOccurrenceTables.calculateFromNSF(nsf, numClasses,
+                    k, ClassOccurrenceTables.getDefaultNumThreads(
+                    trainingData.size()));
+        }
+        classDataKNeighborRelation = tables.getClassDataNeighborRelation(k,
+                true);
+        classToClassPriors = tables.getGlobalClassToClassNonNormalized(k,
+                false);
         float[][] distMatrix = nsf.getDistances();
-        classToClassPriors = new float[numClasses][numClasses];
         for (int i = 0; i < trainingData.size(); i++) {
-            int currClass = trainingData.data.get(i).getCategory();
-            classDataKNeighborRelation[currClass][i]++;
-            for (int kIndex = 0; kIndex < k; kIndex++) {
-                classDataKNeighborRelation[currClass][kneighbors[i][kIndex]]++;
-                classToClassPriors[trainingData.data.get(
-                        kneighbors[i][kIndex]).getCategory()][currClass]++;
-            }
             if (neighbOccFreqs[i] <= thetaValue) {
                 // Anti-hub approximation is necessary.
                 float[] localClassCounts = new float[numClasses];
@@ -25,6 +25,8 @@ import data.representation.DataInstance;
 import data.representation.DataSet;
 import data.representation.util.DataMineConstants;
 import distances.kernel.Kernel;
+import distances.kernel.KernelApproximation;
+import distances.kernel.KernelRowCache;
 import distances.kernel.MinKernel;
 import distances.primary.CombinedMetric;
 import java.util.ArrayList;
@@ -54,6 +56,16 @@ public class KernelGHPKM extends ClusteringAlg implements
     // Kernel matrix - it HAS diagonal entries, as k(x,x) can possibly vary -
     // not in those kernels based on (x-y), but in those based on xy.
     Kernel ker;
+    // Low-rank kernel approximation that is used instead of the kernel matrix
+    // if specified, with the kernel values given as dot products of the rows
+    // of the n x r factor matrix.
+    private KernelApproximation kerApprox;
+    private float[][] kernelFactors;
+    // Kernel row cache that is used instead of the kernel matrix if specified.
+    private KernelRowCache kernelCache;
+    // Weighted cluster means in the approximate feature space.
+    private float[][] factorCentroids;
+    private int numThreads = 4;
     float[] instanceWeights;
     double[] clusterKerFactors;
     private static final double ERROR_THRESHOLD = 0.001;
@@ -83,6 +95,10 @@ public class KernelGHPKM extends ClusteringAlg implements
                 + "frequencies are used for deriving the weights. If false,"
                 + "class-conditional occurrences are also taken into account.");
         paramMap.put("ker", "Kernel.");
+        paramMap.put("kerApprox", "Low-rank kernel approximation, used instead"
+                + " of the full kernel matrix if specified.");
+        paramMap.put("numThreads", "Number of threads to use for the kernel "
+                + "calculations.");
         return paramMap;
     }
     
@@ -178,6 +194,19 @@ public class KernelGHPKM extends ClusteringAlg implements
         if (trivial) {
             return;
         } // Nothing needs to be done in this case.
+        if (ker == null && kerApprox == null && kernelFactors == null
+                && kernelCache == null) {
+            throw new Exception("No kernel was provided to the clustering"
+                    + " algorithm. Unable to cluster.");
+        }
+        if (kernelFactors == null && kerApprox != null) {
+            kernelFactors = kerApprox.mapDataSet(dset, numThreads);
+        }
+        if (kernelFactors != null) {
+            factorCentroids = new float[numClusters][];
+        } else if (kernelCache == null && kmat == null) {
+            kmat = dset.calculateKernelMatrixMultThr(ker, numThreads);
+        }
         int[] clusterAssociations = new int[dset.size()];
         Arrays.fill(clusterAssociations, 0, dset.size(), -1);
         setClusterAssociations(clusterAssociations);
@@ -191,7 +220,8 @@ public class KernelGHPKM extends ClusteringAlg implements
         for (int cIndex = 0; cIndex < numClusters; cIndex++) {
             clusterAssociations[clusterHubIndexes[cIndex]] = cIndex;
             clusterHubs[cIndex] = (dset.data.get(clusterHubIndexes[cIndex]));
-            clusterKerFactors[cIndex] = kmat[cIndex][0];
+            clusterKerFactors[cIndex] = kernelValue(clusterHubIndexes[cIndex],
+                    clusterHubIndexes[cIndex]);
             initialIndexes[cIndex] = clusterHubIndexes[cIndex];
         }
         int size = dset.size();
@@ -209,19 +239,12 @@ public class KernelGHPKM extends ClusteringAlg implements
         } catch (Exception e) {
         }
         if (distances == null) {
-            distances = dset.calculateDistMatrixMultThr(cmet, 4);
-        }
-        if (ker == null) {
-            throw new Exception("No kernel was provided to the clustering"
-                    + " algorithm. Unable to cluster.");
+            distances = dset.calculateDistMatrixMultThr(cmet, numThreads);
         }
         if (instanceWeights == null) {
             instanceWeights = new float[size];
             Arrays.fill(instanceWeights, 1);
         }
-        if (kmat == null) {
-            kmat = dset.calculateKernelMatrixMultThr(ker, 4);
-        }
         double errorPrevious;
         double errorCurrent = Double.MAX_VALUE;
         setIterationIndex(0);
@@ -232,7 +255,6 @@ public class KernelGHPKM extends ClusteringAlg implements
         int[] iterHubInd;
         double currentDistance;
         DataInstance[] iterHubDI;
-        int fi, se;
         // It's best if the first assignment is done before and if the
         // assignments are done at the end of the do-while loop, therefore
         // allowing for better calculateIterationError estimates.              
@@ -252,13 +274,8 @@ public class KernelGHPKM extends ClusteringAlg implements
             for (int cIndex = 0; cIndex < numClusters; cIndex++) {
                 if (clusterHubIndexes[cIndex] >= 0) {
                     if (clusterHubIndexes[cIndex] != i) {
-                        fi = Math.min(i, clusterHubIndexes[cIndex]);
-                        se = Math.max(i, clusterHubIndexes[cIndex]);
-                        currentDistance = kmat[i][0]
-                                + kmat[clusterHubIndexes[cIndex]][0]
-                                - 2 * kmat[Math.min(i, clusterHubIndexes[cIndex])][
-                                Math.max(i, clusterHubIndexes[cIndex])
-                                - Math.min(i, clusterHubIndexes[cIndex])];
+                        currentDistance = getHubDistance(i,
+                                clusterHubIndexes[cIndex]);
                     } else {
                         closestHubIndex = cIndex;
                         break;
@@ -333,17 +350,30 @@ public class KernelGHPKM extends ClusteringAlg implements
                 closestHubIndex = -1;
                 smallestDistance = Double.MAX_VALUE;
                 double[] clusterDistances = new double[clusters.length];
-                if (getIterationIndex() > 1) {
+                if (getIterationIndex() > 1 && kernelFactors != null) {
+                    // The squared distance to the cluster mean in the
+                    // approximate feature space.
+                    double selfKernel = kernelValue(i, i);
+                    for (int cIndex = 0; cIndex < clusters.length; cIndex++) {
+                        clusterDistances[cIndex] = selfKernel
+                                + clusterKerFactors[cIndex]
+                                - 2 * KernelApproximation.dot(kernelFactors[i],
+                                factorCentroids[cIndex]);
+                    }
+                } else if (getIterationIndex() > 1) {
+                    float[] kernelRow = kernelCache != null
+                            ? kernelCache.getScanRow(i) : null;
                     for (int cIndex = 0; cIndex < clusters.length; cIndex++) {
-                        clusterDistances[cIndex] = kmat[i][0]
+                        clusterDistances[cIndex] = kernelValue(i, i)
                                 + clusterKerFactors[cIndex];
                     }
                     for (int index = 0; index < dset.size(); index++) {
                         if (clusterAssociations[index] != -1) {
                             clusterDistances[clusterAssociations[index]] -=
                                     2 * instanceWeights[index]
-                                    * kmat[Math.min(i, index)][Math.max(
-                                    i, index) - Math.min(i, index)]
+                                    * (kernelRow != null ? kernelRow[index]
+                                    : kmat[Math.min(i, index)][Math.max(
+                                    i, index) - Math.min(i, index)])
                                     * (1f / Math.max(1,
                                     clusters[clusterAssociations[
                                     index]].size()));
@@ -352,23 +382,17 @@ public class KernelGHPKM extends ClusteringAlg implements
                         }
                     }
                 } else {
-                    int min, max;
                     for (int cIndex = 0; cIndex < clusters.length; cIndex++) {
-                        min = Math.min(initialIndexes[cIndex], i);
-                        max = Math.max(initialIndexes[cIndex], i);
-                        clusterDistances[cIndex] = -kmat[min][max - min];
+                        clusterDistances[cIndex] = -kernelValue(
+                                initialIndexes[cIndex], i);
                     }
                 }
                 for (int cIndex = 0; cIndex < clusters.length; cIndex++) {
                     if (clusterHubIndexes[cIndex] < 0) {
                         currentDistance = clusterDistances[cIndex];
                     } else {
-                        currentDistance = kmat[i][0]
-                                + kmat[clusterHubIndexes[cIndex]][0]
-                                - 2 * kmat[Math.min(i,
-                                clusterHubIndexes[cIndex])][
-                                Math.max(i, clusterHubIndexes[cIndex])
-                                - Math.min(i, clusterHubIndexes[cIndex])];
+                        currentDistance = getHubDistance(i,
+                                clusterHubIndexes[cIndex]);
                     }
                     if (currentDistance < smallestDistance) {
                         smallestDistance = currentDistance;
@@ -388,22 +412,28 @@ public class KernelGHPKM extends ClusteringAlg implements
             }
             clusters = getClusters();
             // Recalculate the clust kernel factors.
-            int min, max;
             for (int cIndex = 0; cIndex < clusters.length; cIndex++) {
                 clusterKerFactors[cIndex] = 0;
+                if (kernelFactors != null) {
+                    factorCentroids[cIndex] = getFactorCentroid(
+                            clusters[cIndex]);
+                    clusterKerFactors[cIndex] = KernelApproximation.dot(
+                            factorCentroids[cIndex], factorCentroids[cIndex]);
+                    continue;
+                }
+                // Only the kernel values between the cluster members are
+                // needed, so no full kernel rows are requested here.
+                float normalization = 1f / (Math.max(1,
+                        clusters[cIndex].size()) * Math.max(1,
+                        clusters[cIndex].size()));
                 for (int i = 0; i < clusters[cIndex].size(); i++) {
+                    int first = clusters[cIndex].indexes.get(i);
                     for (int j = i; j < clusters[cIndex].size(); j++) {
                         // Including the self-kernel dist.
-                        min = Math.min(clusters[cIndex].indexes.get(j),
-                                clusters[cIndex].indexes.get(i));
-                        max = Math.max(clusters[cIndex].indexes.get(j),
-                                clusters[cIndex].indexes.get(i));
-                        clusterKerFactors[cIndex] +=
-                                instanceWeights[clusters[cIndex].indexes.get(i)]
-                                * instanceWeights[clusters[cIndex].
-                                indexes.get(j)] * kmat[min][max - min] *
-                                (1f / (Math.max(1, clusters[cIndex].size()) *
-                                Math.max(1, (clusters[cIndex].size()))));
+                        int second = clusters[cIndex].indexes.get(j);
+                        clusterKerFactors[cIndex] += instanceWeights[first]
+                                * instanceWeights[second]
+                                * kernelValue(first, second) * normalization;
                     }
                 }
             }
@@ -462,7 +492,8 @@ public class KernelGHPKM extends ClusteringAlg implements
                         dist = clustDists[cIndex];
                     } else {
                         dist = selfKernels[i]
-                                + kmat[clusterHubIndexes[cIndex]][0]
+                                + kernelValue(clusterHubIndexes[cIndex],
+                                clusterHubIndexes[cIndex])
                                 - 2 * kernelSimToTraining[i][
                                 clusterHubIndexes[cIndex]];
                     }
@@ -476,6 +507,102 @@ public class KernelGHPKM extends ClusteringAlg implements
         }
     }
 
+    /**
+     * @param first Index of the first instance.
+     * @param second Index of the second instance.
+     * @return Double that is the kernel value between the two instances, from
+     * the kernel matrix or from the low-rank kernel factors.
+     */
+    private double kernelValue(int first, int second) {
+        if (kernelFactors != null) {
+            return KernelApproximation.dot(kernelFactors[first],
+                    kernelFactors[second]);
+        }
+        if (kernelCache != null) {
+            return kernelCache.getValue(first, second);
+        }
+        int min = Math.min(first, second);
+        int max = Math.max(first, second);
+        return kmat[min][max - min];
+    }
+
+    /**
+     * @param index Index of the instance.
+     * @param hubIndex Index of the cluster hub.
+     * @return Double that is the squared kernel distance between the instance
+     * and the hub.
+     */
+    private double getHubDistance(int index, int hubIndex) {
+        return kernelValue(index, index) + kernelValue(hubIndex, hubIndex)
+                - 2 * kernelValue(index, hubIndex);
+    }
+
+    /**
+     * @param cluster Cluster object.
+     * @return float[] that is the weighted mean of the kernel factors of the
+     * cluster instances.
+     */
+    private float[] getFactorCentroid(Cluster cluster) {
+        int rank = kernelFactors.length > 0 ? kernelFactors[0].length : 0;
+        double[] sums = new double[rank];
+        for (int index : cluster.indexes) {
+            float[] factor = kernelFactors[index];
+            for (int r = 0; r < rank; r++) {
+                sums[r] += instanceWeights[index] * factor[r];
+            }
+        }
+        float[] centroid = new float[rank];
+        float invSize = 1f / Math.max(1, cluster.size());
+        for (int r = 0; r < rank; r++) {
+            centroid[r] = (float) (sums[r] * invSize);
+        }
+        return centroid;
+    }
+
+    /**
+     * Sets the low-rank kernel approximation to use instead of the full
+     * kernel matrix.
+     *
+     * @param kerApprox KernelApproximation object.
+     */
+    public void setKernelApproximation(KernelApproximation kerApprox) {
+        this.kerApprox = kerApprox;
+    }
+
+    /**
+     * Sets the kernel row cache to use instead of the full kernel matrix. The
+     * kernel rows are then calculated on demand.
+     *
+     * @param kernelCache KernelRowCache object for the clustered data.
+     */
+    public void setKernelRowCache(KernelRowCache kernelCache) {
+        this.kernelCache = kernelCache;
+    }
+
+    /**
+     * @param kernelFactors float[][] that is the n x r matrix of the
+     * precomputed low-rank kernel factors.
+     */
+    public void setKernelFactors(float[][] kernelFactors) {
+        this.kernelFactors = kernelFactors;
+    }
+
+    /**
+     * @return float[][] that is the n x r matrix of the low-rank kernel
+     * factors, if the approximation was used.
+     */
+    public float[][] getKernelFactors() {
+        return kernelFactors;
+    }
+
+    /**
+     * @param numThreads Integer that is the number of threads to use for the
+     * distance and kernel calculations.
+     */
+    public void setNumThreads(int numThreads) {
+        this.numThreads = numThreads;
+    }
+
     @Override
     public void setKernelMatrix(float[][] kmat) {
         this.kmat = kmat;
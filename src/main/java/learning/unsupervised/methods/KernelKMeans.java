@@ -25,7 +25,9 @@ import data.representation.DataInstance;
 import data.representation.DataSet;
 import data.representation.util.DataMineConstants;
 import distances.kernel.Kernel;
+import distances.kernel.KernelApproximation;
 import distances.kernel.KernelMatrixUserInterface;
+import distances.kernel.KernelRowCache;
 import distances.kernel.MinKernel;
 import distances.primary.CombinedMetric;
 import java.util.Arrays;
@@ -48,8 +50,18 @@ public class KernelKMeans extends ClusteringAlg implements
     // it is represented in such a way that every row i has entries for cIndex
     // >= i.
     private float[][] kmat;
+    // Low-rank kernel approximation that is used instead of the kernel matrix
+    // if specified. The clustering then works on the n x r factor matrix, so
+    // that the kernel values are dot products of the factor rows.
+    private KernelApproximation kerApprox;
+    private float[][] kernelFactors;
+    // Kernel row cache that is used instead of the kernel matrix if specified.
+    private KernelRowCache kernelCache;
+    // Weighted cluster means in the approximate feature space.
+    private float[][] factorCentroids;
     private double[] clusterKerFactors;
     private Kernel ker;
+    private int numThreads = 4;
     private double error; // Calculated incrementally.
     private static final float ERROR_THRESHOLD = (float) 0.003;
     private float[] instanceWeights;
@@ -59,6 +71,10 @@ public class KernelKMeans extends ClusteringAlg implements
     public HashMap<String, String> getParameterNamesAndDescriptions() {
         HashMap<String, String> paramMap = new HashMap<>();
         paramMap.put("ker", "Kernel.");
+        paramMap.put("kerApprox", "Low-rank kernel approximation, used instead"
+                + " of the full kernel matrix if specified.");
+        paramMap.put("numThreads", "Number of threads to use for the kernel "
+                + "calculations.");
         return paramMap;
     }
     
@@ -132,7 +148,8 @@ public class KernelKMeans extends ClusteringAlg implements
         if (trivial) {
             return;
         } // Nothing needs to be done in this case.
-        if (ker == null) {
+        if (ker == null && kerApprox == null && kernelFactors == null
+                && kernelCache == null) {
             throw new Exception("No kernel was provided to the clustering"
                     + " algorithm. Unable to cluster.");
         }
@@ -144,8 +161,13 @@ public class KernelKMeans extends ClusteringAlg implements
             instanceWeights = new float[size];
             Arrays.fill(instanceWeights, 1);
         }
-        if (kmat == null) {
-            kmat = dset.calculateKernelMatrixMultThr(ker, 4);
+        if (kernelFactors == null && kerApprox != null) {
+            kernelFactors = kerApprox.mapDataSet(dset, numThreads);
+        }
+        if (kernelFactors != null) {
+            factorCentroids = new float[numClusters][];
+        } else if (kernelCache == null && kmat == null) {
+            kmat = dset.calculateKernelMatrixMultThr(ker, numThreads);
         }
         DataInstance[] centroids = new DataInstance[numClusters];
         Random randa = new Random();
@@ -160,7 +182,8 @@ public class KernelKMeans extends ClusteringAlg implements
             clusterAssociations[centroidIndex] = cIndex;
             initialIndexes[cIndex] = centroidIndex;
             centroids[cIndex] = dset.getInstance(centroidIndex).copyContent();
-            clusterKerFactors[cIndex] = kmat[centroidIndex][0];
+            clusterKerFactors[cIndex] = kernelValue(centroidIndex,
+                    centroidIndex);
         }
         Cluster[] clusters = new Cluster[numClusters];
         // When there are no reassignments, we can end the clustering.
@@ -180,28 +203,39 @@ public class KernelKMeans extends ClusteringAlg implements
                 double smallestDistance = Double.MAX_VALUE;
                 double[] clusterDistances = new double[centroids.length];
                 double currentDistance;
-                if (getIterationIndex() > 1) {
+                if (getIterationIndex() > 1 && kernelFactors != null) {
+                    // The squared distance to the cluster mean in the
+                    // approximate feature space.
+                    double selfKernel = kernelValue(i, i);
+                    for (int cIndex = 0; cIndex < clusters.length; cIndex++) {
+                        clusterDistances[cIndex] = selfKernel
+                                + clusterKerFactors[cIndex]
+                                - 2 * KernelApproximation.dot(kernelFactors[i],
+                                factorCentroids[cIndex]);
+                    }
+                } else if (getIterationIndex() > 1) {
+                    float[] kernelRow = kernelCache != null
+                            ? kernelCache.getScanRow(i) : null;
                     for (int cIndex = 0; cIndex < clusters.length; cIndex++) {
-                        clusterDistances[cIndex] = kmat[i][0]
+                        clusterDistances[cIndex] = kernelValue(i, i)
                                 + clusterKerFactors[cIndex];
                     }
                     for (int index = 0; index < clusterAssociations.length;
                             index++) {
                         clusterDistances[clusterAssociations[index]] -=
-                                2 * instanceWeights[index] * kmat[
+                                2 * instanceWeights[index] * (kernelRow
+                                != null ? kernelRow[index] : kmat[
                                         Math.min(i, index)][Math.max(i, index)
-                                - Math.min(i, index)]
+                                - Math.min(i, index)])
                                 * (1f / clusters[clusterAssociations[
                                         index]].size());
                         // Because diagonal entries are included in the kernel 
                         // matrix.
                     }
                 } else {
-                    int min, max;
                     for (int cIndex = 0; cIndex < clusters.length; cIndex++) {
-                        min = Math.min(initialIndexes[cIndex], i);
-                        max = Math.max(initialIndexes[cIndex], i);
-                        clusterDistances[cIndex] = -kmat[min][max - min];
+                        clusterDistances[cIndex] = -kernelValue(
+                                initialIndexes[cIndex], i);
                     }
                 }
                 for (int cIndex = 0; cIndex < clusters.length; cIndex++) {
@@ -224,25 +258,29 @@ public class KernelKMeans extends ClusteringAlg implements
             }
             clusters = getClusters();
             // Now recalculate the clustering kernel factors.
-            int min, max;
             for (int cIndex = 0; cIndex < clusters.length; cIndex++) {
                 clusterKerFactors[cIndex] = 0;
                 centroids[cIndex] = clusters[cIndex].getCentroid();
+                if (kernelFactors != null) {
+                    factorCentroids[cIndex] = getFactorCentroid(
+                            clusters[cIndex]);
+                    clusterKerFactors[cIndex] = KernelApproximation.dot(
+                            factorCentroids[cIndex], factorCentroids[cIndex]);
+                    continue;
+                }
+                // Only the kernel values between the cluster members are
+                // needed, so no full kernel rows are requested here.
+                float normalization = 1f / (Math.max(1,
+                        clusters[cIndex].size()) * Math.max(1,
+                        clusters[cIndex].size()));
                 for (int i = 0; i < clusters[cIndex].size(); i++) {
+                    int first = clusters[cIndex].indexes.get(i);
                     for (int j = i; j < clusters[cIndex].size(); j++) {
                         // Including the self-kernel distance.
-                        min = Math.min(
-                                clusters[cIndex].indexes.get(j),
-                                clusters[cIndex].indexes.get(i));
-                        max = Math.max(
-                                clusters[cIndex].indexes.get(j),
-                                clusters[cIndex].indexes.get(i));
-                        clusterKerFactors[cIndex] +=
-                                instanceWeights[clusters[cIndex].indexes.get(i)]
-                                * instanceWeights[clusters[cIndex].
-                                indexes.get(j)] * kmat[min][max - min]
-                                * (1f / (clusters[cIndex].size()
-                                * Math.max(1, (clusters[cIndex].size()))));
+                        int second = clusters[cIndex].indexes.get(j);
+                        clusterKerFactors[cIndex] += instanceWeights[first]
+                                * instanceWeights[second]
+                                * kernelValue(first, second) * normalization;
                     }
                 }
             }
@@ -337,6 +375,91 @@ public class KernelKMeans extends ClusteringAlg implements
         }
     }
 
+    /**
+     * @param first Index of the first instance.
+     * @param second Index of the second instance.
+     * @return Double that is the kernel value between the two instances, from
+     * the kernel matrix or from the low-rank kernel factors.
+     */
+    private double kernelValue(int first, int second) {
+        if (kernelFactors != null) {
+            return KernelApproximation.dot(kernelFactors[first],
+                    kernelFactors[second]);
+        }
+        if (kernelCache != null) {
+            return kernelCache.getValue(first, second);
+        }
+        int min = Math.min(first, second);
+        int max = Math.max(first, second);
+        return kmat[min][max - min];
+    }
+
+    /**
+     * @param cluster Cluster object.
+     * @return float[] that is the weighted mean of the kernel factors of the
+     * cluster instances.
+     */
+    private float[] getFactorCentroid(Cluster cluster) {
+        int rank = kernelFactors.length > 0 ? kernelFactors[0].length : 0;
+        double[] sums = new double[rank];
+        for (int index : cluster.indexes) {
+            float[] factor = kernelFactors[index];
+            for (int r = 0; r < rank; r++) {
+                sums[r] += instanceWeights[index] * factor[r];
+            }
+        }
+        float[] centroid = new float[rank];
+        float invSize = 1f / Math.max(1, cluster.size());
+        for (int r = 0; r < rank; r++) {
+            centroid[r] = (float) (sums[r] * invSize);
+        }
+        return centroid;
+    }
+
+    /**
+     * Sets the low-rank kernel approximation to use instead of the full
+     * kernel matrix, which makes clustering large datasets feasible.
+     *
+     * @param kerApprox KernelApproximation object.
+     */
+    public void setKernelApproximation(KernelApproximation kerApprox) {
+        this.kerApprox = kerApprox;
+    }
+
+    /**
+     * Sets the kernel row cache to use instead of the full kernel matrix. The
+     * kernel rows are then calculated on demand.
+     *
+     * @param kernelCache KernelRowCache object for the clustered data.
+     */
+    public void setKernelRowCache(KernelRowCache kernelCache) {
+        this.kernelCache = kernelCache;
+    }
+
+    /**
+     * @param kernelFactors float[][] that is the n x r matrix of the
+     * precomputed low-rank kernel factors.
+     */
+    public void setKernelFactors(float[][] kernelFactors) {
+        this.kernelFactors = kernelFactors;
+    }
+
+    /**
+     * @return float[][] that is the n x r matrix of the low-rank kernel
+     * factors, if the approximation was used.
+     */
+    public float[][] getKernelFactors() {
+        return kernelFactors;
+    }
+
+    /**
+     * @param numThreads Integer that is the number of threads to use for the
+     * kernel calculations.
+     */
+    public void setNumThreads(int numThreads) {
+        this.numThreads = numThreads;
+    }
+
     /**
      * @param weights A float array of instance weights.
      */
@@ -181,17 +181,19 @@ public class DataMatrix implements DataMatrixInterface {
     public DataMatrixInterface multiply(DataMatrixInterface matrix)
             throws Exception {
         if (numberOfColumns() == matrix.numberOfRows()) {
-            float[][] resultMat =
-                    new float[numberOfRows()][matrix.numberOfColumns()];
-            for (int i = 0; i < numberOfRows(); i++) {
-                for (int j = 0; j < matrix.numberOfColumns(); j++) {
-                    for (int k = 0; k < numberOfColumns(); k++) {
-                        resultMat[i][j] +=
-                                data[i][k] * matrix.getElementAt(k, j);
-                    }
-                }
-            }
-            DataMatrixInterface result = new DataMatrix(resultMat);
+            int m = numberOfRows();
+            int k = numberOfColumns();
+            int n = matrix.numberOfColumns();
+            // Both operands are packed into contiguous arrays for the blocked
+            // multiplication.
+            double[] product = new double[m * n];
+            DenseLinearAlgebra.gemm(
+                    DenseLinearAlgebra.toRowMajor(data, k),
+                    DenseLinearAlgebra.toRowMajor(matrix), product, m, k, n,
+                    DenseLinearAlgebra.getDefaultNumThreads(
+                    (long) m * k * n));
+            DataMatrixInterface result = new DataMatrix(
+                    DenseLinearAlgebra.toFloatRows(product, m, n));
             return result;
         } else {
             return null;
@@ -0,0 +1,706 @@
+/**
+* Hub Miner: a hubness-aware machine learning experimentation library.
+* Copyright (C) 2014  Nenad Tomasev. Email: nenad.tomasev at gmail.com
+* 
+* This program is free software: you can redistribute it and/or modify it under
+* the terms of the GNU General Public License as published by the Free Software
+* Foundation, either version 3 of the License, or (at your option) any later
+* version.
+* 
+* This program is distributed in the hope that it will be useful, but WITHOUT
+* ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+* FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License along with
+* this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+package linear.matrix;
+
+/**
+ * This class implements the dense linear algebra kernels that are used by the
+ * matrix implementations. The matrices are given in contiguous row-major
+ * arrays, where the element (i, j) of a matrix with n columns is at position
+ * i * n + j. Matrix multiplication, the Gram matrix, LU and Cholesky
+ * decompositions are blocked, so that the data that is being reused stays in
+ * cache, and the bulk of the work is split among threads by rows.
+ *
+ * @author Nenad Tomasev <nenad.tomasev at gmail.com>
+ */
+public class DenseLinearAlgebra {
+
+    // The size of the square blocks that the matrices are processed in.
+    public static final int BLOCK_SIZE = 64;
+    // The number of multiply-add operations below which the kernels are run
+    // in a single thread, as the thread overhead would dominate.
+    private static final long MIN_PARALLEL_WORK = 1L << 20;
+
+    /**
+     * @param work Long that is the number of multiply-add operations.
+     * @return Integer that is the number of threads to use for the given
+     * amount of work.
+     */
+    public static int getDefaultNumThreads(long work) {
+        if (work < MIN_PARALLEL_WORK) {
+            return 1;
+        }
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Copies a matrix into a contiguous row-major array.
+     *
+     * @param matrix Two-dimensional float array that is the matrix.
+     * @param numColumns Integer that is the number of columns.
+     * @return Double array that is the row-major representation.
+     */
+    public static double[] toRowMajor(float[][] matrix, int numColumns) {
+        double[] values = new double[matrix.length * numColumns];
+        for (int i = 0; i < matrix.length; i++) {
+            int offset = i * numColumns;
+            for (int j = 0; j < numColumns; j++) {
+                values[offset + j] = matrix[i][j];
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Copies a matrix into a contiguous row-major array.
+     *
+     * @param matrix DataMatrixInterface that is the matrix.
+     * @return Double array that is the row-major representation.
+     */
+    public static double[] toRowMajor(DataMatrixInterface matrix) {
+        int numRows = matrix.numberOfRows();
+        int numColumns = matrix.numberOfColumns();
+        if (matrix instanceof DataMatrix) {
+            return toRowMajor(((DataMatrix) matrix).getFloatMatrix(),
+                    numColumns);
+        }
+        double[] values = new double[numRows * numColumns];
+        for (int i = 0; i < numRows; i++) {
+            float[] row = matrix.getRow(i);
+            int offset = i * numColumns;
+            for (int j = 0; j < numColumns; j++) {
+                values[offset + j] = row[j];
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Copies a contiguous row-major array into a two-dimensional float array.
+     *
+     * @param values Double array that is the row-major representation.
+     * @param numRows Integer that is the number of rows.
+     * @param numColumns Integer that is the number of columns.
+     * @return Two-dimensional float array that is the matrix.
+     */
+    public static float[][] toFloatRows(double[] values, int numRows,
+            int numColumns) {
+        float[][] matrix = new float[numRows][numColumns];
+        for (int i = 0; i < numRows; i++) {
+            int offset = i * numColumns;
+            for (int j = 0; j < numColumns; j++) {
+                matrix[i][j] = (float) values[offset + j];
+            }
+        }
+        return matrix;
+    }
+
+    /**
+     * Runs the workers in parallel and waits for them to finish.
+     *
+     * @param workers Runnable array of workers.
+     */
+    private static void runAll(Runnable[] workers) {
+        if (workers.length == 1) {
+            workers[0].run();
+            return;
+        }
+        Thread[] threads = new Thread[workers.length];
+        for (int tIndex = 0; tIndex < workers.length; tIndex++) {
+            threads[tIndex] = new Thread(workers[tIndex]);
+            threads[tIndex].start();
+        }
+        for (int tIndex = 0; tIndex < threads.length; tIndex++) {
+            try {
+                threads[tIndex].join();
+            } catch (Throwable t) {
+                System.err.println(t.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @param first Integer that is the first index in the range, inclusive.
+     * @param last Integer that is the last index in the range, exclusive.
+     * @param tIndex Integer that is the index of the thread.
+     * @param numThreads Integer that is the number of threads.
+     * @return Integer that is the first index of the thread range.
+     */
+    private static int rangeStart(int first, int last, int tIndex,
+            int numThreads) {
+        return first + (int) ((long) (last - first) * tIndex / numThreads);
+    }
+
+    /**
+     * Calculates C = C + A * B.
+     *
+     * @param a Double array that is the m x k matrix A in row-major order.
+     * @param b Double array that is the k x n matrix B in row-major order.
+     * @param c Double array that is the m x n matrix C in row-major order.
+     * @param m Integer that is the number of rows of A.
+     * @param k Integer that is the number of columns of A.
+     * @param n Integer that is the number of columns of B.
+     * @param numThreads Integer that is the number of threads to use.
+     */
+    public static void gemm(double[] a, double[] b, double[] c, int m, int k,
+            int n, int numThreads) {
+        numThreads = Math.max(1, Math.min(numThreads, m));
+        if (numThreads == 0 || m == 0) {
+            return;
+        }
+        Runnable[] workers = new Runnable[numThreads];
+        for (int tIndex = 0; tIndex < numThreads; tIndex++) {
+            workers[tIndex] = new GemmWorker(a, b, c, k, n,
+                    rangeStart(0, m, tIndex, numThreads),
+                    rangeStart(0, m, tIndex + 1, numThreads));
+        }
+        runAll(workers);
+    }
+
+    /**
+     * This class multiplies a range of rows of A with B.
+     */
+    static class GemmWorker implements Runnable {
+
+        private double[] a;
+        private double[] b;
+        private double[] c;
+        private int k;
+        private int n;
+        private int rowStart;
+        private int rowEnd;
+
+        /**
+         * Initialization.
+         *
+         * @param a Double array that is the matrix A in row-major order.
+         * @param b Double array that is the matrix B in row-major order.
+         * @param c Double array that is the matrix C in row-major order.
+         * @param k Integer that is the number of columns of A.
+         * @param n Integer that is the number of columns of B.
+         * @param rowStart Integer that is the first row, inclusive.
+         * @param rowEnd Integer that is the last row, exclusive.
+         */
+        GemmWorker(double[] a, double[] b, double[] c, int k, int n,
+                int rowStart, int rowEnd) {
+            this.a = a;
+            this.b = b;
+            this.c = c;
+            this.k = k;
+            this.n = n;
+            this.rowStart = rowStart;
+            this.rowEnd = rowEnd;
+        }
+
+        @Override
+        public void run() {
+            for (int iBlock = rowStart; iBlock < rowEnd;
+                    iBlock += BLOCK_SIZE) {
+                int iEnd = Math.min(iBlock + BLOCK_SIZE, rowEnd);
+                for (int pBlock = 0; pBlock < k; pBlock += BLOCK_SIZE) {
+                    int pEnd = Math.min(pBlock + BLOCK_SIZE, k);
+                    for (int jBlock = 0; jBlock < n; jBlock += BLOCK_SIZE) {
+                        int jEnd = Math.min(jBlock + BLOCK_SIZE, n);
+                        for (int i = iBlock; i < iEnd; i++) {
+                            int cOffset = i * n;
+                            int aOffset = i * k;
+                            for (int p = pBlock; p < pEnd; p++) {
+                                double aValue = a[aOffset + p];
+                                if (aValue == 0) {
+                                    continue;
+                                }
+                                int bOffset = p * n;
+                                for (int j = jBlock; j < jEnd; j++) {
+                                    c[cOffset + j] += aValue * b[bOffset + j];
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Calculates the Gram matrix C = A^T * A of the columns of A, which is
+     * the unnormalized covariance matrix when the columns of A are centered.
+     *
+     * @param a Double array that is the m x n matrix A in row-major order.
+     * @param m Integer that is the number of rows of A.
+     * @param n Integer that is the number of columns of A.
+     * @param numThreads Integer that is the number of threads to use.
+     * @return Double array that is the symmetric n x n matrix C in row-major
+     * order.
+     */
+    public static double[] syrk(double[] a, int m, int n, int numThreads) {
+        double[] c = new double[n * n];
+        syrkUpper(a, c, m, n, numThreads);
+        // Mirror the upper triangle.
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                c[j * n + i] = c[i * n + j];
+            }
+        }
+        return c;
+    }
+
+    /**
+     * Adds the upper triangle of the Gram matrix A^T * A of the columns of A
+     * to the upper triangle of C. The lower triangle of C is not accessed.
+     *
+     * @param a Double array that is the m x n matrix A in row-major order.
+     * @param c Double array that is the n x n matrix C in row-major order.
+     * @param m Integer that is the number of rows of A.
+     * @param n Integer that is the number of columns of A.
+     * @param numThreads Integer that is the number of threads to use.
+     */
+    public static void syrkUpper(double[] a, double[] c, int m, int n,
+            int numThreads) {
+        numThreads = Math.max(1, Math.min(numThreads, n));
+        if (n == 0) {
+            return;
+        }
+        Runnable[] workers = new Runnable[numThreads];
+        for (int tIndex = 0; tIndex < numThreads; tIndex++) {
+            workers[tIndex] = new SyrkWorker(a, c, m, n, tIndex, numThreads);
+        }
+        runAll(workers);
+    }
+
+    /**
+     * This class calculates the upper triangle rows of the Gram matrix. The
+     * rows are assigned in an interleaved fashion for load balancing.
+     */
+    static class SyrkWorker implements Runnable {
+
+        private double[] a;
+        private double[] c;
+        private int m;
+        private int n;
+        private int offset;
+        private int step;
+
+        /**
+         * Initialization.
+         *
+         * @param a Double array that is the matrix A in row-major order.
+         * @param c Double array that is the Gram matrix in row-major order.
+         * @param m Integer that is the number of rows of A.
+         * @param n Integer that is the number of columns of A.
+         * @param offset Integer that is the first output row.
+         * @param step Integer that is the step between the output rows.
+         */
+        SyrkWorker(double[] a, double[] c, int m, int n, int offset,
+                int step) {
+            this.a = a;
+            this.c = c;
+            this.m = m;
+            this.n = n;
+            this.offset = offset;
+            this.step = step;
+        }
+
+        @Override
+        public void run() {
+            for (int rBlock = 0; rBlock < m; rBlock += BLOCK_SIZE) {
+                int rEnd = Math.min(rBlock + BLOCK_SIZE, m);
+                for (int i = offset; i < n; i += step) {
+                    int cOffset = i * n;
+                    for (int r = rBlock; r < rEnd; r++) {
+                        int aOffset = r * n;
+                        double aValue = a[aOffset + i];
+                        if (aValue == 0) {
+                            continue;
+                        }
+                        for (int j = i; j < n; j++) {
+                            c[cOffset + j] += aValue * a[aOffset + j];
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Performs an in-place blocked LU decomposition with partial pivoting, so
+     * that PA = LU. L has a unit diagonal and is stored below the diagonal,
+     * while U is stored on and above the diagonal.
+     *
+     * @param a Double array that is the n x n matrix in row-major order, which
+     * is overwritten by the decomposition.
+     * @param n Integer that is the matrix dimension.
+     * @param perm Integer array of length n where the permutation is stored,
+     * so that the row i of LU corresponds to the row perm[i] of the original.
+     * @param numThreads Integer that is the number of threads to use.
+     * @return Integer that is the sign of the permutation, 1 or -1.
+     */
+    public static int luDecompose(double[] a, int n, int[] perm,
+            int numThreads) {
+        int sign = 1;
+        for (int i = 0; i < n; i++) {
+            perm[i] = i;
+        }
+        double[] tempRow = new double[n];
+        for (int kBlock = 0; kBlock < n; kBlock += BLOCK_SIZE) {
+            int kEnd = Math.min(kBlock + BLOCK_SIZE, n);
+            // Factorize the panel of the current block columns.
+            for (int col = kBlock; col < kEnd; col++) {
+                int pivot = col;
+                double maxAbs = Math.abs(a[col * n + col]);
+                for (int r = col + 1; r < n; r++) {
+                    if (Math.abs(a[r * n + col]) > maxAbs) {
+                        maxAbs = Math.abs(a[r * n + col]);
+                        pivot = r;
+                    }
+                }
+                if (pivot != col) {
+                    System.arraycopy(a, pivot * n, tempRow, 0, n);
+                    System.arraycopy(a, col * n, a, pivot * n, n);
+                    System.arraycopy(tempRow, 0, a, col * n, n);
+                    int tempIndex = perm[pivot];
+                    perm[pivot] = perm[col];
+                    perm[col] = tempIndex;
+                    sign = -sign;
+                }
+                double pivotValue = a[col * n + col];
+                if (pivotValue == 0) {
+                    // The whole column is zero below the diagonal.
+                    continue;
+                }
+                for (int r = col + 1; r < n; r++) {
+                    double factor = a[r * n + col] / pivotValue;
+                    a[r * n + col] = factor;
+                    if (factor != 0) {
+                        for (int c = col + 1; c < kEnd; c++) {
+                            a[r * n + c] -= factor * a[col * n + c];
+                        }
+                    }
+                }
+            }
+            if (kEnd == n) {
+                break;
+            }
+            // The block row of U to the right of the panel.
+            for (int i = kBlock + 1; i < kEnd; i++) {
+                for (int p = kBlock; p < i; p++) {
+                    double lValue = a[i * n + p];
+                    if (lValue != 0) {
+                        for (int c = kEnd; c < n; c++) {
+                            a[i * n + c] -= lValue * a[p * n + c];
+                        }
+                    }
+                }
+            }
+            // Update the trailing submatrix.
+            int threads = Math.max(1, Math.min(numThreads, n - kEnd));
+            Runnable[] workers = new Runnable[threads];
+            for (int tIndex = 0; tIndex < threads; tIndex++) {
+                workers[tIndex] = new LUUpdateWorker(a, n, kBlock, kEnd,
+                        rangeStart(kEnd, n, tIndex, threads),
+                        rangeStart(kEnd, n, tIndex + 1, threads));
+            }
+            runAll(workers);
+        }
+        return sign;
+    }
+
+    /**
+     * This class updates a range of rows of the trailing submatrix in the
+     * blocked LU decomposition.
+     */
+    static class LUUpdateWorker implements Runnable {
+
+        private double[] a;
+        private int n;
+        private int kBlock;
+        private int kEnd;
+        private int rowStart;
+        private int rowEnd;
+
+        /**
+         * Initialization.
+         *
+         * @param a Double array that is the matrix in row-major order.
+         * @param n Integer that is the matrix dimension.
+         * @param kBlock Integer that is the first panel column.
+         * @param kEnd Integer that is the end of the panel, exclusive.
+         * @param rowStart Integer that is the first row, inclusive.
+         * @param rowEnd Integer that is the last row, exclusive.
+         */
+        LUUpdateWorker(double[] a, int n, int kBlock, int kEnd, int rowStart,
+                int rowEnd) {
+            this.a = a;
+            this.n = n;
+            this.kBlock = kBlock;
+            this.kEnd = kEnd;
+            this.rowStart = rowStart;
+            this.rowEnd = rowEnd;
+        }
+
+        @Override
+        public void run() {
+            for (int jBlock = kEnd; jBlock < n; jBlock += BLOCK_SIZE) {
+                int jEnd = Math.min(jBlock + BLOCK_SIZE, n);
+                for (int r = rowStart; r < rowEnd; r++) {
+                    int rOffset = r * n;
+                    for (int p = kBlock; p < kEnd; p++) {
+                        double lValue = a[rOffset + p];
+                        if (lValue == 0) {
+                            continue;
+                        }
+                        int pOffset = p * n;
+                        for (int c = jBlock; c < jEnd; c++) {
+                            a[rOffset + c] -= lValue * a[pOffset + c];
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Performs an in-place blocked Cholesky decomposition A = L * L^T of a
+     * symmetric positive definite matrix. Only the lower triangle of the input
+     * is read and L is stored in the lower triangle, while the upper triangle
+     * is set to zero.
+     *
+     * @param a Double array that is the n x n matrix in row-major order, which
+     * is overwritten by the decomposition.
+     * @param n Integer that is the matrix dimension.
+     * @param numThreads Integer that is the number of threads to use.
+     * @return True if the matrix is positive definite, false otherwise.
+     */
+    public static boolean choleskyDecompose(double[] a, int n,
+            int numThreads) {
+        for (int kBlock = 0; kBlock < n; kBlock += BLOCK_SIZE) {
+            int kEnd = Math.min(kBlock + BLOCK_SIZE, n);
+            // Factorize the diagonal block.
+            for (int j = kBlock; j < kEnd; j++) {
+                double diag = a[j * n + j];
+                for (int p = kBlock; p < j; p++) {
+                    diag -= a[j * n + p] * a[j * n + p];
+                }
+                if (!(diag > 0)) {
+                    return false;
+                }
+                diag = Math.sqrt(diag);
+                a[j * n + j] = diag;
+                for (int i = j + 1; i < kEnd; i++) {
+                    double value = a[i * n + j];
+                    for (int p = kBlock; p < j; p++) {
+                        value -= a[i * n + p] * a[j * n + p];
+                    }
+                    a[i * n + j] = value / diag;
+                }
+            }
+            if (kEnd == n) {
+                break;
+            }
+            int threads = Math.max(1, Math.min(numThreads, n - kEnd));
+            Runnable[] workers = new Runnable[threads];
+            // Calculate the block column below the diagonal block.
+            for (int tIndex = 0; tIndex < threads; tIndex++) {
+                workers[tIndex] = new CholeskyWorker(a, n, kBlock, kEnd,
+                        kEnd + tIndex, threads, true);
+            }
+            runAll(workers);
+            // Update the lower triangle of the trailing submatrix.
+            for (int tIndex = 0; tIndex < threads; tIndex++) {
+                workers[tIndex] = new CholeskyWorker(a, n, kBlock, kEnd,
+                        kEnd + tIndex, threads, false);
+            }
+            runAll(workers);
+        }
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                a[i * n + j] = 0;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * This class calculates the panel below the diagonal block or updates the
+     * trailing submatrix in the blocked Cholesky decomposition, for rows that
+     * are assigned in an interleaved fashion.
+     */
+    static class CholeskyWorker implements Runnable {
+
+        private double[] a;
+        private int n;
+        private int kBlock;
+        private int kEnd;
+        private int offset;
+        private int step;
+        private boolean panel;
+
+        /**
+         * Initialization.
+         *
+         * @param a Double array that is the matrix in row-major order.
+         * @param n Integer that is the matrix dimension.
+         * @param kBlock Integer that is the first panel column.
+         * @param kEnd Integer that is the end of the panel, exclusive.
+         * @param offset Integer that is the first row to process.
+         * @param step Integer that is the step between the processed rows.
+         * @param panel Boolean flag indicating whether to calculate the panel
+         * or to update the trailing submatrix.
+         */
+        CholeskyWorker(double[] a, int n, int kBlock, int kEnd, int offset,
+                int step, boolean panel) {
+            this.a = a;
+            this.n = n;
+            this.kBlock = kBlock;
+            this.kEnd = kEnd;
+            this.offset = offset;
+            this.step = step;
+            this.panel = panel;
+        }
+
+        @Override
+        public void run() {
+            for (int i = offset; i < n; i += step) {
+                int iOffset = i * n;
+                if (panel) {
+                    for (int j = kBlock; j < kEnd; j++) {
+                        double value = a[iOffset + j];
+                        for (int p = kBlock; p < j; p++) {
+                            value -= a[iOffset + p] * a[j * n + p];
+                        }
+                        a[iOffset + j] = value / a[j * n + j];
+                    }
+                } else {
+                    for (int j = kEnd; j <= i; j++) {
+                        int jOffset = j * n;
+                        double value = 0;
+                        for (int p = kBlock; p < kEnd; p++) {
+                            value += a[iOffset + p] * a[jOffset + p];
+                        }
+                        a[iOffset + j] -= value;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Calculates the matrix inverse from its decomposition, by solving for
+     * the columns of the inverse in parallel.
+     *
+     * @param decomposition Double array that is either the LU or the Cholesky
+     * decomposition in row-major order.
+     * @param n Integer that is the matrix dimension.
+     * @param perm Integer array that is the LU row permutation, or null if
+     * the Cholesky decomposition is given.
+     * @param numThreads Integer that is the number of threads to use.
+     * @return Double array that is the inverse in row-major order.
+     */
+    public static double[] invert(double[] decomposition, int n, int[] perm,
+            int numThreads) {
+        double[] inverse = new double[n * n];
+        numThreads = Math.max(1, Math.min(numThreads, n));
+        Runnable[] workers = new Runnable[numThreads];
+        for (int tIndex = 0; tIndex < numThreads; tIndex++) {
+            workers[tIndex] = new InverseWorker(decomposition, inverse, n,
+                    perm, rangeStart(0, n, tIndex, numThreads),
+                    rangeStart(0, n, tIndex + 1, numThreads));
+        }
+        runAll(workers);
+        return inverse;
+    }
+
+    /**
+     * This class solves for a range of columns of the matrix inverse.
+     */
+    static class InverseWorker implements Runnable {
+
+        private double[] decomposition;
+        private double[] inverse;
+        private int n;
+        private int[] perm;
+        private int colStart;
+        private int colEnd;
+
+        /**
+         * Initialization.
+         *
+         * @param decomposition Double array that is the LU or Cholesky
+         * decomposition in row-major order.
+         * @param inverse Double array for the inverse in row-major order.
+         * @param n Integer that is the matrix dimension.
+         * @param perm Integer array that is the LU row permutation, or null
+         * for the Cholesky decomposition.
+         * @param colStart Integer that is the first column, inclusive.
+         * @param colEnd Integer that is the last column, exclusive.
+         */
+        InverseWorker(double[] decomposition, double[] inverse, int n,
+                int[] perm, int colStart, int colEnd) {
+            this.decomposition = decomposition;
+            this.inverse = inverse;
+            this.n = n;
+            this.perm = perm;
+            this.colStart = colStart;
+            this.colEnd = colEnd;
+        }
+
+        @Override
+        public void run() {
+            double[] z = new double[n];
+            double[] x = new double[n];
+            double sum;
+            for (int col = colStart; col < colEnd; col++) {
+                if (perm != null) {
+                    // Forward substitution with the unit lower triangle for
+                    // the permuted unit vector.
+                    for (int j = 0; j < n; j++) {
+                        sum = perm[j] == col ? 1 : 0;
+                        for (int p = 0; p < j; p++) {
+                            sum -= decomposition[j * n + p] * z[p];
+                        }
+                        z[j] = sum;
+                    }
+                    // Backward substitution with the upper triangle.
+                    for (int j = n - 1; j >= 0; j--) {
+                        sum = z[j];
+                        for (int p = j + 1; p < n; p++) {
+                            sum -= decomposition[j * n + p] * x[p];
+                        }
+                        x[j] = sum / decomposition[j * n + j];
+                    }
+                } else {
+                    // Solve L z = e and then L^T x = z.
+                    for (int j = 0; j < n; j++) {
+                        sum = j == col ? 1 : 0;
+                        for (int p = 0; p < j; p++) {
+                            sum -= decomposition[j * n + p] * z[p];
+                        }
+                        z[j] = sum / decomposition[j * n + j];
+                    }
+                    for (int j = n - 1; j >= 0; j--) {
+                        sum = z[j];
+                        for (int p = j + 1; p < n; p++) {
+                            sum -= decomposition[p * n + j] * x[p];
+                        }
+                        x[j] = sum / decomposition[j * n + j];
+                    }
+                }
+                for (int j = 0; j < n; j++) {
+                    inverse[j * n + col] = x[j];
+                }
+            }
+        }
+    }
+}
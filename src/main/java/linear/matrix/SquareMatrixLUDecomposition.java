@@ -16,12 +16,12 @@
 */
 package linear.matrix;
 
-import combinatorial.Permutation;
 import data.representation.util.DataMineConstants;
-import java.util.Arrays;
 
 /**
- * LU decomposition of square matrices.
+ * LU decomposition of square matrices, with partial pivoting. The
+ * decomposition is performed by the blocked multi-threaded kernel in
+ * DenseLinearAlgebra on a contiguous copy of the matrix.
  *
  * @author Nenad Tomasev <nenad.tomasev at gmail.com>
  */
@@ -30,13 +30,17 @@ public class SquareMatrixLUDecomposition {
     private float[][] matrix;
     // Both L and U matrices are encoded here in LUmat, for convenience.
     private float[][] LUmat;
+    // The decomposition in contiguous row-major form.
+    private double[] luValues;
     private int[] perm;
-    // Perm is a row permutation 'matrix' - it is encoded in this vector perm 
+    // Perm is a row permutation 'matrix' - it is encoded in this vector perm
     // that permutes the rows of matrix during the LU decomposition. This means
-    // that PA = LU. Therefore, if invA is sought, invLU must be permuted by P
-    // from the right (the columns).
+    // that PA = LU, where the row i of LU corresponds to the row perm[i] of
+    // the original matrix.
+    private int permSign = 1;
     private boolean decompositionFinished = false;
     private int rank;
+    private int numThreads = -1;
 
     /**
      * The constructor.
@@ -60,6 +64,25 @@ public class SquareMatrixLUDecomposition {
         }
     }
 
+    /**
+     * @param numThreads Integer that is the number of threads to use. If not
+     * positive, it is determined from the matrix size.
+     */
+    public void setNumThreads(int numThreads) {
+        this.numThreads = numThreads;
+    }
+
+    /**
+     * @return Integer that is the number of threads to use.
+     */
+    private int getNumThreads() {
+        if (numThreads > 0) {
+            return numThreads;
+        }
+        long len = matrix.length;
+        return DenseLinearAlgebra.getDefaultNumThreads(len * len * len);
+    }
+
     /**
      * @return Matrix rank after the LU composition has been performed to
      * determine it.
@@ -79,38 +102,9 @@ public class SquareMatrixLUDecomposition {
                 return null;
             }
             int len = matrix.length;
-            float[] z = new float[len];
-            float[] x = new float[len];
-            float sum;
-            float[][] inverse = new float[len][len];
-            for (int i = 0; i < len; i++) {
-                // Calculate the i-th column of the inverse in two steps.
-                Arrays.fill(z, 0);
-                Arrays.fill(x, 0);
-                for (int j = 0; j < len; j++) {
-                    // Lz = e Ux = z
-                    sum = 0;
-                    for (int k = 0; k < j; k++) {
-                        sum += LUmat[j][k] * z[k];
-                    }
-                    z[j] = (j == i) ? 1 - sum : 0 - sum;
-                }
-                for (int j = 0; j < len; j++) {// Lz = e Ux = z
-                    sum = 0;
-                    for (int k = j + 1; k < len; k++) {
-                        sum += LUmat[j][k] * x[k];
-                    }
-                    x[j] = (z[j] - sum) / LUmat[j][j];
-                }
-                for (int j = 0; j < len; j++) {
-                    inverse[j][i] = x[j];
-                }
-            }
-            // Now permute if necessary.
-            if (!Permutation.isIdentity(perm)) {
-                inverse = Permutation.permuteSquareMatrixColumns(inverse, perm);
-            }
-            return inverse;
+            double[] inverse = DenseLinearAlgebra.invert(luValues, len, perm,
+                    getNumThreads());
+            return DenseLinearAlgebra.toFloatRows(inverse, len, len);
         } else {
             performLUdecomposition();
             return getMatrixInverse();
@@ -122,12 +116,10 @@ public class SquareMatrixLUDecomposition {
      */
     public double calculateDeterminant() {
         if (decompositionFinished) {
-            double result = 1;
-            for (int i = 0; i < matrix.length; i++) {
-                result *= LUmat[i][i];
-            }
-            if (Permutation.isOddPermutation(perm)) {
-                result *= -1;
+            int len = matrix.length;
+            double result = permSign;
+            for (int i = 0; i < len; i++) {
+                result *= luValues[i * len + i];
             }
             return result;
         } else {
@@ -184,62 +176,15 @@ public class SquareMatrixLUDecomposition {
         return uMat;
     }
 
-    /**
-     * Returns the index of the first non-zero row, by looking below the
-     * diagonal, for a given column index.
-     *
-     * @param column Column index.
-     * @return
-     */
-    private int getFirstNonZeroRowIndex(int column) {
-        int row = column;
-        while (row < LUmat.length
-                && DataMineConstants.isZero(LUmat[row][column])) {
-            row++;
-        }
-        if (row == LUmat.length) {
-            return -1;
-        } else {
-            return row;
-        }
-    }
-
     /**
      * Perform LU decomposition.
      */
     public void performLUdecomposition() {
         int len = matrix.length;
-        float quotient;
-        float[] tempRow;
-        int nextNonz;
-        for (int i = 0; i < len - 1; i++) {
-            // len-1, since there is nothing below the main diagonal in the
-            // last column. Zero out everything below the main diagonal in the
-            // i-th column.
-            nextNonz = getFirstNonZeroRowIndex(i);
-            if (nextNonz == -1) {
-                // Nothing to do, zero diagonal element.
-                continue;
-            }
-            if (nextNonz != i) {
-                // Switch rows.
-                tempRow = LUmat[i];
-                LUmat[i] = LUmat[nextNonz];
-                LUmat[nextNonz] = tempRow;
-                perm[i] = nextNonz;
-                perm[nextNonz] = i;
-            }
-            for (int j = i + 1; j < len; j++) {
-                // j is the row index.
-                quotient = -LUmat[j][i] / LUmat[i][i];
-                for (int k = i + 1; k < len; k++) {
-                    LUmat[j][k] += quotient * LUmat[i][k];
-                }
-                // Now just fill the zeroed element with its L-matrix value,
-                // which turns out to be: -quotient
-                LUmat[j][i] = -quotient;
-            }
-        }
+        luValues = DenseLinearAlgebra.toRowMajor(matrix, len);
+        permSign = DenseLinearAlgebra.luDecompose(luValues, len, perm,
+                getNumThreads());
+        LUmat = DenseLinearAlgebra.toFloatRows(luValues, len, len);
         int numNonZeroRows = 0;
         for (int i = 0; i < len; i++) {
             for (int j = i; j < len; j++) {
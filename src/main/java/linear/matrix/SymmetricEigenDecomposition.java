@@ -0,0 +1,329 @@
+/**
+* Hub Miner: a hubness-aware machine learning experimentation library.
+* Copyright (C) 2014  Nenad Tomasev. Email: nenad.tomasev at gmail.com
+* 
+* This program is free software: you can redistribute it and/or modify it under
+* the terms of the GNU General Public License as published by the Free Software
+* Foundation, either version 3 of the License, or (at your option) any later
+* version.
+* 
+* This program is distributed in the hope that it will be useful, but WITHOUT
+* ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+* FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License along with
+* this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+package linear.matrix;
+
+/**
+ * This class implements the eigendecomposition of real symmetric matrices.
+ * The matrix is first reduced to the tridiagonal form by Householder
+ * transformations and the tridiagonal matrix is then diagonalized by the
+ * implicit QL method, as in the EISPACK routines tred2 and tql2. The
+ * eigenvalues are sorted in descending order and the eigenvectors are given
+ * as rows, so that the first k rows span the principal subspace.
+ *
+ * @author Nenad Tomasev <nenad.tomasev at gmail.com>
+ */
+public class SymmetricEigenDecomposition {
+
+    private int n;
+    // Eigenvalues, in descending order.
+    private double[] eigenValues;
+    // Eigenvectors, where row i corresponds to eigenValues[i].
+    private double[][] eigenVectors;
+    // Work arrays: the eigenvector matrix by columns and the off-diagonal.
+    private double[][] v;
+    private double[] d;
+    private double[] e;
+
+    /**
+     * @param matrix Two-dimensional double array that is the full symmetric
+     * matrix. It is not modified.
+     */
+    public SymmetricEigenDecomposition(double[][] matrix) {
+        n = matrix.length;
+        v = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(matrix[i], 0, v[i], 0, n);
+        }
+    }
+
+    /**
+     * @param matrix DataMatrixInterface that is a symmetric matrix.
+     */
+    public SymmetricEigenDecomposition(DataMatrixInterface matrix) {
+        n = matrix.numberOfRows();
+        v = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            float[] row = matrix.getRow(i);
+            for (int j = 0; j < n; j++) {
+                v[i][j] = row[j];
+            }
+        }
+    }
+
+    /**
+     * @param values Double array that is the n x n symmetric matrix in
+     * row-major order.
+     * @param n Integer that is the matrix dimension.
+     */
+    public SymmetricEigenDecomposition(double[] values, int n) {
+        this.n = n;
+        v = new double[n][n];
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(values, i * n, v[i], 0, n);
+        }
+    }
+
+    /**
+     * @return Double array of eigenvalues in descending order.
+     */
+    public double[] getEigenValues() {
+        return eigenValues;
+    }
+
+    /**
+     * @return Two-dimensional double array where each row is a unit
+     * eigenvector that corresponds to the eigenvalue at the same position.
+     */
+    public double[][] getEigenVectors() {
+        return eigenVectors;
+    }
+
+    /**
+     * Performs the decomposition.
+     */
+    public void decomposeMatrix() {
+        d = new double[n];
+        e = new double[n];
+        if (n > 0) {
+            tridiagonalize();
+            diagonalize();
+        }
+        // Sort in descending order and transpose the eigenvectors into rows.
+        eigenValues = new double[n];
+        eigenVectors = new double[n][n];
+        boolean[] taken = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            int maxIndex = -1;
+            for (int j = 0; j < n; j++) {
+                if (!taken[j] && (maxIndex == -1 || d[j] > d[maxIndex])) {
+                    maxIndex = j;
+                }
+            }
+            taken[maxIndex] = true;
+            eigenValues[i] = d[maxIndex];
+            for (int j = 0; j < n; j++) {
+                eigenVectors[i][j] = v[j][maxIndex];
+            }
+        }
+        v = null;
+        d = null;
+        e = null;
+    }
+
+    /**
+     * Householder reduction to the tridiagonal form, accumulating the
+     * transformations in v.
+     */
+    private void tridiagonalize() {
+        for (int j = 0; j < n; j++) {
+            d[j] = v[n - 1][j];
+        }
+        for (int i = n - 1; i > 0; i--) {
+            // Scale to avoid under/overflow.
+            double scale = 0;
+            double h = 0;
+            for (int k = 0; k < i; k++) {
+                scale += Math.abs(d[k]);
+            }
+            if (scale == 0) {
+                e[i] = d[i - 1];
+                for (int j = 0; j < i; j++) {
+                    d[j] = v[i - 1][j];
+                    v[i][j] = 0;
+                    v[j][i] = 0;
+                }
+            } else {
+                // Generate the Householder vector.
+                for (int k = 0; k < i; k++) {
+                    d[k] /= scale;
+                    h += d[k] * d[k];
+                }
+                double f = d[i - 1];
+                double g = Math.sqrt(h);
+                if (f > 0) {
+                    g = -g;
+                }
+                e[i] = scale * g;
+                h -= f * g;
+                d[i - 1] = f - g;
+                for (int j = 0; j < i; j++) {
+                    e[j] = 0;
+                }
+                // Apply the similarity transformation to the remaining
+                // columns.
+                for (int j = 0; j < i; j++) {
+                    f = d[j];
+                    v[j][i] = f;
+                    g = e[j] + v[j][j] * f;
+                    for (int k = j + 1; k <= i - 1; k++) {
+                        g += v[k][j] * d[k];
+                        e[k] += v[k][j] * f;
+                    }
+                    e[j] = g;
+                }
+                f = 0;
+                for (int j = 0; j < i; j++) {
+                    e[j] /= h;
+                    f += e[j] * d[j];
+                }
+                double hh = f / (h + h);
+                for (int j = 0; j < i; j++) {
+                    e[j] -= hh * d[j];
+                }
+                for (int j = 0; j < i; j++) {
+                    f = d[j];
+                    g = e[j];
+                    for (int k = j; k <= i - 1; k++) {
+                        v[k][j] -= (f * e[k] + g * d[k]);
+                    }
+                    d[j] = v[i - 1][j];
+                    v[i][j] = 0;
+                }
+            }
+            d[i] = h;
+        }
+        // Accumulate the transformations.
+        for (int i = 0; i < n - 1; i++) {
+            v[n - 1][i] = v[i][i];
+            v[i][i] = 1;
+            double h = d[i + 1];
+            if (h != 0) {
+                for (int k = 0; k <= i; k++) {
+                    d[k] = v[k][i + 1] / h;
+                }
+                for (int j = 0; j <= i; j++) {
+                    double g = 0;
+                    for (int k = 0; k <= i; k++) {
+                        g += v[k][i + 1] * v[k][j];
+                    }
+                    for (int k = 0; k <= i; k++) {
+                        v[k][j] -= g * d[k];
+                    }
+                }
+            }
+            for (int k = 0; k <= i; k++) {
+                v[k][i + 1] = 0;
+            }
+        }
+        for (int j = 0; j < n; j++) {
+            d[j] = v[n - 1][j];
+            v[n - 1][j] = 0;
+        }
+        v[n - 1][n - 1] = 1;
+        e[0] = 0;
+    }
+
+    /**
+     * Diagonalizes the tridiagonal matrix by the implicit QL method,
+     * accumulating the rotations in v.
+     */
+    private void diagonalize() {
+        for (int i = 1; i < n; i++) {
+            e[i - 1] = e[i];
+        }
+        e[n - 1] = 0;
+        double f = 0;
+        double tst1 = 0;
+        double eps = Math.pow(2, -52);
+        for (int l = 0; l < n; l++) {
+            // Find a small subdiagonal element.
+            tst1 = Math.max(tst1, Math.abs(d[l]) + Math.abs(e[l]));
+            int m = l;
+            while (m < n) {
+                if (Math.abs(e[m]) <= eps * tst1) {
+                    break;
+                }
+                m++;
+            }
+            if (m == n) {
+                m = n - 1;
+            }
+            // If m == l, d[l] is already an eigenvalue, otherwise iterate.
+            if (m > l) {
+                do {
+                    // Compute the implicit shift.
+                    double g = d[l];
+                    double p = (d[l + 1] - g) / (2 * e[l]);
+                    double r = hypot(p, 1);
+                    if (p < 0) {
+                        r = -r;
+                    }
+                    d[l] = e[l] / (p + r);
+                    d[l + 1] = e[l] * (p + r);
+                    double dl1 = d[l + 1];
+                    double h = g - d[l];
+                    for (int i = l + 2; i < n; i++) {
+                        d[i] -= h;
+                    }
+                    f += h;
+                    // Implicit QL transformation.
+                    p = d[m];
+                    double c = 1;
+                    double c2 = c;
+                    double c3 = c;
+                    double el1 = e[l + 1];
+                    double s = 0;
+                    double s2 = 0;
+                    for (int i = m - 1; i >= l; i--) {
+                        c3 = c2;
+                        c2 = c;
+                        s2 = s;
+                        g = c * e[i];
+                        h = c * p;
+                        r = hypot(p, e[i]);
+                        e[i + 1] = s * r;
+                        s = e[i] / r;
+                        c = p / r;
+                        p = c * d[i] - s * g;
+                        d[i + 1] = h + s * (c * g + s * d[i]);
+                        // Accumulate the transformation.
+                        for (int k = 0; k < n; k++) {
+                            h = v[k][i + 1];
+                            v[k][i + 1] = s * v[k][i] + c * h;
+                            v[k][i] = c * v[k][i] - s * h;
+                        }
+                    }
+                    p = -s * s2 * c3 * el1 * e[l] / dl1;
+                    e[l] = s * p;
+                    d[l] = c * p;
+                    // Check for convergence.
+                } while (Math.abs(e[l]) > eps * tst1);
+            }
+            d[l] += f;
+            e[l] = 0;
+        }
+    }
+
+    /**
+     * @param a Double value.
+     * @param b Double value.
+     * @return Double value that is sqrt(a^2 + b^2), without under/overflow.
+     */
+    private static double hypot(double a, double b) {
+        double absA = Math.abs(a);
+        double absB = Math.abs(b);
+        if (absA > absB) {
+            double ratio = absB / absA;
+            return absA * Math.sqrt(1 + ratio * ratio);
+        } else if (absB != 0) {
+            double ratio = absA / absB;
+            return absB * Math.sqrt(1 + ratio * ratio);
+        } else {
+            return 0;
+        }
+    }
+}
@@ -149,138 +149,43 @@ public class SymmetricFloatMatrix implements DataMatrixInterface {
 
     @Override
     public DataMatrixInterface calculateInverse() throws Exception {
-        DataMatrixInterface result = new DataMatrix(data.length, data.length);
-        if (data.length == 1) {
-            if (data[0][0] != 0) {
-                result.setElementAt(0, 0, 1 / data[0][0]);
-            } else {
-                return null;
-            }
-        }
-        int[] indexes;
-        for (int i = 0; i < data.length; i++) {
-            for (int j = 0; j < data.length; j++) {
-                indexes = new int[data.length - 1];
-                for (int k = 0; k < j; k++) {
-                    indexes[k] = k;
-                }
-                for (int k = j + 1; k < data.length; k++) {
-                    indexes[k - 1] = k;
-                }
-                if (i == 0) {
-                    result.setElementAt(i, j, calculateCofactor(indexes, i, 1));
-                } else {
-                    result.setElementAt(i, j, calculateCofactor(indexes, i, 0));
-                }
-            }
-        }
-        // Now calculate determinant from first row minors.
-        float detValue = 0;
-        for (int i = 0; i < data.length; i++) {
-            if (i % 2 == 0) {
-                detValue += data[0][i] * result.getElementAt(0, i);
-            } else {
-                detValue -= data[0][i] * result.getElementAt(0, i);
-            }
-        }
-        if (detValue == 0) {
-            return null;
-        }
-        // Now turn all minors into cofactors and divide by determinant value to
-        // get the final result.
-        for (int i = 0; i < data.length; i++) {
-            for (int j = 0; j < data.length; j++) {
-                if (i + j % 2 == 0) {
-                    result.setElementAt(i, j,
-                            result.getElementAt(i, j) / detValue);
-                } else {
-                    result.setElementAt(i, j,
-                            (-result.getElementAt(i, j)) / detValue);
+        int n = data.length;
+        long work = (long) n * n * n;
+        int numThreads = DenseLinearAlgebra.getDefaultNumThreads(work);
+        double[] values = toRowMajor();
+        double[] inverse;
+        // Symmetric positive definite matrices are inverted via the Cholesky
+        // decomposition and the general LU decomposition is the fallback.
+        if (DenseLinearAlgebra.choleskyDecompose(values, n, numThreads)) {
+            inverse = DenseLinearAlgebra.invert(values, n, null, numThreads);
+        } else {
+            values = toRowMajor();
+            int[] perm = new int[n];
+            DenseLinearAlgebra.luDecompose(values, n, perm, numThreads);
+            for (int i = 0; i < n; i++) {
+                if (values[i * n + i] == 0) {
+                    return null;
                 }
             }
+            inverse = DenseLinearAlgebra.invert(values, n, perm, numThreads);
         }
-        return result;
+        return new DataMatrix(DenseLinearAlgebra.toFloatRows(inverse, n, n));
     }
 
     /**
-     * Calculate cofactor within the matrix, recursively.
-     *
-     * @param indexes A sorted array of indexes.
-     * @param indexOfFirstCofactRow
-     * @param expansionIndex Index of the intersection element.
-     * @return
-     * @throws Exception
+     * @return Double array that is the full matrix in contiguous row-major
+     * order.
      */
-    private float calculateCofactor(int[] indexes,
-            int indexOfFirstCofactRow, int expansionIndex) throws Exception {
-        if (indexes.length == 1) {
-            if (!(indexOfFirstCofactRow == data.length - 1)) {
-                return getElementAt(data.length - 1, indexes[0]);
-            } else {
-                return getElementAt(data.length - 2, indexes[0]);
-            }
-        } else if (indexes.length == 2) {
-            if (!(indexOfFirstCofactRow == data.length - 1
-                    || indexOfFirstCofactRow == data.length - 2)) {
-                return (getElementAt(data.length - 2, indexes[0])
-                        * getElementAt(data.length - 1, indexes[1])
-                        - getElementAt(data.length - 2, indexes[1])
-                        * getElementAt(data.length - 1, indexes[0]));
-            } else if (indexOfFirstCofactRow == data.length - 1) {
-                return (getElementAt(data.length - 3, indexes[0])
-                        * getElementAt(data.length - 2, indexes[1])
-                        - getElementAt(data.length - 3, indexes[1])
-                        * getElementAt(data.length - 2, indexes[0]));
-            } else {
-                return (getElementAt(data.length - 3, indexes[0])
-                        * getElementAt(data.length - 1, indexes[1])
-                        - getElementAt(data.length - 3, indexes[1])
-                        * getElementAt(data.length - 1, indexes[0]));
+    private double[] toRowMajor() {
+        int n = data.length;
+        double[] values = new double[n * n];
+        for (int i = 0; i < n; i++) {
+            for (int j = i; j < n; j++) {
+                values[i * n + j] = data[i][j - i];
+                values[j * n + i] = data[i][j - i];
             }
-        } else {
-            float sum = 0;
-            int[] tempIndexes;
-            for (int i = 0; i < indexes.length; i++) {
-                // Make cofactors and expand.
-                tempIndexes = new int[indexes.length - 1];
-                for (int j = 0; j < i; j++) {
-                    tempIndexes[j] = indexes[j];
-                }
-                for (int j = i + 1; j < indexes.length; j++) {
-                    tempIndexes[j - 1] = indexes[j];
-                }
-                if (i % 2 == 0) {
-                    if (getElementAt(expansionIndex, indexes[i]) != 0) {
-                        if (expansionIndex + 1 == indexOfFirstCofactRow) {
-                            sum += getElementAt(expansionIndex, indexes[i])
-                                    * calculateCofactor(tempIndexes,
-                                    indexOfFirstCofactRow,
-                                    expansionIndex + 2);
-                        } else {
-                            sum += getElementAt(expansionIndex, indexes[i])
-                                    * calculateCofactor(tempIndexes,
-                                    indexOfFirstCofactRow,
-                                    expansionIndex + 1);
-                        }
-                    }
-                } else {
-                    if (getElementAt(expansionIndex, indexes[i]) != 0) {
-                        if (expansionIndex + 1 == indexOfFirstCofactRow) {
-                            sum -= getElementAt(expansionIndex, indexes[i])
-                                    * calculateCofactor(tempIndexes,
-                                    indexOfFirstCofactRow,
-                                    expansionIndex + 2);
-                        } else {
-                            sum -= getElementAt(expansionIndex, indexes[i])
-                                    * calculateCofactor(tempIndexes,
-                                    indexOfFirstCofactRow,
-                                    expansionIndex + 1);
-                        }
-                    }
-                }
-            }
-            return sum;
         }
+        return values;
     }
 
     @Override
@@ -289,31 +194,16 @@ public class SymmetricFloatMatrix implements DataMatrixInterface {
         if (!(second.numberOfRows() == data.length)) {
             throw new Exception("Cannot multiply matrices.");
         }
-        DataMatrixInterface result;
-        if (second.isSymmetricMatrixImplementation()) {
-            //The product is not necessarily symmetric.
-            result = new DataMatrix(data.length, data.length);
-            for (int i = 0; i < data.length; i++) {
-                for (int j = 0; j < data.length; j++) {
-                    for (int k = 0; k < data.length; k++) {
-                        result.setElementAt(i, j, result.getElementAt(i, j)
-                                + data[i][k] * second.getElementAt(k, j));
-                    }
-                }
-            }
-
-        } else {
-            result = new DataMatrix(data.length, second.numberOfColumns());
-            for (int i = 0; i < data.length; i++) {
-                for (int j = 0; j < second.numberOfColumns(); j++) {
-                    for (int k = 0; k < data.length; k++) {
-                        result.setElementAt(i, j, result.getElementAt(i, j)
-                                + data[i][k] * second.getElementAt(k, j));
-                    }
-                }
-            }
-        }
-        return result;
+        // The product is not necessarily symmetric.
+        int n = data.length;
+        int numColumns = second.numberOfColumns();
+        double[] product = new double[n * numColumns];
+        DenseLinearAlgebra.gemm(toRowMajor(),
+                DenseLinearAlgebra.toRowMajor(second), product, n, n,
+                numColumns, DenseLinearAlgebra.getDefaultNumThreads(
+                (long) n * n * numColumns));
+        return new DataMatrix(DenseLinearAlgebra.toFloatRows(product, n,
+                numColumns));
     }
 
     @Override
@@ -389,57 +279,16 @@ public class SymmetricFloatMatrix implements DataMatrixInterface {
 
     @Override
     public float calculateDeterminant() {
-        int[] indexes = new int[data.length];
-        for (int i = 0; i < data.length; i++) {
-            indexes[i] = i;
-        }
-        return calculateDet(indexes, 0);
-    }
-
-    /**
-     * Calculate determinant by cofactor expansion.
-     *
-     * @param indexes Index array, ordered ASC.
-     * @param expansionIndex Index of the intersection element.
-     * @return
-     */
-    private float calculateDet(int[] indexes, int expansionIndex) {
-        // This implementation takes advantage of the fact that first row is
-        // always expanded upon. This means that when the size of the matrix is
-        // 2, it will be reaching the elements in the last two rows.
-        if (indexes.length == 1) {
-            return getElementAt(data.length - 1, indexes[0]);
-        } else if (indexes.length == 2) {
-            return (getElementAt(data.length - 2, indexes[0])
-                    * getElementAt(data.length - 1, indexes[1])
-                    - getElementAt(data.length - 2, indexes[1])
-                    * getElementAt(data.length - 1, indexes[0]));
-        } else {
-            float sum = 0;
-            int[] tempInt;
-            for (int i = 0; i < indexes.length; i++) {
-                //Take the first row, make cofactors and expand.
-                tempInt = new int[indexes.length - 1];
-                for (int j = 0; j < i; j++) {
-                    tempInt[j] = indexes[j];
-                }
-                for (int j = i + 1; j < indexes.length; j++) {
-                    tempInt[j - 1] = indexes[j];
-                }
-                if (i % 2 == 0) {
-                    if (getElementAt(expansionIndex, indexes[i]) != 0) {
-                        sum += getElementAt(expansionIndex, indexes[i])
-                                * calculateDet(tempInt, expansionIndex + 1);
-                    }
-                } else {
-                    if (getElementAt(expansionIndex, indexes[i]) != 0) {
-                        sum -= getElementAt(expansionIndex, indexes[i])
-                                * calculateDet(tempInt, expansionIndex + 1);
-                    }
-                }
-            }
-            return sum;
+        int n = data.length;
+        double[] values = toRowMajor();
+        int[] perm = new int[n];
+        int sign = DenseLinearAlgebra.luDecompose(values, n, perm,
+                DenseLinearAlgebra.getDefaultNumThreads((long) n * n * n));
+        double det = sign;
+        for (int i = 0; i < n; i++) {
+            det *= values[i * n + i];
         }
+        return (float) det;
     }
 
     /**
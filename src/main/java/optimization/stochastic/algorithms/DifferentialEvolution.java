@@ -18,6 +18,7 @@ package optimization.stochastic.algorithms;
 
 import data.representation.DataInstance;
 import java.util.Random;
+import optimization.stochastic.fitness.BatchFitnessEvaluator;
 import optimization.stochastic.fitness.FitnessEvaluator;
 
 /**
@@ -82,11 +83,7 @@ public class DifferentialEvolution implements OptimizationAlgorithmInterface {
         DataInstance newChild;
         Random randa = new Random();
         int certainMutationIndex;
-        populationFitness = new float[population.length];
-        for (int i = 0; i < population.length; i++) {
-            score = evaluate(population[i]);
-            populationFitness[i] = score;
-        }
+        populationFitness = evaluate(population);
         for (iteration = 1; iteration <= numIter; iteration++) {
             // Create children (the next generation).
             children = new Object[population.length];
@@ -122,9 +119,13 @@ public class DifferentialEvolution implements OptimizationAlgorithmInterface {
                 children[i] = newChild;
             }
             // Calculate fitness for the children and replace certain parents.
+            if (stop) {
+                break;
+            }
+            float[] childrenFitness = evaluate(children);
             for (int i = 0; i < population.length; i++) {
                 if (!stop) {
-                    score = evaluate(children[i]);
+                    score = childrenFitness[i];
                     if (score < populationFitness[i]) {
                         // Replace parent by the child.
                         population[i] = children[i];
@@ -137,25 +138,28 @@ public class DifferentialEvolution implements OptimizationAlgorithmInterface {
     }
 
     /**
-     * Evaluates the fitness of the current solution and updates the best/worst
+     * Evaluates the fitness of a population of solutions, in parallel if the
+     * fitness evaluator is a BatchFitnessEvaluator, and updates the best/worst
      * solution fitness stats.
      *
-     * @param instance
-     * @return
+     * @param instances Object[] of the solutions to evaluate.
+     * @return float[] of the solution fitness values.
      */
-    private float evaluate(Object instance) {
-        score = fe.evaluate(instance);
-        numEvaluatedInstances++;
-        if (score < bestScore) {
-            bestScore = score;
-            bestInstance = instance;
-        }
-        if (score > worstScore) {
-            worstScore = score;
-            worstInstance = instance;
+    private float[] evaluate(Object[] instances) {
+        float[] scores = BatchFitnessEvaluator.evaluateAll(fe, instances);
+        for (int i = 0; i < instances.length; i++) {
+            numEvaluatedInstances++;
+            if (scores[i] < bestScore) {
+                bestScore = scores[i];
+                bestInstance = instances[i];
+            }
+            if (scores[i] > worstScore) {
+                worstScore = scores[i];
+                worstInstance = instances[i];
+            }
+            totalScore += scores[i];
         }
-        totalScore += score;
-        return score;
+        return scores;
     }
 
     @Override
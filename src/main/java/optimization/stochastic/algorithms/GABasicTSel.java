@@ -17,6 +17,7 @@
 package optimization.stochastic.algorithms;
 
 import java.util.Random;
+import optimization.stochastic.fitness.BatchFitnessEvaluator;
 import optimization.stochastic.fitness.FitnessEvaluator;
 import optimization.stochastic.operators.MutationInterface;
 import optimization.stochastic.operators.RecombinationInterface;
@@ -43,7 +44,6 @@ public class GABasicTSel implements OptimizationAlgorithmInterface {
     private double totalScore = 0;
     private float bestScore = Float.MAX_VALUE;
     private float worstScore = -Float.MAX_VALUE;
-    private float score = Float.MAX_VALUE;
     private float[] inversePopulationFitness;
     private float[] inverseOffspringFitness;
     private float[] tempFitness;
@@ -76,11 +76,8 @@ public class GABasicTSel implements OptimizationAlgorithmInterface {
 
     @Override
     public void optimize() throws Exception {
-        inversePopulationFitness = new float[population.length];
         // First calculate the fitness of all the parents..
-        for (int i = 0; i < population.length; i++) {
-            inversePopulationFitness[i] = evaluate(population[i]);
-        }
+        inversePopulationFitness = evaluate(population);
         rearrange = AuxSort.sortIndexedValue(inversePopulationFitness, false);
         tempPopulation = new Object[population.length];
         for (int i = 0; i < population.length; i++) {
@@ -88,7 +85,6 @@ public class GABasicTSel implements OptimizationAlgorithmInterface {
         }
         population = tempPopulation;
         children = new Object[2 * population.length];
-        inverseOffspringFitness = new float[children.length];
         tempFitness = new float[population.length];
         Random randa = new Random();
         while (!stop && ++iteration <= numIter) {
@@ -96,7 +92,6 @@ public class GABasicTSel implements OptimizationAlgorithmInterface {
             for (int i = 0; i < population.length; i++) {
                 if (!stop) {
                     children[i] = mutator.mutateNew(population[i]);
-                    inverseOffspringFitness[i] = evaluate(children[i]);
                 } else {
                     return;
                 }
@@ -127,13 +122,11 @@ public class GABasicTSel implements OptimizationAlgorithmInterface {
                         recombiner.recombine(
                         population[first], population[second]);
             }
-            for (int i = 0; i < children.length; i++) {
-                if (!stop) {
-                    inverseOffspringFitness[i] = evaluate(children[i]);
-                } else {
-                    return;
-                }
+            // The mutated and the recombined children are evaluated together.
+            if (stop) {
+                return;
             }
+            inverseOffspringFitness = evaluate(children);
             rearrange =
                     AuxSort.sortIndexedValue(inverseOffspringFitness, false);
             tempChildren = new Object[children.length];
@@ -161,25 +154,28 @@ public class GABasicTSel implements OptimizationAlgorithmInterface {
     }
 
     /**
-     * Evaluates the fitness of the current solution and updates the best/worst
+     * Evaluates the fitness of a population of solutions, in parallel if the
+     * fitness evaluator is a BatchFitnessEvaluator, and updates the best/worst
      * solution fitness stats.
      *
-     * @param instance
-     * @return
+     * @param instances Object[] of the solutions to evaluate.
+     * @return float[] of the solution fitness values.
      */
-    private float evaluate(Object instance) {
-        score = fe.evaluate(instance);
-        numEvaluatedInstances++;
-        if (score < bestScore) {
-            bestScore = score;
-            bestInstance = instance;
-        }
-        if (score > worstScore) {
-            worstScore = score;
-            worstInstance = instance;
+    private float[] evaluate(Object[] instances) {
+        float[] scores = BatchFitnessEvaluator.evaluateAll(fe, instances);
+        for (int i = 0; i < instances.length; i++) {
+            numEvaluatedInstances++;
+            if (scores[i] < bestScore) {
+                bestScore = scores[i];
+                bestInstance = instances[i];
+            }
+            if (scores[i] > worstScore) {
+                worstScore = scores[i];
+                worstInstance = instances[i];
+            }
+            totalScore += scores[i];
         }
-        totalScore += score;
-        return score;
+        return scores;
     }
 
     @Override
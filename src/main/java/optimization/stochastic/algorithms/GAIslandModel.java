@@ -16,7 +16,10 @@
 */
 package optimization.stochastic.algorithms;
 
+import java.util.ArrayList;
 import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import optimization.stochastic.fitness.BatchFitnessEvaluator;
 import optimization.stochastic.fitness.FitnessEvaluator;
 import optimization.stochastic.operators.MutationInterface;
 import optimization.stochastic.operators.RecombinationInterface;
@@ -27,14 +30,19 @@ import util.AuxSort;
  * multiple separate solution subpopulations that occasionally communicate, so
  * that they can in principle search different parts of the data space, but also
  * horizontally transfer some of the acquired knowledge to enrich the local
- * search process.
+ * search process. Each island evolves in its own thread. Migrations are
+ * asynchronous: the migrants are placed in the incoming queue of the target
+ * island, which takes them into its population at the start of its next
+ * iteration, so the islands never wait for each other. The fitness evaluator
+ * needs to be safe to call from multiple threads. If it is a
+ * BatchFitnessEvaluator, the offspring of each island are also evaluated in
+ * parallel.
  *
  * @author Nenad Tomasev <nenad.tomasev at gmail.com>
  */
 public class GAIslandModel implements OptimizationAlgorithmInterface {
 
     private int numIter = 100;
-    private int iteration = 0;
     private int numIslands = 2;
     private float migrationProbability;
     // Probability of migrations occuring in any specific iteration.
@@ -44,25 +52,17 @@ public class GAIslandModel implements OptimizationAlgorithmInterface {
     private RecombinationInterface recombiner;
     private FitnessEvaluator fe;
     private Object[][] populations;
-    private Object[] children = null;
+    private float[][] inversePopulationFitness;
+    // Incoming migrant queues of the islands.
+    private ArrayList<ConcurrentLinkedQueue<Migrant>> migrationQueues;
+    private int[] islandIterations;
     private Object bestInstance;
     private Object worstInstance;
     private int numEvaluatedInstances = 0;
     private double totalScore = 0;
     private float bestScore = Float.MAX_VALUE;
     private float worstScore = -Float.MAX_VALUE;
-    private float score = Float.MAX_VALUE;
-    private float[][] inversePopulationFitness;
-    private float[][] inverseOffspringFitness;
-    private double[][] cumulativeProbs;
-    private float[] tempFitness;
-    private double[] totalProbs;
-    private Object[] tempPopulation;
-    private Object[] tempChildren;
-    private int[] rearrange;
-    private boolean stop = false;
-    private double decision;
-    private int first, second;
+    private volatile boolean stop = false;
 
     /**
      *
@@ -96,241 +96,299 @@ public class GAIslandModel implements OptimizationAlgorithmInterface {
     @Override
     public void optimize() throws Exception {
         numIslands = populations.length;
-        cumulativeProbs = new double[numIslands][];
-        totalProbs = new double[numIslands];
         inversePopulationFitness = new float[numIslands][];
+        islandIterations = new int[numIslands];
+        migrationQueues = new ArrayList<>(numIslands);
+        for (int islandIndex = 0; islandIndex < numIslands; islandIndex++) {
+            migrationQueues.add(new ConcurrentLinkedQueue<Migrant>());
+        }
+        IslandWorker[] workers = new IslandWorker[numIslands];
+        Thread[] threads = new Thread[numIslands];
         for (int islandIndex = 0; islandIndex < numIslands; islandIndex++) {
-            inversePopulationFitness[islandIndex] =
-                    new float[populations[islandIndex].length];
+            workers[islandIndex] = new IslandWorker(islandIndex);
+            threads[islandIndex] = new Thread(workers[islandIndex]);
+            threads[islandIndex].start();
         }
-        inverseOffspringFitness = new float[numIslands][];
-        // Do all populations separately.
-        // First calculate the fitness of all the initial parents.
         for (int islandIndex = 0; islandIndex < numIslands; islandIndex++) {
-            for (int i = 0; i < populations[islandIndex].length; i++) {
-                inversePopulationFitness[islandIndex][i] =
-                        evaluate(populations[islandIndex][i]);
+            try {
+                threads[islandIndex].join();
+            } catch (Throwable thr) {
+                System.err.println(thr.getMessage());
             }
-            rearrange = AuxSort.sortIndexedValue(
-                    inversePopulationFitness[islandIndex], false);
-            tempPopulation = new Object[populations[islandIndex].length];
-            for (int i = 0; i < populations[islandIndex].length; i++) {
-                tempPopulation[i] = populations[islandIndex][rearrange[i]];
+        }
+        for (int islandIndex = 0; islandIndex < numIslands; islandIndex++) {
+            if (workers[islandIndex].failure != null) {
+                throw workers[islandIndex].failure;
+            }
+        }
+    }
+
+    /**
+     * @return Object[][] of the island subpopulations, each sorted by the
+     * inverse fitness.
+     */
+    public Object[][] getPopulations() {
+        return populations;
+    }
+
+    /**
+     * Evaluates the fitness of a population of solutions and updates the
+     * best/worst solution fitness stats.
+     *
+     * @param instances Object[] of the solutions to evaluate.
+     * @return float[] of the solution fitness values.
+     */
+    private float[] evaluate(Object[] instances) {
+        float[] scores = BatchFitnessEvaluator.evaluateAll(fe, instances);
+        synchronized (this) {
+            for (int i = 0; i < instances.length; i++) {
+                numEvaluatedInstances++;
+                if (scores[i] < bestScore) {
+                    bestScore = scores[i];
+                    bestInstance = instances[i];
+                }
+                if (scores[i] > worstScore) {
+                    worstScore = scores[i];
+                    worstInstance = instances[i];
+                }
+                totalScore += scores[i];
+            }
+        }
+        return scores;
+    }
+
+    /**
+     * Binary search in the cumulative selection probabilities.
+     *
+     * @param cumulativeProbs double[] of the cumulative probabilities.
+     * @param searchValue Query value.
+     * @return Index of the first cumulative probability that is not smaller
+     * than the query value.
+     */
+    private static int findIndex(double[] cumulativeProbs,
+            double searchValue) {
+        int first = 0;
+        int second = cumulativeProbs.length - 1;
+        while (first < second) {
+            int middle = (first + second) / 2;
+            if (cumulativeProbs[middle] < searchValue) {
+                first = middle + 1;
+            } else {
+                second = middle;
+            }
+        }
+        return first;
+    }
+
+    /**
+     * A solution that is migrating between the islands.
+     */
+    static class Migrant {
+
+        private Object solution;
+        private float inverseFitness;
+
+        /**
+         * Initialization.
+         *
+         * @param solution Object that is the migrating solution.
+         * @param inverseFitness Float that is the inverse fitness of the
+         * solution.
+         */
+        Migrant(Object solution, float inverseFitness) {
+            this.solution = solution;
+            this.inverseFitness = inverseFitness;
+        }
+    }
+
+    /**
+     * This worker evolves a single island subpopulation.
+     */
+    class IslandWorker implements Runnable {
+
+        private int islandIndex;
+        private Random randa = new Random();
+        private double[] cumulativeProbs;
+        private Exception failure = null;
+
+        /**
+         * Initialization.
+         *
+         * @param islandIndex Index of the island to evolve.
+         */
+        IslandWorker(int islandIndex) {
+            this.islandIndex = islandIndex;
+        }
+
+        @Override
+        public void run() {
+            try {
+                evolve();
+            } catch (Exception e) {
+                failure = e;
             }
-            populations[islandIndex] = tempPopulation;
         }
-        Random randa = new Random();
-        while (!stop && ++iteration <= numIter) {
-            for (int islandIndex = 0; islandIndex < numIslands; islandIndex++) {
-                children = new Object[2 * populations[islandIndex].length];
-                inverseOffspringFitness[islandIndex] =
-                        new float[2 * populations[islandIndex].length];
-                cumulativeProbs[islandIndex] =
-                        new double[populations[islandIndex].length];
-                tempFitness = new float[populations[islandIndex].length];
+
+        /**
+         * Runs the evolution of the island.
+         *
+         * @throws Exception
+         */
+        private void evolve() throws Exception {
+            Object[] population = populations[islandIndex];
+            int popSize = population.length;
+            if (popSize == 0) {
+                return;
+            }
+            // First calculate the fitness of all the initial parents.
+            float[] fitness = evaluate(population);
+            int[] rearrange = AuxSort.sortIndexedValue(fitness, false);
+            Object[] sortedPopulation = new Object[popSize];
+            for (int i = 0; i < popSize; i++) {
+                sortedPopulation[i] = population[rearrange[i]];
+            }
+            populations[islandIndex] = sortedPopulation;
+            inversePopulationFitness[islandIndex] = fitness;
+            cumulativeProbs = new double[popSize];
+            int iteration = 0;
+            while (!stop && ++iteration <= numIter) {
+                receiveMigrants();
+                population = populations[islandIndex];
+                fitness = inversePopulationFitness[islandIndex];
+                double totalProb = updateSelectionProbabilities(fitness);
+                Object[] children = new Object[2 * popSize];
                 // Perform mutations.
-                for (int i = 0; i < populations[islandIndex].length; i++) {
-                    if (!stop) {
-                        children[i] =
-                                mutator.mutateNew(populations[islandIndex][i]);
-                        inverseOffspringFitness[islandIndex][i] =
-                                evaluate(children[i]);
-                    } else {
+                for (int i = 0; i < popSize; i++) {
+                    if (stop) {
                         return;
                     }
+                    children[i] = mutator.mutateNew(population[i]);
                 }
                 // Perform recombinations.
-                totalProbs[islandIndex] = 0;
-                cumulativeProbs[islandIndex][0] =
-                        Math.exp(-inversePopulationFitness[islandIndex][0]);
-                totalProbs[islandIndex] += cumulativeProbs[islandIndex][0];
-                for (int i = 1; i < populations[islandIndex].length; i++) {
-                    cumulativeProbs[islandIndex][i] =
-                            cumulativeProbs[islandIndex][i - 1]
-                            + Math.exp(
-                            -inversePopulationFitness[islandIndex][i]);
-                    totalProbs[islandIndex] += cumulativeProbs[islandIndex][i];
-                }
-                if (totalProbs[islandIndex] > 0) {
-                    for (int i = 0; i < populations[islandIndex].length; i++) {
-                        decision = randa.nextFloat() * totalProbs[islandIndex];
-                        first = findIndex(
-                                islandIndex,
-                                decision,
-                                0,
-                                populations[islandIndex].length - 1);
-                        second = first;
-                        int numTries = 0;
-                        while (second == first || numTries > 10) {
-                            decision = randa.nextFloat()
-                                    * totalProbs[islandIndex];
-                            second = findIndex(
-                                    islandIndex,
-                                    decision,
-                                    0,
-                                    populations[islandIndex].length - 1);
-                            numTries++;
-                        }
-                        children[populations[islandIndex].length + i] =
-                                recombiner.recombine(
-                                populations[islandIndex][first],
-                                populations[islandIndex][second]);
-                    }
-                } else {
-                    for (int i = 0; i < populations[islandIndex].length; i++) {
-                        first = randa.nextInt(populations[islandIndex].length);
-                        second = randa.nextInt(populations[islandIndex].length);
-                        int numTries = 0;
-                        while (second == first || numTries > 10) {
-                            second = randa.nextInt(
-                                    populations[islandIndex].length);
-                            numTries++;
-                        }
-                        children[populations[islandIndex].length + i] =
-                                recombiner.recombine(
-                                populations[islandIndex][first],
-                                populations[islandIndex][second]);
+                for (int i = 0; i < popSize; i++) {
+                    int first = select(totalProb, popSize);
+                    int second = first;
+                    int numTries = 0;
+                    while (second == first && numTries < 10 && popSize > 1) {
+                        second = select(totalProb, popSize);
+                        numTries++;
                     }
+                    children[popSize + i] = recombiner.recombine(
+                            population[first], population[second]);
                 }
-                for (int i = 0; i < children.length; i++) {
-                    if (!stop) {
-                        inverseOffspringFitness[islandIndex][i] =
-                                evaluate(children[i]);
-                    } else {
-                        return;
-                    }
+                if (stop) {
+                    return;
                 }
-                rearrange = AuxSort.sortIndexedValue(
-                        inverseOffspringFitness[islandIndex], false);
-                tempChildren = new Object[children.length];
+                float[] offspringFitness = evaluate(children);
+                rearrange = AuxSort.sortIndexedValue(offspringFitness, false);
+                Object[] sortedChildren = new Object[children.length];
                 for (int i = 0; i < children.length; i++) {
-                    tempChildren[i] = children[rearrange[i]];
+                    sortedChildren[i] = children[rearrange[i]];
                 }
-                children = tempChildren;
-                //now merge
-                int index = -1;
-                first = 0;
-                second = 0;
-                while (++index < populations[islandIndex].length) {
-                    if (inversePopulationFitness[islandIndex][first]
-                            < inverseOffspringFitness[islandIndex][second]) {
-                        tempPopulation[index] = populations[islandIndex][first];
-                        tempFitness[index] =
-                                inversePopulationFitness[islandIndex][first];
+                // Now merge the parents and the offspring.
+                Object[] newPopulation = new Object[popSize];
+                float[] newFitness = new float[popSize];
+                int first = 0;
+                int second = 0;
+                for (int index = 0; index < popSize; index++) {
+                    if (fitness[first] < offspringFitness[second]) {
+                        newPopulation[index] = population[first];
+                        newFitness[index] = fitness[first];
                         first++;
                     } else {
-                        tempPopulation[index] = children[second];
-                        tempFitness[index] =
-                                inverseOffspringFitness[islandIndex][second];
+                        newPopulation[index] = sortedChildren[second];
+                        newFitness[index] = offspringFitness[second];
                         second++;
                     }
                 }
-            }
-            // Perform migrations stochastically.
-            decision = randa.nextFloat();
-            if (decision < migrationProbability && numIslands > 1) {
-                for (int i = 0; i < migrationSize; i++) {
-                    int chosen;
-                    int searchSpot = -1;
-                    // Randomly pick the source and the destination.
-                    // The selected individual will attempt to migrate to the
-                    // destination if its fitness allows it.
-                    // The selection of the individual is fitness-proportional.
-                    first = randa.nextInt(numIslands);
-                    second = first;
-                    while (second == first) {
-                        second = randa.nextInt(numIslands);
-                    }
-                    if (totalProbs[first] > 0) {
-                        decision = randa.nextFloat() * totalProbs[first];
-                        chosen = findIndex(first, decision, 0,
-                                populations[first].length - 1);
-                    } else {
-                        chosen = randa.nextInt(populations[first].length);
-                    }
-                    // Now find a place (if any) to insert it into target
-                    // population.
-                    while (++searchSpot < populations[second].length
-                            && inversePopulationFitness[second][searchSpot]
-                            < inversePopulationFitness[first][chosen]) {
-                        // increment and search
-                    }
-                    if (searchSpot < populations[second].length) {
-                        totalProbs[second] -=
-                                Math.exp(-inversePopulationFitness[second][
-                                populations[second].length - 1]);
-                        totalProbs[second] +=
-                                Math.exp(
-                                -inversePopulationFitness[first][chosen]);
-                        for (int j = populations[second].length - 1;
-                                j > searchSpot; j--) {
-                            populations[second][j] = populations[second][j - 1];
-                            inversePopulationFitness[second][j] =
-                                    inversePopulationFitness[second][j - 1];
-                        }
-                        populations[second][searchSpot] =
-                                populations[first][chosen];
-                        inversePopulationFitness[second][searchSpot] =
-                                inversePopulationFitness[first][chosen];
-                        // Update the probabilities.
-                        cumulativeProbs[second][searchSpot] =
-                                Math.exp(
-                                -inversePopulationFitness[first][chosen]);
-                        for (int j = searchSpot + 1;
-                                j < populations[second].length; j++) {
-                            cumulativeProbs[second][j] =
-                                    cumulativeProbs[second][j - 1]
-                                    + Math.exp(
-                                    -inversePopulationFitness[second][j]);
-                        }
-                    }
+                populations[islandIndex] = newPopulation;
+                inversePopulationFitness[islandIndex] = newFitness;
+                // Perform migrations stochastically.
+                if (numIslands > 1
+                        && randa.nextFloat() < migrationProbability) {
+                    sendMigrants(updateSelectionProbabilities(newFitness));
                 }
+                islandIterations[islandIndex] = iteration;
             }
         }
-    }
 
-    /**
-     * Binary search for the index within island subpopulations.
-     *
-     * @param islandIndex Island index.
-     * @param searchValue Query value.
-     * @param first First index.
-     * @param second Second index.
-     * @return
-     */
-    private int findIndex(int islandIndex, double searchValue, int first,
-            int second) {
-        if (second - first <= 1) {
-            return second; //first isn't, so it must be second
+        /**
+         * Calculates the cumulative fitness-proportional selection
+         * probabilities for the current island population.
+         *
+         * @param fitness float[] of the sorted inverse fitness values.
+         * @return Double that is the total probability mass.
+         */
+        private double updateSelectionProbabilities(float[] fitness) {
+            // The best fitness is subtracted for numerical stability.
+            cumulativeProbs[0] = 1;
+            for (int i = 1; i < fitness.length; i++) {
+                cumulativeProbs[i] = cumulativeProbs[i - 1]
+                        + Math.exp(fitness[0] - fitness[i]);
+            }
+            return cumulativeProbs[fitness.length - 1];
         }
-        int middle = (first + second) / 2;
-        if (cumulativeProbs[islandIndex][middle] < searchValue) {
-            return findIndex(islandIndex, searchValue, middle, second);
-        } else {
-            return findIndex(islandIndex, searchValue, first, middle);
+
+        /**
+         * @param totalProb Double that is the total probability mass.
+         * @param popSize Integer that is the population size.
+         * @return Index of a fitness-proportionally selected solution.
+         */
+        private int select(double totalProb, int popSize) {
+            if (totalProb > 0 && !Double.isInfinite(totalProb)) {
+                return findIndex(cumulativeProbs,
+                        randa.nextDouble() * totalProb);
+            } else {
+                return randa.nextInt(popSize);
+            }
         }
-    }
 
-    /**
-     * Evaluates the fitness of the current solution and updates the best/worst
-     * solution fitness stats.
-     *
-     * @param instance
-     * @return
-     */
-    private float evaluate(Object instance) {
-        score = fe.evaluate(instance);
-        numEvaluatedInstances++;
-        if (score < bestScore) {
-            bestScore = score;
-            bestInstance = instance;
+        /**
+         * Sends fitness-proportionally selected solutions to randomly chosen
+         * other islands.
+         *
+         * @param totalProb Double that is the total probability mass.
+         */
+        private void sendMigrants(double totalProb) {
+            Object[] population = populations[islandIndex];
+            float[] fitness = inversePopulationFitness[islandIndex];
+            for (int i = 0; i < migrationSize; i++) {
+                int chosen = select(totalProb, population.length);
+                int target = randa.nextInt(numIslands - 1);
+                if (target >= islandIndex) {
+                    target++;
+                }
+                migrationQueues.get(target).offer(new Migrant(
+                        population[chosen], fitness[chosen]));
+            }
         }
-        if (score > worstScore) {
-            worstScore = score;
-            worstInstance = instance;
+
+        /**
+         * Inserts the queued migrants into the island population, if their
+         * fitness allows it.
+         */
+        private void receiveMigrants() {
+            Object[] population = populations[islandIndex];
+            float[] fitness = inversePopulationFitness[islandIndex];
+            ConcurrentLinkedQueue<Migrant> queue =
+                    migrationQueues.get(islandIndex);
+            Migrant migrant;
+            while ((migrant = queue.poll()) != null) {
+                int searchSpot = 0;
+                while (searchSpot < population.length
+                        && fitness[searchSpot] < migrant.inverseFitness) {
+                    searchSpot++;
+                }
+                if (searchSpot < population.length) {
+                    for (int j = population.length - 1; j > searchSpot; j--) {
+                        population[j] = population[j - 1];
+                        fitness[j] = fitness[j - 1];
+                    }
+                    population[searchSpot] = migrant.solution;
+                    fitness[searchSpot] = migrant.inverseFitness;
+                }
+            }
         }
-        totalScore += score;
-        return score;
     }
 
     @Override
@@ -340,6 +398,15 @@ public class GAIslandModel implements OptimizationAlgorithmInterface {
 
     @Override
     public int getIteration() {
+        if (islandIterations == null || islandIterations.length == 0) {
+            return 0;
+        }
+        // The slowest island determines the progress of the model.
+        int iteration = islandIterations[0];
+        for (int islandIndex = 1; islandIndex < islandIterations.length;
+                islandIndex++) {
+            iteration = Math.min(iteration, islandIterations[islandIndex]);
+        }
         return iteration;
     }
 
@@ -349,27 +416,27 @@ public class GAIslandModel implements OptimizationAlgorithmInterface {
     }
 
     @Override
-    public Object getBestInstance() {
+    public synchronized Object getBestInstance() {
         return bestInstance;
     }
 
     @Override
-    public float getBestFitness() {
+    public synchronized float getBestFitness() {
         return bestScore;
     }
 
     @Override
-    public Object getWorstInstance() {
+    public synchronized Object getWorstInstance() {
         return worstInstance;
     }
 
     @Override
-    public float getWorstFitness() {
+    public synchronized float getWorstFitness() {
         return worstScore;
     }
 
     @Override
-    public float getAverageFitness() {
+    public synchronized float getAverageFitness() {
         if (numEvaluatedInstances > 0) {
             return (float) (totalScore / (double) numEvaluatedInstances);
         } else {
@@ -20,6 +20,7 @@ import data.representation.DataInstance;
 import data.representation.DataSet;
 import java.util.ArrayList;
 import java.util.Random;
+import optimization.stochastic.fitness.BatchFitnessEvaluator;
 import optimization.stochastic.fitness.FitnessEvaluator;
 
 /**
@@ -227,12 +228,17 @@ public class PPPSO implements OptimizationAlgorithmInterface {
             }
             // Update prey instances.
             float bestIterScore = -Float.MAX_VALUE;
+            DataInstance[] newSolutions = new DataInstance[populationSize];
             for (int i = 0; i < populationSize; i++) {
-                DataInstance newSolution = applyVelocity(preyPopulation.get(i),
+                newSolutions[i] = applyVelocity(preyPopulation.get(i),
                         preyVelocities.get(i));
-                ensureProperValues(newSolution);
-                preyPopulation.set(i, newSolution);
-                score = evaluate(predatorInstance);
+                ensureProperValues(newSolutions[i]);
+                preyPopulation.set(i, newSolutions[i]);
+            }
+            float[] newScores = evaluate(newSolutions);
+            for (int i = 0; i < populationSize; i++) {
+                DataInstance newSolution = newSolutions[i];
+                score = newScores[i];
                 if (score > bestIterScore) {
                     bestIterScore = score;
                     indexOfBestThisIteration = i;
@@ -410,9 +416,11 @@ public class PPPSO implements OptimizationAlgorithmInterface {
         bestPreySolutions = new ArrayList<>(populationSize);
         bestPreyScores = new ArrayList<>(populationSize);
         float currBestScore = -Float.MAX_VALUE;
+        float[] preyScores = evaluate(preyPopulation.toArray(
+                new DataInstance[populationSize]));
         for (int i = 0; i < populationSize; i++) {
             bestPreySolutions.add(preyPopulation.get(i));
-            bestPreyScores.add(evaluate(preyPopulation.get(i)));
+            bestPreyScores.add(preyScores[i]);
             if (bestPreyScores.get(i) > currBestScore) {
                 currBestScore = bestPreyScores.get(i);
                 indexOfBestThisIteration = i;
@@ -466,6 +474,31 @@ public class PPPSO implements OptimizationAlgorithmInterface {
         totalScore += score;
         return score;
     }
+
+    /**
+     * Evaluates the fitness of a population of solutions, in parallel if the
+     * fitness evaluator is a BatchFitnessEvaluator, and updates the best/worst
+     * solution fitness stats.
+     *
+     * @param instances DataInstance[] of the solutions to evaluate.
+     * @return float[] of the solution fitness values.
+     */
+    private float[] evaluate(DataInstance[] instances) {
+        float[] scores = BatchFitnessEvaluator.evaluateAll(fe, instances);
+        for (int i = 0; i < instances.length; i++) {
+            numEvaluatedInstances++;
+            if (scores[i] < bestScore) {
+                bestScore = scores[i];
+                bestInstance = instances[i];
+            }
+            if (scores[i] > worstScore) {
+                worstScore = scores[i];
+                worstInstance = instances[i];
+            }
+            totalScore += scores[i];
+        }
+        return scores;
+    }
     
     @Override
     public void setNumIter(int numIter) {
@@ -0,0 +1,395 @@
+/**
+* Hub Miner: a hubness-aware machine learning experimentation library.
+* Copyright (C) 2014  Nenad Tomasev. Email: nenad.tomasev at gmail.com
+*
+* This program is free software: you can redistribute it and/or modify it under
+* the terms of the GNU General Public License as published by the Free Software
+* Foundation, either version 3 of the License, or (at your option) any later
+* version.
+*
+* This program is distributed in the hope that it will be useful, but WITHOUT
+* ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+* FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License along with
+* this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+package optimization.stochastic.fitness;
+
+import data.representation.DataInstance;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class wraps a FitnessEvaluator and evaluates whole populations of
+ * solutions on a pool of worker threads. The workers pick the solutions one by
+ * one from a shared counter, so that the load stays balanced when the
+ * evaluation times vary. The fitness of each evaluated genome is cached, so
+ * that duplicate solutions, both within a batch and across the batches, are
+ * only evaluated once. The genome of a DataInstance is given by its feature
+ * values and the genome of a primitive array by its contents, and these are
+ * copied into the cache keys, so they may be safely modified afterwards. Other
+ * solution objects are kept in the cache keys by reference and compared by
+ * their own equals and hashCode, so they must not be modified in place after
+ * being evaluated, as the cache would then return the fitness of the old
+ * genome. Such solutions should either be copied before they are modified or
+ * evaluated with the cache turned off. The wrapped evaluator needs to be safe
+ * to call from multiple threads if more than one thread is used.
+ *
+ * @author Nenad Tomasev <nenad.tomasev at gmail.com>
+ */
+public class BatchFitnessEvaluator implements FitnessEvaluator {
+
+    public static final int DEFAULT_MAX_CACHE_SIZE = 100000;
+    private FitnessEvaluator fe;
+    private int numThreads = 1;
+    private boolean useCache = true;
+    private int maxCacheSize = DEFAULT_MAX_CACHE_SIZE;
+    private ConcurrentHashMap<GenomeKey, Float> fitnessCache =
+            new ConcurrentHashMap<>();
+    private AtomicLong numCacheHits = new AtomicLong(0);
+    private AtomicLong numEvaluations = new AtomicLong(0);
+
+    /**
+     * Initialization.
+     *
+     * @param fe FitnessEvaluator to use for the individual solutions.
+     * @param numThreads Integer that is the number of worker threads.
+     */
+    public BatchFitnessEvaluator(FitnessEvaluator fe, int numThreads) {
+        this.fe = fe;
+        this.numThreads = Math.max(1, numThreads);
+    }
+
+    /**
+     * @param useCache Boolean flag indicating whether to cache the fitness of
+     * the evaluated genomes.
+     */
+    public void setUseCache(boolean useCache) {
+        this.useCache = useCache;
+        if (!useCache) {
+            fitnessCache.clear();
+        }
+    }
+
+    /**
+     * @param maxCacheSize Integer that is the maximal number of cached
+     * genomes. The cache is cleared once it grows beyond this size.
+     */
+    public void setMaxCacheSize(int maxCacheSize) {
+        this.maxCacheSize = maxCacheSize;
+    }
+
+    /**
+     * @return FitnessEvaluator that is used for the individual solutions.
+     */
+    public FitnessEvaluator getWrappedEvaluator() {
+        return fe;
+    }
+
+    /**
+     * @return Long that is the number of evaluations served from the cache.
+     */
+    public long getNumCacheHits() {
+        return numCacheHits.get();
+    }
+
+    /**
+     * @return Long that is the number of evaluations of the wrapped
+     * evaluator.
+     */
+    public long getNumEvaluations() {
+        return numEvaluations.get();
+    }
+
+    /**
+     * Clears the fitness cache.
+     */
+    public void clearCache() {
+        fitnessCache.clear();
+    }
+
+    @Override
+    public float evaluate(Object solution) {
+        if (!useCache) {
+            numEvaluations.incrementAndGet();
+            return fe.evaluate(solution);
+        }
+        GenomeKey key = new GenomeKey(solution);
+        Float cached = fitnessCache.get(key);
+        if (cached != null) {
+            numCacheHits.incrementAndGet();
+            return cached;
+        }
+        numEvaluations.incrementAndGet();
+        float fitness = fe.evaluate(solution);
+        cacheFitness(key, fitness);
+        return fitness;
+    }
+
+    /**
+     * Evaluates a population of solutions in parallel.
+     *
+     * @param solutions Object[] that is the population of solutions.
+     * @return float[] of the solution fitness values.
+     */
+    public float[] evaluateBatch(Object[] solutions) {
+        return evaluateBatch(solutions, 0, solutions.length);
+    }
+
+    /**
+     * Evaluates a range of solutions in parallel. If an evaluation fails, its
+     * exception is re-thrown once all the workers are done.
+     *
+     * @param solutions Object[] that is the population of solutions.
+     * @param start Integer that is the first index to evaluate.
+     * @param end Integer that is the end of the index range to evaluate.
+     * @return float[] of the fitness values of the solutions in the range.
+     */
+    public float[] evaluateBatch(Object[] solutions, int start, int end) {
+        int batchSize = Math.max(0, end - start);
+        float[] fitness = new float[batchSize];
+        // The solutions that need to be evaluated, with the duplicates within
+        // the batch mapped to their first occurrence.
+        int[] firstOccurrence = new int[batchSize];
+        int[] pending = new int[batchSize];
+        int numPending = 0;
+        GenomeKey[] keys = null;
+        if (useCache) {
+            keys = new GenomeKey[batchSize];
+            HashMap<GenomeKey, Integer> batchIndexes = new HashMap<>(
+                    2 * batchSize);
+            for (int i = 0; i < batchSize; i++) {
+                keys[i] = new GenomeKey(solutions[start + i]);
+                Float cached = fitnessCache.get(keys[i]);
+                if (cached != null) {
+                    numCacheHits.incrementAndGet();
+                    fitness[i] = cached;
+                    firstOccurrence[i] = i;
+                    continue;
+                }
+                Integer first = batchIndexes.get(keys[i]);
+                if (first != null) {
+                    numCacheHits.incrementAndGet();
+                    firstOccurrence[i] = first;
+                } else {
+                    batchIndexes.put(keys[i], i);
+                    firstOccurrence[i] = i;
+                    pending[numPending++] = i;
+                }
+            }
+        } else {
+            for (int i = 0; i < batchSize; i++) {
+                firstOccurrence[i] = i;
+                pending[numPending++] = i;
+            }
+        }
+        int threadNum = Math.max(1, Math.min(numThreads, numPending));
+        AtomicInteger nextPending = new AtomicInteger(0);
+        boolean[] evaluated = new boolean[batchSize];
+        EvaluationWorker[] workers = new EvaluationWorker[threadNum];
+        for (int t = 0; t < threadNum; t++) {
+            workers[t] = new EvaluationWorker(solutions, start, fitness,
+                    evaluated, pending, numPending, nextPending);
+        }
+        if (threadNum == 1) {
+            workers[0].run();
+        } else {
+            Thread[] threads = new Thread[threadNum];
+            for (int t = 0; t < threadNum; t++) {
+                threads[t] = new Thread(workers[t]);
+                threads[t].start();
+            }
+            for (int t = 0; t < threadNum; t++) {
+                try {
+                    threads[t].join();
+                } catch (Throwable thr) {
+                    System.err.println(thr.getMessage());
+                }
+            }
+        }
+        // Only the solutions that were actually evaluated are counted and
+        // cached, as a failed worker leaves the rest of its slots empty.
+        for (int p = 0; p < numPending; p++) {
+            if (evaluated[pending[p]]) {
+                numEvaluations.incrementAndGet();
+                if (useCache) {
+                    cacheFitness(keys[pending[p]], fitness[pending[p]]);
+                }
+            }
+        }
+        for (EvaluationWorker worker : workers) {
+            if (worker.failure instanceof Error) {
+                throw (Error) worker.failure;
+            } else if (worker.failure != null) {
+                throw (RuntimeException) worker.failure;
+            }
+        }
+        for (int i = 0; i < batchSize; i++) {
+            if (firstOccurrence[i] != i) {
+                fitness[i] = fitness[firstOccurrence[i]];
+            }
+        }
+        return fitness;
+    }
+
+    /**
+     * Evaluates a population of solutions by the provided evaluator, in
+     * parallel if it is a BatchFitnessEvaluator and sequentially otherwise.
+     *
+     * @param fe FitnessEvaluator object.
+     * @param solutions Object[] that is the population of solutions.
+     * @return float[] of the solution fitness values.
+     */
+    public static float[] evaluateAll(FitnessEvaluator fe,
+            Object[] solutions) {
+        if (fe instanceof BatchFitnessEvaluator) {
+            return ((BatchFitnessEvaluator) fe).evaluateBatch(solutions);
+        }
+        float[] fitness = new float[solutions.length];
+        for (int i = 0; i < solutions.length; i++) {
+            fitness[i] = fe.evaluate(solutions[i]);
+        }
+        return fitness;
+    }
+
+    /**
+     * @param key GenomeKey of the evaluated genome.
+     * @param fitness Float that is the fitness of the genome.
+     */
+    private void cacheFitness(GenomeKey key, float fitness) {
+        if (fitnessCache.size() >= maxCacheSize) {
+            fitnessCache.clear();
+        }
+        fitnessCache.put(key, fitness);
+    }
+
+    /**
+     * This worker evaluates the pending solutions until there are none left.
+     * If an evaluation fails, the worker stops all the workers of the batch
+     * and keeps the failure, so that it can be re-thrown after the join.
+     */
+    class EvaluationWorker implements Runnable {
+
+        private Object[] solutions;
+        private int offset;
+        private float[] fitness;
+        private boolean[] evaluated;
+        private int[] pending;
+        private int numPending;
+        private AtomicInteger nextPending;
+        // The exception or error that stopped the worker, if any. The
+        // evaluators throw no checked exceptions.
+        Throwable failure;
+
+        /**
+         * Initialization.
+         *
+         * @param solutions Object[] that is the population of solutions.
+         * @param offset Integer that is the index of the first batch solution.
+         * @param fitness float[] to write the fitness values to.
+         * @param evaluated boolean[] to mark the evaluated batch indexes in.
+         * @param pending int[] of the batch indexes to evaluate.
+         * @param numPending Integer that is the number of pending indexes.
+         * @param nextPending AtomicInteger that is the shared position in the
+         * pending indexes.
+         */
+        public EvaluationWorker(Object[] solutions, int offset,
+                float[] fitness, boolean[] evaluated, int[] pending,
+                int numPending, AtomicInteger nextPending) {
+            this.solutions = solutions;
+            this.offset = offset;
+            this.fitness = fitness;
+            this.evaluated = evaluated;
+            this.pending = pending;
+            this.numPending = numPending;
+            this.nextPending = nextPending;
+        }
+
+        @Override
+        public void run() {
+            int p;
+            try {
+                while ((p = nextPending.getAndIncrement()) < numPending) {
+                    int i = pending[p];
+                    fitness[i] = fe.evaluate(solutions[offset + i]);
+                    evaluated[i] = true;
+                }
+            } catch (Throwable thr) {
+                failure = thr;
+                nextPending.set(numPending);
+            }
+        }
+    }
+
+    /**
+     * A hashable copy of the genome of a solution. The solutions that are not
+     * DataInstance objects or primitive arrays are not copied, but referenced.
+     */
+    static class GenomeKey {
+
+        private Object solution;
+        private float[] fValues;
+        private int[] iValues;
+        private String[] sValues;
+        private double[] dValues;
+        private int hash;
+
+        /**
+         * Initialization.
+         *
+         * @param solution Object that is the solution.
+         */
+        public GenomeKey(Object solution) {
+            if (solution instanceof DataInstance) {
+                DataInstance instance = (DataInstance) solution;
+                float[] floats = instance.getFloatArray();
+                fValues = floats != null ? floats.clone() : null;
+                iValues = instance.iAttr != null ? instance.iAttr.clone()
+                        : null;
+                sValues = instance.sAttr != null ? instance.sAttr.clone()
+                        : null;
+            } else if (solution instanceof float[]) {
+                fValues = ((float[]) solution).clone();
+            } else if (solution instanceof int[]) {
+                iValues = ((int[]) solution).clone();
+            } else if (solution instanceof double[]) {
+                dValues = ((double[]) solution).clone();
+            } else {
+                this.solution = solution;
+            }
+            hash = 31 * (31 * (31 * Arrays.hashCode(fValues)
+                    + Arrays.hashCode(iValues)) + Arrays.hashCode(sValues))
+                    + Arrays.hashCode(dValues);
+            if (this.solution != null) {
+                hash = 31 * hash + this.solution.hashCode();
+            }
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof GenomeKey)) {
+                return false;
+            }
+            GenomeKey key = (GenomeKey) other;
+            if (hash != key.hash) {
+                return false;
+            }
+            if (solution != null || key.solution != null) {
+                return solution != null && solution.equals(key.solution);
+            }
+            return Arrays.equals(fValues, key.fValues)
+                    && Arrays.equals(iValues, key.iValues)
+                    && Arrays.equals(sValues, key.sValues)
+                    && Arrays.equals(dValues, key.dValues);
+        }
+    }
+}
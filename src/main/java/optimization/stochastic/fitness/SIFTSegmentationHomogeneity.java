@@ -50,11 +50,6 @@ public class SIFTSegmentationHomogeneity implements FitnessEvaluator {
     private int[] numSegments;
     private int minClusters = 10;
     private int maxClusters = 15;
-    private float avgTotalEnt;
-    private float avgImgEnt = 0;
-    private float[][] segmentClassDistr;
-    private int[] segmentTotals;
-    private int numNonEmptySegs;
 
     /**
      * @param inImagesDir Directory containing the target images.
@@ -189,12 +184,18 @@ public class SIFTSegmentationHomogeneity implements FitnessEvaluator {
     public float evaluate(Object o) {
         DataInstance original = (DataInstance) o;
         ClusteringAlg clusterer;
-        float alpha = original.fAttr[0];
-        float beta = original.fAttr[1];
-        float gamma = original.fAttr[2];
+        float alpha = original.getFloatValue(0);
+        float beta = original.getFloatValue(1);
+        float gamma = original.getFloatValue(2);
         int x, y;
         int segmentIndex;
-        avgTotalEnt = 0;
+        // The evaluation state is kept locally, so that the solutions can be
+        // evaluated concurrently.
+        float avgTotalEnt = 0;
+        float avgImgEnt = 0;
+        float[][] segmentClassDistr;
+        int[] segmentTotals;
+        int numNonEmptySegs;
         if (minClusters != -1 && maxClusters != -1) {
             for (int numClust = minClusters; numClust <= maxClusters;
                     numClust++) {
@@ -24,9 +24,6 @@ import data.neighbors.NeighborSetFinder;
 import data.representation.DataSet;
 import distances.primary.CombinedMetric;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.Random;
 import data.neighbors.NSFUserInterface;
 
@@ -104,152 +101,10 @@ public class CNN extends InstanceSelector implements NSFUserInterface {
     @Override
     public void calculatePrototypeHubness(int k) throws Exception {
         if (nsf != null) {
-            // We exploit the information that is available in the nsf.
-            this.setNeighborhoodSize(k);
-            if (k <= 0) {
-                return;
-            }
-            DataSet originalDataSet = getOriginalDataSet();
-            int[][] kns = nsf.getKNeighbors();
-            float[][] kd = nsf.getKDistances();
-            int[][] kneighbors = new int[originalDataSet.size()][k];
-            int kNSF = kns[0].length;
-            HashMap<Integer, Integer> protoMap =
-                    new HashMap<>(getPrototypeIndexes().size() * 2);
-            ArrayList<Integer> protoIndexes = getPrototypeIndexes();
-            for (int i = 0; i < protoIndexes.size(); i++) {
-                protoMap.put(protoIndexes.get(i), i);
-            }
-            int l;
-            int datasize = originalDataSet.size();
-            float[][] kdistances = new float[datasize][k];
-            int[] kcurrLen = new int[datasize];
-            float[][] distMatrix = nsf.getDistances();
-            // Auxiliary array for fast restricted kNN search.
-            ArrayList<Integer> intervals;
-            int upper, lower;
-            int min, max;
-            for (int i = 0; i < originalDataSet.size(); i++) {
-                intervals = new ArrayList(k + 2);
-                intervals.add(-1);
-                for (int j = 0; j < kNSF; j++) {
-                    if (protoMap.containsKey(kns[i][j])) {
-                        kneighbors[i][kcurrLen[i]] = protoMap.get(kns[i][j]);
-                        kdistances[i][kcurrLen[i]] = kd[i][j];
-                        kcurrLen[i]++;
-                        intervals.add(kns[i][j]);
-                    }
-                    if (kcurrLen[i] >= k) {
-                        break;
-                    }
-                }
-                intervals.add(datasize + 1);
-                Collections.sort(intervals);
-                if (kcurrLen[i] < k) {
-                    int iSizeRed = intervals.size() - 1;
-                    // The loop needs to iterate one less than to the end, as
-                    // the last limitation is there, so there are no elements
-                    // beyond.
-                    for (int ind = 0; ind < iSizeRed; ind++) {
-                        lower = intervals.get(ind);
-                        upper = intervals.get(ind + 1);
-                        for (int j = lower + 1; j < upper - 1; j++) {
-                            if (i != j && protoMap.containsKey(j)) {
-                                min = Math.min(i, j);
-                                max = Math.max(i, j);
-                                if (kcurrLen[i] > 0) {
-                                    if (kcurrLen[i] == k) {
-                                        if (distMatrix[min][max - min - 1]
-                                                < kdistances[i][
-                                                        kcurrLen[i] - 1]) {
-                                            // Search to see where to insert.
-                                            l = k - 1;
-                                            while ((l >= 1) && distMatrix[min][
-                                                    max - min - 1] < kdistances[
-                                                    i][l - 1]) {
-                                                kdistances[i][l] =
-                                                        kdistances[i][l - 1];
-                                                kneighbors[i][l] = kneighbors[
-                                                        i][l - 1];
-                                                l--;
-                                            }
-                                            kdistances[i][l] =
-                                                    distMatrix[min][
-                                                            max - min - 1];
-                                            kneighbors[i][l] =
-                                                    protoMap.get(j);
-                                        }
-                                    } else {
-                                        if (distMatrix[min][max - min - 1]
-                                                < kdistances[i][
-                                                        kcurrLen[i] - 1]) {
-                                            // Search to see where to insert.
-                                            l = kcurrLen[i] - 1;
-                                            kdistances[i][kcurrLen[i]] =
-                                                    kdistances[i][
-                                                            kcurrLen[i] - 1];
-                                            kneighbors[i][kcurrLen[i]] =
-                                                    kneighbors[i][
-                                                            kcurrLen[i] - 1];
-                                            while ((l >= 1) && distMatrix[min][
-                                                    max - min - 1] < kdistances[
-                                                            i][l - 1]) {
-                                                kdistances[i][l] =
-                                                        kdistances[i][l - 1];
-                                                kneighbors[i][l] =
-                                                        kneighbors[i][l - 1];
-                                                l--;
-                                            }
-                                            kdistances[i][l] = distMatrix[min][
-                                                    max - min - 1];
-                                            kneighbors[i][l] = protoMap.get(j);
-                                            kcurrLen[i]++;
-                                        } else {
-                                            kdistances[i][kcurrLen[i]] =
-                                                    distMatrix[min][
-                                                            max - min - 1];
-                                            kneighbors[i][kcurrLen[i]] =
-                                                    protoMap.get(j);
-                                            kcurrLen[i]++;
-                                        }
-                                    }
-                                } else {
-                                    kdistances[i][0] =
-                                            distMatrix[min][max - min - 1];
-                                    kneighbors[i][0] = protoMap.get(j);
-                                    kcurrLen[i] = 1;
-                                }
-                            }
-                        }
-                    }
-                }
-            }
-            // Initialize hubness-related data arrays.
-            int numClasses = getNumClasses();
-            int[] protoHubness = new int[protoIndexes.size()];
-            int[] protoGoodHubness = new int[protoIndexes.size()];
-            int[] protoBadHubness = new int[protoIndexes.size()];
-            int[][] protoClassHubness =
-                    new int[numClasses][protoIndexes.size()];
-            setPrototypeHubness(protoHubness);
-            setPrototypeGoodHubness(protoGoodHubness);
-            setPrototypeBadHubness(protoBadHubness);
-            setProtoClassHubness(protoClassHubness);
-            int currLabel;
-            for (int i = 0; i < datasize; i++) {
-                currLabel = originalDataSet.getLabelOf(i);
-                for (int j = 0; j < k; j++) {
-                    if (currLabel == originalDataSet.getLabelOf(
-                            protoIndexes.get(kneighbors[i][j]))) {
-                        protoGoodHubness[kneighbors[i][j]]++;
-                    } else {
-                        protoBadHubness[kneighbors[i][j]]++;
-                    }
-                    protoHubness[kneighbors[i][j]]++;
-                    protoClassHubness[currLabel][kneighbors[i][j]]++;
-                }
-            }
-            setProtoNeighborSets(kneighbors);
+            // The prototype kNN sets are obtained from the incremental
+            // nearest prototype index, which re-uses the existing kNN graph.
+            calculatePrototypeHubnessIndexed(k, nsf.getDistances(),
+                    nsf.getKNeighbors());
         } else {
             setNeighborhoodSize(k);
             DataSet original = getOriginalDataSet();
@@ -314,7 +169,7 @@ public class CNN extends InstanceSelector implements NSFUserInterface {
         for (int c = 0; c < numClasses; c++) {
             classes[c] = new ArrayList<>((datasize * 3) / numClasses);
         }
-        int currClass, protoClass;
+        int currClass;
         for (int i = 0; i < datasize; i++) {
             currClass = originalDataSet.getLabelOf(i);
             classes[currClass].add(i);
@@ -322,44 +177,22 @@ public class CNN extends InstanceSelector implements NSFUserInterface {
         Random randa = new Random();
         ArrayList<Integer> pIndexes =
                 new ArrayList<>(originalDataSet.size() / 4);
-        HashMap<Integer, Integer> protoMap = new HashMap<>(datasize);
         int choice;
         for (int c = 0; c < numClasses; c++) {
             if (classes[c].size() > 0) {
                 choice = randa.nextInt(classes[c].size());
                 pIndexes.add(classes[c].get(choice));
-                protoMap.put(classes[c].get(choice), c);
-            }
-        }
-        // The first run is to get the initial nearest friend and enemy values.
-        int min, max;
-        nearestProtoFriendDist = new float[datasize];
-        nearestProtoEnemyDist = new float[datasize];
-        Arrays.fill(nearestProtoFriendDist, Float.MAX_VALUE);
-        Arrays.fill(nearestProtoEnemyDist, Float.MAX_VALUE);
-        for (int i = 0; i < datasize; i++) {
-            currClass = originalDataSet.getLabelOf(i);
-            if (!protoMap.containsKey(i)) {
-                for (int pIndex : pIndexes) {
-                    protoClass = originalDataSet.getLabelOf(pIndex);
-                    min = Math.min(i, pIndex);
-                    max = Math.max(i, pIndex);
-                    if (currClass == protoClass) {
-                        if (distMat[min][max - min - 1]
-                                < nearestProtoFriendDist[i]) {
-                            nearestProtoFriendDist[i] =
-                                    distMat[min][max - min - 1];
-                        }
-                    } else {
-                        if (distMat[min][max - min - 1]
-                                < nearestProtoEnemyDist[i]) {
-                            nearestProtoEnemyDist[i] =
-                                    distMat[min][max - min - 1];
-                        }
-                    }
-                }
             }
         }
+        // The nearest friend and enemy distances are maintained by the
+        // incremental nearest prototype index, which updates them in parallel
+        // as the prototypes are inserted.
+        PrototypeNeighborIndex protoIndex = new PrototypeNeighborIndex(distMat,
+                originalDataSet.obtainLabelArray(), getNeighborhoodSize(),
+                nsf != null ? nsf.getKNeighbors() : null);
+        protoIndex.initialize(pIndexes);
+        nearestProtoFriendDist = protoIndex.getNearestFriendDistances();
+        nearestProtoEnemyDist = protoIndex.getNearestEnemyDistances();
         boolean notDone = true;
         ArrayList<Integer> unAbsorbed;
         while (notDone) {
@@ -367,7 +200,7 @@ public class CNN extends InstanceSelector implements NSFUserInterface {
             unAbsorbed = new ArrayList<>(
                     Math.max((datasize - pIndexes.size()) / 3, 5));
             for (int i = 0; i < datasize; i++) {
-                if (!protoMap.containsKey(i)) {
+                if (!protoIndex.isPrototype(i)) {
                     if (!((nearestProtoEnemyDist[i]
                             - nearestProtoFriendDist[i]) > 0)) {
                         // Not absorbed.
@@ -378,34 +211,16 @@ public class CNN extends InstanceSelector implements NSFUserInterface {
             }
             if (unAbsorbed.size() > 0) {
                 choice = unAbsorbed.get(randa.nextInt(unAbsorbed.size()));
-                protoMap.put(choice, originalDataSet.getLabelOf(choice));
                 pIndexes.add(choice);
-                protoClass = originalDataSet.getLabelOf(choice);
-                for (int i = 0; i < datasize; i++) {
-                    if (!protoMap.containsKey(i)) {
-                        min = Math.min(choice, i);
-                        max = Math.max(choice, i);
-                        currClass = originalDataSet.getLabelOf(i);
-                        if (currClass == protoClass) {
-                            if (distMat[min][max - min - 1]
-                                    < nearestProtoFriendDist[i]) {
-                                nearestProtoFriendDist[i] =
-                                        distMat[min][max - min - 1];
-                            }
-                        } else {
-                            if (distMat[min][max - min - 1]
-                                    < nearestProtoEnemyDist[i]) {
-                                nearestProtoEnemyDist[i] =
-                                        distMat[min][max - min - 1];
-                            }
-                        }
-                    }
-                }
+                // Update the nearest friend and enemy distances and the
+                // prototype neighborhoods.
+                protoIndex.insertPrototype(choice);
             }
         }
         // Set the selected prototype indexes and sort them.
         setPrototypeIndexes(pIndexes);
         sortSelectedIndexes();
+        setPrototypeNeighborIndex(protoIndex);
     }
 
     @Override
@@ -25,7 +25,6 @@ import data.neighbors.NeighborSetFinder;
 import data.representation.DataSet;
 import distances.primary.CombinedMetric;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.Random;
 import statistics.HigherMoments;
@@ -209,186 +208,14 @@ public class ENRBF extends InstanceSelector implements NSFUserInterface {
     @Override
     public void calculatePrototypeHubness(int k) throws Exception {
         if (nsf != null) {
-            // Here we have some prior neighbor occurrence information and we
-            // can re-use it to speed-up the top k prototype search.
-            this.setNeighborhoodSize(k);
-            if (k <= 0) {
-                return;
-            }
-            DataSet originalDataSet = getOriginalDataSet();
-            // The original k-neighbor information is used in order to speed up
-            // the top-k prototype calculations, in those cases where these
-            // prototypes are already known to occur as neighbors.
-            // These occurrences are re-used dynamically.
-            int[][] kns = nsf.getKNeighbors();
-            float[][] kd = nsf.getKDistances();
-            // Array that holds the kneighbors where only prototypes are allowed
-            // as neighbor points.
-            int[][] kneighbors = new int[originalDataSet.size()][k];
-            int kNSF = kns[0].length;
-            HashMap<Integer, Integer> protoMap =
-                    new HashMap<>(getPrototypeIndexes().size() * 2);
-            ArrayList<Integer> protoIndexes = getPrototypeIndexes();
-            // Fill the HashMap with indexes of selected prototype points.
-            for (int i = 0; i < protoIndexes.size(); i++) {
-                protoMap.put(protoIndexes.get(i), i);
-            }
-            int l;
-            int datasize = originalDataSet.size();
-            // Distances to k-closest prototypes for each point from the
-            // training data.
-            float[][] kdistances = new float[datasize][k];
-            // Temporary lengths of k-neighbor lists as they are being
-            // calculated.
-            int[] kcurrLen = new int[datasize];
-            // Distance matrix.
-            float[][] distMatrix = nsf.getDistances();
-            // Intervals are there to help with re-using existing neighbors, in
-            // order to speed up the calculations and simplify the code.
-            ArrayList<Integer> intervals;
-            int upper, lower;
-            int min, max;
-            for (int i = 0; i < datasize; i++) {
-                intervals = new ArrayList(k + 2);
-                // Looping is from interval indexes + 1, so -1 goes as the left
-                // limit. All prototype occurrences from the original kNN sets
-                // are inserted into the intervals list.
-                intervals.add(-1);
-                for (int j = 0; j < kNSF; j++) {
-                    if (protoMap.containsKey(kns[i][j])) {
-                        // What we insert as a neighbor is not the prototype
-                        // index within the original data, but rather among the
-                        // prototype array.
-                        kneighbors[i][kcurrLen[i]] = protoMap.get(kns[i][j]);
-                        kdistances[i][kcurrLen[i]] = kd[i][j];
-                        kcurrLen[i]++;
-                        // We insert the originalDataSet prototype index to the
-                        // intervals.
-                        intervals.add(kns[i][j]);
-                    }
-                    // If the original kNSF was larger than this neighborhood
-                    // size, we need to make sure not to exceed the k limit.
-                    if (kcurrLen[i] >= k) {
-                        break;
-                    }
-                }
-                intervals.add(datasize + 1);
-                // We sort the known prototype neighbor indexes.
-                Collections.sort(intervals);
-                // If we haven't already finished, we proceed with the nearest
-                // prototype search.
-                if (kcurrLen[i] < k) {
-                    // It needs to iterate one less than to the very end, as the
-                    // last limitation is there, so there are no elements beyond
-                    int iSizeRed = intervals.size() - 1;
-                    for (int ind = 0; ind < iSizeRed; ind++) {
-                        lower = intervals.get(ind);
-                        upper = intervals.get(ind + 1);
-                        for (int j = lower + 1; j < upper - 1; j++) {
-                            // If the point is a prototype and different from
-                            // current.
-                            if (i != j && protoMap.containsKey(j)) {
-                                min = Math.min(i, j);
-                                max = Math.max(i, j);
-                                if (kcurrLen[i] > 0) {
-                                    if (kcurrLen[i] == k) {
-                                        if (distMatrix[min][max - min - 1]
-                                                < kdistances[i][
-                                                        kcurrLen[i] - 1]) {
-                                            // Search to see where to insert.
-                                            l = k - 1;
-                                            while ((l >= 1)
-                                                    && distMatrix[min][
-                                                    max - min - 1]
-                                                    < kdistances[i][l - 1]) {
-                                                kdistances[i][l] =
-                                                        kdistances[i][l - 1];
-                                                kneighbors[i][l] =
-                                                        kneighbors[i][l - 1];
-                                                l--;
-                                            }
-                                            kdistances[i][l] =
-                                                    distMatrix[min][
-                                                    max - min - 1];
-                                            kneighbors[i][l] = protoMap.get(j);
-                                        }
-                                    } else {
-                                        if (distMatrix[min][max - min - 1]
-                                                < kdistances[i][
-                                                        kcurrLen[i] - 1]) {
-                                            //search to see where to insert
-                                            l = kcurrLen[i] - 1;
-                                            kdistances[i][kcurrLen[i]] =
-                                                    kdistances[i][
-                                                            kcurrLen[i] - 1];
-                                            kneighbors[i][kcurrLen[i]] =
-                                                    kneighbors[i][
-                                                            kcurrLen[i] - 1];
-                                            while ((l >= 1)
-                                                    && distMatrix[min][
-                                                    max - min - 1]
-                                                    < kdistances[i][l - 1]) {
-                                                kdistances[i][l] =
-                                                        kdistances[i][l - 1];
-                                                kneighbors[i][l] =
-                                                        kneighbors[i][l - 1];
-                                                l--;
-                                            }
-                                            kdistances[i][l] =
-                                                    distMatrix[min][
-                                                    max - min - 1];
-                                            kneighbors[i][l] = protoMap.get(j);
-                                            kcurrLen[i]++;
-                                        } else {
-                                            kdistances[i][kcurrLen[i]] =
-                                                    distMatrix[min][
-                                                    max - min - 1];
-                                            kneighbors[i][kcurrLen[i]] =
-                                                    protoMap.get(j);
-                                            kcurrLen[i]++;
-                                        }
-                                    }
-                                } else {
-                                    kdistances[i][0] =
-                                            distMatrix[min][max - min - 1];
-                                    kneighbors[i][0] = protoMap.get(j);
-                                    kcurrLen[i] = 1;
-                                }
-                            }
-                        }
-                    }
-                }
-            }
-            int numClasses = getNumClasses();
-            // Prototype occurrence frequency array.
-            int[] protoHubness = new int[protoIndexes.size()];
-            // Prototype good occurrence frequency array.
-            int[] protoGoodHubness = new int[protoIndexes.size()];
-            // Prototype detrimental occurrence frequency array.
-            int[] protoBadHubness = new int[protoIndexes.size()];
-            // Prototype class-conditional neighbor occurrence frequencies.
-            int[][] protoClassHubness =
-                    new int[numClasses][protoIndexes.size()];
-            setPrototypeHubness(protoHubness);
-            setPrototypeGoodHubness(protoGoodHubness);
-            setPrototypeBadHubness(protoBadHubness);
-            setProtoClassHubness(protoClassHubness);
-            int currLabel;
-            // Loop through the top-k prototype sets once.
-            for (int i = 0; i < datasize; i++) {
-                currLabel = originalDataSet.getLabelOf(i);
-                for (int j = 0; j < k; j++) {
-                    if (currLabel == originalDataSet.getLabelOf(
-                            protoIndexes.get(kneighbors[i][j]))) {
-                        protoGoodHubness[kneighbors[i][j]]++;
-                    } else {
-                        protoBadHubness[kneighbors[i][j]]++;
-                    }
-                    protoHubness[kneighbors[i][j]]++;
-                    protoClassHubness[currLabel][kneighbors[i][j]]++;
-                }
-            }
-            setProtoNeighborSets(kneighbors);
+            // The prototype kNN sets are obtained from the incremental
+            // nearest prototype index, which re-uses the existing kNN graph.
+            calculatePrototypeHubnessIndexed(k, nsf.getDistances(),
+                    nsf.getKNeighbors());
+        } else if (distMat != null) {
+            // The distance matrix that the filtering was based on is enough
+            // for the incremental nearest prototype index.
+            calculatePrototypeHubnessIndexed(k, distMat, null);
         } else {
             // In this case, no prior neighbor information is available, so
             // we just proceed in a simple way.
@@ -422,7 +249,7 @@ public class ENRBF extends InstanceSelector implements NSFUserInterface {
                 for (int nIndex : kneighbors[i]) {
                     protoClassHubness[currLabel][nIndex]++;
                     protoHubness[nIndex]++;
-                    protoLabel = originalDataSet.getLabelOf(nIndex);
+                    protoLabel = tCol.getLabelOf(nIndex);
                     if (protoLabel == currLabel) {
                         protoGoodHubness[nIndex]++;
                     } else {
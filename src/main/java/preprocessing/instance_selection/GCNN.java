@@ -23,9 +23,7 @@ import data.neighbors.NeighborSetFinder;
 import data.representation.DataSet;
 import distances.primary.CombinedMetric;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.Random;
 import data.neighbors.NSFUserInterface;
 
@@ -197,7 +195,7 @@ public class GCNN extends InstanceSelector implements NSFUserInterface {
         for (int c = 0; c < numClasses; c++) {
             classes[c] = new ArrayList<>((datasize * 3) / numClasses);
         }
-        int currClass, protoClass;
+        int currClass;
         for (int i = 0; i < datasize; i++) {
             currClass = original.getLabelOf(i);
             classes[currClass].add(i);
@@ -205,8 +203,6 @@ public class GCNN extends InstanceSelector implements NSFUserInterface {
         Random randa = new Random();
         // List that will contain the selected prototype indexes.
         ArrayList<Integer> pIndexes = new ArrayList<>(original.size() / 4);
-        // Map that will indicate which points are prototypes.
-        HashMap<Integer, Integer> protoMap = new HashMap<>(datasize);
         // Select a few points from each class randomly to represent an initial
         // prototype set that will be incrementally grown.
         int choice;
@@ -214,43 +210,22 @@ public class GCNN extends InstanceSelector implements NSFUserInterface {
             if (classes[c].size() > 0) {
                 choice = randa.nextInt(classes[c].size());
                 pIndexes.add(classes[c].get(choice));
-                protoMap.put(classes[c].get(choice), c);
-            }
-        }
-        // The first run is to get the initial nearest friend and enemy values.
-        // In this context, friends have the same class label, enemies a
-        // different one.
-        int min, max;
-        nearestProtoFriendDist = new float[datasize];
-        nearestProtoEnemyDist = new float[datasize];
-        Arrays.fill(nearestProtoFriendDist, Float.MAX_VALUE);
-        Arrays.fill(nearestProtoEnemyDist, Float.MAX_VALUE);
-        for (int i = 0; i < datasize; i++) {
-            currClass = original.getLabelOf(i);
-            if (!protoMap.containsKey(i)) {
-                for (int pIndex : pIndexes) {
-                    protoClass = original.getLabelOf(pIndex);
-                    min = Math.min(i, pIndex);
-                    max = Math.max(i, pIndex);
-                    if (currClass == protoClass) {
-                        if (distMat[min][max - min - 1]
-                                < nearestProtoFriendDist[i]) {
-                            nearestProtoFriendDist[i] =
-                                    distMat[min][max - min - 1];
-                        }
-                    } else {
-                        if (distMat[min][max - min - 1]
-                                < nearestProtoEnemyDist[i]) {
-                            nearestProtoEnemyDist[i] =
-                                    distMat[min][max - min - 1];
-                        }
-                    }
-                }
             }
         }
+        // The nearest friend and enemy distances are maintained by the
+        // incremental nearest prototype index, which updates them in parallel
+        // as the prototypes are inserted. In this context, friends have the
+        // same class label, enemies a different one.
+        PrototypeNeighborIndex protoIndex = new PrototypeNeighborIndex(distMat,
+                original.obtainLabelArray(), getNeighborhoodSize(),
+                nsf != null ? nsf.getKNeighbors() : null);
+        protoIndex.initialize(pIndexes);
+        nearestProtoFriendDist = protoIndex.getNearestFriendDistances();
+        nearestProtoEnemyDist = protoIndex.getNearestEnemyDistances();
         // Now go through the distance matrix and find the minimal non-zero
         // heterogenous distance. The fastest way is not to check the intra-
         // class ones, so let's iterate through class-class pairs.
+        int min, max;
         int temp1, temp2;
         int c1size, c2size;
         float minHeterogenousDistance = Float.MAX_VALUE;
@@ -284,7 +259,7 @@ public class GCNN extends InstanceSelector implements NSFUserInterface {
             unAbsorbed = new ArrayList<>(
                     Math.max((datasize - pIndexes.size()) / 3, 5));
             for (int i = 0; i < datasize; i++) {
-                if (!protoMap.containsKey(i)) {
+                if (!protoIndex.isPrototype(i)) {
                     // If the enemy distance is not at least the minimum amount
                     // of separation grater than the friend distance - then
                     // this point is a candidate for prototype set extension.
@@ -299,35 +274,16 @@ public class GCNN extends InstanceSelector implements NSFUserInterface {
             if (unAbsorbed.size() > 0) {
                 // Pick a random one.
                 choice = unAbsorbed.get(randa.nextInt(unAbsorbed.size()));
-                protoMap.put(choice, original.getLabelOf(choice));
                 pIndexes.add(choice);
-                protoClass = original.getLabelOf(choice);
-                // Update all the nearest friend and enemy distances.
-                for (int i = 0; i < datasize; i++) {
-                    if (!protoMap.containsKey(i)) {
-                        min = Math.min(choice, i);
-                        max = Math.max(choice, i);
-                        currClass = original.getLabelOf(i);
-                        if (currClass == protoClass) {
-                            if (distMat[min][max - min - 1]
-                                    < nearestProtoFriendDist[i]) {
-                                nearestProtoFriendDist[i] =
-                                        distMat[min][max - min - 1];
-                            }
-                        } else {
-                            if (distMat[min][max - min - 1]
-                                    < nearestProtoEnemyDist[i]) {
-                                nearestProtoEnemyDist[i] =
-                                        distMat[min][max - min - 1];
-                            }
-                        }
-                    }
-                }
+                // Update the nearest friend and enemy distances and the
+                // prototype neighborhoods.
+                protoIndex.insertPrototype(choice);
             }
         }
         // Set the selected prototype indexes and sort them.
         setPrototypeIndexes(pIndexes);
         sortSelectedIndexes();
+        setPrototypeNeighborIndex(protoIndex);
     }
 
     @Override
@@ -351,186 +307,10 @@ public class GCNN extends InstanceSelector implements NSFUserInterface {
     @Override
     public void calculatePrototypeHubness(int k) throws Exception {
         if (nsf != null) {
-            // Here we have some prior neighbor occurrence information and we
-            // can re-use it to speed-up the top k prototype search.
-            this.setNeighborhoodSize(k);
-            if (k <= 0) {
-                return;
-            }
-            DataSet originalDataSet = getOriginalDataSet();
-            // The original k-neighbor information is used in order to speed up
-            // the top-k prototype calculations, in those cases where these
-            // prototypes are already known to occur as neighbors.
-            // These occurrences are re-used dynamically.
-            int[][] kns = nsf.getKNeighbors();
-            float[][] kd = nsf.getKDistances();
-            // Array that holds the kneighbors where only prototypes are allowed
-            // as neighbor points.
-            int[][] kneighbors = new int[originalDataSet.size()][k];
-            int kNSF = kns[0].length;
-            HashMap<Integer, Integer> protoMap =
-                    new HashMap<>(getPrototypeIndexes().size() * 2);
-            ArrayList<Integer> protoIndexes = getPrototypeIndexes();
-            // Fill the HashMap with indexes of selected prototype points.
-            for (int i = 0; i < protoIndexes.size(); i++) {
-                protoMap.put(protoIndexes.get(i), i);
-            }
-            int l;
-            int datasize = originalDataSet.size();
-            // Distances to k-closest prototypes for each point from the
-            // training data.
-            float[][] kdistances = new float[datasize][k];
-            // Temporary lengths of k-neighbor lists as they are being
-            // calculated.
-            int[] kcurrLen = new int[datasize];
-            // Distance matrix.
-            float[][] distMatrix = nsf.getDistances();
-            // Intervals are there to help with re-using existing neighbors, in
-            // order to speed up the calculations and simplify the code.
-            ArrayList<Integer> intervals;
-            int upper, lower;
-            int min, max;
-            for (int i = 0; i < datasize; i++) {
-                intervals = new ArrayList(k + 2);
-                // Looping is from interval indexes + 1, so -1 goes as the left
-                // limit. All prototype occurrences from the original kNN sets
-                // are inserted into the intervals list.
-                intervals.add(-1);
-                for (int j = 0; j < kNSF; j++) {
-                    if (protoMap.containsKey(kns[i][j])) {
-                        // What we insert as a neighbor is not the prototype
-                        // index within the original data, but rather among the
-                        // prototype array.
-                        kneighbors[i][kcurrLen[i]] = protoMap.get(kns[i][j]);
-                        kdistances[i][kcurrLen[i]] = kd[i][j];
-                        kcurrLen[i]++;
-                        // We insert the originalDataSet prototype index to the
-                        // intervals.
-                        intervals.add(kns[i][j]);
-                    }
-                    // If the original kNSF was larger than this neighborhood
-                    // size, we need to make sure not to exceed the k limit.
-                    if (kcurrLen[i] >= k) {
-                        break;
-                    }
-                }
-                intervals.add(datasize + 1);
-                // We sort the known prototype neighbor indexes.
-                Collections.sort(intervals);
-                // If we haven't already finished, we proceed with the nearest
-                // prototype search.
-                if (kcurrLen[i] < k) {
-                    // It needs to iterate one less than to the very end, as the
-                    // last limitation is there, so there are no elements beyond
-                    int iSizeRed = intervals.size() - 1;
-                    for (int ind = 0; ind < iSizeRed; ind++) {
-                        lower = intervals.get(ind);
-                        upper = intervals.get(ind + 1);
-                        for (int j = lower + 1; j < upper - 1; j++) {
-                            // If the point is a prototype and different from
-                            // current.
-                            if (i != j && protoMap.containsKey(j)) {
-                                min = Math.min(i, j);
-                                max = Math.max(i, j);
-                                if (kcurrLen[i] > 0) {
-                                    if (kcurrLen[i] == k) {
-                                        if (distMatrix[min][max - min - 1]
-                                                < kdistances[i][
-                                                        kcurrLen[i] - 1]) {
-                                            // Search to see where to insert.
-                                            l = k - 1;
-                                            while ((l >= 1)
-                                                    && distMatrix[min][
-                                                    max - min - 1]
-                                                    < kdistances[i][l - 1]) {
-                                                kdistances[i][l] =
-                                                        kdistances[i][l - 1];
-                                                kneighbors[i][l] =
-                                                        kneighbors[i][l - 1];
-                                                l--;
-                                            }
-                                            kdistances[i][l] =
-                                                    distMatrix[min][
-                                                    max - min - 1];
-                                            kneighbors[i][l] = protoMap.get(j);
-                                        }
-                                    } else {
-                                        if (distMatrix[min][max - min - 1]
-                                                < kdistances[i][
-                                                        kcurrLen[i] - 1]) {
-                                            //search to see where to insert
-                                            l = kcurrLen[i] - 1;
-                                            kdistances[i][kcurrLen[i]] =
-                                                    kdistances[i][
-                                                            kcurrLen[i] - 1];
-                                            kneighbors[i][kcurrLen[i]] =
-                                                    kneighbors[i][
-                                                            kcurrLen[i] - 1];
-                                            while ((l >= 1)
-                                                    && distMatrix[min][
-                                                    max - min - 1]
-                                                    < kdistances[i][l - 1]) {
-                                                kdistances[i][l] =
-                                                        kdistances[i][l - 1];
-                                                kneighbors[i][l] =
-                                                        kneighbors[i][l - 1];
-                                                l--;
-                                            }
-                                            kdistances[i][l] =
-                                                    distMatrix[min][
-                                                    max - min - 1];
-                                            kneighbors[i][l] = protoMap.get(j);
-                                            kcurrLen[i]++;
-                                        } else {
-                                            kdistances[i][kcurrLen[i]] =
-                                                    distMatrix[min][
-                                                    max - min - 1];
-                                            kneighbors[i][kcurrLen[i]] =
-                                                    protoMap.get(j);
-                                            kcurrLen[i]++;
-                                        }
-                                    }
-                                } else {
-                                    kdistances[i][0] =
-                                            distMatrix[min][max - min - 1];
-                                    kneighbors[i][0] = protoMap.get(j);
-                                    kcurrLen[i] = 1;
-                                }
-                            }
-                        }
-                    }
-                }
-            }
-            int numClasses = getNumClasses();
-            // Prototype occurrence frequency array.
-            int[] protoHubness = new int[protoIndexes.size()];
-            // Prototype good occurrence frequency array.
-            int[] protoGoodHubness = new int[protoIndexes.size()];
-            // Prototype detrimental occurrence frequency array.
-            int[] protoBadHubness = new int[protoIndexes.size()];
-            // Prototype class-conditional neighbor occurrence frequencies.
-            int[][] protoClassHubness =
-                    new int[numClasses][protoIndexes.size()];
-            setPrototypeHubness(protoHubness);
-            setPrototypeGoodHubness(protoGoodHubness);
-            setPrototypeBadHubness(protoBadHubness);
-            setProtoClassHubness(protoClassHubness);
-            int currLabel;
-            // Loop through the top-k prototype sets once.
-            for (int i = 0; i < datasize; i++) {
-                currLabel = originalDataSet.getLabelOf(i);
-                for (int j = 0; j < k; j++) {
-                    if (currLabel == originalDataSet.getLabelOf(
-                            protoIndexes.get(kneighbors[i][j]))) {
-                        protoGoodHubness[kneighbors[i][j]]++;
-                    } else {
-                        protoBadHubness[kneighbors[i][j]]++;
-                    }
-                    protoHubness[kneighbors[i][j]]++;
-                    protoClassHubness[currLabel][kneighbors[i][j]]++;
-                }
-            }
-            setProtoNeighborSets(kneighbors);
+            // The prototype kNN sets are obtained from the incremental
+            // nearest prototype index, which re-uses the existing kNN graph.
+            calculatePrototypeHubnessIndexed(k, nsf.getDistances(),
+                    nsf.getKNeighbors());
         } else {
             // In this case, no prior neighbor information is available, so
             // we just proceed in a simple way.
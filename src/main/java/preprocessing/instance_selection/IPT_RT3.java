@@ -357,7 +357,7 @@ public class IPT_RT3 extends InstanceSelector implements NSFUserInterface {
 
         int[] reArrIndexes =
                 AuxSort.sortIndexedValue(nearestEnemyDistances, true);
-        ArrayList<Integer> reverseNeighbors;
+        int[] reverseNeighbors;
         int[] hubnessArray = nsf.getNeighborFrequencies();
         int consideredClass;
         for (int i : reArrIndexes) {
@@ -371,7 +371,9 @@ public class IPT_RT3 extends InstanceSelector implements NSFUserInterface {
                 if (hubnessArray[i] == 0) {
                     nsf.tabuANeighbor(i, 0, tabuList, false);
                 }
-                reverseNeighbors = nsf.getReverseNeighbors()[i];
+                // A copy of the reverse neighbors, which stays valid after
+                // the point is tabued below.
+                reverseNeighbors = nsf.getReverseNeighbors(i);
                 for (int index : reverseNeighbors) {
                     currClass = originalDataSet.getLabelOf(index);
                     classification = 0;
@@ -437,13 +439,8 @@ public class IPT_RT3 extends InstanceSelector implements NSFUserInterface {
                     }
                 }
                 if (criticalPositive <= criticalNegative) {
-                    ArrayList<Integer> rnnArrCopy =
-                            new ArrayList<>(reverseNeighbors.size());
-                    for (int p = 0; p < reverseNeighbors.size(); p++) {
-                        rnnArrCopy.add(reverseNeighbors.get(p));
-                    }
                     nsf.tabuANeighbor(i, 0, tabuList, false);
-                    for (int index : rnnArrCopy) {
+                    for (int index : reverseNeighbors) {
                         kNNclassCounts[index][consideredClass]--;
                         kNNclassCounts[index][originalDataSet.getLabelOf(
                                 kneighbors[index][kSelection])]++;
@@ -22,6 +22,7 @@ import data.representation.DataInstance;
 import data.representation.DataSet;
 import distances.primary.CombinedMetric;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 
 /**
@@ -46,6 +47,21 @@ public abstract class InstanceSelector implements Citable {
     // First index in the array is the class, second is the element.
     private int[][] protoClassHubness;
     private int[][] protoNeighborSets;
+    // Incremental nearest prototype index, shared between the reduction passes
+    // and the prototype hubness calculations.
+    private PrototypeNeighborIndex protoNeighborIndex;
+    // The state of the last indexed prototype hubness calculation: the index
+    // it was based on, the prototype neighbors of each point in the original
+    // data, the occurrence counts of all points in the original data and the
+    // prototype order that the neighbor sets were mapped to.
+    private PrototypeNeighborIndex recordedIndex;
+    private int[][] recordedNeighbors;
+    private int[] indexedOccurrences;
+    private int[] indexedGoodOccurrences;
+    private int[] indexedBadOccurrences;
+    private int[][] indexedClassOccurrences;
+    private int[] recordedProtoOrder;
+    private int[][] indexedNeighborSets;
     
     /**
      * This method calculates the unbiased class to class hubness matrix.
@@ -169,6 +185,7 @@ public abstract class InstanceSelector implements Citable {
      */
     public void setOriginalDataSet(DataSet originalDSet) {
         this.originalDSet = originalDSet;
+        protoNeighborIndex = null;
         if (originalDSet != null) {
             numClasses = originalDSet.countCategories();
         }
@@ -289,6 +306,159 @@ public abstract class InstanceSelector implements Citable {
         return prototypeIndexes;
     }
 
+    /**
+     * @return PrototypeNeighborIndex that is the current incremental nearest
+     * prototype index, or null if none has been built.
+     */
+    public PrototypeNeighborIndex getPrototypeNeighborIndex() {
+        return protoNeighborIndex;
+    }
+
+    /**
+     * @param protoNeighborIndex PrototypeNeighborIndex that is the incremental
+     * nearest prototype index over the original data.
+     */
+    public void setPrototypeNeighborIndex(
+            PrototypeNeighborIndex protoNeighborIndex) {
+        this.protoNeighborIndex = protoNeighborIndex;
+    }
+
+    /**
+     * Calculates the neighbor occurrence profiles of the selected prototypes by
+     * using the incremental nearest prototype index. If an index for the same
+     * distance matrix and neighborhood size already exists, it is updated by
+     * the prototype insertions and deletions since it was last used and the
+     * prototype kNN sets are re-calculated only for the points whose prototype
+     * neighborhood has changed. The occurrence counts are kept for all points
+     * in the original data between the calls, so only the contributions of the
+     * changed points are withdrawn and re-added.
+     *
+     * @param k Neighborhood size to be used in hubness calculations.
+     * @param distMat float[][] that is the upper triangular distance matrix.
+     * @param graphNeighbors int[][] that is the kNN graph on the original data,
+     * or null if not available.
+     * @throws Exception
+     */
+    protected void calculatePrototypeHubnessIndexed(int k, float[][] distMat,
+            int[][] graphNeighbors) throws Exception {
+        this.k = k;
+        if (k <= 0) {
+            return;
+        }
+        int dataSize = originalDSet.size();
+        if (protoNeighborIndex == null || protoNeighborIndex.getK() != k
+                || protoNeighborIndex.getDataSize() != dataSize
+                || protoNeighborIndex.getDistances() != distMat) {
+            protoNeighborIndex = new PrototypeNeighborIndex(distMat,
+                    originalDSet.obtainLabelArray(), k, graphNeighbors);
+            protoNeighborIndex.initialize(prototypeIndexes);
+        } else {
+            protoNeighborIndex.updatePrototypeSet(prototypeIndexes);
+        }
+        // All points are processed when the index is new or was replaced
+        // since the last call, otherwise only the points whose prototype
+        // neighborhood has changed.
+        boolean fullUpdate = recordedIndex != protoNeighborIndex
+                || recordedNeighbors == null
+                || recordedNeighbors.length != dataSize
+                || indexedClassOccurrences.length != numClasses;
+        if (fullUpdate) {
+            recordedIndex = protoNeighborIndex;
+            recordedNeighbors = new int[dataSize][];
+            indexedOccurrences = new int[dataSize];
+            indexedGoodOccurrences = new int[dataSize];
+            indexedBadOccurrences = new int[dataSize];
+            indexedClassOccurrences = new int[numClasses][dataSize];
+            indexedNeighborSets = null;
+        }
+        int currLabel;
+        int neighbor;
+        for (int i = 0; i < dataSize; i++) {
+            if (!fullUpdate && !protoNeighborIndex.isChanged(i)) {
+                continue;
+            }
+            currLabel = originalDSet.getLabelOf(i);
+            // Withdraw the previous occurrences of the prototype neighbors.
+            if (recordedNeighbors[i] != null) {
+                for (int kIndex = 0; kIndex < recordedNeighbors[i].length;
+                        kIndex++) {
+                    updateIndexedOccurrence(recordedNeighbors[i][kIndex],
+                            currLabel, -1);
+                }
+            }
+            recordedNeighbors[i] = Arrays.copyOf(
+                    protoNeighborIndex.getNeighbors(i),
+                    protoNeighborIndex.getNumNeighbors(i));
+            for (int kIndex = 0; kIndex < recordedNeighbors[i].length;
+                    kIndex++) {
+                updateIndexedOccurrence(recordedNeighbors[i][kIndex],
+                        currLabel, 1);
+            }
+        }
+        // Positions of the prototypes in the prototype index list.
+        int numPrototypes = prototypeIndexes.size();
+        int[] protoOrder = new int[numPrototypes];
+        int[] protoPositions = new int[dataSize];
+        for (int i = 0; i < numPrototypes; i++) {
+            protoOrder[i] = prototypeIndexes.get(i);
+            protoPositions[protoOrder[i]] = i;
+        }
+        // The neighbor sets of the unchanged points can be re-used only if
+        // the prototypes kept their positions in the list.
+        boolean positionsChanged = fullUpdate || indexedNeighborSets == null
+                || !Arrays.equals(protoOrder, recordedProtoOrder);
+        protoHubness = new int[numPrototypes];
+        protoGoodHubness = new int[numPrototypes];
+        protoBadHubness = new int[numPrototypes];
+        protoClassHubness = new int[numClasses][numPrototypes];
+        for (int p = 0; p < numPrototypes; p++) {
+            neighbor = protoOrder[p];
+            protoHubness[p] = indexedOccurrences[neighbor];
+            protoGoodHubness[p] = indexedGoodOccurrences[neighbor];
+            protoBadHubness[p] = indexedBadOccurrences[neighbor];
+            for (int c = 0; c < numClasses; c++) {
+                protoClassHubness[c][p] = indexedClassOccurrences[c][neighbor];
+            }
+        }
+        int[][] kneighbors = new int[dataSize][];
+        for (int i = 0; i < dataSize; i++) {
+            if (!positionsChanged && !protoNeighborIndex.isChanged(i)) {
+                kneighbors[i] = indexedNeighborSets[i];
+                continue;
+            }
+            kneighbors[i] = new int[k];
+            for (int kIndex = 0; kIndex < recordedNeighbors[i].length;
+                    kIndex++) {
+                kneighbors[i][kIndex] =
+                        protoPositions[recordedNeighbors[i][kIndex]];
+            }
+        }
+        protoNeighborIndex.resetChanged();
+        recordedProtoOrder = protoOrder;
+        indexedNeighborSets = kneighbors;
+        protoNeighborSets = kneighbors;
+    }
+
+    /**
+     * Updates the occurrence counts of a point in the original data that
+     * occurs as a prototype neighbor.
+     *
+     * @param neighbor Integer that is the index of the prototype in the
+     * original data.
+     * @param label Integer that is the label of the point whose prototype
+     * neighbor it is.
+     * @param delta Integer that is the change in the occurrence count.
+     */
+    private void updateIndexedOccurrence(int neighbor, int label, int delta) {
+        indexedOccurrences[neighbor] += delta;
+        if (label == originalDSet.getLabelOf(neighbor)) {
+            indexedGoodOccurrences[neighbor] += delta;
+        } else {
+            indexedBadOccurrences[neighbor] += delta;
+        }
+        indexedClassOccurrences[label][neighbor] += delta;
+    }
+
     /**
      * Performs data reduction by automatically determining the proper reduction
      * rate.
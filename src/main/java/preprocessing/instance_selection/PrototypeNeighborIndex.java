@@ -0,0 +1,519 @@
+/**
+* Hub Miner: a hubness-aware machine learning experimentation library.
+* Copyright (C) 2014  Nenad Tomasev. Email: nenad.tomasev at gmail.com
+* 
+* This program is free software: you can redistribute it and/or modify it under
+* the terms of the GNU General Public License as published by the Free Software
+* Foundation, either version 3 of the License, or (at your option) any later
+* version.
+* 
+* This program is distributed in the hope that it will be useful, but WITHOUT
+* ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+* FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License along with
+* this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+package preprocessing.instance_selection;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * This class implements an incremental nearest prototype index over a fixed
+ * data set with a pre-computed distance matrix. For each point, it maintains
+ * the k nearest prototypes, as well as the nearest prototype of the same class
+ * (friend) and the nearest prototype of a different class (enemy). Prototypes
+ * can be inserted and removed and only the affected points are updated. The
+ * points whose prototype neighborhood changed are marked, so that the
+ * prototype kNN sets and hubness profiles can later be re-calculated only for
+ * them. A point is never considered to be its own prototype neighbor. On large
+ * data, the updates are split over several threads.
+ *
+ * @author Nenad Tomasev <nenad.tomasev at gmail.com>
+ */
+public class PrototypeNeighborIndex {
+
+    // Operations that are performed in parallel over point ranges.
+    private static final int INITIALIZE = 0;
+    private static final int INSERT = 1;
+    private static final int REMOVE = 2;
+    // Data sets smaller than this are processed in a single thread.
+    private static final int MIN_SIZE_FOR_THREADING = 10000;
+    // Upper triangular distance matrix, each row contains only distances
+    // d(i,j) for j > i.
+    private float[][] distMat;
+    private int[] labels;
+    private int dataSize;
+    // Neighborhood size.
+    private int k;
+    // Optional kNN graph on the whole data, sorted by distance. It is used to
+    // avoid scanning all the prototypes when the nearest ones are among the
+    // original neighbors.
+    private int[][] graphNeighbors;
+    private boolean[] isPrototype;
+    // The current prototypes and their positions in the prototype array.
+    private int[] prototypes;
+    private int[] protoPositions;
+    private int numPrototypes = 0;
+    // The k nearest prototypes of each point, given by their indexes in the
+    // original data, and the distances to them.
+    private int[][] kNeighbors;
+    private float[][] kDistances;
+    private int[] kCurrLen;
+    // Nearest prototypes of the same and of a different class.
+    private int[] nearestFriend;
+    private int[] nearestEnemy;
+    private float[] nearestFriendDist;
+    private float[] nearestEnemyDist;
+    // Points whose prototype neighborhood changed since the last reset.
+    private boolean[] changed;
+    private int numThreads;
+
+    /**
+     * Initialization.
+     *
+     * @param distMat float[][] that is the upper triangular distance matrix.
+     * @param labels int[] of data labels.
+     * @param k Integer that is the neighborhood size. It can be zero, in which
+     * case only the nearest friends and enemies are maintained.
+     * @param graphNeighbors int[][] that is the kNN graph on the whole data,
+     * sorted by distance. It can be null.
+     */
+    public PrototypeNeighborIndex(float[][] distMat, int[] labels, int k,
+            int[][] graphNeighbors) {
+        this.distMat = distMat;
+        this.labels = labels;
+        this.k = Math.max(0, k);
+        this.graphNeighbors = graphNeighbors;
+        dataSize = labels.length;
+        numThreads = dataSize < MIN_SIZE_FOR_THREADING ? 1
+                : Runtime.getRuntime().availableProcessors();
+        isPrototype = new boolean[dataSize];
+        prototypes = new int[Math.max(dataSize, 1)];
+        protoPositions = new int[dataSize];
+        Arrays.fill(protoPositions, -1);
+        kNeighbors = new int[dataSize][this.k];
+        kDistances = new float[dataSize][this.k];
+        kCurrLen = new int[dataSize];
+        nearestFriend = new int[dataSize];
+        nearestEnemy = new int[dataSize];
+        nearestFriendDist = new float[dataSize];
+        nearestEnemyDist = new float[dataSize];
+        Arrays.fill(nearestFriend, -1);
+        Arrays.fill(nearestEnemy, -1);
+        Arrays.fill(nearestFriendDist, Float.MAX_VALUE);
+        Arrays.fill(nearestEnemyDist, Float.MAX_VALUE);
+        changed = new boolean[dataSize];
+    }
+
+    /**
+     * @param numThreads Integer that is the number of threads to use for the
+     * updates.
+     */
+    public void setNumThreads(int numThreads) {
+        this.numThreads = Math.max(1, numThreads);
+    }
+
+    /**
+     * @return Integer that is the neighborhood size.
+     */
+    public int getK() {
+        return k;
+    }
+
+    /**
+     * @return Integer that is the data size.
+     */
+    public int getDataSize() {
+        return dataSize;
+    }
+
+    /**
+     * @return float[][] that is the upper triangular distance matrix.
+     */
+    public float[][] getDistances() {
+        return distMat;
+    }
+
+    /**
+     * @return Integer that is the current number of prototypes.
+     */
+    public int getNumPrototypes() {
+        return numPrototypes;
+    }
+
+    /**
+     * @param index Integer that is the index of a point.
+     * @return True if the point is currently a prototype, false otherwise.
+     */
+    public boolean isPrototype(int index) {
+        return isPrototype[index];
+    }
+
+    /**
+     * @return float[] of distances to the nearest prototypes of the same class.
+     */
+    public float[] getNearestFriendDistances() {
+        return nearestFriendDist;
+    }
+
+    /**
+     * @return float[] of distances to the nearest prototypes of a different
+     * class.
+     */
+    public float[] getNearestEnemyDistances() {
+        return nearestEnemyDist;
+    }
+
+    /**
+     * @param index Integer that is the index of a point.
+     * @return int[] of the indexes of the nearest prototypes in the original
+     * data, sorted by distance. Only the first getNumNeighbors(index) entries
+     * are valid.
+     */
+    public int[] getNeighbors(int index) {
+        return kNeighbors[index];
+    }
+
+    /**
+     * @param index Integer that is the index of a point.
+     * @return Integer that is the number of the nearest prototypes of the
+     * point, which is k unless there are fewer prototypes.
+     */
+    public int getNumNeighbors(int index) {
+        return kCurrLen[index];
+    }
+
+    /**
+     * @param index Integer that is the index of a point.
+     * @return True if the prototype neighborhood of the point has changed
+     * since the last reset.
+     */
+    public boolean isChanged(int index) {
+        return changed[index];
+    }
+
+    /**
+     * Resets the change markers.
+     */
+    public void resetChanged() {
+        Arrays.fill(changed, false);
+    }
+
+    /**
+     * Builds the index for the provided prototype set.
+     *
+     * @param protoIndexes ArrayList<Integer> of prototype indexes.
+     * @throws Exception
+     */
+    public void initialize(ArrayList<Integer> protoIndexes)
+            throws Exception {
+        Arrays.fill(isPrototype, false);
+        Arrays.fill(protoPositions, -1);
+        numPrototypes = 0;
+        for (int index : protoIndexes) {
+            if (!isPrototype[index]) {
+                addToPrototypeArray(index);
+            }
+        }
+        runInParallel(INITIALIZE, -1);
+    }
+
+    /**
+     * Updates the index so that it reflects the provided prototype set, by
+     * removing the prototypes that are not in the set and inserting the new
+     * ones.
+     *
+     * @param protoIndexes ArrayList<Integer> of prototype indexes.
+     * @throws Exception
+     */
+    public void updatePrototypeSet(ArrayList<Integer> protoIndexes)
+            throws Exception {
+        boolean[] inNewSet = new boolean[dataSize];
+        for (int index : protoIndexes) {
+            inNewSet[index] = true;
+        }
+        for (int index = 0; index < dataSize; index++) {
+            if (isPrototype[index] && !inNewSet[index]) {
+                removePrototype(index);
+            }
+        }
+        for (int index : protoIndexes) {
+            if (!isPrototype[index]) {
+                insertPrototype(index);
+            }
+        }
+    }
+
+    /**
+     * Inserts a new prototype and updates the neighborhoods of all the points
+     * that it enters.
+     *
+     * @param index Integer that is the index of the new prototype.
+     * @throws Exception
+     */
+    public void insertPrototype(int index)
+            throws Exception {
+        if (isPrototype[index]) {
+            return;
+        }
+        addToPrototypeArray(index);
+        runInParallel(INSERT, index);
+    }
+
+    /**
+     * Removes a prototype and re-calculates the neighborhoods of all the
+     * points that contained it.
+     *
+     * @param index Integer that is the index of the prototype to remove.
+     * @throws Exception
+     */
+    public void removePrototype(int index)
+            throws Exception {
+        if (!isPrototype[index]) {
+            return;
+        }
+        // Swap with the last prototype in the array.
+        int position = protoPositions[index];
+        int last = prototypes[numPrototypes - 1];
+        prototypes[position] = last;
+        protoPositions[last] = position;
+        protoPositions[index] = -1;
+        numPrototypes--;
+        isPrototype[index] = false;
+        runInParallel(REMOVE, index);
+    }
+
+    /**
+     * Appends a point to the prototype array.
+     *
+     * @param index Integer that is the index of the new prototype.
+     */
+    private void addToPrototypeArray(int index) {
+        isPrototype[index] = true;
+        prototypes[numPrototypes] = index;
+        protoPositions[index] = numPrototypes;
+        numPrototypes++;
+    }
+
+    /**
+     * @param first Integer that is the index of the first point.
+     * @param second Integer that is the index of the second point.
+     * @return Float that is the distance between the two points.
+     */
+    private float getDistance(int first, int second) {
+        int min = Math.min(first, second);
+        int max = Math.max(first, second);
+        return distMat[min][max - min - 1];
+    }
+
+    /**
+     * Performs an operation over the whole data in parallel.
+     *
+     * @param operation Integer that is the operation code.
+     * @param protoIndex Integer that is the index of the inserted or removed
+     * prototype.
+     */
+    private void runInParallel(int operation, int protoIndex)
+            throws Exception {
+        int threadCount = Math.max(1, Math.min(numThreads, dataSize));
+        if (threadCount == 1) {
+            RangeUpdater updater = new RangeUpdater(0, dataSize - 1,
+                    operation, protoIndex);
+            updater.run();
+            if (updater.failure != null) {
+                throw updater.failure;
+            }
+            return;
+        }
+        int chunkSize = dataSize / threadCount;
+        Thread[] threads = new Thread[threadCount];
+        RangeUpdater[] updaters = new RangeUpdater[threadCount];
+        for (int tIndex = 0; tIndex < threadCount; tIndex++) {
+            int endIndex = tIndex < threadCount - 1
+                    ? (tIndex + 1) * chunkSize - 1 : dataSize - 1;
+            updaters[tIndex] = new RangeUpdater(tIndex * chunkSize, endIndex,
+                    operation, protoIndex);
+            threads[tIndex] = new Thread(updaters[tIndex]);
+            threads[tIndex].start();
+        }
+        for (int tIndex = 0; tIndex < threadCount; tIndex++) {
+            threads[tIndex].join();
+        }
+        for (int tIndex = 0; tIndex < threadCount; tIndex++) {
+            if (updaters[tIndex].failure != null) {
+                throw updaters[tIndex].failure;
+            }
+        }
+    }
+
+    /**
+     * Calculates the prototype neighborhood of a point from scratch.
+     *
+     * @param i Integer that is the index of the point.
+     */
+    private void calculatePoint(int i) {
+        kCurrLen[i] = 0;
+        nearestFriend[i] = -1;
+        nearestEnemy[i] = -1;
+        nearestFriendDist[i] = Float.MAX_VALUE;
+        nearestEnemyDist[i] = Float.MAX_VALUE;
+        if (graphNeighbors != null) {
+            // The kNN graph is sorted, so the first prototypes that occur in it
+            // are the nearest ones.
+            for (int j = 0; j < graphNeighbors[i].length; j++) {
+                int neighbor = graphNeighbors[i][j];
+                if (neighbor == i || !isPrototype[neighbor]) {
+                    continue;
+                }
+                float dist = getDistance(i, neighbor);
+                if (kCurrLen[i] < k) {
+                    kNeighbors[i][kCurrLen[i]] = neighbor;
+                    kDistances[i][kCurrLen[i]] = dist;
+                    kCurrLen[i]++;
+                }
+                if (labels[neighbor] == labels[i]) {
+                    if (nearestFriend[i] == -1) {
+                        nearestFriend[i] = neighbor;
+                        nearestFriendDist[i] = dist;
+                    }
+                } else if (nearestEnemy[i] == -1) {
+                    nearestEnemy[i] = neighbor;
+                    nearestEnemyDist[i] = dist;
+                }
+                if (kCurrLen[i] == k && nearestFriend[i] != -1
+                        && nearestEnemy[i] != -1) {
+                    return;
+                }
+            }
+            if (kCurrLen[i] == k && nearestFriend[i] != -1
+                    && nearestEnemy[i] != -1) {
+                return;
+            }
+            kCurrLen[i] = 0;
+            nearestFriend[i] = -1;
+            nearestEnemy[i] = -1;
+            nearestFriendDist[i] = Float.MAX_VALUE;
+            nearestEnemyDist[i] = Float.MAX_VALUE;
+        }
+        // Scan all the prototypes.
+        for (int pIndex = 0; pIndex < numPrototypes; pIndex++) {
+            if (prototypes[pIndex] != i) {
+                insertIntoPoint(i, prototypes[pIndex]);
+            }
+        }
+    }
+
+    /**
+     * Updates the prototype neighborhood of a point by a new prototype.
+     *
+     * @param i Integer that is the index of the point.
+     * @param protoIndex Integer that is the index of the prototype.
+     * @return True if the neighborhood of the point has changed.
+     */
+    private boolean insertIntoPoint(int i, int protoIndex) {
+        boolean pointChanged = false;
+        float dist = getDistance(i, protoIndex);
+        if (labels[protoIndex] == labels[i]) {
+            if (dist < nearestFriendDist[i]) {
+                nearestFriendDist[i] = dist;
+                nearestFriend[i] = protoIndex;
+                pointChanged = true;
+            }
+        } else if (dist < nearestEnemyDist[i]) {
+            nearestEnemyDist[i] = dist;
+            nearestEnemy[i] = protoIndex;
+            pointChanged = true;
+        }
+        if (k == 0) {
+            return pointChanged;
+        }
+        int l;
+        if (kCurrLen[i] < k) {
+            l = kCurrLen[i];
+            kCurrLen[i]++;
+        } else if (dist < kDistances[i][k - 1]) {
+            l = k - 1;
+        } else {
+            return pointChanged;
+        }
+        // Search to see where to insert.
+        while (l >= 1 && dist < kDistances[i][l - 1]) {
+            kDistances[i][l] = kDistances[i][l - 1];
+            kNeighbors[i][l] = kNeighbors[i][l - 1];
+            l--;
+        }
+        kDistances[i][l] = dist;
+        kNeighbors[i][l] = protoIndex;
+        return true;
+    }
+
+    /**
+     * This class performs the index updates over a range of points.
+     */
+    class RangeUpdater implements Runnable {
+
+        private int startIndex;
+        private int endIndex;
+        private int operation;
+        private int protoIndex;
+        // The exception that stopped the updater, if any.
+        Exception failure;
+
+        /**
+         * Initialization.
+         *
+         * @param startIndex Integer that is the start index, inclusive.
+         * @param endIndex Integer that is the end index, inclusive.
+         * @param operation Integer that is the operation code.
+         * @param protoIndex Integer that is the index of the inserted or
+         * removed prototype.
+         */
+        public RangeUpdater(int startIndex, int endIndex, int operation,
+                int protoIndex) {
+            this.startIndex = startIndex;
+            this.endIndex = endIndex;
+            this.operation = operation;
+            this.protoIndex = protoIndex;
+        }
+
+        @Override
+        public void run() {
+            try {
+                for (int i = startIndex; i <= endIndex; i++) {
+                    switch (operation) {
+                        case INITIALIZE: {
+                            calculatePoint(i);
+                            changed[i] = true;
+                            break;
+                        }
+                        case INSERT: {
+                            if (i != protoIndex
+                                    && insertIntoPoint(i, protoIndex)) {
+                                changed[i] = true;
+                            }
+                            break;
+                        }
+                        case REMOVE: {
+                            boolean affected = nearestFriend[i] == protoIndex
+                                    || nearestEnemy[i] == protoIndex;
+                            for (int kIndex = 0;
+                                    !affected && kIndex < kCurrLen[i];
+                                    kIndex++) {
+                                affected = kNeighbors[i][kIndex] == protoIndex;
+                            }
+                            if (affected) {
+                                calculatePoint(i);
+                                changed[i] = true;
+                            }
+                            break;
+                        }
+                    }
+                }
+            } catch (Exception e) {
+                failure = e;
+            }
+        }
+    }
+}
@@ -25,8 +25,6 @@ import data.representation.DataSet;
 import data.neighbors.NeighborSetFinder;
 import java.util.ArrayList;
 import distances.primary.CombinedMetric;
-import java.util.HashMap;
-import java.util.Collections;
 
 /**
  * This class implements an old baseline algorithm described in the paper:
@@ -98,149 +96,10 @@ public class Wilson72 extends InstanceSelector implements NSFUserInterface {
 
     @Override
     public void calculatePrototypeHubness(int k) throws Exception {
-        this.setNeighborhoodSize(k);
-        if (k <= 0) {
-            return;
-        }
-        DataSet originalDataSet = getOriginalDataSet();
-        // Original neighbor sets and neighbor distances.
-        int[][] kns = nsf.getKNeighbors();
-        float[][] kd = nsf.getKDistances();
-        // Neighbor sets with prototypes as neighbors.
-        int[][] kneighbors = new int[originalDataSet.size()][k];
-        int kNSF = kns[0].length;
-        HashMap<Integer, Integer> protoMap =
-                new HashMap<>(getPrototypeIndexes().size() * 2);
-        ArrayList<Integer> protoIndexes = getPrototypeIndexes();
-        for (int i = 0; i < protoIndexes.size(); i++) {
-            protoMap.put(protoIndexes.get(i), i);
-        }
-        int l;
-        int datasize = originalDataSet.size();
-        float[][] kdistances = new float[datasize][k];
-        int[] kcurrLen = new int[datasize];
-        float[][] distMatrix = nsf.getDistances();
-        // Auxiliary array for fast restricted kNN search.
-        ArrayList<Integer> intervals;
-        int upper, lower;
-        int min, max;
-        for (int i = 0; i < originalDataSet.size(); i++) {
-            intervals = new ArrayList(k + 2);
-            intervals.add(-1);
-            for (int j = 0; j < kNSF; j++) {
-                if (protoMap.containsKey(kns[i][j])) {
-                    kneighbors[i][kcurrLen[i]] = protoMap.get(kns[i][j]);
-                    kdistances[i][kcurrLen[i]] = kd[i][j];
-                    kcurrLen[i]++;
-                    intervals.add(kns[i][j]);
-                }
-                if (kcurrLen[i] >= k) {
-                    break;
-                }
-            }
-            intervals.add(datasize + 1);
-            Collections.sort(intervals);
-            if (kcurrLen[i] < k) {
-                int iSizeRed = intervals.size() - 1;
-                // The loop needs to iterate one less than to the end, as
-                // the last limitation is there, so there are no elements
-                // beyond.
-                for (int ind = 0; ind < iSizeRed; ind++) {
-                    lower = intervals.get(ind);
-                    upper = intervals.get(ind + 1);
-                    for (int j = lower + 1; j < upper - 1; j++) {
-                        if (i != j && protoMap.containsKey(j)) {
-                            min = Math.min(i, j);
-                            max = Math.max(i, j);
-                            if (kcurrLen[i] > 0) {
-                                if (kcurrLen[i] == k) {
-                                    if (distMatrix[min][max - min - 1]
-                                            < kdistances[i][kcurrLen[i] - 1]) {
-                                        // Search to see where to insert.
-                                        l = k - 1;
-                                        while ((l >= 1) && distMatrix[min][
-                                                max - min - 1]
-                                                < kdistances[i][l - 1]) {
-                                            kdistances[i][l] =
-                                                    kdistances[i][l - 1];
-                                            kneighbors[i][l] =
-                                                    kneighbors[i][l - 1];
-                                            l--;
-                                        }
-                                        kdistances[i][l] =
-                                                distMatrix[min][max - min - 1];
-                                        kneighbors[i][l] = protoMap.get(j);
-                                    }
-                                } else {
-                                    if (distMatrix[min][max - min - 1]
-                                            < kdistances[i][kcurrLen[i] - 1]) {
-                                        // Search to see where to insert.
-                                        l = kcurrLen[i] - 1;
-                                        kdistances[i][kcurrLen[i]] =
-                                                kdistances[i][kcurrLen[i] - 1];
-                                        kneighbors[i][kcurrLen[i]] =
-                                                kneighbors[i][kcurrLen[i] - 1];
-                                        while ((l >= 1) && distMatrix[min][
-                                                max - min - 1]
-                                                < kdistances[i][l - 1]) {
-                                            kdistances[i][l] =
-                                                    kdistances[i][l - 1];
-                                            kneighbors[i][l] =
-                                                    kneighbors[i][l - 1];
-                                            l--;
-                                        }
-                                        kdistances[i][l] =
-                                                distMatrix[min][max - min - 1];
-                                        kneighbors[i][l] = protoMap.get(j);
-                                        kcurrLen[i]++;
-                                    } else {
-                                        kdistances[i][kcurrLen[i]] =
-                                                distMatrix[min][max - min - 1];
-                                        kneighbors[i][kcurrLen[i]] =
-                                                protoMap.get(j);
-                                        kcurrLen[i]++;
-                                    }
-                                }
-                            } else {
-                                kdistances[i][0] =
-                                        distMatrix[min][max - min - 1];
-                                kneighbors[i][0] = protoMap.get(j);
-                                kcurrLen[i] = 1;
-                            }
-                        }
-                    }
-                }
-            }
-        }
-        // Initialize hubness-related data arrays.
-        int numClasses = getNumClasses();
-        // Prototype occurrence frequency array.
-        int[] protoHubness = new int[protoIndexes.size()];
-        // Prototype good occurrence frequency array.
-        int[] protoGoodHubness = new int[protoIndexes.size()];
-        // Prototype detrimental occurrence frequency array.
-        int[] protoBadHubness = new int[protoIndexes.size()];
-        // Prototype class-conditional neighbor occurrence frequencies.
-        int[][] protoClassHubness = new int[numClasses][protoIndexes.size()];
-        setPrototypeHubness(protoHubness);
-        setPrototypeGoodHubness(protoGoodHubness);
-        setPrototypeBadHubness(protoBadHubness);
-        setProtoClassHubness(protoClassHubness);
-        int currLabel;
-        for (int i = 0; i < datasize; i++) {
-            currLabel = originalDataSet.getLabelOf(i);
-            for (int j = 0; j < k; j++) {
-                if (currLabel == originalDataSet.getLabelOf(
-                        protoIndexes.get(kneighbors[i][j]))) {
-                    protoGoodHubness[kneighbors[i][j]]++;
-                } else {
-                    protoBadHubness[kneighbors[i][j]]++;
-                }
-                protoHubness[kneighbors[i][j]]++;
-                protoClassHubness[currLabel][kneighbors[i][j]]++;
-            }
-        }
-        setProtoNeighborSets(kneighbors);
+        // The prototype kNN sets are obtained from the incremental nearest
+        // prototype index, which re-uses the existing kNN graph.
+        calculatePrototypeHubnessIndexed(k, nsf.getDistances(),
+                nsf.getKNeighbors());
     }
 
     @Override
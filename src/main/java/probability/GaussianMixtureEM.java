@@ -0,0 +1,867 @@
+/**
+* Hub Miner: a hubness-aware machine learning experimentation library.
+* Copyright (C) 2014  Nenad Tomasev. Email: nenad.tomasev at gmail.com
+* 
+* This program is free software: you can redistribute it and/or modify it under
+* the terms of the GNU General Public License as published by the Free Software
+* Foundation, either version 3 of the License, or (at your option) any later
+* version.
+* 
+* This program is distributed in the hope that it will be useful, but WITHOUT
+* ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+* FOR A PARTICULAR PURPOSE. See the GNU General Public License for more details.
+*
+* You should have received a copy of the GNU General Public License along with
+* this program. If not, see <http://www.gnu.org/licenses/>.
+*/
+package probability;
+
+import data.representation.DataInstance;
+import data.representation.DataSet;
+import java.util.Arrays;
+import java.util.Random;
+import linear.matrix.DenseLinearAlgebra;
+
+/**
+ * This class implements expectation-maximization for fitting Gaussian mixture
+ * models with diagonal or full covariance matrices. The responsibilities are
+ * calculated in log-space with the log-sum-exp trick, so that the
+ * far-away points do not underflow. The E-step is data-parallel, where each
+ * thread accumulates its own sufficient statistics that are merged prior to
+ * the M-step. The statistics are accumulated around the current component
+ * means, which avoids the cancellation errors of the raw second moments.
+ * Apart from batch EM, the class supports stepwise online EM on mini-batches,
+ * where the running sufficient statistics are interpolated with the
+ * statistics of each new mini-batch. This makes it possible to fit large
+ * mixtures on data that does not fit in memory, such as large samples of
+ * local image feature descriptors. The data points are given as float arrays
+ * and the modeled features can start at an offset, so that for instance the
+ * spatial information in the local image features can be skipped.
+ *
+ * @author Nenad Tomasev <nenad.tomasev at gmail.com>
+ */
+public class GaussianMixtureEM extends ProbabilityModel {
+
+    public static final int DIAGONAL = 0;
+    public static final int FULL = 1;
+    public static final int DEFAULT_MAX_ITERATIONS = 100;
+    public static final double DEFAULT_TOLERANCE = 1e-5;
+    // The size of the sample used for the k-means++ seeding.
+    private static final int SEEDING_SAMPLE_SIZE = 20000;
+    // Responsibilities below this threshold are ignored in the statistics.
+    private static final double MIN_RESPONSIBILITY = 1e-10;
+    private static final double LOG_2_PI = Math.log(2 * Math.PI);
+    private int numComponents;
+    private int dim;
+    private int covarianceType = DIAGONAL;
+    // The index of the first modeled feature in the data points.
+    private int featureOffset = 0;
+    private int numThreads = Runtime.getRuntime().availableProcessors();
+    // The value that is added to the variances to keep the covariance
+    // matrices positive definite.
+    private double regularization = 1e-6;
+    private int maxIterations = DEFAULT_MAX_ITERATIONS;
+    private double tolerance = DEFAULT_TOLERANCE;
+    // The exponent of the decreasing step size in online EM, in (0.5, 1].
+    private double stepSizeExponent = 0.6;
+    private Random randa = new Random();
+    // Mixture parameters.
+    private double[] weights;
+    private double[][] means;
+    // Diagonal variances in the diagonal mode.
+    private double[][] variances;
+    // Lower-triangular Cholesky factors of the covariance matrices in
+    // row-major order in the full mode.
+    private double[][] choleskyFactors;
+    // The log of the component weight plus the log of the normalization
+    // constant of the component density.
+    private double[] logConstants;
+    // Running statistics and the number of processed mini-batches in online
+    // EM.
+    private SufficientStatistics runningStats;
+    private int numBatches = 0;
+    // Average log-likelihood of the data in the last E-step.
+    private double averageLogLikelihood = -Double.MAX_VALUE;
+
+    /**
+     * Initialization.
+     *
+     * @param numComponents Integer that is the number of mixture components.
+     * @param dim Integer that is the number of modeled features.
+     * @param covarianceType Integer that is the covariance type, DIAGONAL or
+     * FULL.
+     */
+    public GaussianMixtureEM(int numComponents, int dim, int covarianceType) {
+        this.numComponents = numComponents;
+        this.dim = dim;
+        this.covarianceType = covarianceType;
+    }
+
+    /**
+     * @param featureOffset Integer that is the index of the first modeled
+     * feature in the data points.
+     */
+    public void setFeatureOffset(int featureOffset) {
+        this.featureOffset = featureOffset;
+    }
+
+    /**
+     * @param numThreads Integer that is the number of threads to use.
+     */
+    public void setNumThreads(int numThreads) {
+        this.numThreads = Math.max(1, numThreads);
+    }
+
+    /**
+     * @param regularization Double that is added to the variances to keep the
+     * covariance matrices positive definite.
+     */
+    public void setRegularization(double regularization) {
+        this.regularization = regularization;
+    }
+
+    /**
+     * @param maxIterations Integer that is the maximal number of iterations of
+     * batch EM.
+     * @param tolerance Double that is the relative improvement in the
+     * log-likelihood below which batch EM stops.
+     */
+    public void setStoppingCriteria(int maxIterations, double tolerance) {
+        this.maxIterations = maxIterations;
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * @param stepSizeExponent Double that is the exponent of the decreasing
+     * step size in online EM, which should be in the (0.5, 1] range.
+     */
+    public void setStepSizeExponent(double stepSizeExponent) {
+        this.stepSizeExponent = stepSizeExponent;
+    }
+
+    /**
+     * @param seed Long that is the seed of the random initialization.
+     */
+    public void setSeed(long seed) {
+        randa = new Random(seed);
+    }
+
+    /**
+     * @return Double array of component weights.
+     */
+    public double[] getWeights() {
+        return weights;
+    }
+
+    /**
+     * @return Double 2D array where each row is a component mean.
+     */
+    public double[][] getMeans() {
+        return means;
+    }
+
+    /**
+     * @return Double that is the average log-likelihood of the data in the
+     * last E-step.
+     */
+    public double getAverageLogLikelihood() {
+        return averageLogLikelihood;
+    }
+
+    /**
+     * @param component Integer that is the component index.
+     * @return Double 2D array that is the covariance matrix of the component.
+     */
+    public double[][] getCovarianceMatrix(int component) {
+        double[][] covariance = new double[dim][dim];
+        if (covarianceType == DIAGONAL) {
+            for (int d = 0; d < dim; d++) {
+                covariance[d][d] = variances[component][d];
+            }
+        } else {
+            double[] factor = choleskyFactors[component];
+            for (int i = 0; i < dim; i++) {
+                for (int j = 0; j <= i; j++) {
+                    double value = 0;
+                    for (int p = 0; p <= j; p++) {
+                        value += factor[i * dim + p] * factor[j * dim + p];
+                    }
+                    covariance[i][j] = value;
+                    covariance[j][i] = value;
+                }
+            }
+        }
+        return covariance;
+    }
+
+    /**
+     * Extracts the float feature arrays from a DataSet.
+     *
+     * @param dset DataSet object.
+     * @return Float 2D array of feature arrays.
+     */
+    public static float[][] getFeatureRows(DataSet dset) {
+        float[][] rows = new float[dset.size()][];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = dset.getInstance(i).fAttr;
+        }
+        return rows;
+    }
+
+    /**
+     * Initializes the component means by k-means++ seeding on a data sample,
+     * the variances to the global feature variances and the weights to
+     * uniform weights.
+     *
+     * @param data Float 2D array of data points.
+     */
+    public void initialize(float[][] data) {
+        int sampleSize = Math.min(data.length, SEEDING_SAMPLE_SIZE);
+        float[][] sample = new float[sampleSize][];
+        if (sampleSize == data.length) {
+            System.arraycopy(data, 0, sample, 0, sampleSize);
+        } else {
+            for (int i = 0; i < sampleSize; i++) {
+                sample[i] = data[randa.nextInt(data.length)];
+            }
+        }
+        double[] globalMean = new double[dim];
+        double[] globalVariance = new double[dim];
+        for (float[] x : sample) {
+            for (int d = 0; d < dim; d++) {
+                globalMean[d] += x[featureOffset + d];
+            }
+        }
+        for (int d = 0; d < dim; d++) {
+            globalMean[d] /= sampleSize;
+        }
+        for (float[] x : sample) {
+            for (int d = 0; d < dim; d++) {
+                double diff = x[featureOffset + d] - globalMean[d];
+                globalVariance[d] += diff * diff;
+            }
+        }
+        for (int d = 0; d < dim; d++) {
+            globalVariance[d] = globalVariance[d] / sampleSize
+                    + regularization;
+        }
+        // K-means++ seeding.
+        means = new double[numComponents][dim];
+        double[] minSqDists = new double[sampleSize];
+        Arrays.fill(minSqDists, Double.MAX_VALUE);
+        int selected = randa.nextInt(sampleSize);
+        for (int c = 0; c < numComponents; c++) {
+            for (int d = 0; d < dim; d++) {
+                means[c][d] = sample[selected][featureOffset + d];
+            }
+            double totalDist = 0;
+            for (int i = 0; i < sampleSize; i++) {
+                double sqDist = 0;
+                for (int d = 0; d < dim; d++) {
+                    double diff = sample[i][featureOffset + d] - means[c][d];
+                    sqDist += diff * diff;
+                }
+                minSqDists[i] = Math.min(minSqDists[i], sqDist);
+                totalDist += minSqDists[i];
+            }
+            if (totalDist <= 0) {
+                selected = randa.nextInt(sampleSize);
+                continue;
+            }
+            double threshold = randa.nextDouble() * totalDist;
+            double cumulative = 0;
+            selected = sampleSize - 1;
+            for (int i = 0; i < sampleSize; i++) {
+                cumulative += minSqDists[i];
+                if (cumulative >= threshold) {
+                    selected = i;
+                    break;
+                }
+            }
+        }
+        weights = new double[numComponents];
+        Arrays.fill(weights, 1d / numComponents);
+        if (covarianceType == DIAGONAL) {
+            variances = new double[numComponents][];
+            for (int c = 0; c < numComponents; c++) {
+                variances[c] = Arrays.copyOf(globalVariance, dim);
+            }
+        } else {
+            choleskyFactors = new double[numComponents][dim * dim];
+            for (int c = 0; c < numComponents; c++) {
+                for (int d = 0; d < dim; d++) {
+                    choleskyFactors[c][d * dim + d] =
+                            Math.sqrt(globalVariance[d]);
+                }
+            }
+        }
+        runningStats = null;
+        numBatches = 0;
+        calculateLogConstants();
+    }
+
+    /**
+     * Calculates the log-constants of the component densities.
+     */
+    private void calculateLogConstants() {
+        logConstants = new double[numComponents];
+        for (int c = 0; c < numComponents; c++) {
+            double logDet = 0;
+            for (int d = 0; d < dim; d++) {
+                if (covarianceType == DIAGONAL) {
+                    logDet += Math.log(variances[c][d]);
+                } else {
+                    logDet += 2 * Math.log(choleskyFactors[c][d * dim + d]);
+                }
+            }
+            logConstants[c] = Math.log(weights[c])
+                    - 0.5 * (dim * LOG_2_PI + logDet);
+        }
+    }
+
+    /**
+     * Calculates the weighted log-densities of all components for a point.
+     *
+     * @param x Float array that is the data point.
+     * @param logProbs Double array to place the log-densities in.
+     * @param diff Double array that is a buffer of length dim.
+     * @return Double that is the log-density of the mixture.
+     */
+    private double componentLogDensities(float[] x, double[] logProbs,
+            double[] diff) {
+        double maxLogProb = Double.NEGATIVE_INFINITY;
+        for (int c = 0; c < numComponents; c++) {
+            double[] mean = means[c];
+            double mahalanobis = 0;
+            if (covarianceType == DIAGONAL) {
+                double[] variance = variances[c];
+                for (int d = 0; d < dim; d++) {
+                    double value = x[featureOffset + d] - mean[d];
+                    mahalanobis += value * value / variance[d];
+                }
+            } else {
+                // Forward substitution with the Cholesky factor.
+                double[] factor = choleskyFactors[c];
+                for (int i = 0; i < dim; i++) {
+                    double value = x[featureOffset + i] - mean[i];
+                    int rowOffset = i * dim;
+                    for (int j = 0; j < i; j++) {
+                        value -= factor[rowOffset + j] * diff[j];
+                    }
+                    value /= factor[rowOffset + i];
+                    diff[i] = value;
+                    mahalanobis += value * value;
+                }
+            }
+            logProbs[c] = logConstants[c] - 0.5 * mahalanobis;
+            if (logProbs[c] > maxLogProb) {
+                maxLogProb = logProbs[c];
+            }
+        }
+        if (maxLogProb == Double.NEGATIVE_INFINITY) {
+            return maxLogProb;
+        }
+        // The log-sum-exp trick.
+        double sum = 0;
+        for (int c = 0; c < numComponents; c++) {
+            sum += Math.exp(logProbs[c] - maxLogProb);
+        }
+        return maxLogProb + Math.log(sum);
+    }
+
+    /**
+     * @param x Float array that is the data point.
+     * @return Double that is the log-density of the mixture at the point.
+     */
+    public double getLogDensity(float[] x) {
+        return componentLogDensities(x, new double[numComponents],
+                new double[dim]);
+    }
+
+    /**
+     * @param x Float array that is the data point.
+     * @return Double array of the posterior component probabilities.
+     */
+    public double[] getResponsibilities(float[] x) {
+        double[] logProbs = new double[numComponents];
+        double logDensity = componentLogDensities(x, logProbs,
+                new double[dim]);
+        for (int c = 0; c < numComponents; c++) {
+            logProbs[c] = Math.exp(logProbs[c] - logDensity);
+        }
+        return logProbs;
+    }
+
+    /**
+     * @param x Float array that is the data point.
+     * @return Integer that is the index of the most likely component.
+     */
+    public int getMostLikelyComponent(float[] x) {
+        double[] logProbs = new double[numComponents];
+        componentLogDensities(x, logProbs, new double[dim]);
+        int best = 0;
+        for (int c = 1; c < numComponents; c++) {
+            if (logProbs[c] > logProbs[best]) {
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Performs batch EM until convergence.
+     *
+     * @param data Float 2D array of data points.
+     * @return Integer that is the number of performed iterations.
+     */
+    public int fit(float[][] data) {
+        if (means == null) {
+            initialize(data);
+        }
+        double previousLikelihood = -Double.MAX_VALUE;
+        int iteration = 0;
+        while (iteration < maxIterations) {
+            SufficientStatistics stats = expectation(data, 0, data.length);
+            averageLogLikelihood = stats.logLikelihood / data.length;
+            maximization(stats);
+            iteration++;
+            if (iteration > 1 && averageLogLikelihood - previousLikelihood
+                    <= tolerance * Math.abs(previousLikelihood)) {
+                break;
+            }
+            previousLikelihood = averageLogLikelihood;
+        }
+        return iteration;
+    }
+
+    /**
+     * Performs batch EM until convergence.
+     *
+     * @param dset DataSet object.
+     * @return Integer that is the number of performed iterations.
+     */
+    public int fit(DataSet dset) {
+        return fit(getFeatureRows(dset));
+    }
+
+    /**
+     * Performs a single step of online EM on a mini-batch. The running
+     * sufficient statistics are interpolated with the per-point statistics of
+     * the mini-batch, by a step size that decreases with the number of
+     * processed mini-batches.
+     *
+     * @param batch Float 2D array of data points in the mini-batch.
+     */
+    public void partialFit(float[][] batch) {
+        if (batch == null || batch.length == 0) {
+            return;
+        }
+        if (means == null) {
+            initialize(batch);
+        }
+        SufficientStatistics stats = expectation(batch, 0, batch.length);
+        averageLogLikelihood = stats.logLikelihood / batch.length;
+        stats.scale(1d / batch.length);
+        if (runningStats == null) {
+            runningStats = stats;
+        } else {
+            double stepSize = Math.pow(numBatches + 2, -stepSizeExponent);
+            // The running statistics are expressed around the means that the
+            // new statistics were calculated around.
+            runningStats.shiftReference(stats.referenceMeans);
+            runningStats.scale(1 - stepSize);
+            stats.scale(stepSize);
+            runningStats.add(stats);
+        }
+        numBatches++;
+        maximization(runningStats);
+    }
+
+    /**
+     * Performs online EM over shuffled mini-batches.
+     *
+     * @param data Float 2D array of data points.
+     * @param batchSize Integer that is the mini-batch size.
+     * @param numEpochs Integer that is the number of passes over the data.
+     */
+    public void fitMiniBatch(float[][] data, int batchSize, int numEpochs) {
+        int[] permutation = new int[data.length];
+        for (int i = 0; i < permutation.length; i++) {
+            permutation[i] = i;
+        }
+        for (int epoch = 0; epoch < numEpochs; epoch++) {
+            for (int i = permutation.length - 1; i > 0; i--) {
+                int j = randa.nextInt(i + 1);
+                int tmp = permutation[i];
+                permutation[i] = permutation[j];
+                permutation[j] = tmp;
+            }
+            for (int start = 0; start < data.length; start += batchSize) {
+                int end = Math.min(start + batchSize, data.length);
+                float[][] batch = new float[end - start][];
+                for (int i = start; i < end; i++) {
+                    batch[i - start] = data[permutation[i]];
+                }
+                partialFit(batch);
+            }
+        }
+    }
+
+    /**
+     * Runs the E-step on a range of data points in parallel.
+     *
+     * @param data Float 2D array of data points.
+     * @param start Integer that is the start index, inclusive.
+     * @param end Integer that is the end index, exclusive.
+     * @return SufficientStatistics that are the merged statistics.
+     */
+    private SufficientStatistics expectation(float[][] data, int start,
+            int end) {
+        int size = end - start;
+        long work = (long) size * numComponents * (covarianceType == FULL
+                ? dim * dim : dim);
+        int threadNum = Math.max(1, Math.min(Math.min(numThreads,
+                DenseLinearAlgebra.getDefaultNumThreads(work)), size));
+        EStepWorker[] workers = new EStepWorker[threadNum];
+        Thread[] threads = new Thread[threadNum];
+        int chunkSize = (size + threadNum - 1) / threadNum;
+        for (int t = 0; t < threadNum; t++) {
+            int chunkStart = Math.min(start + t * chunkSize, end);
+            int chunkEnd = Math.min(chunkStart + chunkSize, end);
+            workers[t] = new EStepWorker(data, chunkStart, chunkEnd);
+            threads[t] = new Thread(workers[t]);
+            threads[t].start();
+        }
+        for (int t = 0; t < threadNum; t++) {
+            try {
+                threads[t].join();
+            } catch (Throwable thr) {
+                System.err.println(thr.getMessage());
+            }
+        }
+        SufficientStatistics stats = workers[0].stats;
+        for (int t = 1; t < threadNum; t++) {
+            stats.add(workers[t].stats);
+        }
+        return stats;
+    }
+
+    /**
+     * Updates the mixture parameters from the sufficient statistics.
+     *
+     * @param stats SufficientStatistics object.
+     */
+    private void maximization(SufficientStatistics stats) {
+        double totalCount = 0;
+        for (int c = 0; c < numComponents; c++) {
+            totalCount += stats.counts[c];
+        }
+        double minCount = totalCount * 1e-12;
+        for (int c = 0; c < numComponents; c++) {
+            double count = stats.counts[c];
+            weights[c] = Math.max(count, minCount) / totalCount;
+            if (count <= minCount) {
+                // Components without support keep their parameters.
+                continue;
+            }
+            double[] firstOrder = stats.firstOrder[c];
+            double[] secondOrder = stats.secondOrder[c];
+            double[] reference = stats.referenceMeans[c];
+            double[] shift = new double[dim];
+            for (int d = 0; d < dim; d++) {
+                shift[d] = firstOrder[d] / count;
+                means[c][d] = reference[d] + shift[d];
+            }
+            if (covarianceType == DIAGONAL) {
+                for (int d = 0; d < dim; d++) {
+                    variances[c][d] = Math.max(secondOrder[d] / count
+                            - shift[d] * shift[d], 0) + regularization;
+                }
+            } else {
+                double[] covariance = new double[dim * dim];
+                double currentRegularization = regularization;
+                boolean positiveDefinite = false;
+                while (!positiveDefinite) {
+                    for (int i = 0; i < dim; i++) {
+                        for (int j = i; j < dim; j++) {
+                            double value = secondOrder[i * dim + j] / count
+                                    - shift[i] * shift[j];
+                            covariance[i * dim + j] = value;
+                            covariance[j * dim + i] = value;
+                        }
+                        covariance[i * dim + i] += currentRegularization;
+                    }
+                    positiveDefinite = DenseLinearAlgebra.choleskyDecompose(
+                            covariance, dim, 1);
+                    currentRegularization = Math.max(
+                            currentRegularization * 10, 1e-10);
+                }
+                // Only the lower triangle holds the factor.
+                for (int i = 0; i < dim; i++) {
+                    for (int j = i + 1; j < dim; j++) {
+                        covariance[i * dim + j] = 0;
+                    }
+                }
+                choleskyFactors[c] = covariance;
+            }
+        }
+        double weightSum = 0;
+        for (int c = 0; c < numComponents; c++) {
+            weightSum += weights[c];
+        }
+        for (int c = 0; c < numComponents; c++) {
+            weights[c] /= weightSum;
+        }
+        calculateLogConstants();
+    }
+
+    @Override
+    public double[] calcTestDataProbabilities(DataInstance[] testArray) {
+        float[][] rows = new float[testArray.length][];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = testArray[i].fAttr;
+        }
+        double[] logDensities = calcLogDensities(rows);
+        double[] probs = new double[testArray.length];
+        for (int i = 0; i < probs.length; i++) {
+            probs[i] = Math.max(Math.min(Math.exp(logDensities[i]), 1), 0);
+        }
+        return probs;
+    }
+
+    /**
+     * Calculates the mixture log-densities of data points in parallel.
+     *
+     * @param data Float 2D array of data points.
+     * @return Double array of log-densities.
+     */
+    public double[] calcLogDensities(float[][] data) {
+        double[] logDensities = new double[data.length];
+        int threadNum = Math.max(1, Math.min(numThreads, data.length / 256));
+        Thread[] threads = new Thread[threadNum];
+        int chunkSize = (data.length + threadNum - 1) / threadNum;
+        for (int t = 0; t < threadNum; t++) {
+            int chunkStart = Math.min(t * chunkSize, data.length);
+            int chunkEnd = Math.min(chunkStart + chunkSize, data.length);
+            threads[t] = new Thread(new DensityWorker(data, logDensities,
+                    chunkStart, chunkEnd));
+            threads[t].start();
+        }
+        for (int t = 0; t < threadNum; t++) {
+            try {
+                threads[t].join();
+            } catch (Throwable thr) {
+                System.err.println(thr.getMessage());
+            }
+        }
+        return logDensities;
+    }
+
+    /**
+     * The sufficient statistics of the mixture, accumulated around reference
+     * means. In the diagonal mode, the second order statistics are the
+     * squared deviations per feature, while in the full mode they are the
+     * upper triangles of the outer products of the deviations.
+     */
+    class SufficientStatistics {
+
+        double[] counts;
+        double[][] firstOrder;
+        double[][] secondOrder;
+        double[][] referenceMeans;
+        double logLikelihood;
+
+        /**
+         * Initialization.
+         *
+         * @param referenceMeans Double 2D array of reference means.
+         */
+        SufficientStatistics(double[][] referenceMeans) {
+            this.referenceMeans = referenceMeans;
+            counts = new double[numComponents];
+            firstOrder = new double[numComponents][dim];
+            secondOrder = new double[numComponents][covarianceType == FULL
+                    ? dim * dim : dim];
+        }
+
+        /**
+         * Merges other statistics with the same reference means into these.
+         *
+         * @param other SufficientStatistics to merge into these.
+         */
+        void add(SufficientStatistics other) {
+            logLikelihood += other.logLikelihood;
+            for (int c = 0; c < numComponents; c++) {
+                counts[c] += other.counts[c];
+                for (int d = 0; d < dim; d++) {
+                    firstOrder[c][d] += other.firstOrder[c][d];
+                }
+                for (int d = 0; d < secondOrder[c].length; d++) {
+                    secondOrder[c][d] += other.secondOrder[c][d];
+                }
+            }
+        }
+
+        /**
+         * @param factor Double to multiply the statistics with.
+         */
+        void scale(double factor) {
+            logLikelihood *= factor;
+            for (int c = 0; c < numComponents; c++) {
+                counts[c] *= factor;
+                for (int d = 0; d < dim; d++) {
+                    firstOrder[c][d] *= factor;
+                }
+                for (int d = 0; d < secondOrder[c].length; d++) {
+                    secondOrder[c][d] *= factor;
+                }
+            }
+        }
+
+        /**
+         * Re-expresses the statistics around new reference means.
+         *
+         * @param newReference Double 2D array of new reference means.
+         */
+        void shiftReference(double[][] newReference) {
+            double[] delta = new double[dim];
+            for (int c = 0; c < numComponents; c++) {
+                for (int d = 0; d < dim; d++) {
+                    delta[d] = referenceMeans[c][d] - newReference[c][d];
+                }
+                double count = counts[c];
+                double[] first = firstOrder[c];
+                double[] second = secondOrder[c];
+                if (covarianceType == DIAGONAL) {
+                    for (int d = 0; d < dim; d++) {
+                        second[d] += 2 * delta[d] * first[d]
+                                + count * delta[d] * delta[d];
+                    }
+                } else {
+                    for (int i = 0; i < dim; i++) {
+                        for (int j = i; j < dim; j++) {
+                            second[i * dim + j] += delta[i] * first[j]
+                                    + first[i] * delta[j]
+                                    + count * delta[i] * delta[j];
+                        }
+                    }
+                }
+                for (int d = 0; d < dim; d++) {
+                    first[d] += count * delta[d];
+                }
+            }
+            referenceMeans = newReference;
+        }
+    }
+
+    /**
+     * This worker runs the E-step on a range of data points and accumulates
+     * the sufficient statistics.
+     */
+    class EStepWorker implements Runnable {
+
+        private float[][] data;
+        private int startIndex;
+        private int endIndex;
+        SufficientStatistics stats;
+
+        /**
+         * Initialization.
+         *
+         * @param data Float 2D array of data points.
+         * @param startIndex Integer that is the start index, inclusive.
+         * @param endIndex Integer that is the end index, exclusive.
+         */
+        public EStepWorker(float[][] data, int startIndex, int endIndex) {
+            this.data = data;
+            this.startIndex = startIndex;
+            this.endIndex = endIndex;
+            double[][] referenceMeans = new double[numComponents][];
+            for (int c = 0; c < numComponents; c++) {
+                referenceMeans[c] = Arrays.copyOf(means[c], dim);
+            }
+            stats = new SufficientStatistics(referenceMeans);
+        }
+
+        @Override
+        public void run() {
+            double[] logProbs = new double[numComponents];
+            double[] buffer = new double[dim];
+            double[] diff = new double[dim];
+            for (int i = startIndex; i < endIndex; i++) {
+                float[] x = data[i];
+                double logDensity = componentLogDensities(x, logProbs,
+                        buffer);
+                if (logDensity == Double.NEGATIVE_INFINITY) {
+                    continue;
+                }
+                stats.logLikelihood += logDensity;
+                for (int c = 0; c < numComponents; c++) {
+                    double resp = Math.exp(logProbs[c] - logDensity);
+                    if (resp < MIN_RESPONSIBILITY) {
+                        continue;
+                    }
+                    stats.counts[c] += resp;
+                    double[] mean = stats.referenceMeans[c];
+                    double[] first = stats.firstOrder[c];
+                    double[] second = stats.secondOrder[c];
+                    for (int d = 0; d < dim; d++) {
+                        diff[d] = x[featureOffset + d] - mean[d];
+                        first[d] += resp * diff[d];
+                    }
+                    if (covarianceType == DIAGONAL) {
+                        for (int d = 0; d < dim; d++) {
+                            second[d] += resp * diff[d] * diff[d];
+                        }
+                    } else {
+                        for (int p = 0; p < dim; p++) {
+                            double weighted = resp * diff[p];
+                            int rowOffset = p * dim;
+                            for (int q = p; q < dim; q++) {
+                                second[rowOffset + q] += weighted * diff[q];
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * This worker calculates the mixture log-densities of a range of data
+     * points.
+     */
+    class DensityWorker implements Runnable {
+
+        private float[][] data;
+        private double[] logDensities;
+        private int startIndex;
+        private int endIndex;
+
+        /**
+         * Initialization.
+         *
+         * @param data Float 2D array of data points.
+         * @param logDensities Double array to place the log-densities in.
+         * @param startIndex Integer that is the start index, inclusive.
+         * @param endIndex Integer that is the end index, exclusive.
+         */
+        public DensityWorker(float[][] data, double[] logDensities,
+                int startIndex, int endIndex) {
+            this.data = data;
+            this.logDensities = logDensities;
+            this.startIndex = startIndex;
+            this.endIndex = endIndex;
+        }
+
+        @Override
+        public void run() {
+            double[] logProbs = new double[numComponents];
+            double[] buffer = new double[dim];
+            for (int i = startIndex; i < endIndex; i++) {
+                logDensities[i] = componentLogDensities(data[i], logProbs,
+                        buffer);
+            }
+        }
+    }
+}
@@ -30,6 +30,7 @@ import java.util.ArrayList;
 public class GaussianMixtureModel extends ProbabilityModel {
 
     GaussianModel[] models;
+    private int numThreads = 1;
 
     /**
      * @param models An array of Gaussian models composing the mixture.
@@ -70,6 +71,14 @@ public class GaussianMixtureModel extends ProbabilityModel {
         }
     }
 
+    /**
+     * @param numThreads Integer that is the number of threads to use when
+     * calculating the probabilities of the test data.
+     */
+    public void setNumThreads(int numThreads) {
+        this.numThreads = Math.max(1, numThreads);
+    }
+
     /**
      * Calculate how likely it is for a given float feature vector to have
      * originated from any of the modeled Gaussians.
@@ -105,15 +114,63 @@ public class GaussianMixtureModel extends ProbabilityModel {
     @Override
     public double[] calcTestDataProbabilities(DataInstance[] testArray) {
         double[] probs = new double[testArray.length];
-        double[] cProbs;
         int N = testArray.length;
-        for (int i = 0; i < N; i++) {
-            cProbs = calcProbArray(testArray[i]);
-            probs[i] = Math.max(Math.min(ArrayUtil.max(cProbs), 1), 0);
+        int threadNum = Math.max(1, Math.min(numThreads, N));
+        Thread[] threads = new Thread[threadNum];
+        int chunkSize = (N + threadNum - 1) / threadNum;
+        for (int t = 0; t < threadNum; t++) {
+            int startIndex = Math.min(t * chunkSize, N);
+            int endIndex = Math.min(startIndex + chunkSize, N);
+            threads[t] = new Thread(new ProbabilityWorker(testArray, probs,
+                    startIndex, endIndex));
+            threads[t].start();
+        }
+        for (int t = 0; t < threadNum; t++) {
+            try {
+                threads[t].join();
+            } catch (Throwable thr) {
+                System.err.println(thr.getMessage());
+            }
         }
         return probs;
     }
 
+    /**
+     * This worker calculates the probabilities of a range of test points.
+     */
+    class ProbabilityWorker implements Runnable {
+
+        private DataInstance[] testArray;
+        private double[] probs;
+        private int startIndex;
+        private int endIndex;
+
+        /**
+         * Initialization.
+         *
+         * @param testArray DataInstance[] that is the test data array.
+         * @param probs Double array to place the probabilities in.
+         * @param startIndex Integer that is the start index, inclusive.
+         * @param endIndex Integer that is the end index, exclusive.
+         */
+        public ProbabilityWorker(DataInstance[] testArray, double[] probs,
+                int startIndex, int endIndex) {
+            this.testArray = testArray;
+            this.probs = probs;
+            this.startIndex = startIndex;
+            this.endIndex = endIndex;
+        }
+
+        @Override
+        public void run() {
+            double[] cProbs;
+            for (int i = startIndex; i < endIndex; i++) {
+                cProbs = calcProbArray(testArray[i]);
+                probs[i] = Math.max(Math.min(ArrayUtil.max(cProbs), 1), 0);
+            }
+        }
+    }
+
     /**
      * Calculate the class (model index) that an instance is most likely to have
      * originated from.